@@ -0,0 +1,23 @@
+#!/bin/bash
+# 从库初始化最后一步：从主库当前 binlog 位点开始复制
+# 前提：主库为新初始化的环境，与从库执行过相同的初始化脚本；主库已有业务数据时，需先用 mysqldump --source-data 导入从库再手动设置位点
+set -e
+
+SOURCE_HOST=${SOURCE_HOST:-host.docker.internal}
+SOURCE_PORT=${SOURCE_PORT:-13306}
+
+STATUS=$(mysql -h"$SOURCE_HOST" -P"$SOURCE_PORT" -uroot -p"$MYSQL_ROOT_PASSWORD" -N -e "SHOW MASTER STATUS")
+LOG_FILE=$(echo "$STATUS" | awk '{print $1}')
+LOG_POS=$(echo "$STATUS" | awk '{print $2}')
+
+mysql -uroot -p"$MYSQL_ROOT_PASSWORD" <<SQL
+CHANGE REPLICATION SOURCE TO
+  SOURCE_HOST='$SOURCE_HOST',
+  SOURCE_PORT=$SOURCE_PORT,
+  SOURCE_USER='root',
+  SOURCE_PASSWORD='$MYSQL_ROOT_PASSWORD',
+  SOURCE_LOG_FILE='$LOG_FILE',
+  SOURCE_LOG_POS=$LOG_POS,
+  GET_SOURCE_PUBLIC_KEY=1;
+START REPLICA;
+SQL
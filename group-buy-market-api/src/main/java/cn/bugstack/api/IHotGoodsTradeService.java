@@ -4,6 +4,8 @@ import cn.bugstack.api.dto.LockMarketPayOrderRequestDTO;
 import cn.bugstack.api.dto.LockMarketPayOrderResponseDTO;
 import cn.bugstack.api.response.Response;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * 热点商品交易服务接口
  * 
@@ -25,5 +27,23 @@ public interface IHotGoodsTradeService {
      */
     Response<LockMarketPayOrderResponseDTO> lockHotGoodsOrder(LockMarketPayOrderRequestDTO requestDTO);
 
+    /**
+     * 热点商品下单（锁单）- 异步
+     * <p>
+     * 锁单阶段超时返回 PENDING 与查询令牌，订单可能仍在创建，凭令牌查询订单结果
+     *
+     * @param requestDTO 锁单商品信息
+     * @return 锁单结果信息
+     */
+    CompletableFuture<Response<LockMarketPayOrderResponseDTO>> lockHotGoodsOrderAsync(LockMarketPayOrderRequestDTO requestDTO);
+
+    /**
+     * 查询异步锁单结果
+     *
+     * @param queryToken 锁单返回 PENDING 时下发的查询令牌
+     * @return 订单信息；仍在处理中返回 PENDING
+     */
+    Response<LockMarketPayOrderResponseDTO> queryHotGoodsLockOrder(String queryToken);
+
 }
 
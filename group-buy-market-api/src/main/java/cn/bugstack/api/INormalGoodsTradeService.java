@@ -1,9 +1,13 @@
 package cn.bugstack.api;
 
+import cn.bugstack.api.dto.CartLockOrderRequestDTO;
+import cn.bugstack.api.dto.CartLockOrderResponseDTO;
 import cn.bugstack.api.dto.LockMarketPayOrderRequestDTO;
 import cn.bugstack.api.dto.LockMarketPayOrderResponseDTO;
 import cn.bugstack.api.response.Response;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * 普通商品交易服务接口
  * 
@@ -25,5 +29,31 @@ public interface INormalGoodsTradeService {
      */
     Response<LockMarketPayOrderResponseDTO> lockNormalGoodsOrder(LockMarketPayOrderRequestDTO requestDTO);
 
+    /**
+     * 普通商品下单（锁单）- 异步
+     * <p>
+     * 锁单阶段超时返回 PENDING 与查询令牌，订单可能仍在创建，凭令牌查询订单结果
+     *
+     * @param requestDTO 锁单商品信息
+     * @return 锁单结果信息
+     */
+    CompletableFuture<Response<LockMarketPayOrderResponseDTO>> lockNormalGoodsOrderAsync(LockMarketPayOrderRequestDTO requestDTO);
+
+    /**
+     * 查询异步锁单结果
+     *
+     * @param queryToken 锁单返回 PENDING 时下发的查询令牌
+     * @return 订单信息；仍在处理中返回 PENDING
+     */
+    Response<LockMarketPayOrderResponseDTO> queryNormalGoodsLockOrder(String queryToken);
+
+    /**
+     * 购物车锁单（多个普通商品一次锁单，全部成功或全部失败）
+     *
+     * @param requestDTO 购物车商品信息
+     * @return 各商品锁单结果及合计金额
+     */
+    Response<CartLockOrderResponseDTO> lockNormalGoodsCartOrder(CartLockOrderRequestDTO requestDTO);
+
 }
 
@@ -0,0 +1,33 @@
+package cn.bugstack.api;
+
+import cn.bugstack.api.dto.WaitingRoomRequestDTO;
+import cn.bugstack.api.dto.WaitingRoomResponseDTO;
+import cn.bugstack.api.response.Response;
+
+/**
+ * 秒杀活动排队服务接口
+ *
+ * 开启排队的活动，用户先领取排队号，按活动配置的速率放行；
+ * 放行后才能获取锁单 Token，客户端轮询排队状态获取位置与预计等待时间。
+ *
+ * @author liang.tian
+ */
+public interface IWaitingRoomService {
+
+    /**
+     * 进入排队（重复进入返回原排队号）
+     *
+     * @param requestDTO 用户、活动信息
+     * @return 排队状态
+     */
+    Response<WaitingRoomResponseDTO> enter(WaitingRoomRequestDTO requestDTO);
+
+    /**
+     * 查询排队状态
+     *
+     * @param requestDTO 用户、活动信息
+     * @return 排队状态
+     */
+    Response<WaitingRoomResponseDTO> queryStatus(WaitingRoomRequestDTO requestDTO);
+
+}
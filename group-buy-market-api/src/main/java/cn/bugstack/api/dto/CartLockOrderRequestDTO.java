@@ -0,0 +1,38 @@
+package cn.bugstack.api.dto;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * 购物车锁单请求对象（多个普通商品一次锁单，全部成功或全部失败）
+ *
+ * @author liang.tian
+ */
+@Data
+public class CartLockOrderRequestDTO {
+
+    // 用户ID
+    private String userId;
+    // 渠道
+    private String source;
+    // 来源
+    private String channel;
+    // 回调配置（购物车内商品共用）
+    private LockMarketPayOrderRequestDTO.NotifyConfigVO notifyConfigVO;
+    // 购物车商品，同一活动只能出现一次
+    private List<Item> items;
+
+    @Data
+    public static class Item {
+        /** 拼单组队ID - 可为空，为空则创建新组队ID */
+        private String teamId;
+        /** 活动ID */
+        private Long activityId;
+        /** 商品ID */
+        private String goodsId;
+        /** 外部交易单号 */
+        private String outTradeNo;
+    }
+
+}
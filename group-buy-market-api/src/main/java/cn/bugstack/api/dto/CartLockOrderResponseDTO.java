@@ -0,0 +1,31 @@
+package cn.bugstack.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * 购物车锁单应答对象
+ *
+ * @author liang.tian
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class CartLockOrderResponseDTO {
+
+    /** 各商品锁单结果，与请求商品顺序一致 */
+    private List<LockMarketPayOrderResponseDTO> orders;
+    /** 原始价格合计 */
+    private BigDecimal originalPrice;
+    /** 折扣金额合计 */
+    private BigDecimal deductionPrice;
+    /** 支付金额合计 */
+    private BigDecimal payPrice;
+
+}
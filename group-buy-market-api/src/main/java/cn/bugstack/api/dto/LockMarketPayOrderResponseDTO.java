@@ -30,5 +30,7 @@ public class LockMarketPayOrderResponseDTO {
     private Integer tradeOrderStatus;
     /** 组队ID */
     private String teamId;
+    /** 查询令牌，锁单处理中（PENDING）时返回，用于查询订单结果 */
+    private String queryToken;
 
 }
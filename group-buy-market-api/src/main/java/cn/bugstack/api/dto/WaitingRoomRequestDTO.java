@@ -0,0 +1,18 @@
+package cn.bugstack.api.dto;
+
+import lombok.Data;
+
+/**
+ * 排队请求DTO
+ *
+ * @author liang.tian
+ */
+@Data
+public class WaitingRoomRequestDTO {
+
+    // 用户ID
+    private String userId;
+    // 活动ID
+    private Long activityId;
+
+}
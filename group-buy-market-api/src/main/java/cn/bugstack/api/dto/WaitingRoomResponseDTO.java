@@ -0,0 +1,32 @@
+package cn.bugstack.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 排队状态应答DTO
+ *
+ * @author liang.tian
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class WaitingRoomResponseDTO {
+
+    /** 是否在排队中（未进入排队或已领取 Token 为 false） */
+    private Boolean inQueue;
+    /** 排队号 */
+    private Long ticket;
+    /** 是否已放行，放行后可获取锁单 Token */
+    private Boolean admitted;
+    /** 前面还有多少人 */
+    private Long position;
+    /** 预计等待时间（秒） */
+    private Long etaSeconds;
+    /** 建议下次轮询间隔（毫秒） */
+    private Long pollIntervalMillis;
+
+}
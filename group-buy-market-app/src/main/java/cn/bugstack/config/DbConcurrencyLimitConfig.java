@@ -0,0 +1,41 @@
+package cn.bugstack.config;
+
+import cn.bugstack.infrastructure.concurrency.DbConcurrencyLimit;
+import cn.bugstack.infrastructure.concurrency.DbConcurrencyLimitInterceptor;
+import cn.bugstack.infrastructure.concurrency.DbConcurrencyLimiters;
+import org.springframework.aop.Advisor;
+import org.springframework.aop.support.DefaultPointcutAdvisor;
+import org.springframework.aop.support.annotation.AnnotationMatchingPointcut;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Role;
+
+/**
+ * 数据库自适应并发限制配置
+ * <p>
+ * 与 {@link LatencyMetricsConfig} 相同，Advisor 声明为基础设施角色，由 InfrastructureAdvisorAutoProxyCreator 织入。
+ * 顺序在耗时埋点之后、事务拦截器（最低优先级）之前：被拒绝的调用不开启事务、不占用连接。
+ *
+ * @author liang.tian
+ */
+@Configuration
+public class DbConcurrencyLimitConfig {
+
+    @Bean
+    @Role(BeanDefinition.ROLE_INFRASTRUCTURE)
+    public static DbConcurrencyLimiters dbConcurrencyLimiters() {
+        return new DbConcurrencyLimiters();
+    }
+
+    @Bean
+    @Role(BeanDefinition.ROLE_INFRASTRUCTURE)
+    public static Advisor dbConcurrencyLimitAdvisor(DbConcurrencyLimiters dbConcurrencyLimiters) {
+        DefaultPointcutAdvisor advisor = new DefaultPointcutAdvisor(
+                AnnotationMatchingPointcut.forMethodAnnotation(DbConcurrencyLimit.class),
+                new DbConcurrencyLimitInterceptor(dbConcurrencyLimiters));
+        advisor.setOrder(10);
+        return advisor;
+    }
+
+}
@@ -0,0 +1,87 @@
+package cn.bugstack.config;
+
+import cn.bugstack.domain.trade.adapter.port.IMessageProducer;
+import cn.bugstack.domain.trade.adapter.port.IRedisAdapter;
+import cn.bugstack.wrench.design.framework.link.model2.handler.ILogicHandler;
+import cn.bugstack.wrench.design.framework.tree.StrategyHandler;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.aop.Advisor;
+import org.springframework.aop.ClassFilter;
+import org.springframework.aop.MethodMatcher;
+import org.springframework.aop.Pointcut;
+import org.springframework.aop.support.DefaultPointcutAdvisor;
+import org.springframework.aop.support.StaticMethodMatcher;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Role;
+import org.springframework.util.ReflectionUtils;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Collection;
+
+/**
+ * 链路耗时埋点配置
+ * <p>
+ * 工程未引入 AOP Starter，Advisor 声明为基础设施角色，由事务配置已注册的 InfrastructureAdvisorAutoProxyCreator 织入，
+ * 与 @Transactional 使用同一套代理机制。指标说明见 {@link LatencyMetricsInterceptor}，
+ * 看板见 docs/dev-ops/grafana/dashboards/group-buy-market-latency.json。
+ *
+ * @author liang.tian
+ */
+@Configuration
+public class LatencyMetricsConfig {
+
+    @Bean
+    @Role(BeanDefinition.ROLE_INFRASTRUCTURE)
+    public static Advisor latencyMetricsAdvisor(ObjectProvider<MeterRegistry> meterRegistryProvider) {
+        DefaultPointcutAdvisor advisor = new DefaultPointcutAdvisor(new LatencyMetricsPointcut(), new LatencyMetricsInterceptor(meterRegistryProvider));
+        advisor.setOrder(0);
+        return advisor;
+    }
+
+    /**
+     * 织入范围：树节点、过滤器的 apply(request, context)，Redis 适配器与消息生产者的接口方法，DAO 接口方法
+     */
+    private static class LatencyMetricsPointcut extends StaticMethodMatcher implements Pointcut {
+
+        private final ClassFilter classFilter = clazz ->
+                // BusinessLinkedList 本身也是 ILogicHandler，只统计其中的各个过滤器
+                !Collection.class.isAssignableFrom(clazz) && null != LatencyMetricsInterceptor.Kind.of(clazz);
+
+        @Override
+        public ClassFilter getClassFilter() {
+            return classFilter;
+        }
+
+        @Override
+        public MethodMatcher getMethodMatcher() {
+            return this;
+        }
+
+        @Override
+        public boolean matches(Method method, Class<?> targetClass) {
+            if (Modifier.isStatic(method.getModifiers()) || method.getDeclaringClass() == Object.class) return false;
+            LatencyMetricsInterceptor.Kind kind = LatencyMetricsInterceptor.Kind.of(targetClass);
+            if (null == kind) return false;
+            switch (kind) {
+                case TREE_NODE:
+                case RULE_FILTER:
+                    return "apply".equals(method.getName()) && method.getParameterCount() == 2;
+                case REDIS_ADAPTER:
+                    return declaredBy(IRedisAdapter.class, method);
+                case MESSAGE_PRODUCER:
+                    return declaredBy(IMessageProducer.class, method);
+                default:
+                    return method.getDeclaringClass().getName().startsWith(LatencyMetricsInterceptor.DAO_PACKAGE + ".");
+            }
+        }
+
+        private boolean declaredBy(Class<?> port, Method method) {
+            return null != ReflectionUtils.findMethod(port, method.getName(), method.getParameterTypes());
+        }
+    }
+
+}
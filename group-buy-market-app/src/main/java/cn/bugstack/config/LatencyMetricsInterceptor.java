@@ -0,0 +1,249 @@
+package cn.bugstack.config;
+
+import cn.bugstack.domain.trade.adapter.port.IMessageProducer;
+import cn.bugstack.domain.trade.adapter.port.IRedisAdapter;
+import cn.bugstack.types.exception.AppException;
+import cn.bugstack.wrench.design.framework.link.model2.handler.ILogicHandler;
+import cn.bugstack.wrench.design.framework.tree.StrategyHandler;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.beans.factory.ObjectProvider;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 链路耗时埋点拦截器
+ * <p>
+ * 由 {@link LatencyMetricsConfig} 注册为基础设施 Advisor，对以下 Bean 透明织入，业务代码无需改动：
+ * 1. 试算策略树节点（StrategyHandler#apply）：trial_node_latency{node, activity, result}，记录节点自身耗时，
+ * 节点通过 router 调用下一个节点，子节点耗时从父节点中扣除，否则 RootNode 的耗时就是整棵树的耗时
+ * 2. 规则过滤链节点（ILogicHandler#apply）：rule_filter_latency{chain, filter, activity, result}，
+ * result 为 next（放行到下一个节点）、stop（返回结果结束链路）、reject（AppException 拦截）、error
+ * 3. Redis 适配器脚本：redis_adapter_latency{method, result}
+ * 4. 消息发送：mq_send_latency{method, topic, result}
+ * 5. DAO 调用：dao_latency{dao, method, result}
+ * <p>
+ * 各 Timer 的 _count 即按 result 区分的结果计数，_bucket 用于 Grafana 计算分位数。
+ *
+ * @author liang.tian
+ */
+public class LatencyMetricsInterceptor implements MethodInterceptor {
+
+    static final String DAO_PACKAGE = "cn.bugstack.infrastructure.dao";
+
+    private static final String NONE = "none";
+
+    private final ObjectProvider<MeterRegistry> meterRegistryProvider;
+
+    private volatile MeterRegistry meterRegistry;
+
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+
+    private final Map<Class<?>, Target> targets = new ConcurrentHashMap<>();
+
+    private final Map<Class<?>, Optional<Method>> activityIdGetters = new ConcurrentHashMap<>();
+
+    // 当前线程正在执行的树节点，元素为子节点累计耗时（纳秒）
+    private final ThreadLocal<Deque<long[]>> nodeStack = ThreadLocal.withInitial(ArrayDeque::new);
+
+    public LatencyMetricsInterceptor(ObjectProvider<MeterRegistry> meterRegistryProvider) {
+        this.meterRegistryProvider = meterRegistryProvider;
+    }
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        MeterRegistry registry = meterRegistry();
+        if (null == registry || null == invocation.getThis()) {
+            return invocation.proceed();
+        }
+
+        Target target = targets.computeIfAbsent(AopUtils.getTargetClass(invocation.getThis()), Target::of);
+        if (null == target.kind) {
+            return invocation.proceed();
+        }
+        if (Kind.TREE_NODE == target.kind) {
+            return invokeTreeNode(registry, target, invocation);
+        }
+
+        long start = System.nanoTime();
+        Object result = null;
+        Throwable error = null;
+        try {
+            result = invocation.proceed();
+            return result;
+        } catch (Throwable e) {
+            error = e;
+            throw e;
+        } finally {
+            record(registry, target, invocation, System.nanoTime() - start, outcome(target.kind, result, error));
+        }
+    }
+
+    private Object invokeTreeNode(MeterRegistry registry, Target target, MethodInvocation invocation) throws Throwable {
+        Deque<long[]> stack = nodeStack.get();
+        long[] childNanos = new long[1];
+        stack.push(childNanos);
+        long start = System.nanoTime();
+        Throwable error = null;
+        try {
+            return invocation.proceed();
+        } catch (Throwable e) {
+            error = e;
+            throw e;
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            stack.pop();
+            long[] parent = stack.peek();
+            if (null != parent) {
+                parent[0] += elapsed;
+            } else {
+                nodeStack.remove();
+            }
+            record(registry, target, invocation, Math.max(0L, elapsed - childNanos[0]), outcome(target.kind, null, error));
+        }
+    }
+
+    private void record(MeterRegistry registry, Target target, MethodInvocation invocation, long nanos, String result) {
+        Object[] args = invocation.getArguments();
+        String name;
+        Tags tags;
+        switch (target.kind) {
+            case TREE_NODE:
+                name = "trial_node_latency";
+                tags = Tags.of("node", target.name, "activity", activityId(args), "result", result);
+                break;
+            case RULE_FILTER:
+                name = "rule_filter_latency";
+                tags = Tags.of("chain", target.chain, "filter", target.name, "activity", activityId(args), "result", result);
+                break;
+            case REDIS_ADAPTER:
+                name = "redis_adapter_latency";
+                tags = Tags.of("method", invocation.getMethod().getName(), "result", result);
+                break;
+            case MESSAGE_PRODUCER:
+                name = "mq_send_latency";
+                tags = Tags.of("method", invocation.getMethod().getName(),
+                        "topic", args.length > 0 && args[0] instanceof String ? (String) args[0] : NONE, "result", result);
+                break;
+            default:
+                name = "dao_latency";
+                tags = Tags.of("dao", target.name, "method", invocation.getMethod().getName(), "result", result);
+        }
+
+        timers.computeIfAbsent(name + tags, key -> Timer.builder(name)
+                        .tags(tags)
+                        .publishPercentileHistogram()
+                        .minimumExpectedValue(Duration.ofMillis(1))
+                        .maximumExpectedValue(Duration.ofSeconds(5))
+                        .register(registry))
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    private String outcome(Kind kind, Object result, Throwable error) {
+        if (null != error) {
+            return error instanceof AppException ? "reject" : "error";
+        }
+        if (Kind.RULE_FILTER == kind) {
+            return null == result ? "next" : "stop";
+        }
+        return "success";
+    }
+
+    /**
+     * 请求对象上的 activityId（MarketProductEntity、TradeLockRuleCommandEntity 等），没有时为 none
+     */
+    private String activityId(Object[] args) {
+        if (args.length == 0 || null == args[0]) return NONE;
+        Optional<Method> getter = activityIdGetters.computeIfAbsent(args[0].getClass(), clazz -> {
+            try {
+                return Optional.of(clazz.getMethod("getActivityId"));
+            } catch (NoSuchMethodException e) {
+                return Optional.empty();
+            }
+        });
+        if (!getter.isPresent()) return NONE;
+        try {
+            Object activityId = getter.get().invoke(args[0]);
+            return null == activityId ? NONE : activityId.toString();
+        } catch (Exception e) {
+            return NONE;
+        }
+    }
+
+    private MeterRegistry meterRegistry() {
+        // 延迟获取，避免 Advisor 初始化时提前创建 MeterRegistry
+        if (null == meterRegistry) {
+            meterRegistry = meterRegistryProvider.getIfAvailable();
+        }
+        return meterRegistry;
+    }
+
+    enum Kind {
+        TREE_NODE, RULE_FILTER, REDIS_ADAPTER, MESSAGE_PRODUCER, DAO;
+
+        static Kind of(Class<?> targetClass) {
+            if (StrategyHandler.class.isAssignableFrom(targetClass)) return TREE_NODE;
+            if (ILogicHandler.class.isAssignableFrom(targetClass)) return RULE_FILTER;
+            if (IRedisAdapter.class.isAssignableFrom(targetClass)) return REDIS_ADAPTER;
+            if (IMessageProducer.class.isAssignableFrom(targetClass)) return MESSAGE_PRODUCER;
+            if (null != daoInterface(targetClass)) return DAO;
+            return null;
+        }
+
+        /**
+         * MyBatis Mapper 为 JDK 代理，取其实现的 DAO 接口
+         */
+        static Class<?> daoInterface(Class<?> targetClass) {
+            if (!Proxy.isProxyClass(targetClass)) return null;
+            for (Class<?> ifc : targetClass.getInterfaces()) {
+                if (ifc.getName().startsWith(DAO_PACKAGE + ".")) return ifc;
+            }
+            return null;
+        }
+    }
+
+    private static class Target {
+
+        private final Kind kind;
+        private final String name;
+        private final String chain;
+
+        private Target(Kind kind, String name, String chain) {
+            this.kind = kind;
+            this.name = name;
+            this.chain = chain;
+        }
+
+        static Target of(Class<?> targetClass) {
+            Kind kind = Kind.of(targetClass);
+            if (Kind.DAO == kind) {
+                return new Target(kind, Kind.daoInterface(targetClass).getSimpleName(), NONE);
+            }
+            return new Target(kind, targetClass.getSimpleName(), chainOf(targetClass));
+        }
+
+        /**
+         * 过滤器所在的链：trade.service.lock.filter -> lock、trade.service.settlement.filter -> settlement
+         */
+        private static String chainOf(Class<?> targetClass) {
+            String packageName = targetClass.getPackage().getName();
+            if (packageName.endsWith(".filter")) {
+                packageName = packageName.substring(0, packageName.length() - ".filter".length());
+            }
+            return packageName.substring(packageName.lastIndexOf('.') + 1);
+        }
+    }
+
+}
@@ -0,0 +1,307 @@
+package cn.bugstack.config;
+
+import cn.bugstack.domain.trade.service.hot.BypassVerifyBatcher;
+import cn.bugstack.domain.trade.service.hot.StockDeltaSynchronizer;
+import cn.bugstack.domain.trade.service.normal.NormalGoodsConfirmStage;
+import cn.bugstack.infrastructure.concurrency.AdaptiveConcurrencyLimiter;
+import cn.bugstack.infrastructure.concurrency.DbConcurrencyLimiters;
+import cn.bugstack.infrastructure.event.EventPublisher;
+import cn.bugstack.infrastructure.log.HotPathLogger;
+import cn.bugstack.infrastructure.readwrite.ReplicaLagMonitor;
+import cn.bugstack.infrastructure.readwrite.ReplicaReadInterceptor;
+import cn.bugstack.infrastructure.redis.lease.StockQuotaLeaseManager;
+import cn.bugstack.infrastructure.redis.limiter.ClusterRateLimiter;
+import cn.bugstack.infrastructure.redis.waitingroom.WaitingRoom;
+import cn.bugstack.infrastructure.workload.ConnectionBulkhead;
+import cn.bugstack.infrastructure.workload.WorkloadHikariDataSource;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+import java.util.List;
+
+/**
+ * 业务指标注册（通过 actuator /actuator/prometheus 暴露）
+ */
+@Configuration
+public class MetricsConfig {
+
+    /**
+     * 旁路验证批处理器指标：缓冲区水位、读取流水数、各类核验结果
+     */
+    @Bean
+    public MeterBinder bypassVerifyMetrics(BypassVerifyBatcher batcher) {
+        return registry -> {
+            Gauge.builder("bypass_verify_buffer_size", batcher, BypassVerifyBatcher::getBufferSize)
+                    .description("旁路验证缓冲区待核验数量")
+                    .register(registry);
+            Gauge.builder("bypass_verify_buffer_capacity", batcher, BypassVerifyBatcher::getCapacity)
+                    .description("旁路验证缓冲区容量")
+                    .register(registry);
+            Gauge.builder("bypass_verify_last_slice_size", batcher, BypassVerifyBatcher::getLastSliceSize)
+                    .description("最近一个时间片核验数量")
+                    .register(registry);
+            Gauge.builder("bypass_verify_last_slice_cost_ms", batcher, BypassVerifyBatcher::getLastSliceCostMs)
+                    .description("最近一个时间片核验耗时")
+                    .register(registry);
+            FunctionCounter.builder("bypass_verify_read_total", batcher, BypassVerifyBatcher::getReadCount)
+                    .description("按消费组读取的扣减流水数量")
+                    .register(registry);
+            FunctionCounter.builder("bypass_verify_result_total", batcher, BypassVerifyBatcher::getVerifiedCount)
+                    .tag("result", "verified")
+                    .register(registry);
+            FunctionCounter.builder("bypass_verify_result_total", batcher, BypassVerifyBatcher::getDbMissingCount)
+                    .tag("result", "db_missing")
+                    .register(registry);
+            FunctionCounter.builder("bypass_verify_result_total", batcher, BypassVerifyBatcher::getMismatchCount)
+                    .tag("result", "mismatch")
+                    .register(registry);
+            FunctionCounter.builder("bypass_verify_result_total", batcher, BypassVerifyBatcher::getErrorCount)
+                    .tag("result", "error")
+                    .register(registry);
+        };
+    }
+
+    /**
+     * 普通商品 Confirm 组提交指标：队列水位、批次数、逐单回退与失败数
+     */
+    @Bean
+    public MeterBinder normalGoodsConfirmMetrics(NormalGoodsConfirmStage stage) {
+        return registry -> {
+            Gauge.builder("normal_goods_confirm_queue_size", stage, NormalGoodsConfirmStage::getQueueSize)
+                    .description("普通商品Confirm待组提交数量")
+                    .register(registry);
+            FunctionCounter.builder("normal_goods_confirm_batch_total", stage, NormalGoodsConfirmStage::getBatchCount)
+                    .register(registry);
+            FunctionCounter.builder("normal_goods_confirm_orders_total", stage, NormalGoodsConfirmStage::getBatchConfirmedCount)
+                    .tag("mode", "batch")
+                    .register(registry);
+            FunctionCounter.builder("normal_goods_confirm_orders_total", stage, NormalGoodsConfirmStage::getFallbackCount)
+                    .tag("mode", "single")
+                    .register(registry);
+            FunctionCounter.builder("normal_goods_confirm_failed_total", stage, NormalGoodsConfirmStage::getFailedCount)
+                    .register(registry);
+            FunctionCounter.builder("normal_goods_confirm_queue_full_total", stage, NormalGoodsConfirmStage::getQueueFullCount)
+                    .register(registry);
+        };
+    }
+
+    /**
+     * 热点商品库存租约指标：本地未使用租约、待写入流水、租约申请次数、租约失效拒绝次数
+     */
+    @Bean
+    public MeterBinder stockLeaseMetrics(StockQuotaLeaseManager leaseManager) {
+        return registry -> {
+            Gauge.builder("stock_lease_local_quota", leaseManager, StockQuotaLeaseManager::getLocalQuota)
+                    .description("本节点持有的未使用租约")
+                    .register(registry);
+            Gauge.builder("stock_lease_pending_logs", leaseManager, StockQuotaLeaseManager::getPendingLogCount)
+                    .description("待批量写入的扣减流水")
+                    .register(registry);
+            FunctionCounter.builder("stock_lease_acquire_total", leaseManager, StockQuotaLeaseManager::getLeaseCount)
+                    .register(registry);
+            FunctionCounter.builder("stock_lease_decrease_total", leaseManager, StockQuotaLeaseManager::getLocalDecreaseCount)
+                    .register(registry);
+            FunctionCounter.builder("stock_lease_expired_reject_total", leaseManager, StockQuotaLeaseManager::getLeaseExpiredRejectCount)
+                    .description("心跳中断、本地租约失效时拒绝的扣减")
+                    .register(registry);
+        };
+    }
+
+    /**
+     * 库存增量写回指标：窗口队列水位、窗口数、SKU 合并 UPDATE 数、逐单回退与失败数
+     */
+    @Bean
+    public MeterBinder stockDeltaSyncMetrics(StockDeltaSynchronizer synchronizer) {
+        return registry -> {
+            Gauge.builder("stock_delta_sync_queue_size", synchronizer, StockDeltaSynchronizer::getQueueSize)
+                    .description("待写回数据库的库存增量")
+                    .register(registry);
+            FunctionCounter.builder("stock_delta_sync_window_total", synchronizer, StockDeltaSynchronizer::getWindowCount)
+                    .register(registry);
+            FunctionCounter.builder("stock_delta_sync_sku_update_total", synchronizer, StockDeltaSynchronizer::getSkuUpdateCount)
+                    .description("按 SKU 合并执行的库存 UPDATE 次数")
+                    .register(registry);
+            FunctionCounter.builder("stock_delta_sync_deltas_total", synchronizer, StockDeltaSynchronizer::getMergedDeltaCount)
+                    .tag("mode", "batch")
+                    .register(registry);
+            FunctionCounter.builder("stock_delta_sync_deltas_total", synchronizer, StockDeltaSynchronizer::getFallbackCount)
+                    .tag("mode", "single")
+                    .register(registry);
+            FunctionCounter.builder("stock_delta_sync_deltas_total", synchronizer, StockDeltaSynchronizer::getReleasedDeltaCount)
+                    .tag("mode", "release")
+                    .register(registry);
+            FunctionCounter.builder("stock_delta_sync_failed_total", synchronizer, StockDeltaSynchronizer::getFailedCount)
+                    .register(registry);
+            FunctionCounter.builder("stock_delta_sync_queue_full_total", synchronizer, StockDeltaSynchronizer::getQueueFullCount)
+                    .register(registry);
+            FunctionCounter.builder("stock_delta_sync_await_timeout_total", synchronizer, StockDeltaSynchronizer::getAwaitTimeoutCount)
+                    .description("消费线程等待写回结果超时次数")
+                    .register(registry);
+        };
+    }
+
+    /**
+     * 热点路径日志指标：输出、限速采样丢弃、秒杀模式丢弃条数（秒杀模式下即逐请求计数）
+     */
+    @Bean
+    public MeterBinder hotPathLogMetrics() {
+        return registry -> {
+            FunctionCounter.builder("hot_path_log_total", HotPathLogger.class, c -> HotPathLogger.totalLoggedCount())
+                    .tag("outcome", "logged")
+                    .register(registry);
+            FunctionCounter.builder("hot_path_log_total", HotPathLogger.class, c -> HotPathLogger.totalSampledCount())
+                    .tag("outcome", "sampled")
+                    .register(registry);
+            FunctionCounter.builder("hot_path_log_total", HotPathLogger.class, c -> HotPathLogger.totalDroppedCount())
+                    .tag("outcome", "flash_sale_dropped")
+                    .register(registry);
+        };
+    }
+
+    /**
+     * 集群限流指标：放行、拒绝请求数，访问 Redis 次数（放行数 / Redis 次数即本地预取命中情况）
+     */
+    @Bean
+    public MeterBinder clusterRateLimitMetrics(ClusterRateLimiter limiter) {
+        return registry -> {
+            FunctionCounter.builder("cluster_rate_limit_total", limiter, ClusterRateLimiter::getPassedCount)
+                    .tag("outcome", "passed")
+                    .register(registry);
+            FunctionCounter.builder("cluster_rate_limit_total", limiter, ClusterRateLimiter::getRejectedCount)
+                    .tag("outcome", "rejected")
+                    .register(registry);
+            FunctionCounter.builder("cluster_rate_limit_redis_calls_total", limiter, ClusterRateLimiter::getRedisCallCount)
+                    .register(registry);
+        };
+    }
+
+    /**
+     * 秒杀排队指标：进入排队次数，领取 Token 时已放行、未放行次数（放行速率与锁单处理能力对照）
+     */
+    @Bean
+    public MeterBinder waitingRoomMetrics(WaitingRoom waitingRoom) {
+        return registry -> {
+            FunctionCounter.builder("waiting_room_entered_total", waitingRoom, WaitingRoom::getEnteredCount)
+                    .register(registry);
+            FunctionCounter.builder("waiting_room_token_total", waitingRoom, WaitingRoom::getAdmittedCount)
+                    .tag("outcome", "admitted")
+                    .register(registry);
+            FunctionCounter.builder("waiting_room_token_total", waitingRoom, WaitingRoom::getNotAdmittedCount)
+                    .tag("outcome", "not_admitted")
+                    .register(registry);
+        };
+    }
+
+    /**
+     * 数据库自适应并发限制指标：当前限制、在途、排队数量，拒绝次数与过载异常次数
+     */
+    @Bean
+    public MeterBinder dbConcurrencyLimitMetrics(DbConcurrencyLimiters limiters) {
+        return registry -> {
+            for (AdaptiveConcurrencyLimiter limiter : limiters.all()) {
+                Gauge.builder("db_concurrency_limit", limiter, AdaptiveConcurrencyLimiter::getLimit)
+                        .tag("operation", limiter.getName())
+                        .register(registry);
+                Gauge.builder("db_concurrency_in_flight", limiter, AdaptiveConcurrencyLimiter::getInFlight)
+                        .tag("operation", limiter.getName())
+                        .register(registry);
+                Gauge.builder("db_concurrency_waiting", limiter, AdaptiveConcurrencyLimiter::getWaiting)
+                        .tag("operation", limiter.getName())
+                        .register(registry);
+                FunctionCounter.builder("db_concurrency_rejected_total", limiter, AdaptiveConcurrencyLimiter::getRejectedCount)
+                        .tag("operation", limiter.getName())
+                        .register(registry);
+                FunctionCounter.builder("db_concurrency_dropped_total", limiter, AdaptiveConcurrencyLimiter::getDroppedCount)
+                        .tag("operation", limiter.getName())
+                        .register(registry);
+            }
+        };
+    }
+
+    /**
+     * 负载隔离连接分区指标：分区上限、已用、等待数量，获取次数与获取超时次数
+     * 物理连接池由 ShardingSphere 在创建 DataSource 时创建，注入 DataSource 保证注册指标时连接池已创建
+     */
+    @Bean
+    public MeterBinder workloadBulkheadMetrics(List<DataSource> dataSources) {
+        return registry -> {
+            for (WorkloadHikariDataSource dataSource : WorkloadHikariDataSource.instances()) {
+                for (ConnectionBulkhead bulkhead : dataSource.bulkheads()) {
+                    Gauge.builder("workload_pool_max_connections", bulkhead, ConnectionBulkhead::getMaxConnections)
+                            .tag("datasource", bulkhead.getDataSourceName())
+                            .tag("pool", bulkhead.getName())
+                            .register(registry);
+                    Gauge.builder("workload_pool_active_connections", bulkhead, ConnectionBulkhead::getActive)
+                            .tag("datasource", bulkhead.getDataSourceName())
+                            .tag("pool", bulkhead.getName())
+                            .register(registry);
+                    Gauge.builder("workload_pool_waiting", bulkhead, ConnectionBulkhead::getWaiting)
+                            .tag("datasource", bulkhead.getDataSourceName())
+                            .tag("pool", bulkhead.getName())
+                            .register(registry);
+                    FunctionCounter.builder("workload_pool_acquired_total", bulkhead, ConnectionBulkhead::getAcquiredCount)
+                            .tag("datasource", bulkhead.getDataSourceName())
+                            .tag("pool", bulkhead.getName())
+                            .register(registry);
+                    FunctionCounter.builder("workload_pool_timeout_total", bulkhead, ConnectionBulkhead::getTimeoutCount)
+                            .tag("datasource", bulkhead.getDataSourceName())
+                            .tag("pool", bulkhead.getName())
+                            .register(registry);
+                }
+            }
+        };
+    }
+
+    /**
+     * 读写分离指标：从库复制延迟（-1 表示不可用）、从库是否可读，@ReplicaRead 查询按路由结果计数
+     */
+    @Bean
+    public MeterBinder readWriteSplittingMetrics(ReplicaLagMonitor lagMonitor, ReplicaReadInterceptor interceptor) {
+        return registry -> {
+            for (ReplicaLagMonitor.Replica replica : lagMonitor.getReplicas()) {
+                Gauge.builder("readwrite_replica_lag_seconds", replica, ReplicaLagMonitor.Replica::getLagSeconds)
+                        .tag("replica", replica.getName())
+                        .register(registry);
+            }
+            Gauge.builder("readwrite_replica_available", lagMonitor, monitor -> monitor.isAvailable() ? 1 : 0)
+                    .register(registry);
+            FunctionCounter.builder("readwrite_replica_read_total", interceptor, ReplicaReadInterceptor::getReplicaCount)
+                    .tag("route", "replica")
+                    .register(registry);
+            FunctionCounter.builder("readwrite_replica_read_total", interceptor, ReplicaReadInterceptor::getTransactionCount)
+                    .tag("route", "primary_transaction")
+                    .register(registry);
+            FunctionCounter.builder("readwrite_replica_read_total", interceptor, ReplicaReadInterceptor::getLagCount)
+                    .tag("route", "primary_lag")
+                    .register(registry);
+            FunctionCounter.builder("readwrite_replica_read_total", interceptor, ReplicaReadInterceptor::getRecentWriteCount)
+                    .tag("route", "primary_recent_write")
+                    .register(registry);
+        };
+    }
+
+    /**
+     * RabbitMQ 发布确认指标：待确认数量，确认、拒绝、未路由退回次数
+     */
+    @Bean
+    public MeterBinder rabbitPublisherConfirmMetrics(EventPublisher publisher) {
+        return registry -> {
+            Gauge.builder("rabbit_publisher_pending_confirms", publisher, EventPublisher::getPendingConfirms)
+                    .register(registry);
+            FunctionCounter.builder("rabbit_publisher_confirm_total", publisher, EventPublisher::getAckCount)
+                    .tag("result", "ack")
+                    .register(registry);
+            FunctionCounter.builder("rabbit_publisher_confirm_total", publisher, EventPublisher::getNackCount)
+                    .tag("result", "nack")
+                    .register(registry);
+            FunctionCounter.builder("rabbit_publisher_confirm_total", publisher, EventPublisher::getReturnedCount)
+                    .tag("result", "returned")
+                    .register(registry);
+        };
+    }
+
+}
@@ -1,16 +1,75 @@
 package cn.bugstack.config;
 
+import cn.bugstack.infrastructure.event.AbstractOrderedBatchListener;
+import cn.bugstack.infrastructure.event.EventPublisher;
+import cn.bugstack.trigger.listener.RefundSuccessTopicListener;
+import cn.bugstack.trigger.listener.TeamSuccessTopicListener;
 import org.springframework.amqp.core.*;
+import org.springframework.amqp.rabbit.annotation.RabbitListenerConfigurer;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerEndpoint;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistrar;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
-//@Configuration
-public class RabbitMQConfig {
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 拼团事件（组队成功、退单成功）消息拓扑与消费配置
+ * <p>
+ * 1. 路由：topic 交换机按 routing_key 转发到各事件的一致性哈希交换机（{queue}_hash，需开启 rabbitmq_consistent_hash_exchange 插件），
+ *    哈希交换机按消息头 {@link EventPublisher#HASH_HEADER}（teamId）分片到 {queue}_0 ~ {queue}_{shards-1}
+ * 2. 消费：每个分片队列一个消费者（保证同一队伍的消息顺序），分片之间并行；批量拉取、手动批量确认，见 AbstractOrderedBatchListener
+ * 3. 死信：分片队列的死信交换机为 {queue}_dlx（fanout），失败达到最大投递次数的消息转入 {queue}_dlq，人工排查后重新投递
+ * <p>
+ * 旧的单队列（{queue}）不再有消费者，切换前需等待其消费完毕后在 Broker 上删除，否则仍会按 routing_key 堆积消息。
+ * 已存在的分片队列没有死信参数，参数不一致时声明失败，升级前需等待分片队列消费完毕后删除重建。
+ */
+@Configuration
+public class RabbitMQConfig implements RabbitListenerConfigurer {
+
+    private static final String CONSISTENT_HASH_EXCHANGE_TYPE = "x-consistent-hash";
 
     @Value("${spring.rabbitmq.config.producer.exchange}")
     private String exchangeName;
 
+    @Value("${spring.rabbitmq.config.producer.topic_team_success.routing_key}")
+    private String teamSuccessRoutingKey;
+    @Value("${spring.rabbitmq.config.producer.topic_team_success.queue}")
+    private String teamSuccessQueue;
+
+    @Value("${spring.rabbitmq.config.producer.topic_team_refund.routing_key}")
+    private String teamRefundRoutingKey;
+    @Value("${spring.rabbitmq.config.producer.topic_team_refund.queue}")
+    private String teamRefundQueue;
+
+    @Value("${spring.rabbitmq.config.consumer.shards:4}")
+    private int shards;
+    @Value("${spring.rabbitmq.config.consumer.prefetch:50}")
+    private int prefetch;
+    @Value("${spring.rabbitmq.config.consumer.batch-size:20}")
+    private int batchSize;
+    @Value("${spring.rabbitmq.config.consumer.receive-timeout:100}")
+    private long receiveTimeout;
+    @Value("${spring.rabbitmq.config.consumer.max-attempts:5}")
+    private int maxAttempts;
+
+    private final ConnectionFactory connectionFactory;
+    private final TeamSuccessTopicListener teamSuccessTopicListener;
+    private final RefundSuccessTopicListener refundSuccessTopicListener;
+
+    public RabbitMQConfig(ConnectionFactory connectionFactory, TeamSuccessTopicListener teamSuccessTopicListener, RefundSuccessTopicListener refundSuccessTopicListener) {
+        this.connectionFactory = connectionFactory;
+        this.teamSuccessTopicListener = teamSuccessTopicListener;
+        this.refundSuccessTopicListener = refundSuccessTopicListener;
+    }
+
     /**
      * 专属交换机
      */
@@ -19,16 +78,80 @@ public class RabbitMQConfig {
         return new TopicExchange(exchangeName, true, false);
     }
 
+    @Bean
+    public Declarables teamSuccessTopology() {
+        return shardedTopology(teamSuccessRoutingKey, teamSuccessQueue);
+    }
+
+    @Bean
+    public Declarables teamRefundTopology() {
+        return shardedTopology(teamRefundRoutingKey, teamRefundQueue);
+    }
+
+    @Override
+    public void configureRabbitListeners(RabbitListenerEndpointRegistrar registrar) {
+        SimpleRabbitListenerContainerFactory factory = orderedBatchContainerFactory();
+        registerShardListeners(registrar, factory, teamSuccessQueue, teamSuccessTopicListener);
+        registerShardListeners(registrar, factory, teamRefundQueue, refundSuccessTopicListener);
+    }
+
     /**
-     * 绑定队列到交换机
+     * topic 交换机 -> 一致性哈希交换机 -> 分片队列（权重均为 1）；分片队列死信 -> {queue}_dlx -> {queue}_dlq
      */
-    @Bean
-    public Binding topicTeamSuccessBinding(
-            @Value("${spring.rabbitmq.config.producer.topic_team_success.routing_key}") String routingKey,
-            @Value("${spring.rabbitmq.config.producer.topic_team_success.queue}") String queue) {
-        return BindingBuilder.bind(new Queue(queue, true))
-                .to(topicExchange())
-                .with(routingKey);
+    private Declarables shardedTopology(String routingKey, String queue) {
+        List<Declarable> declarables = new ArrayList<>();
+        CustomExchange hashExchange = new CustomExchange(queue + "_hash", CONSISTENT_HASH_EXCHANGE_TYPE, true, false,
+                Collections.singletonMap("hash-header", EventPublisher.HASH_HEADER));
+        declarables.add(hashExchange);
+        declarables.add(BindingBuilder.bind(hashExchange).to(topicExchange()).with(routingKey));
+
+        FanoutExchange deadLetterExchange = new FanoutExchange(queue + "_dlx", true, false);
+        Queue deadLetterQueue = new Queue(queue + "_dlq", true);
+        declarables.add(deadLetterExchange);
+        declarables.add(deadLetterQueue);
+        declarables.add(BindingBuilder.bind(deadLetterQueue).to(deadLetterExchange));
+
+        Map<String, Object> arguments = new HashMap<>();
+        arguments.put("x-dead-letter-exchange", deadLetterExchange.getName());
+        for (int i = 0; i < shards; i++) {
+            Queue shardQueue = new Queue(shardQueueName(queue, i), true, false, false, arguments);
+            declarables.add(shardQueue);
+            declarables.add(BindingBuilder.bind(shardQueue).to(hashExchange).with("1").noargs());
+        }
+        return new Declarables(declarables);
+    }
+
+    private void registerShardListeners(RabbitListenerEndpointRegistrar registrar,
+                                        SimpleRabbitListenerContainerFactory factory, String queue, AbstractOrderedBatchListener listener) {
+        listener.setMaxDeliveryAttempts(maxAttempts);
+        for (int i = 0; i < shards; i++) {
+            SimpleRabbitListenerEndpoint endpoint = new SimpleRabbitListenerEndpoint();
+            endpoint.setId(shardQueueName(queue, i));
+            endpoint.setQueueNames(shardQueueName(queue, i));
+            endpoint.setMessageListener(listener);
+            registrar.registerEndpoint(endpoint, factory);
+        }
+    }
+
+    /**
+     * 单消费者、批量拉取、手动确认；批量在达到 batch-size 或 receive-timeout 内无新消息时交付
+     */
+    private SimpleRabbitListenerContainerFactory orderedBatchContainerFactory() {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        factory.setConnectionFactory(connectionFactory);
+        factory.setConcurrentConsumers(1);
+        factory.setMaxConcurrentConsumers(1);
+        factory.setPrefetchCount(Math.max(prefetch, batchSize));
+        factory.setBatchListener(true);
+        factory.setConsumerBatchEnabled(true);
+        factory.setBatchSize(batchSize);
+        factory.setReceiveTimeout(receiveTimeout);
+        factory.setAcknowledgeMode(AcknowledgeMode.MANUAL);
+        return factory;
+    }
+
+    private static String shardQueueName(String queue, int shard) {
+        return queue + "_" + shard;
     }
 
 }
@@ -0,0 +1,42 @@
+package cn.bugstack.config;
+
+import cn.bugstack.infrastructure.readwrite.ReplicaReadContext;
+import org.apache.ibatis.cache.CacheKey;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Signature;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.RowBounds;
+import org.apache.shardingsphere.infra.hint.HintManager;
+
+/**
+ * 查询路由拦截器（MyBatis 插件）
+ * <p>
+ * ShardingSphere 读写分离默认将事务外的查询路由到从库。这里反过来默认读主库：
+ * 只有 {@link ReplicaReadContext} 允许时（@ReplicaRead 方法内）才交给负载均衡选择从库，其余查询通过 Hint 强制路由主库，
+ * 锁单幂等校验、事务回查等要求强一致的查询不受从库延迟影响。
+ *
+ * @author liang.tian
+ */
+@Intercepts({
+        @Signature(type = Executor.class, method = "query", args = {MappedStatement.class, Object.class, RowBounds.class, ResultHandler.class}),
+        @Signature(type = Executor.class, method = "query", args = {MappedStatement.class, Object.class, RowBounds.class, ResultHandler.class, CacheKey.class, BoundSql.class})
+})
+public class ReadRouteInterceptor implements Interceptor {
+
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+        if (ReplicaReadContext.isReplicaAllowed() || HintManager.isWriteRouteOnly()) {
+            return invocation.proceed();
+        }
+        try (HintManager hintManager = HintManager.getInstance()) {
+            hintManager.setWriteRouteOnly();
+            return invocation.proceed();
+        }
+    }
+
+}
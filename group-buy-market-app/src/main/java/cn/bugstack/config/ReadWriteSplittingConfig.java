@@ -0,0 +1,93 @@
+package cn.bugstack.config;
+
+import cn.bugstack.infrastructure.readwrite.ReadYourWrites;
+import cn.bugstack.infrastructure.readwrite.ReplicaLagMonitor;
+import cn.bugstack.infrastructure.readwrite.ReplicaRead;
+import cn.bugstack.infrastructure.readwrite.ReplicaReadInterceptor;
+import cn.bugstack.infrastructure.redis.IRedisService;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.aop.Advisor;
+import org.springframework.aop.support.DefaultPointcutAdvisor;
+import org.springframework.aop.support.annotation.AnnotationMatchingPointcut;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Role;
+import org.springframework.core.env.Environment;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 读写分离配置
+ * <p>
+ * 1. 路由：{@link ReadRouteInterceptor} 默认强制读主库，{@link ReplicaRead} 方法由 {@link ReplicaReadInterceptor} 判断后放开读从库
+ * 2. 延迟：{@link ReplicaLagMonitor} 按 ShardingSphere 中配置的从库连接信息独立检查复制延迟，超限时全部回退主库
+ * 3. 读己之写：{@link ReadYourWrites} 标记有效期 = 最大允许延迟 + 1 秒 + 检查间隔，覆盖延迟刚超限、尚未被检测到的窗口
+ * <p>
+ * Advisor 与 {@link DbConcurrencyLimitConfig} 相同声明为基础设施角色，顺序在事务拦截器之前。
+ *
+ * @author liang.tian
+ */
+@Configuration
+@EnableConfigurationProperties(ReadWriteSplittingProperties.class)
+public class ReadWriteSplittingConfig {
+
+    private static final String SHARDING_DATASOURCE_PREFIX = "spring.shardingsphere.datasource.";
+    private static final String READWRITE_SPLITTING_PREFIX = "spring.shardingsphere.rules.readwrite-splitting.data-sources.";
+
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    @Role(BeanDefinition.ROLE_INFRASTRUCTURE)
+    public static ReplicaLagMonitor replicaLagMonitor(Environment environment) {
+        ReadWriteSplittingProperties properties = bindProperties(environment);
+        List<ReplicaLagMonitor.Replica> replicas = new ArrayList<>();
+        if (properties.isEnabled()) {
+            // 数据源名称含下划线，不符合 Binder 的属性名规范，直接按原始 key 读取
+            String readDataSourceNames = environment.getProperty(READWRITE_SPLITTING_PREFIX + properties.getDataSourceName() + ".static-strategy.read-data-source-names");
+            for (String name : StringUtils.split(StringUtils.defaultString(readDataSourceNames), ',')) {
+                String replicaName = name.trim();
+                replicas.add(new ReplicaLagMonitor.Replica(replicaName,
+                        environment.getProperty(SHARDING_DATASOURCE_PREFIX + replicaName + ".jdbc-url"),
+                        environment.getProperty(SHARDING_DATASOURCE_PREFIX + replicaName + ".username"),
+                        environment.getProperty(SHARDING_DATASOURCE_PREFIX + replicaName + ".password")));
+            }
+        }
+        return new ReplicaLagMonitor(replicas, properties.getMaxLagSeconds(), properties.getCheckInterval(), properties.getCheckTimeout());
+    }
+
+    @Bean
+    @Role(BeanDefinition.ROLE_INFRASTRUCTURE)
+    public static ReplicaReadInterceptor replicaReadInterceptor(ReplicaLagMonitor replicaLagMonitor, ObjectProvider<ReadYourWrites> readYourWrites) {
+        return new ReplicaReadInterceptor(replicaLagMonitor, readYourWrites);
+    }
+
+    @Bean
+    @Role(BeanDefinition.ROLE_INFRASTRUCTURE)
+    public static Advisor replicaReadAdvisor(ReplicaReadInterceptor replicaReadInterceptor) {
+        DefaultPointcutAdvisor advisor = new DefaultPointcutAdvisor(
+                AnnotationMatchingPointcut.forMethodAnnotation(ReplicaRead.class), replicaReadInterceptor);
+        advisor.setOrder(20);
+        return advisor;
+    }
+
+    @Bean
+    public ReadRouteInterceptor readRouteInterceptor() {
+        return new ReadRouteInterceptor();
+    }
+
+    @Bean
+    public ReadYourWrites readYourWrites(IRedisService redisService, ReadWriteSplittingProperties properties) {
+        long windowMillis = (properties.getMaxLagSeconds() + 1) * 1000L + properties.getCheckInterval();
+        return new ReadYourWrites(redisService, properties.isEnabled(), windowMillis);
+    }
+
+    private static ReadWriteSplittingProperties bindProperties(Environment environment) {
+        return Binder.get(environment)
+                .bind("readwrite.splitting", ReadWriteSplittingProperties.class)
+                .orElseGet(ReadWriteSplittingProperties::new);
+    }
+
+}
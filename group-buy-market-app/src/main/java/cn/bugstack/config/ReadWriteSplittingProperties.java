@@ -0,0 +1,27 @@
+package cn.bugstack.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * 读写分离配置
+ * <p>
+ * 主从数据源、负载均衡策略在 application-sharding.yml 的 replica 配置中（spring.shardingsphere.rules.readwrite-splitting），
+ * 默认不配置从库；这里只配置应用侧的从库读取条件。
+ */
+@Data
+@ConfigurationProperties(prefix = "readwrite.splitting", ignoreInvalidFields = true)
+public class ReadWriteSplittingProperties {
+
+    /** 是否允许 @ReplicaRead 查询读从库，关闭时全部读主库；需同时激活 replica 配置 */
+    private boolean enabled = false;
+    /** ShardingSphere 读写分离逻辑数据源名称，从中读取从库列表 */
+    private String dataSourceName = "readwrite_ds";
+    /** 从库最大允许复制延迟（单位：秒），任一从库超过时全部读主库 */
+    private long maxLagSeconds = 1;
+    /** 复制延迟检查间隔（单位：毫秒） */
+    private long checkInterval = 1000;
+    /** 复制延迟检查连接、查询超时（单位：毫秒） */
+    private int checkTimeout = 1000;
+
+}
@@ -34,5 +34,9 @@ public class RedisClientConfigProperties {
     private int pingInterval = 0;
     /** 设置是否保持长连接，默认为true */
     private boolean keepAlive = true;
+    /** 缓存对象是否写入紧凑二进制格式，默认为false；解码始终兼容二进制与JSON两种格式，全量发布后再打开 */
+    private boolean compactCodecEnabled = false;
+    /** 紧凑二进制编码的压缩阈值（单位：字节），超过该长度使用 Deflate 压缩，0 表示不压缩，默认为512 */
+    private int compactCodecCompressThreshold = 512;
 
 }
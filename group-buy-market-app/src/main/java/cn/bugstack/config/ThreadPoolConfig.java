@@ -1,23 +1,47 @@
 package cn.bugstack.config;
 
+import cn.bugstack.types.trace.TraceContextExecutor;
+import cn.bugstack.types.utils.SemaphoreBoundedExecutor;
+import cn.bugstack.types.utils.VirtualThreadUtil;
+import cn.bugstack.types.workload.WorkloadContext;
+import cn.bugstack.types.workload.WorkloadRoutingExecutor;
+import cn.bugstack.types.workload.WorkloadType;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.scheduling.annotation.EnableAsync;
 
+import java.util.EnumMap;
+import java.util.Map;
 import java.util.concurrent.*;
 
 @Slf4j
 @EnableAsync
 @Configuration
-@EnableConfigurationProperties(ThreadPoolConfigProperties.class)
+@EnableConfigurationProperties({ThreadPoolConfigProperties.class, VirtualThreadConfigProperties.class})
 public class ThreadPoolConfig {
 
-    @Bean
-    @ConditionalOnMissingBean(ThreadPoolExecutor.class)
-    public ThreadPoolExecutor threadPoolExecutor(ThreadPoolConfigProperties properties) throws ClassNotFoundException, InstantiationException, IllegalAccessException {
+    /**
+     * 通用执行器（试算、结算通知、退单等在线请求的异步任务），任务执行时恢复提交线程的 traceId
+     */
+    @Bean("threadPoolExecutor")
+    @ConditionalOnMissingBean(name = "threadPoolExecutor")
+    public ExecutorService threadPoolExecutor(ThreadPoolConfigProperties properties, VirtualThreadConfigProperties virtualProperties) throws ClassNotFoundException, InstantiationException, IllegalAccessException {
+        // 虚拟线程模式：每任务一个虚拟线程，并发上限由信号量控制
+        if (isVirtualThreadMode(virtualProperties)) {
+            log.info("通用执行器使用虚拟线程模式 maxConcurrency:{}", virtualProperties.getExecutorMaxConcurrency());
+            return new TraceContextExecutor(new SemaphoreBoundedExecutor(
+                    VirtualThreadUtil.newVirtualThreadPerTaskExecutor("vt-executor-"),
+                    virtualProperties.getExecutorMaxConcurrency(),
+                    virtualProperties.getExecutorAcquireTimeout()), "threadPoolExecutor");
+        }
+
         // 实例化策略
         RejectedExecutionHandler handler;
         switch (properties.getPolicy()){
@@ -38,14 +62,171 @@ public class ThreadPoolConfig {
                 break;
         }
         // 创建线程池
-        return new ThreadPoolExecutor(
+        return new TraceContextExecutor(new ThreadPoolExecutor(
                 properties.getCorePoolSize(),
                 properties.getMaxPoolSize(),
                 properties.getKeepAliveTime(),
                 TimeUnit.SECONDS,
                 new LinkedBlockingQueue<>(properties.getBlockQueueSize()),
                 Executors.defaultThreadFactory(),
-                handler);
+                handler), "threadPoolExecutor");
+    }
+
+    /**
+     * 异步消费通用执行器：MQ 监听器中提交的异步任务（如退单后的回调通知），不占用在线请求的执行器
+     */
+    @Bean("consumerExecutor")
+    public ExecutorService consumerExecutor() {
+        return new TraceContextExecutor(new ThreadPoolExecutor(
+                4, 16, 60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(2000),
+                WorkloadContext.threadFactory(WorkloadType.CONSUMER, "consumer-executor-"),
+                // 队列满时由消费线程执行，对消费端形成背压
+                new ThreadPoolExecutor.CallerRunsPolicy()), "consumerExecutor");
+    }
+
+    /**
+     * 批处理通用执行器：任务中提交的异步任务（如超时退单后的回调通知）
+     */
+    @Bean("batchExecutor")
+    public ExecutorService batchExecutor() {
+        return new TraceContextExecutor(new ThreadPoolExecutor(
+                2, 4, 60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(2000),
+                WorkloadContext.threadFactory(WorkloadType.BATCH, "batch-executor-"),
+                // 队列满时由任务线程执行，任务变慢不影响在线请求
+                new ThreadPoolExecutor.CallerRunsPolicy()), "batchExecutor");
+    }
+
+    /**
+     * 按提交线程的负载路由的执行器：在线请求进入 threadPoolExecutor，MQ 监听器进入 consumerExecutor，任务进入 batchExecutor。
+     * 请求、监听器、任务共用的领域服务（退单、结算）使用该执行器；各执行器自行关闭
+     */
+    @Bean(name = "workloadExecutor", destroyMethod = "")
+    public ExecutorService workloadExecutor(@Qualifier("threadPoolExecutor") ExecutorService threadPoolExecutor,
+                                            @Qualifier("consumerExecutor") ExecutorService consumerExecutor,
+                                            @Qualifier("batchExecutor") ExecutorService batchExecutor) {
+        Map<WorkloadType, ExecutorService> executors = new EnumMap<>(WorkloadType.class);
+        executors.put(WorkloadType.CONSUMER, consumerExecutor);
+        executors.put(WorkloadType.BATCH, batchExecutor);
+        return new WorkloadRoutingExecutor(threadPoolExecutor, executors);
+    }
+
+    /**
+     * 热点商品订单消息消费执行器（参考 NFTurbo 的 newBuyPlusConsumePool），库存增量合并写回失败时逐单并行执行
+     */
+    @Bean("hotGoodsConsumeExecutor")
+    public ExecutorService hotGoodsConsumeExecutor(VirtualThreadConfigProperties virtualProperties) {
+        if (isVirtualThreadMode(virtualProperties)) {
+            log.info("MQ消费执行器使用虚拟线程模式 maxConcurrency:{}", virtualProperties.getConsumerMaxConcurrency());
+            // 获取不到许可时阻塞提交线程，与 CallerRunsPolicy 一样对消费端形成背压
+            return new TraceContextExecutor(new SemaphoreBoundedExecutor(
+                    VirtualThreadUtil.newVirtualThreadPerTaskExecutor(
+                            WorkloadContext.threadFactory(WorkloadType.CONSUMER, VirtualThreadUtil.newThreadFactory("hot-goods-create-consume-vt-"))),
+                    virtualProperties.getConsumerMaxConcurrency(),
+                    -1), "hotGoodsConsumeExecutor");
+        }
+
+        return new TraceContextExecutor(new ThreadPoolExecutor(
+                10,  // 核心线程数
+                20,  // 最大线程数
+                60L, TimeUnit.SECONDS,  // 空闲线程存活时间
+                new LinkedBlockingQueue<>(1000),  // 任务队列
+                WorkloadContext.threadFactory(WorkloadType.CONSUMER, "hot-goods-create-consume-"),
+                new ThreadPoolExecutor.CallerRunsPolicy()  // 拒绝策略：调用者运行
+        ), "hotGoodsConsumeExecutor");
+    }
+
+    /**
+     * 旁路验证调度器（延迟校验 Redis 流水与订单落库）
+     */
+    @Bean("bypassVerifyScheduler")
+    public ScheduledExecutorService bypassVerifyScheduler(VirtualThreadConfigProperties virtualProperties) {
+        if (isVirtualThreadMode(virtualProperties)) {
+            // 调度器只负责计时，任务内是 Redis/DB 阻塞调用，载体使用虚拟线程，阻塞时不占用平台线程
+            log.info("旁路验证调度器使用虚拟线程模式 poolSize:{}", virtualProperties.getSchedulerPoolSize());
+            return new ScheduledThreadPoolExecutor(virtualProperties.getSchedulerPoolSize(),
+                    WorkloadContext.threadFactory(WorkloadType.CONSUMER, VirtualThreadUtil.newThreadFactory("bypass-verify-vt-")));
+        }
+        return new ScheduledThreadPoolExecutor(virtualProperties.getSchedulerPoolSize(),
+                WorkloadContext.threadFactory(WorkloadType.CONSUMER, "bypass-verify-"));
+    }
+
+    /**
+     * 普通商品 TCC Confirm 组提交线程（常驻循环攒批，线程数与 NormalGoodsConfirmStage.FLUSHER_COUNT 一致）
+     */
+    @Bean("normalGoodsConfirmExecutor")
+    public ExecutorService normalGoodsConfirmExecutor() {
+        return Executors.newFixedThreadPool(2, WorkloadContext.threadFactory(WorkloadType.CONSUMER, "normal-goods-confirm-"));
+    }
+
+    /**
+     * 库存增量写回线程（按 SKU 聚合写回数据库库存）
+     */
+    @Bean("stockDeltaSyncExecutor")
+    public ExecutorService stockDeltaSyncExecutor() {
+        return Executors.newFixedThreadPool(2, WorkloadContext.threadFactory(WorkloadType.CONSUMER, "stock-delta-sync-"));
+    }
+
+    /**
+     * Redis 库存重建线程（按主键区间分片并行重建）
+     */
+    @Bean("stockRebuildExecutor")
+    public ExecutorService stockRebuildExecutor() {
+        return Executors.newFixedThreadPool(8, WorkloadContext.threadFactory(WorkloadType.BATCH, "stock-rebuild-"));
+    }
+
+    /**
+     * 活动库存预热线程（分批 pipeline 写入库存 Key、加载缓存）
+     */
+    @Bean("stockPreheatExecutor")
+    public ExecutorService stockPreheatExecutor() {
+        return Executors.newFixedThreadPool(4, WorkloadContext.threadFactory(WorkloadType.BATCH, "stock-preheat-"));
+    }
+
+    /**
+     * 热点商品库存租约调度器（流水批量写入、空闲租约归还、节点心跳）
+     */
+    @Bean("stockLeaseScheduler")
+    public ScheduledExecutorService stockLeaseScheduler() {
+        return new ScheduledThreadPoolExecutor(2, WorkloadContext.threadFactory(WorkloadType.CONSUMER, "stock-lease-"));
+    }
+
+    /**
+     * Tomcat 请求处理使用虚拟线程，替代 server.tomcat.threads.max 的平台线程池
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "thread.virtual.config", name = "enabled", havingValue = "true")
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandlerCustomizer(VirtualThreadConfigProperties virtualProperties) {
+        return protocolHandler -> {
+            if (!isVirtualThreadMode(virtualProperties)) return;
+            log.info("Tomcat 使用虚拟线程模式 maxConcurrency:{}", virtualProperties.getTomcatMaxConcurrency());
+            // 任务由 Poller 线程提交，等待许可会阻塞所有连接的 accept / keep-alive 处理，许可不足时立即拒绝
+            protocolHandler.setExecutor(new SemaphoreBoundedExecutor(
+                    VirtualThreadUtil.newVirtualThreadPerTaskExecutor("tomcat-vt-"),
+                    virtualProperties.getTomcatMaxConcurrency(), 0));
+        };
+    }
+
+    private boolean isVirtualThreadMode(VirtualThreadConfigProperties virtualProperties) {
+        if (!virtualProperties.isEnabled()) return false;
+        if (!VirtualThreadUtil.isSupported()) {
+            log.warn("已开启虚拟线程模式，但当前 JDK 不支持，回退到平台线程池 java.version:{}", System.getProperty("java.version"));
+            return false;
+        }
+        applyPinnedThreadsTrace(virtualProperties);
+        return true;
+    }
+
+    /**
+     * 钉住诊断：虚拟线程在 synchronized 块或本地方法中阻塞时会钉住载体线程，开启后 JDK 会打印钉住时的堆栈。
+     * 该参数在首个虚拟线程创建时读取，因此需在创建虚拟线程执行器之前设置；已通过 JVM 参数设置的不覆盖。
+     */
+    private void applyPinnedThreadsTrace(VirtualThreadConfigProperties virtualProperties) {
+        String trace = virtualProperties.getPinnedThreadsTrace();
+        if (StringUtils.isBlank(trace) || null != System.getProperty("jdk.tracePinnedThreads")) return;
+        System.setProperty("jdk.tracePinnedThreads", trace);
+        log.info("虚拟线程钉住诊断已开启 jdk.tracePinnedThreads={}", trace);
     }
 
 }
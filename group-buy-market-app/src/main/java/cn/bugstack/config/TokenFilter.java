@@ -1,18 +1,29 @@
 package cn.bugstack.config;
 
+import cn.bugstack.types.enums.TokenSceneEnum;
 import cn.bugstack.types.utils.TokenUtil;
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
 import lombok.extern.slf4j.Slf4j;
 import org.jetbrains.annotations.NotNull;
 import org.redisson.api.RScript;
 import org.redisson.api.RedissonClient;
 import org.redisson.client.RedisException;
+import org.springframework.util.StreamUtils;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import javax.servlet.FilterChain;
+import javax.servlet.ReadListener;
 import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
 import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.util.Collections;
 
 /**
@@ -25,6 +36,7 @@ public class TokenFilter extends OncePerRequestFilter {
 
     private static final String HEADER_VALUE_NULL = "null";
     private static final String HEADER_VALUE_UNDEFINED = "undefined";
+    private static final String TOKEN_KEY_PREFIX = "token";
     
     /**
      * Lua脚本：原子性地校验并删除Token
@@ -69,8 +81,25 @@ public class TokenFilter extends OncePerRequestFilter {
                 return;
             }
 
+            // 解密token得到原始的tokenKey（token:lock_order:activityId:userId）
+            String[] claims = parseTokenKey(token);
+            if (null == claims) {
+                writeErrorResponse(response, HttpServletResponse.SC_UNAUTHORIZED, "Token无效或已被使用");
+                return;
+            }
+
+            // Token只能用于发放时的活动和用户：排队活动的锁单不能使用其他活动（未开启排队）获取的Token
+            CachedBodyRequest cachedBodyRequest = new CachedBodyRequest(request);
+            if (!matchRequest(claims, cachedBodyRequest.getBody())) {
+                if (log.isDebugEnabled()) {
+                    log.warn("Token校验失败: Token与请求的活动或用户不匹配, tokenActivityId: {}, tokenUserId: {}", claims[2], claims[3]);
+                }
+                writeErrorResponse(response, HttpServletResponse.SC_FORBIDDEN, "Token与请求的活动或用户不匹配");
+                return;
+            }
+
             // 校验Token的有效性
-            boolean isValid = checkTokenValidity(token);
+            boolean isValid = checkTokenValidity(claims[0], token);
             if (!isValid) {
                 // log.error("Token校验失败: Token无效或已过期, token: {}", token);
                 // 优化：降低日志级别，减少日志内容，避免高并发IO瓶颈
@@ -81,27 +110,61 @@ public class TokenFilter extends OncePerRequestFilter {
                 return;
             }
 
-            // Token有效，继续执行
-            filterChain.doFilter(request, response);
+            // Token有效，继续执行（请求体已读取，传递缓存后的请求）
+            filterChain.doFilter(cachedBodyRequest, response);
         } finally {
             TOKEN_THREAD_LOCAL.remove();
         }
     }
 
+    /**
+     * 解密Token并拆分tokenKey
+     *
+     * @return {tokenKey, scene, activityId, userId}，格式错误或解密失败时返回 null
+     */
+    private String[] parseTokenKey(String token) {
+        String tokenKey;
+        try {
+            tokenKey = TokenUtil.getTokenKeyByValue(token);
+        } catch (Exception e) {
+            // 优化：解密异常通常是攻击或错误Token导致，无需打印堆栈，改为Warn级别
+            log.warn("Token校验失败: 格式错误或解密失败");
+            return null;
+        }
+        // 用户ID可能包含分隔符，只拆分前三段
+        String[] parts = tokenKey.split(":", 4);
+        if (parts.length != 4 || !TOKEN_KEY_PREFIX.equals(parts[0])
+                || !TokenSceneEnum.LOCK_ORDER.getScene().equals(parts[1])) {
+            log.warn("Token校验失败: tokenKey格式错误");
+            return null;
+        }
+        return new String[]{tokenKey, parts[1], parts[2], parts[3]};
+    }
+
+    /**
+     * 请求体中的活动ID、用户ID与Token发放时一致
+     */
+    private boolean matchRequest(String[] claims, byte[] body) {
+        try {
+            JSONObject requestBody = JSON.parseObject(new String(body, StandardCharsets.UTF_8));
+            if (null == requestBody) return false;
+            return claims[2].equals(requestBody.getString("activityId")) && claims[3].equals(requestBody.getString("userId"));
+        } catch (Exception e) {
+            log.warn("Token校验失败: 请求体格式错误");
+            return false;
+        }
+    }
+
     /**
      * 校验Token有效性
      * <p>
-     * 1. 解密token得到tokenKey
-     * 2. 使用Lua脚本原子性地校验并删除token
-     * 3. 如果token存在且值匹配，则删除并返回true
-     * 4. 否则返回false
+     * 1. 使用Lua脚本原子性地校验并删除token
+     * 2. 如果token存在且值匹配，则删除并返回true
+     * 3. 否则返回false
      * </p>
      */
-    private boolean checkTokenValidity(String token) {
+    private boolean checkTokenValidity(String tokenKey, String token) {
         try {
-            // 解密token得到原始的tokenKey
-            String tokenKey = TokenUtil.getTokenKeyByValue(token);
-            
             // 执行Lua脚本：原子性地校验并删除token
             String result = redissonClient.getScript().eval(
                     RScript.Mode.READ_WRITE,
@@ -118,9 +181,7 @@ public class TokenFilter extends OncePerRequestFilter {
             log.error("Token校验失败: Redis异常", e);
             return false;
         } catch (Exception e) {
-            // 优化：解密异常通常是攻击或错误Token导致，无需打印堆栈，改为Warn级别
-            // log.error("Token校验失败: 解密异常", e);
-            log.warn("Token校验失败: 格式错误或解密失败");
+            log.warn("Token校验失败: {}", e.getMessage());
             return false;
         }
     }
@@ -135,5 +196,53 @@ public class TokenFilter extends OncePerRequestFilter {
         String json = String.format("{\"code\":\"E0008\",\"info\":\"%s\"}", message);
         response.getWriter().write(json);
     }
+
+    /**
+     * 缓存请求体：过滤器读取请求体校验Token后，Controller 仍可再次读取
+     */
+    private static class CachedBodyRequest extends HttpServletRequestWrapper {
+
+        private final byte[] body;
+
+        private CachedBodyRequest(HttpServletRequest request) throws IOException {
+            super(request);
+            this.body = StreamUtils.copyToByteArray(request.getInputStream());
+        }
+
+        private byte[] getBody() {
+            return body;
+        }
+
+        @Override
+        public ServletInputStream getInputStream() {
+            ByteArrayInputStream inputStream = new ByteArrayInputStream(body);
+            return new ServletInputStream() {
+                @Override
+                public boolean isFinished() {
+                    return inputStream.available() == 0;
+                }
+
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+
+                @Override
+                public void setReadListener(ReadListener readListener) {
+                    throw new UnsupportedOperationException();
+                }
+
+                @Override
+                public int read() {
+                    return inputStream.read();
+                }
+            };
+        }
+
+        @Override
+        public BufferedReader getReader() {
+            return new BufferedReader(new InputStreamReader(getInputStream(), StandardCharsets.UTF_8));
+        }
+    }
 }
 
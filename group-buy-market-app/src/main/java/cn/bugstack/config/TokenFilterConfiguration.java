@@ -24,6 +24,9 @@ public class TokenFilterConfiguration {
         
         // 配置需要Token校验的URL
         registrationBean.addUrlPatterns("/api/v1/gbm/trade/lock_market_pay_order");
+        // 热点商品锁单：Token 只发放给排队放行的用户，锁单流量受放行速率约束；
+        // 过滤器校验请求体中的活动ID、用户ID与 Token 一致，其他活动的 Token 不能绕过排队
+        registrationBean.addUrlPatterns("/api/v1/gbm/trade/hot-goods/lock_order", "/api/v1/gbm/trade/hot-goods/lock_order_async");
         
         // 设置过滤器顺序
         registrationBean.setOrder(10);
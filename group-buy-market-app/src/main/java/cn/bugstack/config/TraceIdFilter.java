@@ -1,5 +1,7 @@
 package cn.bugstack.config;
 
+import cn.bugstack.types.trace.TraceContext;
+import cn.bugstack.types.trace.TraceSpan;
 import org.jetbrains.annotations.NotNull;
 import org.slf4j.MDC;
 import org.springframework.stereotype.Component;
@@ -10,20 +12,23 @@ import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
-import java.util.UUID;
 
+/**
+ * 链路入口：沿用上游传入的 X-Trace-Id（网关、压测脚本），没有时生成，并写回响应头。
+ * 异步锁单（DeferredResult）的后续阶段由 TraceContextExecutor 传递 traceId。
+ */
 @Component
 public class TraceIdFilter extends OncePerRequestFilter {
 
-    private static final String TRACE_ID = "trace-id";
-
     @Override
     protected void doFilterInternal(@NotNull HttpServletRequest request, @NotNull HttpServletResponse response, FilterChain filterChain)
             throws ServletException, IOException {
         try {
-            String traceId = UUID.randomUUID().toString();
-            MDC.put(TRACE_ID, traceId);
-            filterChain.doFilter(request, response);
+            TraceContext.attach(request.getHeader(TraceContext.HTTP_HEADER));
+            response.setHeader(TraceContext.HTTP_HEADER, TraceContext.getTraceId());
+            try (TraceSpan ignored = TraceSpan.start("http." + request.getRequestURI())) {
+                filterChain.doFilter(request, response);
+            }
         } finally {
             MDC.clear();
         }
@@ -0,0 +1,28 @@
+package cn.bugstack.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * 虚拟线程执行模式配置（需运行在 JDK 21+，低版本 JDK 自动回退到平台线程池）
+ */
+@Data
+@ConfigurationProperties(prefix = "thread.virtual.config", ignoreInvalidFields = true)
+public class VirtualThreadConfigProperties {
+
+    /** 是否开启虚拟线程模式，默认为false；关闭时使用原平台线程池，便于压测 A/B 对比 */
+    private boolean enabled = false;
+    /** 通用执行器（活动试算、结算通知等）最大并发数，替代线程池大小 */
+    private int executorMaxConcurrency = 1000;
+    /** 通用执行器获取许可的等待时间（单位：毫秒），超时拒绝 */
+    private long executorAcquireTimeout = 100;
+    /** Tomcat 请求处理最大并发数，替代 server.tomcat.threads.max；超过时立即拒绝，不在 Poller 线程上等待许可 */
+    private int tomcatMaxConcurrency = 2000;
+    /** MQ 消费最大并发数，替代消费线程池大小；获取不到许可时阻塞消费线程形成背压 */
+    private int consumerMaxConcurrency = 64;
+    /** 旁路验证调度器载体数量；虚拟线程模式下调度线程本身也是虚拟线程 */
+    private int schedulerPoolSize = 20;
+    /** 钉住诊断 jdk.tracePinnedThreads（short/full），为空不开启；建议直接通过 JVM 参数设置 */
+    private String pinnedThreadsTrace = "";
+
+}
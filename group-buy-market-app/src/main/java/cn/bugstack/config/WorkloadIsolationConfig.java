@@ -0,0 +1,109 @@
+package cn.bugstack.config;
+
+import cn.bugstack.infrastructure.workload.ConnectionBulkhead;
+import cn.bugstack.infrastructure.workload.WorkloadHikariDataSource;
+import cn.bugstack.types.workload.Workload;
+import cn.bugstack.types.workload.WorkloadContext;
+import cn.bugstack.types.workload.WorkloadType;
+import lombok.extern.slf4j.Slf4j;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.springframework.aop.Advisor;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.aop.support.ComposablePointcut;
+import org.springframework.aop.support.DefaultPointcutAdvisor;
+import org.springframework.aop.support.annotation.AnnotationMatchingPointcut;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Role;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.core.env.Environment;
+import org.springframework.util.ClassUtils;
+
+import java.lang.reflect.Method;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * 负载隔离配置
+ * <p>
+ * 1. 数据源：ShardingSphere 物理连接池类型为 {@link WorkloadHikariDataSource}，每个 Hikari 连接池按线程负载类型划分物理连接，
+ *    批处理任务最多占满自己的分区；分区配置在容器创建数据源之前设置
+ * 2. 注解：{@link Workload} 标注的类/方法执行期间切换负载类型（任务、MQ 监听器），Advisor 与 {@link LatencyMetricsConfig} 相同由事务代理机制织入，
+ *    顺序在事务拦截器之前，事务开启时已处于对应负载
+ * 3. 执行器：后台执行器线程固定为异步消费或批处理负载，通用异步任务按提交线程的负载路由到在线、消费、批处理执行器，见 {@link ThreadPoolConfig}
+ * <p>
+ * 分区使用率、等待数、获取超时次数见 {@link MetricsConfig#workloadBulkheadMetrics}，告警规则见 docs/dev-ops/prometheus/rules。
+ *
+ * @author liang.tian
+ */
+@Slf4j
+@Configuration
+@EnableConfigurationProperties(WorkloadIsolationProperties.class)
+public class WorkloadIsolationConfig {
+
+    @Bean
+    public static BeanFactoryPostProcessor workloadConnectionPartitionConfigurer(Environment environment) {
+        return beanFactory -> {
+            WorkloadIsolationProperties properties = Binder.get(environment)
+                    .bind("workload.isolation", WorkloadIsolationProperties.class)
+                    .orElseGet(WorkloadIsolationProperties::new);
+            if (!properties.isEnabled()) {
+                WorkloadHikariDataSource.configure(null);
+                return;
+            }
+
+            WorkloadHikariDataSource.configure((poolName, maximumPoolSize) -> {
+                Map<WorkloadType, ConnectionBulkhead> bulkheads = new EnumMap<>(WorkloadType.class);
+                bulkheads.put(WorkloadType.ONLINE, bulkhead(WorkloadType.ONLINE, poolName, maximumPoolSize, properties.getOnline(), properties.getAlarmRatio()));
+                bulkheads.put(WorkloadType.CONSUMER, bulkhead(WorkloadType.CONSUMER, poolName, maximumPoolSize, properties.getConsumer(), properties.getAlarmRatio()));
+                bulkheads.put(WorkloadType.BATCH, bulkhead(WorkloadType.BATCH, poolName, maximumPoolSize, properties.getBatch(), properties.getAlarmRatio()));
+                log.info("连接池开启负载隔离: pool={}, size={}, online={}, consumer={}, batch={}", poolName, maximumPoolSize,
+                        bulkheads.get(WorkloadType.ONLINE).getMaxConnections(),
+                        bulkheads.get(WorkloadType.CONSUMER).getMaxConnections(),
+                        bulkheads.get(WorkloadType.BATCH).getMaxConnections());
+                return bulkheads;
+            });
+        };
+    }
+
+    @Bean
+    @Role(BeanDefinition.ROLE_INFRASTRUCTURE)
+    public static Advisor workloadAdvisor() {
+        ComposablePointcut pointcut = new ComposablePointcut(new AnnotationMatchingPointcut(Workload.class, true))
+                .union(AnnotationMatchingPointcut.forMethodAnnotation(Workload.class));
+        MethodInterceptor interceptor = invocation -> {
+            WorkloadType previous = WorkloadContext.attach(workloadOf(invocation.getMethod(), invocation.getThis()));
+            try {
+                return invocation.proceed();
+            } finally {
+                WorkloadContext.detach(previous);
+            }
+        };
+        DefaultPointcutAdvisor advisor = new DefaultPointcutAdvisor(pointcut, interceptor);
+        advisor.setOrder(5);
+        return advisor;
+    }
+
+    private static WorkloadType workloadOf(Method method, Object target) {
+        Class<?> targetClass = null == target ? method.getDeclaringClass() : ClassUtils.getUserClass(target);
+        Workload workload = AnnotatedElementUtils.findMergedAnnotation(AopUtils.getMostSpecificMethod(method, targetClass), Workload.class);
+        if (null == workload) {
+            workload = AnnotatedElementUtils.findMergedAnnotation(targetClass, Workload.class);
+        }
+        return null == workload ? WorkloadContext.current() : workload.value();
+    }
+
+    /**
+     * 分区上限不超过连接池大小
+     */
+    private static ConnectionBulkhead bulkhead(WorkloadType workloadType, String poolName, int maximumPoolSize,
+                                               WorkloadIsolationProperties.Pool pool, double alarmRatio) {
+        return new ConnectionBulkhead(workloadType, poolName, pool.getName(), Math.min(pool.getMaxConnections(), maximumPoolSize),
+                pool.getAcquireTimeout(), alarmRatio);
+    }
+
+}
@@ -0,0 +1,46 @@
+package cn.bugstack.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * 负载隔离配置：在线请求、异步消费、批处理任务各自的数据库连接分区
+ * <p>
+ * 每个 ShardingSphere 物理连接池（{@code WorkloadHikariDataSource}）各自按以下上限划分，上限超过连接池大小时取连接池大小；
+ * 异步消费与批处理分区之和应明显小于连接池大小（主库 maximum-pool-size: 100），为在线请求保留连接。
+ */
+@Data
+@ConfigurationProperties(prefix = "workload.isolation", ignoreInvalidFields = true)
+public class WorkloadIsolationProperties {
+
+    /** 是否开启连接分区，关闭时所有负载共用连接池 */
+    private boolean enabled = true;
+    /** 使用率告警水位（已用连接 / 分区上限） */
+    private double alarmRatio = 0.9;
+    /** 在线请求分区 */
+    private Pool online = new Pool("online_pool", 100, 30000);
+    /** 异步消费分区 */
+    private Pool consumer = new Pool("consumer_pool", 30, 5000);
+    /** 批处理任务分区 */
+    private Pool batch = new Pool("batch_pool", 10, 60000);
+
+    @Data
+    public static class Pool {
+        /** 分区名称（指标 pool 标签） */
+        private String name;
+        /** 最多同时持有的连接数 */
+        private int maxConnections;
+        /** 获取连接的等待时间（单位：毫秒），超时抛出异常 */
+        private long acquireTimeout;
+
+        public Pool() {
+        }
+
+        public Pool(String name, int maxConnections, long acquireTimeout) {
+            this.name = name;
+            this.maxConnections = maxConnections;
+            this.acquireTimeout = acquireTimeout;
+        }
+    }
+
+}
@@ -0,0 +1,100 @@
+package cn.bugstack.test.domain.trade;
+
+import cn.bugstack.domain.trade.adapter.port.IMessageProducer;
+import cn.bugstack.domain.trade.adapter.repository.ISkuRepository;
+import cn.bugstack.domain.trade.model.entity.NormalGoodsConfirmEntity;
+import cn.bugstack.domain.trade.service.normal.NormalGoodsConfirmStage;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.mockito.Mockito.*;
+
+/**
+ * 普通商品 Confirm 组提交：按 SKU 分组、失败退回逐单、逐单失败发送疑似废单消息
+ */
+public class NormalGoodsConfirmStageTest {
+
+    private ISkuRepository skuRepository;
+    private IMessageProducer messageProducer;
+    private NormalGoodsConfirmStage stage;
+
+    @Before
+    public void init() {
+        skuRepository = Mockito.mock(ISkuRepository.class);
+        messageProducer = Mockito.mock(IMessageProducer.class);
+        stage = new NormalGoodsConfirmStage();
+        ReflectionTestUtils.setField(stage, "skuRepository", skuRepository);
+        ReflectionTestUtils.setField(stage, "messageProducer", messageProducer);
+    }
+
+    @Test
+    public void test_flush_groupBySku() {
+        when(skuRepository.confirmOrdersWithSkuStock(anyLong(), anyString(), anyList())).thenReturn(true);
+
+        stage.recover(Arrays.asList(
+                order("o1", "u1", 100L, "g1"),
+                order("o2", "u2", 100L, "g1"),
+                order("o3", "u3", 100L, "g2")));
+
+        verify(skuRepository).confirmOrdersWithSkuStock(eq(100L), eq("g1"), argThat(orders -> orders.size() == 2));
+        verify(skuRepository).confirmOrdersWithSkuStock(eq(100L), eq("g2"), argThat(orders -> orders.size() == 1));
+        Assert.assertEquals(3, stage.getBatchConfirmedCount());
+        Assert.assertEquals(0, stage.getFallbackCount());
+        verifyNoInteractions(messageProducer);
+    }
+
+    @Test
+    public void test_groupFailure_fallbackToSingle() {
+        // 整组失败（如库存不足），逐单执行时第一单成功、第二单仍失败
+        NormalGoodsConfirmEntity o1 = order("o1", "u1", 100L, "g1");
+        NormalGoodsConfirmEntity o2 = order("o2", "u2", 100L, "g1");
+        when(skuRepository.confirmOrdersWithSkuStock(eq(100L), eq("g1"), argThat(orders -> orders.size() == 2))).thenReturn(false);
+        when(skuRepository.confirmOrdersWithSkuStock(100L, "g1", Collections.singletonList(o1))).thenReturn(true);
+        when(skuRepository.confirmOrdersWithSkuStock(100L, "g1", Collections.singletonList(o2))).thenReturn(false);
+
+        stage.recover(Arrays.asList(o1, o2));
+
+        Assert.assertEquals(0, stage.getBatchConfirmedCount());
+        Assert.assertEquals(2, stage.getFallbackCount());
+        Assert.assertEquals(1, stage.getFailedCount());
+        // 第二单重试 2 次后发送疑似废单消息
+        verify(skuRepository, times(2)).confirmOrdersWithSkuStock(100L, "g1", Collections.singletonList(o2));
+        verify(messageProducer).sendDelayMessage(eq("normalGoodsOrderPreCancel-out-0"), eq("o2"), anyString(), eq(1));
+        verify(messageProducer, never()).sendDelayMessage(anyString(), eq("o1"), anyString(), anyInt());
+    }
+
+    @Test
+    public void test_groupException_fallbackToSingle() {
+        NormalGoodsConfirmEntity o1 = order("o1", "u1", 100L, "g1");
+        List<NormalGoodsConfirmEntity> orders = Collections.singletonList(o1);
+        when(skuRepository.confirmOrdersWithSkuStock(100L, "g1", orders))
+                .thenThrow(new IllegalStateException("TCC Confirm-确认订单数量不一致"))
+                .thenReturn(true);
+
+        stage.recover(orders);
+
+        Assert.assertEquals(1, stage.getFallbackCount());
+        Assert.assertEquals(0, stage.getFailedCount());
+        verifyNoInteractions(messageProducer);
+    }
+
+    private static NormalGoodsConfirmEntity order(String orderId, String userId, Long activityId, String goodsId) {
+        return NormalGoodsConfirmEntity.builder()
+                .orderId(orderId)
+                .userId(userId)
+                .activityId(activityId)
+                .goodsId(goodsId)
+                .teamId("t-" + orderId)
+                .quantity(1)
+                .validTime(15)
+                .build();
+    }
+
+}
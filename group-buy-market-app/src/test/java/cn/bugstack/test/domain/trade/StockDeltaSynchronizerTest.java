@@ -0,0 +1,127 @@
+package cn.bugstack.test.domain.trade;
+
+import cn.bugstack.domain.trade.adapter.repository.ISkuRepository;
+import cn.bugstack.domain.trade.model.entity.StockDeltaEntity;
+import cn.bugstack.domain.trade.service.hot.StockDeltaSynchronizer;
+import com.google.common.util.concurrent.MoreExecutors;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.mockito.Mockito.*;
+
+/**
+ * 库存增量写回：按 类型 + SKU 分组、整组失败退回逐单、释放合并、有界等待
+ */
+public class StockDeltaSynchronizerTest {
+
+    private ISkuRepository skuRepository;
+    private StockDeltaSynchronizer synchronizer;
+
+    @Before
+    public void init() {
+        skuRepository = Mockito.mock(ISkuRepository.class);
+        synchronizer = new StockDeltaSynchronizer();
+        ReflectionTestUtils.setField(synchronizer, "skuRepository", skuRepository);
+        ReflectionTestUtils.setField(synchronizer, "fallbackExecutor", MoreExecutors.newDirectExecutorService());
+    }
+
+    @Test
+    public void test_flush_groupBySku() {
+        when(skuRepository.decreaseSkuStockBatch(anyLong(), anyString(), anyList())).thenReturn(true);
+
+        List<CompletableFuture<Boolean>> futures = Arrays.asList(
+                synchronizer.submit(delta("o1", "u1", "g1")),
+                synchronizer.submit(delta("o2", "u2", "g1")),
+                synchronizer.submit(delta("o3", "u3", "g2")));
+        ReflectionTestUtils.invokeMethod(synchronizer, "flushAll");
+
+        verify(skuRepository).decreaseSkuStockBatch(eq(100L), eq("g1"), argThat(deltas -> deltas.size() == 2));
+        verify(skuRepository).decreaseSkuStockBatch(eq(100L), eq("g2"), argThat(deltas -> deltas.size() == 1));
+        Assert.assertEquals(Arrays.asList(true, true, true), synchronizer.await(futures));
+        Assert.assertEquals(2L, synchronizer.getSkuUpdateCount());
+        Assert.assertEquals(3L, synchronizer.getMergedDeltaCount());
+        Assert.assertEquals(0L, synchronizer.getFallbackCount());
+    }
+
+    @Test
+    public void test_groupFailure_fallbackToSingle() {
+        // 整组失败（如库存不足），逐单执行时第一单成功、第二单仍失败
+        when(skuRepository.decreaseSkuStockBatch(anyLong(), anyString(), anyList())).thenReturn(false);
+        when(skuRepository.decreaseSkuStock(100L, "g1", 1, "o1", "u1")).thenReturn(true);
+        when(skuRepository.decreaseSkuStock(100L, "g1", 1, "o2", "u2")).thenThrow(new IllegalStateException("库存不足"));
+
+        List<CompletableFuture<Boolean>> futures = Arrays.asList(
+                synchronizer.submit(delta("o1", "u1", "g1")),
+                synchronizer.submit(delta("o2", "u2", "g1")));
+        ReflectionTestUtils.invokeMethod(synchronizer, "flushAll");
+
+        Assert.assertEquals(Arrays.asList(true, false), synchronizer.await(futures));
+        Assert.assertEquals(2L, synchronizer.getFallbackCount());
+        Assert.assertEquals(1L, synchronizer.getFailedCount());
+    }
+
+    @Test
+    public void test_release_separatedFromFreeze() {
+        when(skuRepository.decreaseSkuStockBatch(anyLong(), anyString(), anyList())).thenReturn(true);
+        when(skuRepository.releaseSkuStockBatch(anyLong(), anyString(), anyList())).thenReturn(true);
+
+        List<CompletableFuture<Boolean>> futures = Arrays.asList(
+                synchronizer.submit(delta("o1", "u1", "g1")),
+                synchronizer.submitRelease(delta("o2", "u2", "g1")),
+                synchronizer.submitRelease(delta("o3", "u3", "g1")));
+        ReflectionTestUtils.invokeMethod(synchronizer, "flushAll");
+
+        // 同一 SKU 的冻结与释放分别合并，互不混入
+        verify(skuRepository).decreaseSkuStockBatch(eq(100L), eq("g1"), argThat(deltas -> deltas.size() == 1));
+        verify(skuRepository).releaseSkuStockBatch(eq(100L), eq("g1"), argThat(deltas -> deltas.size() == 2));
+        Assert.assertEquals(Arrays.asList(true, true, true), synchronizer.await(futures));
+        Assert.assertEquals(2L, synchronizer.getReleasedDeltaCount());
+    }
+
+    @Test
+    public void test_releaseFailure_fallbackToSingle() {
+        StockDeltaEntity o1 = delta("o1", "u1", "g1");
+        StockDeltaEntity o2 = delta("o2", "u2", "g1");
+        when(skuRepository.releaseSkuStockBatch(eq(100L), eq("g1"), argThat(deltas -> deltas.size() == 2)))
+                .thenThrow(new IllegalStateException("TCC Cancel-更新流水数量不一致"));
+        when(skuRepository.releaseSkuStockBatch(100L, "g1", Collections.singletonList(o1))).thenReturn(true);
+        when(skuRepository.releaseSkuStockBatch(100L, "g1", Collections.singletonList(o2))).thenReturn(true);
+
+        List<CompletableFuture<Boolean>> futures = Arrays.asList(synchronizer.submitRelease(o1), synchronizer.submitRelease(o2));
+        ReflectionTestUtils.invokeMethod(synchronizer, "flushAll");
+
+        Assert.assertEquals(Arrays.asList(true, true), synchronizer.await(futures));
+        Assert.assertEquals(2L, synchronizer.getFallbackCount());
+        verify(skuRepository, never()).decreaseSkuStock(anyLong(), anyString(), anyInt(), anyString(), anyString());
+    }
+
+    @Test
+    public void test_await_timeout() {
+        // 未写回的增量不会让消费线程无限等待
+        CompletableFuture<Boolean> pending = synchronizer.submit(delta("o1", "u1", "g1"));
+        long start = System.currentTimeMillis();
+
+        Assert.assertEquals(Collections.singletonList(false), synchronizer.await(Collections.singletonList(pending)));
+        Assert.assertTrue(System.currentTimeMillis() - start < 5000L);
+        Assert.assertEquals(1L, synchronizer.getAwaitTimeoutCount());
+    }
+
+    private static StockDeltaEntity delta(String orderId, String userId, String goodsId) {
+        return StockDeltaEntity.builder()
+                .orderId(orderId)
+                .userId(userId)
+                .activityId(100L)
+                .goodsId(goodsId)
+                .quantity(1)
+                .build();
+    }
+
+}
@@ -0,0 +1,153 @@
+package cn.bugstack.test.domain.trade;
+
+import cn.bugstack.domain.trade.adapter.port.IRedisAdapter;
+import cn.bugstack.domain.trade.adapter.repository.IInventoryDeductionLogRepository;
+import cn.bugstack.domain.trade.adapter.repository.IStockRebuildRepository;
+import cn.bugstack.domain.trade.model.entity.InventoryDeductionLogEntity;
+import cn.bugstack.domain.trade.model.entity.StockRebuildReportEntity;
+import cn.bugstack.domain.trade.model.entity.StockRebuildSkuEntity;
+import cn.bugstack.domain.trade.model.entity.StockRebuildTeamEntity;
+import cn.bugstack.domain.trade.model.valobj.StockJournalEntryVO;
+import cn.bugstack.domain.trade.model.valobj.StockRedisSnapshotVO;
+import cn.bugstack.domain.trade.service.rebuild.StockRebuildService;
+import com.google.common.util.concurrent.MoreExecutors;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.mockito.Mockito.*;
+
+/**
+ * 库存重建：在途扣减按流水计算、流水缺失时按 TRY 订单估算、在途占位、dryRun、分片失败
+ */
+public class StockRebuildServiceTest {
+
+    private static final String SKU = "100_g1";
+    private static final String GOODS_KEY = "group_buy_market_goods_stock_" + SKU;
+    private static final String TEAM_KEY = "group_buy_market_team_stock_key_100_t1";
+
+    private IStockRebuildRepository stockRebuildRepository;
+    private IInventoryDeductionLogRepository inventoryDeductionLogRepository;
+    private IRedisAdapter redisAdapter;
+    private StockRebuildService stockRebuildService;
+
+    @Before
+    public void init() {
+        stockRebuildRepository = Mockito.mock(IStockRebuildRepository.class);
+        inventoryDeductionLogRepository = Mockito.mock(IInventoryDeductionLogRepository.class);
+        redisAdapter = Mockito.mock(IRedisAdapter.class);
+        stockRebuildService = new StockRebuildService();
+        ReflectionTestUtils.setField(stockRebuildService, "stockRebuildRepository", stockRebuildRepository);
+        ReflectionTestUtils.setField(stockRebuildService, "inventoryDeductionLogRepository", inventoryDeductionLogRepository);
+        ReflectionTestUtils.setField(stockRebuildService, "redisAdapter", redisAdapter);
+        ReflectionTestUtils.setField(stockRebuildService, "executor", MoreExecutors.newDirectExecutorService());
+
+        when(stockRebuildRepository.queryActiveSkuMaxId()).thenReturn(1L);
+        when(stockRebuildRepository.queryActiveSkuList(anyLong(), anyLong())).thenReturn(Collections.singletonList(
+                StockRebuildSkuEntity.builder().activityId(100L).goodsId("g1").saleableInventory(100).frozenInventory(10).build()));
+        when(stockRebuildRepository.queryTryOrderCountBySku()).thenReturn(Collections.singletonMap(SKU, 3));
+        when(stockRebuildRepository.queryExistingOrderIds(anyList(), anyList())).thenReturn(Collections.emptySet());
+        when(inventoryDeductionLogRepository.queryByUserIdsAndOrderIds(anyList(), anyList())).thenReturn(Collections.emptyList());
+        when(redisAdapter.getStockValues(anyCollection())).thenReturn(new HashMap<>());
+    }
+
+    @Test
+    public void test_rebuild_inFlightFromJournal() {
+        // o1 已冻结数据库库存，o2 在途（占用队伍名额、订单未落库），o3 已回滚
+        snapshot(true, 90L, 5L, Arrays.asList(entry("o1", TEAM_KEY), entry("o2", TEAM_KEY), entry("o3", null)),
+                Collections.singleton("DECREASE_u1_o3"));
+        when(inventoryDeductionLogRepository.queryByUserIdsAndOrderIds(anyList(), anyList())).thenReturn(Collections.singletonList(
+                InventoryDeductionLogEntity.builder().orderId("o1").userId("u1").quantity(1).build()));
+        when(stockRebuildRepository.queryExistingOrderIds(anyList(), anyList())).thenReturn(Collections.singleton("o1"));
+        team(2);
+        when(redisAdapter.getStockValues(anyCollection())).thenReturn(Collections.singletonMap(TEAM_KEY, 3L));
+
+        StockRebuildReportEntity report = stockRebuildService.rebuild(false, 1);
+
+        // 商品库存 = 100 - 10 - 5(租约) - 1(o2)；队伍库存 = 2 + 1(o2)，与 Redis 一致不写入
+        verify(redisAdapter).setStockValues(Collections.singletonMap(GOODS_KEY, 84L));
+        verify(redisAdapter, times(1)).setStockValues(anyMap());
+        Assert.assertEquals(1L, report.getGoodsDiffCount());
+        Assert.assertEquals(0L, report.getTeamDiffCount());
+        Assert.assertEquals(1L, report.getWrittenCount());
+        Assert.assertEquals(0L, report.getJournalMissingCount());
+    }
+
+    @Test
+    public void test_rebuild_journalMissing_dryRun() {
+        snapshot(false, null, 0L, null, null);
+
+        StockRebuildReportEntity report = stockRebuildService.rebuild(true, 4);
+
+        // 流水缺失按 TRY 订单估算：100 - 10 - 3，dryRun 只输出差异
+        verify(redisAdapter, never()).setStockValues(anyMap());
+        Assert.assertEquals(1L, report.getJournalMissingCount());
+        Assert.assertEquals(1, report.getDiffs().size());
+        Assert.assertNull(report.getDiffs().get(0).getCurrent());
+        Assert.assertEquals(87L, report.getDiffs().get(0).getExpected().longValue());
+        Assert.assertEquals(0L, report.getWrittenCount());
+    }
+
+    @Test
+    public void test_rebuild_orphanTeam() {
+        // 队伍尚未落库，只有在途占位
+        snapshot(true, 89L, 0L, Collections.singletonList(entry("o2", TEAM_KEY)), null);
+
+        StockRebuildReportEntity report = stockRebuildService.rebuild(false, 1);
+
+        verify(redisAdapter).setStockValues(Collections.singletonMap(TEAM_KEY, 1L));
+        Assert.assertEquals(0L, report.getGoodsDiffCount());
+        Assert.assertEquals(1L, report.getTeamKeyCount());
+        Assert.assertEquals(1L, report.getTeamDiffCount());
+    }
+
+    @Test
+    public void test_rebuild_shardFailure() {
+        when(stockRebuildRepository.queryActiveSkuList(anyLong(), anyLong())).thenThrow(new IllegalStateException("数据库不可用"));
+        team(2);
+
+        StockRebuildReportEntity report = stockRebuildService.rebuild(false, 1);
+
+        // 商品分片失败不影响队伍库存重建
+        Assert.assertEquals(1, report.getFailedShardCount());
+        verify(redisAdapter).setStockValues(Collections.singletonMap(TEAM_KEY, 2L));
+    }
+
+    private void snapshot(boolean journalAvailable, Long goodsStock, long leased, List<StockJournalEntryVO> entries,
+                          Set<String> rolledBack) {
+        Map<String, StockRedisSnapshotVO> snapshots = Collections.singletonMap(SKU, StockRedisSnapshotVO.builder()
+                .sku(SKU)
+                .goodsStock(goodsStock)
+                .leasedStock(leased)
+                .journalAvailable(journalAvailable)
+                .unreconciledEntries(entries)
+                .rolledBackIdentifiers(rolledBack)
+                .build());
+        when(redisAdapter.queryGoodsStockSnapshots(anyCollection())).thenReturn(snapshots);
+    }
+
+    private void team(int lockCount) {
+        when(stockRebuildRepository.queryValidTeamMaxId()).thenReturn(1L);
+        when(stockRebuildRepository.queryValidTeamList(anyLong(), anyLong())).thenReturn(Collections.singletonList(
+                StockRebuildTeamEntity.builder().activityId(100L).teamId("t1").targetCount(3).lockCount(lockCount).completeCount(0).build()));
+    }
+
+    private static StockJournalEntryVO entry(String orderId, String teamStockKey) {
+        return StockJournalEntryVO.builder()
+                .action("decrease")
+                .identifier("DECREASE_u1_" + orderId)
+                .change(1)
+                .teamStockKey(teamStockKey)
+                .build();
+    }
+
+}
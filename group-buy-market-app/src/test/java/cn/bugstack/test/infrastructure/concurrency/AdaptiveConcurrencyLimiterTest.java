@@ -0,0 +1,63 @@
+package cn.bugstack.test.infrastructure.concurrency;
+
+import cn.bugstack.infrastructure.concurrency.AdaptiveConcurrencyLimiter;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Vegas 并发限制：排队小于 alpha 增加 log10(limit)，大于 beta 减少 log10(limit)，过载异常按比例减少
+ */
+public class AdaptiveConcurrencyLimiterTest {
+
+    private static final long RTT_NO_LOAD = 1_000_000L;
+
+    @Test
+    public void test_queueBelowAlpha_increaseByLog() {
+        AdaptiveConcurrencyLimiter limiter = saturated(10);
+        limiter.release(RTT_NO_LOAD, false);
+
+        // queue = 0 < alpha，limit + log10(10)
+        Assert.assertEquals(11, limiter.getLimit());
+    }
+
+    @Test
+    public void test_queueAboveBeta_decreaseByLog() {
+        AdaptiveConcurrencyLimiter limiter = saturated(10);
+        limiter.release(RTT_NO_LOAD * 10, false);
+
+        // queue = 9 > beta(6)，limit - log10(10)
+        Assert.assertEquals(9, limiter.getLimit());
+    }
+
+    @Test
+    public void test_queueBetweenAlphaAndBeta_unchanged() {
+        AdaptiveConcurrencyLimiter limiter = saturated(10);
+        limiter.release(RTT_NO_LOAD * 2, false);
+
+        // queue = 5，介于 alpha(3) 与 beta(6) 之间
+        Assert.assertEquals(10, limiter.getLimit());
+    }
+
+    @Test
+    public void test_drop_decreaseByRatio() {
+        AdaptiveConcurrencyLimiter limiter = saturated(10);
+        limiter.release(RTT_NO_LOAD, true);
+
+        Assert.assertEquals(8, limiter.getLimit());
+        Assert.assertEquals(1L, limiter.getDroppedCount());
+    }
+
+    /**
+     * 占满许可并记录无负载耗时
+     */
+    private static AdaptiveConcurrencyLimiter saturated(int initialLimit) {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("test", initialLimit, 100);
+        for (int i = 0; i < initialLimit; i++) {
+            Assert.assertTrue(limiter.tryAcquire());
+        }
+        limiter.release(RTT_NO_LOAD, false);
+        Assert.assertTrue(limiter.tryAcquire());
+        return limiter;
+    }
+
+}
@@ -0,0 +1,90 @@
+package cn.bugstack.test.infrastructure.event;
+
+import cn.bugstack.infrastructure.event.AbstractOrderedBatchListener;
+import com.rabbitmq.client.Channel;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.mockito.Mockito;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.mockito.Mockito.*;
+
+/**
+ * 有序批量消费：失败时确认前序消息、剩余重新入队，同一消息达到最大投递次数转入死信队列并继续处理后续消息
+ */
+public class AbstractOrderedBatchListenerTest {
+
+    private final List<String> handled = new ArrayList<>();
+    private AbstractOrderedBatchListener listener;
+    private Channel channel;
+
+    @Before
+    public void init() {
+        channel = Mockito.mock(Channel.class);
+        listener = new AbstractOrderedBatchListener() {
+            @Override
+            protected void handle(String message) {
+                if (message.startsWith("poison")) throw new IllegalStateException("无法处理");
+                handled.add(message);
+            }
+        };
+        listener.setMaxDeliveryAttempts(3);
+    }
+
+    @Test
+    public void test_failure_requeueRemaining() throws Exception {
+        listener.onMessageBatch(Arrays.asList(message(1, "m1", false), message(2, "poison", false), message(3, "m3", false)), channel);
+
+        InOrder inOrder = inOrder(channel);
+        inOrder.verify(channel).basicAck(1L, true);
+        inOrder.verify(channel).basicNack(3L, true, true);
+        verify(channel, never()).basicNack(anyLong(), eq(false), eq(false));
+    }
+
+    @Test
+    public void test_poison_deadLetterAfterMaxAttempts() throws Exception {
+        // 第 1、2 次失败重新入队
+        listener.onMessageBatch(Arrays.asList(message(1, "poison", false), message(2, "m2", false)), channel);
+        listener.onMessageBatch(Arrays.asList(message(3, "poison", true), message(4, "m2", true)), channel);
+        verify(channel).basicNack(2L, true, true);
+        verify(channel).basicNack(4L, true, true);
+
+        // 第 3 次失败转入死信队列，后续消息继续处理并确认
+        listener.onMessageBatch(Arrays.asList(message(5, "m0", false), message(6, "poison", true), message(7, "m2", true)), channel);
+
+        InOrder inOrder = inOrder(channel);
+        inOrder.verify(channel).basicAck(5L, true);
+        inOrder.verify(channel).basicNack(6L, false, false);
+        inOrder.verify(channel).basicAck(7L, true);
+        Assert.assertEquals(Arrays.asList("m0", "m2"), handled);
+    }
+
+    @Test
+    public void test_poison_lastInBatch_noAckAfterNack() throws Exception {
+        listener.setMaxDeliveryAttempts(1);
+
+        listener.onMessageBatch(Arrays.asList(message(1, "m1", false), message(2, "poison", false)), channel);
+
+        verify(channel).basicAck(1L, true);
+        verify(channel).basicNack(2L, false, false);
+        verify(channel, times(1)).basicAck(anyLong(), anyBoolean());
+    }
+
+    private static Message message(long deliveryTag, String body, boolean redelivered) {
+        MessageProperties properties = new MessageProperties();
+        properties.setDeliveryTag(deliveryTag);
+        properties.setRedelivered(redelivered);
+        properties.setConsumerQueue("group_buy_market_queue_2_topic_team_success_0");
+        properties.setMessageId("id-" + body);
+        return new Message(body.getBytes(StandardCharsets.UTF_8), properties);
+    }
+
+}
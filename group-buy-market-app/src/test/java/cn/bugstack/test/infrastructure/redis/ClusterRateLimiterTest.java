@@ -0,0 +1,179 @@
+package cn.bugstack.test.infrastructure.redis;
+
+import cn.bugstack.infrastructure.dcc.DCCService;
+import cn.bugstack.infrastructure.redis.limiter.ClusterRateLimiter;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.redisson.api.RMap;
+import org.redisson.api.RScript;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.RedisTimeoutException;
+import org.redisson.client.codec.Codec;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.mockito.Mockito.*;
+
+/**
+ * 集群限流：本地预取、Redis 调用不持有锁、Redis 异常熔断按本地限流、后续维度拒绝时退回前序维度令牌、购物车多活动一次申请
+ */
+public class ClusterRateLimiterTest {
+
+    private static final String GLOBAL_KEY = "group_buy_market_rate_limit_lock_global";
+    private static final String USER_KEY = "group_buy_market_rate_limit_lock_user_u1";
+    private static final String ACTIVITY_KEY_PREFIX = "group_buy_market_rate_limit_lock_activity_";
+
+    private RScript script;
+    private DCCService dccService;
+    private ClusterRateLimiter limiter;
+
+    // Redis 令牌桶剩余令牌与每个桶的访问次数
+    private final Map<String, AtomicInteger> redisTokens = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> redisCalls = new ConcurrentHashMap<>();
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void init() {
+        RedissonClient redissonClient = Mockito.mock(RedissonClient.class);
+        script = Mockito.mock(RScript.class);
+        dccService = Mockito.mock(DCCService.class);
+        when(redissonClient.getScript(any(Codec.class))).thenReturn(script);
+        when(script.scriptLoad(anyString())).thenReturn("sha");
+        doReturn(Mockito.mock(RMap.class)).when(redissonClient).getMap(anyString(), any(Codec.class));
+        when(script.evalSha(any(RScript.Mode.class), anyString(), any(RScript.ReturnType.class), anyList(), any()))
+                .thenAnswer(invocation -> {
+                    String key = ((List<Object>) invocation.getArgument(3)).get(0).toString();
+                    long requested = Long.parseLong(invocation.getArgument(6).toString());
+                    redisCalls.computeIfAbsent(key, k -> new AtomicInteger()).incrementAndGet();
+                    AtomicInteger tokens = redisTokens.computeIfAbsent(key, k -> new AtomicInteger(Integer.MAX_VALUE));
+                    long granted = Math.min(tokens.get(), requested);
+                    tokens.addAndGet((int) -granted);
+                    return granted;
+                });
+        when(dccService.isClusterRateLimitSwitch()).thenReturn(true);
+
+        limiter = new ClusterRateLimiter();
+        ReflectionTestUtils.setField(limiter, "redissonClient", redissonClient);
+        ReflectionTestUtils.setField(limiter, "dccService", dccService);
+    }
+
+    @Test
+    public void test_prefetch_localTokens() {
+        when(dccService.getClusterRateLimit()).thenReturn("lock.global=100");
+
+        // 每次预取 100ms 的令牌（10个），用完前不再访问 Redis
+        for (int i = 0; i < 10; i++) {
+            Assert.assertTrue(limiter.tryAcquire(ClusterRateLimiter.SCENE_LOCK, null, null));
+        }
+        Assert.assertEquals(1L, limiter.getRedisCallCount());
+        Assert.assertTrue(limiter.tryAcquire(ClusterRateLimiter.SCENE_LOCK, null, null));
+        Assert.assertEquals(2L, limiter.getRedisCallCount());
+    }
+
+    @Test
+    public void test_redisCall_notHoldingLock() throws Exception {
+        when(dccService.getClusterRateLimit()).thenReturn("lock.global=100");
+        CountDownLatch prefetching = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(script.evalSha(any(RScript.Mode.class), anyString(), any(RScript.ReturnType.class), anyList(), any()))
+                .thenAnswer(invocation -> {
+                    long requested = Long.parseLong(invocation.getArgument(6).toString());
+                    if (requested > 1) {
+                        prefetching.countDown();
+                        release.await(5, TimeUnit.SECONDS);
+                    }
+                    return requested;
+                });
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Boolean> prefetch = executor.submit(() -> limiter.tryAcquire(ClusterRateLimiter.SCENE_LOCK, null, null));
+            Assert.assertTrue(prefetching.await(5, TimeUnit.SECONDS));
+
+            // 预取线程阻塞在 Redis 上时，同一个桶的其他请求单独申请令牌，不等待预取线程
+            long start = System.currentTimeMillis();
+            Assert.assertTrue(limiter.tryAcquire(ClusterRateLimiter.SCENE_LOCK, null, null));
+            Assert.assertTrue(System.currentTimeMillis() - start < 1000L);
+            Assert.assertFalse(prefetch.isDone());
+
+            release.countDown();
+            Assert.assertTrue(prefetch.get(5, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void test_redisFailure_circuitOpen() {
+        when(dccService.getClusterRateLimit()).thenReturn("lock.global=2");
+        when(script.evalSha(any(RScript.Mode.class), anyString(), any(RScript.ReturnType.class), anyList(), any()))
+                .thenThrow(new RedisTimeoutException("timeout"));
+
+        int passed = 0;
+        for (int i = 0; i < 20; i++) {
+            if (limiter.tryAcquire(ClusterRateLimiter.SCENE_LOCK, null, null)) passed++;
+        }
+
+        // 熔断期间不再访问 Redis，按本地限流值限流，不全部放行
+        Assert.assertEquals(1L, limiter.getRedisCallCount());
+        Assert.assertTrue(passed >= 1 && passed < 20);
+        Assert.assertEquals(20L, limiter.getFallbackCount());
+    }
+
+    @Test
+    public void test_laterDimensionReject_refund() {
+        when(dccService.getClusterRateLimit()).thenReturn("lock.user=100,lock.global=1");
+        redisTokens.put(GLOBAL_KEY, new AtomicInteger(1));
+
+        Assert.assertTrue(limiter.tryAcquire(ClusterRateLimiter.SCENE_LOCK, null, "u1"));
+        for (int i = 0; i < 20; i++) {
+            Assert.assertFalse(limiter.tryAcquire(ClusterRateLimiter.SCENE_LOCK, null, "u1"));
+        }
+
+        // 全局维度拒绝时退回用户维度令牌，用户预取的 10 个令牌只消耗 1 个，不再访问 Redis
+        Assert.assertEquals(1, redisCalls.get(USER_KEY).get());
+        Assert.assertEquals(1L, limiter.getPassedCount());
+        Assert.assertEquals(20L, limiter.getRejectedCount());
+    }
+
+    @Test
+    public void test_cart_multiItem_oneUserPermit() {
+        when(dccService.getClusterRateLimit()).thenReturn("lock.user=1,lock.activity=100");
+
+        // 用户限流 1/s（桶容量 1），三个商品属于两个活动：用户取 1 个令牌，活动各取 1 个令牌
+        Assert.assertTrue(limiter.tryAcquireAll(ClusterRateLimiter.SCENE_LOCK, Arrays.asList(1L, 2L, 1L), "u1"));
+        Assert.assertEquals(1, redisCalls.get(USER_KEY).get());
+        Assert.assertEquals(1, redisCalls.get(ACTIVITY_KEY_PREFIX + 1).get());
+        Assert.assertEquals(1, redisCalls.get(ACTIVITY_KEY_PREFIX + 2).get());
+        Assert.assertEquals(1L, limiter.getPassedCount());
+    }
+
+    @Test
+    public void test_cart_activityReject_refundAll() {
+        when(dccService.getClusterRateLimit()).thenReturn("lock.user=1,lock.activity=100");
+        redisTokens.put(ACTIVITY_KEY_PREFIX + 2, new AtomicInteger(0));
+
+        Assert.assertFalse(limiter.tryAcquireAll(ClusterRateLimiter.SCENE_LOCK, Arrays.asList(1L, 2L), "u1"));
+
+        // 活动 2 无令牌时退回用户令牌与活动 1 令牌，后续请求使用退回的令牌，不再访问 Redis
+        Assert.assertTrue(limiter.tryAcquire(ClusterRateLimiter.SCENE_LOCK, 1L, "u1"));
+        Assert.assertEquals(1, redisCalls.get(USER_KEY).get());
+        Assert.assertEquals(1, redisCalls.get(ACTIVITY_KEY_PREFIX + 1).get());
+        Assert.assertEquals(1L, limiter.getPassedCount());
+        Assert.assertEquals(1L, limiter.getRejectedCount());
+    }
+
+}
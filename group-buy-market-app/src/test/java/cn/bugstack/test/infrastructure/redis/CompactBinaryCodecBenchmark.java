@@ -0,0 +1,159 @@
+package cn.bugstack.test.infrastructure.redis;
+
+import cn.bugstack.infrastructure.dao.po.GroupBuyActivity;
+import cn.bugstack.infrastructure.dao.po.GroupBuyDiscount;
+import cn.bugstack.infrastructure.redis.codec.CompactBinaryCodec;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import lombok.extern.slf4j.Slf4j;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.redisson.client.codec.Codec;
+import org.redisson.client.handler.State;
+import org.redisson.codec.JsonJacksonCodec;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 缓存编解码器基准测试：JsonJacksonCodec vs CompactBinaryCodec
+ * <p>
+ * 运行 main 方法即可，输出编码后字节数及编码/解码耗时。
+ */
+@Slf4j
+@org.openjdk.jmh.annotations.State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompactBinaryCodecBenchmark {
+
+    private final Codec jsonCodec = JsonJacksonCodec.INSTANCE;
+    private final Codec compactCodec = CompactBinaryCodec.defaultCodec(true, 512);
+
+    private GroupBuyActivity activity;
+    private GroupBuyDiscount discount;
+    private byte[] activityJson;
+    private byte[] activityCompact;
+    private byte[] discountJson;
+    private byte[] discountCompact;
+
+    @Setup
+    public void setup() throws Exception {
+        Date now = new Date();
+        activity = GroupBuyActivity.builder()
+                .id(1L)
+                .activityId(100123L)
+                .activityName("测试活动")
+                .discountId("25120207")
+                .groupType(0)
+                .takeLimitCount(1)
+                .target(3)
+                .validTime(15)
+                .status(1)
+                .startTime(now)
+                .endTime(new Date(now.getTime() + TimeUnit.DAYS.toMillis(30)))
+                .tagId("RQ_KJHKL98UU78H66554GFDV")
+                .tagScope("1,2")
+                .createTime(now)
+                .updateTime(now)
+                .build();
+        discount = GroupBuyDiscount.builder()
+                .id(1L)
+                .discountId("25120207")
+                .discountName("直减优惠20元")
+                .discountDesc("直减优惠20元")
+                .discountType(0)
+                .marketPlan("ZJ")
+                .marketExpr("20")
+                .tagId(null)
+                .createTime(now)
+                .updateTime(now)
+                .build();
+
+        activityJson = encode(jsonCodec, activity);
+        activityCompact = encode(compactCodec, activity);
+        discountJson = encode(jsonCodec, discount);
+        discountCompact = encode(compactCodec, discount);
+
+        log.info("GroupBuyActivity 编码长度 json:{} compact:{}", activityJson.length, activityCompact.length);
+        log.info("GroupBuyDiscount 编码长度 json:{} compact:{}", discountJson.length, discountCompact.length);
+    }
+
+    @Benchmark
+    public byte[] encodeActivityJson() throws Exception {
+        return encode(jsonCodec, activity);
+    }
+
+    @Benchmark
+    public byte[] encodeActivityCompact() throws Exception {
+        return encode(compactCodec, activity);
+    }
+
+    @Benchmark
+    public Object decodeActivityJson() throws Exception {
+        return decode(jsonCodec, activityJson);
+    }
+
+    @Benchmark
+    public Object decodeActivityCompact() throws Exception {
+        return decode(compactCodec, activityCompact);
+    }
+
+    @Benchmark
+    public Object decodeActivityLegacyJsonByCompact() throws Exception {
+        // 滚动切换期间，新编解码器读取旧 JSON 数据的开销
+        return decode(compactCodec, activityJson);
+    }
+
+    @Benchmark
+    public byte[] encodeDiscountJson() throws Exception {
+        return encode(jsonCodec, discount);
+    }
+
+    @Benchmark
+    public byte[] encodeDiscountCompact() throws Exception {
+        return encode(compactCodec, discount);
+    }
+
+    @Benchmark
+    public Object decodeDiscountJson() throws Exception {
+        return decode(jsonCodec, discountJson);
+    }
+
+    @Benchmark
+    public Object decodeDiscountCompact() throws Exception {
+        return decode(compactCodec, discountCompact);
+    }
+
+    private static byte[] encode(Codec codec, Object value) throws Exception {
+        ByteBuf buf = codec.getValueEncoder().encode(value);
+        try {
+            byte[] bytes = new byte[buf.readableBytes()];
+            buf.readBytes(bytes);
+            return bytes;
+        } finally {
+            buf.release();
+        }
+    }
+
+    private static Object decode(Codec codec, byte[] bytes) throws Exception {
+        ByteBuf buf = Unpooled.wrappedBuffer(bytes);
+        try {
+            return codec.getValueDecoder().decode(buf, new State());
+        } finally {
+            buf.release();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder()
+                .include(CompactBinaryCodecBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+
+}
@@ -0,0 +1,174 @@
+package cn.bugstack.test.infrastructure.redis;
+
+import cn.bugstack.infrastructure.dao.po.GroupBuyActivity;
+import cn.bugstack.infrastructure.dao.po.GroupBuyDiscount;
+import cn.bugstack.infrastructure.redis.codec.BinarySchema;
+import cn.bugstack.infrastructure.redis.codec.CompactBinaryCodec;
+import cn.bugstack.infrastructure.redis.codec.GroupBuyActivitySchema;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.Assert;
+import org.junit.Test;
+import org.redisson.client.codec.Codec;
+import org.redisson.client.handler.State;
+import org.redisson.codec.JsonJacksonCodec;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 紧凑二进制编解码器：往返一致性、旧 JSON 兼容、结构版本不一致按未命中处理
+ */
+public class CompactBinaryCodecTest {
+
+    private final Codec compactCodec = CompactBinaryCodec.defaultCodec(true, 0);
+
+    @Test
+    public void test_roundTrip() throws Exception {
+        GroupBuyActivity activity = activity();
+        byte[] bytes = encode(compactCodec, activity);
+        Assert.assertEquals(CompactBinaryCodec.MAGIC, bytes[0]);
+        Assert.assertEquals(activity, decode(compactCodec, bytes));
+
+        GroupBuyDiscount discount = discount();
+        Assert.assertEquals(discount, decode(compactCodec, encode(compactCodec, discount)));
+    }
+
+    @Test
+    public void test_roundTrip_compressed() throws Exception {
+        Codec codec = CompactBinaryCodec.defaultCodec(true, 1);
+        GroupBuyActivity activity = activity();
+        byte[] bytes = encode(codec, activity);
+        // 标志位 bit0 表示压缩
+        Assert.assertEquals(1, bytes[3] & 0x01);
+        Assert.assertEquals(activity, decode(codec, bytes));
+    }
+
+    @Test
+    public void test_decodeLegacyJson() throws Exception {
+        GroupBuyActivity activity = activity();
+        byte[] json = encode(JsonJacksonCodec.INSTANCE, activity);
+        Assert.assertEquals(activity, decode(compactCodec, json));
+    }
+
+    @Test
+    public void test_writeCompactDisabled() throws Exception {
+        Codec codec = CompactBinaryCodec.defaultCodec(false, 0);
+        byte[] bytes = encode(codec, activity());
+        Assert.assertNotEquals(CompactBinaryCodec.MAGIC, bytes[0]);
+    }
+
+    @Test
+    public void test_schemaVersionMismatch_isCacheMiss() throws Exception {
+        // 新节点提升了结构版本，旧节点读取新节点写入的缓存
+        CompactBinaryCodec newCodec = new CompactBinaryCodec(JsonJacksonCodec.INSTANCE, true, 0)
+                .register(new NextVersionActivitySchema());
+        byte[] newBytes = encode(newCodec, activity());
+        Assert.assertNull(decode(compactCodec, newBytes));
+
+        // 新节点读取旧节点写入的缓存
+        byte[] oldBytes = encode(compactCodec, activity());
+        Assert.assertNull(decode(newCodec, oldBytes));
+    }
+
+    @Test
+    public void test_unknownType_isCacheMiss() throws Exception {
+        byte[] bytes = encode(compactCodec, activity());
+        bytes[2] = (byte) 0x7F;
+        Assert.assertNull(decode(compactCodec, bytes));
+    }
+
+    private static GroupBuyActivity activity() {
+        Date now = new Date();
+        return GroupBuyActivity.builder()
+                .id(1L)
+                .activityId(100123L)
+                .activityName("测试活动")
+                .discountId("25120207")
+                .groupType(0)
+                .takeLimitCount(1)
+                .target(3)
+                .validTime(15)
+                .status(1)
+                .startTime(now)
+                .endTime(new Date(now.getTime() + TimeUnit.DAYS.toMillis(30)))
+                .tagId("RQ_KJHKL98UU78H66554GFDV")
+                .tagScope("1,2")
+                .createTime(now)
+                .updateTime(now)
+                .build();
+    }
+
+    private static GroupBuyDiscount discount() {
+        Date now = new Date();
+        return GroupBuyDiscount.builder()
+                .id(1L)
+                .discountId("25120207")
+                .discountName("直减优惠20元")
+                .discountDesc("直减优惠20元")
+                .discountType(0)
+                .marketPlan("ZJ")
+                .marketExpr("20")
+                .tagId(null)
+                .createTime(now)
+                .updateTime(now)
+                .build();
+    }
+
+    private static byte[] encode(Codec codec, Object value) throws Exception {
+        ByteBuf buf = codec.getValueEncoder().encode(value);
+        try {
+            byte[] bytes = new byte[buf.readableBytes()];
+            buf.readBytes(bytes);
+            return bytes;
+        } finally {
+            buf.release();
+        }
+    }
+
+    private static Object decode(Codec codec, byte[] bytes) throws Exception {
+        ByteBuf buf = Unpooled.wrappedBuffer(bytes);
+        try {
+            return codec.getValueDecoder().decode(buf, new State());
+        } finally {
+            buf.release();
+        }
+    }
+
+    /**
+     * 模拟结构版本升级后的 Schema
+     */
+    private static class NextVersionActivitySchema implements BinarySchema<GroupBuyActivity> {
+
+        private final GroupBuyActivitySchema delegate = new GroupBuyActivitySchema();
+
+        @Override
+        public byte typeId() {
+            return delegate.typeId();
+        }
+
+        @Override
+        public byte schemaVersion() {
+            return (byte) (delegate.schemaVersion() + 1);
+        }
+
+        @Override
+        public Class<GroupBuyActivity> type() {
+            return delegate.type();
+        }
+
+        @Override
+        public void write(DataOutput out, GroupBuyActivity value) throws IOException {
+            delegate.write(out, value);
+        }
+
+        @Override
+        public GroupBuyActivity read(DataInput in) throws IOException {
+            return delegate.read(in);
+        }
+    }
+
+}
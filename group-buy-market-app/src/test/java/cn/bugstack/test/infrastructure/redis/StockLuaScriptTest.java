@@ -0,0 +1,385 @@
+package cn.bugstack.test.infrastructure.redis;
+
+import cn.bugstack.domain.trade.model.entity.StockAdmissionEntity;
+import cn.bugstack.domain.trade.model.valobj.StockAdmissionBatchResultVO;
+import cn.bugstack.domain.trade.model.valobj.StockAdmissionCodeEnumVO;
+import cn.bugstack.domain.trade.model.valobj.StockAdmissionResultVO;
+import cn.bugstack.domain.trade.model.valobj.StockJournalEntryVO;
+import cn.bugstack.domain.trade.model.valobj.StockJournalGroupEnumVO;
+import cn.bugstack.infrastructure.redis.RedisAdapterImpl;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.redisson.Redisson;
+import org.redisson.api.RStream;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.redisson.config.Config;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 库存 Lua 脚本：准入、批量准入、补偿、防悬挂、订单取消回滚、幂等索引格式与过期时间、流水裁剪
+ * <p>
+ * 连接测试 Redis 执行真实脚本，默认 redis://127.0.0.1:16379（与 dev 环境一致），可通过 -Dredis.test.address 指定；
+ * Redis 不可用时跳过。每个用例使用独立的活动ID，结束后删除用到的 Key。
+ */
+public class StockLuaScriptTest {
+
+    private static RedissonClient redissonClient;
+
+    private RedisAdapterImpl redisAdapter;
+    private String sku;
+    private String goodsStockKey;
+    private String goodsStockLogKey;
+    private String cartGoodsStockKey;
+    private String cartGoodsStockLogKey;
+    private String userTakeKey;
+    private String journalKey;
+
+    @BeforeClass
+    public static void connect() {
+        Config config = new Config();
+        config.useSingleServer()
+                .setAddress(System.getProperty("redis.test.address", "redis://127.0.0.1:16379"))
+                .setConnectTimeout(1000)
+                .setRetryAttempts(0);
+        try {
+            redissonClient = Redisson.create(config);
+        } catch (Exception e) {
+            Assume.assumeNoException("测试 Redis 不可用", e);
+        }
+    }
+
+    @AfterClass
+    public static void shutdown() {
+        if (null != redissonClient) {
+            redissonClient.shutdown();
+        }
+    }
+
+    @Before
+    public void init() {
+        redisAdapter = new RedisAdapterImpl();
+        ReflectionTestUtils.setField(redisAdapter, "redissonClient", redissonClient);
+        sku = Math.abs(UUID.randomUUID().getMostSignificantBits() % 1000000000L) + "_g1";
+        goodsStockKey = "group_buy_market_goods_stock_" + sku;
+        goodsStockLogKey = "group_buy_market_goods_stock_log_" + sku;
+        cartGoodsStockKey = goodsStockKey + "_2";
+        cartGoodsStockLogKey = goodsStockLogKey + "_2";
+        userTakeKey = "group_buy_market_user_take_" + sku + "_u1";
+        journalKey = "group_buy_market_stock_journal_" + sku;
+        redissonClient.getBucket(goodsStockKey, StringCodec.INSTANCE).set("10");
+        redissonClient.getBucket(cartGoodsStockKey, StringCodec.INSTANCE).set("5");
+        redisAdapter.loadUserTakeCount(userTakeKey, 0, 0, 60000L);
+    }
+
+    @After
+    public void clean() {
+        redissonClient.getKeys().deleteByPattern("*" + sku + "*");
+    }
+
+    @Test
+    public void test_admit_compensate() {
+        StockAdmissionEntity admission = admission("o1");
+        Assert.assertEquals(StockAdmissionCodeEnumVO.SUCCESS, redisAdapter.admitOrder(admission).getCode());
+        Assert.assertEquals("9", stock());
+        Assert.assertEquals(1L, redisAdapter.getUserTakeCount(userTakeKey).getTakeCount().longValue());
+
+        StockAdmissionResultVO result = redisAdapter.compensateOrder(admission);
+        Assert.assertEquals(StockAdmissionCodeEnumVO.SUCCESS, result.getCode());
+        Assert.assertEquals(10L, result.getGoodsRemainingStock().longValue());
+        Assert.assertEquals(0L, result.getTakeCount().longValue());
+        // 扣减记录已删除，回滚标记保留
+        Assert.assertNull(redisAdapter.getStockDecreaseLog(goodsStockLogKey, admission.getIdentifier()));
+
+        // 重复补偿不再回滚
+        Assert.assertEquals(StockAdmissionCodeEnumVO.DUPLICATE, redisAdapter.compensateOrder(admission).getCode());
+        Assert.assertEquals("10", stock());
+    }
+
+    @Test
+    public void test_compensateBeforeAdmit_blocksLateAdmission() {
+        // 准入结果未知时先补偿：未准入，写入回滚标记
+        StockAdmissionEntity admission = admission("o1");
+        Assert.assertEquals(StockAdmissionCodeEnumVO.NOT_ADMITTED, redisAdapter.compensateOrder(admission).getCode());
+
+        // 迟到执行的准入脚本不再扣减
+        Assert.assertEquals(StockAdmissionCodeEnumVO.DUPLICATE, redisAdapter.admitOrder(admission).getCode());
+        Assert.assertEquals("10", stock());
+        Assert.assertEquals(0L, redisAdapter.getUserTakeCount(userTakeKey).getTakeCount().longValue());
+    }
+
+    @Test
+    public void test_admitBatch_allOrNothing() {
+        // 第二个商品库存不足，第一个商品不扣减、不累加参与次数
+        redissonClient.getBucket(cartGoodsStockKey, StringCodec.INSTANCE).set("0");
+        StockAdmissionBatchResultVO result = redisAdapter.admitOrders(Arrays.asList(admission("o1"), cartAdmission("o2")));
+        Assert.assertEquals(StockAdmissionCodeEnumVO.GOODS_STOCK_NOT_ENOUGH, result.getCode());
+        Assert.assertEquals(1, result.getFailedIndex().intValue());
+        Assert.assertEquals("10", stock());
+        Assert.assertEquals(0L, redisAdapter.getUserTakeCount(userTakeKey).getTakeCount().longValue());
+
+        redissonClient.getBucket(cartGoodsStockKey, StringCodec.INSTANCE).set("5");
+        result = redisAdapter.admitOrders(Arrays.asList(admission("o1"), cartAdmission("o2")));
+        Assert.assertEquals(StockAdmissionCodeEnumVO.SUCCESS, result.getCode());
+        Assert.assertEquals(2, result.getItems().size());
+        Assert.assertEquals("9", stock());
+        Assert.assertEquals("4", cartStock());
+        Assert.assertEquals(1L, redisAdapter.getUserTakeCount(userTakeKey).getTakeCount().longValue());
+    }
+
+    @Test
+    public void test_admitBatch_compensateEach() {
+        List<StockAdmissionEntity> admissions = Arrays.asList(admission("o1"), cartAdmission("o2"));
+        Assert.assertEquals(StockAdmissionCodeEnumVO.SUCCESS, redisAdapter.admitOrders(admissions).getCode());
+
+        // 批量准入结果未知时逐单补偿，与单商品准入共用扣减记录
+        for (StockAdmissionEntity admission : admissions) {
+            Assert.assertEquals(StockAdmissionCodeEnumVO.SUCCESS, redisAdapter.compensateOrder(admission).getCode());
+        }
+        Assert.assertEquals("10", stock());
+        Assert.assertEquals("5", cartStock());
+        Assert.assertEquals(0L, redisAdapter.getUserTakeCount(userTakeKey).getTakeCount().longValue());
+    }
+
+    @Test
+    public void test_compensateBeforeAdmitBatch_blocksLateAdmission() {
+        // 脚本执行异常后先补偿：未准入，写入回滚标记
+        List<StockAdmissionEntity> admissions = Arrays.asList(admission("o1"), cartAdmission("o2"));
+        for (StockAdmissionEntity admission : admissions) {
+            Assert.assertEquals(StockAdmissionCodeEnumVO.NOT_ADMITTED, redisAdapter.compensateOrder(admission).getCode());
+        }
+
+        // 迟到执行的批量准入整单不扣减
+        StockAdmissionBatchResultVO result = redisAdapter.admitOrders(admissions);
+        Assert.assertEquals(StockAdmissionCodeEnumVO.DUPLICATE, result.getCode());
+        Assert.assertEquals(0, result.getFailedIndex().intValue());
+        Assert.assertEquals("10", stock());
+        Assert.assertEquals("5", cartStock());
+        Assert.assertEquals(0L, redisAdapter.getUserTakeCount(userTakeKey).getTakeCount().longValue());
+    }
+
+    @Test
+    public void test_release_afterDecreaseLogRemoved() {
+        StockAdmissionEntity admission = admission("o1");
+        Assert.assertEquals(StockAdmissionCodeEnumVO.SUCCESS, redisAdapter.admitOrder(admission).getCode());
+        // 订单已落库，对账删除了扣减记录
+        redisAdapter.removeStockDecreaseLog(goodsStockLogKey, admission.getIdentifier());
+
+        Assert.assertEquals(StockAdmissionCodeEnumVO.SUCCESS, redisAdapter.releaseOrder(admission).getCode());
+        Assert.assertEquals("10", stock());
+        Assert.assertEquals(0L, redisAdapter.getUserTakeCount(userTakeKey).getTakeCount().longValue());
+
+        // 取消消息重复投递、Try 失败补偿与取消回滚共用回滚标记
+        Assert.assertEquals(StockAdmissionCodeEnumVO.DUPLICATE, redisAdapter.releaseOrder(admission).getCode());
+        Assert.assertEquals(StockAdmissionCodeEnumVO.DUPLICATE, redisAdapter.compensateOrder(admission).getCode());
+        Assert.assertEquals("10", stock());
+    }
+
+    @Test
+    public void test_compensate_takeNotIncremented() {
+        // 准入时参与次数未加载，不累加、不写扣回标记
+        redissonClient.getKeys().delete(userTakeKey);
+        StockAdmissionEntity admission = admission("o1");
+        Assert.assertEquals(StockAdmissionCodeEnumVO.SUCCESS, redisAdapter.admitOrder(admission).getCode());
+        // 补偿前参与次数从数据库加载（已包含其他订单）
+        redisAdapter.loadUserTakeCount(userTakeKey, 1, 1, 60000L);
+
+        StockAdmissionResultVO result = redisAdapter.compensateOrder(admission);
+        Assert.assertEquals(StockAdmissionCodeEnumVO.SUCCESS, result.getCode());
+        Assert.assertEquals("10", stock());
+        Assert.assertEquals(1L, redisAdapter.getUserTakeCount(userTakeKey).getTakeCount().longValue());
+        // 退单同样不扣回
+        Assert.assertFalse(redisAdapter.releaseUserTakeCount(userTakeKey, "o1"));
+        Assert.assertEquals(1L, redisAdapter.getUserTakeCount(userTakeKey).getTakeCount().longValue());
+    }
+
+    @Test
+    public void test_occupy_release() {
+        Assert.assertEquals(1L, redisAdapter.occupyUserTakeCount(userTakeKey, 1, "o1"));
+        Assert.assertEquals(-2L, redisAdapter.occupyUserTakeCount(userTakeKey, 1, "o2"));
+        // 未累加的订单不扣回，已累加的订单只扣回一次
+        Assert.assertFalse(redisAdapter.releaseUserTakeCount(userTakeKey, "o2"));
+        Assert.assertTrue(redisAdapter.releaseUserTakeCount(userTakeKey, "o1"));
+        Assert.assertFalse(redisAdapter.releaseUserTakeCount(userTakeKey, "o1"));
+        Assert.assertEquals(0L, redisAdapter.getUserTakeCount(userTakeKey).getTakeCount().longValue());
+    }
+
+    @Test
+    public void test_leasedLog_skipsRolledBack() {
+        String leaseKey = "group_buy_market_stock_lease_" + sku;
+        redissonClient.getMap(leaseKey, StringCodec.INSTANCE).put("n1", "2");
+        // 租约模式扣减结果未知时先补偿：写入回滚标记
+        Assert.assertEquals(StockAdmissionCodeEnumVO.NOT_ADMITTED, redisAdapter.compensateOrder(admission2("o1")).getCode());
+
+        Map<String, String> logs = new LinkedHashMap<>();
+        logs.put("DECREASE_u2_o1", "{\"change\":\"1\",\"from\":\"2\",\"to\":\"1\",\"timestamp\":1}");
+        logs.put("DECREASE_u2_o2", "{\"change\":\"1\",\"from\":\"1\",\"to\":\"0\",\"timestamp\":2}");
+        // 已补偿的请求不写流水、不核销租约，计入返回值退回本地
+        Assert.assertEquals(1, redisAdapter.appendLeasedStockDecreaseLogs(goodsStockLogKey, leaseKey, "n1", logs));
+        Assert.assertNull(redisAdapter.getStockDecreaseLog(goodsStockLogKey, "DECREASE_u2_o1"));
+        Assert.assertNotNull(redisAdapter.getStockDecreaseLog(goodsStockLogKey, "DECREASE_u2_o2"));
+        Assert.assertEquals("1", redissonClient.getMap(leaseKey, StringCodec.INSTANCE).get("n1"));
+    }
+
+    @Test
+    public void test_admit_takeLimit() {
+        Assert.assertEquals(StockAdmissionCodeEnumVO.SUCCESS, redisAdapter.admitOrder(admission("o1")).getCode());
+        StockAdmissionResultVO result = redisAdapter.admitOrder(admission("o2"));
+        Assert.assertEquals(StockAdmissionCodeEnumVO.TAKE_LIMIT, result.getCode());
+        Assert.assertEquals("9", stock());
+    }
+
+    @Test
+    public void test_admit_stockNotEnough() {
+        redissonClient.getBucket(goodsStockKey, StringCodec.INSTANCE).set("0");
+        Assert.assertEquals(StockAdmissionCodeEnumVO.GOODS_STOCK_NOT_ENOUGH, redisAdapter.admitOrder(admission("o1")).getCode());
+        Assert.assertEquals(0L, redisAdapter.getUserTakeCount(userTakeKey).getTakeCount().longValue());
+    }
+
+    @Test
+    public void test_log_compactValue() {
+        StockAdmissionEntity admission = admission("o1");
+        Assert.assertEquals(StockAdmissionCodeEnumVO.SUCCESS, redisAdapter.admitOrder(admission).getCode());
+        // 幂等索引只记录扣减数量，完整流水在 Stream 中
+        Assert.assertEquals("1", redisAdapter.getStockDecreaseLog(goodsStockLogKey, admission.getIdentifier()));
+
+        redisAdapter.compensateOrder(admission);
+        Assert.assertEquals("1", redisAdapter.getStockDecreaseLog(goodsStockLogKey, "ROLLBACK_" + admission.getIdentifier()));
+
+        // 未准入的回滚标记
+        StockAdmissionEntity notAdmitted = admission("o2");
+        Assert.assertEquals(StockAdmissionCodeEnumVO.NOT_ADMITTED, redisAdapter.compensateOrder(notAdmitted).getCode());
+        Assert.assertEquals("0", redisAdapter.getStockDecreaseLog(goodsStockLogKey, "ROLLBACK_" + notAdmitted.getIdentifier()));
+    }
+
+    @Test
+    public void test_log_ttlRenewedOnlyWhenLow() {
+        Assert.assertEquals(StockAdmissionCodeEnumVO.SUCCESS, redisAdapter.admitOrder(admission("o1")).getCode());
+        long ttl = redissonClient.getKeys().remainTimeToLive(goodsStockLogKey);
+        Assert.assertTrue(ttl > 23 * 3600 * 1000L && ttl <= 24 * 3600 * 1000L);
+
+        // 剩余时间超过12小时，写入不重置过期时间
+        redissonClient.getKeys().expire(goodsStockLogKey, 20, TimeUnit.HOURS);
+        Assert.assertEquals(StockAdmissionCodeEnumVO.NOT_ADMITTED, redisAdapter.compensateOrder(admission("o2")).getCode());
+        Assert.assertTrue(redissonClient.getKeys().remainTimeToLive(goodsStockLogKey) <= 20 * 3600 * 1000L);
+
+        // 剩余时间不足12小时，续期到24小时
+        redissonClient.getKeys().expire(goodsStockLogKey, 1, TimeUnit.HOURS);
+        Assert.assertEquals(StockAdmissionCodeEnumVO.NOT_ADMITTED, redisAdapter.compensateOrder(admission("o3")).getCode());
+        Assert.assertTrue(redissonClient.getKeys().remainTimeToLive(goodsStockLogKey) > 23 * 3600 * 1000L);
+    }
+
+    @Test
+    public void test_journal_bypassVerifyGroup() {
+        StockAdmissionEntity admission = admission("o1");
+        Assert.assertEquals(StockAdmissionCodeEnumVO.SUCCESS, redisAdapter.admitOrder(admission).getCode());
+
+        // 旁路验证从 Stream 读取扣减数量，不再读取幂等索引
+        List<StockJournalEntryVO> entries = redisAdapter.readStockJournal(journalKey, StockJournalGroupEnumVO.BYPASS_VERIFY,
+                "test", 10, false, null);
+        Assert.assertEquals(1, entries.size());
+        Assert.assertTrue(entries.get(0).isDecrease());
+        Assert.assertEquals(1, entries.get(0).getChange().intValue());
+        Assert.assertEquals("u1", entries.get(0).extractUserId());
+        Assert.assertEquals("o1", entries.get(0).extractOrderId());
+    }
+
+    @Test
+    public void test_trim_missingGroup() {
+        Assert.assertEquals(StockAdmissionCodeEnumVO.SUCCESS, redisAdapter.admitOrder(admission("o1")).getCode());
+        redisAdapter.compensateOrder(admission("o1"));
+        RStream<String, String> stream = redissonClient.getStream(journalKey, StringCodec.INSTANCE);
+        Assert.assertEquals(2L, stream.size());
+
+        // 消费组缺失不阻塞裁剪，按已存在的消费组确认位置裁剪
+        stream.removeGroup(StockJournalGroupEnumVO.BYPASS_VERIFY.getCode());
+        consumeAll(StockJournalGroupEnumVO.COMPENSATION);
+        Assert.assertEquals(0L, redisAdapter.trimStockJournal(journalKey));
+
+        consumeAll(StockJournalGroupEnumVO.RECONCILIATION);
+        Assert.assertEquals(2L, redisAdapter.trimStockJournal(journalKey));
+        Assert.assertEquals(0L, stream.size());
+    }
+
+    @Test
+    public void test_trim_keepsPending() {
+        Assert.assertEquals(StockAdmissionCodeEnumVO.SUCCESS, redisAdapter.admitOrder(admission("o1")).getCode());
+        redisAdapter.compensateOrder(admission("o1"));
+        for (StockJournalGroupEnumVO group : StockJournalGroupEnumVO.values()) {
+            consumeAll(group);
+        }
+        // 补偿任务读取了第三条流水但未确认
+        Assert.assertEquals(StockAdmissionCodeEnumVO.SUCCESS, redisAdapter.admitOrder(admission2("o3")).getCode());
+        for (StockJournalGroupEnumVO group : StockJournalGroupEnumVO.values()) {
+            if (StockJournalGroupEnumVO.COMPENSATION != group) {
+                consumeAll(group);
+            }
+        }
+        Assert.assertEquals(1, redisAdapter.readStockJournal(journalKey, StockJournalGroupEnumVO.COMPENSATION, "test", 10, false, null).size());
+
+        Assert.assertEquals(2L, redisAdapter.trimStockJournal(journalKey));
+        Assert.assertEquals(1L, redissonClient.getStream(journalKey, StringCodec.INSTANCE).size());
+    }
+
+    private void consumeAll(StockJournalGroupEnumVO group) {
+        List<String> ids = new ArrayList<>();
+        for (StockJournalEntryVO entry : redisAdapter.readStockJournal(journalKey, group, "test", 100, false, null)) {
+            ids.add(entry.getId());
+        }
+        redisAdapter.ackStockJournal(journalKey, group, ids);
+    }
+
+    private StockAdmissionEntity admission2(String orderId) {
+        return StockAdmissionEntity.builder()
+                .orderId(orderId)
+                .identifier("DECREASE_u2_" + orderId)
+                .goodsStockKey(goodsStockKey)
+                .goodsStockLogKey(goodsStockLogKey)
+                .count(1)
+                .build();
+    }
+
+    private StockAdmissionEntity cartAdmission(String orderId) {
+        return StockAdmissionEntity.builder()
+                .orderId(orderId)
+                .identifier("DECREASE_u1_" + orderId)
+                .goodsStockKey(cartGoodsStockKey)
+                .goodsStockLogKey(cartGoodsStockLogKey)
+                .count(1)
+                .build();
+    }
+
+    private StockAdmissionEntity admission(String orderId) {
+        return StockAdmissionEntity.builder()
+                .orderId(orderId)
+                .identifier("DECREASE_u1_" + orderId)
+                .goodsStockKey(goodsStockKey)
+                .goodsStockLogKey(goodsStockLogKey)
+                .count(1)
+                .userTakeKey(userTakeKey)
+                .takeLimit(1)
+                .build();
+    }
+
+    private String stock() {
+        return redissonClient.<String>getBucket(goodsStockKey, StringCodec.INSTANCE).get();
+    }
+
+    private String cartStock() {
+        return redissonClient.<String>getBucket(cartGoodsStockKey, StringCodec.INSTANCE).get();
+    }
+
+}
@@ -0,0 +1,163 @@
+package cn.bugstack.test.infrastructure.redis;
+
+import cn.bugstack.domain.trade.adapter.port.IRedisAdapter;
+import cn.bugstack.infrastructure.redis.lease.StockQuotaLeaseManager;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.mockito.Mockito.*;
+
+/**
+ * 库存租约：本地扣减、幂等、归还围栏、纪元校验、心跳失效
+ */
+public class StockQuotaLeaseManagerTest {
+
+    private static final String STOCK_KEY = "group_buy_market_goods_stock_100_g1";
+    private static final String LEASE_KEY = "group_buy_market_stock_lease_100_g1";
+
+    private IRedisAdapter redisAdapter;
+    private ScheduledExecutorService scheduler;
+    private StockQuotaLeaseManager manager;
+
+    @Before
+    public void init() {
+        redisAdapter = Mockito.mock(IRedisAdapter.class);
+        scheduler = Mockito.mock(ScheduledExecutorService.class);
+        manager = new StockQuotaLeaseManager();
+        ReflectionTestUtils.setField(manager, "redisAdapter", redisAdapter);
+        ReflectionTestUtils.setField(manager, "scheduler", scheduler);
+    }
+
+    @Test
+    public void test_decrease_localQuota() {
+        heartbeat(0L);
+        when(redisAdapter.leaseStock(eq(STOCK_KEY), eq(LEASE_KEY), anyString(), anyInt(), eq(0L))).thenReturn(2L, 0L);
+
+        Assert.assertEquals(1L, manager.decrease(100L, "g1", "u1_o1"));
+        Assert.assertEquals(0L, manager.decrease(100L, "g1", "u2_o2"));
+        // 租约用完再次预占，库存售罄
+        Assert.assertEquals(-1L, manager.decrease(100L, "g1", "u3_o3"));
+        verify(redisAdapter, times(2)).leaseStock(eq(STOCK_KEY), eq(LEASE_KEY), anyString(), anyInt(), eq(0L));
+        Assert.assertEquals(2L, manager.getPendingLogCount());
+    }
+
+    @Test
+    public void test_decrease_duplicate() {
+        heartbeat(0L);
+        when(redisAdapter.leaseStock(anyString(), anyString(), anyString(), anyInt(), anyLong())).thenReturn(5L);
+
+        Assert.assertEquals(4L, manager.decrease(100L, "g1", "u1_o1"));
+        // 本地待写入流水中已存在，不重复扣减
+        Assert.assertEquals(4L, manager.decrease(100L, "g1", "u1_o1"));
+        Assert.assertEquals(4L, manager.getLocalQuota());
+        Assert.assertEquals(1L, manager.getPendingLogCount());
+    }
+
+    @Test
+    public void test_flush_duplicateRefundsLocalQuota() {
+        heartbeat(0L);
+        when(redisAdapter.leaseStock(anyString(), anyString(), anyString(), anyInt(), anyLong())).thenReturn(5L);
+        // 流水 Hash 中已存在（HEXISTS），脚本不核销租约
+        when(redisAdapter.appendLeasedStockDecreaseLogs(anyString(), anyString(), anyString(), anyMap())).thenReturn(1);
+
+        manager.decrease(100L, "g1", "u1_o1");
+        Assert.assertEquals(4L, manager.getLocalQuota());
+
+        ReflectionTestUtils.invokeMethod(manager, "flushAll");
+        Assert.assertEquals(0L, manager.getPendingLogCount());
+        Assert.assertEquals(5L, manager.getLocalQuota());
+    }
+
+    @Test
+    public void test_returnIdle_flushBeforeReturn() {
+        heartbeat(0L);
+        when(redisAdapter.leaseStock(anyString(), anyString(), anyString(), anyInt(), anyLong())).thenReturn(5L);
+        when(redisAdapter.returnStockLease(anyString(), anyString(), anyString(), anyInt())).thenReturn(3L);
+
+        manager.decrease(100L, "g1", "u1_o1");
+        manager.decrease(100L, "g1", "u2_o2");
+        makeIdle();
+
+        ReflectionTestUtils.invokeMethod(manager, "returnIdle");
+
+        // 归还前先写入流水（围栏），再归还未使用的 3 个
+        InOrder inOrder = inOrder(redisAdapter);
+        inOrder.verify(redisAdapter).appendLeasedStockDecreaseLogs(anyString(), eq(LEASE_KEY), anyString(), argThat(logs -> logs.size() == 2));
+        inOrder.verify(redisAdapter).returnStockLease(eq(STOCK_KEY), eq(LEASE_KEY), anyString(), eq(3));
+        Assert.assertEquals(0L, manager.getLocalQuota());
+        Assert.assertEquals(0L, manager.getPendingLogCount());
+    }
+
+    @Test
+    public void test_returnIdle_flushFailureKeepsQuota() {
+        heartbeat(0L);
+        when(redisAdapter.leaseStock(anyString(), anyString(), anyString(), anyInt(), anyLong())).thenReturn(5L);
+        when(redisAdapter.appendLeasedStockDecreaseLogs(anyString(), anyString(), anyString(), anyMap()))
+                .thenThrow(new IllegalStateException("redis unavailable"));
+
+        manager.decrease(100L, "g1", "u1_o1");
+        makeIdle();
+
+        ReflectionTestUtils.invokeMethod(manager, "returnIdle");
+
+        // 流水未写入不能归还，租约与流水都保留在本地
+        verify(redisAdapter, never()).returnStockLease(anyString(), anyString(), anyString(), anyInt());
+        Assert.assertEquals(4L, manager.getLocalQuota());
+        Assert.assertEquals(1L, manager.getPendingLogCount());
+    }
+
+    @Test
+    public void test_epochChanged_discardsLocalQuota() {
+        heartbeat(0L);
+        when(redisAdapter.leaseStock(anyString(), anyString(), anyString(), anyInt(), anyLong())).thenReturn(5L);
+        manager.decrease(100L, "g1", "u1_o1");
+        Assert.assertEquals(4L, manager.getLocalQuota());
+
+        // 节点租约已被回收，纪元递增
+        heartbeat(1L);
+        Assert.assertEquals(0L, manager.getLocalQuota());
+
+        manager.decrease(100L, "g1", "u2_o2");
+        verify(redisAdapter).leaseStock(anyString(), anyString(), anyString(), anyInt(), eq(1L));
+    }
+
+    @Test
+    public void test_leaseStock_epochMismatch() {
+        heartbeat(0L);
+        when(redisAdapter.leaseStock(anyString(), anyString(), anyString(), anyInt(), anyLong())).thenReturn(-1L);
+
+        Assert.assertEquals(-1L, manager.decrease(100L, "g1", "u1_o1"));
+        // 停止使用本地租约，由调度线程同步纪元
+        Assert.assertEquals(-1L, manager.decrease(100L, "g1", "u2_o2"));
+        verify(redisAdapter, times(1)).leaseStock(anyString(), anyString(), anyString(), anyInt(), anyLong());
+        verify(scheduler).execute(any(Runnable.class));
+    }
+
+    @Test
+    public void test_heartbeatExpired_rejects() {
+        // 从未心跳成功，租约不可用
+        Assert.assertEquals(-1L, manager.decrease(100L, "g1", "u1_o1"));
+        verify(redisAdapter, never()).leaseStock(anyString(), anyString(), anyString(), anyInt(), anyLong());
+        Assert.assertEquals(1L, manager.getLeaseExpiredRejectCount());
+    }
+
+    private void heartbeat(long epoch) {
+        when(redisAdapter.refreshLeaseNodeHeartbeat(anyString(), anyLong())).thenReturn(epoch);
+        ReflectionTestUtils.invokeMethod(manager, "heartbeat");
+    }
+
+    private void makeIdle() {
+        Map<?, ?> quotas = (Map<?, ?>) ReflectionTestUtils.getField(manager, "quotas");
+        for (Object quota : quotas.values()) {
+            ReflectionTestUtils.setField(quota, "lastDecreaseTime", 0L);
+        }
+    }
+
+}
@@ -0,0 +1,89 @@
+package cn.bugstack.test.types.workload;
+
+import cn.bugstack.types.trace.TraceContextExecutor;
+import cn.bugstack.types.workload.WorkloadContext;
+import cn.bugstack.types.workload.WorkloadRoutingExecutor;
+import cn.bugstack.types.workload.WorkloadType;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 负载路由执行器：按提交线程的负载选择执行器，任务在工作线程上保持提交方的负载类型
+ */
+public class WorkloadRoutingExecutorTest {
+
+    private ExecutorService online;
+    private ExecutorService consumer;
+    private ExecutorService batch;
+    private ExecutorService router;
+
+    @Before
+    public void init() {
+        online = new TraceContextExecutor(Executors.newSingleThreadExecutor(r -> new Thread(r, "online-")), "online");
+        consumer = new TraceContextExecutor(Executors.newSingleThreadExecutor(WorkloadContext.threadFactory(WorkloadType.CONSUMER, "consumer-")), "consumer");
+        batch = new TraceContextExecutor(Executors.newSingleThreadExecutor(WorkloadContext.threadFactory(WorkloadType.BATCH, "batch-")), "batch");
+        Map<WorkloadType, ExecutorService> executors = new EnumMap<>(WorkloadType.class);
+        executors.put(WorkloadType.CONSUMER, consumer);
+        executors.put(WorkloadType.BATCH, batch);
+        router = new WorkloadRoutingExecutor(online, executors);
+    }
+
+    @After
+    public void destroy() throws InterruptedException {
+        router.shutdownNow();
+        Assert.assertTrue(router.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void test_route_byWorkload() throws Exception {
+        Assert.assertTrue(threadNameAs(null).startsWith("online-"));
+        Assert.assertTrue(threadNameAs(WorkloadType.CONSUMER).startsWith("consumer-"));
+        Assert.assertTrue(threadNameAs(WorkloadType.BATCH).startsWith("batch-"));
+    }
+
+    @Test
+    public void test_propagate_workload() throws Exception {
+        // 批处理任务提交到在线执行器（未路由）时，工作线程上的连接仍计入批处理分区
+        WorkloadType previous = WorkloadContext.attach(WorkloadType.BATCH);
+        try {
+            Assert.assertEquals(WorkloadType.BATCH, online.submit(WorkloadContext::current).get(5, TimeUnit.SECONDS));
+        } finally {
+            WorkloadContext.detach(previous);
+        }
+        // 任务结束后还原工作线程原有负载
+        Assert.assertEquals(WorkloadType.ONLINE, online.submit(WorkloadContext::current).get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void test_wrapThreadFactory() throws Exception {
+        // 包装外部线程工厂（虚拟线程模式下为虚拟线程工厂），线程名沿用原工厂，负载类型固定
+        ScheduledExecutorService scheduler = new ScheduledThreadPoolExecutor(1,
+                WorkloadContext.threadFactory(WorkloadType.CONSUMER, r -> new Thread(r, "scheduler-")));
+        try {
+            Assert.assertEquals(WorkloadType.CONSUMER, scheduler.schedule(WorkloadContext::current, 1, TimeUnit.MILLISECONDS).get(5, TimeUnit.SECONDS));
+            Assert.assertEquals("scheduler-", scheduler.submit(() -> Thread.currentThread().getName()).get(5, TimeUnit.SECONDS));
+        } finally {
+            scheduler.shutdownNow();
+        }
+    }
+
+    private String threadNameAs(WorkloadType workloadType) throws Exception {
+        WorkloadType previous = null == workloadType ? null : WorkloadContext.attach(workloadType);
+        try {
+            return router.submit(() -> Thread.currentThread().getName()).get(5, TimeUnit.SECONDS);
+        } finally {
+            if (null != workloadType) WorkloadContext.detach(previous);
+        }
+    }
+
+}
@@ -5,8 +5,11 @@ import cn.bugstack.domain.activity.model.valobj.GroupBuyActivityDiscountVO;
 import cn.bugstack.domain.activity.model.valobj.SCSkuActivityVO;
 import cn.bugstack.domain.activity.model.valobj.SkuVO;
 import cn.bugstack.domain.activity.model.valobj.TeamStatisticVO;
+import cn.bugstack.domain.activity.model.valobj.TrialMarketConfigVO;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 /**
  * @author liang.tian
@@ -21,6 +24,36 @@ public interface IActivityRepository {
 
     SCSkuActivityVO querySCSkuActivityBySCGoodsId(String source, String channel, String goodsId);
 
+    /**
+     * 批量查询商品信息
+     *
+     * @param goodsIds 商品ID
+     * @return 商品ID -> 商品信息，不存在的商品不在返回结果中
+     */
+    Map<String, SkuVO> querySkusByGoodsIds(Collection<String> goodsIds);
+
+    /**
+     * 查询试算所需的活动折扣配置与商品信息；活动ID为空时按渠道商品关联查询活动
+     *
+     * @return 试算营销配置，活动或商品不存在时对应字段为空
+     */
+    TrialMarketConfigVO queryTrialMarketConfig(Long activityId, String source, String channel, String goodsId);
+
+    /**
+     * 活动（含折扣）配置变更后删除缓存
+     */
+    void evictActivityCache(Long activityId);
+
+    /**
+     * 商品信息变更后删除缓存
+     */
+    void evictSkuCache(String goodsId);
+
+    /**
+     * 渠道商品活动关联变更后删除缓存
+     */
+    void evictSCSkuActivityCache(String source, String channel, String goodsId);
+
     boolean isTagCrowdRange(String tagId, String userId);
 
     boolean downgradeSwitch();
@@ -0,0 +1,24 @@
+package cn.bugstack.domain.activity.model.valobj;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+/**
+ * @author liang.tian
+ * @description 试算营销配置，活动折扣配置与商品信息一次加载
+ * @create 2026-10-18 10:12
+ */
+@Getter
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class TrialMarketConfigVO {
+
+    /** 活动折扣配置 */
+    private GroupBuyActivityDiscountVO groupBuyActivityDiscountVO;
+    /** 商品信息 */
+    private SkuVO skuVO;
+
+}
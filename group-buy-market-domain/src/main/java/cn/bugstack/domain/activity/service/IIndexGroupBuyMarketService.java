@@ -35,4 +35,12 @@ public interface IIndexGroupBuyMarketService {
      */
     TeamStatisticVO queryTeamStatisticByActivityId(Long activityId);
 
+    /**
+     * 活动是否生效（已上线且在活动时间内），优先读取活动缓存
+     *
+     * @param activityId 活动ID
+     * @return true 生效、false 不存在或未生效
+     */
+    boolean isActivityEffective(Long activityId);
+
 }
@@ -4,6 +4,7 @@ import cn.bugstack.domain.activity.adapter.repository.IActivityRepository;
 import cn.bugstack.domain.activity.model.entity.UserGroupBuyOrderDetailEntity;
 import cn.bugstack.domain.activity.model.entity.MarketProductEntity;
 import cn.bugstack.domain.activity.model.entity.TrialBalanceEntity;
+import cn.bugstack.domain.activity.model.valobj.GroupBuyActivityDiscountVO;
 import cn.bugstack.domain.activity.model.valobj.TeamStatisticVO;
 import cn.bugstack.domain.activity.service.trial.factory.DefaultActivityStrategyFactory;
 import cn.bugstack.wrench.design.framework.tree.StrategyHandler;
@@ -11,6 +12,7 @@ import org.springframework.stereotype.Service;
 
 import javax.annotation.Resource;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
 
 /**
@@ -62,4 +64,13 @@ public class IndexGroupBuyMarketServiceImpl implements IIndexGroupBuyMarketServi
         return repository.queryTeamStatisticByActivityId(activityId);
     }
 
+    @Override
+    public boolean isActivityEffective(Long activityId) {
+        // 只查询生效状态的活动
+        GroupBuyActivityDiscountVO groupBuyActivityDiscountVO = repository.queryGroupBuyActivityDiscountVO(activityId);
+        if (null == groupBuyActivityDiscountVO) return false;
+        Date currentTime = new Date();
+        return !currentTime.before(groupBuyActivityDiscountVO.getStartTime()) && !currentTime.after(groupBuyActivityDiscountVO.getEndTime());
+    }
+
 }
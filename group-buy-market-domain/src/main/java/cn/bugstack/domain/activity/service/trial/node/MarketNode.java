@@ -3,13 +3,12 @@ package cn.bugstack.domain.activity.service.trial.node;
 import cn.bugstack.domain.activity.model.entity.MarketProductEntity;
 import cn.bugstack.domain.activity.model.entity.TrialBalanceEntity;
 import cn.bugstack.domain.activity.model.valobj.GroupBuyActivityDiscountVO;
-import cn.bugstack.domain.activity.model.valobj.SCSkuActivityVO;
 import cn.bugstack.domain.activity.model.valobj.SkuVO;
+import cn.bugstack.domain.activity.model.valobj.TrialMarketConfigVO;
 import cn.bugstack.domain.activity.service.discount.IDiscountCalculateService;
 import cn.bugstack.domain.activity.service.trial.AbstractGroupBuyMarketSupport;
 import cn.bugstack.domain.activity.service.trial.factory.DefaultActivityStrategyFactory;
-import cn.bugstack.domain.activity.service.trial.thread.QueryGroupBuyActivityDiscountVOThreadTask;
-import cn.bugstack.domain.activity.service.trial.thread.QuerySkuVOFromDBThreadTask;
+import cn.bugstack.domain.activity.service.trial.thread.QueryTrialMarketConfigThreadTask;
 import cn.bugstack.wrench.design.framework.tree.StrategyHandler;
 import cn.bugstack.types.enums.ResponseCode;
 import cn.bugstack.types.exception.AppException;
@@ -33,7 +32,7 @@ import java.util.function.Supplier;
 public class MarketNode extends AbstractGroupBuyMarketSupport<MarketProductEntity, DefaultActivityStrategyFactory.DynamicContext, TrialBalanceEntity> {
 
     @Resource
-    private ThreadPoolExecutor threadPoolExecutor;
+    private ExecutorService threadPoolExecutor;
     /**
      * <a href="https://bugstack.cn/md/road-map/spring-dependency-injection.html">Spring 注入详细说明</a>
      */
@@ -62,19 +61,15 @@ public class MarketNode extends AbstractGroupBuyMarketSupport<MarketProductEntit
      */
     @Override
     protected void multiThread(MarketProductEntity requestParameter, DefaultActivityStrategyFactory.DynamicContext dynamicContext) throws ExecutionException, InterruptedException, TimeoutException {
-        // 异步查询活动配置
-        QueryGroupBuyActivityDiscountVOThreadTask queryGroupBuyActivityDiscountVOThreadTask = new QueryGroupBuyActivityDiscountVOThreadTask(requestParameter.getActivityId(), requestParameter.getSource(), requestParameter.getChannel(), requestParameter.getGoodsId(), repository);
-        FutureTask<GroupBuyActivityDiscountVO> groupBuyActivityDiscountVOFutureTask = new FutureTask<>(queryGroupBuyActivityDiscountVOThreadTask);
-        threadPoolExecutor.execute(groupBuyActivityDiscountVOFutureTask);
-
-        // 异步查询商品信息 - 在实际生产中，商品有同步库或者调用接口查询。这里暂时使用DB方式查询。
-        QuerySkuVOFromDBThreadTask querySkuVOFromDBThreadTask = new QuerySkuVOFromDBThreadTask(requestParameter.getGoodsId(), repository);
-        FutureTask<SkuVO> skuVOFutureTask = new FutureTask<>(querySkuVOFromDBThreadTask);
-        threadPoolExecutor.execute(skuVOFutureTask);
+        // 异步查询活动配置与商品信息 - 渠道商品关联、活动、折扣、商品均走近端缓存，本地未命中时活动与商品合并为一次 MGET
+        QueryTrialMarketConfigThreadTask queryTrialMarketConfigThreadTask = new QueryTrialMarketConfigThreadTask(requestParameter.getActivityId(), requestParameter.getSource(), requestParameter.getChannel(), requestParameter.getGoodsId(), repository);
+        FutureTask<TrialMarketConfigVO> trialMarketConfigVOFutureTask = new FutureTask<>(queryTrialMarketConfigThreadTask);
+        threadPoolExecutor.execute(trialMarketConfigVOFutureTask);
 
         // 写入上下文 - 对于一些复杂场景，获取数据的操作，有时候会在下N个节点获取，这样前置查询数据，可以提高接口响应效率
-        dynamicContext.setGroupBuyActivityDiscountVO(groupBuyActivityDiscountVOFutureTask.get(timeout, TimeUnit.MILLISECONDS));
-        dynamicContext.setSkuVO(skuVOFutureTask.get(timeout, TimeUnit.MILLISECONDS));
+        TrialMarketConfigVO trialMarketConfigVO = trialMarketConfigVOFutureTask.get(timeout, TimeUnit.MILLISECONDS);
+        dynamicContext.setGroupBuyActivityDiscountVO(trialMarketConfigVO.getGroupBuyActivityDiscountVO());
+        dynamicContext.setSkuVO(trialMarketConfigVO.getSkuVO());
 
         log.info("拼团商品查询试算服务-MarketNode userId:{} 异步线程加载数据「GroupBuyActivityDiscountVO、SkuVO」完成", requestParameter.getUserId());
     }
@@ -1,9 +1,7 @@
 package cn.bugstack.domain.activity.service.trial.node;
 
 import cn.bugstack.domain.activity.model.entity.MarketProductEntity;
-import cn.bugstack.domain.activity.model.valobj.GroupBuyActivityDiscountVO;
-import cn.bugstack.domain.activity.model.valobj.SCSkuActivityVO;
-import cn.bugstack.domain.activity.model.valobj.SkuVO;
+import cn.bugstack.domain.activity.model.valobj.TrialMarketConfigVO;
 import cn.bugstack.domain.activity.service.trial.factory.DefaultActivityStrategyFactory;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
@@ -11,7 +9,7 @@ import org.springframework.stereotype.Service;
 import javax.annotation.Resource;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeoutException;
 
 /**
@@ -24,44 +22,26 @@ import java.util.concurrent.TimeoutException;
 public class MarketNode2CompletableFuture extends MarketNode {
 
     @Resource
-    private ThreadPoolExecutor threadPoolExecutor;
+    private ExecutorService threadPoolExecutor;
 
     @Override
     protected void multiThread(MarketProductEntity requestParameter, DefaultActivityStrategyFactory.DynamicContext dynamicContext) throws ExecutionException, InterruptedException, TimeoutException {
-        // 异步查询活动配置
-        CompletableFuture<GroupBuyActivityDiscountVO> groupBuyActivityDiscountVOCompletableFuture = CompletableFuture.supplyAsync(() -> {
+        // 异步查询活动配置与商品信息 - 渠道商品关联、活动、折扣、商品均走近端缓存，本地未命中时活动与商品合并为一次 MGET
+        CompletableFuture<TrialMarketConfigVO> trialMarketConfigVOCompletableFuture = CompletableFuture.supplyAsync(() -> {
             try {
-                Long availableActivityId = requestParameter.getActivityId();
-                if (null == requestParameter.getActivityId()) {
-                    // 查询渠道商品活动配置关联配置
-                    SCSkuActivityVO scSkuActivityVO = repository.querySCSkuActivityBySCGoodsId(requestParameter.getSource(), requestParameter.getChannel(), requestParameter.getGoodsId());
-                    if (null == scSkuActivityVO) return null;
-                    availableActivityId = scSkuActivityVO.getActivityId();
-                }
-                // 查询活动配置
-                return repository.queryGroupBuyActivityDiscountVO(availableActivityId);
+                return repository.queryTrialMarketConfig(requestParameter.getActivityId(), requestParameter.getSource(), requestParameter.getChannel(), requestParameter.getGoodsId());
             } catch (Exception e) {
-                log.error("异步查询活动配置异常", e);
+                log.error("异步查询活动配置与商品信息异常", e);
                 return null;
             }
         }, threadPoolExecutor);
 
-        // 异步查询商品信息 - 在实际生产中，商品有同步库或者调用接口查询。这里暂时使用DB方式查询。
-        CompletableFuture<SkuVO> skuVOCompletableFuture = CompletableFuture.supplyAsync(() -> {
-            try {
-                return repository.querySkuByGoodsId(requestParameter.getGoodsId());
-            } catch (Exception e) {
-                log.error("异步查询商品信息异常", e);
-                return null;
-            }
-        }, threadPoolExecutor);
-
-        // 等待所有异步任务完成并写入上下文
-        CompletableFuture.allOf(groupBuyActivityDiscountVOCompletableFuture, skuVOCompletableFuture)
-                .thenRun(() -> {
-                    dynamicContext.setGroupBuyActivityDiscountVO(groupBuyActivityDiscountVOCompletableFuture.join());
-                    dynamicContext.setSkuVO(skuVOCompletableFuture.join());
-                }).join();
+        // 等待异步任务完成并写入上下文
+        TrialMarketConfigVO trialMarketConfigVO = trialMarketConfigVOCompletableFuture.join();
+        if (null != trialMarketConfigVO) {
+            dynamicContext.setGroupBuyActivityDiscountVO(trialMarketConfigVO.getGroupBuyActivityDiscountVO());
+            dynamicContext.setSkuVO(trialMarketConfigVO.getSkuVO());
+        }
 
         log.info("拼团商品查询试算服务-MarketNode userId:{} 异步线程加载数据「GroupBuyActivityDiscountVO、SkuVO」完成", requestParameter.getUserId());
     }
@@ -1,29 +0,0 @@
-package cn.bugstack.domain.activity.service.trial.thread;
-
-import cn.bugstack.domain.activity.adapter.repository.IActivityRepository;
-import cn.bugstack.domain.activity.model.valobj.SkuVO;
-
-import java.util.concurrent.Callable;
-
-/**
- * @author liang.tian
- * @description 查询商品信息任务
- * @create 2025-11-6 10:51
- */
-public class QuerySkuVOFromDBThreadTask implements Callable<SkuVO> {
-
-    private final String goodsId;
-
-    private final IActivityRepository activityRepository;
-
-    public QuerySkuVOFromDBThreadTask(String goodsId, IActivityRepository activityRepository) {
-        this.goodsId = goodsId;
-        this.activityRepository = activityRepository;
-    }
-
-    @Override
-    public SkuVO call() throws Exception {
-        return activityRepository.querySkuByGoodsId(goodsId);
-    }
-
-}
@@ -0,0 +1,53 @@
+package cn.bugstack.domain.activity.service.trial.thread;
+
+import cn.bugstack.domain.activity.adapter.repository.IActivityRepository;
+import cn.bugstack.domain.activity.model.valobj.TrialMarketConfigVO;
+
+import java.util.concurrent.Callable;
+
+/**
+ * @author liang.tian
+ * @description 查询试算营销配置任务，活动折扣配置与商品信息一次加载
+ * @create 2026-10-18 10:20
+ */
+public class QueryTrialMarketConfigThreadTask implements Callable<TrialMarketConfigVO> {
+
+    /**
+     * 活动ID
+     */
+    private final Long activityId;
+
+    /**
+     * 来源
+     */
+    private final String source;
+
+    /**
+     * 渠道
+     */
+    private final String channel;
+
+    /**
+     * 商品ID
+     */
+    private final String goodsId;
+
+    /**
+     * 活动仓储
+     */
+    private final IActivityRepository activityRepository;
+
+    public QueryTrialMarketConfigThreadTask(Long activityId, String source, String channel, String goodsId, IActivityRepository activityRepository) {
+        this.activityId = activityId;
+        this.source = source;
+        this.channel = channel;
+        this.goodsId = goodsId;
+        this.activityRepository = activityRepository;
+    }
+
+    @Override
+    public TrialMarketConfigVO call() throws Exception {
+        return activityRepository.queryTrialMarketConfig(activityId, source, channel, goodsId);
+    }
+
+}
@@ -1,45 +1,127 @@
 package cn.bugstack.domain.trade.adapter.port;
 
+import cn.bugstack.domain.trade.model.entity.StockAdmissionEntity;
+import cn.bugstack.domain.trade.model.valobj.StockAdmissionBatchResultVO;
+import cn.bugstack.domain.trade.model.valobj.StockAdmissionResultVO;
+import cn.bugstack.domain.trade.model.valobj.StockJournalEntryVO;
+import cn.bugstack.domain.trade.model.valobj.StockJournalGroupEnumVO;
+import cn.bugstack.domain.trade.model.valobj.StockRedisSnapshotVO;
+import cn.bugstack.domain.trade.model.valobj.UserTakeCountVO;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
 /**
  * Redis适配器接口 (Domain层定义,Infrastructure层实现)
  */
 public interface IRedisAdapter {
 
     /**
-     * 队伍库存动态扣减（关键方法）
-     * 特点：
-     * 1. 如果队伍库存不存在，自动初始化为 1
-     * 2. 如果队伍库存已满（>= targetCount），返回 -1
-     * 3. 支持幂等性（同一 identifier 只能扣减一次）
-     * 4. 记录扣减流水
-     *
-     * @param stockKey 队伍库存 Key（如：group_buy_market_team_stock_key_100123_60350079）
-     * @param logKey 队伍库存流水 Key（如：group_buy_market_team_stock_log_key_100123_60350079）
-     * @param identifier 扣减标识（如：DECREASE_user01_orderId123）
-     * @param targetCount 队伍目标人数（如：3）
-     * @return 扣减后的库存数量（-1 表示队伍已满，-2 表示重复操作）
+     * 获取库存扣减流水
      */
-    Long decreaseTeamStockDynamically(String stockKey, String logKey, String identifier, int targetCount);
+    String getStockDecreaseLog(String logKey, String identifier);
     
     /**
-     * 原子扣减库存并记录流水
+     * 删除库存扣减流水
      */
-    Long decreaseStockWithLog(String stockKey, String logKey, String identifier, int count);
-    
+    void removeStockDecreaseLog(String logKey, String identifier);
+
     /**
-     * 回滚库存
+     * 批量删除库存扣减流水（HDEL 多字段，一次往返）
+     *
+     * @return 实际删除数量
      */
-    Long increaseStockWithLog(String stockKey, String logKey, String identifier, int count);
-    
+    long removeStockDecreaseLogs(String logKey, Collection<String> identifiers);
+
     /**
-     * 获取库存扣减流水
+     * 库存租约：从商品库存中预占一批库存到节点本地（库存不足时预占剩余全部）
+     *
+     * @param stockKey 商品库存Key
+     * @param leaseKey 租约Hash（field=节点ID，value=节点未核销的租约数量）
+     * @param nodeId   节点ID
+     * @param count    申请数量
+     * @param epoch    节点持有的租约纪元，与 Redis 中不一致说明节点租约已被回收
+     * @return 实际预占数量，0 表示库存已售罄，-1 表示租约纪元已过期（需先同步纪元）
      */
-    String getStockDecreaseLog(String logKey, String identifier);
-    
+    long leaseStock(String stockKey, String leaseKey, String nodeId, int count, long epoch);
+
     /**
-     * 删除库存扣减流水
+     * 归还租约：将节点未使用的租约库存归还到商品库存
+     *
+     * @return 实际归还数量（不超过节点当前租约数量）
      */
-    void removeStockDecreaseLog(String logKey, String identifier);
+    long returnStockLease(String stockKey, String leaseKey, String nodeId, int count);
+
+    /**
+     * 回收宕机节点的租约：心跳已过期时，将节点全部未核销租约归还到商品库存，并递增节点租约纪元
+     * <p>
+     * 心跳判断与回收在同一脚本内执行；节点恢复后通过心跳读到新纪元，丢弃本地剩余租约。
+     *
+     * @return 回收数量，节点心跳未过期时返回 0
+     */
+    long reclaimStockLease(String stockKey, String leaseKey, String nodeId);
+
+    /**
+     * 批量追加租约模式下的库存扣减流水，并核销节点租约中已使用的数量（一次往返）
+     * <p>
+     * 流水中已存在的 identifier（重复请求）或已写入 ROLLBACK_ 标记的 identifier（已补偿）不写入、不核销租约。
+     *
+     * @param logs identifier -> 流水内容
+     * @return 重复或已补偿的 identifier 数量
+     */
+    int appendLeasedStockDecreaseLogs(String logKey, String leaseKey, String nodeId, Map<String, String> logs);
+
+    /**
+     * 获取租约明细
+     *
+     * @return 节点ID -> 未核销的租约数量
+     */
+    Map<String, String> getStockLeases(String leaseKey);
+
+    /**
+     * 刷新租约节点心跳
+     *
+     * @return 节点当前租约纪元
+     */
+    long refreshLeaseNodeHeartbeat(String nodeId, long ttlSeconds);
+
+    /**
+     * 租约节点是否存活（心跳未过期）
+     */
+    boolean isLeaseNodeAlive(String nodeId);
+
+    /**
+     * 获取用户参与次数
+     *
+     * @return 参与次数，未加载时返回 null
+     */
+    UserTakeCountVO getUserTakeCount(String userTakeKey);
+
+    /**
+     * 加载用户参与次数（已存在时不覆盖，返回当前值）
+     *
+     * @param ttlMillis 过期时间，按活动结束时间计算
+     */
+    UserTakeCountVO loadUserTakeCount(String userTakeKey, int takeCount, int seq, long ttlMillis);
+
+    /**
+     * 校验并占用用户参与次数，用于不经过准入脚本的场景（库存租约）
+     *
+     * @param takeLimit 参与次数上限，0 表示不限制
+     * @param orderId   订单ID，累加时写入扣回标记，退单时据此扣回
+     * @return 占用后的有效参与次数；-1 表示参与次数未加载（不校验、不累加）；-2 表示已达上限
+     */
+    long occupyUserTakeCount(String userTakeKey, int takeLimit, String orderId);
+
+    /**
+     * 退单扣回用户有效参与次数，只扣回准入（或占用）时累加过的订单，同一订单只扣回一次
+     * <p>
+     * 扣回标记为独立 Key（与参与次数 Hash 同时过期），不写入参与次数 Hash，避免 Hash 随退单持续增长
+     *
+     * @return 是否扣回
+     */
+    boolean releaseUserTakeCount(String userTakeKey, String orderId);
 
     /**
      * 扫描库存流水Key
@@ -47,9 +129,31 @@ public interface IRedisAdapter {
     Iterable<String> scanStockLogKeys(String pattern);
 
     /**
-     * 获取所有库存流水
+     * 按消费组读取库存流水（Redis Stream，XREADGROUP）
+     * <p>
+     * 消费者名称固定时，跨节点执行的任务可以继续处理上次未确认的流水
+     *
+     * @param pending true-读取本消费者已投递未确认的流水（从 afterId 之后开始），false-读取未投递的新流水
+     * @param afterId 仅 pending=true 时有效，为空时从头读取
+     * @return 按消息ID有序的流水，流水不存在时返回空列表
+     */
+    List<StockJournalEntryVO> readStockJournal(String journalKey, StockJournalGroupEnumVO group,
+                                               String consumer, int count, boolean pending, String afterId);
+
+    /**
+     * 确认库存流水（XACK），确认即表示该消费组已处理完毕
+     *
+     * @return 实际确认数量
+     */
+    long ackStockJournal(String journalKey, StockJournalGroupEnumVO group, Collection<String> entryIds);
+
+    /**
+     * 裁剪库存流水：删除已存在的全部消费组都已确认的流水（XTRIM MINID，取各消费组最早未确认位置），
+     * 再按最大长度兜底裁剪（XTRIM MAXLEN），避免停摆或残留的消费组使流水无限增长
+     *
+     * @return 删除数量
      */
-    java.util.Map<String, String> getAllStockDecreaseLogs(String logKey);
+    long trimStockJournal(String journalKey);
 
     /**
      * 初始化团队库存（如果已存在则不覆盖）
@@ -64,7 +168,7 @@ public interface IRedisAdapter {
      * @param teamStockMap key=teamId, value=stockCount
      * @return 成功初始化的团队数量
      */
-    int batchInitTeamStock(java.util.Map<String, Integer> teamStockMap);
+    int batchInitTeamStock(Map<String, Integer> teamStockMap);
 
     /**
      * 初始化商品库存（如果已存在则不覆盖）
@@ -76,54 +180,65 @@ public interface IRedisAdapter {
     boolean initGoodsStock(Long activityId, String goodsId, Integer stockCount);
 
     /**
-     * 原子操作：扣减商品库存 + 增加队伍人数
-     * 
-     * 对标 newBuyPlus：在同一个 Lua 脚本中同时执行商品库存扣减和队伍人数增加
-     * 
-     * @param goodsStockKey 商品库存 Key
-     * @param goodsStockLogKey 商品库存流水 Key
-     * @param teamStockKey 队伍库存 Key（可为null，表示不需要增加队伍人数）
-     * @param teamStockLogKey 队伍库存流水 Key（可为null）
-     * @param identifier 扣减标识
-     * @param goodsCount 商品扣减数量
-     * @param teamTargetCount 队伍目标人数（用于检查队伍是否已满）
-     * @return 返回结果对象，包含商品剩余库存和队伍当前人数
-     */
-    StockDecreaseResult decreaseGoodsStockAndIncreaseTeamStock(
-            String goodsStockKey, String goodsStockLogKey,
-            String teamStockKey, String teamStockLogKey,
-            String identifier, int goodsCount, int teamTargetCount);
-
-    /**
-     * 库存扣减结果
-     */
-    class StockDecreaseResult {
-        private Long goodsRemainingStock;  // 商品剩余库存
-        private Long teamCurrentCount;    // 队伍当前人数
-        private boolean success;          // 是否成功
-        private String errorCode;         // 错误码（如：TEAM_FULL, STOCK_NOT_ENOUGH等）
-
-        public StockDecreaseResult(Long goodsRemainingStock, Long teamCurrentCount, boolean success, String errorCode) {
-            this.goodsRemainingStock = goodsRemainingStock;
-            this.teamCurrentCount = teamCurrentCount;
-            this.success = success;
-            this.errorCode = errorCode;
-        }
-
-        public Long getGoodsRemainingStock() {
-            return goodsRemainingStock;
-        }
-
-        public Long getTeamCurrentCount() {
-            return teamCurrentCount;
-        }
-
-        public boolean isSuccess() {
-            return success;
-        }
-
-        public String getErrorCode() {
-            return errorCode;
-        }
-    }
-}
\ No newline at end of file
+     * 批量读取商品库存快照（库存重建）：当前库存、未核销租约、对账消费组未确认的流水，按分批 pipeline 读取
+     *
+     * @param skus activityId_goodsId
+     * @return sku -> 快照
+     */
+    Map<String, StockRedisSnapshotVO> queryGoodsStockSnapshots(Collection<String> skus);
+
+    /**
+     * 批量读取库存值（MGET）
+     *
+     * @return key -> 库存值，不存在的 Key 不在返回结果中
+     */
+    Map<String, Long> getStockValues(Collection<String> keys);
+
+    /**
+     * 批量写入库存值（MSET，覆盖已有值）
+     */
+    void setStockValues(Map<String, Long> values);
+
+    /**
+     * 批量初始化库存值（pipeline SETNX，已存在的 Key 不覆盖）
+     *
+     * @return 本次新写入的 Key 数量
+     */
+    int setStockValuesIfAbsent(Map<String, Long> values);
+
+    /**
+     * 锁单准入：一次 Redis 往返完成幂等校验、用户参与次数校验与累加、商品库存扣减、队伍名额占用及流水记录
+     * 脚本通过 SCRIPT LOAD 加载、EVALSHA 执行，任一校验失败不产生任何写入
+     *
+     * @param admission 准入命令，userTakeKey、teamStockKey 为空时跳过对应步骤
+     * @return 准入结果，脚本执行异常时返回 ERROR
+     */
+    StockAdmissionResultVO admitOrder(StockAdmissionEntity admission);
+
+    /**
+     * 批量锁单准入（购物车）：一次脚本调用完成全部商品的校验与扣减，先全部校验再统一写入，任一商品失败不产生任何写入
+     *
+     * @param admissions 各商品准入命令，商品库存 Key 不能重复
+     * @return 批量准入结果，脚本执行异常时返回 ERROR（是否已扣减未知，调用方需逐单补偿）；Redis Cluster 模式下不执行脚本，返回 UNSUPPORTED
+     */
+    StockAdmissionBatchResultVO admitOrders(List<StockAdmissionEntity> admissions);
+
+    /**
+     * 锁单补偿：按准入流水回滚商品库存、队伍名额与用户参与次数，同一标识只补偿一次
+     * <p>
+     * 准入结果未知（脚本执行异常、超时）时同样调用：未准入时写入回滚标记，迟到执行的准入脚本不会再扣减
+     *
+     * @param admission 与准入时相同的命令
+     * @return SUCCESS-已回滚，DUPLICATE-已补偿过，NOT_ADMITTED-未准入无需回滚，ERROR-脚本执行异常
+     */
+    StockAdmissionResultVO compensateOrder(StockAdmissionEntity admission);
+
+    /**
+     * 订单取消回滚：订单已创建（准入必然成功过），扣减流水可能已被对账删除，不按扣减流水判断，同一标识只回滚一次
+     *
+     * @param admission 与准入时相同的标识与 Key，只需回滚的部分（如不含队伍 Key）
+     * @return SUCCESS-已回滚，DUPLICATE-已回滚过，ERROR-脚本执行异常
+     */
+    StockAdmissionResultVO releaseOrder(StockAdmissionEntity admission);
+
+}
@@ -2,6 +2,8 @@ package cn.bugstack.domain.trade.adapter.port;
 
 import cn.bugstack.domain.trade.model.entity.NotifyTaskEntity;
 
+import java.util.List;
+
 /**
  * @author Fuzhengwei bugstack.cn @小傅哥
  * @description 交易接口服务接口
@@ -11,4 +13,11 @@ public interface ITradePort {
 
     String groupBuyNotify(NotifyTaskEntity notifyTask) throws Exception;
 
+    /**
+     * 批量回调通知；MQ 回调批量发送后统一等待确认
+     *
+     * @return 与 notifyTasks 顺序一致的回调结果
+     */
+    List<String> groupBuyNotify(List<NotifyTaskEntity> notifyTasks) throws Exception;
+
 }
@@ -2,6 +2,8 @@ package cn.bugstack.domain.trade.adapter.repository;
 
 import cn.bugstack.domain.trade.model.entity.InventoryDeductionLogEntity;
 
+import java.util.List;
+
 /**
  * 库存扣减流水仓储接口（Domain层）
  */
@@ -14,5 +16,15 @@ public interface IInventoryDeductionLogRepository {
      * @return 库存扣减流水，不存在返回 null
      */
     InventoryDeductionLogEntity queryByOrderId(String orderId);
+
+    /**
+     * 批量查询流水（仅热数据表）
+     * 按 user_id 路由分片，避免逐单按 order_id 广播查询
+     *
+     * @param userIds  用户ID（分片键）
+     * @param orderIds 订单ID
+     * @return 库存扣减流水列表
+     */
+    List<InventoryDeductionLogEntity> queryByUserIdsAndOrderIds(List<String> userIds, List<String> orderIds);
 }
 
@@ -1,5 +1,10 @@
 package cn.bugstack.domain.trade.adapter.repository;
 
+import cn.bugstack.domain.trade.model.entity.NormalGoodsConfirmEntity;
+import cn.bugstack.domain.trade.model.entity.StockDeltaEntity;
+
+import java.util.List;
+
 public interface ISkuRepository {
     
     /**
@@ -53,14 +58,18 @@ public interface ISkuRepository {
     boolean confirmDecreaseInventory(Long activityId, String goodsId, Integer quantity, String orderId);
 
     /**
-     * TCC Cancel：取消扣减库存（回滚 Redis 库存）
+     * TCC Cancel：合并释放冻结库存（数据库部分，Redis 库存由调用方按准入标识回滚）
+     * 
+     * 同一 SKU 的一批订单在一个事务内锁一次库存行，只释放流水仍为冻结状态（SUCCESS）的订单，
+     * 一次 UPDATE 释放合计数量，流水批量更新为 CANCEL；已取消的订单跳过，重复调用无副作用。
+     * 没有流水（尚未冻结）的订单写入 CANCEL 流水，迟到的冻结按流水幂等跳过，不会悬挂冻结库存。
+     * 
      * @param activityId 活动ID
      * @param goodsId 商品ID
-     * @param quantity 回滚数量
-     * @param orderId 订单ID
-     * @return 是否成功
+     * @param deltas 同一 SKU 下的订单
+     * @return 是否整批释放成功
      */
-    boolean cancelDecreaseInventory(Long activityId, String goodsId, Integer quantity, String orderId);
+    boolean releaseSkuStockBatch(Long activityId, String goodsId, List<StockDeltaEntity> deltas);
 
     /**
      * 原子操作：在同一个事务中扣减商品库存和增加队伍人数
@@ -77,4 +86,30 @@ public interface ISkuRepository {
      */
     boolean decreaseSkuStockAndIncreaseTeamCount(Long activityId, String goodsId, Integer quantity, 
                                                   String teamId, String orderId, String userId);
-}
\ No newline at end of file
+
+    /**
+     * 合并扣减商品库存（热点商品库存增量写回）
+     * 
+     * 同一 SKU 的一批订单在一个事务内只锁一次库存行、执行一次 UPDATE，并批量写入库存流水；
+     * 已有流水的订单（幂等）会被跳过。库存不足或写入冲突时整批回滚，由调用方逐单重试。
+     * 
+     * @param activityId 活动ID
+     * @param goodsId 商品ID
+     * @param deltas 同一 SKU 下的订单
+     * @return 是否整批扣减成功
+     */
+    boolean decreaseSkuStockBatch(Long activityId, String goodsId, List<StockDeltaEntity> deltas);
+
+    /**
+     * TCC Confirm 组提交：同一事务内锁定订单行，只为仍是 TRY 的订单冻结库存并确认订单
+     * 
+     * 已确认、已取消的订单会被跳过（视为成功）；已有 CANCEL 流水的 TRY 订单不冻结库存，直接更新为 CANCEL。
+     * 库存不足时整批回滚，由调用方逐单重试。
+     * 
+     * @param activityId 活动ID
+     * @param goodsId 商品ID
+     * @param orders 同一 SKU 下的订单
+     * @return 是否整批处理成功
+     */
+    boolean confirmOrdersWithSkuStock(Long activityId, String goodsId, List<NormalGoodsConfirmEntity> orders);
+}
@@ -0,0 +1,59 @@
+package cn.bugstack.domain.trade.adapter.repository;
+
+import cn.bugstack.domain.trade.model.entity.StockRebuildSkuEntity;
+import cn.bugstack.domain.trade.model.entity.StockRebuildTeamEntity;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 库存重建、预热仓储接口（Domain层）
+ *
+ * @author liang.tian
+ */
+public interface IStockRebuildRepository {
+
+    /**
+     * 有效活动的 SKU 最大ID（用于划分分片），无数据时返回 0
+     */
+    long queryActiveSkuMaxId();
+
+    /**
+     * 按ID区间 [fromId, toId) 查询有效活动的 SKU 库存
+     */
+    List<StockRebuildSkuEntity> queryActiveSkuList(long fromId, long toId);
+
+    /**
+     * 未过期队伍的最大ID（用于划分分片），无数据时返回 0
+     */
+    long queryValidTeamMaxId();
+
+    /**
+     * 按ID区间 [fromId, toId) 查询未过期队伍
+     */
+    List<StockRebuildTeamEntity> queryValidTeamList(long fromId, long toId);
+
+    /**
+     * 按 SKU 统计 TRY 状态订单数量（已扣减 Redis 库存、尚未冻结数据库库存）
+     *
+     * @return activityId_goodsId -> 订单数量
+     */
+    Map<String, Integer> queryTryOrderCountBySku();
+
+    /**
+     * 批量查询已落库的订单ID（按 user_id 路由分片）
+     */
+    Set<String> queryExistingOrderIds(List<String> userIds, List<String> orderIds);
+
+    /**
+     * 库存预热：查询活动下全部 SKU 库存
+     */
+    List<StockRebuildSkuEntity> queryActivitySkuList(Long activityId);
+
+    /**
+     * 库存预热：查询活动下拼团中、未过期的队伍
+     */
+    List<StockRebuildTeamEntity> queryJoinableTeamList(Long activityId);
+
+}
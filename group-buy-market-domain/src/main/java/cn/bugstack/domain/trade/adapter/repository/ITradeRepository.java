@@ -9,9 +9,12 @@ import cn.bugstack.domain.trade.model.aggregate.GroupBuyTeamSettlementAggregate;
 import cn.bugstack.domain.trade.model.entity.GroupBuyActivityEntity;
 import cn.bugstack.domain.trade.model.entity.GroupBuyTeamEntity;
 import cn.bugstack.domain.trade.model.entity.MarketPayOrderEntity;
+import cn.bugstack.domain.trade.model.entity.NormalGoodsConfirmEntity;
 import cn.bugstack.domain.trade.model.entity.NotifyTaskEntity;
 import cn.bugstack.domain.trade.model.valobj.GroupBuyProgressVO;
+import cn.bugstack.domain.trade.model.valobj.UserTakeCountVO;
 
+import java.util.Date;
 import java.util.List;
 
 /**
@@ -56,6 +59,13 @@ public interface ITradeRepository {
      */
     MarketPayOrderEntity tryOrder(NormalGoodsOrderAggregate normalGoodsOrderAggregate);
 
+    /**
+     * TCC Try：批量尝试创建订单（购物车锁单），同一本地事务内完成，任一失败整体回滚
+     * @param normalGoodsOrderAggregates 同一用户的普通商品订单聚合对象
+     * @return 订单实体，与入参顺序一致
+     */
+    List<MarketPayOrderEntity> tryOrders(List<NormalGoodsOrderAggregate> normalGoodsOrderAggregates);
+
     /**
      * TCC Confirm：确认订单（将订单状态从 TRY 改为 CONFIRM）
      * @param orderId 订单ID
@@ -63,6 +73,14 @@ public interface ITradeRepository {
      */
     boolean confirmOrder(String orderId);
 
+    /**
+     * 查询停留在 TRY 状态超过指定时间的订单（用于恢复未完成的 Confirm）
+     * @param tryTimeoutMillis TRY 状态停留时长（毫秒）
+     * @param limit 最大条数
+     * @return 待恢复订单
+     */
+    List<NormalGoodsConfirmEntity> queryTimeoutTryOrderList(long tryTimeoutMillis, int limit);
+
     /**
      * TCC Cancel：取消订单（将订单状态改为 CANCEL）
      * @param orderId 订单ID
@@ -70,12 +88,32 @@ public interface ITradeRepository {
      */
     boolean cancelOrder(String orderId);
 
+    /**
+     * TCC Cancel：条件取消 TRY 状态订单（TRY -> CANCEL），与 Confirm 组提交在订单行锁上串行
+     * @param userId 用户ID
+     * @param orderId 订单ID
+     * @return 是否由本次更新取消（订单不存在、已确认或已取消时返回 false）
+     */
+    boolean cancelTryOrder(String userId, String orderId);
+
     GroupBuyProgressVO queryGroupBuyProgress(String teamId);
 
     GroupBuyActivityEntity queryGroupBuyActivityEntityByActivityId(Long activityId);
 
     Integer queryOrderCountByActivityId(Long activityId, String userId);
 
+    /**
+     * 查询用户在活动上的参与次数（Redis 计数，未加载时从数据库统计并加载）
+     *
+     * @param endTime 活动结束时间，用于计算计数过期时间，可为空
+     */
+    UserTakeCountVO queryUserTakeCount(Long activityId, String userId, Date endTime);
+
+    /**
+     * 退单扣回用户有效参与次数（幂等）
+     */
+    void releaseUserTakeCount(Long activityId, String userId, String orderId);
+
     GroupBuyTeamEntity queryGroupBuyTeamByTeamId(String teamId);
 
     NotifyTaskEntity settlementMarketPayOrder(GroupBuyTeamSettlementAggregate groupBuyTeamSettlementAggregate);
@@ -0,0 +1,25 @@
+package cn.bugstack.domain.trade.model.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 购物车锁单商品实体（Domain层）
+ *
+ * @author liang.tian
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class NormalGoodsCartItemEntity {
+
+    /** 支付活动实体对象（teamId 为空则创建新组队） */
+    private PayActivityEntity payActivityEntity;
+
+    /** 支付优惠实体对象（试算结果） */
+    private PayDiscountEntity payDiscountEntity;
+
+}
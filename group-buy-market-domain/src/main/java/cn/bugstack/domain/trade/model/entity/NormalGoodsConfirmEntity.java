@@ -0,0 +1,37 @@
+package cn.bugstack.domain.trade.model.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 普通商品 TCC Confirm 请求实体（Domain层）
+ * <p>
+ * Try 成功后进入 Confirm 阶段的订单信息，用于按 SKU 合并扣减库存、按分片合并更新订单状态；
+ * 也用于从 TRY 状态的订单记录恢复未完成的 Confirm。
+ *
+ * @author liang.tian
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class NormalGoodsConfirmEntity {
+
+    /** 订单ID */
+    private String orderId;
+    /** 用户ID（分片键） */
+    private String userId;
+    /** 活动ID */
+    private Long activityId;
+    /** 商品ID */
+    private String goodsId;
+    /** 队伍ID */
+    private String teamId;
+    /** 扣减数量 */
+    private Integer quantity;
+    /** 拼团有效时长（分钟），失败补偿回滚队伍库存时使用 */
+    private Integer validTime;
+
+}
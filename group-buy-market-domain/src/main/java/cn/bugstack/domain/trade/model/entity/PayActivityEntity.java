@@ -32,5 +32,7 @@ public class PayActivityEntity {
     private Integer validTime;
     /** 目标数量 */
     private Integer targetCount;
+    /** 参与次数上限 */
+    private Integer takeLimitCount;
 
 }
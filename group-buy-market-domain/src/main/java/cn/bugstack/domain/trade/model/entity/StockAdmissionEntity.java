@@ -0,0 +1,43 @@
+package cn.bugstack.domain.trade.model.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 锁单准入命令实体（Domain层）
+ * <p>
+ * 一次 Redis 往返完成幂等校验、用户参与次数、商品库存、队伍名额及流水记录；
+ * 补偿时使用同一命令回滚准入脚本实际执行过的部分。
+ *
+ * @author liang.tian
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class StockAdmissionEntity {
+
+    /** 订单ID */
+    private String orderId;
+    /** 扣减标识（DECREASE_{userId}_{orderId}），同时作为流水 field */
+    private String identifier;
+    /** 商品库存 Key */
+    private String goodsStockKey;
+    /** 商品库存流水 Key */
+    private String goodsStockLogKey;
+    /** 扣减数量 */
+    private Integer count;
+    /** 用户参与次数 Key，为空时不处理参与次数 */
+    private String userTakeKey;
+    /** 参与次数上限，为空或 <=0 时不校验（已在规则过滤中校验） */
+    private Integer takeLimit;
+    /** 队伍库存 Key，为空时不占用队伍名额 */
+    private String teamStockKey;
+    /** 队伍库存流水 Key */
+    private String teamStockLogKey;
+    /** 队伍目标人数 */
+    private Integer teamTargetCount;
+
+}
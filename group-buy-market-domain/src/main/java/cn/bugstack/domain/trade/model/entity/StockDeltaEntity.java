@@ -0,0 +1,33 @@
+package cn.bugstack.domain.trade.model.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 数据库库存增量实体（Domain层）
+ * <p>
+ * 一笔订单对 sku_activity 冻结库存的一次变更：热点商品订单创建后冻结、订单取消后释放。
+ * 由 StockDeltaSynchronizer 按 SKU 聚合后写回，inventory_deduction_log 按订单幂等。
+ *
+ * @author liang.tian
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class StockDeltaEntity {
+
+    /** 订单ID */
+    private String orderId;
+    /** 用户ID（分片键） */
+    private String userId;
+    /** 活动ID */
+    private Long activityId;
+    /** 商品ID */
+    private String goodsId;
+    /** 变更数量 */
+    private Integer quantity;
+
+}
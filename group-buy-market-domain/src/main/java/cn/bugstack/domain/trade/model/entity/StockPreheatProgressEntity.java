@@ -0,0 +1,44 @@
+package cn.bugstack.domain.trade.model.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 活动库存预热进度
+ *
+ * @author liang.tian
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class StockPreheatProgressEntity {
+
+    /** 活动ID */
+    private Long activityId;
+    /** 预热状态，见 StockPreheatStatusEnumVO */
+    private String status;
+    /** 是否已就绪（预热完成） */
+    private boolean ready;
+    /** SKU 总数 / 已处理数 */
+    private int skuTotal;
+    private int skuDone;
+    /** 队伍总数 / 已处理数 */
+    private int teamTotal;
+    private int teamDone;
+    /** 新写入的库存 Key 数量（已存在的 Key 不覆盖） */
+    private long keysCreated;
+    /** 已加载的缓存数量（活动、折扣、商品） */
+    private long cacheLoaded;
+    /** 失败的分批数量 */
+    private int failedChunks;
+    /** 开始时间（毫秒） */
+    private long startTime;
+    /** 耗时（毫秒），预热中为已执行时间 */
+    private long costMillis;
+    /** 说明 */
+    private String message;
+
+}
@@ -0,0 +1,45 @@
+package cn.bugstack.domain.trade.model.entity;
+
+import cn.bugstack.domain.trade.model.valobj.StockRebuildDiffVO;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * 库存重建报告
+ *
+ * @author liang.tian
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class StockRebuildReportEntity {
+
+    /** 是否仅对比不写入 */
+    private boolean dryRun;
+    /** 分片数 */
+    private int shardCount;
+    /** 商品库存 Key 数量 */
+    private long goodsKeyCount;
+    /** 商品库存与计算值不一致（含 Key 缺失）的数量 */
+    private long goodsDiffCount;
+    /** 队伍库存 Key 数量 */
+    private long teamKeyCount;
+    /** 队伍库存与计算值不一致（含 Key 缺失）的数量 */
+    private long teamDiffCount;
+    /** 实际写入 Redis 的 Key 数量（dryRun 时为 0） */
+    private long writtenCount;
+    /** 未能统计在途扣减（流水 Stream 不存在，按 TRY 订单估算）的 SKU 数量 */
+    private long journalMissingCount;
+    /** 处理失败的分片数 */
+    private int failedShardCount;
+    /** 耗时（毫秒） */
+    private long costMillis;
+    /** 差异明细（最多保留 {@code MAX_REPORT_DIFFS} 条） */
+    private List<StockRebuildDiffVO> diffs;
+
+}
@@ -0,0 +1,32 @@
+package cn.bugstack.domain.trade.model.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 库存重建 - 有效活动的 SKU 数据库库存
+ *
+ * @author liang.tian
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class StockRebuildSkuEntity {
+
+    /** 活动ID */
+    private Long activityId;
+    /** 商品ID */
+    private String goodsId;
+    /** 可售库存 */
+    private Integer saleableInventory;
+    /** 冻结库存 */
+    private Integer frozenInventory;
+
+    public String getSku() {
+        return activityId + "_" + goodsId;
+    }
+
+}
@@ -0,0 +1,30 @@
+package cn.bugstack.domain.trade.model.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 库存重建 - 未过期队伍的锁单数据
+ *
+ * @author liang.tian
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class StockRebuildTeamEntity {
+
+    /** 活动ID */
+    private Long activityId;
+    /** 拼单组队ID */
+    private String teamId;
+    /** 目标数量 */
+    private Integer targetCount;
+    /** 锁单数量 */
+    private Integer lockCount;
+    /** 完成数量 */
+    private Integer completeCount;
+
+}
@@ -0,0 +1,46 @@
+package cn.bugstack.domain.trade.model.valobj;
+
+import lombok.*;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 批量锁单准入结果值对象（购物车多商品，全部成功或全部不扣减）
+ *
+ * @author liang.tian
+ */
+@Getter
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class StockAdmissionBatchResultVO {
+
+    /** 结果码，任一商品校验失败即为该商品的失败码 */
+    private StockAdmissionCodeEnumVO code;
+    /** 失败商品下标（从 0 开始），成功、脚本异常或未执行脚本时为 -1 */
+    private Integer failedIndex;
+    /** 各商品准入结果，成功时与命令顺序一致；失败时只包含失败商品的结果 */
+    private List<StockAdmissionResultVO> items;
+
+    public boolean isSuccess() {
+        return StockAdmissionCodeEnumVO.SUCCESS.equals(code);
+    }
+
+    public static StockAdmissionBatchResultVO error() {
+        return StockAdmissionBatchResultVO.builder()
+                .code(StockAdmissionCodeEnumVO.ERROR)
+                .failedIndex(-1)
+                .items(Collections.emptyList())
+                .build();
+    }
+
+    public static StockAdmissionBatchResultVO unsupported() {
+        return StockAdmissionBatchResultVO.builder()
+                .code(StockAdmissionCodeEnumVO.UNSUPPORTED)
+                .failedIndex(-1)
+                .items(Collections.emptyList())
+                .build();
+    }
+
+}
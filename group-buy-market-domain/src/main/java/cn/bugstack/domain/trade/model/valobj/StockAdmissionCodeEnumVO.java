@@ -0,0 +1,39 @@
+package cn.bugstack.domain.trade.model.valobj;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+/**
+ * 锁单准入结果码（与准入 Lua 脚本返回值一一对应）
+ *
+ * @author liang.tian
+ */
+@Getter
+@AllArgsConstructor
+@NoArgsConstructor
+public enum StockAdmissionCodeEnumVO {
+
+    SUCCESS(1, "准入成功"),
+    DUPLICATE(2, "重复请求"),
+    GOODS_STOCK_KEY_NOT_FOUND(3, "商品库存未预热"),
+    GOODS_STOCK_NOT_ENOUGH(4, "商品库存不足"),
+    TEAM_FULL(5, "队伍已满"),
+    TAKE_LIMIT(6, "已达参与次数上限"),
+    NOT_ADMITTED(7, "未准入，无需补偿"),
+    UNSUPPORTED(8, "当前 Redis 部署模式不支持该准入方式"),
+    ERROR(9, "脚本执行异常"),
+    ;
+
+    private Integer code;
+    private String info;
+
+    public static StockAdmissionCodeEnumVO valueOf(Integer code) {
+        if (null == code) return ERROR;
+        for (StockAdmissionCodeEnumVO value : values()) {
+            if (value.code.equals(code)) return value;
+        }
+        return ERROR;
+    }
+
+}
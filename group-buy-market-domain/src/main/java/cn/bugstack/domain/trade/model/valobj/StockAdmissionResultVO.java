@@ -0,0 +1,38 @@
+package cn.bugstack.domain.trade.model.valobj;
+
+import lombok.*;
+
+/**
+ * 锁单准入 / 补偿结果值对象
+ *
+ * @author liang.tian
+ */
+@Getter
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class StockAdmissionResultVO {
+
+    /** 结果码 */
+    private StockAdmissionCodeEnumVO code;
+    /** 商品剩余库存，未涉及时为 -1 */
+    private Long goodsRemainingStock;
+    /** 队伍当前人数，未涉及时为 -1 */
+    private Long teamCurrentCount;
+    /** 用户有效参与次数，未加载时为 -1 */
+    private Long takeCount;
+
+    public boolean isSuccess() {
+        return StockAdmissionCodeEnumVO.SUCCESS.equals(code);
+    }
+
+    public static StockAdmissionResultVO error() {
+        return StockAdmissionResultVO.builder()
+                .code(StockAdmissionCodeEnumVO.ERROR)
+                .goodsRemainingStock(-1L)
+                .teamCurrentCount(-1L)
+                .takeCount(-1L)
+                .build();
+    }
+
+}
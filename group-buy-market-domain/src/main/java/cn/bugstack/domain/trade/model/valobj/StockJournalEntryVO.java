@@ -0,0 +1,72 @@
+package cn.bugstack.domain.trade.model.valobj;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 库存流水（Redis Stream 中的一条记录）
+ * <p>
+ * 流水只追加不修改，消费组确认（XACK）即表示该流水已被对应任务处理完毕。
+ *
+ * @author liang.tian
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class StockJournalEntryVO {
+
+    /** Stream 消息ID */
+    private String id;
+    /** 操作类型：decrease-扣减, increase-回滚 */
+    private String action;
+    /** 操作标识符（DECREASE_userId_orderId） */
+    private String identifier;
+    /** 变更数量 */
+    private Integer change;
+    /** 变更前库存 */
+    private Long from;
+    /** 变更后库存 */
+    private Long to;
+    /** 时间戳（毫秒） */
+    private Long timestamp;
+    /** 准入时占用的队伍库存Key（未占用队伍名额时为空） */
+    private String teamStockKey;
+    /** 准入时占用的队伍库存流水Key */
+    private String teamStockLogKey;
+    /** 准入时累加的用户参与次数Key（未累加时为空） */
+    private String userTakeKey;
+    /** 租约节点ID（租约模式扣减时不为空） */
+    private String leaseNodeId;
+
+    public boolean isDecrease() {
+        return "decrease".equals(action);
+    }
+
+    /**
+     * 从 identifier 中提取 userId，identifier 格式：DECREASE_{userId}_{orderId}
+     */
+    public String extractUserId() {
+        String[] parts = splitIdentifier();
+        return null == parts ? null : parts[1];
+    }
+
+    /**
+     * 从 identifier 中提取 orderId
+     */
+    public String extractOrderId() {
+        String[] parts = splitIdentifier();
+        return null == parts ? null : parts[2];
+    }
+
+    private String[] splitIdentifier() {
+        if (null == identifier || !identifier.startsWith("DECREASE_")) {
+            return null;
+        }
+        String[] parts = identifier.split("_", 3);
+        return parts.length < 3 ? null : parts;
+    }
+
+}
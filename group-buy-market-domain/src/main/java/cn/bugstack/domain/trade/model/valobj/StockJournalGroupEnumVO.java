@@ -0,0 +1,29 @@
+package cn.bugstack.domain.trade.model.valobj;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+/**
+ * 库存流水（Redis Stream）消费组
+ * <p>
+ * 流水 Stream 由扣减脚本首次写入时创建，并同时创建以下全部消费组（从第一条流水开始消费），
+ * 保证裁剪时不会丢弃尚未被某个消费组读取的流水。新增消费组时需要同步升级流水脚本版本，
+ * 已存在的 Stream 在该消费组首次读取时补建。
+ *
+ * @author liang.tian
+ */
+@Getter
+@AllArgsConstructor
+@NoArgsConstructor
+public enum StockJournalGroupEnumVO {
+
+    COMPENSATION("compensation", "补偿任务：订单未落库时回滚库存"),
+    RECONCILIATION("reconciliation", "对账任务：核对数据库库存流水"),
+    BYPASS_VERIFY("bypass_verify", "旁路验证：下单后快速核对数据库库存流水，清理幂等索引"),
+    ;
+
+    private String code;
+    private String info;
+
+}
@@ -0,0 +1,25 @@
+package cn.bugstack.domain.trade.model.valobj;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+/**
+ * 活动库存预热状态
+ *
+ * @author liang.tian
+ */
+@Getter
+@AllArgsConstructor
+@NoArgsConstructor
+public enum StockPreheatStatusEnumVO {
+
+    RUNNING("running", "预热中"),
+    COMPLETED("completed", "预热完成，可以接收流量"),
+    FAILED("failed", "预热失败，未加载的 Key 由下单链路按需初始化"),
+    ;
+
+    private String code;
+    private String info;
+
+}
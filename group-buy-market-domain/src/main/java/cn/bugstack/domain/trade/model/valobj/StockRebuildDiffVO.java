@@ -0,0 +1,28 @@
+package cn.bugstack.domain.trade.model.valobj;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 库存重建差异项
+ *
+ * @author liang.tian
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class StockRebuildDiffVO {
+
+    /** 库存 Key */
+    private String key;
+    /** Redis 当前值，Key 不存在时为 null */
+    private Long current;
+    /** 重建计算值 */
+    private Long expected;
+    /** 计算明细 */
+    private String detail;
+
+}
@@ -0,0 +1,35 @@
+package cn.bugstack.domain.trade.model.valobj;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 单个 SKU 的 Redis 库存快照（库存重建）
+ *
+ * @author liang.tian
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class StockRedisSnapshotVO {
+
+    /** SKU（activityId_goodsId） */
+    private String sku;
+    /** 当前商品库存，Key 不存在时为 null */
+    private Long goodsStock;
+    /** 各节点未核销的租约数量合计 */
+    private long leasedStock;
+    /** 库存流水 Stream 是否存在（不存在时无法统计在途扣减） */
+    private boolean journalAvailable;
+    /** 对账消费组尚未确认的流水（已扣减 Redis、可能尚未落库） */
+    private List<StockJournalEntryVO> unreconciledEntries;
+    /** 流水中已被补偿回滚的扣减标识 */
+    private Set<String> rolledBackIdentifiers;
+
+}
@@ -0,0 +1,25 @@
+package cn.bugstack.domain.trade.model.valobj;
+
+import lombok.*;
+
+/**
+ * 用户活动参与次数值对象
+ * <p>
+ * Redis Hash：group_buy_market_user_take_{activityId}_{userId}
+ * - take：有效参与次数（退单后扣回），用于参与次数上限校验
+ * - seq：累计锁单次数（只增不减），用于构建 bizId 唯一索引，与数据库 count(id) 口径一致
+ *
+ * @author liang.tian
+ */
+@Getter
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class UserTakeCountVO {
+
+    /** 有效参与次数 */
+    private Integer takeCount;
+    /** 累计锁单次数 */
+    private Integer seq;
+
+}
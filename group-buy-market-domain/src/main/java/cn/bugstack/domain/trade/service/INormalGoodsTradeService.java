@@ -1,10 +1,13 @@
 package cn.bugstack.domain.trade.service;
 
 import cn.bugstack.domain.trade.model.entity.MarketPayOrderEntity;
+import cn.bugstack.domain.trade.model.entity.NormalGoodsCartItemEntity;
 import cn.bugstack.domain.trade.model.entity.PayActivityEntity;
 import cn.bugstack.domain.trade.model.entity.PayDiscountEntity;
 import cn.bugstack.domain.trade.model.entity.UserEntity;
 
+import java.util.List;
+
 /**
  * 普通商品下单服务接口（Domain层）
  * 
@@ -31,5 +34,24 @@ public interface INormalGoodsTradeService {
      * @throws Exception 异常
      */
     MarketPayOrderEntity lockNormalGoodsOrder(UserEntity userEntity, PayActivityEntity payActivityEntity, PayDiscountEntity payDiscountEntity) throws Exception;
+
+    /**
+     * 购物车锁单：多个普通商品一次准入、一个本地事务创建全部订单，全部成功或全部失败
+     *
+     * @param userEntity 用户实体
+     * @param cartItems 购物车商品，活动不能重复
+     * @return 订单实体，与购物车商品顺序一致
+     * @throws Exception 异常
+     */
+    List<MarketPayOrderEntity> lockNormalGoodsCartOrder(UserEntity userEntity, List<NormalGoodsCartItemEntity> cartItems) throws Exception;
+
+    /**
+     * 恢复停留在 TRY 状态的订单（Confirm 入队后进程崩溃等情况），重新执行 Confirm
+     * 
+     * @param tryTimeoutMillis TRY 状态停留时长（毫秒），只处理超过该时长的订单
+     * @param limit 单次最大处理条数
+     * @return 处理条数
+     */
+    int recoverTryOrders(long tryTimeoutMillis, int limit);
 }
 
@@ -0,0 +1,35 @@
+package cn.bugstack.domain.trade.service;
+
+import cn.bugstack.domain.trade.model.entity.StockPreheatProgressEntity;
+
+/**
+ * 活动库存预热服务
+ *
+ * @author liang.tian
+ */
+public interface IStockPreheatService {
+
+    /**
+     * 同步预热活动：商品库存、队伍库存、队伍库存恢复计数，以及活动、折扣、商品缓存
+     *
+     * @param activityId 活动ID
+     * @return 预热结果
+     */
+    StockPreheatProgressEntity preheat(Long activityId);
+
+    /**
+     * 异步预热活动，立即返回当前进度；同一活动预热中时不重复执行
+     */
+    StockPreheatProgressEntity preheatAsync(Long activityId);
+
+    /**
+     * 查询预热进度，未执行过预热时返回 null
+     */
+    StockPreheatProgressEntity queryProgress(Long activityId);
+
+    /**
+     * 活动是否已预热完成
+     */
+    boolean isReady(Long activityId);
+
+}
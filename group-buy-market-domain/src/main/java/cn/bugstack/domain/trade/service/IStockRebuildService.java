@@ -0,0 +1,21 @@
+package cn.bugstack.domain.trade.service;
+
+import cn.bugstack.domain.trade.model.entity.StockRebuildReportEntity;
+
+/**
+ * Redis 库存重建服务
+ *
+ * @author liang.tian
+ */
+public interface IStockRebuildService {
+
+    /**
+     * 根据数据库库存与在途流水重建 Redis 商品库存、队伍库存
+     *
+     * @param dryRun     true-只对比并输出差异，不写入 Redis
+     * @param shardCount 并行分片数
+     * @return 重建报告
+     */
+    StockRebuildReportEntity rebuild(boolean dryRun, int shardCount);
+
+}
@@ -0,0 +1,313 @@
+package cn.bugstack.domain.trade.service.hot;
+
+import cn.bugstack.domain.trade.adapter.port.IRedisAdapter;
+import cn.bugstack.domain.trade.adapter.repository.IInventoryDeductionLogRepository;
+import cn.bugstack.domain.trade.model.entity.InventoryDeductionLogEntity;
+import cn.bugstack.domain.trade.model.valobj.StockJournalEntryVO;
+import cn.bugstack.domain.trade.model.valobj.StockJournalGroupEnumVO;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 旁路验证批处理器（Domain层）
+ * <p>
+ * 以 bypass_verify 消费组读取库存流水 Stream，不再按下单请求逐单提交、HMGET 读取流水 Hash 并解析 JSON：
+ * 1. 每个时间片（1秒）按消费组读取各 SKU 的新流水，扣减流水放入有界缓冲区（按流水时间近似有序），读取后立即确认（XACK）
+ * 2. 取出已到期（流水写入满3秒）的请求，按流水 Key 分组，一次按 user_id + order_id 的批量查询读取数据库流水
+ * 3. 扣减数量取自 Stream 流水，与数据库流水一致时一次多字段 HDEL 清理幂等索引
+ * 4. 缓冲区剩余容量不足时不再读取新流水（背压），流水留在 Stream 中下个时间片继续读取
+ * <p>
+ * 多个节点使用同一消费者名称，新流水在节点间分摊；旁路验证只负责快速清理，读取后进程退出等未核验的流水由对账任务（reconciliation 消费组）兜底。
+ * 流水 Key 每10秒扫描一次，最近一次读取为空的 SKU 等到下次扫描再读取。
+ *
+ * @author liang.tian
+ */
+@Slf4j
+@Component
+public class BypassVerifyBatcher {
+
+    // 库存流水 Stream 前缀（与 RedisAdapterImpl 保持一致）
+    private static final String STOCK_JOURNAL_KEY_PREFIX = "group_buy_market_stock_journal_";
+    private static final String GOODS_STOCK_LOG_KEY_PREFIX = "group_buy_market_goods_stock_log_";
+    // 固定消费者名称，节点重启后可以确认上次已读取未确认的流水
+    private static final String CONSUMER = "bypass_verify_batcher";
+    // 核验延迟（与对账任务 CHECK_THRESHOLD_MS 保持一致）
+    private static final long VERIFY_DELAY_MS = 3000L;
+    // 时间片长度
+    private static final long TICK_MS = 1000L;
+    // 流水 Key 扫描间隔
+    private static final long SCAN_INTERVAL_MS = 10_000L;
+    // 缓冲区容量
+    private static final int CAPACITY = 100_000;
+    // 单次读取流水条数、单次批量查询的最大条数
+    private static final int BATCH_SIZE = 500;
+    // 单个时间片最多处理条数，避免单次处理过久
+    private static final int MAX_DRAIN_PER_TICK = 50_000;
+
+    @Resource
+    private IRedisAdapter redisAdapter;
+
+    @Resource
+    private IInventoryDeductionLogRepository inventoryDeductionLogRepository;
+
+    @Resource(name = "bypassVerifyScheduler")
+    private ScheduledExecutorService scheduler;
+
+    private final ArrayBlockingQueue<VerifyTask> buffer = new ArrayBlockingQueue<>(CAPACITY);
+
+    // 有新流水的库存流水 Key，仅在调度线程中访问
+    private final Set<String> activeJournalKeys = new LinkedHashSet<>();
+    private long lastScanTime;
+
+    // 统计指标
+    private final AtomicLong readCount = new AtomicLong();
+    private final AtomicLong verifiedCount = new AtomicLong();
+    private final AtomicLong dbMissingCount = new AtomicLong();
+    private final AtomicLong mismatchCount = new AtomicLong();
+    private final AtomicLong errorCount = new AtomicLong();
+    private volatile long lastSliceSize;
+    private volatile long lastSliceCostMs;
+
+    private ScheduledFuture<?> tickFuture;
+
+    @PostConstruct
+    public void init() {
+        tickFuture = scheduler.scheduleWithFixedDelay(this::tick, TICK_MS, TICK_MS, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (null != tickFuture) {
+            tickFuture.cancel(false);
+        }
+        // 未核验的流水已确认，由对账任务处理
+        log.info("旁路验证批处理器关闭，未核验流水交由对账任务处理: remaining={}", buffer.size());
+    }
+
+    /**
+     * 处理一个时间片：读取新流水，取出所有已到期的请求并批量核验
+     */
+    void tick() {
+        long start = System.currentTimeMillis();
+        try {
+            if (start - lastScanTime >= SCAN_INTERVAL_MS) {
+                scanJournalKeys();
+                lastScanTime = start;
+            }
+            readJournals();
+
+            List<VerifyTask> due = new ArrayList<>();
+            VerifyTask head;
+            while (due.size() < MAX_DRAIN_PER_TICK && null != (head = buffer.peek()) && head.getDueTime() <= start) {
+                due.add(buffer.poll());
+            }
+            if (due.isEmpty()) {
+                lastSliceSize = 0;
+                return;
+            }
+
+            Map<String, List<VerifyTask>> groupByLogKey = new HashMap<>();
+            for (VerifyTask task : due) {
+                groupByLogKey.computeIfAbsent(task.getGoodsStockLogKey(), k -> new ArrayList<>()).add(task);
+            }
+            for (Map.Entry<String, List<VerifyTask>> entry : groupByLogKey.entrySet()) {
+                List<VerifyTask> tasks = entry.getValue();
+                for (int i = 0; i < tasks.size(); i += BATCH_SIZE) {
+                    verifyBatch(entry.getKey(), tasks.subList(i, Math.min(i + BATCH_SIZE, tasks.size())));
+                }
+            }
+
+            lastSliceSize = due.size();
+            lastSliceCostMs = System.currentTimeMillis() - start;
+            log.info("旁路验证-时间片完成: size={}, logKeys={}, cost={}ms, remaining={}", due.size(), groupByLogKey.size(), lastSliceCostMs, buffer.size());
+        } catch (Exception e) {
+            // 调度任务不能抛出异常，否则后续时间片不再执行
+            log.error("旁路验证-时间片处理异常", e);
+        }
+    }
+
+    /**
+     * 扫描库存流水 Key，同时确认上次读取后未确认的流水（节点在读取与确认之间退出），由对账任务核验
+     */
+    private void scanJournalKeys() {
+        for (String journalKey : redisAdapter.scanStockLogKeys(STOCK_JOURNAL_KEY_PREFIX + "*")) {
+            activeJournalKeys.add(journalKey);
+            try {
+                List<StockJournalEntryVO> pending = redisAdapter.readStockJournal(journalKey, StockJournalGroupEnumVO.BYPASS_VERIFY,
+                        CONSUMER, BATCH_SIZE, true, null);
+                ackEntries(journalKey, pending);
+            } catch (Exception e) {
+                log.error("旁路验证-确认未确认流水异常: journalKey={}", journalKey, e);
+            }
+        }
+    }
+
+    /**
+     * 按消费组读取各 SKU 的新流水，缓冲区剩余容量不足一批时停止读取
+     */
+    private void readJournals() {
+        Iterator<String> iterator = activeJournalKeys.iterator();
+        while (iterator.hasNext() && buffer.remainingCapacity() >= BATCH_SIZE) {
+            String journalKey = iterator.next();
+            try {
+                List<StockJournalEntryVO> entries = redisAdapter.readStockJournal(journalKey, StockJournalGroupEnumVO.BYPASS_VERIFY,
+                        CONSUMER, BATCH_SIZE, false, null);
+                if (entries.isEmpty()) {
+                    iterator.remove();
+                    continue;
+                }
+                String goodsStockLogKey = GOODS_STOCK_LOG_KEY_PREFIX + journalKey.substring(STOCK_JOURNAL_KEY_PREFIX.length());
+                for (StockJournalEntryVO entry : entries) {
+                    VerifyTask task = toVerifyTask(goodsStockLogKey, entry);
+                    if (null != task) {
+                        buffer.offer(task);
+                        readCount.incrementAndGet();
+                    }
+                }
+                ackEntries(journalKey, entries);
+            } catch (Exception e) {
+                log.error("旁路验证-读取库存流水异常: journalKey={}", journalKey, e);
+            }
+        }
+    }
+
+    private void ackEntries(String journalKey, List<StockJournalEntryVO> entries) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        List<String> ids = new ArrayList<>(entries.size());
+        for (StockJournalEntryVO entry : entries) {
+            ids.add(entry.getId());
+        }
+        redisAdapter.ackStockJournal(journalKey, StockJournalGroupEnumVO.BYPASS_VERIFY, ids);
+    }
+
+    /**
+     * 只核验扣减流水，回滚流水、已被裁剪的流水、标识格式错误的流水不核验
+     */
+    private VerifyTask toVerifyTask(String goodsStockLogKey, StockJournalEntryVO entry) {
+        if (!entry.isDecrease() || null == entry.getChange()) {
+            return null;
+        }
+        String orderId = entry.extractOrderId();
+        if (null == orderId) {
+            return null;
+        }
+        long timestamp = null == entry.getTimestamp() ? 0L : entry.getTimestamp();
+        return new VerifyTask(goodsStockLogKey, entry.getIdentifier(), orderId, entry.extractUserId(), entry.getChange(), timestamp + VERIFY_DELAY_MS);
+    }
+
+    private void verifyBatch(String goodsStockLogKey, List<VerifyTask> tasks) {
+        try {
+            // 1. 批量查询数据库库存流水（按 user_id 分片路由）
+            Set<String> userIds = new HashSet<>();
+            List<String> orderIds = new ArrayList<>(tasks.size());
+            for (VerifyTask task : tasks) {
+                userIds.add(task.getUserId());
+                orderIds.add(task.getOrderId());
+            }
+            Map<String, InventoryDeductionLogEntity> dbLogs = new HashMap<>();
+            for (InventoryDeductionLogEntity dbLog : inventoryDeductionLogRepository.queryByUserIdsAndOrderIds(new ArrayList<>(userIds), orderIds)) {
+                dbLogs.put(dbLog.getOrderId(), dbLog);
+            }
+
+            // 2. 逐条比对
+            List<String> verified = new ArrayList<>();
+            for (VerifyTask task : tasks) {
+                if (verify(task, dbLogs.get(task.getOrderId()))) {
+                    verified.add(task.getIdentifier());
+                }
+            }
+
+            // 3. 核验成功，数据一致，批量删除幂等索引中的扣减记录（HDEL 多字段）
+            if (!verified.isEmpty()) {
+                redisAdapter.removeStockDecreaseLogs(goodsStockLogKey, verified);
+                verifiedCount.addAndGet(verified.size());
+            }
+            log.debug("旁路验证-批次完成: logKey={}, size={}, verified={}", goodsStockLogKey, tasks.size(), verified.size());
+        } catch (Exception e) {
+            // 核验失败不影响主流程，扣减记录保留，等对账任务再核对
+            errorCount.addAndGet(tasks.size());
+            log.error("旁路验证-批次异常: logKey={}, size={}", goodsStockLogKey, tasks.size(), e);
+        }
+    }
+
+    private boolean verify(VerifyTask task, InventoryDeductionLogEntity dbLog) {
+        String orderId = task.getOrderId();
+        if (dbLog == null || !task.getUserId().equals(dbLog.getUserId())) {
+            // 数据库库存流水不存在，可能是异步扣减尚未完成、订单创建失败或库存已回滚，等待对账任务处理
+            dbMissingCount.incrementAndGet();
+            log.warn("旁路验证-未找到数据库库存流水: orderId={}", orderId);
+            return false;
+        }
+
+        Integer dbQuantity = dbLog.getQuantity();
+        if (!Integer.valueOf(task.getChange()).equals(dbQuantity)) {
+            // 数量不一致：不删除扣减记录，让对账任务检测到不一致并处理
+            mismatchCount.incrementAndGet();
+            log.error("旁路验证-扣减数量不一致（异常情况）: orderId={}, redisChange={}, dbQuantity={}", orderId, task.getChange(), dbQuantity);
+            return false;
+        }
+        return true;
+    }
+
+    public int getBufferSize() {
+        return buffer.size();
+    }
+
+    public int getCapacity() {
+        return CAPACITY;
+    }
+
+    public long getReadCount() {
+        return readCount.get();
+    }
+
+    public long getVerifiedCount() {
+        return verifiedCount.get();
+    }
+
+    public long getDbMissingCount() {
+        return dbMissingCount.get();
+    }
+
+    public long getMismatchCount() {
+        return mismatchCount.get();
+    }
+
+    public long getErrorCount() {
+        return errorCount.get();
+    }
+
+    public long getLastSliceSize() {
+        return lastSliceSize;
+    }
+
+    public long getLastSliceCostMs() {
+        return lastSliceCostMs;
+    }
+
+    @Getter
+    @AllArgsConstructor
+    private static class VerifyTask {
+        private final String goodsStockLogKey;
+        private final String identifier;
+        private final String orderId;
+        private final String userId;
+        private final int change;
+        private final long dueTime;
+    }
+
+}
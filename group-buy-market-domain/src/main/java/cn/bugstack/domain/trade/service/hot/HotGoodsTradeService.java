@@ -2,12 +2,10 @@ package cn.bugstack.domain.trade.service.hot;
 
 import cn.bugstack.domain.trade.adapter.port.IMessageProducer;
 import cn.bugstack.domain.trade.adapter.port.IRedisAdapter;
-import cn.bugstack.domain.trade.adapter.repository.IInventoryDeductionLogRepository;
 import cn.bugstack.domain.trade.adapter.repository.ITradeRepository;
 import cn.bugstack.domain.trade.model.aggregate.HotGoodsOrderAggregate;
 import cn.bugstack.domain.trade.model.entity.*;
 import cn.bugstack.domain.trade.model.valobj.TradeOrderStatusEnumVO;
-import cn.bugstack.domain.trade.model.vo.RedisStockLogVO;
 import cn.bugstack.domain.trade.service.IHotGoodsTradeService;
 import cn.bugstack.domain.trade.constant.MessageDelayLevel;
 import cn.bugstack.types.utils.SnowflakeIdUtil;
@@ -16,9 +14,6 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.Resource;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
 
 /**
  * 热点商品下单服务实现（Domain层）
@@ -43,9 +38,6 @@ public class HotGoodsTradeService implements IHotGoodsTradeService {
     // 消息队列 Topic（热点商品）
     private static final String HOT_GOODS_ORDER_CREATE_BINDING = "hotGoodsOrderCreate-out-0";
 
-    // 商品库存流水 Redis 前缀
-    private static final String GOODS_STOCK_LOG_KEY_PREFIX = "group_buy_market_goods_stock_log_";
-
     @Resource
     private ITradeRepository repository;
 
@@ -58,12 +50,6 @@ public class HotGoodsTradeService implements IHotGoodsTradeService {
     @Resource
     private IRedisAdapter redisAdapter;
 
-    @Resource
-    private IInventoryDeductionLogRepository inventoryDeductionLogRepository;
-
-    // 旁路验证线程池
-    private final ScheduledExecutorService scheduler = new ScheduledThreadPoolExecutor(10);
-
     @Override
     public MarketPayOrderEntity lockHotGoodsOrder(UserEntity userEntity, PayActivityEntity payActivityEntity, PayDiscountEntity payDiscountEntity) throws Exception {
         log.info("热点商品下单-锁定订单: userId={}, activityId={}, goodsId={}", 
@@ -105,13 +91,7 @@ public class HotGoodsTradeService implements IHotGoodsTradeService {
         MarketPayOrderEntity order = repository.queryMarketPayOrderEntityByOrderId(userId, orderId);
         
         if (order != null && TradeOrderStatusEnumVO.CREATE.equals(order.getTradeOrderStatusEnumVO())) {
-            // 订单已创建成功，执行旁路验证
-            // 生成拼接流水前缀
-            String goodsStockLogKey = GOODS_STOCK_LOG_KEY_PREFIX + payActivityEntity.getActivityId() + "_" + payDiscountEntity.getGoodsId();
-            // 构建库存扣减标识符
-            String identifier = buildIdentifier(userEntity.getUserId(), orderId);
-            // 进行旁路验证
-            bypassVerify(goodsStockLogKey, identifier, orderId, userId);
+            // 订单已创建成功，旁路验证由 BypassVerifyBatcher 读取库存流水执行
             return order;
         }
 
@@ -128,72 +108,5 @@ public class HotGoodsTradeService implements IHotGoodsTradeService {
         
         throw new RuntimeException("订单创建失败，已发送延迟检查消息");
     }
-
-    /**
-     * 旁路验证: 延迟检查Redis流水与DB的一致性（参考 NFTurbo）
-     * 
-     * 设计思路：
-     * 1. 延迟3秒后执行，检查数据库库存流水表
-     * 2. 检查数量一致性：只有 Redis 流水和数据库流水的扣减数量一致，才删除 Redis 流水
-     * 3. 如果核验成功，删除 Redis 流水，快速清理
-     */
-    private void bypassVerify(String goodsStockLogKey, String identifier, String orderId, String userId) {
-        scheduler.schedule(() -> {
-            try {
-                log.info("旁路验证-开始: orderId={}", orderId);
-
-                // 1. 查询Redis流水
-                String redisLogStr = redisAdapter.getStockDecreaseLog(goodsStockLogKey, identifier);
-                if (redisLogStr == null) {
-                    log.warn("旁路验证-Redis流水不存在: orderId={}", orderId);
-                    return;
-                }
-
-                // 2. 解析Redis流水
-                RedisStockLogVO redisLog = JSON.parseObject(redisLogStr, RedisStockLogVO.class);
-                if (redisLog == null || !"decrease".equalsIgnoreCase(redisLog.getAction())) {
-                    log.warn("旁路验证-Redis流水格式错误或不是扣减操作: orderId={}", orderId);
-                    return;
-                }
-
-                // 3. 查询数据库库存流水表
-                InventoryDeductionLogEntity dbLog = inventoryDeductionLogRepository.queryByOrderId(orderId);
-                if (dbLog == null) {
-                    log.warn("旁路验证-未找到数据库库存流水: orderId={}", orderId);
-                    return;
-                }
-
-                // 4. 检查数量一致性
-                Integer redisChange = redisLog.getChangeAsInteger();
-                Integer dbQuantity = dbLog.getQuantity();
-
-                if (redisChange == null || dbQuantity == null) {
-                    log.warn("旁路验证-扣减数量为空: orderId={}, redisChange={}, dbQuantity={}",
-                            orderId, redisChange, dbQuantity);
-                    return;
-                }
-
-                if (!redisChange.equals(dbQuantity)) {
-                    log.error("旁路验证-扣减数量不一致（异常情况）: orderId={}, redisChange={}, dbQuantity={}",
-                            orderId, redisChange, dbQuantity);
-                    return;
-                }
-
-                // 5. 核验成功，数据一致，删除 Redis 流水
-                redisAdapter.removeStockDecreaseLog(goodsStockLogKey, identifier);
-                log.info("旁路验证-成功: orderId={}, quantity={}", orderId, dbQuantity);
-
-            } catch (Exception e) {
-                log.error("旁路验证-异常: orderId={}", orderId, e);
-            }
-        }, 3, TimeUnit.SECONDS);
-    }
-
-    /**
-     * 构建库存扣减标识符
-     */
-    private String buildIdentifier(String userId, String orderId) {
-        return "DECREASE_" + userId + "_" + orderId;
-    }
 }
 
@@ -0,0 +1,328 @@
+package cn.bugstack.domain.trade.service.hot;
+
+import cn.bugstack.domain.trade.adapter.repository.ISkuRepository;
+import cn.bugstack.domain.trade.model.entity.StockDeltaEntity;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Redis -> MySQL 库存增量写回（Domain层）
+ * <p>
+ * 热点商品在本地事务中只扣减 Redis 库存，数据库库存由订单创建消息异步扣减。原实现每条消息一次乐观锁扣减
+ * （读 + UPDATE + 冲突重试休眠 + 写流水），秒杀时上千个消费线程集中更新同一行，大部分时间耗在版本冲突和重试休眠上。
+ * <p>
+ * 改为写回模式：
+ * 1. 消费线程把库存增量（一笔订单一条）提交到窗口队列，等待写回结果
+ * 2. 写回线程每 {@link #WINDOW_MS} 毫秒（或攒够 {@link #MAX_BATCH_SIZE} 条）按 增量类型 + SKU 聚合，
+ *    每组一个事务：锁一次库存行、一次 UPDATE、批量写入或更新 inventory_deduction_log
+ * 3. 合并失败的组退回逐单执行，逐单任务在 MQ 消费执行器上并行，不阻塞写回线程
+ * <p>
+ * 增量类型：冻结（订单创建、疑似取消补偿，TCC Try）与释放（订单取消，TCC Cancel），释放按流水状态幂等，
+ * 只释放仍为冻结状态的订单。
+ * <p>
+ * 检查点：inventory_deduction_log 的订单唯一索引就是写回检查点，与库存 UPDATE 在同一事务提交。
+ * 消息只有在写回事务提交后才确认消费；重启或重投的消息会按流水跳过已写回的订单，不会重复扣减，
+ * 未确认的消息会被重新投递，不会丢失增量。消费线程最多等待 {@link #AWAIT_TIMEOUT_MS} 毫秒，
+ * 远小于 MQ 消费超时，超时按失败处理，由消息重投后按流水幂等重试。
+ *
+ * @author liang.tian
+ */
+@Slf4j
+@Component
+public class StockDeltaSynchronizer {
+
+    // 队列容量
+    private static final int CAPACITY = 20_000;
+    // 单个窗口最大增量数
+    private static final int MAX_BATCH_SIZE = 1000;
+    // 聚合窗口（决定数据库库存的最大附加延迟）
+    private static final long WINDOW_MS = 50L;
+    // 写回线程数（同一 SKU 的写回由行锁串行化）
+    private static final int FLUSHER_COUNT = 2;
+    // 消费线程等待写回结果的最大时间（MQ 默认消费超时 15 分钟）
+    private static final long AWAIT_TIMEOUT_MS = 2000L;
+
+    @Resource
+    private ISkuRepository skuRepository;
+
+    @Resource(name = "stockDeltaSyncExecutor")
+    private ExecutorService executor;
+
+    @Resource(name = "hotGoodsConsumeExecutor")
+    private ExecutorService fallbackExecutor;
+
+    private final ArrayBlockingQueue<DeltaTask> queue = new ArrayBlockingQueue<>(CAPACITY);
+
+    private volatile boolean running = true;
+
+    // 统计指标
+    private final AtomicLong windowCount = new AtomicLong();
+    private final AtomicLong skuUpdateCount = new AtomicLong();
+    private final AtomicLong mergedDeltaCount = new AtomicLong();
+    private final AtomicLong releasedDeltaCount = new AtomicLong();
+    private final AtomicLong fallbackCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong queueFullCount = new AtomicLong();
+    private final AtomicLong awaitTimeoutCount = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        for (int i = 0; i < FLUSHER_COUNT; i++) {
+            executor.execute(this::loop);
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        running = false;
+        // 关闭前写回队列中剩余的增量，未写回的消息不会确认，重启后重新投递
+        flushAll();
+    }
+
+    /**
+     * 提交冻结库存增量（TCC Try），返回写回结果；队列满时在当前线程逐单写回
+     */
+    public CompletableFuture<Boolean> submit(StockDeltaEntity delta) {
+        return enqueue(new DeltaTask(delta, false, new CompletableFuture<>()));
+    }
+
+    /**
+     * 提交释放库存增量（TCC Cancel），返回写回结果；队列满时在当前线程逐单释放
+     */
+    public CompletableFuture<Boolean> submitRelease(StockDeltaEntity delta) {
+        return enqueue(new DeltaTask(delta, true, new CompletableFuture<>()));
+    }
+
+    /**
+     * 等待一批写回结果，最多等待 {@link #AWAIT_TIMEOUT_MS} 毫秒，超时或异常按失败处理
+     *
+     * @return 与 futures 一一对应的写回结果
+     */
+    public List<Boolean> await(List<CompletableFuture<Boolean>> futures) {
+        List<Boolean> results = new ArrayList<>(futures.size());
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(AWAIT_TIMEOUT_MS);
+        boolean timeout = false;
+        for (CompletableFuture<Boolean> future : futures) {
+            try {
+                results.add(Boolean.TRUE.equals(future.get(Math.max(0L, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)));
+            } catch (TimeoutException e) {
+                timeout = true;
+                results.add(false);
+            } catch (ExecutionException e) {
+                results.add(false);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                results.add(false);
+            }
+        }
+        if (timeout) {
+            awaitTimeoutCount.incrementAndGet();
+            log.warn("库存增量写回-等待写回结果超时: size={}, timeoutMs={}", futures.size(), AWAIT_TIMEOUT_MS);
+        }
+        return results;
+    }
+
+    private CompletableFuture<Boolean> enqueue(DeltaTask task) {
+        if (running && queue.offer(task)) {
+            return task.getFuture();
+        }
+        queueFullCount.incrementAndGet();
+        log.warn("库存增量写回-队列已满，同步执行: orderId={}, release={}", task.getDelta().getOrderId(), task.isRelease());
+        executeOne(task);
+        return task.getFuture();
+    }
+
+    private void loop() {
+        List<DeltaTask> batch = new ArrayList<>(MAX_BATCH_SIZE);
+        while (running) {
+            try {
+                if (!pollWindow(batch)) continue;
+                flush(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                log.error("库存增量写回-窗口写回异常", e);
+                // 未完成的等待方按失败处理，消息重投后按流水幂等重试
+                for (DeltaTask task : batch) {
+                    task.getFuture().complete(false);
+                }
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * 收集一个窗口的增量，窗口内没有增量时返回 false
+     */
+    private boolean pollWindow(List<DeltaTask> batch) throws InterruptedException {
+        DeltaTask first = queue.poll(100, TimeUnit.MILLISECONDS);
+        if (null == first) return false;
+        batch.add(first);
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(WINDOW_MS);
+        while (batch.size() < MAX_BATCH_SIZE) {
+            long waitNanos = deadline - System.nanoTime();
+            if (waitNanos <= 0) {
+                queue.drainTo(batch, MAX_BATCH_SIZE - batch.size());
+                break;
+            }
+            DeltaTask next = queue.poll(waitNanos, TimeUnit.NANOSECONDS);
+            if (null == next) break;
+            batch.add(next);
+        }
+        return true;
+    }
+
+    /**
+     * 写回队列中的全部增量
+     */
+    private void flushAll() {
+        List<DeltaTask> remaining = new ArrayList<>(MAX_BATCH_SIZE);
+        while (queue.drainTo(remaining, MAX_BATCH_SIZE) > 0) {
+            log.info("库存增量写回-写回剩余增量: size={}", remaining.size());
+            flush(remaining);
+            remaining.clear();
+        }
+    }
+
+    private void flush(List<DeltaTask> batch) {
+        windowCount.incrementAndGet();
+
+        // 按 增量类型 + SKU 聚合
+        Map<String, List<DeltaTask>> groups = new LinkedHashMap<>();
+        for (DeltaTask task : batch) {
+            StockDeltaEntity delta = task.getDelta();
+            String key = (task.isRelease() ? "release_" : "freeze_") + delta.getActivityId() + "_" + delta.getGoodsId();
+            groups.computeIfAbsent(key, k -> new ArrayList<>()).add(task);
+        }
+
+        for (List<DeltaTask> group : groups.values()) {
+            DeltaTask head = group.get(0);
+            Long activityId = head.getDelta().getActivityId();
+            String goodsId = head.getDelta().getGoodsId();
+            boolean success;
+            try {
+                success = head.isRelease()
+                        ? skuRepository.releaseSkuStockBatch(activityId, goodsId, toDeltaEntities(group))
+                        : skuRepository.decreaseSkuStockBatch(activityId, goodsId, toDeltaEntities(group));
+            } catch (Exception e) {
+                log.warn("库存增量写回-合并写回异常，退回逐单执行: activityId={}, goodsId={}, size={}, release={}",
+                        activityId, goodsId, group.size(), head.isRelease(), e);
+                success = false;
+            }
+
+            if (success) {
+                skuUpdateCount.incrementAndGet();
+                (head.isRelease() ? releasedDeltaCount : mergedDeltaCount).addAndGet(group.size());
+                for (DeltaTask task : group) {
+                    task.getFuture().complete(true);
+                }
+                continue;
+            }
+            // 逐单任务并行执行，执行器饱和时由写回线程执行，形成背压
+            for (DeltaTask task : group) {
+                try {
+                    fallbackExecutor.execute(() -> executeOne(task));
+                } catch (Exception e) {
+                    log.warn("库存增量写回-逐单任务提交失败，写回线程执行: orderId={}", task.getDelta().getOrderId(), e);
+                    executeOne(task);
+                }
+            }
+        }
+    }
+
+    /**
+     * 逐单执行：冻结走原逻辑（带流水幂等与乐观锁重试），释放按单笔订单合并释放（按流水状态幂等）
+     */
+    private void executeOne(DeltaTask task) {
+        fallbackCount.incrementAndGet();
+        StockDeltaEntity delta = task.getDelta();
+        boolean result;
+        try {
+            result = task.isRelease()
+                    ? skuRepository.releaseSkuStockBatch(delta.getActivityId(), delta.getGoodsId(), Collections.singletonList(delta))
+                    : skuRepository.decreaseSkuStock(delta.getActivityId(), delta.getGoodsId(),
+                    delta.getQuantity(), delta.getOrderId(), delta.getUserId());
+        } catch (Exception e) {
+            log.error("库存增量写回-逐单执行异常: orderId={}, release={}", delta.getOrderId(), task.isRelease(), e);
+            result = false;
+        }
+        if (!result) {
+            failedCount.incrementAndGet();
+        }
+        task.getFuture().complete(result);
+    }
+
+    private List<StockDeltaEntity> toDeltaEntities(List<DeltaTask> tasks) {
+        List<StockDeltaEntity> entities = new ArrayList<>(tasks.size());
+        for (DeltaTask task : tasks) {
+            entities.add(task.getDelta());
+        }
+        return entities;
+    }
+
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    public long getWindowCount() {
+        return windowCount.get();
+    }
+
+    public long getSkuUpdateCount() {
+        return skuUpdateCount.get();
+    }
+
+    public long getMergedDeltaCount() {
+        return mergedDeltaCount.get();
+    }
+
+    public long getReleasedDeltaCount() {
+        return releasedDeltaCount.get();
+    }
+
+    public long getFallbackCount() {
+        return fallbackCount.get();
+    }
+
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    public long getQueueFullCount() {
+        return queueFullCount.get();
+    }
+
+    public long getAwaitTimeoutCount() {
+        return awaitTimeoutCount.get();
+    }
+
+    @Getter
+    @AllArgsConstructor
+    private static class DeltaTask {
+        private final StockDeltaEntity delta;
+        private final boolean release;
+        private final CompletableFuture<Boolean> future;
+    }
+
+}
@@ -1,12 +1,10 @@
 package cn.bugstack.domain.trade.service.lock;
 
 import cn.bugstack.domain.trade.adapter.repository.ITradeRepository;
-import cn.bugstack.domain.trade.adapter.repository.IInventoryDeductionLogRepository;
 import cn.bugstack.domain.trade.model.aggregate.GroupBuyOrderAggregate;
 import cn.bugstack.domain.trade.model.entity.*;
 import cn.bugstack.domain.trade.model.valobj.GroupBuyProgressVO;
 import cn.bugstack.domain.trade.model.valobj.TradeOrderStatusEnumVO;
-import cn.bugstack.domain.trade.model.vo.RedisStockLogVO;
 import cn.bugstack.domain.trade.service.ITradeLockOrderService;
 import cn.bugstack.domain.trade.service.lock.factory.TradeLockRuleFilterFactory;
 import cn.bugstack.domain.trade.adapter.port.IMessageProducer;
@@ -18,9 +16,6 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.Resource;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
 
 /**
  * @author liang.tian
@@ -39,12 +34,6 @@ public class TradeLockOrderService implements ITradeLockOrderService {
     @Resource
     private IRedisAdapter redisAdapter;
 
-    @Resource
-    private IInventoryDeductionLogRepository inventoryDeductionLogRepository;
-
-    // 旁路验证线程池
-    private final ScheduledExecutorService scheduler = new ScheduledThreadPoolExecutor(10);
-
     // 消息队列监听信道
     private static final String ORDER_CREATE_BINDING = "orderCreate-out-0";
 
@@ -132,8 +121,7 @@ public class TradeLockOrderService implements ITradeLockOrderService {
         // 因此需要添加重试机制，避免因查询时机过早导致误报"订单创建失败"
         MarketPayOrderEntity order = queryOrderWithRetry(userId, orderId, 3, 100);
         if (order != null && TradeOrderStatusEnumVO.CREATE.equals(order.getTradeOrderStatusEnumVO())) {
-            // 订单已创建成功，执行旁路验证
-            bypassVerify(goodsStockLogKey, identifier, teamId, orderId, userId);
+            // 订单已创建成功，旁路验证由 BypassVerifyBatcher 读取库存流水执行
             return order;
         }
         
@@ -145,8 +133,7 @@ public class TradeLockOrderService implements ITradeLockOrderService {
             log.warn("订单查询失败但Redis流水存在，订单可能正在创建中，继续重试: orderId={}, teamId={}", orderId, teamId);
             order = queryOrderWithRetry(userId, orderId, 2, 200);
             if (order != null && TradeOrderStatusEnumVO.CREATE.equals(order.getTradeOrderStatusEnumVO())) {
-                // 订单已创建成功，执行旁路验证
-                bypassVerify(goodsStockLogKey, identifier, teamId, orderId, userId);
+                // 订单已创建成功，旁路验证由 BypassVerifyBatcher 读取库存流水执行
                 return order;
             }
             // 如果还是查询不到，说明可能是订单创建失败但 Redis 流水未清理
@@ -160,80 +147,6 @@ public class TradeLockOrderService implements ITradeLockOrderService {
         }
     }
 
-    /**
-     * 旁路验证: 延迟检查Redis流水与DB的一致性（参考 NFTurbo）
-     * 
-     * 设计思路：
-     * 1. 延迟3秒后执行，检查数据库库存流水表（而不是订单表）
-     * 2. 库存流水表在本地事务中同步创建，更可靠
-     * 3. ⭐ 检查数量一致性：只有 Redis 流水和数据库流水的扣减数量一致，才删除 Redis 流水
-     * 4. 如果核验成功，删除 Redis 流水，快速清理
-     * 5. 对账任务只处理3秒之前的数据，避免和旁路验证冲突
-     */
-    private void bypassVerify(String goodsStockLogKey, String identifier, String teamId, String orderId, String userId) {
-        scheduler.schedule(() -> {
-            try {
-                log.info("旁路验证-开始: teamId={}, orderId={}", teamId, orderId);
-
-                // 1. 查询Redis流水
-                String redisLogStr = redisAdapter.getStockDecreaseLog(goodsStockLogKey, identifier);
-                if (redisLogStr == null) {
-                    // Redis 流水不存在，可能是已经被对账任务清理了，或者本地事务失败
-                    log.warn("旁路验证-Redis流水不存在: teamId={}, orderId={}", teamId, orderId);
-                    return;
-                }
-
-                // 2. 解析Redis流水
-                RedisStockLogVO redisLog = JSON.parseObject(redisLogStr, RedisStockLogVO.class);
-                if (redisLog == null || !"decrease".equalsIgnoreCase(redisLog.getAction())) {
-                    log.warn("旁路验证-Redis流水格式错误或不是扣减操作: teamId={}, orderId={}", teamId, orderId);
-                    return;
-                }
-
-                // 3. ⭐ 查询数据库库存流水表（参考 NFTurbo，检查库存流水表而不是订单表）
-                // 库存流水表在本地事务中同步创建，更可靠，不会因为异步处理导致延迟
-                InventoryDeductionLogEntity dbLog = inventoryDeductionLogRepository.queryByOrderId(orderId);
-
-                if (dbLog == null) {
-                    // 数据库库存流水不存在，可能是订单创建失败，等待对账任务处理
-                    log.warn("旁路验证-未找到数据库库存流水: teamId={}, orderId={}", teamId, orderId);
-                    return;
-                }
-
-                // 4. ⭐ 检查数量一致性（防御性检查）
-                // 注意：在当前设计中，每次扣减都是 quantity=1，且有幂等性保护，数量应该总是一致的
-                // 但保留此检查是为了：
-                // 1. 防御性编程：防止未来代码变更（如支持批量扣减）导致的不一致
-                // 2. 数据完整性验证：确保流水记录的数据是正确的
-                // 3. 异常检测：如果出现数量不一致，说明系统有bug或异常
-                Integer redisChange = redisLog.getChangeAsInteger();
-                Integer dbQuantity = dbLog.getQuantity();
-
-                if (redisChange == null || dbQuantity == null) {
-                    log.warn("旁路验证-扣减数量为空: teamId={}, orderId={}, redisChange={}, dbQuantity={}",
-                            teamId, orderId, redisChange, dbQuantity);
-                    return;
-                }
-
-                if (!redisChange.equals(dbQuantity)) {
-                    // ⚠️ 数量不一致：这不应该发生，说明系统有bug或数据被手动修改
-                    // 不删除 Redis 流水，让对账任务检测到不一致并处理
-                    log.error("旁路验证-扣减数量不一致（异常情况）: teamId={}, orderId={}, redisChange={}, dbQuantity={}",
-                            teamId, orderId, redisChange, dbQuantity);
-                    return;
-                }
-
-                // 5. 核验成功，数据一致，删除 Redis 流水
-                redisAdapter.removeStockDecreaseLog(goodsStockLogKey, identifier);
-                log.info("旁路验证-成功: teamId={}, orderId={}, quantity={}", teamId, orderId, dbQuantity);
-
-            } catch (Exception e) {
-                // 核验失败打印日志，不影响主流程，等异步任务再核对
-                log.error("旁路验证-异常: teamId={}, orderId={}", teamId, orderId, e);
-            }
-        }, 3, TimeUnit.SECONDS); // ⭐ 改为3秒，和 NFTurbo 一致
-    }
-
     /**
      * 构建库存扣减标识符（使用orderId代替outTradeNo，更安全可靠）
      */
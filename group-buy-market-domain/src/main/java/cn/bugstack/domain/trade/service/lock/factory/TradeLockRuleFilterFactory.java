@@ -33,6 +33,8 @@ public class TradeLockRuleFilterFactory {
     private static final String goodsStockKey = "group_buy_market_goods_stock_key_";
     // 商品库存流水的前缀
     private static final String goodsStockLogKey = "group_buy_market_goods_stock_log_key_";
+    // 用户参与次数的前缀
+    private static final String userTakeKey = "group_buy_market_user_take_";
 
     @Bean("tradeRuleFilter")
     public BusinessLinkedList<TradeLockRuleCommandEntity, DynamicContext, TradeLockRuleFilterBackEntity> tradeRuleFilter(
@@ -111,4 +113,9 @@ public class TradeLockRuleFilterFactory {
         return goodsStockLogKey + "_" +activityId + "_" + goodsId;
     }
 
+    // 用户参与次数 Hash key：group_buy_market_user_take_{activityId}_{userId} field：take（有效参与次数）、seq（累计锁单次数）
+    public static String generateUserTakeKey(Long activityId, String userId) {
+        return userTakeKey + activityId + "_" + userId;
+    }
+
 }
@@ -4,6 +4,7 @@ import cn.bugstack.domain.trade.adapter.repository.ITradeRepository;
 import cn.bugstack.domain.trade.model.entity.GroupBuyActivityEntity;
 import cn.bugstack.domain.trade.model.entity.TradeLockRuleCommandEntity;
 import cn.bugstack.domain.trade.model.entity.TradeLockRuleFilterBackEntity;
+import cn.bugstack.domain.trade.model.valobj.UserTakeCountVO;
 import cn.bugstack.domain.trade.service.lock.factory.TradeLockRuleFilterFactory;
 import cn.bugstack.wrench.design.framework.link.model2.handler.ILogicHandler;
 import cn.bugstack.types.enums.ResponseCode;
@@ -29,15 +30,16 @@ public class UserTakeLimitRuleFilter implements ILogicHandler<TradeLockRuleComma
 
         GroupBuyActivityEntity groupBuyActivity = dynamicContext.getGroupBuyActivity();
 
-        // 查询用户在一个拼团活动上参与的次数
-        Integer count = repository.queryOrderCountByActivityId(requestParameter.getActivityId(), requestParameter.getUserId());
+        // 查询用户在一个拼团活动上参与的次数（Redis 计数，库存扣减脚本累加、退单扣回，数据库只做冷启动加载）
+        UserTakeCountVO userTakeCountVO = repository.queryUserTakeCount(requestParameter.getActivityId(), requestParameter.getUserId(), groupBuyActivity.getEndTime());
 
-        if (null != groupBuyActivity.getTakeLimitCount() && count >= groupBuyActivity.getTakeLimitCount()) {
+        if (null != groupBuyActivity.getTakeLimitCount() && userTakeCountVO.getTakeCount() >= groupBuyActivity.getTakeLimitCount()) {
             log.info("用户参与次数校验，已达可参与上限 activityId:{}", requestParameter.getActivityId());
             throw new AppException(ResponseCode.E0103);
         }
 
-        dynamicContext.setUserTakeOrderCount(count);
+        // 累计锁单次数用于构建 bizId，退单不扣回，避免唯一索引冲突
+        dynamicContext.setUserTakeOrderCount(userTakeCountVO.getSeq());
 
         // 走到下一个责任链节点
 //        return next(requestParameter, dynamicContext);
@@ -0,0 +1,298 @@
+package cn.bugstack.domain.trade.service.normal;
+
+import cn.bugstack.domain.trade.adapter.port.IMessageProducer;
+import cn.bugstack.domain.trade.adapter.repository.ISkuRepository;
+import cn.bugstack.domain.trade.model.aggregate.NormalGoodsOrderAggregate;
+import cn.bugstack.domain.trade.model.entity.NormalGoodsConfirmEntity;
+import cn.bugstack.domain.trade.model.entity.PayActivityEntity;
+import cn.bugstack.domain.trade.model.entity.PayDiscountEntity;
+import cn.bugstack.domain.trade.model.entity.UserEntity;
+import com.alibaba.fastjson.JSON;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 普通商品 TCC Confirm 异步组提交阶段（Domain层）
+ * <p>
+ * 原实现在请求线程上同步执行 Confirm：每笔订单一次乐观锁扣减（读 + UPDATE + 冲突重试休眠 + 写流水），
+ * 再执行一次不带分片键的订单状态更新（广播到所有分片）。热门 SKU 下乐观锁冲突严重，p99 被重试拖长。
+ * <p>
+ * 改为 Try 成功后即返回，Confirm 入队由后台线程组提交：
+ * 1. 攒批：最多等待 {@link #MAX_WAIT_MS} 毫秒或攒够 {@link #MAX_BATCH_SIZE} 笔
+ * 2. 按 SKU 合并，一个事务内：锁定订单行，只为仍是 TRY 的订单锁一次库存行、一次 UPDATE 冻结库存、多行插入流水，
+ *    再带 user_id 批量更新 TRY -> CONFIRM（每个分片一条 UPDATE）。已取消的订单不会冻结库存
+ * 3. 合并失败的 SKU 组退回逐单 Confirm（最多重试2次），仍失败发送疑似废单消息
+ * 4. 队列满时在调用线程同步执行逐单 Confirm，形成背压
+ * <p>
+ * 进程崩溃时队列中的 Confirm 会丢失，对应订单停留在 TRY 状态，由 NormalGoodsConfirmRecoveryJob 扫描恢复。
+ *
+ * @author liang.tian
+ */
+@Slf4j
+@Component
+public class NormalGoodsConfirmStage {
+
+    // 最大重试次数（逐单 Confirm）
+    private static final int MAX_RETRY_TIMES = 2;
+    // 队列容量
+    private static final int CAPACITY = 10_000;
+    // 单批最大订单数
+    private static final int MAX_BATCH_SIZE = 200;
+    // 攒批最大等待时间（决定 Confirm 的最大附加延迟）
+    private static final long MAX_WAIT_MS = 20L;
+    // 组提交线程数
+    private static final int FLUSHER_COUNT = 2;
+
+    private static final String NORMAL_GOODS_ORDER_PRE_CANCEL_BINDING = "normalGoodsOrderPreCancel-out-0";
+
+    @Resource
+    private ISkuRepository skuRepository;
+
+    @Resource
+    private IMessageProducer messageProducer;
+
+    @Resource(name = "normalGoodsConfirmExecutor")
+    private ExecutorService executor;
+
+    private final ArrayBlockingQueue<ConfirmTask> queue = new ArrayBlockingQueue<>(CAPACITY);
+
+    private volatile boolean running = true;
+
+    // 统计指标
+    private final AtomicLong batchCount = new AtomicLong();
+    private final AtomicLong batchConfirmedCount = new AtomicLong();
+    private final AtomicLong fallbackCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong queueFullCount = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        for (int i = 0; i < FLUSHER_COUNT; i++) {
+            executor.execute(this::loop);
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        running = false;
+        // 关闭前尽量提交队列中剩余的 Confirm，未完成的由恢复任务处理
+        List<ConfirmTask> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        if (!remaining.isEmpty()) {
+            log.info("普通商品Confirm-关闭前提交剩余请求: size={}", remaining.size());
+            flush(remaining);
+        }
+    }
+
+    /**
+     * 提交 Confirm 请求，队列满时在当前线程逐单执行
+     */
+    public void submit(NormalGoodsOrderAggregate aggregate) {
+        ConfirmTask task = new ConfirmTask(toConfirmEntity(aggregate), aggregate);
+        if (running && queue.offer(task)) {
+            return;
+        }
+        queueFullCount.incrementAndGet();
+        log.warn("普通商品Confirm-队列已满，同步执行: orderId={}", aggregate.getOrderId());
+        confirmOne(task);
+    }
+
+    /**
+     * 恢复停留在 TRY 状态的订单，同步组提交
+     */
+    public void recover(List<NormalGoodsConfirmEntity> orders) {
+        List<ConfirmTask> tasks = new ArrayList<>(orders.size());
+        for (NormalGoodsConfirmEntity order : orders) {
+            tasks.add(new ConfirmTask(order, toAggregate(order)));
+        }
+        flush(tasks);
+    }
+
+    private void loop() {
+        List<ConfirmTask> batch = new ArrayList<>(MAX_BATCH_SIZE);
+        while (running) {
+            try {
+                ConfirmTask first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (null == first) continue;
+                batch.add(first);
+
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(MAX_WAIT_MS);
+                while (batch.size() < MAX_BATCH_SIZE) {
+                    long waitNanos = deadline - System.nanoTime();
+                    if (waitNanos <= 0) {
+                        queue.drainTo(batch, MAX_BATCH_SIZE - batch.size());
+                        break;
+                    }
+                    ConfirmTask next = queue.poll(waitNanos, TimeUnit.NANOSECONDS);
+                    if (null == next) break;
+                    batch.add(next);
+                }
+
+                flush(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                log.error("普通商品Confirm-组提交异常", e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(List<ConfirmTask> batch) {
+        batchCount.incrementAndGet();
+
+        // 按 SKU 分组，每组一个事务冻结库存并确认订单
+        Map<String, List<ConfirmTask>> groupBySku = new LinkedHashMap<>();
+        for (ConfirmTask task : batch) {
+            NormalGoodsConfirmEntity confirm = task.getConfirm();
+            groupBySku.computeIfAbsent(confirm.getActivityId() + "_" + confirm.getGoodsId(), k -> new ArrayList<>()).add(task);
+        }
+
+        for (List<ConfirmTask> group : groupBySku.values()) {
+            NormalGoodsConfirmEntity head = group.get(0).getConfirm();
+            boolean success;
+            try {
+                success = skuRepository.confirmOrdersWithSkuStock(head.getActivityId(), head.getGoodsId(), toConfirmEntities(group));
+            } catch (Exception e) {
+                log.warn("普通商品Confirm-组提交异常，退回逐单执行: activityId={}, goodsId={}, size={}",
+                        head.getActivityId(), head.getGoodsId(), group.size(), e);
+                success = false;
+            }
+
+            if (success) {
+                batchConfirmedCount.addAndGet(group.size());
+                continue;
+            }
+            for (ConfirmTask task : group) {
+                confirmOne(task);
+            }
+        }
+    }
+
+    /**
+     * 逐单 Confirm，失败发送疑似废单消息
+     */
+    private void confirmOne(ConfirmTask task) {
+        fallbackCount.incrementAndGet();
+        NormalGoodsConfirmEntity confirm = task.getConfirm();
+        String orderId = confirm.getOrderId();
+
+        boolean isConfirmSuccess = false;
+        int retryConfirmCount = 0;
+        while (!isConfirmSuccess && retryConfirmCount < MAX_RETRY_TIMES) {
+            try {
+                // 锁定订单行后按当前状态处理：TRY 冻结库存并确认；已确认、已取消直接返回成功，不发送疑似废单消息
+                boolean result = skuRepository.confirmOrdersWithSkuStock(confirm.getActivityId(), confirm.getGoodsId(),
+                        Collections.singletonList(confirm));
+                Assert.isTrue(result, "confirmOrdersWithSkuStock failed");
+
+                isConfirmSuccess = true;
+            } catch (Exception e) {
+                retryConfirmCount++;
+                log.error("普通商品下单-Confirm阶段失败: orderId={}, retryCount={}, error={}",
+                        orderId, retryConfirmCount, e.getMessage(), e);
+            }
+        }
+
+        if (isConfirmSuccess) return;
+
+        // Confirm 失败，发送【疑似废单消息】进行延迟检查
+        failedCount.incrementAndGet();
+        try {
+            // 消息监听：NormalGoodsOrderPreCancelListener
+            messageProducer.sendDelayMessage(
+                    NORMAL_GOODS_ORDER_PRE_CANCEL_BINDING,
+                    orderId,
+                    JSON.toJSONString(task.getAggregate()),
+                    1 // 延迟1分钟
+            );
+        } catch (Exception e) {
+            // 消息发送失败，订单停留在 TRY 状态，由恢复任务处理
+            log.error("普通商品下单-发送疑似废单消息失败: orderId={}", orderId, e);
+        }
+    }
+
+    private NormalGoodsConfirmEntity toConfirmEntity(NormalGoodsOrderAggregate aggregate) {
+        return NormalGoodsConfirmEntity.builder()
+                .orderId(aggregate.getOrderId())
+                .userId(aggregate.getUserEntity().getUserId())
+                .activityId(aggregate.getPayActivityEntity().getActivityId())
+                .goodsId(aggregate.getPayDiscountEntity().getGoodsId())
+                .teamId(aggregate.getTeamId())
+                .quantity(1)
+                .validTime(aggregate.getPayActivityEntity().getValidTime())
+                .build();
+    }
+
+    /**
+     * 恢复场景下只有订单记录，构建疑似废单消息所需的最小聚合对象
+     */
+    private NormalGoodsOrderAggregate toAggregate(NormalGoodsConfirmEntity confirm) {
+        return NormalGoodsOrderAggregate.builder()
+                .userEntity(UserEntity.builder().userId(confirm.getUserId()).build())
+                .payActivityEntity(PayActivityEntity.builder()
+                        .activityId(confirm.getActivityId())
+                        .validTime(confirm.getValidTime())
+                        .build())
+                .payDiscountEntity(PayDiscountEntity.builder()
+                        .goodsId(confirm.getGoodsId())
+                        .build())
+                .orderId(confirm.getOrderId())
+                .teamId(confirm.getTeamId())
+                .build();
+    }
+
+    private List<NormalGoodsConfirmEntity> toConfirmEntities(List<ConfirmTask> tasks) {
+        List<NormalGoodsConfirmEntity> entities = new ArrayList<>(tasks.size());
+        for (ConfirmTask task : tasks) {
+            entities.add(task.getConfirm());
+        }
+        return entities;
+    }
+
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    public long getBatchCount() {
+        return batchCount.get();
+    }
+
+    public long getBatchConfirmedCount() {
+        return batchConfirmedCount.get();
+    }
+
+    public long getFallbackCount() {
+        return fallbackCount.get();
+    }
+
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    public long getQueueFullCount() {
+        return queueFullCount.get();
+    }
+
+    @Getter
+    @AllArgsConstructor
+    private static class ConfirmTask {
+        private final NormalGoodsConfirmEntity confirm;
+        private final NormalGoodsOrderAggregate aggregate;
+    }
+
+}
@@ -2,12 +2,16 @@ package cn.bugstack.domain.trade.service.normal;
 
 import cn.bugstack.domain.trade.adapter.port.IMessageProducer;
 import cn.bugstack.domain.trade.adapter.port.IRedisAdapter;
-import cn.bugstack.domain.trade.adapter.repository.ISkuRepository;
 import cn.bugstack.domain.trade.adapter.repository.ITradeRepository;
 import cn.bugstack.domain.trade.model.aggregate.NormalGoodsOrderAggregate;
 import cn.bugstack.domain.trade.model.entity.*;
+import cn.bugstack.domain.trade.model.valobj.StockAdmissionBatchResultVO;
+import cn.bugstack.domain.trade.model.valobj.StockAdmissionCodeEnumVO;
+import cn.bugstack.domain.trade.model.valobj.StockAdmissionResultVO;
 import cn.bugstack.domain.trade.service.INormalGoodsTradeService;
 import cn.bugstack.domain.trade.service.lock.factory.TradeLockRuleFilterFactory;
+import cn.bugstack.types.enums.ResponseCode;
+import cn.bugstack.types.exception.AppException;
 import cn.bugstack.types.utils.SnowflakeIdUtil;
 import cn.bugstack.wrench.design.framework.link.model2.chain.BusinessLinkedList;
 import com.alibaba.fastjson.JSON;
@@ -16,6 +20,8 @@ import org.springframework.stereotype.Service;
 import org.springframework.util.Assert;
 
 import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * 普通商品下单服务实现（Domain层）
@@ -28,10 +34,10 @@ import javax.annotation.Resource;
  *    - tryOrder（尝试创建订单，状态为 TRY）
  *    - 如果失败，发送 normalBuyCancel 消息进行补偿
  * 
- * 2. Confirm 阶段：
- *    - confirmDecreaseInventory（确认扣减库存，真正扣减数据库）
- *    - confirmOrder（确认订单，状态改为 CONFIRM）
- *    - 最多重试2次
+ * 2. Confirm 阶段（NormalGoodsConfirmStage 异步组提交，Try 成功即返回）：
+ *    - confirmDecreaseInventory（确认扣减库存，真正扣减数据库，按 SKU 合并）
+ *    - confirmOrder（确认订单，状态改为 CONFIRM，按分片合并）
+ *    - 合并失败退回逐单执行，最多重试2次
  *    - 如果失败，发送 normalBuyPreCancel 消息（延迟消息）进行补偿
  * 
  * 特点：
@@ -45,12 +51,8 @@ import javax.annotation.Resource;
 @Service
 public class NormalGoodsTradeService implements INormalGoodsTradeService {
 
-    // 最大重试次数（Confirm 阶段）
-    private static final int MAX_RETRY_TIMES = 2;
-
     // 消息队列 Topic（普通商品补偿）
     private static final String NORMAL_GOODS_ORDER_CANCEL_BINDING = "normalGoodsOrderCancel-out-0";
-    private static final String NORMAL_GOODS_ORDER_PRE_CANCEL_BINDING = "normalGoodsOrderPreCancel-out-0";
 
     @Resource
     private ITradeRepository repository;
@@ -59,7 +61,7 @@ public class NormalGoodsTradeService implements INormalGoodsTradeService {
     private BusinessLinkedList<TradeLockRuleCommandEntity, TradeLockRuleFilterFactory.DynamicContext, TradeLockRuleFilterBackEntity> normalGoodsTradeRuleFilter;
 
     @Resource
-    private ISkuRepository skuRepository;
+    private NormalGoodsConfirmStage normalGoodsConfirmStage;
 
     @Resource
     private IMessageProducer messageProducer;
@@ -110,54 +112,40 @@ public class NormalGoodsTradeService implements INormalGoodsTradeService {
         boolean isTrySuccess = true;
         String teamId = payActivityEntity.getTeamId();
         boolean redisStockDecreased = false; // 标记 Redis 是否已扣减
-        String identifier = null;
-        String goodsStockKey = null;
-        String goodsStockLogKey = null;
-        String teamStockKey = null;
-        String teamStockLogKey = null;
-        Long activityId = null;
-        String goodsId = null;
+        boolean admissionUncertain = false; // 标记准入结果未知（脚本执行异常、超时）
+        StockAdmissionEntity admission = null;
+        MarketPayOrderEntity marketPayOrderEntity = null;
         
         try {
-            // 3.1 尝试扣减库存（Redis 预扣减，同时增加队伍人数，不扣减数据库）
-            // 对标 newBuyPlus：在 Lua 脚本中同时扣减商品库存和增加队伍人数
-            identifier = buildIdentifier(userEntity.getUserId(), orderId);
-            activityId = payActivityEntity.getActivityId();
-            goodsId = payDiscountEntity.getGoodsId();
-            
-            goodsStockKey = GOODS_STOCK_KEY_PREFIX + activityId + "_" + goodsId;
-            goodsStockLogKey = GOODS_STOCK_LOG_KEY_PREFIX + activityId + "_" + goodsId;
-            
-            if (teamId != null && !teamId.trim().isEmpty() && targetCount != null && targetCount > 0) {
-                teamStockKey = TEAM_STOCK_KEY_PREFIX + activityId + "_" + teamId;
-                teamStockLogKey = TEAM_STOCK_LOG_KEY_PREFIX + activityId + "_" + teamId;
-            }
+            // 3.1 尝试扣减库存（Redis 预扣减，同时增加队伍人数、累加用户参与次数，不扣减数据库）
+            // 对标 newBuyPlus：在同一个准入脚本中完成全部校验与扣减
+            admission = buildAdmission(userEntity.getUserId(), orderId, payActivityEntity.getActivityId(),
+                    payDiscountEntity.getGoodsId(), teamId, targetCount, payActivityEntity.getTakeLimitCount());
+            StockAdmissionResultVO admissionResult = redisAdapter.admitOrder(admission);
             
-            // 使用新的原子操作：同时扣减商品库存和增加队伍人数
-            IRedisAdapter.StockDecreaseResult stockResult = redisAdapter.decreaseGoodsStockAndIncreaseTeamStock(
-                    goodsStockKey, goodsStockLogKey,
-                    teamStockKey, teamStockLogKey,
-                    identifier, 1, targetCount != null ? targetCount : 0
-            );
-            
-            if (!stockResult.isSuccess()) {
-                String errorCode = stockResult.getErrorCode();
-                if ("TEAM_FULL".equals(errorCode)) {
+            if (!admissionResult.isSuccess()) {
+                StockAdmissionCodeEnumVO code = admissionResult.getCode();
+                if (StockAdmissionCodeEnumVO.TEAM_FULL.equals(code)) {
                     log.warn("普通商品下单-Try阶段失败-队伍已满: orderId={}, teamId={}", orderId, teamId);
                     throw new RuntimeException("队伍已满");
-                } else if ("GOODS_STOCK_NOT_ENOUGH".equals(errorCode)) {
+                } else if (StockAdmissionCodeEnumVO.GOODS_STOCK_NOT_ENOUGH.equals(code)) {
                     log.warn("普通商品下单-Try阶段失败-商品库存不足: orderId={}", orderId);
                     throw new RuntimeException("商品库存不足");
+                } else if (StockAdmissionCodeEnumVO.TAKE_LIMIT.equals(code)) {
+                    log.warn("普通商品下单-Try阶段失败-已达参与次数上限: orderId={}, takeCount={}", orderId, admissionResult.getTakeCount());
+                    throw new RuntimeException("已达参与次数上限");
                 } else {
-                    log.warn("普通商品下单-Try阶段失败-Redis扣减失败: orderId={}, errorCode={}", orderId, errorCode);
-                    throw new RuntimeException("Redis扣减失败: " + errorCode);
+                    log.warn("普通商品下单-Try阶段失败-Redis扣减失败: orderId={}, code={}", orderId, code);
+                    admissionUncertain = StockAdmissionCodeEnumVO.ERROR.equals(code);
+                    throw new RuntimeException("Redis扣减失败: " + code);
                 }
             }
             
             redisStockDecreased = true; // 标记 Redis 已扣减
-            Long redisTeamCurrentCount = stockResult.getTeamCurrentCount();
+            // 未占用队伍名额时脚本返回 -1
+            Long redisTeamCurrentCount = admissionResult.getTeamCurrentCount() >= 0 ? admissionResult.getTeamCurrentCount() : null;
             log.info("普通商品下单-Try阶段-Redis扣减成功: orderId={}, 商品剩余库存={}, 队伍当前人数={}/{}",
-                    orderId, stockResult.getGoodsRemainingStock(), 
+                    orderId, admissionResult.getGoodsRemainingStock(), 
                     redisTeamCurrentCount, targetCount);
 
             // 3.2 尝试创建订单（状态为 TRY）
@@ -166,16 +154,17 @@ public class NormalGoodsTradeService implements INormalGoodsTradeService {
             // 同时传递 Redis 的队伍当前人数，用于验证是否超过目标人数
             normalGoodsOrderAggregate.setRedisStockDecreased(true);
             normalGoodsOrderAggregate.setRedisTeamCurrentCount(redisTeamCurrentCount);
-            boolean result = repository.tryOrder(normalGoodsOrderAggregate) != null;
-            Assert.isTrue(result, "tryOrder failed");
+            marketPayOrderEntity = repository.tryOrder(normalGoodsOrderAggregate);
+            Assert.isTrue(marketPayOrderEntity != null, "tryOrder failed");
         } catch (Exception e) {
             isTrySuccess = false;
             log.error("普通商品下单-Try阶段失败: orderId={}, error={}", orderId, e.getMessage(), e);
             
             // 如果 Redis 已扣减但数据库更新失败，需要回滚 Redis
-            if (redisStockDecreased) {
+            // 准入结果未知时同样补偿：已扣减则回滚，未扣减则写入回滚标记，迟到执行的准入不再扣减
+            if (redisStockDecreased || admissionUncertain) {
                 log.warn("普通商品下单-Try阶段失败，回滚Redis库存: orderId={}", orderId);
-                rollbackRedisStock(goodsStockKey, goodsStockLogKey, teamStockKey, teamStockLogKey, identifier, orderId);
+                rollbackRedisStock(admission);
             }
         }
 
@@ -190,58 +179,120 @@ public class NormalGoodsTradeService implements INormalGoodsTradeService {
             throw new RuntimeException("订单创建失败（Try阶段失败）");
         }
 
-        // 5. Confirm 阶段
-        boolean isConfirmSuccess = false;
-        int retryConfirmCount = 0;
-
-        // 最大努力执行，失败最多尝试2次（Dubbo也会有重试机制，在服务突然不可用、超时等情况下会重试2次）
-        while (!isConfirmSuccess && retryConfirmCount < MAX_RETRY_TIMES) {
-            try {
-                // 5.1 确认扣减库存（真正扣减数据库库存）
-                // 注意：队伍人数在 Try 阶段已经增加了（在 tryOrder 中），所以 Confirm 阶段只需要扣减商品库存
-                boolean result = skuRepository.decreaseSkuStock(
-                        payActivityEntity.getActivityId(),
-                        payDiscountEntity.getGoodsId(),
-                        1,
-                        orderId,
-                        userEntity.getUserId()
-                );
-                Assert.isTrue(result, "decreaseSkuStock failed");
-
-                // 5.2 确认订单（将订单状态从 TRY 改为 CONFIRM）
-                result = repository.confirmOrder(orderId);
-                Assert.isTrue(result, "confirmOrder failed");
-
-                isConfirmSuccess = true;
-            } catch (Exception e) {
-                retryConfirmCount++;
-                isConfirmSuccess = false;
-                log.error("普通商品下单-Confirm阶段失败: orderId={}, retryCount={}, error={}", 
-                        orderId, retryConfirmCount, e.getMessage(), e);
+        // 5. Confirm 阶段：入队异步组提交，Try 成功即返回（订单状态为 TRY）
+        // 组提交失败时退回逐单 Confirm，仍失败发送【疑似废单消息】；进程崩溃由恢复任务扫描 TRY 订单处理
+        normalGoodsConfirmStage.submit(normalGoodsOrderAggregate);
+
+        log.info("普通商品下单-Try成功，Confirm已提交: orderId={}, teamId={}", orderId, marketPayOrderEntity.getTeamId());
+        return marketPayOrderEntity;
+    }
+
+    /**
+     * 购物车锁单
+     * <p>
+     * 逐个商品下单时每个商品一次准入脚本、一次订单写入，购物车可能部分成功。合并为：
+     * 1. 交易规则过滤逐个商品执行（读缓存为主）
+     * 2. 一次批量准入脚本完成全部商品的库存、队伍名额、参与次数扣减，任一商品失败整单不扣减
+     * 3. 一个本地事务创建全部队伍与订单，订单多行插入
+     * 4. 事务失败时逐个回滚 Redis 并发送废单消息，与单个商品 Try 失败的补偿一致
+     * 5. Confirm 与单个商品相同，逐单入队异步组提交
+     */
+    @Override
+    public List<MarketPayOrderEntity> lockNormalGoodsCartOrder(UserEntity userEntity, List<NormalGoodsCartItemEntity> cartItems) throws Exception {
+        log.info("普通商品下单-购物车锁单: userId={}, size={}", userEntity.getUserId(), cartItems.size());
+
+        List<NormalGoodsOrderAggregate> normalGoodsOrderAggregates = new ArrayList<>(cartItems.size());
+        List<StockAdmissionEntity> admissions = new ArrayList<>(cartItems.size());
+        for (NormalGoodsCartItemEntity cartItem : cartItems) {
+            PayActivityEntity payActivityEntity = cartItem.getPayActivityEntity();
+            PayDiscountEntity payDiscountEntity = cartItem.getPayDiscountEntity();
+
+            // 1. 交易规则过滤（包含拼团相关过滤）
+            TradeLockRuleFilterBackEntity tradeLockRuleFilterBackEntity = normalGoodsTradeRuleFilter.apply(
+                    TradeLockRuleCommandEntity.builder()
+                            .activityId(payActivityEntity.getActivityId())
+                            .userId(userEntity.getUserId())
+                            .teamId(payActivityEntity.getTeamId())
+                            .goodsId(payDiscountEntity.getGoodsId())
+                            .build(),
+                    new TradeLockRuleFilterFactory.DynamicContext()
+            );
+
+            String orderId = SnowflakeIdUtil.nextIdStr();
+            normalGoodsOrderAggregates.add(NormalGoodsOrderAggregate.builder()
+                    .userEntity(userEntity)
+                    .payActivityEntity(payActivityEntity)
+                    .payDiscountEntity(payDiscountEntity)
+                    .userTakeOrderCount(tradeLockRuleFilterBackEntity.getUserTakeOrderCount())
+                    .orderId(orderId)
+                    .teamId(payActivityEntity.getTeamId())
+                    .targetCount(tradeLockRuleFilterBackEntity.getTargetCount())
+                    .redisStockDecreased(false)
+                    .build());
+            admissions.add(buildAdmission(userEntity.getUserId(), orderId, payActivityEntity.getActivityId(),
+                    payDiscountEntity.getGoodsId(), payActivityEntity.getTeamId(), tradeLockRuleFilterBackEntity.getTargetCount(),
+                    payActivityEntity.getTakeLimitCount()));
+        }
+
+        // 2. 批量准入（全部成功或全部不扣减），校验失败无需回滚
+        StockAdmissionBatchResultVO admissionResult = redisAdapter.admitOrders(admissions);
+        if (!admissionResult.isSuccess()) {
+            StockAdmissionCodeEnumVO code = admissionResult.getCode();
+            int failedIndex = admissionResult.getFailedIndex();
+            String goodsId = failedIndex >= 0 ? cartItems.get(failedIndex).getPayDiscountEntity().getGoodsId() : null;
+            log.warn("普通商品下单-购物车锁单准入失败: userId={}, goodsId={}, code={}", userEntity.getUserId(), goodsId, code);
+            // 准入结果未知（脚本执行异常、超时）时逐单补偿：已扣减则回滚，未扣减则写入回滚标记，迟到执行的准入不再扣减
+            if (StockAdmissionCodeEnumVO.ERROR.equals(code)) {
+                for (StockAdmissionEntity admission : admissions) {
+                    rollbackRedisStock(admission);
+                }
             }
+            throw new AppException(admissionFailureCode(code).getCode(), code.getInfo() + (null == goodsId ? "" : "，商品:" + goodsId));
         }
 
-        // 6. Confirm 失败，发送【疑似废单消息】进行延迟检查
-        if (!isConfirmSuccess) {
-            // 消息监听：NormalGoodsOrderPreCancelListener
-            messageProducer.sendDelayMessage(
-                    NORMAL_GOODS_ORDER_PRE_CANCEL_BINDING,
-                    orderId,
-                    JSON.toJSONString(normalGoodsOrderAggregate),
-                    1 // 延迟1分钟
-            );
-            throw new RuntimeException("订单创建失败（Confirm阶段失败）");
+        for (int i = 0; i < normalGoodsOrderAggregates.size(); i++) {
+            // 未占用队伍名额时脚本返回 -1
+            long teamCurrentCount = admissionResult.getItems().get(i).getTeamCurrentCount();
+            NormalGoodsOrderAggregate normalGoodsOrderAggregate = normalGoodsOrderAggregates.get(i);
+            normalGoodsOrderAggregate.setRedisStockDecreased(true);
+            normalGoodsOrderAggregate.setRedisTeamCurrentCount(teamCurrentCount >= 0 ? teamCurrentCount : null);
+        }
+
+        // 3. 一个本地事务创建全部订单（状态为 TRY）
+        List<MarketPayOrderEntity> marketPayOrderEntities;
+        try {
+            marketPayOrderEntities = repository.tryOrders(normalGoodsOrderAggregates);
+        } catch (Exception e) {
+            log.error("普通商品下单-购物车锁单Try阶段失败，回滚Redis库存: userId={}, error={}", userEntity.getUserId(), e.getMessage(), e);
+            for (int i = 0; i < normalGoodsOrderAggregates.size(); i++) {
+                rollbackRedisStock(admissions.get(i));
+                // 消息监听：NormalGoodsOrderCancelListener
+                messageProducer.sendMessage(
+                        NORMAL_GOODS_ORDER_CANCEL_BINDING,
+                        normalGoodsOrderAggregates.get(i).getOrderId(),
+                        JSON.toJSONString(normalGoodsOrderAggregates.get(i))
+                );
+            }
+            throw e;
         }
 
-        // 7. 查询订单并返回
-        MarketPayOrderEntity order = repository.queryMarketPayOrderEntityByOrderId(userEntity.getUserId(), orderId);
-        if (order == null) {
-            log.error("普通商品下单-订单查询失败: orderId={}", orderId);
-            throw new RuntimeException("订单查询失败");
+        // 4. Confirm 阶段：逐单入队异步组提交
+        for (NormalGoodsOrderAggregate normalGoodsOrderAggregate : normalGoodsOrderAggregates) {
+            normalGoodsConfirmStage.submit(normalGoodsOrderAggregate);
         }
 
-        log.info("普通商品下单-成功: orderId={}, status={}", orderId, order.getTradeOrderStatusEnumVO());
-        return order;
+        log.info("普通商品下单-购物车锁单Try成功，Confirm已提交: userId={}, size={}", userEntity.getUserId(), marketPayOrderEntities.size());
+        return marketPayOrderEntities;
+    }
+
+    @Override
+    public int recoverTryOrders(long tryTimeoutMillis, int limit) {
+        List<NormalGoodsConfirmEntity> orders = repository.queryTimeoutTryOrderList(tryTimeoutMillis, limit);
+        if (orders.isEmpty()) return 0;
+
+        log.info("普通商品下单-恢复TRY状态订单: size={}", orders.size());
+        normalGoodsConfirmStage.recover(orders);
+        return orders.size();
     }
 
     /**
@@ -252,45 +303,53 @@ public class NormalGoodsTradeService implements INormalGoodsTradeService {
     }
 
     /**
-     * 回滚 Redis 库存（商品库存 + 队伍库存）
+     * 构建准入命令，参与次数上限在准入脚本中与累加原子执行（交易规则过滤中的校验只是提前拦截，并发请求可能同时通过）
      */
-    private void rollbackRedisStock(String goodsStockKey, String goodsStockLogKey,
-                                    String teamStockKey, String teamStockLogKey,
-                                    String identifier, String orderId) {
-        try {
-            // 回滚商品库存
-            if (goodsStockKey != null && goodsStockLogKey != null) {
-                String rollbackIdentifier = "ROLLBACK_" + identifier;
-                Long rollbackResult = redisAdapter.increaseStockWithLog(
-                        goodsStockKey,
-                        goodsStockLogKey,
-                        rollbackIdentifier,
-                        1
-                );
-                log.info("普通商品下单-回滚商品库存成功: orderId={}, 回滚后库存={}", orderId, rollbackResult);
-            }
-            
-            // 回滚队伍库存（队伍库存的扣减实际上是 +1，所以回滚是 -1）
-            if (teamStockKey != null && teamStockLogKey != null) {
-                String rollbackIdentifier = "ROLLBACK_" + identifier;
-                // 队伍库存的扣减是 +1（增加队伍人数），所以回滚是 -1（减少队伍人数）
-                Long rollbackResult = redisAdapter.decreaseStockWithLog(
-                        teamStockKey,
-                        teamStockLogKey,
-                        rollbackIdentifier,
-                        1
-                );
-                if (rollbackResult != null && rollbackResult >= 0) {
-                    log.info("普通商品下单-回滚队伍库存成功: orderId={}, teamStockKey={}, 回滚后人数={}", 
-                            orderId, teamStockKey, rollbackResult);
-                } else {
-                    log.warn("普通商品下单-回滚队伍库存失败-库存不足或已为0: orderId={}, teamStockKey={}, result={}", 
-                            orderId, teamStockKey, rollbackResult);
-                }
-            }
-        } catch (Exception e) {
-            log.error("普通商品下单-回滚Redis库存失败: orderId={}", orderId, e);
+    private StockAdmissionEntity buildAdmission(String userId, String orderId, Long activityId, String goodsId,
+                                                String teamId, Integer targetCount, Integer takeLimitCount) {
+        StockAdmissionEntity.StockAdmissionEntityBuilder builder = StockAdmissionEntity.builder()
+                .orderId(orderId)
+                .identifier(buildIdentifier(userId, orderId))
+                .goodsStockKey(GOODS_STOCK_KEY_PREFIX + activityId + "_" + goodsId)
+                .goodsStockLogKey(GOODS_STOCK_LOG_KEY_PREFIX + activityId + "_" + goodsId)
+                .count(1)
+                .userTakeKey(TradeLockRuleFilterFactory.generateUserTakeKey(activityId, userId))
+                .takeLimit(takeLimitCount);
+        
+        if (teamId != null && !teamId.trim().isEmpty() && targetCount != null && targetCount > 0) {
+            builder.teamStockKey(TEAM_STOCK_KEY_PREFIX + activityId + "_" + teamId)
+                    .teamStockLogKey(TEAM_STOCK_LOG_KEY_PREFIX + activityId + "_" + teamId)
+                    .teamTargetCount(targetCount);
+        }
+        return builder.build();
+    }
+
+    private ResponseCode admissionFailureCode(StockAdmissionCodeEnumVO code) {
+        switch (code) {
+            case TEAM_FULL:
+                return ResponseCode.E0006;
+            case GOODS_STOCK_KEY_NOT_FOUND:
+            case GOODS_STOCK_NOT_ENOUGH:
+                return ResponseCode.E0008;
+            case TAKE_LIMIT:
+                return ResponseCode.E0103;
+            default:
+                return ResponseCode.UN_ERROR;
+        }
+    }
+
+    /**
+     * 回滚 Redis 库存（商品库存 + 队伍库存 + 用户参与次数），补偿脚本按准入流水执行，同一订单只回滚一次
+     */
+    private void rollbackRedisStock(StockAdmissionEntity admission) {
+        StockAdmissionResultVO result = redisAdapter.compensateOrder(admission);
+        if (StockAdmissionCodeEnumVO.ERROR.equals(result.getCode())) {
+            // 扣减流水仍保留，由 InventoryCompensateJob 兜底回滚
+            log.error("普通商品下单-回滚Redis库存失败: orderId={}", admission.getOrderId());
+            return;
         }
+        log.info("普通商品下单-回滚Redis库存完成: orderId={}, code={}, 回滚后库存={}, 队伍人数={}",
+                admission.getOrderId(), result.getCode(), result.getGoodsRemainingStock(), result.getTeamCurrentCount());
     }
 
 }
@@ -0,0 +1,238 @@
+package cn.bugstack.domain.trade.service.preheat;
+
+import cn.bugstack.domain.activity.adapter.repository.IActivityRepository;
+import cn.bugstack.domain.activity.model.valobj.GroupBuyActivityDiscountVO;
+import cn.bugstack.domain.trade.adapter.port.IRedisAdapter;
+import cn.bugstack.domain.trade.adapter.repository.IStockRebuildRepository;
+import cn.bugstack.domain.trade.model.entity.StockPreheatProgressEntity;
+import cn.bugstack.domain.trade.model.entity.StockRebuildSkuEntity;
+import cn.bugstack.domain.trade.model.entity.StockRebuildTeamEntity;
+import cn.bugstack.domain.trade.model.valobj.StockPreheatStatusEnumVO;
+import cn.bugstack.domain.trade.service.IStockPreheatService;
+import cn.bugstack.domain.trade.service.lock.factory.TradeLockRuleFilterFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 活动库存预热服务（Domain层）
+ * <p>
+ * 活动开始前一次性加载：
+ * 1. 活动、折扣、商品缓存（走正常的缓存读取链路，缓存不存在时回源并写入）
+ * 2. 商品库存 = 可售库存 - 冻结库存
+ * 3. 队伍库存 = 锁单数量，队伍库存恢复计数 = 0（仅拼团中、未过期的队伍）
+ * <p>
+ * 库存 Key 按 {@link #CHUNK_SIZE} 分批并行，每批一次 pipeline SETNX，已存在的 Key 不覆盖，
+ * 预热可以在活动进行中重复执行。全部分批成功后才标记为就绪。
+ *
+ * @author liang.tian
+ */
+@Slf4j
+@Service
+public class StockPreheatService implements IStockPreheatService {
+
+    // 与锁单准入保持一致
+    private static final String GOODS_STOCK_KEY_PREFIX = "group_buy_market_goods_stock_";
+    private static final String TEAM_STOCK_KEY_PREFIX = "group_buy_market_team_stock_key_";
+
+    // 单批 Key 数量
+    private static final int CHUNK_SIZE = 500;
+
+    @Resource
+    private IStockRebuildRepository stockRebuildRepository;
+    @Resource
+    private IActivityRepository activityRepository;
+    @Resource
+    private IRedisAdapter redisAdapter;
+    @Resource(name = "stockPreheatExecutor")
+    private ExecutorService executor;
+
+    private final Map<Long, PreheatTask> tasks = new ConcurrentHashMap<>();
+
+    @Override
+    public StockPreheatProgressEntity preheat(Long activityId) {
+        PreheatTask task = start(activityId);
+        if (null == task) {
+            return queryProgress(activityId);
+        }
+        run(task);
+        return task.toEntity();
+    }
+
+    @Override
+    public StockPreheatProgressEntity preheatAsync(Long activityId) {
+        PreheatTask task = start(activityId);
+        if (null == task) {
+            return queryProgress(activityId);
+        }
+        // 协调线程等待分批结果，不占用分批执行线程
+        Thread thread = new Thread(() -> run(task), "stock-preheat-activity-" + activityId);
+        thread.setDaemon(true);
+        thread.start();
+        return task.toEntity();
+    }
+
+    @Override
+    public StockPreheatProgressEntity queryProgress(Long activityId) {
+        PreheatTask task = tasks.get(activityId);
+        return null == task ? null : task.toEntity();
+    }
+
+    @Override
+    public boolean isReady(Long activityId) {
+        PreheatTask task = tasks.get(activityId);
+        return null != task && StockPreheatStatusEnumVO.COMPLETED == task.status;
+    }
+
+    /**
+     * 登记预热任务，同一活动预热中时返回 null
+     */
+    private PreheatTask start(Long activityId) {
+        PreheatTask task = new PreheatTask(activityId);
+        PreheatTask previous = tasks.get(activityId);
+        if (null != previous && StockPreheatStatusEnumVO.RUNNING == previous.status) {
+            return null;
+        }
+        boolean registered = null == previous ? null == tasks.putIfAbsent(activityId, task) : tasks.replace(activityId, previous, task);
+        return registered ? task : null;
+    }
+
+    private void run(PreheatTask task) {
+        Long activityId = task.activityId;
+        log.info("活动库存预热开始: activityId={}", activityId);
+        try {
+            // 1. 活动、折扣缓存
+            GroupBuyActivityDiscountVO activity = activityRepository.queryGroupBuyActivityDiscountVO(activityId);
+            if (null == activity) {
+                task.finish(StockPreheatStatusEnumVO.FAILED, "活动不存在或未生效");
+                log.warn("活动库存预热失败，活动不存在或未生效: activityId={}", activityId);
+                return;
+            }
+            task.cacheLoaded.addAndGet(2);
+
+            List<StockRebuildSkuEntity> skus = stockRebuildRepository.queryActivitySkuList(activityId);
+            List<StockRebuildTeamEntity> teams = stockRebuildRepository.queryJoinableTeamList(activityId);
+            task.skuTotal = skus.size();
+            task.teamTotal = teams.size();
+
+            // 2. 商品库存、队伍库存分批并行
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            for (int i = 0; i < skus.size(); i += CHUNK_SIZE) {
+                List<StockRebuildSkuEntity> chunk = skus.subList(i, Math.min(i + CHUNK_SIZE, skus.size()));
+                futures.add(submit(task, () -> preheatSkuChunk(task, chunk)));
+            }
+            for (int i = 0; i < teams.size(); i += CHUNK_SIZE) {
+                List<StockRebuildTeamEntity> chunk = teams.subList(i, Math.min(i + CHUNK_SIZE, teams.size()));
+                futures.add(submit(task, () -> preheatTeamChunk(task, chunk)));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+
+            if (task.failedChunks.get() > 0) {
+                task.finish(StockPreheatStatusEnumVO.FAILED, "部分分批预热失败: " + task.failedChunks.get());
+            } else {
+                task.finish(StockPreheatStatusEnumVO.COMPLETED, StockPreheatStatusEnumVO.COMPLETED.getInfo());
+            }
+        } catch (Exception e) {
+            log.error("活动库存预热异常: activityId={}", activityId, e);
+            task.finish(StockPreheatStatusEnumVO.FAILED, e.getMessage());
+        }
+        StockPreheatProgressEntity result = task.toEntity();
+        log.info("活动库存预热结束: activityId={}, status={}, SKU={}/{}, 队伍={}/{}, 新写入Key={}, 缓存={}, 失败分批={}, 耗时={}ms",
+                activityId, result.getStatus(), result.getSkuDone(), result.getSkuTotal(), result.getTeamDone(), result.getTeamTotal(),
+                result.getKeysCreated(), result.getCacheLoaded(), result.getFailedChunks(), result.getCostMillis());
+    }
+
+    private CompletableFuture<Void> submit(PreheatTask task, Runnable chunk) {
+        return CompletableFuture.runAsync(chunk, executor).exceptionally(e -> {
+            task.failedChunks.incrementAndGet();
+            log.error("活动库存预热分批失败: activityId={}", task.activityId, e);
+            return null;
+        });
+    }
+
+    private void preheatSkuChunk(PreheatTask task, List<StockRebuildSkuEntity> skus) {
+        Map<String, Long> values = new LinkedHashMap<>();
+        Set<String> goodsIds = new LinkedHashSet<>();
+        for (StockRebuildSkuEntity sku : skus) {
+            int saleable = null == sku.getSaleableInventory() ? 0 : sku.getSaleableInventory();
+            int frozen = null == sku.getFrozenInventory() ? 0 : sku.getFrozenInventory();
+            values.put(GOODS_STOCK_KEY_PREFIX + sku.getSku(), (long) Math.max(0, saleable - frozen));
+            goodsIds.add(sku.getGoodsId());
+        }
+        task.keysCreated.addAndGet(redisAdapter.setStockValuesIfAbsent(values));
+
+        // 商品缓存（批量回源，一次 MGET + 一次批量查询）
+        task.cacheLoaded.addAndGet(activityRepository.querySkusByGoodsIds(goodsIds).size());
+        task.skuDone.addAndGet(skus.size());
+    }
+
+    private void preheatTeamChunk(PreheatTask task, List<StockRebuildTeamEntity> teams) {
+        Map<String, Long> values = new LinkedHashMap<>();
+        for (StockRebuildTeamEntity team : teams) {
+            values.put(TEAM_STOCK_KEY_PREFIX + team.getActivityId() + "_" + team.getTeamId(),
+                    (long) (null == team.getLockCount() ? 0 : team.getLockCount()));
+            values.put(TradeLockRuleFilterFactory.generateRecoveryTeamStockKey(team.getActivityId(), team.getTeamId()), 0L);
+        }
+        task.keysCreated.addAndGet(redisAdapter.setStockValuesIfAbsent(values));
+        task.teamDone.addAndGet(teams.size());
+    }
+
+    /**
+     * 单个活动的预热任务（分批线程共享）
+     */
+    private static class PreheatTask {
+        private final Long activityId;
+        private final long startTime = System.currentTimeMillis();
+        private final AtomicInteger skuDone = new AtomicInteger();
+        private final AtomicInteger teamDone = new AtomicInteger();
+        private final AtomicLong keysCreated = new AtomicLong();
+        private final AtomicLong cacheLoaded = new AtomicLong();
+        private final AtomicInteger failedChunks = new AtomicInteger();
+        private volatile int skuTotal;
+        private volatile int teamTotal;
+        private volatile StockPreheatStatusEnumVO status = StockPreheatStatusEnumVO.RUNNING;
+        private volatile String message = StockPreheatStatusEnumVO.RUNNING.getInfo();
+        private volatile long endTime;
+
+        private PreheatTask(Long activityId) {
+            this.activityId = activityId;
+        }
+
+        private void finish(StockPreheatStatusEnumVO status, String message) {
+            this.endTime = System.currentTimeMillis();
+            this.message = message;
+            this.status = status;
+        }
+
+        private StockPreheatProgressEntity toEntity() {
+            return StockPreheatProgressEntity.builder()
+                    .activityId(activityId)
+                    .status(status.getCode())
+                    .ready(StockPreheatStatusEnumVO.COMPLETED == status)
+                    .skuTotal(skuTotal)
+                    .skuDone(skuDone.get())
+                    .teamTotal(teamTotal)
+                    .teamDone(teamDone.get())
+                    .keysCreated(keysCreated.get())
+                    .cacheLoaded(cacheLoaded.get())
+                    .failedChunks(failedChunks.get())
+                    .startTime(startTime)
+                    .costMillis((endTime > 0 ? endTime : System.currentTimeMillis()) - startTime)
+                    .message(message)
+                    .build();
+        }
+    }
+
+}
@@ -0,0 +1,353 @@
+package cn.bugstack.domain.trade.service.rebuild;
+
+import cn.bugstack.domain.trade.adapter.port.IRedisAdapter;
+import cn.bugstack.domain.trade.adapter.repository.IInventoryDeductionLogRepository;
+import cn.bugstack.domain.trade.adapter.repository.IStockRebuildRepository;
+import cn.bugstack.domain.trade.model.entity.InventoryDeductionLogEntity;
+import cn.bugstack.domain.trade.model.entity.StockRebuildReportEntity;
+import cn.bugstack.domain.trade.model.entity.StockRebuildSkuEntity;
+import cn.bugstack.domain.trade.model.entity.StockRebuildTeamEntity;
+import cn.bugstack.domain.trade.model.valobj.StockJournalEntryVO;
+import cn.bugstack.domain.trade.model.valobj.StockRebuildDiffVO;
+import cn.bugstack.domain.trade.model.valobj.StockRedisSnapshotVO;
+import cn.bugstack.domain.trade.service.IStockRebuildService;
+import cn.bugstack.types.enums.ResponseCode;
+import cn.bugstack.types.exception.AppException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * Redis 库存重建服务（Domain层）
+ * <p>
+ * Redis 数据丢失（主从切换丢写、误删、重启未持久化）后，按数据库重新计算商品库存与队伍库存：
+ * <pre>
+ * 商品库存 = 可售库存 - 冻结库存 - 节点未核销租约 - 在途扣减
+ * 队伍库存 = 锁单数量 + 在途占位
+ * </pre>
+ * 在途扣减：已扣减 Redis、尚未反映到数据库库存的订单。流水 Stream 存在时取对账消费组未确认的扣减流水
+ * （排除已回滚、已写入库存扣减流水的订单）；Stream 不存在时按 TRY 状态订单估算（热点商品未消费的下单消息无法统计，
+ * 由数据库条件扣减兜底）。在途占位：在途扣减中订单尚未落库、但已占用队伍名额的部分。
+ * <p>
+ * 按主键区间分片并行执行，每个分片按 {@link #CHUNK_ID_SPAN} 分批：一次 SQL、一次 pipeline 读取 Redis、一次 MSET 写入。
+ * 写入是覆盖写（非 CAS），应在停止下单流量或 dryRun 对比确认后执行。
+ *
+ * @author liang.tian
+ */
+@Slf4j
+@Service
+public class StockRebuildService implements IStockRebuildService {
+
+    // 与锁单准入保持一致
+    private static final String GOODS_STOCK_KEY_PREFIX = "group_buy_market_goods_stock_";
+    private static final String TEAM_STOCK_KEY_PREFIX = "group_buy_market_team_stock_key_";
+
+    private static final int DEFAULT_SHARD_COUNT = 8;
+    private static final int MAX_SHARD_COUNT = 32;
+    // 单批主键跨度
+    private static final long CHUNK_ID_SPAN = 1000L;
+    // 批量查询订单的 IN 条件上限
+    private static final int ORDER_QUERY_BATCH = 500;
+    // 报告中保留的差异明细上限
+    private static final int MAX_REPORT_DIFFS = 1000;
+
+    @Resource
+    private IStockRebuildRepository stockRebuildRepository;
+    @Resource
+    private IInventoryDeductionLogRepository inventoryDeductionLogRepository;
+    @Resource
+    private IRedisAdapter redisAdapter;
+    @Resource(name = "stockRebuildExecutor")
+    private ExecutorService executor;
+
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    @Override
+    public StockRebuildReportEntity rebuild(boolean dryRun, int shardCount) {
+        if (!running.compareAndSet(false, true)) {
+            throw new AppException(ResponseCode.UN_ERROR.getCode(), "库存重建正在执行");
+        }
+        try {
+            int shards = shardCount <= 0 ? DEFAULT_SHARD_COUNT : Math.min(shardCount, MAX_SHARD_COUNT);
+            long start = System.currentTimeMillis();
+            RebuildContext context = new RebuildContext(dryRun);
+            log.info("库存重建开始: dryRun={}, shardCount={}", dryRun, shards);
+
+            // 1. 商品库存（同时统计在途占位的队伍名额）
+            Map<String, Integer> tryOrderCounts = stockRebuildRepository.queryTryOrderCountBySku();
+            runShards(stockRebuildRepository.queryActiveSkuMaxId(), shards, context,
+                    (fromId, toId) -> rebuildGoodsChunk(stockRebuildRepository.queryActiveSkuList(fromId, toId), tryOrderCounts, context));
+
+            // 2. 队伍库存
+            runShards(stockRebuildRepository.queryValidTeamMaxId(), shards, context,
+                    (fromId, toId) -> rebuildTeamChunk(stockRebuildRepository.queryValidTeamList(fromId, toId), context));
+
+            // 3. 队伍尚未落库（热点商品新开团的下单消息未消费），只有在途占位
+            List<String> orphanTeamKeys = new ArrayList<>();
+            for (String teamKey : context.teamInFlight.keySet()) {
+                if (!context.visitedTeamKeys.contains(teamKey)) {
+                    orphanTeamKeys.add(teamKey);
+                }
+            }
+            if (!orphanTeamKeys.isEmpty()) {
+                Map<String, Long> expected = new HashMap<>();
+                for (String teamKey : orphanTeamKeys) {
+                    expected.put(teamKey, (long) context.teamInFlight.get(teamKey).get());
+                }
+                applyTeamValues(expected, Collections.<String, String>emptyMap(), context);
+            }
+
+            StockRebuildReportEntity report = StockRebuildReportEntity.builder()
+                    .dryRun(dryRun)
+                    .shardCount(shards)
+                    .goodsKeyCount(context.goodsKeyCount.get())
+                    .goodsDiffCount(context.goodsDiffCount.get())
+                    .teamKeyCount(context.teamKeyCount.get())
+                    .teamDiffCount(context.teamDiffCount.get())
+                    .writtenCount(context.writtenCount.get())
+                    .journalMissingCount(context.journalMissingCount.get())
+                    .failedShardCount(context.failedShardCount.get())
+                    .costMillis(System.currentTimeMillis() - start)
+                    .diffs(new ArrayList<>(context.diffs))
+                    .build();
+            log.info("库存重建完成: dryRun={}, 商品Key={}, 商品差异={}, 队伍Key={}, 队伍差异={}, 写入={}, 流水缺失SKU={}, 失败分片={}, 耗时={}ms",
+                    dryRun, report.getGoodsKeyCount(), report.getGoodsDiffCount(), report.getTeamKeyCount(), report.getTeamDiffCount(),
+                    report.getWrittenCount(), report.getJournalMissingCount(), report.getFailedShardCount(), report.getCostMillis());
+            return report;
+        } finally {
+            running.set(false);
+        }
+    }
+
+    /**
+     * 主键区间 [1, maxId] 均分为 shardCount 个分片并行执行，分片内按 CHUNK_ID_SPAN 分批
+     */
+    private void runShards(long maxId, int shardCount, RebuildContext context, BiConsumer<Long, Long> chunkHandler) {
+        if (maxId <= 0) return;
+        long shardSpan = maxId / shardCount + 1;
+        List<CompletableFuture<Void>> futures = new ArrayList<>(shardCount);
+        for (int i = 0; i < shardCount; i++) {
+            long shardFrom = i * shardSpan + 1;
+            long shardTo = Math.min(shardFrom + shardSpan, maxId + 1);
+            if (shardFrom >= shardTo) break;
+            futures.add(CompletableFuture.runAsync(() -> {
+                for (long fromId = shardFrom; fromId < shardTo; fromId += CHUNK_ID_SPAN) {
+                    chunkHandler.accept(fromId, Math.min(fromId + CHUNK_ID_SPAN, shardTo));
+                }
+            }, executor).exceptionally(e -> {
+                context.failedShardCount.incrementAndGet();
+                log.error("库存重建分片执行失败: shardFrom={}, shardTo={}", shardFrom, shardTo, e);
+                return null;
+            }));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+    }
+
+    private void rebuildGoodsChunk(List<StockRebuildSkuEntity> skus, Map<String, Integer> tryOrderCounts, RebuildContext context) {
+        if (null == skus || skus.isEmpty()) return;
+
+        List<String> skuKeys = new ArrayList<>(skus.size());
+        for (StockRebuildSkuEntity sku : skus) {
+            skuKeys.add(sku.getSku());
+        }
+        Map<String, StockRedisSnapshotVO> snapshots = redisAdapter.queryGoodsStockSnapshots(skuKeys);
+
+        // 1. 在途扣减流水（排除已回滚），查询已写入库存扣减流水、已落库的订单
+        Map<String, List<StockJournalEntryVO>> inFlightBySku = new HashMap<>();
+        List<StockJournalEntryVO> inFlightEntries = new ArrayList<>();
+        for (StockRedisSnapshotVO snapshot : snapshots.values()) {
+            if (!snapshot.isJournalAvailable() || null == snapshot.getUnreconciledEntries()) continue;
+            List<StockJournalEntryVO> entries = new ArrayList<>();
+            for (StockJournalEntryVO entry : snapshot.getUnreconciledEntries()) {
+                if (!entry.isDecrease() || null == entry.extractOrderId()) continue;
+                if (null != snapshot.getRolledBackIdentifiers() && snapshot.getRolledBackIdentifiers().contains(entry.getIdentifier())) continue;
+                entries.add(entry);
+            }
+            inFlightBySku.put(snapshot.getSku(), entries);
+            inFlightEntries.addAll(entries);
+        }
+        Set<String> deductedOrderIds = queryDeductedOrderIds(inFlightEntries);
+        Set<String> persistedOrderIds = queryPersistedOrderIds(inFlightEntries);
+
+        // 2. 计算商品库存
+        Map<String, Long> writes = new LinkedHashMap<>();
+        for (StockRebuildSkuEntity sku : skus) {
+            StockRedisSnapshotVO snapshot = snapshots.get(sku.getSku());
+            long leased = null == snapshot ? 0L : snapshot.getLeasedStock();
+            long inFlight = 0L;
+            String inFlightSource;
+            List<StockJournalEntryVO> entries = inFlightBySku.get(sku.getSku());
+            if (null != entries) {
+                inFlightSource = "journal";
+                for (StockJournalEntryVO entry : entries) {
+                    String orderId = entry.extractOrderId();
+                    if (!deductedOrderIds.contains(orderId)) {
+                        inFlight += null == entry.getChange() ? 1 : entry.getChange();
+                    }
+                    if (null != entry.getTeamStockKey() && !persistedOrderIds.contains(orderId)) {
+                        context.teamInFlight.computeIfAbsent(entry.getTeamStockKey(), k -> new AtomicInteger()).incrementAndGet();
+                    }
+                }
+            } else {
+                inFlightSource = "try_orders";
+                context.journalMissingCount.incrementAndGet();
+                inFlight = tryOrderCounts.getOrDefault(sku.getSku(), 0);
+            }
+
+            int saleable = null == sku.getSaleableInventory() ? 0 : sku.getSaleableInventory();
+            int frozen = null == sku.getFrozenInventory() ? 0 : sku.getFrozenInventory();
+            long expected = Math.max(0L, saleable - frozen - leased - inFlight);
+            Long current = null == snapshot ? null : snapshot.getGoodsStock();
+
+            String key = GOODS_STOCK_KEY_PREFIX + sku.getSku();
+            context.goodsKeyCount.incrementAndGet();
+            if (null != current && current == expected) continue;
+
+            context.goodsDiffCount.incrementAndGet();
+            context.addDiff(StockRebuildDiffVO.builder()
+                    .key(key)
+                    .current(current)
+                    .expected(expected)
+                    .detail("saleable=" + saleable + ", frozen=" + frozen + ", leased=" + leased + ", inFlight=" + inFlight + "(" + inFlightSource + ")")
+                    .build());
+            writes.put(key, expected);
+        }
+
+        write(writes, context);
+    }
+
+    private void rebuildTeamChunk(List<StockRebuildTeamEntity> teams, RebuildContext context) {
+        if (null == teams || teams.isEmpty()) return;
+
+        Map<String, Long> expected = new LinkedHashMap<>();
+        Map<String, String> details = new HashMap<>();
+        for (StockRebuildTeamEntity team : teams) {
+            String teamKey = TEAM_STOCK_KEY_PREFIX + team.getActivityId() + "_" + team.getTeamId();
+            AtomicInteger inFlight = context.teamInFlight.get(teamKey);
+            int lockCount = null == team.getLockCount() ? 0 : team.getLockCount();
+            int inFlightCount = null == inFlight ? 0 : inFlight.get();
+            expected.put(teamKey, (long) lockCount + inFlightCount);
+            details.put(teamKey, "lockCount=" + lockCount + ", completeCount=" + team.getCompleteCount()
+                    + ", targetCount=" + team.getTargetCount() + ", inFlight=" + inFlightCount);
+        }
+        applyTeamValues(expected, details, context);
+    }
+
+    private void applyTeamValues(Map<String, Long> expected, Map<String, String> details, RebuildContext context) {
+        context.visitedTeamKeys.addAll(expected.keySet());
+        Map<String, Long> current = redisAdapter.getStockValues(expected.keySet());
+
+        Map<String, Long> writes = new LinkedHashMap<>();
+        for (Map.Entry<String, Long> entry : expected.entrySet()) {
+            context.teamKeyCount.incrementAndGet();
+            Long currentValue = current.get(entry.getKey());
+            if (null != currentValue && currentValue.equals(entry.getValue())) continue;
+
+            context.teamDiffCount.incrementAndGet();
+            context.addDiff(StockRebuildDiffVO.builder()
+                    .key(entry.getKey())
+                    .current(currentValue)
+                    .expected(entry.getValue())
+                    .detail(details.getOrDefault(entry.getKey(), "inFlight=" + entry.getValue() + "（队伍未落库）"))
+                    .build());
+            writes.put(entry.getKey(), entry.getValue());
+        }
+
+        write(writes, context);
+    }
+
+    private void write(Map<String, Long> writes, RebuildContext context) {
+        if (context.dryRun || writes.isEmpty()) return;
+        redisAdapter.setStockValues(writes);
+        context.writtenCount.addAndGet(writes.size());
+    }
+
+    /**
+     * 已写入库存扣减流水（已计入数据库冻结库存）的订单
+     */
+    private Set<String> queryDeductedOrderIds(List<StockJournalEntryVO> entries) {
+        Set<String> orderIds = new HashSet<>();
+        for (int i = 0; i < entries.size(); i += ORDER_QUERY_BATCH) {
+            List<StockJournalEntryVO> batch = entries.subList(i, Math.min(i + ORDER_QUERY_BATCH, entries.size()));
+            List<InventoryDeductionLogEntity> logs = inventoryDeductionLogRepository.queryByUserIdsAndOrderIds(userIds(batch), orderIds(batch));
+            if (null == logs) continue;
+            for (InventoryDeductionLogEntity deductionLog : logs) {
+                orderIds.add(deductionLog.getOrderId());
+            }
+        }
+        return orderIds;
+    }
+
+    /**
+     * 已落库（已计入队伍锁单数量）的订单
+     */
+    private Set<String> queryPersistedOrderIds(List<StockJournalEntryVO> entries) {
+        Set<String> orderIds = new HashSet<>();
+        for (int i = 0; i < entries.size(); i += ORDER_QUERY_BATCH) {
+            List<StockJournalEntryVO> batch = entries.subList(i, Math.min(i + ORDER_QUERY_BATCH, entries.size()));
+            orderIds.addAll(stockRebuildRepository.queryExistingOrderIds(userIds(batch), orderIds(batch)));
+        }
+        return orderIds;
+    }
+
+    private List<String> userIds(List<StockJournalEntryVO> entries) {
+        Set<String> userIds = new HashSet<>();
+        for (StockJournalEntryVO entry : entries) {
+            userIds.add(entry.extractUserId());
+        }
+        return new ArrayList<>(userIds);
+    }
+
+    private List<String> orderIds(List<StockJournalEntryVO> entries) {
+        List<String> orderIds = new ArrayList<>(entries.size());
+        for (StockJournalEntryVO entry : entries) {
+            orderIds.add(entry.extractOrderId());
+        }
+        return orderIds;
+    }
+
+    /**
+     * 单次重建的统计与中间状态（分片线程共享）
+     */
+    private static class RebuildContext {
+        private final boolean dryRun;
+        private final AtomicLong goodsKeyCount = new AtomicLong();
+        private final AtomicLong goodsDiffCount = new AtomicLong();
+        private final AtomicLong teamKeyCount = new AtomicLong();
+        private final AtomicLong teamDiffCount = new AtomicLong();
+        private final AtomicLong writtenCount = new AtomicLong();
+        private final AtomicLong journalMissingCount = new AtomicLong();
+        private final AtomicInteger failedShardCount = new AtomicInteger();
+        // 在途占位：队伍库存Key -> 未落库订单数
+        private final Map<String, AtomicInteger> teamInFlight = new ConcurrentHashMap<>();
+        private final Set<String> visitedTeamKeys = ConcurrentHashMap.newKeySet();
+        private final List<StockRebuildDiffVO> diffs = Collections.synchronizedList(new ArrayList<>());
+
+        private RebuildContext(boolean dryRun) {
+            this.dryRun = dryRun;
+        }
+
+        private void addDiff(StockRebuildDiffVO diff) {
+            if (diffs.size() < MAX_REPORT_DIFFS) {
+                diffs.add(diff);
+            }
+        }
+    }
+
+}
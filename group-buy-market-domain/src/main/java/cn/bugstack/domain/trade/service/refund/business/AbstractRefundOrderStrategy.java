@@ -11,7 +11,7 @@ import lombok.extern.slf4j.Slf4j;
 
 import javax.annotation.Resource;
 import java.util.Map;
-import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.ExecutorService;
 
 /**
  * 退单策略抽象基类
@@ -29,15 +29,16 @@ public abstract class AbstractRefundOrderStrategy implements IRefundOrderStrateg
     @Resource
     protected ITradeTaskService tradeTaskService;
 
-    @Resource
-    protected ThreadPoolExecutor threadPoolExecutor;
+    // 超时退单任务、退单 MQ 监听器发起的回调通知进入批处理、异步消费执行器，不占用在线请求的执行器
+    @Resource(name = "workloadExecutor")
+    protected ExecutorService workloadExecutor;
 
     /**
      * 异步发送MQ消息
      */
     protected void sendRefundNotifyMessage(NotifyTaskEntity notifyTaskEntity, String refundType) {
         if (null != notifyTaskEntity) {
-            threadPoolExecutor.execute(() -> {
+            workloadExecutor.execute(() -> {
                 Map<String, Integer> notifyResultMap = null;
                 try {
                     notifyResultMap = tradeTaskService.execNotifyJob(notifyTaskEntity);
@@ -76,6 +77,13 @@ public abstract class AbstractRefundOrderStrategy implements IRefundOrderStrateg
                 1  // 恢复数量
         );
 
+        // 3. 扣回用户参与次数（退单后可再次参与）
+        repository.releaseUserTakeCount(
+                teamRefundSuccess.getActivityId(),
+                teamRefundSuccess.getUserId(),
+                teamRefundSuccess.getOrderId()
+        );
+
         log.info("退单；恢复库存完成 - {} orderId:{}", refundType, teamRefundSuccess.getOrderId());
     }
 }
\ No newline at end of file
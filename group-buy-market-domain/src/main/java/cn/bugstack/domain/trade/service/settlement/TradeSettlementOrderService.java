@@ -16,7 +16,7 @@ import org.springframework.stereotype.Service;
 
 import javax.annotation.Resource;
 import java.util.*;
-import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.ExecutorService;
 
 /**
  * @author liang.tian
@@ -31,8 +31,9 @@ public class TradeSettlementOrderService implements ITradeSettlementOrderService
     private ITradeRepository repository;
     @Resource
     private ITradePort port;
-    @Resource
-    private ThreadPoolExecutor threadPoolExecutor;
+    // 回调通知按结算调用方的负载选择执行器
+    @Resource(name = "workloadExecutor")
+    private ExecutorService workloadExecutor;
     @Resource
     private ITradeTaskService tradeTaskService;
 
@@ -80,7 +81,7 @@ public class TradeSettlementOrderService implements ITradeSettlementOrderService
 
         // 5. 组队回调处理 - 处理失败也会有定时任务补偿，通过这样的方式，可以减轻任务调度，提高时效性
         if (null != notifyTaskEntity) {
-            threadPoolExecutor.execute(() -> {
+            workloadExecutor.execute(() -> {
                 Map<String, Integer> notifyResultMap = null;
                 try {
                     notifyResultMap = tradeTaskService.execNotifyJob(notifyTaskEntity);
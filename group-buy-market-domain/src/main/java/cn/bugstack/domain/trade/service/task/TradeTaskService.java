@@ -14,7 +14,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.ExecutorService;
 
 /**
  * 交易任务（MT/HTTP）服务
@@ -31,7 +31,7 @@ public class TradeTaskService implements ITradeTaskService {
     @Resource
     private ITradePort port;
     @Resource
-    private ThreadPoolExecutor threadPoolExecutor;
+    private ExecutorService threadPoolExecutor;
     
     @Override
     public Map<String, Integer> execNotifyJob() throws Exception {
@@ -58,9 +58,11 @@ public class TradeTaskService implements ITradeTaskService {
 
     private Map<String, Integer> execNotifyJob(List<NotifyTaskEntity> notifyTaskEntityList) throws Exception {
         int successCount = 0, errorCount = 0, retryCount = 0;
-        for (NotifyTaskEntity notifyTask : notifyTaskEntityList) {
-            // 回调处理 success 成功，error 失败
-            String response = port.groupBuyNotify(notifyTask);
+        // 回调处理 success 成功，error 失败；MQ 回调批量发送、统一等待确认
+        List<String> responses = port.groupBuyNotify(notifyTaskEntityList);
+        for (int i = 0; i < notifyTaskEntityList.size(); i++) {
+            NotifyTaskEntity notifyTask = notifyTaskEntityList.get(i);
+            String response = responses.get(i);
 
             // 更新状态判断&变更数据库表回调任务状态
             if (NotifyTaskHTTPEnumVO.SUCCESS.getCode().equals(response)) {
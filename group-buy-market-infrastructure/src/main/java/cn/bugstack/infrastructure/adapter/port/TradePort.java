@@ -12,7 +12,14 @@ import org.redisson.api.RLock;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * @author Fuzhengwei bugstack.cn @小傅哥
@@ -47,7 +54,7 @@ public class TradePort implements ITradePort {
 
                     // 回调方式 MQ
                     if (NotifyTypeEnumVO.MQ.getCode().equals(notifyTask.getNotifyType())) {
-                        publisher.publish(notifyTask.getNotifyMQ(), notifyTask.getParameterJson());
+                        publisher.publish(notifyTask.getNotifyMQ(), notifyTask.getParameterJson(), notifyTask.getTeamId());
                         return NotifyTaskHTTPEnumVO.SUCCESS.getCode();
                     }
                 } finally {
@@ -63,4 +70,49 @@ public class TradePort implements ITradePort {
         }
     }
 
+    /**
+     * 批量回调：HTTP 回调逐条执行；MQ 回调逐条抢占任务锁后异步发送（携带 teamId 作为一致性哈希键），
+     * 全部发出后在确认超时内统一等待 Broker 确认，未确认的任务保持原状态，由下次任务重试
+     */
+    @Override
+    public List<String> groupBuyNotify(List<NotifyTaskEntity> notifyTasks) throws Exception {
+        String[] responses = new String[notifyTasks.size()];
+        List<RLock> locks = new ArrayList<>();
+        Map<Integer, CompletableFuture<Boolean>> confirms = new LinkedHashMap<>();
+        try {
+            for (int i = 0; i < notifyTasks.size(); i++) {
+                NotifyTaskEntity notifyTask = notifyTasks.get(i);
+                if (!NotifyTypeEnumVO.MQ.getCode().equals(notifyTask.getNotifyType())) {
+                    responses[i] = groupBuyNotify(notifyTask);
+                    continue;
+                }
+                RLock lock = redisService.getLock(notifyTask.lockKey());
+                if (!lock.tryLock(3, 0, TimeUnit.SECONDS)) {
+                    responses[i] = NotifyTaskHTTPEnumVO.NULL.getCode();
+                    continue;
+                }
+                locks.add(lock);
+                confirms.put(i, publisher.publishAsync(notifyTask.getNotifyMQ(), notifyTask.getParameterJson(), notifyTask.getTeamId()));
+            }
+
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(publisher.getConfirmTimeout());
+            for (Map.Entry<Integer, CompletableFuture<Boolean>> confirm : confirms.entrySet()) {
+                boolean confirmed;
+                try {
+                    confirmed = confirm.getValue().get(Math.max(0L, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                } catch (TimeoutException e) {
+                    confirmed = false;
+                }
+                responses[confirm.getKey()] = confirmed ? NotifyTaskHTTPEnumVO.SUCCESS.getCode() : NotifyTaskHTTPEnumVO.NULL.getCode();
+            }
+        } finally {
+            for (RLock lock : locks) {
+                if (lock.isLocked() && lock.isHeldByCurrentThread()) {
+                    lock.unlock();
+                }
+            }
+        }
+        return Arrays.asList(responses);
+    }
+
 }
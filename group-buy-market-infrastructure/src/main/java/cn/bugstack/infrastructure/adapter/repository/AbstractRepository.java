@@ -2,10 +2,13 @@ package cn.bugstack.infrastructure.adapter.repository;
 
 import cn.bugstack.infrastructure.dcc.DCCService;
 import cn.bugstack.infrastructure.redis.IRedisService;
+import cn.bugstack.infrastructure.redis.NearCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Resource;
+import java.util.*;
+import java.util.function.Function;
 import java.util.function.Supplier;
 
 /**
@@ -22,6 +25,14 @@ public abstract class AbstractRepository {
     @Resource
     protected DCCService dccService;
 
+    @Resource
+    protected NearCache nearCache;
+
+    /**
+     * 配置数据在 Redis 中的过期时间，近端缓存失效时同时删除 Redis 缓存，过期只用于兜底
+     */
+    protected static final long CONFIG_CACHE_EXPIRED_MS = 24 * 60 * 60 * 1000L;
+
     /**
      * 通用缓存处理方法
      * 优先从缓存获取，缓存不存在则从数据库获取并写入缓存
@@ -91,4 +102,101 @@ public abstract class AbstractRepository {
         }
     }
 
+    /**
+     * 近端缓存处理方法
+     * 本地缓存 -> Redis 缓存 -> 数据库，逐级回填
+     *
+     * @param cacheKey      缓存键
+     * @param dbFallback    数据库查询函数
+     * @param <T>           返回类型
+     * @return              查询结果
+     */
+    protected <T> T getFromNearCacheOrDb(String cacheKey, Supplier<T> dbFallback) {
+        if (!dccService.isCacheOpenSwitch()) {
+            logger.warn("缓存降级 {}", cacheKey);
+            return dbFallback.get();
+        }
+        T localResult = nearCache.get(cacheKey);
+        if (null != localResult) {
+            return localResult;
+        }
+        T result = getFromCacheOrDb(cacheKey, dbFallback, CONFIG_CACHE_EXPIRED_MS);
+        nearCache.put(cacheKey, result);
+        return result;
+    }
+
+    /**
+     * 近端缓存批量处理方法
+     * 1. 本地缓存命中的直接返回
+     * 2. 本地未命中的一次 MGET 查询 Redis
+     * 3. Redis 未命中的交给数据库批量查询，并批量回填 Redis
+     *
+     * @param cacheKeys     缓存键
+     * @param dbFallback    数据库批量查询函数，入参为未命中的缓存键，返回 缓存键 -> 结果
+     * @param <T>           返回类型
+     * @return              缓存键 -> 结果，不存在的数据不在返回结果中
+     */
+    protected <T> Map<String, T> getAllFromNearCacheOrDb(Collection<String> cacheKeys, Function<List<String>, Map<String, T>> dbFallback) {
+        Map<String, T> result = new HashMap<>();
+        if (null == cacheKeys || cacheKeys.isEmpty()) {
+            return result;
+        }
+        if (!dccService.isCacheOpenSwitch()) {
+            logger.warn("缓存降级 {}", cacheKeys);
+            Map<String, T> dbResult = dbFallback.apply(new ArrayList<>(cacheKeys));
+            return null == dbResult ? result : dbResult;
+        }
+
+        // 1. 本地缓存
+        List<String> localMissKeys = new ArrayList<>();
+        for (String cacheKey : new LinkedHashSet<>(cacheKeys)) {
+            T localResult = nearCache.get(cacheKey);
+            if (null != localResult) {
+                result.put(cacheKey, localResult);
+            } else {
+                localMissKeys.add(cacheKey);
+            }
+        }
+        if (localMissKeys.isEmpty()) {
+            return result;
+        }
+
+        // 2. Redis 缓存
+        Map<String, T> cacheResult = redisService.getValues(localMissKeys);
+        nearCache.putAll(cacheResult);
+        result.putAll(cacheResult);
+
+        List<String> cacheMissKeys = new ArrayList<>();
+        for (String cacheKey : localMissKeys) {
+            if (!cacheResult.containsKey(cacheKey)) {
+                cacheMissKeys.add(cacheKey);
+            }
+        }
+        if (cacheMissKeys.isEmpty()) {
+            return result;
+        }
+
+        // 3. 数据库
+        Map<String, T> dbResult = dbFallback.apply(cacheMissKeys);
+        if (null == dbResult || dbResult.isEmpty()) {
+            return result;
+        }
+        redisService.setValues(dbResult, CONFIG_CACHE_EXPIRED_MS);
+        nearCache.putAll(dbResult);
+        result.putAll(dbResult);
+        return result;
+    }
+
+    /**
+     * 删除缓存，更库后调用；本地缓存的删除会广播到其他节点
+     *
+     * @param cacheKeys     缓存键
+     */
+    protected void evictCache(String... cacheKeys) {
+        for (String cacheKey : cacheKeys) {
+            redisService.remove(cacheKey);
+        }
+        nearCache.invalidate(Arrays.asList(cacheKeys));
+    }
+
 }
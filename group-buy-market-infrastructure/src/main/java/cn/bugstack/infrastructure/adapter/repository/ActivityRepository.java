@@ -6,7 +6,9 @@ import cn.bugstack.domain.activity.model.valobj.*;
 import cn.bugstack.infrastructure.dao.*;
 import cn.bugstack.infrastructure.dao.po.*;
 import cn.bugstack.infrastructure.dcc.DCCService;
+import cn.bugstack.infrastructure.readwrite.ReplicaRead;
 import cn.bugstack.infrastructure.redis.IRedisService;
+import cn.bugstack.infrastructure.redis.team.JoinableTeamDirectory;
 import org.redisson.api.RBitSet;
 import org.springframework.stereotype.Repository;
 
@@ -36,18 +38,143 @@ public class ActivityRepository extends AbstractRepository implements IActivityR
     private IGroupBuyOrderDao groupBuyOrderDao;
     @Resource
     private IGroupBuyOrderListDao groupBuyOrderListDao;
+    @Resource
+    private JoinableTeamDirectory joinableTeamDirectory;
+
+    // 从目录中取 randomCount 的倍数个最接近成团的队伍作为候选，再随机选取，避免所有用户看到同一批队伍
+    private static final int JOINABLE_TEAM_CANDIDATE_FACTOR = 3;
 
     @Override
     public GroupBuyActivityDiscountVO queryGroupBuyActivityDiscountVO(Long activityId) {
-        // 优先从缓存获取&写缓存，注意如果实现了后台配置，在更新时要更库，删缓存。
-        GroupBuyActivity groupBuyActivityRes = getFromCacheOrDb(GroupBuyActivity.cacheRedisKey(activityId),
+        // 优先从缓存获取&写缓存，注意如果实现了后台配置，在更新时要更库，删缓存（evictActivityCache）。
+        GroupBuyActivity groupBuyActivityRes = getFromNearCacheOrDb(GroupBuyActivity.cacheRedisKey(activityId),
                 () -> groupBuyActivityDao.queryValidGroupBuyActivityId(activityId));
         if (null == groupBuyActivityRes) return null;
+        return buildGroupBuyActivityDiscountVO(groupBuyActivityRes);
+    }
+
+    @Override
+    public SkuVO querySkuByGoodsId(String goodsId) {
+        Sku sku = getFromNearCacheOrDb(Sku.cacheRedisKey(goodsId), () -> skuDao.querySkuByGoodsId(goodsId));
+        if (null == sku) return null;
+        return toSkuVO(sku);
+    }
 
+    @Override
+    public SCSkuActivityVO querySCSkuActivityBySCGoodsId(String source, String channel, String goodsId) {
+        SCSkuActivity scSkuActivity = getFromNearCacheOrDb(SCSkuActivity.cacheRedisKey(source, channel, goodsId), () -> {
+            SCSkuActivity scSkuActivityReq = new SCSkuActivity();
+            scSkuActivityReq.setSource(source);
+            scSkuActivityReq.setChannel(channel);
+            scSkuActivityReq.setGoodsId(goodsId);
+            return skuActivityDao.querySCSkuActivityBySCGoodsId(scSkuActivityReq);
+        });
+        if (null == scSkuActivity) return null;
+
+        return SCSkuActivityVO.builder()
+                .source(scSkuActivity.getSource())
+                .chanel(scSkuActivity.getChannel())
+                .activityId(scSkuActivity.getActivityId())
+                .goodsId(scSkuActivity.getGoodsId())
+                .build();
+    }
+
+    @Override
+    public Map<String, SkuVO> querySkusByGoodsIds(Collection<String> goodsIds) {
+        Map<String, String> cacheKeyToGoodsId = new LinkedHashMap<>();
+        for (String goodsId : goodsIds) {
+            cacheKeyToGoodsId.put(Sku.cacheRedisKey(goodsId), goodsId);
+        }
+
+        Map<String, Sku> skuMap = getAllFromNearCacheOrDb(cacheKeyToGoodsId.keySet(), missKeys -> {
+            List<String> missGoodsIds = new ArrayList<>(missKeys.size());
+            for (String missKey : missKeys) {
+                missGoodsIds.add(cacheKeyToGoodsId.get(missKey));
+            }
+            Map<String, Sku> dbResult = new HashMap<>();
+            for (Sku sku : skuDao.querySkuListByGoodsIds(missGoodsIds)) {
+                dbResult.put(Sku.cacheRedisKey(sku.getGoodsId()), sku);
+            }
+            return dbResult;
+        });
+
+        Map<String, SkuVO> skuVOMap = new LinkedHashMap<>();
+        for (Sku sku : skuMap.values()) {
+            skuVOMap.put(sku.getGoodsId(), toSkuVO(sku));
+        }
+        return skuVOMap;
+    }
+
+    @Override
+    public TrialMarketConfigVO queryTrialMarketConfig(Long activityId, String source, String channel, String goodsId) {
+        // 1. 活动ID为空时查询渠道商品活动关联（近端缓存，稳定后不访问远端）
+        Long availableActivityId = activityId;
+        if (null == availableActivityId) {
+            SCSkuActivityVO scSkuActivityVO = querySCSkuActivityBySCGoodsId(source, channel, goodsId);
+            if (null == scSkuActivityVO) {
+                return TrialMarketConfigVO.builder()
+                        .skuVO(querySkuByGoodsId(goodsId))
+                        .build();
+            }
+            availableActivityId = scSkuActivityVO.getActivityId();
+        }
+
+        // 2. 活动配置与商品信息一次 MGET，本地缓存命中时不访问 Redis
+        Long queryActivityId = availableActivityId;
+        String activityCacheKey = GroupBuyActivity.cacheRedisKey(queryActivityId);
+        String skuCacheKey = Sku.cacheRedisKey(goodsId);
+        Map<String, Object> configMap = getAllFromNearCacheOrDb(Arrays.asList(activityCacheKey, skuCacheKey), missKeys -> {
+            Map<String, Object> dbResult = new HashMap<>();
+            for (String missKey : missKeys) {
+                Object value = activityCacheKey.equals(missKey)
+                        ? groupBuyActivityDao.queryValidGroupBuyActivityId(queryActivityId)
+                        : skuDao.querySkuByGoodsId(goodsId);
+                if (null != value) {
+                    dbResult.put(missKey, value);
+                }
+            }
+            return dbResult;
+        });
+
+        // 3. 折扣配置（多个活动共用，基本都在本地缓存命中）
+        GroupBuyActivity groupBuyActivity = (GroupBuyActivity) configMap.get(activityCacheKey);
+        Sku sku = (Sku) configMap.get(skuCacheKey);
+        return TrialMarketConfigVO.builder()
+                .groupBuyActivityDiscountVO(null == groupBuyActivity ? null : buildGroupBuyActivityDiscountVO(groupBuyActivity))
+                .skuVO(null == sku ? null : toSkuVO(sku))
+                .build();
+    }
+
+    @Override
+    public void evictActivityCache(Long activityId) {
+        String activityCacheKey = GroupBuyActivity.cacheRedisKey(activityId);
+        // 优先取缓存中的折扣ID，折扣变更时需要删除旧折扣的缓存
+        GroupBuyActivity groupBuyActivity = redisService.getValue(activityCacheKey);
+        if (null == groupBuyActivity) {
+            groupBuyActivity = groupBuyActivityDao.queryValidGroupBuyActivityId(activityId);
+        }
+        if (null == groupBuyActivity || null == groupBuyActivity.getDiscountId()) {
+            evictCache(activityCacheKey);
+            return;
+        }
+        evictCache(activityCacheKey, GroupBuyDiscount.cacheRedisKey(groupBuyActivity.getDiscountId()));
+    }
+
+    @Override
+    public void evictSkuCache(String goodsId) {
+        evictCache(Sku.cacheRedisKey(goodsId));
+    }
+
+    @Override
+    public void evictSCSkuActivityCache(String source, String channel, String goodsId) {
+        evictCache(SCSkuActivity.cacheRedisKey(source, channel, goodsId));
+    }
+
+    private GroupBuyActivityDiscountVO buildGroupBuyActivityDiscountVO(GroupBuyActivity groupBuyActivityRes) {
         String discountId = groupBuyActivityRes.getDiscountId();
 
         // 优先从缓存获取&写缓存
-        GroupBuyDiscount groupBuyDiscountRes = getFromCacheOrDb(GroupBuyDiscount.cacheRedisKey(discountId),
+        GroupBuyDiscount groupBuyDiscountRes = getFromNearCacheOrDb(GroupBuyDiscount.cacheRedisKey(discountId),
                 () -> groupBuyDiscountDao.queryGroupBuyActivityDiscountByDiscountId(discountId));
         if (null == groupBuyDiscountRes) return null;
 
@@ -76,10 +203,7 @@ public class ActivityRepository extends AbstractRepository implements IActivityR
                 .build();
     }
 
-    @Override
-    public SkuVO querySkuByGoodsId(String goodsId) {
-        Sku sku = skuDao.querySkuByGoodsId(goodsId);
-        if (null == sku) return null;
+    private SkuVO toSkuVO(Sku sku) {
         return SkuVO.builder()
                 .goodsId(sku.getGoodsId())
                 .goodsName(sku.getGoodsName())
@@ -87,24 +211,6 @@ public class ActivityRepository extends AbstractRepository implements IActivityR
                 .build();
     }
 
-    @Override
-    public SCSkuActivityVO querySCSkuActivityBySCGoodsId(String source, String channel, String goodsId) {
-        SCSkuActivity scSkuActivityReq = new SCSkuActivity();
-        scSkuActivityReq.setSource(source);
-        scSkuActivityReq.setChannel(channel);
-        scSkuActivityReq.setGoodsId(goodsId);
-
-        SCSkuActivity scSkuActivity = skuActivityDao.querySCSkuActivityBySCGoodsId(scSkuActivityReq);
-        if (null == scSkuActivity) return null;
-
-        return SCSkuActivityVO.builder()
-                .source(scSkuActivity.getSource())
-                .chanel(scSkuActivity.getChannel())
-                .activityId(scSkuActivity.getActivityId())
-                .goodsId(scSkuActivity.getGoodsId())
-                .build();
-    }
-
     @Override
     public boolean isTagCrowdRange(String tagId, String userId) {
         RBitSet bitSet = redisService.getBitSet(tagId);
@@ -123,6 +229,7 @@ public class ActivityRepository extends AbstractRepository implements IActivityR
         return dccService.isCutRange(userId);
     }
 
+    @ReplicaRead(userIdIndex = 1)
     @Override
     public List<UserGroupBuyOrderDetailEntity> queryInProgressUserGroupBuyOrderDetailListByOwner(Long activityId, String userId, Integer ownerCount) {
         // 1. 根据用户ID、活动ID，查询用户参与的拼团队伍
@@ -171,8 +278,28 @@ public class ActivityRepository extends AbstractRepository implements IActivityR
         return userGroupBuyOrderDetailEntities;
     }
 
+    @ReplicaRead
     @Override
     public List<UserGroupBuyOrderDetailEntity> queryInProgressUserGroupBuyOrderDetailListByRandom(Long activityId, String userId, Integer randomCount) {
+        // 优先从可参与队伍目录中取最接近成团的队伍，目录为空（未预热、无进行中队伍）时回退数据库查询
+        List<JoinableTeamDirectory.JoinableTeam> joinableTeams = joinableTeamDirectory.sample(activityId, userId, randomCount, randomCount * JOINABLE_TEAM_CANDIDATE_FACTOR);
+        if (null != joinableTeams && !joinableTeams.isEmpty()) {
+            List<UserGroupBuyOrderDetailEntity> userGroupBuyOrderDetailEntities = new ArrayList<>(joinableTeams.size());
+            for (JoinableTeamDirectory.JoinableTeam joinableTeam : joinableTeams) {
+                userGroupBuyOrderDetailEntities.add(UserGroupBuyOrderDetailEntity.builder()
+                        .userId(joinableTeam.getUserIds().get(0))
+                        .teamId(joinableTeam.getTeamId())
+                        .activityId(joinableTeam.getActivityId())
+                        .targetCount(joinableTeam.getTargetCount())
+                        .completeCount(joinableTeam.getCompleteCount())
+                        .lockCount(joinableTeam.getLockCount())
+                        .validStartTime(joinableTeam.getValidStartTime())
+                        .validEndTime(joinableTeam.getValidEndTime())
+                        .build());
+            }
+            return userGroupBuyOrderDetailEntities;
+        }
+
         // 1. 根据用户ID、活动ID，查询用户参与的拼团队伍
         GroupBuyOrderList groupBuyOrderListReq = new GroupBuyOrderList();
         groupBuyOrderListReq.setActivityId(activityId);
@@ -226,6 +353,7 @@ public class ActivityRepository extends AbstractRepository implements IActivityR
         return userGroupBuyOrderDetailEntities;
     }
 
+    @ReplicaRead
     @Override
     public TeamStatisticVO queryTeamStatisticByActivityId(Long activityId) {
         // 1. 根据活动ID查询拼团队伍
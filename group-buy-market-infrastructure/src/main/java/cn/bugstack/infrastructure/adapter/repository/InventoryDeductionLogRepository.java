@@ -9,6 +9,7 @@ import org.springframework.beans.BeanUtils;
 import org.springframework.stereotype.Repository;
 
 import javax.annotation.Resource;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 
@@ -53,6 +54,21 @@ public class InventoryDeductionLogRepository implements IInventoryDeductionLogRe
         return entity;
     }
 
+    @Override
+    public List<InventoryDeductionLogEntity> queryByUserIdsAndOrderIds(List<String> userIds, List<String> orderIds) {
+        if (userIds == null || userIds.isEmpty() || orderIds == null || orderIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+        List<InventoryDeductionLog> pos = inventoryDeductionLogDao.queryByUserIdsAndOrderIds(userIds, orderIds);
+        List<InventoryDeductionLogEntity> entities = new ArrayList<>(pos.size());
+        for (InventoryDeductionLog po : pos) {
+            InventoryDeductionLogEntity entity = new InventoryDeductionLogEntity();
+            BeanUtils.copyProperties(po, entity);
+            entities.add(entity);
+        }
+        return entities;
+    }
+
     /**
      * 查询指定日期之前的流水（用于归档）
      * @param archiveDate 归档日期
@@ -1,10 +1,16 @@
 package cn.bugstack.infrastructure.adapter.repository;
 
-import cn.bugstack.domain.trade.adapter.port.IRedisAdapter;
 import cn.bugstack.domain.trade.adapter.repository.ISkuRepository;
+import cn.bugstack.domain.trade.model.entity.NormalGoodsConfirmEntity;
+import cn.bugstack.domain.trade.model.entity.StockDeltaEntity;
+import cn.bugstack.domain.trade.model.valobj.TradeOrderStatusEnumVO;
+import cn.bugstack.infrastructure.concurrency.DbConcurrencyLimit;
+import cn.bugstack.infrastructure.concurrency.DbOperationClass;
 import cn.bugstack.infrastructure.dao.IGroupBuyOrderDao;
+import cn.bugstack.infrastructure.dao.IGroupBuyOrderListDao;
 import cn.bugstack.infrastructure.dao.IInventoryDeductionLogDao;
 import cn.bugstack.infrastructure.dao.ISkuActivityDao;
+import cn.bugstack.infrastructure.dao.po.GroupBuyOrderList;
 import cn.bugstack.infrastructure.dao.po.InventoryDeductionLog;
 import cn.bugstack.infrastructure.dao.po.SkuActivity;
 import lombok.extern.slf4j.Slf4j;
@@ -13,6 +19,12 @@ import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 
 import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 @Slf4j
 @Repository
@@ -24,18 +36,15 @@ public class SkuRepository implements ISkuRepository {
     @Resource
     private IInventoryDeductionLogDao inventoryDeductionLogDao;
 
-    @Resource
-    private IRedisAdapter redisAdapter;
-
     @Resource
     private IGroupBuyOrderDao groupBuyOrderDao;
 
-    // 商品库存 Redis 前缀
-    private static final String GOODS_STOCK_KEY_PREFIX = "group_buy_market_goods_stock_";
-    private static final String GOODS_STOCK_LOG_KEY_PREFIX = "group_buy_market_goods_stock_log_";
+    @Resource
+    private IGroupBuyOrderListDao groupBuyOrderListDao;
 
     private static final int MAX_RETRY = 3;
 
+    @DbConcurrencyLimit(DbOperationClass.STOCK)
     @Override
     @Transactional(rollbackFor = Exception.class)
     public boolean decreaseSkuStock(Long activityId, String goodsId, Integer quantity, String orderId, String userId) {
@@ -123,6 +132,198 @@ public class SkuRepository implements ISkuRepository {
         return false;
     }
 
+    /**
+     * 合并扣减商品库存（热点商品库存增量写回）
+     * 
+     * 与 decreaseSkuStock 的区别：
+     * 1. 批量幂等检查：一次按 user_id + order_id 查询已有流水，跳过已扣减订单
+     * 2. 行锁代替乐观锁：SELECT ... FOR UPDATE 锁定库存行，一批订单只执行一次 UPDATE，不会出现版本冲突重试
+     * 3. 多行插入流水：每笔订单一条流水，冻结库存按顺序累加
+     * 
+     * 库存不足、流水唯一索引冲突时整批回滚，返回失败或抛出异常，由调用方逐单执行 decreaseSkuStock
+     */
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public boolean decreaseSkuStockBatch(Long activityId, String goodsId, List<StockDeltaEntity> deltas) {
+        if (null == deltas || deltas.isEmpty()) return true;
+        return freezeSkuStockBatch(activityId, goodsId, deltas, queryDeductionLogStatus(deltas));
+    }
+
+    /**
+     * TCC Confirm 组提交：同一事务内冻结库存并确认订单
+     * 
+     * 先 SELECT ... FOR UPDATE 锁定订单行，只为仍是 TRY 的订单冻结库存并更新为 CONFIRM；
+     * 已确认、已取消的订单在锁内被排除，不会出现库存已冻结而订单未确认的情况。
+     * 已有 CANCEL 流水的 TRY 订单（疑似取消在订单落库前完成了空回滚）不冻结、不确认，在同一事务内更新为 CANCEL。
+     * 订单行已锁定，更新行数与订单数不一致时抛出异常回滚整批。
+     */
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public boolean confirmOrdersWithSkuStock(Long activityId, String goodsId, List<NormalGoodsConfirmEntity> orders) {
+        if (null == orders || orders.isEmpty()) return true;
+
+        // 1. 锁定订单行，筛选仍为 TRY 的订单
+        Set<String> userIds = new HashSet<>();
+        List<String> orderIds = new ArrayList<>(orders.size());
+        for (NormalGoodsConfirmEntity order : orders) {
+            userIds.add(order.getUserId());
+            orderIds.add(order.getOrderId());
+        }
+        Set<String> tryOrderIds = new HashSet<>();
+        for (GroupBuyOrderList groupBuyOrderList : groupBuyOrderListDao.queryOrderStatusForUpdate(new ArrayList<>(userIds), orderIds)) {
+            if (TradeOrderStatusEnumVO.TRY.getCode().equals(groupBuyOrderList.getStatus())) {
+                tryOrderIds.add(groupBuyOrderList.getOrderId());
+            }
+        }
+
+        List<StockDeltaEntity> deltas = new ArrayList<>(tryOrderIds.size());
+        for (NormalGoodsConfirmEntity order : orders) {
+            if (!tryOrderIds.contains(order.getOrderId())) continue;
+            deltas.add(StockDeltaEntity.builder()
+                    .orderId(order.getOrderId())
+                    .userId(order.getUserId())
+                    .activityId(activityId)
+                    .goodsId(goodsId)
+                    .quantity(order.getQuantity())
+                    .build());
+        }
+        if (deltas.size() != orders.size()) {
+            log.info("TCC Confirm-跳过非 TRY 状态订单（已确认或已取消）: activityId={}, goodsId={}, size={}, tryCount={}",
+                    activityId, goodsId, orders.size(), deltas.size());
+        }
+        if (deltas.isEmpty()) return true;
+
+        // 2. 已有 CANCEL 流水的订单已被疑似取消回滚（库存已归还），不能再确认
+        Map<String, String> logStatus = queryDeductionLogStatus(deltas);
+        List<StockDeltaEntity> confirmDeltas = new ArrayList<>(deltas.size());
+        List<StockDeltaEntity> cancelDeltas = new ArrayList<>();
+        for (StockDeltaEntity delta : deltas) {
+            if ("CANCEL".equals(logStatus.get(delta.getOrderId()))) {
+                cancelDeltas.add(delta);
+            } else {
+                confirmDeltas.add(delta);
+            }
+        }
+        if (!cancelDeltas.isEmpty()) {
+            updateOrderStatus(cancelDeltas, TradeOrderStatusEnumVO.CANCEL);
+            log.info("TCC Confirm-订单已有 CANCEL 流水，更新为取消: activityId={}, goodsId={}, size={}", activityId, goodsId, cancelDeltas.size());
+        }
+        if (confirmDeltas.isEmpty()) return true;
+
+        // 3. 冻结库存
+        if (!freezeSkuStockBatch(activityId, goodsId, confirmDeltas, logStatus)) {
+            return false;
+        }
+
+        // 4. 确认订单（TRY -> CONFIRM）
+        int updateCount = updateOrderStatus(confirmDeltas, TradeOrderStatusEnumVO.CONFIRM);
+
+        log.info("TCC Confirm-组提交成功: activityId={}, goodsId={}, confirmed={}", activityId, goodsId, updateCount);
+        return true;
+    }
+
+    /**
+     * TRY 状态订单批量更新为目标状态（订单行已在事务内锁定），更新行数不一致时抛出异常回滚整批
+     */
+    private int updateOrderStatus(List<StockDeltaEntity> orders, TradeOrderStatusEnumVO toStatus) {
+        Set<String> userIds = new HashSet<>();
+        List<String> orderIds = new ArrayList<>(orders.size());
+        for (StockDeltaEntity order : orders) {
+            userIds.add(order.getUserId());
+            orderIds.add(order.getOrderId());
+        }
+        int updateCount = groupBuyOrderListDao.updateOrderStatusBatch(new ArrayList<>(userIds), orderIds,
+                TradeOrderStatusEnumVO.TRY.getCode(), toStatus.getCode());
+        if (updateCount != orders.size()) {
+            throw new IllegalStateException("TCC Confirm-更新订单状态数量不一致: toStatus=" + toStatus + ", expected=" + orders.size() + ", updateCount=" + updateCount);
+        }
+        return updateCount;
+    }
+
+    /**
+     * 批量查询订单的库存流水状态（订单ID -> 流水状态），没有流水的订单不在结果中
+     */
+    private Map<String, String> queryDeductionLogStatus(List<StockDeltaEntity> orders) {
+        Set<String> userIds = new HashSet<>();
+        List<String> orderIds = new ArrayList<>(orders.size());
+        for (StockDeltaEntity order : orders) {
+            userIds.add(order.getUserId());
+            orderIds.add(order.getOrderId());
+        }
+        Map<String, String> logStatus = new HashMap<>();
+        for (InventoryDeductionLog existingLog : inventoryDeductionLogDao.queryByUserIdsAndOrderIds(new ArrayList<>(userIds), orderIds)) {
+            logStatus.put(existingLog.getOrderId(), existingLog.getStatus());
+        }
+        return logStatus;
+    }
+
+    /**
+     * 锁定库存行，一次 UPDATE 冻结整批库存并批量写入流水；需在事务内调用
+     *
+     * @param logStatus 订单已有的流水状态，已有流水（冻结或防悬挂）的订单幂等跳过
+     */
+    private boolean freezeSkuStockBatch(Long activityId, String goodsId, List<StockDeltaEntity> orders, Map<String, String> logStatus) {
+        // 1. 幂等性检查：跳过已有流水的订单
+        List<StockDeltaEntity> pendingOrders = new ArrayList<>(orders.size());
+        int totalQuantity = 0;
+        for (StockDeltaEntity order : orders) {
+            if (logStatus.containsKey(order.getOrderId())) {
+                log.info("SKU库存已扣减（幂等），跳过: orderId={}, activityId={}, goodsId={}", order.getOrderId(), activityId, goodsId);
+                continue;
+            }
+            pendingOrders.add(order);
+            totalQuantity += order.getQuantity();
+        }
+        if (pendingOrders.isEmpty()) return true;
+
+        // 2. 锁定库存行并检查可售库存
+        SkuActivity skuActivity = skuActivityDao.querySkuActivityForUpdate(activityId, goodsId);
+        if (skuActivity == null) {
+            log.error("SKU不存在: activityId={}, goodsId={}", activityId, goodsId);
+            return false;
+        }
+        int beforeSaleable = skuActivity.getSaleableInventory();
+        int beforeFrozen = skuActivity.getFrozenInventory();
+        int lockVersion = skuActivity.getLockVersion();
+        if (beforeSaleable - beforeFrozen < totalQuantity) {
+            log.warn("合并扣减SKU库存-库存不足: activityId={}, goodsId={}, saleable={}, frozen={}, need={}",
+                    activityId, goodsId, beforeSaleable, beforeFrozen, totalQuantity);
+            return false;
+        }
+
+        // 3. 一次 UPDATE 冻结整批库存
+        int updateCount = skuActivityDao.freezeSkuStockBatch(activityId, goodsId, totalQuantity);
+        if (updateCount <= 0) {
+            log.warn("合并扣减SKU库存失败: activityId={}, goodsId={}, quantity={}", activityId, goodsId, totalQuantity);
+            return false;
+        }
+
+        // 4. 批量插入流水（唯一索引冲突时抛出异常回滚整批）
+        List<InventoryDeductionLog> logEntries = new ArrayList<>(pendingOrders.size());
+        int frozen = beforeFrozen;
+        for (StockDeltaEntity order : pendingOrders) {
+            logEntries.add(InventoryDeductionLog.builder()
+                    .orderId(order.getOrderId())
+                    .userId(order.getUserId())
+                    .activityId(activityId)
+                    .goodsId(goodsId)
+                    .quantity(order.getQuantity())
+                    .beforeSaleable(beforeSaleable)
+                    .afterSaleable(beforeSaleable) // TCC模型，下单时可售库存不变
+                    .beforeFrozen(frozen)
+                    .afterFrozen(frozen + order.getQuantity())
+                    .lockVersion(lockVersion)
+                    .status("SUCCESS")
+                    .build());
+            frozen += order.getQuantity();
+        }
+        inventoryDeductionLogDao.insertBatch(logEntries);
+
+        log.info("合并扣减SKU库存成功: activityId={}, goodsId={}, orders={}, quantity={}, version={}",
+                activityId, goodsId, pendingOrders.size(), totalQuantity, lockVersion);
+        return true;
+    }
+
     @Override
     public boolean confirmSkuStock(Long activityId, String goodsId, Integer quantity) {
         return skuActivityDao.confirmSkuStock(activityId, goodsId, quantity) > 0;
@@ -143,6 +344,7 @@ public class SkuRepository implements ISkuRepository {
      * 2. 记录 Redis 流水
      * 3. 不扣减数据库库存
      */
+    @DbConcurrencyLimit(DbOperationClass.STOCK)
     @Override
     @Transactional(rollbackFor = Exception.class)
     public boolean tryDecreaseInventory(Long activityId, String goodsId, Integer quantity, String orderId, String userId) {
@@ -228,6 +430,7 @@ public class SkuRepository implements ISkuRepository {
      * 2. 减少冻结库存
      * 3. 更新流水状态为 CONFIRM
      */
+    @DbConcurrencyLimit(DbOperationClass.STOCK)
     @Override
     @Transactional(rollbackFor = Exception.class)
     public boolean confirmDecreaseInventory(Long activityId, String goodsId, Integer quantity, String orderId) {
@@ -261,43 +464,87 @@ public class SkuRepository implements ISkuRepository {
     }
 
     /**
-     * TCC Cancel：取消扣减库存（回滚 Redis 库存）
+     * TCC Cancel：合并释放冻结库存
      * 
-     * 对标 NFTurbo 的 cancelDecreaseInventory
+     * 对标 NFTurbo 的 cancelDecreaseInventory（数据库部分），Redis 库存由调用方按准入标识回滚
      * 
      * 实现：
-     * 1. 回滚 Redis 库存
-     * 2. 删除 Redis 流水
-     * 3. 释放数据库冻结库存
+     * 1. 锁定库存行，与冻结（decreaseSkuStockBatch）、同一 SKU 的其他释放串行
+     * 2. 查询流水，只释放仍为冻结状态（SUCCESS）的订单；已是 CANCEL 说明已释放
+     * 3. 没有流水说明尚未冻结（空回滚），写入 CANCEL 流水防悬挂：迟到的冻结按流水幂等跳过
+     * 4. 一次 UPDATE 释放合计数量，流水批量更新为 CANCEL
      */
+    @DbConcurrencyLimit(DbOperationClass.STOCK)
     @Override
-    public boolean cancelDecreaseInventory(Long activityId, String goodsId, Integer quantity, String orderId) {
-        // 1. 释放数据库冻结库存
-        int updateCount = skuActivityDao.releaseSkuStock(activityId, goodsId, quantity);
-        if (updateCount <= 0) {
-            log.warn("TCC Cancel-释放冻结库存失败: orderId={}, activityId={}, goodsId={}", 
-                    orderId, activityId, goodsId);
+    @Transactional(rollbackFor = Exception.class)
+    public boolean releaseSkuStockBatch(Long activityId, String goodsId, List<StockDeltaEntity> deltas) {
+        if (null == deltas || deltas.isEmpty()) return true;
+
+        // 1. 锁定库存行
+        SkuActivity skuActivity = skuActivityDao.querySkuActivityForUpdate(activityId, goodsId);
+        if (skuActivity == null) {
+            log.error("TCC Cancel-SKU不存在: activityId={}, goodsId={}", activityId, goodsId);
+            return false;
         }
 
-        // 2. 更新流水状态为 CANCEL
-        inventoryDeductionLogDao.updateStatus(orderId, "CANCEL");
+        // 2. 只释放仍为冻结状态的订单
+        Set<String> userIds = new HashSet<>();
+        List<String> orderIds = new ArrayList<>(deltas.size());
+        for (StockDeltaEntity delta : deltas) {
+            userIds.add(delta.getUserId());
+            orderIds.add(delta.getOrderId());
+        }
+        Set<String> loggedOrderIds = new HashSet<>();
+        List<String> frozenUserIds = new ArrayList<>();
+        List<String> frozenOrderIds = new ArrayList<>();
+        int totalQuantity = 0;
+        for (InventoryDeductionLog logEntry : inventoryDeductionLogDao.queryByUserIdsAndOrderIds(new ArrayList<>(userIds), orderIds)) {
+            loggedOrderIds.add(logEntry.getOrderId());
+            if (!"SUCCESS".equals(logEntry.getStatus())) continue;
+            frozenUserIds.add(logEntry.getUserId());
+            frozenOrderIds.add(logEntry.getOrderId());
+            totalQuantity += logEntry.getQuantity();
+        }
 
-        // 3. 回滚 Redis 库存
-        try {
-            String goodsStockKey = GOODS_STOCK_KEY_PREFIX + activityId + "_" + goodsId;
-            String goodsStockLogKey = GOODS_STOCK_LOG_KEY_PREFIX + activityId + "_" + goodsId;
-            String identifier = "CANCEL_" + orderId;
-            
-            Long rollbackResult = redisAdapter.increaseStockWithLog(goodsStockKey, goodsStockLogKey, identifier, quantity);
-            log.info("TCC Cancel-Redis库存回滚成功: orderId={}, activityId={}, goodsId={}, quantity={}, 回滚后库存={}", 
-                    orderId, activityId, goodsId, quantity, rollbackResult);
-        } catch (Exception e) {
-            log.error("TCC Cancel-Redis库存回滚失败: orderId={}, activityId={}, goodsId={}", 
-                    orderId, activityId, goodsId, e);
+        // 3. 空回滚：写入 CANCEL 流水，不改变库存
+        List<InventoryDeductionLog> cancelLogs = new ArrayList<>();
+        for (StockDeltaEntity delta : deltas) {
+            if (!loggedOrderIds.add(delta.getOrderId())) continue;
+            cancelLogs.add(InventoryDeductionLog.builder()
+                    .orderId(delta.getOrderId())
+                    .userId(delta.getUserId())
+                    .activityId(activityId)
+                    .goodsId(goodsId)
+                    .quantity(delta.getQuantity())
+                    .beforeSaleable(skuActivity.getSaleableInventory())
+                    .afterSaleable(skuActivity.getSaleableInventory())
+                    .beforeFrozen(skuActivity.getFrozenInventory())
+                    .afterFrozen(skuActivity.getFrozenInventory())
+                    .lockVersion(skuActivity.getLockVersion())
+                    .status("CANCEL")
+                    .build());
+        }
+        if (!cancelLogs.isEmpty()) {
+            inventoryDeductionLogDao.insertBatch(cancelLogs);
+            log.info("TCC Cancel-空回滚，写入防悬挂流水: activityId={}, goodsId={}, size={}", activityId, goodsId, cancelLogs.size());
+        }
+        if (frozenOrderIds.isEmpty()) {
+            return true;
         }
 
-        log.info("TCC Cancel-取消扣减库存成功: orderId={}, activityId={}, goodsId={}, quantity={}", 
-                orderId, activityId, goodsId, quantity);
+        // 4. 释放冻结库存，流水更新为 CANCEL
+        int updateCount = skuActivityDao.releaseSkuStock(activityId, goodsId, totalQuantity);
+        if (updateCount <= 0) {
+            log.warn("TCC Cancel-释放冻结库存失败: activityId={}, goodsId={}, quantity={}", activityId, goodsId, totalQuantity);
+            return false;
+        }
+        int logCount = inventoryDeductionLogDao.updateStatusBatch(frozenUserIds, frozenOrderIds, "SUCCESS", "CANCEL");
+        if (logCount != frozenOrderIds.size()) {
+            throw new IllegalStateException("TCC Cancel-更新流水数量不一致: expected=" + frozenOrderIds.size() + ", updateCount=" + logCount);
+        }
+
+        log.info("TCC Cancel-释放冻结库存成功: activityId={}, goodsId={}, orders={}, quantity={}",
+                activityId, goodsId, frozenOrderIds.size(), totalQuantity);
         return true;
     }
 
@@ -313,6 +560,7 @@ public class SkuRepository implements ISkuRepository {
      * 4. 原子操作：扣减商品库存 + 插入流水
      * 5. 如果teamId不为空，增加队伍人数（updateAddLockCount）
      */
+    @DbConcurrencyLimit(DbOperationClass.STOCK)
     @Override
     @Transactional(rollbackFor = Exception.class)
     public boolean decreaseSkuStockAndIncreaseTeamCount(Long activityId, String goodsId, Integer quantity,
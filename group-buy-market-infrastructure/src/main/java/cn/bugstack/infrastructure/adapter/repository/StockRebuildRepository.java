@@ -0,0 +1,114 @@
+package cn.bugstack.infrastructure.adapter.repository;
+
+import cn.bugstack.domain.trade.adapter.repository.IStockRebuildRepository;
+import cn.bugstack.domain.trade.model.entity.StockRebuildSkuEntity;
+import cn.bugstack.domain.trade.model.entity.StockRebuildTeamEntity;
+import cn.bugstack.domain.trade.model.valobj.TradeOrderStatusEnumVO;
+import cn.bugstack.infrastructure.dao.IGroupBuyOrderDao;
+import cn.bugstack.infrastructure.dao.IGroupBuyOrderListDao;
+import cn.bugstack.infrastructure.dao.ISkuActivityDao;
+import cn.bugstack.infrastructure.dao.po.GroupBuyOrder;
+import cn.bugstack.infrastructure.dao.po.GroupBuyOrderList;
+import cn.bugstack.infrastructure.dao.po.SkuActivity;
+import org.springframework.stereotype.Repository;
+
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 库存重建仓储实现（Infrastructure层）
+ *
+ * @author liang.tian
+ */
+@Repository
+public class StockRebuildRepository implements IStockRebuildRepository {
+
+    @Resource
+    private ISkuActivityDao skuActivityDao;
+    @Resource
+    private IGroupBuyOrderDao groupBuyOrderDao;
+    @Resource
+    private IGroupBuyOrderListDao groupBuyOrderListDao;
+
+    @Override
+    public long queryActiveSkuMaxId() {
+        Long maxId = skuActivityDao.queryActiveSkuActivityMaxId();
+        return null == maxId ? 0L : maxId;
+    }
+
+    @Override
+    public List<StockRebuildSkuEntity> queryActiveSkuList(long fromId, long toId) {
+        return toSkuEntities(skuActivityDao.queryActiveSkuActivityListByIdRange(fromId, toId));
+    }
+
+    @Override
+    public long queryValidTeamMaxId() {
+        Long maxId = groupBuyOrderDao.queryValidTeamMaxId();
+        return null == maxId ? 0L : maxId;
+    }
+
+    @Override
+    public List<StockRebuildTeamEntity> queryValidTeamList(long fromId, long toId) {
+        return toTeamEntities(groupBuyOrderDao.queryValidTeamListByIdRange(fromId, toId));
+    }
+
+    @Override
+    public Map<String, Integer> queryTryOrderCountBySku() {
+        Map<String, Integer> counts = new HashMap<>();
+        for (GroupBuyOrderList order : groupBuyOrderListDao.queryOrderListByStatus(TradeOrderStatusEnumVO.TRY.getCode())) {
+            counts.merge(order.getActivityId() + "_" + order.getGoodsId(), 1, Integer::sum);
+        }
+        return counts;
+    }
+
+    @Override
+    public Set<String> queryExistingOrderIds(List<String> userIds, List<String> orderIds) {
+        if (null == userIds || userIds.isEmpty() || null == orderIds || orderIds.isEmpty()) {
+            return new HashSet<>();
+        }
+        return new HashSet<>(groupBuyOrderListDao.queryOrderIdsByUserIdsAndOrderIds(userIds, orderIds));
+    }
+
+    @Override
+    public List<StockRebuildSkuEntity> queryActivitySkuList(Long activityId) {
+        return toSkuEntities(skuActivityDao.querySkuActivityListByActivityId(activityId));
+    }
+
+    @Override
+    public List<StockRebuildTeamEntity> queryJoinableTeamList(Long activityId) {
+        return toTeamEntities(groupBuyOrderDao.queryJoinableTeamListByActivityId(activityId));
+    }
+
+    private List<StockRebuildSkuEntity> toSkuEntities(List<SkuActivity> skuActivities) {
+        List<StockRebuildSkuEntity> entities = new ArrayList<>(skuActivities.size());
+        for (SkuActivity skuActivity : skuActivities) {
+            entities.add(StockRebuildSkuEntity.builder()
+                    .activityId(skuActivity.getActivityId())
+                    .goodsId(skuActivity.getGoodsId())
+                    .saleableInventory(skuActivity.getSaleableInventory())
+                    .frozenInventory(skuActivity.getFrozenInventory())
+                    .build());
+        }
+        return entities;
+    }
+
+    private List<StockRebuildTeamEntity> toTeamEntities(List<GroupBuyOrder> groupBuyOrders) {
+        List<StockRebuildTeamEntity> entities = new ArrayList<>(groupBuyOrders.size());
+        for (GroupBuyOrder groupBuyOrder : groupBuyOrders) {
+            entities.add(StockRebuildTeamEntity.builder()
+                    .activityId(groupBuyOrder.getActivityId())
+                    .teamId(groupBuyOrder.getTeamId())
+                    .targetCount(groupBuyOrder.getTargetCount())
+                    .lockCount(groupBuyOrder.getLockCount())
+                    .completeCount(groupBuyOrder.getCompleteCount())
+                    .build());
+        }
+        return entities;
+    }
+
+}
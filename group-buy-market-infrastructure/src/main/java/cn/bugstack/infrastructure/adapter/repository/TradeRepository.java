@@ -1,6 +1,7 @@
 package cn.bugstack.infrastructure.adapter.repository;
 
 import cn.bugstack.domain.activity.model.entity.UserGroupBuyOrderDetailEntity;
+import cn.bugstack.domain.trade.adapter.port.IRedisAdapter;
 import cn.bugstack.domain.trade.adapter.repository.ISkuRepository;
 import cn.bugstack.domain.trade.adapter.repository.ITradeRepository;
 import cn.bugstack.domain.trade.model.aggregate.GroupBuyOrderAggregate;
@@ -10,6 +11,9 @@ import cn.bugstack.domain.trade.model.aggregate.GroupBuyRefundAggregate;
 import cn.bugstack.domain.trade.model.aggregate.GroupBuyTeamSettlementAggregate;
 import cn.bugstack.domain.trade.model.entity.*;
 import cn.bugstack.domain.trade.model.valobj.*;
+import cn.bugstack.domain.trade.service.lock.factory.TradeLockRuleFilterFactory;
+import cn.bugstack.infrastructure.concurrency.DbConcurrencyLimit;
+import cn.bugstack.infrastructure.concurrency.DbOperationClass;
 import cn.bugstack.infrastructure.dao.IGroupBuyActivityDao;
 import cn.bugstack.infrastructure.dao.IGroupBuyOrderDao;
 import cn.bugstack.infrastructure.dao.IGroupBuyOrderListDao;
@@ -19,7 +23,11 @@ import cn.bugstack.infrastructure.dao.po.GroupBuyOrder;
 import cn.bugstack.infrastructure.dao.po.GroupBuyOrderList;
 import cn.bugstack.infrastructure.dao.po.NotifyTask;
 import cn.bugstack.infrastructure.dcc.DCCService;
+import cn.bugstack.infrastructure.readwrite.ReadYourWrites;
+import cn.bugstack.infrastructure.readwrite.ReplicaRead;
 import cn.bugstack.infrastructure.redis.IRedisService;
+import cn.bugstack.infrastructure.redis.team.JoinableTeamDirectory;
+import cn.bugstack.infrastructure.redis.team.TeamMemberIndex;
 import cn.bugstack.types.common.Constants;
 import cn.bugstack.types.enums.ActivityStatusEnumVO;
 import cn.bugstack.types.enums.GroupBuyOrderEnumVO;
@@ -71,6 +79,21 @@ public class TradeRepository implements ITradeRepository {
     @Resource
     private ISkuRepository skuRepository;  // 新增注入
 
+    @Resource
+    private IRedisAdapter redisAdapter;
+
+    @Resource
+    private JoinableTeamDirectory joinableTeamDirectory;
+
+    @Resource
+    private TeamMemberIndex teamMemberIndex;
+
+    @Resource
+    private ReadYourWrites readYourWrites;
+
+    // 用户参与次数在活动结束后保留的时间，覆盖活动结束前最后一批订单的退单
+    private static final long USER_TAKE_COUNT_RETAIN_MS = 24 * 60 * 60 * 1000L;
+
     @Override
     public MarketPayOrderEntity queryMarketPayOrderEntityByOutTradeNo(String userId, String outTradeNo) {
         GroupBuyOrderList groupBuyOrderListReq = new GroupBuyOrderList();
@@ -140,6 +163,7 @@ public class TradeRepository implements ITradeRepository {
                 .build();
     }
 
+    @DbConcurrencyLimit(DbOperationClass.ORDER_LOCK)
     @Transactional(timeout = 500)
     @Override
     public MarketPayOrderEntity lockMarketPayOrder(GroupBuyOrderAggregate groupBuyOrderAggregate) {
@@ -152,7 +176,8 @@ public class TradeRepository implements ITradeRepository {
 
         // 判断是否有团 - teamId 为空 - 新团、为不空 - 老团
         String teamId = payActivityEntity.getTeamId();
-        if (StringUtils.isBlank(teamId)) {
+        boolean newTeam = StringUtils.isBlank(teamId);
+        if (newTeam) {
             // 使用 RandomStringUtils.randomNumeric 替代公司里使用的雪花算法UUID
             teamId = RandomStringUtils.randomNumeric(8);
 
@@ -216,6 +241,11 @@ public class TradeRepository implements ITradeRepository {
         } catch (DuplicateKeyException e) {
             throw new AppException(ResponseCode.INDEX_EXCEPTION);
         }
+        readYourWrites.markWrite(userEntity.getUserId());
+
+        // 更新队伍成员索引与可参与队伍目录
+        teamMemberIndex.addMember(teamId, orderId, userEntity.getUserId());
+        updateJoinableTeam(newTeam, groupBuyOrderListReq, payActivityEntity.getTargetCount(), payActivityEntity);
 
         return MarketPayOrderEntity.builder()
                 .orderId(orderId)
@@ -238,6 +268,7 @@ public class TradeRepository implements ITradeRepository {
      * 3. 只创建订单（GroupBuyOrderList）
      * 4. 生成虚拟 teamId（用于兼容现有数据结构）
      */
+    @DbConcurrencyLimit(DbOperationClass.ORDER_LOCK)
     @Override
     public MarketPayOrderEntity lockHotGoodsOrder(HotGoodsOrderAggregate hotGoodsOrderAggregate) {
         // 聚合对象信息
@@ -245,11 +276,12 @@ public class TradeRepository implements ITradeRepository {
         PayActivityEntity payActivityEntity = hotGoodsOrderAggregate.getPayActivityEntity();
         PayDiscountEntity payDiscountEntity = hotGoodsOrderAggregate.getPayDiscountEntity();
         
-        // 优化：如果 userTakeOrderCount 为 null，在订单创建时查询（减少本地事务IO操作）
+        // 参与次数在本地事务的库存准入中已校验并累加，userTakeOrderCount 为准入前的累计锁单次数
+        // 兼容未携带 userTakeOrderCount 的消息：查询 Redis 计数（只用于构建 bizId，不再累加）
         Integer userTakeOrderCount = hotGoodsOrderAggregate.getUserTakeOrderCount();
         if (userTakeOrderCount == null) {
             // 查询用户在一个拼团活动上参与的次数（用于构建数据库唯一索引）
-            userTakeOrderCount = queryOrderCountByActivityId(payActivityEntity.getActivityId(), userEntity.getUserId());
+            userTakeOrderCount = queryUserTakeCount(payActivityEntity.getActivityId(), userEntity.getUserId(), payActivityEntity.getEndTime()).getSeq();
             log.info("订单创建时查询用户参与次数: activityId={}, userId={}, userTakeOrderCount={}", 
                     payActivityEntity.getActivityId(), userEntity.getUserId(), userTakeOrderCount);
         }
@@ -311,6 +343,7 @@ public class TradeRepository implements ITradeRepository {
      * 3. 创建订单
      * 4. 支持拼团玩法
      */
+    @DbConcurrencyLimit(DbOperationClass.ORDER_LOCK)
     @Override
     public MarketPayOrderEntity lockNormalGoodsOrder(NormalGoodsOrderAggregate normalGoodsOrderAggregate) {
         // 聚合对象信息
@@ -322,7 +355,8 @@ public class TradeRepository implements ITradeRepository {
 
         // 判断是否有团 - teamId 为空 - 新团、为不空 - 老团
         String teamId = normalGoodsOrderAggregate.getTeamId();
-        if (StringUtils.isBlank(teamId)) {
+        boolean newTeam = StringUtils.isBlank(teamId);
+        if (newTeam) {
             // 使用 RandomStringUtils.randomNumeric 替代公司里使用的雪花算法UUID
             teamId = RandomStringUtils.randomNumeric(8);
 
@@ -385,6 +419,11 @@ public class TradeRepository implements ITradeRepository {
         } catch (DuplicateKeyException e) {
             throw new AppException(ResponseCode.INDEX_EXCEPTION);
         }
+        readYourWrites.markWrite(userEntity.getUserId());
+
+        // 更新队伍成员索引与可参与队伍目录
+        teamMemberIndex.addMember(teamId, orderId, userEntity.getUserId());
+        updateJoinableTeam(newTeam, groupBuyOrderListReq, normalGoodsOrderAggregate.getTargetCount() != null ? normalGoodsOrderAggregate.getTargetCount() : payActivityEntity.getTargetCount(), payActivityEntity);
 
         return MarketPayOrderEntity.builder()
                 .orderId(orderId)
@@ -406,18 +445,71 @@ public class TradeRepository implements ITradeRepository {
      * 2. 创建队伍（如果需要）
      * 3. 更新队伍锁单数量（如果需要）
      */
+    @DbConcurrencyLimit(DbOperationClass.ORDER_LOCK)
     @Override
     public MarketPayOrderEntity tryOrder(NormalGoodsOrderAggregate normalGoodsOrderAggregate) {
+        String userId = normalGoodsOrderAggregate.getUserEntity().getUserId();
+        boolean newTeam = StringUtils.isBlank(normalGoodsOrderAggregate.getTeamId());
+        String teamId = occupyTryTeam(normalGoodsOrderAggregate);
+
+        GroupBuyOrderList groupBuyOrderListReq = buildTryOrderList(normalGoodsOrderAggregate, teamId);
+        try {
+            // 写入订单记录（状态为 TRY）
+            groupBuyOrderListDao.insert(groupBuyOrderListReq);
+        } catch (DuplicateKeyException e) {
+            throw new AppException(ResponseCode.INDEX_EXCEPTION);
+        }
+        readYourWrites.markWrite(userId);
+
+        return afterTryOrder(normalGoodsOrderAggregate, groupBuyOrderListReq, newTeam);
+    }
+
+    /**
+     * TCC Try：批量尝试创建订单（购物车锁单）
+     * <p>
+     * 同一本地事务内逐个创建/更新队伍，订单记录多行插入（同一用户位于同一分片，一条 INSERT），任一失败整体回滚。
+     */
+    @DbConcurrencyLimit(DbOperationClass.ORDER_LOCK)
+    @Transactional(timeout = 5000)
+    @Override
+    public List<MarketPayOrderEntity> tryOrders(List<NormalGoodsOrderAggregate> normalGoodsOrderAggregates) {
+        List<GroupBuyOrderList> groupBuyOrderLists = new ArrayList<>(normalGoodsOrderAggregates.size());
+        List<Boolean> newTeams = new ArrayList<>(normalGoodsOrderAggregates.size());
+        for (NormalGoodsOrderAggregate normalGoodsOrderAggregate : normalGoodsOrderAggregates) {
+            newTeams.add(StringUtils.isBlank(normalGoodsOrderAggregate.getTeamId()));
+            String teamId = occupyTryTeam(normalGoodsOrderAggregate);
+            groupBuyOrderLists.add(buildTryOrderList(normalGoodsOrderAggregate, teamId));
+        }
+        try {
+            // 写入订单记录（状态为 TRY）
+            groupBuyOrderListDao.insertList(groupBuyOrderLists);
+        } catch (DuplicateKeyException e) {
+            throw new AppException(ResponseCode.INDEX_EXCEPTION);
+        }
+        readYourWrites.markWrite(normalGoodsOrderAggregates.get(0).getUserEntity().getUserId());
+
+        List<MarketPayOrderEntity> marketPayOrderEntities = new ArrayList<>(normalGoodsOrderAggregates.size());
+        for (int i = 0; i < normalGoodsOrderAggregates.size(); i++) {
+            marketPayOrderEntities.add(afterTryOrder(normalGoodsOrderAggregates.get(i), groupBuyOrderLists.get(i), newTeams.get(i)));
+        }
+        return marketPayOrderEntities;
+    }
+
+    /**
+     * TCC Try：创建队伍（新团）或更新队伍锁单数量（老团）
+     *
+     * @return 队伍ID
+     */
+    private String occupyTryTeam(NormalGoodsOrderAggregate normalGoodsOrderAggregate) {
         // 聚合对象信息
-        UserEntity userEntity = normalGoodsOrderAggregate.getUserEntity();
         PayActivityEntity payActivityEntity = normalGoodsOrderAggregate.getPayActivityEntity();
         PayDiscountEntity payDiscountEntity = normalGoodsOrderAggregate.getPayDiscountEntity();
         NotifyConfigVO notifyConfigVO = payDiscountEntity.getNotifyConfigVO();
-        Integer userTakeOrderCount = normalGoodsOrderAggregate.getUserTakeOrderCount();
 
         // 判断是否有团 - teamId 为空 - 新团、为不空 - 老团
         String teamId = normalGoodsOrderAggregate.getTeamId();
-        if (StringUtils.isBlank(teamId)) {
+        boolean newTeam = StringUtils.isBlank(teamId);
+        if (newTeam) {
             // 使用 RandomStringUtils.randomNumeric 替代公司里使用的雪花算法UUID
             teamId = RandomStringUtils.randomNumeric(8);
 
@@ -478,6 +570,14 @@ public class TradeRepository implements ITradeRepository {
                 }
             }
         }
+        return teamId;
+    }
+
+    private GroupBuyOrderList buildTryOrderList(NormalGoodsOrderAggregate normalGoodsOrderAggregate, String teamId) {
+        UserEntity userEntity = normalGoodsOrderAggregate.getUserEntity();
+        PayActivityEntity payActivityEntity = normalGoodsOrderAggregate.getPayActivityEntity();
+        PayDiscountEntity payDiscountEntity = normalGoodsOrderAggregate.getPayDiscountEntity();
+        Integer userTakeOrderCount = normalGoodsOrderAggregate.getUserTakeOrderCount();
 
         // 日期处理
         Date currentDate = new Date();
@@ -485,11 +585,10 @@ public class TradeRepository implements ITradeRepository {
         calendar.setTime(currentDate);
         calendar.add(Calendar.MINUTE, payActivityEntity.getValidTime());
 
-        String orderId = normalGoodsOrderAggregate.getOrderId();
-        GroupBuyOrderList groupBuyOrderListReq = GroupBuyOrderList.builder()
+        return GroupBuyOrderList.builder()
                 .userId(userEntity.getUserId())
                 .teamId(teamId)
-                .orderId(orderId)
+                .orderId(normalGoodsOrderAggregate.getOrderId())
                 .activityId(payActivityEntity.getActivityId())
                 .startTime(currentDate)
                 .endTime(calendar.getTime())
@@ -504,12 +603,20 @@ public class TradeRepository implements ITradeRepository {
                 // 构建 bizId 唯一值；活动id_用户id_参与次数累加
                 .bizId(payActivityEntity.getActivityId() + Constants.UNDERLINE + userEntity.getUserId() + Constants.UNDERLINE + (userTakeOrderCount + 1))
                 .build();
-        try {
-            // 写入订单记录（状态为 TRY）
-            groupBuyOrderListDao.insert(groupBuyOrderListReq);
-        } catch (DuplicateKeyException e) {
-            throw new AppException(ResponseCode.INDEX_EXCEPTION);
-        }
+    }
+
+    /**
+     * 订单写入后：更新队伍成员索引与可参与队伍目录，返回 TRY 状态订单
+     */
+    private MarketPayOrderEntity afterTryOrder(NormalGoodsOrderAggregate normalGoodsOrderAggregate, GroupBuyOrderList groupBuyOrderListReq, boolean newTeam) {
+        PayActivityEntity payActivityEntity = normalGoodsOrderAggregate.getPayActivityEntity();
+        PayDiscountEntity payDiscountEntity = normalGoodsOrderAggregate.getPayDiscountEntity();
+        String teamId = groupBuyOrderListReq.getTeamId();
+        String orderId = groupBuyOrderListReq.getOrderId();
+
+        // 更新队伍成员索引与可参与队伍目录
+        teamMemberIndex.addMember(teamId, orderId, groupBuyOrderListReq.getUserId());
+        updateJoinableTeam(newTeam, groupBuyOrderListReq, normalGoodsOrderAggregate.getTargetCount() != null ? normalGoodsOrderAggregate.getTargetCount() : payActivityEntity.getTargetCount(), payActivityEntity);
 
         return MarketPayOrderEntity.builder()
                 .orderId(orderId)
@@ -538,6 +645,34 @@ public class TradeRepository implements ITradeRepository {
         }
     }
 
+    @Override
+    public List<NormalGoodsConfirmEntity> queryTimeoutTryOrderList(long tryTimeoutMillis, int limit) {
+        Date before = new Date(System.currentTimeMillis() - tryTimeoutMillis);
+        List<GroupBuyOrderList> groupBuyOrderLists = groupBuyOrderListDao.queryTimeoutTryOrderList(
+                TradeOrderStatusEnumVO.TRY.getCode(), before, limit);
+        if (null == groupBuyOrderLists || groupBuyOrderLists.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        List<NormalGoodsConfirmEntity> orders = new ArrayList<>(groupBuyOrderLists.size());
+        for (GroupBuyOrderList groupBuyOrderList : groupBuyOrderLists) {
+            Integer validTime = null;
+            if (null != groupBuyOrderList.getStartTime() && null != groupBuyOrderList.getEndTime()) {
+                validTime = (int) TimeUnit.MILLISECONDS.toMinutes(groupBuyOrderList.getEndTime().getTime() - groupBuyOrderList.getStartTime().getTime());
+            }
+            orders.add(NormalGoodsConfirmEntity.builder()
+                    .orderId(groupBuyOrderList.getOrderId())
+                    .userId(groupBuyOrderList.getUserId())
+                    .activityId(groupBuyOrderList.getActivityId())
+                    .goodsId(groupBuyOrderList.getGoodsId())
+                    .teamId(groupBuyOrderList.getTeamId())
+                    .quantity(1)
+                    .validTime(validTime)
+                    .build());
+        }
+        return orders;
+    }
+
     /**
      * TCC Cancel：取消订单（将订单状态改为 CANCEL）
      * 
@@ -555,6 +690,24 @@ public class TradeRepository implements ITradeRepository {
         }
     }
 
+    /**
+     * TCC Cancel：条件更新 TRY -> CANCEL
+     * 
+     * UPDATE 持有订单行锁并校验状态，与 Confirm 组提交（SELECT ... FOR UPDATE 后只确认 TRY 订单）串行，
+     * 同一订单只有一方能更新成功
+     */
+    @Override
+    public boolean cancelTryOrder(String userId, String orderId) {
+        int updateCount = groupBuyOrderListDao.updateOrderStatusBatch(Collections.singletonList(userId), Collections.singletonList(orderId),
+                TradeOrderStatusEnumVO.TRY.getCode(), TradeOrderStatusEnumVO.CANCEL.getCode());
+        if (updateCount > 0) {
+            log.info("TCC Cancel-取消TRY订单成功: orderId={}", orderId);
+            return true;
+        }
+        log.info("TCC Cancel-订单不是TRY状态，未取消: orderId={}", orderId);
+        return false;
+    }
+
     @Override
     public GroupBuyProgressVO queryGroupBuyProgress(String teamId) {
         GroupBuyOrder groupBuyOrder = groupBuyOrderDao.queryGroupBuyProgress(teamId);
@@ -593,6 +746,39 @@ public class TradeRepository implements ITradeRepository {
         return groupBuyOrderListDao.queryOrderCountByActivityId(groupBuyOrderListReq);
     }
 
+    @Override
+    public UserTakeCountVO queryUserTakeCount(Long activityId, String userId, Date endTime) {
+        String userTakeKey = TradeLockRuleFilterFactory.generateUserTakeKey(activityId, userId);
+        UserTakeCountVO userTakeCountVO = redisAdapter.getUserTakeCount(userTakeKey);
+        if (null != userTakeCountVO) {
+            return userTakeCountVO;
+        }
+
+        // 冷启动：从数据库统计后加载，并发加载时以先写入的为准
+        GroupBuyOrderList groupBuyOrderListReq = new GroupBuyOrderList();
+        groupBuyOrderListReq.setActivityId(activityId);
+        groupBuyOrderListReq.setUserId(userId);
+        Integer seq = groupBuyOrderListDao.queryOrderCountByActivityId(groupBuyOrderListReq);
+        Integer takeCount = groupBuyOrderListDao.queryActiveOrderCountByActivityId(groupBuyOrderListReq);
+
+        long ttlMillis = USER_TAKE_COUNT_RETAIN_MS;
+        if (null != endTime) {
+            ttlMillis += Math.max(endTime.getTime() - System.currentTimeMillis(), 0L);
+        }
+
+        userTakeCountVO = redisAdapter.loadUserTakeCount(userTakeKey,
+                null == takeCount ? 0 : takeCount, null == seq ? 0 : seq, ttlMillis);
+        log.info("加载用户参与次数 activityId:{} userId:{} take:{} seq:{}", activityId, userId, userTakeCountVO.getTakeCount(), userTakeCountVO.getSeq());
+        return userTakeCountVO;
+    }
+
+    @Override
+    public void releaseUserTakeCount(Long activityId, String userId, String orderId) {
+        String userTakeKey = TradeLockRuleFilterFactory.generateUserTakeKey(activityId, userId);
+        boolean released = redisAdapter.releaseUserTakeCount(userTakeKey, orderId);
+        log.info("退单扣回用户参与次数 activityId:{} userId:{} orderId:{} released:{}", activityId, userId, orderId, released);
+    }
+
     @Override
     public GroupBuyTeamEntity queryGroupBuyTeamByTeamId(String teamId) {
         GroupBuyOrder groupBuyOrder = groupBuyOrderDao.queryGroupBuyTeamByTeamId(teamId);
@@ -614,6 +800,7 @@ public class TradeRepository implements ITradeRepository {
                 .build();
     }
 
+    @DbConcurrencyLimit(DbOperationClass.SETTLEMENT)
     @Transactional(timeout = 5000)
     @Override
     public NotifyTaskEntity settlementMarketPayOrder(GroupBuyTeamSettlementAggregate groupBuyTeamSettlementAggregate) {
@@ -633,6 +820,7 @@ public class TradeRepository implements ITradeRepository {
         if (1 != updateOrderListStatusCount) {
             throw new AppException(ResponseCode.UPDATE_ZERO);
         }
+        readYourWrites.markWrite(userEntity.getUserId());
 
         // 2. 更新拼团达成数量
         int updateAddCount = groupBuyOrderDao.updateAddCompleteCount(groupBuyTeamEntity.getTeamId());
@@ -647,8 +835,11 @@ public class TradeRepository implements ITradeRepository {
                 throw new AppException(ResponseCode.UPDATE_ZERO);
             }
 
+            // 已成团，移出可参与队伍目录
+            joinableTeamDirectory.remove(groupBuyTeamEntity.getActivityId(), groupBuyTeamEntity.getTeamId());
+
             // 查询拼团交易完成外部单号列表
-            List<String> outTradeNoList = groupBuyOrderListDao.queryGroupBuyCompleteOrderOutTradeNoListByTeamId(groupBuyTeamEntity.getTeamId());
+            List<String> outTradeNoList = queryGroupBuyCompleteOrderOutTradeNoList(groupBuyTeamEntity.getTeamId(), groupBuyTeamEntity.getTargetCount());
 
             // 拼团完成写入回调任务记录
             NotifyTask notifyTask = new NotifyTask();
@@ -680,14 +871,40 @@ public class TradeRepository implements ITradeRepository {
                     .build();
         }
 
+        joinableTeamDirectory.complete(groupBuyTeamEntity.getActivityId(), groupBuyTeamEntity.getTeamId());
         return null;
     }
 
+    /**
+     * 查询拼团完成的外部单号：按成员索引路由到成员所在分表；索引缺失或结果不完整（少于目标人数）时回退按队伍广播查询
+     */
+    private List<String> queryGroupBuyCompleteOrderOutTradeNoList(String teamId, Integer targetCount) {
+        List<String> memberUserIds = teamMemberIndex.queryMemberUserIds(teamId);
+        if (null != memberUserIds) {
+            List<String> outTradeNoList = groupBuyOrderListDao.queryGroupBuyCompleteOrderOutTradeNoListByTeamIdAndUserIds(teamId, memberUserIds);
+            if (null != targetCount && outTradeNoList.size() >= targetCount) {
+                return outTradeNoList;
+            }
+            log.warn("队伍成员索引不完整，回退广播查询: teamId={}, targetCount={}, indexed={}", teamId, targetCount, outTradeNoList.size());
+        }
+        return groupBuyOrderListDao.queryGroupBuyCompleteOrderOutTradeNoListByTeamId(teamId);
+    }
+
+    private void updateJoinableTeam(boolean newTeam, GroupBuyOrderList groupBuyOrderList, Integer targetCount, PayActivityEntity payActivityEntity) {
+        if (newTeam) {
+            joinableTeamDirectory.register(groupBuyOrderList.getActivityId(), groupBuyOrderList.getTeamId(), targetCount,
+                    payActivityEntity.getStartTime(), payActivityEntity.getEndTime(), groupBuyOrderList.getUserId(), groupBuyOrderList.getEndTime());
+        } else {
+            joinableTeamDirectory.lock(groupBuyOrderList.getActivityId(), groupBuyOrderList.getTeamId(), groupBuyOrderList.getUserId(), groupBuyOrderList.getEndTime());
+        }
+    }
+
     @Override
     public boolean isSCBlackIntercept(String source, String channel) {
         return dccService.isSCBlackIntercept(source, channel);
     }
 
+    @ReplicaRead
     @Override
     public List<NotifyTaskEntity> queryUnExecutedNotifyTaskList() {
         List<NotifyTask> notifyTaskList = notifyTaskDao.queryUnExecutedNotifyTaskList();
@@ -795,6 +1012,7 @@ public class TradeRepository implements ITradeRepository {
         redisService.incr(recoveryTeamStockKey);
     }
 
+    @DbConcurrencyLimit(DbOperationClass.SETTLEMENT)
     @Override
     @Transactional(timeout = 5000)
     public NotifyTaskEntity unpaid2Refund(GroupBuyRefundAggregate groupBuyRefundAggregate) {
@@ -811,6 +1029,7 @@ public class TradeRepository implements ITradeRepository {
             log.error("逆向流程-unpaid2Refund，更新订单状态(退单)失败 {} {}", tradeRefundOrderEntity.getUserId(), tradeRefundOrderEntity.getOrderId());
             throw new AppException(ResponseCode.UPDATE_ZERO);
         }
+        readYourWrites.markWrite(tradeRefundOrderEntity.getUserId());
 
         GroupBuyOrder groupBuyOrderReq = new GroupBuyOrder();
         groupBuyOrderReq.setTeamId(tradeRefundOrderEntity.getTeamId());
@@ -822,6 +1041,11 @@ public class TradeRepository implements ITradeRepository {
             throw new AppException(ResponseCode.UPDATE_ZERO);
         }
 
+        // 释放名额，队伍重新进入可参与队伍目录
+        teamMemberIndex.removeMember(tradeRefundOrderEntity.getTeamId(), tradeRefundOrderEntity.getOrderId());
+        joinableTeamDirectory.release(tradeRefundOrderEntity.getActivityId(), tradeRefundOrderEntity.getTeamId(),
+                tradeRefundOrderEntity.getUserId(), groupBuyProgress.getLockCount(), 0);
+
         // 本地消息任务表
         NotifyTask notifyTask = new NotifyTask();
         notifyTask.setActivityId(tradeRefundOrderEntity.getActivityId());
@@ -855,6 +1079,7 @@ public class TradeRepository implements ITradeRepository {
                 .build();
     }
 
+    @DbConcurrencyLimit(DbOperationClass.SETTLEMENT)
     @Override
     @Transactional(timeout = 5000)
     public NotifyTaskEntity paid2Refund(GroupBuyRefundAggregate groupBuyRefundAggregate) {
@@ -871,6 +1096,7 @@ public class TradeRepository implements ITradeRepository {
             log.error("逆向流程-paid2Refund，更新订单状态(退单)失败 {} {}", tradeRefundOrderEntity.getUserId(), tradeRefundOrderEntity.getOrderId());
             throw new AppException(ResponseCode.UPDATE_ZERO);
         }
+        readYourWrites.markWrite(tradeRefundOrderEntity.getUserId());
 
         GroupBuyOrder groupBuyOrderReq = new GroupBuyOrder();
         groupBuyOrderReq.setTeamId(tradeRefundOrderEntity.getTeamId());
@@ -883,6 +1109,11 @@ public class TradeRepository implements ITradeRepository {
             throw new AppException(ResponseCode.UPDATE_ZERO);
         }
 
+        // 释放名额，队伍重新进入可参与队伍目录
+        teamMemberIndex.removeMember(tradeRefundOrderEntity.getTeamId(), tradeRefundOrderEntity.getOrderId());
+        joinableTeamDirectory.release(tradeRefundOrderEntity.getActivityId(), tradeRefundOrderEntity.getTeamId(),
+                tradeRefundOrderEntity.getUserId(), groupBuyProgress.getLockCount(), groupBuyProgress.getCompleteCount());
+
         // 本地消息任务表
         NotifyTask notifyTask = new NotifyTask();
         notifyTask.setActivityId(tradeRefundOrderEntity.getActivityId());
@@ -916,6 +1147,7 @@ public class TradeRepository implements ITradeRepository {
                 .build();
     }
 
+    @DbConcurrencyLimit(DbOperationClass.SETTLEMENT)
     @Override
     @Transactional(timeout = 5000)
     public NotifyTaskEntity paidTeam2Refund(GroupBuyRefundAggregate groupBuyRefundAggregate) {
@@ -933,6 +1165,7 @@ public class TradeRepository implements ITradeRepository {
             log.error("逆向流程-paidTeam2Refund，更新订单状态(退单)失败 {} {}", tradeRefundOrderEntity.getUserId(), tradeRefundOrderEntity.getOrderId());
             throw new AppException(ResponseCode.UPDATE_ZERO);
         }
+        readYourWrites.markWrite(tradeRefundOrderEntity.getUserId());
 
         GroupBuyOrder groupBuyOrderReq = new GroupBuyOrder();
         groupBuyOrderReq.setTeamId(tradeRefundOrderEntity.getTeamId());
@@ -953,6 +1186,7 @@ public class TradeRepository implements ITradeRepository {
                 throw new AppException(ResponseCode.UPDATE_ZERO);
             }
         }
+        teamMemberIndex.removeMember(tradeRefundOrderEntity.getTeamId(), tradeRefundOrderEntity.getOrderId());
 
         // 本地消息任务表
         NotifyTask notifyTask = new NotifyTask();
@@ -1055,6 +1289,7 @@ public class TradeRepository implements ITradeRepository {
         }
     }
 
+    @ReplicaRead
     @Override
     public List<UserGroupBuyOrderDetailEntity> queryTimeoutUnpaidOrderList() {
         List<GroupBuyOrderList> groupBuyOrderLists = groupBuyOrderListDao.queryTimeoutUnpaidOrderList();
@@ -0,0 +1,191 @@
+package cn.bugstack.infrastructure.concurrency;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 自适应并发限制器（Vegas）
+ * <p>
+ * 数据库变慢时，固定大小的连接池会被排队的请求占满，所有调用一起等到超时。这里按耗时动态调整允许的在途调用数：
+ * 1. 记录无负载耗时 rttNoLoad（观测到的最小耗时），每 {@link #PROBE_INTERVAL_MS} 毫秒重新探测一次，跟随数据库基线变化
+ * 2. 每次调用结束后估算排队长度 queue = limit * (1 - rttNoLoad / rtt)：
+ *    小于 alpha 说明还有余量，增加 log10(limit)；大于 beta 说明在排队，减少 log10(limit)；介于两者之间不调整
+ *    （alpha = {@link #ALPHA} * log10(limit)，beta = {@link #BETA} * log10(limit)）
+ * 3. 调用出现超时、获取连接失败等过载异常时按比例快速减少
+ * 4. 在途调用达到限制时最多排队 {@link #MAX_WAIT_MS} 毫秒，排队数不超过最大限制，超出立即拒绝
+ * 5. 在途调用不足限制一半时（流量低），不调整限制
+ *
+ * @author liang.tian
+ */
+@Slf4j
+public class AdaptiveConcurrencyLimiter {
+
+    private static final int MIN_LIMIT = 2;
+    private static final long MAX_WAIT_MS = 50L;
+    private static final long PROBE_INTERVAL_MS = 30_000L;
+    // 过载异常时的限制缩减比例
+    private static final double DROP_DECREASE_RATIO = 0.8d;
+    // 排队长度阈值（log10(limit) 的倍数）
+    private static final double ALPHA = 3d;
+    private static final double BETA = 6d;
+
+    private final String name;
+    private final int maxLimit;
+    private final int maxWaiting;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+
+    // 以下字段由 lock 保护，limit 另供指标读取
+    private volatile double limit;
+    private volatile int inFlight;
+    private volatile int waiting;
+    private long rttNoLoadNanos;
+    private long lastProbeTime = System.currentTimeMillis();
+
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    public AdaptiveConcurrencyLimiter(String name, int initialLimit, int maxLimit) {
+        this.name = name;
+        this.limit = initialLimit;
+        this.maxLimit = maxLimit;
+        this.maxWaiting = maxLimit;
+    }
+
+    /**
+     * 申请执行许可，达到限制时短暂排队
+     *
+     * @return true 获得许可（必须调用 {@link #release(long, boolean)}），false 拒绝
+     */
+    public boolean tryAcquire() {
+        lock.lock();
+        try {
+            if (inFlight < currentLimit()) {
+                inFlight++;
+                return true;
+            }
+            if (waiting >= maxWaiting) {
+                rejectedCount.incrementAndGet();
+                return false;
+            }
+            waiting++;
+            try {
+                long nanos = TimeUnit.MILLISECONDS.toNanos(MAX_WAIT_MS);
+                while (inFlight >= currentLimit()) {
+                    if (nanos <= 0L) {
+                        rejectedCount.incrementAndGet();
+                        return false;
+                    }
+                    nanos = available.awaitNanos(nanos);
+                }
+                inFlight++;
+                return true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                rejectedCount.incrementAndGet();
+                return false;
+            } finally {
+                waiting--;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 释放许可并根据本次耗时调整限制
+     *
+     * @param rttNanos 调用耗时
+     * @param didDrop  是否为过载异常（超时、获取连接失败）
+     */
+    public void release(long rttNanos, boolean didDrop) {
+        lock.lock();
+        try {
+            int sampledInFlight = inFlight;
+            inFlight--;
+            int before = currentLimit();
+            update(rttNanos, sampledInFlight, didDrop);
+            if (currentLimit() > before) {
+                available.signalAll();
+            } else {
+                available.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void update(long rttNanos, int sampledInFlight, boolean didDrop) {
+        if (rttNanos <= 0L) return;
+
+        long now = System.currentTimeMillis();
+        if (now - lastProbeTime > PROBE_INTERVAL_MS) {
+            rttNoLoadNanos = 0L;
+            lastProbeTime = now;
+        }
+
+        int current = currentLimit();
+        double newLimit;
+        if (didDrop) {
+            droppedCount.incrementAndGet();
+            newLimit = current * DROP_DECREASE_RATIO;
+        } else {
+            if (0L == rttNoLoadNanos || rttNanos < rttNoLoadNanos) {
+                rttNoLoadNanos = rttNanos;
+                return;
+            }
+            if (sampledInFlight * 2 < current) return;
+
+            double log = Math.max(1d, Math.log10(current));
+            double queue = Math.ceil(current * (1d - (double) rttNoLoadNanos / rttNanos));
+            if (queue < ALPHA * log) {
+                newLimit = current + log;
+            } else if (queue > BETA * log) {
+                newLimit = current - log;
+            } else {
+                return;
+            }
+        }
+
+        newLimit = Math.max(MIN_LIMIT, Math.min(maxLimit, newLimit));
+        if ((int) newLimit != current) {
+            log.debug("数据库并发限制调整: name={}, limit={} -> {}, rttNoLoad={}us, rtt={}us, drop={}",
+                    name, current, (int) newLimit, rttNoLoadNanos / 1000L, rttNanos / 1000L, didDrop);
+        }
+        limit = newLimit;
+    }
+
+    private int currentLimit() {
+        return (int) limit;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getLimit() {
+        return currentLimit();
+    }
+
+    public int getInFlight() {
+        return inFlight;
+    }
+
+    public int getWaiting() {
+        return waiting;
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+}
@@ -0,0 +1,20 @@
+package cn.bugstack.infrastructure.concurrency;
+
+import java.lang.annotation.*;
+
+/**
+ * 数据库操作并发限制
+ * <p>
+ * 标注在仓储方法上，按操作分类经过 {@link AdaptiveConcurrencyLimiter}，超出并发限制的调用短暂排队，排队超时快速失败。
+ * 限制在事务之外生效，被拒绝的调用不会占用数据库连接。
+ *
+ * @author liang.tian
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface DbConcurrencyLimit {
+
+    DbOperationClass value();
+
+}
@@ -0,0 +1,100 @@
+package cn.bugstack.infrastructure.concurrency;
+
+import cn.bugstack.types.enums.ResponseCode;
+import cn.bugstack.types.exception.AppException;
+import lombok.extern.slf4j.Slf4j;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.transaction.TransactionTimedOutException;
+import org.springframework.util.ClassUtils;
+
+import java.lang.reflect.Method;
+import java.sql.SQLTransientException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 数据库并发限制拦截器
+ * <p>
+ * 1. 按方法上的 {@link DbConcurrencyLimit} 取对应分类的限制器，拒绝时抛出 {@link ResponseCode#DB_BUSY}，由调用方按业务异常处理
+ * 2. 已持有许可的线程再调用其他受限方法（如锁单中扣减库存）直接执行，外层许可已代表这次连接占用，避免嵌套等待
+ * 3. 超时、获取连接失败等过载异常作为丢弃信号，限制器快速缩减
+ * <p>
+ * Advisor 顺序需在事务拦截器之前，被拒绝的调用不会开启事务、占用连接。
+ *
+ * @author liang.tian
+ */
+@Slf4j
+public class DbConcurrencyLimitInterceptor implements MethodInterceptor {
+
+    private static final ThreadLocal<Boolean> HOLDING = new ThreadLocal<>();
+
+    private final DbConcurrencyLimiters limiters;
+    private final Map<Method, DbOperationClass> operationClasses = new ConcurrentHashMap<>();
+
+    public DbConcurrencyLimitInterceptor(DbConcurrencyLimiters limiters) {
+        this.limiters = limiters;
+    }
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        if (null != HOLDING.get()) {
+            return invocation.proceed();
+        }
+
+        DbOperationClass operationClass = operationClassOf(invocation);
+        if (null == operationClass) {
+            return invocation.proceed();
+        }
+
+        AdaptiveConcurrencyLimiter limiter = limiters.get(operationClass);
+        if (!limiter.tryAcquire()) {
+            log.warn("数据库并发限制拒绝: operation={}, method={}, limit={}, inFlight={}",
+                    operationClass.getCode(), invocation.getMethod().getName(), limiter.getLimit(), limiter.getInFlight());
+            throw new AppException(ResponseCode.DB_BUSY);
+        }
+
+        HOLDING.set(Boolean.TRUE);
+        long start = System.nanoTime();
+        boolean didDrop = false;
+        try {
+            return invocation.proceed();
+        } catch (Throwable t) {
+            didDrop = isOverload(t);
+            throw t;
+        } finally {
+            HOLDING.remove();
+            limiter.release(System.nanoTime() - start, didDrop);
+        }
+    }
+
+    private DbOperationClass operationClassOf(MethodInvocation invocation) {
+        Method method = invocation.getMethod();
+        DbOperationClass cached = operationClasses.get(method);
+        if (null != cached) return cached;
+
+        Class<?> targetClass = null == invocation.getThis() ? method.getDeclaringClass() : ClassUtils.getUserClass(invocation.getThis());
+        DbConcurrencyLimit annotation = AnnotatedElementUtils.findMergedAnnotation(AopUtils.getMostSpecificMethod(method, targetClass), DbConcurrencyLimit.class);
+        if (null == annotation) return null;
+        operationClasses.put(method, annotation.value());
+        return annotation.value();
+    }
+
+    private boolean isOverload(Throwable throwable) {
+        for (Throwable t = throwable; null != t; t = t.getCause()) {
+            if (t instanceof TransientDataAccessException
+                    || t instanceof CannotCreateTransactionException
+                    || t instanceof TransactionTimedOutException
+                    || t instanceof SQLTransientException) {
+                return true;
+            }
+            if (t.getCause() == t) break;
+        }
+        return false;
+    }
+
+}
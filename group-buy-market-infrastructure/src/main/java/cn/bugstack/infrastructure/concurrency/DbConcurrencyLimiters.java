@@ -0,0 +1,31 @@
+package cn.bugstack.infrastructure.concurrency;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * 按操作分类的数据库并发限制器
+ *
+ * @author liang.tian
+ */
+public class DbConcurrencyLimiters {
+
+    private final Map<DbOperationClass, AdaptiveConcurrencyLimiter> limiters = new EnumMap<>(DbOperationClass.class);
+
+    public DbConcurrencyLimiters() {
+        for (DbOperationClass operationClass : DbOperationClass.values()) {
+            limiters.put(operationClass, new AdaptiveConcurrencyLimiter(operationClass.getCode(), operationClass.getInitialLimit(), operationClass.getMaxLimit()));
+        }
+    }
+
+    public AdaptiveConcurrencyLimiter get(DbOperationClass operationClass) {
+        return limiters.get(operationClass);
+    }
+
+    public Collection<AdaptiveConcurrencyLimiter> all() {
+        return Collections.unmodifiableCollection(limiters.values());
+    }
+
+}
@@ -0,0 +1,29 @@
+package cn.bugstack.infrastructure.concurrency;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * 数据库操作分类
+ * <p>
+ * 每类操作一个自适应并发限制器，三类合计的最大并发不超过 Hikari 连接池大小（100），为查询与任务保留连接。
+ *
+ * @author liang.tian
+ */
+@Getter
+@AllArgsConstructor
+public enum DbOperationClass {
+
+    ORDER_LOCK("order_lock", "锁单写入", 20, 50),
+    STOCK("stock", "库存扣减", 10, 30),
+    SETTLEMENT("settlement", "结算与退单", 5, 15),
+    ;
+
+    private final String code;
+    private final String desc;
+    /** 初始并发限制 */
+    private final int initialLimit;
+    /** 最大并发限制 */
+    private final int maxLimit;
+
+}
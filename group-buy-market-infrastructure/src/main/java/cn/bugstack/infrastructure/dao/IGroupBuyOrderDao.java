@@ -59,4 +59,19 @@ public interface IGroupBuyOrderDao {
 
     int paidTeam2RefundFail(GroupBuyOrder groupBuyOrderReq);
 
+    /**
+     * 库存重建：未过期队伍的最大ID，无数据时返回 null
+     */
+    Long queryValidTeamMaxId();
+
+    /**
+     * 库存重建：按ID区间 [fromId, toId) 查询未过期队伍
+     */
+    List<GroupBuyOrder> queryValidTeamListByIdRange(@Param("fromId") Long fromId, @Param("toId") Long toId);
+
+    /**
+     * 库存预热：查询活动下拼团中、未过期的队伍
+     */
+    List<GroupBuyOrder> queryJoinableTeamListByActivityId(Long activityId);
+
 }
@@ -16,6 +16,12 @@ public interface IGroupBuyOrderListDao {
 
     void insert(GroupBuyOrderList groupBuyOrderListReq);
 
+    /**
+     * 多行插入（购物车锁单，同一用户的订单位于同一分片，一条 INSERT 写入）
+     * @param groupBuyOrderLists 订单记录
+     */
+    void insertList(@Param("list") List<GroupBuyOrderList> groupBuyOrderLists);
+
     GroupBuyOrderList queryGroupBuyOrderRecordByOutTradeNo(GroupBuyOrderList groupBuyOrderListReq);
 
     /**
@@ -27,10 +33,23 @@ public interface IGroupBuyOrderListDao {
 
     Integer queryOrderCountByActivityId(GroupBuyOrderList groupBuyOrderListReq);
 
+    /**
+     * 查询用户在活动上的有效参与次数（不含已退单、已取消的订单）
+     */
+    Integer queryActiveOrderCountByActivityId(GroupBuyOrderList groupBuyOrderListReq);
+
     int updateOrderStatus2COMPLETE(GroupBuyOrderList groupBuyOrderListReq);
 
     List<String> queryGroupBuyCompleteOrderOutTradeNoListByTeamId(String teamId);
 
+    /**
+     * 按队伍成员查询拼团完成的外部单号，条件带分片键，只路由到成员所在分片
+     * @param teamId 拼单组队ID
+     * @param userIds 队伍成员用户ID列表（分片键）
+     * @return 外部交易单号
+     */
+    List<String> queryGroupBuyCompleteOrderOutTradeNoListByTeamIdAndUserIds(@Param("teamId") String teamId, @Param("userIds") List<String> userIds);
+
     List<GroupBuyOrderList> queryInProgressUserGroupBuyOrderDetailListByUserId(GroupBuyOrderList groupBuyOrderListReq);
 
     List<GroupBuyOrderList> queryInProgressUserGroupBuyOrderDetailListByRandom(GroupBuyOrderList groupBuyOrderListReq);
@@ -58,6 +77,49 @@ public interface IGroupBuyOrderListDao {
      */
     int updateOrderStatus(@Param("orderId") String orderId, @Param("status") Integer status);
 
+    /**
+     * 批量更新订单状态（TCC Confirm 组提交，带 user_id 按分片路由）
+     * @param userIds 用户ID
+     * @param orderIds 订单ID
+     * @param fromStatus 原状态
+     * @param toStatus 目标状态
+     * @return 更新行数
+     */
+    int updateOrderStatusBatch(@Param("userIds") List<String> userIds, @Param("orderIds") List<String> orderIds,
+                               @Param("fromStatus") Integer fromStatus, @Param("toStatus") Integer toStatus);
+
+    /**
+     * 批量查询订单状态并加行锁（TCC Confirm 组提交，需在事务内调用）
+     * @param userIds 用户ID列表（分片键）
+     * @param orderIds 订单号列表
+     * @return 订单（user_id、order_id、status）
+     */
+    List<GroupBuyOrderList> queryOrderStatusForUpdate(@Param("userIds") List<String> userIds, @Param("orderIds") List<String> orderIds);
+
+    /**
+     * 查询停留在指定状态、创建时间早于指定时间的订单（恢复未完成的 TCC Confirm）
+     * @param status 状态
+     * @param before 创建时间上限
+     * @param limit 最大条数
+     * @return 订单列表
+     */
+    List<GroupBuyOrderList> queryTimeoutTryOrderList(@Param("status") Integer status, @Param("before") java.util.Date before, @Param("limit") int limit);
+
+    /**
+     * 查询指定状态的全部订单（库存重建统计 TRY 订单）
+     * @param status 状态
+     * @return 订单列表
+     */
+    List<GroupBuyOrderList> queryOrderListByStatus(Integer status);
+
+    /**
+     * 批量查询已落库的订单号（库存重建排除已计入锁单数量的订单）
+     * @param userIds 用户ID列表（分片键）
+     * @param orderIds 订单号列表
+     * @return 已存在的订单号
+     */
+    List<String> queryOrderIdsByUserIdsAndOrderIds(@Param("userIds") List<String> userIds, @Param("orderIds") List<String> orderIds);
+
     /**
      * 查询指定日期之前的订单（用于归档）
      * @param archiveDate 归档日期
@@ -15,11 +15,21 @@ public interface IInventoryDeductionLogDao {
      */
     void insert(InventoryDeductionLog inventoryDeductionLog);
 
+    /**
+     * 批量插入流水（多行 VALUES，ShardingSphere 按 user_id 拆分到各分片）
+     */
+    void insertBatch(@Param("list") List<InventoryDeductionLog> inventoryDeductionLogs);
+
     /**
      * 根据订单ID查询流水（热数据表）
      */
     InventoryDeductionLog queryByOrderId(String orderId);
 
+    /**
+     * 根据用户ID + 订单ID批量查询流水（热数据表，user_id 为分片键，只路由到相关分片）
+     */
+    List<InventoryDeductionLog> queryByUserIdsAndOrderIds(@Param("userIds") List<String> userIds, @Param("orderIds") List<String> orderIds);
+
     /**
      * 从归档表根据订单ID查询流水（冷数据表）
      */
@@ -47,4 +57,11 @@ public interface IInventoryDeductionLogDao {
      */
     void updateStatus(@Param("orderId") String orderId, @Param("status") String status);
 
+    /**
+     * 根据用户ID + 订单ID批量更新流水状态，只更新当前状态为 fromStatus 的流水（user_id 为分片键）
+     * @return 更新行数
+     */
+    int updateStatusBatch(@Param("userIds") List<String> userIds, @Param("orderIds") List<String> orderIds,
+                          @Param("fromStatus") String fromStatus, @Param("status") String status);
+
 }
@@ -51,4 +51,33 @@ public interface ISkuActivityDao {
      */
     SkuActivity querySkuActivity(@Param("activityId") Long activityId,
                                  @Param("goodsId") String goodsId);
-}
\ No newline at end of file
+
+    /**
+     * 查询SKU库存信息并加行锁（TCC Confirm 组提交，同一批次只锁一次）
+     */
+    SkuActivity querySkuActivityForUpdate(@Param("activityId") Long activityId,
+                                          @Param("goodsId") String goodsId);
+
+    /**
+     * 合并冻结库存（TCC Confirm 组提交，已持有行锁，不再使用乐观锁版本号）
+     */
+    int freezeSkuStockBatch(@Param("activityId") Long activityId,
+                            @Param("goodsId") String goodsId,
+                            @Param("quantity") Integer quantity);
+
+    /**
+     * 库存重建：有效活动的 SKU 最大ID，无数据时返回 null
+     */
+    Long queryActiveSkuActivityMaxId();
+
+    /**
+     * 库存重建：按ID区间 [fromId, toId) 查询有效活动的 SKU 库存
+     */
+    java.util.List<SkuActivity> queryActiveSkuActivityListByIdRange(@Param("fromId") Long fromId,
+                                                                     @Param("toId") Long toId);
+
+    /**
+     * 库存预热：查询活动下全部 SKU 库存
+     */
+    java.util.List<SkuActivity> querySkuActivityListByActivityId(Long activityId);
+}
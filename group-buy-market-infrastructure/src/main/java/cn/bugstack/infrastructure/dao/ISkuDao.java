@@ -3,6 +3,8 @@ package cn.bugstack.infrastructure.dao;
 import cn.bugstack.infrastructure.dao.po.Sku;
 import org.apache.ibatis.annotations.Mapper;
 
+import java.util.List;
+
 /**
  * @author Fuzhengwei bugstack.cn @小傅哥
  * @description 商品查询
@@ -13,6 +15,7 @@ public interface ISkuDao {
 
     Sku querySkuByGoodsId(String goodsId);
 
+    List<Sku> querySkuListByGoodsIds(List<String> goodsIds);
 
 
 }
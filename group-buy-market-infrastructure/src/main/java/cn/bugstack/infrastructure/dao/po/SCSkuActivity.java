@@ -33,4 +33,8 @@ public class SCSkuActivity {
     /** 更新时间 */
     private Date updateTime;
 
+    public static String cacheRedisKey(String source, String channel, String goodsId) {
+        return "group_buy_market_cn.bugstack.infrastructure.dao.po.SCSkuActivity_" + source + "_" + channel + "_" + goodsId;
+    }
+
 }
@@ -42,4 +42,8 @@ public class Sku {
     /** 更新时间 */
     private Date updateTime;
 
+    public static String cacheRedisKey(String goodsId) {
+        return "group_buy_market_cn.bugstack.infrastructure.dao.po.Sku_" + goodsId;
+    }
+
 }
@@ -10,6 +10,9 @@ import lombok.NoArgsConstructor;
 @AllArgsConstructor
 @NoArgsConstructor
 public class SkuActivity {
+    /** 自增ID */
+    private Long id;
+
     /** 活动ID */
     private Long activityId;
     
@@ -30,6 +30,42 @@ public class DCCService {
     @DCCValue("cacheSwitch:0")
     private String cacheOpenSwitch;
 
+    /**
+     * 热点商品库存租约开关 0关闭、1开启
+     */
+    @DCCValue("stockLeaseSwitch:0")
+    private String stockLeaseSwitch;
+
+    /**
+     * 热点路径日志每秒输出上限，按 Logger 类名配置，如 default=200,HotGoodsTradeController=50；-1 不限速
+     */
+    @DCCValue("hotLogRateLimit:default=200")
+    private String hotLogRateLimit;
+
+    /**
+     * 秒杀日志模式 0关闭、1开启（丢弃热点路径逐请求 INFO 日志，只保留计数）
+     */
+    @DCCValue("flashSaleLogSwitch:0")
+    private String flashSaleLogSwitch;
+
+    /**
+     * 集群限流开关 0关闭、1开启
+     */
+    @DCCValue("clusterRateLimitSwitch:1")
+    private String clusterRateLimitSwitch;
+
+    /**
+     * 集群限流每秒令牌数，按「场景.维度」配置，维度为 global、activity、user；未配置的维度不限流
+     */
+    @DCCValue("clusterRateLimit:lock.global=5000,lock.activity=2000,lock.user=1,index.global=20000,index.user=1")
+    private String clusterRateLimit;
+
+    /**
+     * 秒杀活动排队每秒放行人数，按活动配置，如 100123=200；0 表示所有活动不排队
+     */
+    @DCCValue("waitingRoomRate:0")
+    private String waitingRoomRate;
+
     public boolean isDowngradeSwitch() {
         return "1".equals(downgradeSwitch);
     }
@@ -64,4 +100,31 @@ public class DCCService {
         return "0".equals(cacheOpenSwitch);
     }
 
+    /**
+     * 热点商品库存租约开关，true 开启（本地租约扣减）、false 关闭（每单 Lua 扣减）
+     */
+    public boolean isStockLeaseSwitch() {
+        return "1".equals(stockLeaseSwitch);
+    }
+
+    public String getHotLogRateLimit() {
+        return hotLogRateLimit;
+    }
+
+    public boolean isFlashSaleLogSwitch() {
+        return "1".equals(flashSaleLogSwitch);
+    }
+
+    public boolean isClusterRateLimitSwitch() {
+        return "1".equals(clusterRateLimitSwitch);
+    }
+
+    public String getClusterRateLimit() {
+        return clusterRateLimit;
+    }
+
+    public String getWaitingRoomRate() {
+        return waitingRoomRate;
+    }
+
 }
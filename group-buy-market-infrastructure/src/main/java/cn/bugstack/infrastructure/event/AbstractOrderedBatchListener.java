@@ -0,0 +1,110 @@
+package cn.bugstack.infrastructure.event;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.rabbitmq.client.Channel;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.AmqpIOException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.listener.api.ChannelAwareBatchMessageListener;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 有序批量消费基类（手动确认）
+ * <p>
+ * 每个一致性哈希分片队列只有一个消费者，批内按投递顺序逐条处理，同一 teamId 的消息不会并发、乱序：
+ * 1. 全部处理成功：按批内最后一条 deliveryTag 一次性确认（multiple）
+ * 2. 第 k 条处理失败：确认前 k-1 条，第 k 条及之后的消息重新入队，重新投递时仍保持原顺序
+ * 3. 同一条消息（按队列 + messageId）失败达到 {@link #setMaxDeliveryAttempts(int) 最大投递次数}：确认前 k-1 条，
+ *    第 k 条拒绝且不重新入队（分片队列配置了死信交换机，转入 {queue}_dlq），继续处理批内后续消息，毒消息不会无限重投阻塞整个分片
+ * <p>
+ * 失败次数记录在本地（重新入队的消息通常很快投递回同一消费者），Broker 只提供 redelivered 标记，经典队列没有投递次数。
+ *
+ * @author liang.tian
+ */
+@Slf4j
+public abstract class AbstractOrderedBatchListener implements ChannelAwareBatchMessageListener {
+
+    private static final int DEFAULT_MAX_DELIVERY_ATTEMPTS = 5;
+
+    private final Cache<String, Integer> failedAttempts = Caffeine.newBuilder()
+            .maximumSize(10_000)
+            .expireAfterWrite(1, TimeUnit.HOURS)
+            .build();
+
+    private volatile int maxDeliveryAttempts = DEFAULT_MAX_DELIVERY_ATTEMPTS;
+
+    @Override
+    public void onMessageBatch(List<Message> messages, Channel channel) {
+        if (messages.isEmpty()) return;
+        long lastDeliveryTag = messages.get(messages.size() - 1).getMessageProperties().getDeliveryTag();
+        // 已处理成功、尚未确认的最大 deliveryTag
+        long handledDeliveryTag = -1L;
+        try {
+            for (Message message : messages) {
+                MessageProperties properties = message.getMessageProperties();
+                String body = new String(message.getBody(), StandardCharsets.UTF_8);
+                String attemptKey = attemptKey(properties, body);
+                try {
+                    handle(body);
+                } catch (Exception e) {
+                    int attempts = recordFailure(attemptKey, properties);
+                    if (handledDeliveryTag >= 0L) {
+                        channel.basicAck(handledDeliveryTag, true);
+                        handledDeliveryTag = -1L;
+                    }
+                    if (attempts < maxDeliveryAttempts) {
+                        log.error("批量消费失败，剩余消息重新入队 queue:{} attempts:{} message:{}", properties.getConsumerQueue(), attempts, body, e);
+                        channel.basicNack(lastDeliveryTag, true, true);
+                        return;
+                    }
+                    log.error("批量消费失败达到最大投递次数，转入死信队列 queue:{} attempts:{} message:{}", properties.getConsumerQueue(), attempts, body, e);
+                    channel.basicNack(properties.getDeliveryTag(), false, false);
+                    failedAttempts.invalidate(attemptKey);
+                    continue;
+                }
+                if (Boolean.TRUE.equals(properties.getRedelivered())) {
+                    failedAttempts.invalidate(attemptKey);
+                }
+                handledDeliveryTag = properties.getDeliveryTag();
+            }
+            if (handledDeliveryTag >= 0L) {
+                channel.basicAck(handledDeliveryTag, true);
+            }
+        } catch (IOException e) {
+            // 通道异常时未确认的消息由 Broker 重新投递
+            throw new AmqpIOException(e);
+        }
+    }
+
+    /**
+     * 处理单条消息，抛出异常时该消息及批内后续消息重新入队，同一消息失败达到最大投递次数时转入死信队列
+     */
+    protected abstract void handle(String message) throws Exception;
+
+    public void setMaxDeliveryAttempts(int maxDeliveryAttempts) {
+        this.maxDeliveryAttempts = Math.max(1, maxDeliveryAttempts);
+    }
+
+    /**
+     * 累计失败次数；首次投递即失败时清除残留计数（消息 ID 重复使用或计数未清理）
+     */
+    private int recordFailure(String attemptKey, MessageProperties properties) {
+        if (!Boolean.TRUE.equals(properties.getRedelivered())) {
+            failedAttempts.put(attemptKey, 1);
+            return 1;
+        }
+        return failedAttempts.asMap().merge(attemptKey, 1, Integer::sum);
+    }
+
+    private static String attemptKey(MessageProperties properties, String body) {
+        String messageId = properties.getMessageId();
+        return properties.getConsumerQueue() + ":" + (null == messageId ? body : messageId);
+    }
+
+}
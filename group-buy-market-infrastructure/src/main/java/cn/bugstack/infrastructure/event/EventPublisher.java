@@ -1,40 +1,137 @@
 package cn.bugstack.infrastructure.event;
 
-import cn.bugstack.types.event.BaseEvent;
-import com.alibaba.fastjson.JSON;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.amqp.core.MessageDeliveryMode;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * @author Fuzhengwei bugstack.cn @小傅哥
  * @description 消息发送
+ * <p>
+ * 发布确认（publisher-confirm-type: correlated）：每条消息携带 CorrelationData，Broker 确认后异步完成对应的 future，
+ * 批量发送时先全部发出、再统一等待确认，不再逐条同步等待。
+ * 未路由到队列的消息（mandatory 退回）按发送失败处理。
+ * <p>
+ * 消息头 {@link #HASH_HEADER} 为一致性哈希键（teamId），消费侧按该键分片到固定队列，同一队伍的消息顺序消费。
  * @create 2024-03-30 12:40
  */
 @Slf4j
 @Component
 public class EventPublisher {
 
+    public static final String HASH_HEADER = "hash_key";
+
     @Autowired
     private RabbitTemplate rabbitTemplate;
 
     @Value("${spring.rabbitmq.config.producer.exchange}")
     private String exchangeName;
 
+    @Value("${spring.rabbitmq.config.producer.confirm-timeout:5000}")
+    private long confirmTimeout;
+
+    private final AtomicInteger pendingConfirms = new AtomicInteger();
+    private final AtomicLong ackCount = new AtomicLong();
+    private final AtomicLong nackCount = new AtomicLong();
+    private final AtomicLong returnedCount = new AtomicLong();
+
     public void publish(String routingKey, String message) {
+        publish(routingKey, message, null);
+    }
+
+    /**
+     * 发送并等待 Broker 确认
+     *
+     * @param hashKey 一致性哈希键（teamId），为空时使用消息 ID
+     */
+    public void publish(String routingKey, String message, String hashKey) {
+        boolean confirmed;
+        try {
+            confirmed = publishAsync(routingKey, message, hashKey).get(confirmTimeout, TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            log.error("发送MQ消息失败 routingKey:{} message:{}", routingKey, message, e);
+            throw new RuntimeException(e);
+        }
+        if (!confirmed) {
+            throw new IllegalStateException("MQ消息未被确认 routingKey:" + routingKey);
+        }
+    }
+
+    /**
+     * 异步发送，返回 Broker 确认结果（true 已确认，false 拒绝或未路由），调用方批量发送后统一等待
+     *
+     * @param hashKey 一致性哈希键（teamId），为空时使用消息 ID
+     */
+    public CompletableFuture<Boolean> publishAsync(String routingKey, String message, String hashKey) {
+        String messageId = UUID.randomUUID().toString();
+        CorrelationData correlationData = new CorrelationData(messageId);
+        CompletableFuture<Boolean> confirmed = new CompletableFuture<>();
+        pendingConfirms.incrementAndGet();
+        correlationData.getFuture().addCallback(confirm -> {
+            pendingConfirms.decrementAndGet();
+            if (null == confirm || !confirm.isAck()) {
+                nackCount.incrementAndGet();
+                log.error("MQ消息被拒绝 routingKey:{} messageId:{} cause:{}", routingKey, messageId, null == confirm ? null : confirm.getReason());
+                confirmed.complete(false);
+            } else if (null != correlationData.getReturned()) {
+                returnedCount.incrementAndGet();
+                log.error("MQ消息未路由到队列 routingKey:{} messageId:{} replyText:{}", routingKey, messageId, correlationData.getReturned().getReplyText());
+                confirmed.complete(false);
+            } else {
+                ackCount.incrementAndGet();
+                confirmed.complete(true);
+            }
+        }, throwable -> {
+            pendingConfirms.decrementAndGet();
+            nackCount.incrementAndGet();
+            confirmed.complete(false);
+        });
+
         try {
             rabbitTemplate.convertAndSend(exchangeName, routingKey, message, m -> {
                 // 持久化消息配置
                 m.getMessageProperties().setDeliveryMode(MessageDeliveryMode.PERSISTENT);
+                m.getMessageProperties().setMessageId(messageId);
+                m.getMessageProperties().setHeader(HASH_HEADER, null == hashKey ? messageId : hashKey);
                 return m;
-            });
+            }, correlationData);
         } catch (Exception e) {
-            log.error("发送MQ消息失败 team_success message:{}", message, e);
-            throw e;
+            log.error("发送MQ消息失败 routingKey:{} message:{}", routingKey, message, e);
+            // 发送失败不会再收到确认
+            pendingConfirms.decrementAndGet();
+            confirmed.complete(false);
         }
+        return confirmed;
+    }
+
+    public long getConfirmTimeout() {
+        return confirmTimeout;
+    }
+
+    public int getPendingConfirms() {
+        return pendingConfirms.get();
+    }
+
+    public long getAckCount() {
+        return ackCount.get();
+    }
+
+    public long getNackCount() {
+        return nackCount.get();
+    }
+
+    public long getReturnedCount() {
+        return returnedCount.get();
     }
 
 }
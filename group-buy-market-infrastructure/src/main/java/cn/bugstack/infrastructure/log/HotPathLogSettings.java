@@ -0,0 +1,102 @@
+package cn.bugstack.infrastructure.log;
+
+import cn.bugstack.infrastructure.dcc.DCCService;
+import cn.bugstack.types.common.Constants;
+import cn.bugstack.types.trace.TraceSpan;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 热点路径日志配置（DCC 动态调整）
+ * <p>
+ * 1. hotLogRateLimit：按 Logger 类名的每秒输出上限，配置变更后首次使用时重新解析
+ * 2. flashSaleLogSwitch：秒杀日志模式，开启后每 10 秒输出一次各 Logger 的计数汇总，替代逐请求日志
+ * 3. 阶段耗时 span（TraceSpan）按 Logger TraceSpan 同样限速与丢弃
+ *
+ * @author liang.tian
+ */
+@Slf4j
+@Component
+public class HotPathLogSettings {
+
+    private static final String DEFAULT_KEY = "default";
+    private static final int DEFAULT_RATE_LIMIT = 200;
+
+    @Resource
+    private DCCService dccService;
+
+    private volatile String parsedRaw;
+    private volatile Map<String, Integer> rateLimits = Collections.emptyMap();
+
+    // 上次汇总时各 Logger 的 [输出, 采样丢弃, 秒杀模式丢弃] 计数
+    private final Map<String, long[]> lastSummary = new HashMap<>();
+
+    @PostConstruct
+    public void init() {
+        HotPathLogger.setSettings(this);
+        TraceSpan.setSampler(HotPathLogger.getLogger(TraceSpan.class)::sample);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        TraceSpan.setSampler(null);
+        HotPathLogger.setSettings(null);
+    }
+
+    boolean isFlashSaleMode() {
+        return dccService.isFlashSaleLogSwitch();
+    }
+
+    int rateLimit(String loggerName) {
+        String raw = dccService.getHotLogRateLimit();
+        if (!StringUtils.equals(raw, parsedRaw)) {
+            rateLimits = parse(raw);
+            parsedRaw = raw;
+        }
+        Integer limit = rateLimits.get(loggerName);
+        if (null != limit) return limit;
+        return rateLimits.getOrDefault(DEFAULT_KEY, DEFAULT_RATE_LIMIT);
+    }
+
+    /**
+     * 采样或秒杀模式丢弃日志时输出计数汇总，保留请求量的可观测性
+     */
+    @Scheduled(fixedDelay = 10_000L)
+    public synchronized void summary() {
+        for (HotPathLogger logger : HotPathLogger.loggers()) {
+            long[] current = {logger.getLoggedCount(), logger.getSampledCount(), logger.getDroppedCount()};
+            long[] last = lastSummary.getOrDefault(logger.getName(), new long[3]);
+            lastSummary.put(logger.getName(), current);
+            long sampled = current[1] - last[1];
+            long dropped = current[2] - last[2];
+            if (sampled == 0 && dropped == 0) continue;
+            log.info("热点日志汇总(10s): logger={}, logged={}, sampled={}, flashSaleDropped={}",
+                    logger.getName(), current[0] - last[0], sampled, dropped);
+        }
+    }
+
+    private Map<String, Integer> parse(String raw) {
+        Map<String, Integer> limits = new HashMap<>();
+        if (StringUtils.isBlank(raw)) return limits;
+        for (String item : raw.split(Constants.SPLIT)) {
+            String[] pair = item.split("=");
+            if (pair.length != 2 || !NumberUtils.isCreatable(pair[1].trim())) {
+                log.warn("热点日志限速配置格式错误，忽略: {}", item);
+                continue;
+            }
+            limits.put(pair[0].trim(), NumberUtils.toInt(pair[1].trim()));
+        }
+        return limits;
+    }
+
+}
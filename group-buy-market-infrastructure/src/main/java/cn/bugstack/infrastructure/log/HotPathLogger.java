@@ -0,0 +1,135 @@
+package cn.bugstack.infrastructure.log;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 热点路径日志
+ * <p>
+ * 热点接口、消息收发的逐请求 INFO 日志经过这里输出：
+ * 1. 按 Logger 限速采样：每秒最多输出 N 条（DCC hotLogRateLimit），超出部分丢弃并计数
+ * 2. 秒杀模式（DCC flashSaleLogSwitch）：逐请求 INFO 日志全部丢弃，只保留计数，由 {@link HotPathLogSettings} 定期输出汇总
+ * 3. WARN/ERROR 不采样，始终输出
+ * <p>
+ * 参数使用 {@link LazyLog} 包装，丢弃的日志不会触发序列化。
+ * 配置未加载前（启动阶段）不采样。
+ *
+ * @author liang.tian
+ */
+public final class HotPathLogger {
+
+    private static final Map<String, HotPathLogger> LOGGERS = new ConcurrentHashMap<>();
+
+    private static volatile HotPathLogSettings settings;
+
+    private final Logger logger;
+    private final String name;
+
+    // 限速窗口（秒）与窗口内已输出条数
+    private volatile long windowSecond;
+    private final AtomicInteger windowCount = new AtomicInteger();
+
+    private final AtomicLong loggedCount = new AtomicLong();
+    private final AtomicLong sampledCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    private HotPathLogger(Class<?> clazz) {
+        this.logger = LoggerFactory.getLogger(clazz);
+        this.name = clazz.getSimpleName();
+    }
+
+    public static HotPathLogger getLogger(Class<?> clazz) {
+        return LOGGERS.computeIfAbsent(clazz.getName(), key -> new HotPathLogger(clazz));
+    }
+
+    static void setSettings(HotPathLogSettings hotPathLogSettings) {
+        settings = hotPathLogSettings;
+    }
+
+    static Collection<HotPathLogger> loggers() {
+        return Collections.unmodifiableCollection(LOGGERS.values());
+    }
+
+    public void info(String format, Object... arguments) {
+        if (!logger.isInfoEnabled()) return;
+        if (sample()) {
+            logger.info(format, arguments);
+        }
+    }
+
+    /**
+     * 按秒杀模式与限速判断本条 INFO 日志是否输出，并计数；供自行输出日志的调用方使用（如 TraceSpan）
+     */
+    public boolean sample() {
+        HotPathLogSettings current = settings;
+        if (null != current) {
+            if (current.isFlashSaleMode()) {
+                droppedCount.incrementAndGet();
+                return false;
+            }
+            if (!tryAcquire(current.rateLimit(name))) {
+                sampledCount.incrementAndGet();
+                return false;
+            }
+        }
+        loggedCount.incrementAndGet();
+        return true;
+    }
+
+    public void warn(String format, Object... arguments) {
+        logger.warn(format, arguments);
+    }
+
+    public void error(String format, Object... arguments) {
+        logger.error(format, arguments);
+    }
+
+    /**
+     * 固定窗口限速，窗口切换时的并发误差对采样可以接受
+     */
+    private boolean tryAcquire(int permitsPerSecond) {
+        if (permitsPerSecond < 0) return true;
+        long second = System.currentTimeMillis() / 1000L;
+        if (second != windowSecond) {
+            windowSecond = second;
+            windowCount.set(0);
+        }
+        return windowCount.incrementAndGet() <= permitsPerSecond;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getLoggedCount() {
+        return loggedCount.get();
+    }
+
+    public long getSampledCount() {
+        return sampledCount.get();
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    public static long totalLoggedCount() {
+        return LOGGERS.values().stream().mapToLong(HotPathLogger::getLoggedCount).sum();
+    }
+
+    public static long totalSampledCount() {
+        return LOGGERS.values().stream().mapToLong(HotPathLogger::getSampledCount).sum();
+    }
+
+    public static long totalDroppedCount() {
+        return LOGGERS.values().stream().mapToLong(HotPathLogger::getDroppedCount).sum();
+    }
+
+}
@@ -0,0 +1,39 @@
+package cn.bugstack.infrastructure.log;
+
+import com.alibaba.fastjson2.JSON;
+
+import java.util.function.Supplier;
+
+/**
+ * 延迟计算的日志参数
+ * <p>
+ * SLF4J 只有在日志级别开启、真正格式化消息时才调用参数的 toString()，
+ * 将序列化放到 toString() 中，级别关闭或被 {@link HotPathLogger} 采样丢弃时不产生序列化开销。
+ * <pre>
+ * log.info("热点商品下单:{} request:{}", userId, LazyLog.json(requestDTO));
+ * </pre>
+ *
+ * @author liang.tian
+ */
+public final class LazyLog {
+
+    private final Supplier<?> supplier;
+
+    private LazyLog(Supplier<?> supplier) {
+        this.supplier = supplier;
+    }
+
+    public static LazyLog of(Supplier<?> supplier) {
+        return new LazyLog(supplier);
+    }
+
+    public static LazyLog json(Object object) {
+        return new LazyLog(() -> JSON.toJSONString(object));
+    }
+
+    @Override
+    public String toString() {
+        return String.valueOf(supplier.get());
+    }
+
+}
@@ -1,20 +1,37 @@
 package cn.bugstack.infrastructure.mq.consumer;
 
+import cn.bugstack.infrastructure.log.HotPathLogger;
+import cn.bugstack.infrastructure.log.LazyLog;
 import cn.bugstack.infrastructure.mq.param.MessageBody;
+import cn.bugstack.types.trace.TraceContext;
+import cn.bugstack.types.trace.TraceSpan;
+import cn.bugstack.types.workload.WorkloadContext;
+import cn.bugstack.types.workload.WorkloadType;
+import org.apache.commons.lang3.math.NumberUtils;
 import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.messaging.Message;
+import org.springframework.messaging.support.MessageBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
 
 import static cn.bugstack.infrastructure.mq.producer.StreamProducer.*;
 
 /**
  * MQ消费基类（参考 NFTurbo）
+ * 解析消息时恢复生产者传入的 traceId，消费线程后续日志、发送的消息、提交的线程池任务都沿用该 traceId；
+ * 下一条消息解析时覆盖，批量消费时逐条切换。
+ * 消费线程为 RocketMQ 专用线程，解析消息时将负载类型固定为 {@link WorkloadType#CONSUMER}，数据库连接占用消费分区，不需要还原
  *
  * @author liang.tian
  */
 @Slf4j
 public class AbstractStreamConsumer {
 
+    private static final HotPathLogger hotLog = HotPathLogger.getLogger(AbstractStreamConsumer.class);
+
     /**
      * 从 msg 中解析出消息对象
      *
@@ -27,9 +44,55 @@ public class AbstractStreamConsumer {
         String messageId = msg.getHeaders().get(ROCKET_MQ_MESSAGE_ID, String.class);
         String tag = msg.getHeaders().get(ROCKET_TAGS, String.class);
         String topic = msg.getHeaders().get(ROCKET_MQ_TOPIC, String.class);
+        restoreTrace(msg, topic);
+        WorkloadContext.attach(WorkloadType.CONSUMER);
         Object object = JSON.parseObject(msg.getPayload().getBody(), type);
-        log.info("接收消息: topic={}, messageId={}, tag={}, object={}", topic, messageId, tag, JSON.toJSONString(object));
+        hotLog.info("接收消息: topic={}, messageId={}, tag={}, object={}", topic, messageId, tag, LazyLog.json(object));
         return (T) object;
     }
-}
 
+    /**
+     * 将批量消费的输入转换为消息列表
+     * RocketMQ binder 可能传递单个消息、批量消息或 JSONObject，需要兼容处理
+     *
+     * @param input 消费输入
+     * @return 消息列表
+     */
+    @SuppressWarnings("unchecked")
+    public static List<Message<MessageBody>> toMessages(Object input) {
+        List<Message<MessageBody>> msgs = new ArrayList<>();
+        if (input instanceof List) {
+            for (Object item : (List<Object>) input) {
+                msgs.add(toMessage(item));
+            }
+        } else {
+            msgs.add(toMessage(input));
+        }
+        return msgs;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Message<MessageBody> toMessage(Object input) {
+        if (input instanceof Message) {
+            return (Message<MessageBody>) input;
+        }
+        if (input instanceof JSONObject) {
+            MessageBody messageBody = JSON.parseObject(((JSONObject) input).toJSONString(), MessageBody.class);
+            return MessageBuilder.withPayload(messageBody).build();
+        }
+        log.error("不支持的消息类型: {}", input.getClass().getName());
+        throw new IllegalArgumentException("不支持的消息类型: " + input.getClass().getName());
+    }
+
+    private static void restoreTrace(Message<MessageBody> msg, String topic) {
+        Object traceId = msg.getHeaders().get(TraceContext.MESSAGE_HEADER);
+        TraceContext.attach(null == traceId ? null : traceId.toString());
+        // 投递耗时：发送到开始消费（延迟消息包含延迟时间）
+        Object sendTime = msg.getHeaders().get(TraceContext.MESSAGE_SEND_TIME_HEADER);
+        long sendMillis = null == sendTime ? 0L : NumberUtils.toLong(sendTime.toString());
+        if (sendMillis > 0) {
+            TraceSpan.start("mq.deliver." + topic, System.currentTimeMillis() - sendMillis).close();
+        }
+    }
+
+}
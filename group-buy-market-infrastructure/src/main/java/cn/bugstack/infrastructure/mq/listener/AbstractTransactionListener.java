@@ -0,0 +1,51 @@
+package cn.bugstack.infrastructure.mq.listener;
+
+import cn.bugstack.types.trace.TraceContext;
+import cn.bugstack.types.trace.TraceSpan;
+import cn.bugstack.types.workload.WorkloadContext;
+import cn.bugstack.types.workload.WorkloadType;
+import org.apache.rocketmq.client.producer.LocalTransactionState;
+import org.apache.rocketmq.client.producer.TransactionListener;
+import org.apache.rocketmq.common.message.Message;
+import org.apache.rocketmq.common.message.MessageExt;
+
+/**
+ * RocketMQ 事务监听器基类
+ * <p>
+ * 本地事务在发送线程中执行，事务回查在 RocketMQ 回调线程中执行，两者都从消息属性恢复 traceId，
+ * 执行结束后还原线程原有上下文，并记录 mq.tx.local / mq.tx.check 阶段耗时。
+ * 事务回查属于后台任务，回查期间按 {@link WorkloadType#CONSUMER} 占用数据库连接分区；本地事务沿用发送线程的负载类型。
+ *
+ * @author liang.tian
+ */
+public abstract class AbstractTransactionListener implements TransactionListener {
+
+    private final String name = getClass().getSimpleName();
+
+    @Override
+    public final LocalTransactionState executeLocalTransaction(Message message, Object arg) {
+        String previous = TraceContext.attach(message.getUserProperty(TraceContext.MESSAGE_HEADER));
+        try (TraceSpan ignored = TraceSpan.start("mq.tx.local." + name)) {
+            return doExecuteLocalTransaction(message, arg);
+        } finally {
+            TraceContext.detach(previous);
+        }
+    }
+
+    @Override
+    public final LocalTransactionState checkLocalTransaction(MessageExt messageExt) {
+        String previous = TraceContext.attach(messageExt.getUserProperty(TraceContext.MESSAGE_HEADER));
+        WorkloadType previousWorkload = WorkloadContext.attach(WorkloadType.CONSUMER);
+        try (TraceSpan ignored = TraceSpan.start("mq.tx.check." + name)) {
+            return doCheckLocalTransaction(messageExt);
+        } finally {
+            WorkloadContext.detach(previousWorkload);
+            TraceContext.detach(previous);
+        }
+    }
+
+    protected abstract LocalTransactionState doExecuteLocalTransaction(Message message, Object arg);
+
+    protected abstract LocalTransactionState doCheckLocalTransaction(MessageExt messageExt);
+
+}
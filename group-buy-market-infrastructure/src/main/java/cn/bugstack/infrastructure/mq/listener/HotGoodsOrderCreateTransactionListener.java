@@ -5,13 +5,19 @@ import cn.bugstack.domain.trade.adapter.port.IRedisAdapter;
 import cn.bugstack.domain.trade.adapter.repository.ITradeRepository;
 import cn.bugstack.domain.trade.model.aggregate.HotGoodsOrderAggregate;
 import cn.bugstack.domain.trade.model.entity.MarketPayOrderEntity;
+import cn.bugstack.domain.trade.model.entity.StockAdmissionEntity;
+import cn.bugstack.domain.trade.model.valobj.StockAdmissionCodeEnumVO;
+import cn.bugstack.domain.trade.model.valobj.StockAdmissionResultVO;
 import cn.bugstack.domain.trade.model.valobj.TradeOrderStatusEnumVO;
+import cn.bugstack.domain.trade.model.valobj.UserTakeCountVO;
+import cn.bugstack.domain.trade.service.lock.factory.TradeLockRuleFilterFactory;
+import cn.bugstack.infrastructure.dcc.DCCService;
 import cn.bugstack.infrastructure.mq.param.MessageBody;
 import cn.bugstack.infrastructure.mq.producer.StreamProducer;
+import cn.bugstack.infrastructure.redis.lease.StockQuotaLeaseManager;
 import com.alibaba.fastjson2.JSON;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.rocketmq.client.producer.LocalTransactionState;
-import org.apache.rocketmq.client.producer.TransactionListener;
 import org.apache.rocketmq.common.message.Message;
 import org.apache.rocketmq.common.message.MessageExt;
 import org.springframework.stereotype.Component;
@@ -26,10 +32,12 @@ import javax.annotation.Resource;
  * 
  * 本地事务执行（参考 NFTurbo TradeApplicationService.newBuyPlus）：
  * 1. Redis 商品库存扣减（1次Redis操作）
+ *    - 开启库存租约（DCC stockLeaseSwitch）时，从本节点预占的租约中扣减，不访问 Redis，见 StockQuotaLeaseManager
  *    - 扣减失败时，查询流水检查是否真的失败
  *    - 如果流水存在，说明扣减成功（可能是网络延迟导致的假失败），继续执行
  *    - 如果流水不存在，说明真的扣减失败，回滚事务
- * 2. 订单创建（1次DB插入，创建时查询userTakeOrderCount）
+ *    - 用户参与次数在同一准入脚本中校验并累加（租约模式单独占用），订单创建后不再累加
+ * 2. 订单创建（1次DB插入）
  *    - 创建失败时，直接发送延迟消息，不查询数据库
  *    - 原因：可能存在"假失败"情况（订单实际已创建，但返回时网络超时/数据库异常）
  *    - 延迟消息会在30秒后再次检查订单状态，如果订单存在则补偿，不存在则回滚
@@ -49,7 +57,7 @@ import javax.annotation.Resource;
  */
 @Slf4j
 @Component
-public class HotGoodsOrderCreateTransactionListener implements TransactionListener {
+public class HotGoodsOrderCreateTransactionListener extends AbstractTransactionListener {
 
     // 商品库存键前缀
     private static final String GOODS_STOCK_KEY_PREFIX = "group_buy_market_goods_stock_";
@@ -64,8 +72,14 @@ public class HotGoodsOrderCreateTransactionListener implements TransactionListen
     @Resource
     private IMessageProducer messageProducer;
 
+    @Resource
+    private DCCService dccService;
+
+    @Resource
+    private StockQuotaLeaseManager stockQuotaLeaseManager;
+
     @Override
-    public LocalTransactionState executeLocalTransaction(Message message, Object o) {
+    protected LocalTransactionState doExecuteLocalTransaction(Message message, Object o) {
         HotGoodsOrderAggregate aggregate = null;
         
         try {
@@ -78,34 +92,70 @@ public class HotGoodsOrderCreateTransactionListener implements TransactionListen
             String goodsId = aggregate.getPayDiscountEntity().getGoodsId();
 
             // 优化：移除责任链校验，减少本地事务IO操作（从3次减少到2次）
-            // 责任链校验（活动有效性、用户参与次数等）将在消息监听器中执行
-            // userTakeOrderCount 将在订单创建时查询（TradeRepository.lockHotGoodsOrder）
+            // 责任链校验（活动有效性等）将在消息监听器中执行
+            // 用户参与次数在库存准入中校验并累加：先确保 Redis 计数已加载（冷启动时从数据库统计），
+            // 准入前的累计锁单次数用于 lockHotGoodsOrder 构建 bizId
+            String userTakeKey = TradeLockRuleFilterFactory.generateUserTakeKey(activityId, userId);
+            Integer takeLimit = aggregate.getPayActivityEntity().getTakeLimitCount();
+            UserTakeCountVO userTakeCountVO = tradeRepository.queryUserTakeCount(activityId, userId, aggregate.getPayActivityEntity().getEndTime());
+            aggregate.setUserTakeOrderCount(userTakeCountVO.getSeq());
 
             String identifier = buildIdentifier(userId, orderId);
             String goodsStockKey = GOODS_STOCK_KEY_PREFIX + activityId + "_" + goodsId;
             String goodsStockLogKey = GOODS_STOCK_LOG_KEY_PREFIX + activityId + "_" + goodsId;
 
             // 1. 扣减Redis库存（参考 NFTurbo TradeApplicationService.newBuyPlus）
-            try {
-                Long goodsStockResult = redisAdapter.decreaseStockWithLog(goodsStockKey, goodsStockLogKey, identifier, 1);
-                if (goodsStockResult == null || goodsStockResult < 0) {
-                    throw new RuntimeException("decrease stock failed, result=" + goodsStockResult);
+            if (dccService.isStockLeaseSwitch()) {
+                // 租约模式不经过准入脚本，先单独占用参与次数（用户维度 Key，无热点）
+                if (redisAdapter.occupyUserTakeCount(userTakeKey, null == takeLimit ? 0 : takeLimit, orderId) == -2L) {
+                    log.info("热点商品-已达参与次数上限，回滚: activityId={}, userId={}, orderId={}", activityId, userId, orderId);
+                    return LocalTransactionState.ROLLBACK_MESSAGE;
                 }
-                log.info("热点商品-事务预扣减商品库存成功: activityId={}, goodsId={}, orderId={}, 剩余库存={}",
-                        activityId, goodsId, orderId, goodsStockResult);
-            } catch (Exception e) {
-                // Redis扣减失败时，查询流水检查是否真的失败（参考 NFTurbo）
-                // 如果流水存在，说明扣减成功（可能是网络延迟导致的假失败），继续执行
-                log.warn("热点商品-Redis扣减失败，查询流水检查: orderId={}, error={}", orderId, e.getMessage());
-                // 这里如果查询也失败，就只能旁路验证和对账来保证数据一致性
-                String goodsLogEntry = redisAdapter.getStockDecreaseLog(goodsStockLogKey, identifier);
-                if (goodsLogEntry == null) {
-                    // 流水不存在，说明真的扣减失败
-                    log.error("热点商品-Redis扣减失败且流水不存在，回滚: orderId={}", orderId);
+                // 租约模式：本地扣减，流水由租约管理器批量写入，不存在假失败
+                long leaseRemaining = stockQuotaLeaseManager.decrease(activityId, goodsId, identifier);
+                if (leaseRemaining < 0) {
+                    log.info("热点商品-租约库存不足，回滚: activityId={}, goodsId={}, orderId={}", activityId, goodsId, orderId);
+                    redisAdapter.releaseUserTakeCount(userTakeKey, orderId);
+                    return LocalTransactionState.ROLLBACK_MESSAGE;
+                }
+            } else {
+                // 热点商品不做拼团：准入脚本只扣减商品库存，并校验、累加用户参与次数
+                StockAdmissionEntity admission = StockAdmissionEntity.builder()
+                        .orderId(orderId)
+                        .identifier(identifier)
+                        .goodsStockKey(goodsStockKey)
+                        .goodsStockLogKey(goodsStockLogKey)
+                        .count(1)
+                        .userTakeKey(userTakeKey)
+                        .takeLimit(takeLimit)
+                        .build();
+                StockAdmissionResultVO admissionResult = redisAdapter.admitOrder(admission);
+                if (admissionResult.isSuccess()) {
+                    log.info("热点商品-事务预扣减商品库存成功: activityId={}, goodsId={}, orderId={}, 剩余库存={}",
+                            activityId, goodsId, orderId, admissionResult.getGoodsRemainingStock());
+                } else if (StockAdmissionCodeEnumVO.ERROR.equals(admissionResult.getCode())) {
+                    // 脚本执行异常（超时等），结果未知：补偿脚本已扣减则回滚，未扣减则写入回滚标记，迟到执行的准入不再扣减
+                    StockAdmissionResultVO compensateResult = redisAdapter.compensateOrder(admission);
+                    log.warn("热点商品-Redis扣减结果未知，补偿后回滚: orderId={}, code={}", orderId, compensateResult.getCode());
                     return LocalTransactionState.ROLLBACK_MESSAGE;
+                } else if (!StockAdmissionCodeEnumVO.DUPLICATE.equals(admissionResult.getCode())) {
+                    // 脚本明确返回的失败（库存不足、未预热、已达参与次数上限），没有写入，直接回滚
+                    log.info("热点商品-Redis扣减失败，回滚: orderId={}, code={}", orderId, admissionResult.getCode());
+                    return LocalTransactionState.ROLLBACK_MESSAGE;
+                } else {
+                    // 重复请求时，查询流水检查是否已扣减（参考 NFTurbo）
+                    // 如果流水存在，说明扣减成功（可能是网络延迟导致的假失败），继续执行
+                    log.warn("热点商品-Redis扣减异常，查询流水检查: orderId={}", orderId);
+                    // 这里如果查询也失败，就只能旁路验证和对账来保证数据一致性
+                    String goodsLogEntry = redisAdapter.getStockDecreaseLog(goodsStockLogKey, identifier);
+                    if (goodsLogEntry == null) {
+                        // 流水不存在，说明真的扣减失败
+                        log.error("热点商品-Redis扣减失败且流水不存在，回滚: orderId={}", orderId);
+                        return LocalTransactionState.ROLLBACK_MESSAGE;
+                    }
+                    // 流水存在，说明扣减成功（假失败），继续执行
+                    log.info("热点商品-Redis扣减失败但流水存在（假失败），继续执行: orderId={}", orderId);
                 }
-                // 流水存在，说明扣减成功（假失败），继续执行
-                log.info("热点商品-Redis扣减失败但流水存在（假失败），继续执行: orderId={}", orderId);
             }
 
             // 2. 创建订单
@@ -160,7 +210,7 @@ public class HotGoodsOrderCreateTransactionListener implements TransactionListen
     }
 
     @Override
-    public LocalTransactionState checkLocalTransaction(MessageExt messageExt) {
+    protected LocalTransactionState doCheckLocalTransaction(MessageExt messageExt) {
         String orderId = "unknown";
         try {
             // 1. 解析消息（参考 NFTurbo）
@@ -5,14 +5,17 @@ import cn.bugstack.domain.trade.adapter.repository.ITradeRepository;
 import cn.bugstack.domain.trade.model.aggregate.GroupBuyOrderAggregate;
 import cn.bugstack.domain.trade.adapter.port.IRedisAdapter;
 import cn.bugstack.domain.trade.model.entity.MarketPayOrderEntity;
+import cn.bugstack.domain.trade.model.entity.StockAdmissionEntity;
+import cn.bugstack.domain.trade.model.valobj.StockAdmissionCodeEnumVO;
+import cn.bugstack.domain.trade.model.valobj.StockAdmissionResultVO;
 import cn.bugstack.domain.trade.model.valobj.TradeOrderStatusEnumVO;
+import cn.bugstack.domain.trade.service.lock.factory.TradeLockRuleFilterFactory;
 import cn.bugstack.types.exception.AppException;
 import com.alibaba.fastjson2.JSON;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import cn.bugstack.infrastructure.mq.param.MessageBody;
 import org.apache.rocketmq.client.producer.LocalTransactionState;
-import org.apache.rocketmq.client.producer.TransactionListener;
 import org.apache.rocketmq.common.message.Message;
 import org.apache.rocketmq.common.message.MessageExt;
 import org.springframework.stereotype.Component;
@@ -24,7 +27,7 @@ import javax.annotation.Resource;
  */
 @Slf4j
 @Component
-public class OrderCreateTransactionListener implements TransactionListener {
+public class OrderCreateTransactionListener extends AbstractTransactionListener {
 
     // 队伍库存键前缀
     private static final String TEAM_STOCK_KEY_PREFIX = "group_buy_market_team_stock_key_";
@@ -44,10 +47,10 @@ public class OrderCreateTransactionListener implements TransactionListener {
     private ITradeRepository tradeRepository;
 
     @Override
-    public LocalTransactionState executeLocalTransaction(Message message, Object o) {
+    protected LocalTransactionState doExecuteLocalTransaction(Message message, Object o) {
         GroupBuyOrderAggregate aggregate = null;
-        boolean goodsStockDecreased = false;
-        boolean teamStockDecreased = false;
+        StockAdmissionEntity admission = null;
+        boolean admitted = false;
         boolean dbStockDecreased = false;
         
         try {
@@ -59,66 +62,34 @@ public class OrderCreateTransactionListener implements TransactionListener {
             Long activityId = aggregate.getPayActivityEntity().getActivityId();
             String goodsId = aggregate.getPayDiscountEntity().getGoodsId();
             String teamId = aggregate.getPayActivityEntity().getTeamId();
-            Integer targetCount = aggregate.getTargetCount();
 
-            String identifier = buildIdentifier(userId, orderId);
-
-            // 1. 扣减商品库存（Redis 预扣减）
-            String goodsStockKey = GOODS_STOCK_KEY_PREFIX + activityId + "_" + goodsId;
-            String goodsStockLogKey = GOODS_STOCK_LOG_KEY_PREFIX + activityId + "_" + goodsId;
-
-            Long goodsStockResult = redisAdapter.decreaseStockWithLog(goodsStockKey, goodsStockLogKey, identifier, 1);
-            if (goodsStockResult == null || goodsStockResult < 0) {
-                log.warn("事务预扣减商品库存失败: activityId={}, goodsId={}, orderId={}", activityId, goodsId, orderId);
-                return LocalTransactionState.ROLLBACK_MESSAGE;
-            }
-            goodsStockDecreased = true; // 标记商品库存已扣减
-            log.info("事务预扣减商品库存成功: activityId={}, goodsId={}, orderId={}, 剩余库存={}",
-                    activityId, goodsId, orderId, goodsStockResult);
-
-            // 2. 扣减队伍库存（如果有 teamId）
-            String teamStockKey = null;
-            String teamStockLogKey = null;
-            if (StringUtils.isNotBlank(teamId) && targetCount != null && targetCount > 0) {
-                teamStockKey = TEAM_STOCK_KEY_PREFIX + activityId + "_" + teamId;
-                teamStockLogKey = TEAM_STOCK_LOG_KEY_PREFIX + activityId + "_" + teamId;
-
-                Long teamStockResult = redisAdapter.decreaseTeamStockDynamically(
-                        teamStockKey, teamStockLogKey, identifier, targetCount);
-
-                if (teamStockResult == null || teamStockResult < 0) {
-                    if (teamStockResult == -1L) {
-                        log.warn("事务预扣减队伍库存失败-队伍已满: teamId={}, orderId={}, targetCount={}",
-                                teamId, orderId, targetCount);
-                    } else if (teamStockResult == -2L) {
-                        log.warn("事务预扣减队伍库存失败-重复操作: teamId={}, orderId={}", teamId, orderId);
-                    } else {
-                        log.warn("事务预扣减队伍库存失败: teamId={}, orderId={}", teamId, orderId);
-                    }
-                    // 队伍库存扣减失败，回滚商品库存
-                    rollbackGoodsStock(goodsStockKey, goodsStockLogKey, identifier, orderId);
-                    return LocalTransactionState.ROLLBACK_MESSAGE;
+            // 1. Redis 准入（商品库存 + 队伍名额 + 用户参与次数，一次往返）
+            admission = buildAdmission(aggregate);
+            StockAdmissionResultVO admissionResult = redisAdapter.admitOrder(admission);
+            if (!admissionResult.isSuccess()) {
+                log.warn("事务预扣减库存失败: activityId={}, goodsId={}, teamId={}, orderId={}, code={}",
+                        activityId, goodsId, teamId, orderId, admissionResult.getCode());
+                if (StockAdmissionCodeEnumVO.ERROR.equals(admissionResult.getCode())) {
+                    // 脚本执行异常（超时等），结果未知：已扣减则回滚，未扣减则写入回滚标记，迟到执行的准入不再扣减
+                    compensate(admission);
                 }
-                teamStockDecreased = true; // 标记队伍库存已扣减
-                log.info("事务预扣减队伍库存成功: teamId={}, orderId={}, 当前人数={}/{}",
-                        teamId, orderId, teamStockResult, targetCount);
-            } else {
-                log.info("首次开团，无需扣减队伍库存: orderId={}", orderId);
+                return LocalTransactionState.ROLLBACK_MESSAGE;
             }
+            admitted = true;
+            log.info("事务预扣减库存成功: activityId={}, goodsId={}, orderId={}, 剩余库存={}, 队伍当前人数={}",
+                    activityId, goodsId, orderId, admissionResult.getGoodsRemainingStock(), admissionResult.getTeamCurrentCount());
 
-            // 3. 扣减数据库库存（参考 NFTurbo，在本地事务中同步执行）
+            // 2. 扣减数据库库存（参考 NFTurbo，在本地事务中同步执行）
             boolean decreaseResult = skuRepository.decreaseSkuStock(activityId, goodsId, 1, orderId, userId);
             if (!decreaseResult) {
                 log.error("数据库库存扣减失败: orderId={}, activityId={}, goodsId={}", orderId, activityId, goodsId);
-                // 回滚所有已扣减的库存
-                rollbackAllStocks(goodsStockKey, goodsStockLogKey, teamStockKey, teamStockLogKey,
-                        identifier, orderId, teamStockDecreased);
+                compensate(admission);
                 return LocalTransactionState.ROLLBACK_MESSAGE;
             }
             dbStockDecreased = true; // 标记数据库库存已扣减
             log.info("数据库库存扣减成功: orderId={}, activityId={}, goodsId={}", orderId, activityId, goodsId);
 
-            // 4. 创建订单（参考 NFTurbo，在本地事务中同步执行）
+            // 3. 创建订单（参考 NFTurbo，在本地事务中同步执行）
             try {
                 MarketPayOrderEntity orderEntity = tradeRepository.lockMarketPayOrder(aggregate);
                 log.info("订单创建成功: orderId={}, teamId={}", orderId, orderEntity.getTeamId());
@@ -128,17 +99,14 @@ public class OrderCreateTransactionListener implements TransactionListener {
             } catch (AppException e) {
                 log.warn("订单创建失败，回滚所有库存: orderId={}, code={}", orderId, e.getCode());
                 // 回滚数据库库存
-                if (dbStockDecreased) {
-                    try {
-                        skuRepository.releaseSkuStock(activityId, goodsId, 1);
-                        log.info("回滚数据库库存成功: orderId={}", orderId);
-                    } catch (Exception ex) {
-                        log.error("回滚数据库库存失败: orderId={}", orderId, ex);
-                    }
+                try {
+                    skuRepository.releaseSkuStock(activityId, goodsId, 1);
+                    log.info("回滚数据库库存成功: orderId={}", orderId);
+                } catch (Exception ex) {
+                    log.error("回滚数据库库存失败: orderId={}", orderId, ex);
                 }
-                // 回滚 Redis 库存（商品库存 + 队伍库存）
-                rollbackAllStocks(goodsStockKey, goodsStockLogKey, teamStockKey, teamStockLogKey,
-                        identifier, orderId, teamStockDecreased);
+                // 回滚 Redis 准入（商品库存 + 队伍名额 + 用户参与次数）
+                compensate(admission);
                 return LocalTransactionState.ROLLBACK_MESSAGE;
             }
         } catch (Exception e) {
@@ -146,35 +114,20 @@ public class OrderCreateTransactionListener implements TransactionListener {
             
             // 异常时回滚所有已扣减的库存
             if (aggregate != null) {
-                String userId = aggregate.getUserEntity().getUserId();
-                String orderId = aggregate.getOrderId();
-                Long activityId = aggregate.getPayActivityEntity().getActivityId();
-                String goodsId = aggregate.getPayDiscountEntity().getGoodsId();
-                String teamId = aggregate.getPayActivityEntity().getTeamId();
-                
-                String identifier = buildIdentifier(userId, orderId);
-                String goodsStockKey = GOODS_STOCK_KEY_PREFIX + activityId + "_" + goodsId;
-                String goodsStockLogKey = GOODS_STOCK_LOG_KEY_PREFIX + activityId + "_" + goodsId;
-                
-                String teamStockKey = null;
-                String teamStockLogKey = null;
-                if (StringUtils.isNotBlank(teamId)) {
-                    teamStockKey = TEAM_STOCK_KEY_PREFIX + activityId + "_" + teamId;
-                    teamStockLogKey = TEAM_STOCK_LOG_KEY_PREFIX + activityId + "_" + teamId;
-                }
-                
                 // 回滚数据库库存
                 if (dbStockDecreased) {
                     try {
-                        skuRepository.releaseSkuStock(activityId, goodsId, 1);
+                        skuRepository.releaseSkuStock(aggregate.getPayActivityEntity().getActivityId(),
+                                aggregate.getPayDiscountEntity().getGoodsId(), 1);
                     } catch (Exception ex) {
-                        log.error("异常回滚数据库库存失败: orderId={}", orderId, ex);
+                        log.error("异常回滚数据库库存失败: orderId={}", aggregate.getOrderId(), ex);
                     }
                 }
                 
-                // 回滚 Redis 库存
-                rollbackAllStocks(goodsStockKey, goodsStockLogKey, teamStockKey, teamStockLogKey,
-                        identifier, orderId, teamStockDecreased);
+                // 回滚 Redis 准入
+                if (admitted) {
+                    compensate(admission);
+                }
             }
             
             return LocalTransactionState.ROLLBACK_MESSAGE;
@@ -182,78 +135,50 @@ public class OrderCreateTransactionListener implements TransactionListener {
     }
 
     /**
-     * 回滚商品库存
-     */
-    private void rollbackGoodsStock(String goodsStockKey, String goodsStockLogKey, String identifier, String orderId) {
-        try {
-            // 生成回滚标识（避免与原始 identifier 冲突）
-            String rollbackIdentifier = "ROLLBACK_MESSAGE_" + identifier;
-
-            Long rollbackResult = redisAdapter.increaseStockWithLog(
-                    goodsStockKey,
-                    goodsStockLogKey,
-                    rollbackIdentifier,
-                    1
-            );
-
-            log.info("回滚商品库存成功: orderId={}, 回滚后库存={}", orderId, rollbackResult);
-        } catch (Exception e) {
-            log.error("回滚商品库存失败: orderId={}", orderId, e);
-        }
-    }
-
-    /**
-     * 回滚队伍库存（队伍库存的扣减实际上是 +1，所以回滚是 -1）
-     * 
-     * 注意：decreaseTeamStockDynamically 是增加队伍人数（+1），所以回滚应该是减少队伍人数（-1）
-     * 使用 decreaseStockWithLog 来实现回滚，减少 1 个队伍人数
+     * 构建准入命令
+     * 参与次数上限在准入脚本中与累加原子执行，锁单规则过滤中的校验只是提前拦截
      */
-    private void rollbackTeamStock(String teamStockKey, String teamStockLogKey, String identifier, String orderId) {
-        try {
-            // 生成回滚标识（避免与原始 identifier 冲突）
-            String rollbackIdentifier = "ROLLBACK_MESSAGE_" + identifier;
-
-            // 队伍库存的扣减是 +1（增加队伍人数），所以回滚是 -1（减少队伍人数）
-            // 使用 decreaseStockWithLog 来减少队伍人数
-            // decreaseStockWithLog 内部会检查库存是否足够，如果不足会返回错误，这里捕获异常即可
-            Long rollbackResult = redisAdapter.decreaseStockWithLog(
-                    teamStockKey,
-                    teamStockLogKey,
-                    rollbackIdentifier,
-                    1
-            );
-            
-            if (rollbackResult != null && rollbackResult >= 0) {
-                log.info("回滚队伍库存成功: orderId={}, teamStockKey={}, 回滚后人数={}", 
-                        orderId, teamStockKey, rollbackResult);
-            } else {
-                log.warn("回滚队伍库存失败-库存不足或已为0: orderId={}, teamStockKey={}, result={}", 
-                        orderId, teamStockKey, rollbackResult);
-            }
-        } catch (Exception e) {
-            log.error("回滚队伍库存失败: orderId={}, teamStockKey={}", orderId, teamStockKey, e);
+    private StockAdmissionEntity buildAdmission(GroupBuyOrderAggregate aggregate) {
+        String userId = aggregate.getUserEntity().getUserId();
+        String orderId = aggregate.getOrderId();
+        Long activityId = aggregate.getPayActivityEntity().getActivityId();
+        String goodsId = aggregate.getPayDiscountEntity().getGoodsId();
+        String teamId = aggregate.getPayActivityEntity().getTeamId();
+        Integer targetCount = aggregate.getTargetCount();
+
+        StockAdmissionEntity.StockAdmissionEntityBuilder builder = StockAdmissionEntity.builder()
+                .orderId(orderId)
+                .identifier(buildIdentifier(userId, orderId))
+                .goodsStockKey(GOODS_STOCK_KEY_PREFIX + activityId + "_" + goodsId)
+                .goodsStockLogKey(GOODS_STOCK_LOG_KEY_PREFIX + activityId + "_" + goodsId)
+                .count(1)
+                .userTakeKey(TradeLockRuleFilterFactory.generateUserTakeKey(activityId, userId))
+                .takeLimit(aggregate.getPayActivityEntity().getTakeLimitCount());
+
+        // 首次开团无需占用队伍名额
+        if (StringUtils.isNotBlank(teamId) && targetCount != null && targetCount > 0) {
+            builder.teamStockKey(TEAM_STOCK_KEY_PREFIX + activityId + "_" + teamId)
+                    .teamStockLogKey(TEAM_STOCK_LOG_KEY_PREFIX + activityId + "_" + teamId)
+                    .teamTargetCount(targetCount);
         }
+        return builder.build();
     }
 
     /**
-     * 回滚所有库存（商品库存 + 队伍库存）
+     * 回滚 Redis 准入（商品库存 + 队伍名额 + 用户参与次数），补偿脚本按流水判断，重复调用无副作用
      */
-    private void rollbackAllStocks(String goodsStockKey, String goodsStockLogKey,
-                                   String teamStockKey, String teamStockLogKey,
-                                   String identifier, String orderId, boolean teamStockDecreased) {
-        // 回滚商品库存
-        if (goodsStockKey != null && goodsStockLogKey != null) {
-            rollbackGoodsStock(goodsStockKey, goodsStockLogKey, identifier, orderId);
-        }
-        
-        // 回滚队伍库存（如果已扣减）
-        if (teamStockDecreased && teamStockKey != null && teamStockLogKey != null) {
-            rollbackTeamStock(teamStockKey, teamStockLogKey, identifier, orderId);
+    private void compensate(StockAdmissionEntity admission) {
+        StockAdmissionResultVO result = redisAdapter.compensateOrder(admission);
+        if (StockAdmissionCodeEnumVO.ERROR.equals(result.getCode())) {
+            // 扣减流水仍保留，由 InventoryCompensateJob 兜底回滚
+            log.error("回滚Redis库存失败，等待补偿任务处理: orderId={}", admission.getOrderId());
+            return;
         }
+        log.info("回滚Redis库存完成: orderId={}, code={}, 回滚后库存={}", admission.getOrderId(), result.getCode(), result.getGoodsRemainingStock());
     }
 
     @Override
-    public LocalTransactionState checkLocalTransaction(MessageExt messageExt) {
+    protected LocalTransactionState doCheckLocalTransaction(MessageExt messageExt) {
         String orderId = "unknown";
         try {
             // 1. 解析消息（参考 NFTurbo）
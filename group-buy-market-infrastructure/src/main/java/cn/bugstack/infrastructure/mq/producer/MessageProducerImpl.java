@@ -1,6 +1,7 @@
 package cn.bugstack.infrastructure.mq.producer;
 
 import cn.bugstack.domain.trade.adapter.port.IMessageProducer;
+import cn.bugstack.infrastructure.log.HotPathLogger;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 
@@ -13,6 +14,8 @@ import javax.annotation.Resource;
 @Slf4j
 @Component
 public class MessageProducerImpl implements IMessageProducer {
+
+    private static final HotPathLogger hotLog = HotPathLogger.getLogger(MessageProducerImpl.class);
     
     @Resource
     private StreamProducer streamProducer;
@@ -24,7 +27,7 @@ public class MessageProducerImpl implements IMessageProducer {
             // topic 作为 bindingName（如：hotGoodsOrderCreate-out-0）
             // arg 参数会通过事务监听器获取，这里只需要发送消息
             boolean success = streamProducer.send(topic, tag, message);
-            log.info("发送RocketMQ事务消息: topic={}, tag={}, result={}", topic, tag, success);
+            hotLog.info("发送RocketMQ事务消息: topic={}, tag={}, result={}", topic, tag, success);
             return success;
         } catch (Exception e) {
             log.error("发送RocketMQ事务消息失败: topic={}, tag={}", topic, tag, e);
@@ -37,7 +40,7 @@ public class MessageProducerImpl implements IMessageProducer {
         try {
             // 使用 StreamProducer 发送延迟消息
             boolean success = streamProducer.send(topic, tag, message, delayLevel);
-            log.info("发送RocketMQ延迟消息: topic={}, tag={}, delayLevel={}, result={}", topic, tag, delayLevel, success);
+            hotLog.info("发送RocketMQ延迟消息: topic={}, tag={}, delayLevel={}, result={}", topic, tag, delayLevel, success);
             return success;
         } catch (Exception e) {
             log.error("发送RocketMQ延迟消息失败: topic={}, tag={}, delayLevel={}", topic, tag, delayLevel, e);
@@ -50,7 +53,7 @@ public class MessageProducerImpl implements IMessageProducer {
         try {
             // 使用 StreamProducer 发送普通消息
             boolean success = streamProducer.send(topic, tag, message);
-            log.info("发送RocketMQ普通消息: topic={}, tag={}, result={}", topic, tag, success);
+            hotLog.info("发送RocketMQ普通消息: topic={}, tag={}, result={}", topic, tag, success);
             return success;
         } catch (Exception e) {
             log.error("发送RocketMQ普通消息失败: topic={}, tag={}", topic, tag, e);
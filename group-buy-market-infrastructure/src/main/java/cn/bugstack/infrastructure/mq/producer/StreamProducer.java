@@ -1,7 +1,9 @@
 package cn.bugstack.infrastructure.mq.producer;
 
+import cn.bugstack.infrastructure.log.HotPathLogger;
+import cn.bugstack.infrastructure.log.LazyLog;
 import cn.bugstack.infrastructure.mq.param.MessageBody;
-import com.alibaba.fastjson.JSON;
+import cn.bugstack.types.trace.TraceContext;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.rocketmq.common.message.MessageConst;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -13,6 +15,7 @@ import java.util.UUID;
 
 /**
  * Stream 消息生产者（参考 NFTurbo）
+ * 所有消息携带 traceId 与发送时间消息头，由事务监听器、Stream 消费者恢复链路上下文
  *
  * @author liang.tian
  */
@@ -20,6 +23,8 @@ import java.util.UUID;
 @Component
 public class StreamProducer {
 
+    private static final HotPathLogger hotLog = HotPathLogger.getLogger(StreamProducer.class);
+
     public static final int DELAY_LEVEL_1_M = 5;
     public static final int DELAY_LEVEL_30_S = 4;
     public static final String ROCKET_MQ_MESSAGE_ID = "ROCKET_MQ_MESSAGE_ID";
@@ -42,11 +47,11 @@ public class StreamProducer {
         MessageBody message = new MessageBody()
                 .setIdentifier(UUID.randomUUID().toString())
                 .setBody(msg);
-        log.info("发送消息: bindingName={}, tag={}, message={}", bindingName, tag, JSON.toJSONString(message));
-        boolean result = streamBridge.send(bindingName, MessageBuilder.withPayload(message)
+        hotLog.info("发送消息: bindingName={}, tag={}, message={}", bindingName, tag, LazyLog.json(message));
+        boolean result = streamBridge.send(bindingName, withTrace(MessageBuilder.withPayload(message))
                 .setHeader("TAGS", tag)
                 .build());
-        log.info("发送消息结果: bindingName={}, tag={}, result={}", bindingName, tag, result);
+        hotLog.info("发送消息结果: bindingName={}, tag={}, result={}", bindingName, tag, result);
         return result;
     }
 
@@ -64,12 +69,12 @@ public class StreamProducer {
         MessageBody message = new MessageBody()
                 .setIdentifier(UUID.randomUUID().toString())
                 .setBody(msg);
-        log.info("发送延迟消息: bindingName={}, tag={}, delayLevel={}, message={}", bindingName, tag, delayLevel, JSON.toJSONString(message));
-        boolean result = streamBridge.send(bindingName, MessageBuilder.withPayload(message)
+        hotLog.info("发送延迟消息: bindingName={}, tag={}, delayLevel={}, message={}", bindingName, tag, delayLevel, LazyLog.json(message));
+        boolean result = streamBridge.send(bindingName, withTrace(MessageBuilder.withPayload(message))
                 .setHeader("TAGS", tag)
                 .setHeader(MessageConst.PROPERTY_DELAY_TIME_LEVEL, delayLevel)
                 .build());
-        log.info("发送延迟消息结果: bindingName={}, tag={}, delayLevel={}, result={}", bindingName, tag, delayLevel, result);
+        hotLog.info("发送延迟消息结果: bindingName={}, tag={}, delayLevel={}, result={}", bindingName, tag, delayLevel, result);
         return result;
     }
 
@@ -88,14 +93,22 @@ public class StreamProducer {
         MessageBody message = new MessageBody()
                 .setIdentifier(UUID.randomUUID().toString())
                 .setBody(msg);
-        log.info("发送消息（带自定义header）: bindingName={}, tag={}, headerKey={}, headerValue={}, message={}", 
-                bindingName, tag, headerKey, headerValue, JSON.toJSONString(message));
-        boolean result = streamBridge.send(bindingName, MessageBuilder.withPayload(message)
+        hotLog.info("发送消息（带自定义header）: bindingName={}, tag={}, headerKey={}, headerValue={}, message={}", 
+                bindingName, tag, headerKey, headerValue, LazyLog.json(message));
+        boolean result = streamBridge.send(bindingName, withTrace(MessageBuilder.withPayload(message))
                 .setHeader("TAGS", tag)
                 .setHeader(headerKey, headerValue)
                 .build());
-        log.info("发送消息结果（带自定义header）: bindingName={}, tag={}, result={}", bindingName, tag, result);
+        hotLog.info("发送消息结果（带自定义header）: bindingName={}, tag={}, result={}", bindingName, tag, result);
         return result;
     }
-}
 
+    private MessageBuilder<MessageBody> withTrace(MessageBuilder<MessageBody> builder) {
+        // 定时任务等没有 traceId 的线程，从消息开始一条新链路
+        String traceId = TraceContext.getTraceId();
+        return builder
+                .setHeader(TraceContext.MESSAGE_HEADER, null != traceId ? traceId : TraceContext.newTraceId())
+                .setHeader(TraceContext.MESSAGE_SEND_TIME_HEADER, String.valueOf(System.currentTimeMillis()));
+    }
+
+}
@@ -0,0 +1,49 @@
+package cn.bugstack.infrastructure.readwrite;
+
+import cn.bugstack.infrastructure.redis.IRedisService;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * 读己之写
+ * <p>
+ * 用户写入（锁单、结算、退单）时在 Redis 记录标记，有效期覆盖从库最大允许延迟；标记有效期间该用户的查询读主库。
+ * 标记跨实例共享，用户写入后请求落到其他实例同样生效。Redis 异常时按刚写入处理（读主库）。
+ *
+ * @author liang.tian
+ */
+@Slf4j
+public class ReadYourWrites {
+
+    private static final String KEY_PREFIX = "group_buy_market_recent_write_";
+
+    private final IRedisService redisService;
+    private final boolean enabled;
+    private final long windowMillis;
+
+    public ReadYourWrites(IRedisService redisService, boolean enabled, long windowMillis) {
+        this.redisService = redisService;
+        this.enabled = enabled;
+        this.windowMillis = windowMillis;
+    }
+
+    public void markWrite(String userId) {
+        if (!enabled || StringUtils.isBlank(userId)) return;
+        try {
+            redisService.setValue(KEY_PREFIX + userId, "1", windowMillis);
+        } catch (Exception e) {
+            log.warn("记录用户写入标记失败 userId:{}", userId, e);
+        }
+    }
+
+    public boolean isRecentlyWritten(String userId) {
+        if (!enabled || StringUtils.isBlank(userId)) return false;
+        try {
+            return redisService.isExists(KEY_PREFIX + userId);
+        } catch (Exception e) {
+            log.warn("查询用户写入标记失败 userId:{}", userId, e);
+            return true;
+        }
+    }
+
+}
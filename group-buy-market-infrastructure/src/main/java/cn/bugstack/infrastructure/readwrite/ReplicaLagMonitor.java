@@ -0,0 +1,178 @@
+package cn.bugstack.infrastructure.readwrite;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.sql.*;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 从库复制延迟监测
+ * <p>
+ * 每个从库保持一条独立的监测连接（不占用业务连接池），定时执行 SHOW REPLICA STATUS 读取复制延迟：
+ * 1. 任一从库延迟超过 maxLagSeconds、复制线程停止、连接失败时，{@link #isAvailable()} 返回 false，{@link ReplicaRead} 查询全部回到主库
+ * 2. 所有从库恢复后自动重新读从库
+ * <p>
+ * ShardingSphere 静态读写分离不支持在运行时摘除单个从库（动态策略依赖 MGR 数据库发现），这里整体回退主库。
+ *
+ * @author liang.tian
+ */
+@Slf4j
+public class ReplicaLagMonitor {
+
+    private final List<Replica> replicas;
+    private final long maxLagSeconds;
+    private final long checkIntervalMillis;
+    private final int checkTimeoutMillis;
+
+    private ScheduledExecutorService scheduler;
+    private volatile boolean available;
+
+    public ReplicaLagMonitor(List<Replica> replicas, long maxLagSeconds, long checkIntervalMillis, int checkTimeoutMillis) {
+        this.replicas = replicas;
+        this.maxLagSeconds = maxLagSeconds;
+        this.checkIntervalMillis = checkIntervalMillis;
+        this.checkTimeoutMillis = checkTimeoutMillis;
+    }
+
+    public void start() {
+        if (replicas.isEmpty()) {
+            log.info("未配置从库或读写分离关闭，全部查询读主库");
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "replica-lag-monitor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::check, 0L, checkIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public void stop() {
+        if (null != scheduler) {
+            scheduler.shutdownNow();
+        }
+        for (Replica replica : replicas) {
+            replica.closeConnection();
+        }
+    }
+
+    private void check() {
+        boolean allHealthy = true;
+        for (Replica replica : replicas) {
+            replica.check(maxLagSeconds, checkTimeoutMillis);
+            allHealthy &= replica.isHealthy();
+        }
+        if (allHealthy != available) {
+            if (allHealthy) {
+                log.info("从库复制延迟恢复，查询恢复读从库");
+            } else {
+                log.warn("从库复制延迟超限或不可用，查询回退主库: maxLag={}s, replicas={}", maxLagSeconds, replicas);
+            }
+        }
+        available = allHealthy;
+    }
+
+    public boolean isAvailable() {
+        return available;
+    }
+
+    public List<Replica> getReplicas() {
+        return Collections.unmodifiableList(replicas);
+    }
+
+    public static class Replica {
+
+        private final String name;
+        private final String url;
+        private final String username;
+        private final String password;
+
+        private Connection connection;
+        // MySQL 8.0.22 之前不支持 SHOW REPLICA STATUS，失败后改用 SHOW SLAVE STATUS
+        private boolean legacyStatement;
+        // 复制延迟（秒），-1 表示未知（连接失败、复制线程停止、非从库）
+        private volatile long lagSeconds = -1L;
+        private volatile boolean healthy;
+
+        public Replica(String name, String url, String username, String password) {
+            this.name = name;
+            this.url = url;
+            this.username = username;
+            this.password = password;
+        }
+
+        void check(long maxLagSeconds, int checkTimeoutMillis) {
+            long lag;
+            try {
+                lag = queryLagSeconds(checkTimeoutMillis);
+            } catch (SQLException e) {
+                log.warn("从库复制延迟查询失败 replica:{} {}", name, e.getMessage());
+                closeConnection();
+                lag = -1L;
+            }
+            lagSeconds = lag;
+            healthy = lag >= 0L && lag <= maxLagSeconds;
+        }
+
+        private long queryLagSeconds(int checkTimeoutMillis) throws SQLException {
+            if (null == connection || connection.isClosed()) {
+                Properties properties = new Properties();
+                properties.setProperty("user", username);
+                properties.setProperty("password", password);
+                properties.setProperty("connectTimeout", String.valueOf(checkTimeoutMillis));
+                properties.setProperty("socketTimeout", String.valueOf(checkTimeoutMillis));
+                connection = DriverManager.getConnection(url, properties);
+            }
+            if (!legacyStatement) {
+                try {
+                    return queryLagSeconds("SHOW REPLICA STATUS", "Seconds_Behind_Source");
+                } catch (SQLSyntaxErrorException e) {
+                    legacyStatement = true;
+                }
+            }
+            return queryLagSeconds("SHOW SLAVE STATUS", "Seconds_Behind_Master");
+        }
+
+        private long queryLagSeconds(String sql, String column) throws SQLException {
+            try (Statement statement = connection.createStatement();
+                 ResultSet resultSet = statement.executeQuery(sql)) {
+                if (!resultSet.next()) return -1L;
+                long lag = resultSet.getLong(column);
+                return resultSet.wasNull() ? -1L : lag;
+            }
+        }
+
+        void closeConnection() {
+            if (null == connection) return;
+            try {
+                connection.close();
+            } catch (SQLException ignored) {
+            }
+            connection = null;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getLagSeconds() {
+            return lagSeconds;
+        }
+
+        public boolean isHealthy() {
+            return healthy;
+        }
+
+        @Override
+        public String toString() {
+            return name + "(lag=" + lagSeconds + "s)";
+        }
+
+    }
+
+}
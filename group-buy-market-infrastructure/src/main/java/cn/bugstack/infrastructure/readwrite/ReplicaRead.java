@@ -0,0 +1,25 @@
+package cn.bugstack.infrastructure.readwrite;
+
+import java.lang.annotation.*;
+
+/**
+ * 允许读从库
+ * <p>
+ * 未标注的查询一律读主库。标注在能容忍秒级延迟的仓储查询方法上（队伍列表、统计、任务扫描），满足以下条件时读从库：
+ * 1. 当前不在事务中（事务内读主库，保证读到本事务的写入）
+ * 2. 从库复制延迟正常（见 {@link ReplicaLagMonitor}）
+ * 3. 设置了 {@link #userIdIndex()} 时，该用户近期没有写入（见 {@link ReadYourWrites}）
+ *
+ * @author liang.tian
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface ReplicaRead {
+
+    /**
+     * 方法参数中用户ID的位置；查询用户自己的数据时设置，用户刚写入过则读主库
+     */
+    int userIdIndex() default -1;
+
+}
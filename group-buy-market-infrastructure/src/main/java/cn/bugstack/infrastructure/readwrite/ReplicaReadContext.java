@@ -0,0 +1,38 @@
+package cn.bugstack.infrastructure.readwrite;
+
+/**
+ * 读库路由上下文
+ * <p>
+ * 由 {@link ReplicaReadInterceptor} 在允许读从库的方法执行期间设置，SQL 执行层据此决定是否强制路由主库。
+ *
+ * @author liang.tian
+ */
+public class ReplicaReadContext {
+
+    private static final ThreadLocal<Boolean> REPLICA_ALLOWED = new ThreadLocal<>();
+
+    private ReplicaReadContext() {
+    }
+
+    public static boolean isReplicaAllowed() {
+        return Boolean.TRUE.equals(REPLICA_ALLOWED.get());
+    }
+
+    /**
+     * @return 设置前的值，用于 {@link #detach(Boolean)}
+     */
+    public static Boolean attach() {
+        Boolean previous = REPLICA_ALLOWED.get();
+        REPLICA_ALLOWED.set(Boolean.TRUE);
+        return previous;
+    }
+
+    public static void detach(Boolean previous) {
+        if (null == previous) {
+            REPLICA_ALLOWED.remove();
+        } else {
+            REPLICA_ALLOWED.set(previous);
+        }
+    }
+
+}
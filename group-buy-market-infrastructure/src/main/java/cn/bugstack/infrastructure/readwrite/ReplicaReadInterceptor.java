@@ -0,0 +1,103 @@
+package cn.bugstack.infrastructure.readwrite;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.ClassUtils;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 从库读拦截器
+ * <p>
+ * 按 {@link ReplicaRead} 判断本次查询能否读从库，可以时在方法执行期间设置 {@link ReplicaReadContext}，否则保持默认的读主库。
+ * 读己之写依赖 Redis，通过 ObjectProvider 延迟获取，避免基础设施 Advisor 提前初始化 Redis 客户端。
+ *
+ * @author liang.tian
+ */
+public class ReplicaReadInterceptor implements MethodInterceptor {
+
+    private final ReplicaLagMonitor lagMonitor;
+    private final ObjectProvider<ReadYourWrites> readYourWrites;
+    private final Map<Method, ReplicaRead> annotations = new ConcurrentHashMap<>();
+
+    private final AtomicLong replicaCount = new AtomicLong();
+    private final AtomicLong transactionCount = new AtomicLong();
+    private final AtomicLong lagCount = new AtomicLong();
+    private final AtomicLong recentWriteCount = new AtomicLong();
+
+    public ReplicaReadInterceptor(ReplicaLagMonitor lagMonitor, ObjectProvider<ReadYourWrites> readYourWrites) {
+        this.lagMonitor = lagMonitor;
+        this.readYourWrites = readYourWrites;
+    }
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        if (ReplicaReadContext.isReplicaAllowed() || !routeToReplica(invocation)) {
+            return invocation.proceed();
+        }
+
+        Boolean previous = ReplicaReadContext.attach();
+        try {
+            return invocation.proceed();
+        } finally {
+            ReplicaReadContext.detach(previous);
+        }
+    }
+
+    private boolean routeToReplica(MethodInvocation invocation) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            transactionCount.incrementAndGet();
+            return false;
+        }
+        if (!lagMonitor.isAvailable()) {
+            lagCount.incrementAndGet();
+            return false;
+        }
+        ReplicaRead annotation = annotationOf(invocation);
+        int userIdIndex = null == annotation ? -1 : annotation.userIdIndex();
+        Object[] arguments = invocation.getArguments();
+        if (userIdIndex >= 0 && userIdIndex < arguments.length && arguments[userIdIndex] instanceof String
+                && readYourWrites.getObject().isRecentlyWritten((String) arguments[userIdIndex])) {
+            recentWriteCount.incrementAndGet();
+            return false;
+        }
+        replicaCount.incrementAndGet();
+        return true;
+    }
+
+    private ReplicaRead annotationOf(MethodInvocation invocation) {
+        Method method = invocation.getMethod();
+        ReplicaRead cached = annotations.get(method);
+        if (null != cached) return cached;
+
+        Class<?> targetClass = null == invocation.getThis() ? method.getDeclaringClass() : ClassUtils.getUserClass(invocation.getThis());
+        ReplicaRead annotation = AnnotatedElementUtils.findMergedAnnotation(AopUtils.getMostSpecificMethod(method, targetClass), ReplicaRead.class);
+        if (null == annotation) return null;
+        annotations.put(method, annotation);
+        return annotation;
+    }
+
+    public long getReplicaCount() {
+        return replicaCount.get();
+    }
+
+    public long getTransactionCount() {
+        return transactionCount.get();
+    }
+
+    public long getLagCount() {
+        return lagCount.get();
+    }
+
+    public long getRecentWriteCount() {
+        return recentWriteCount.get();
+    }
+
+}
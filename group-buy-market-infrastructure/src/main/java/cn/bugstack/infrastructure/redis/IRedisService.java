@@ -6,6 +6,8 @@ import java.math.BigInteger;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -40,6 +42,22 @@ public interface IRedisService {
      */
     <T> T getValue(String key);
 
+    /**
+     * 批量获取值（MGET）
+     *
+     * @param keys 键
+     * @return 存在的键值，不存在的键不在返回结果中
+     */
+    <T> Map<String, T> getValues(Collection<String> keys);
+
+    /**
+     * 批量设置值并设置过期时间（pipeline 执行）
+     *
+     * @param values  键值
+     * @param expired 过期时间（毫秒）
+     */
+    <T> void setValues(Map<String, T> values, long expired);
+
     /**
      * 获取队列
      *
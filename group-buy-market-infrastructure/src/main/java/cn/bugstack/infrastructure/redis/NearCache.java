@@ -0,0 +1,94 @@
+package cn.bugstack.infrastructure.redis;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 进程内近端缓存（Infrastructure层）
+ * <p>
+ * 活动、折扣、商品、渠道商品活动关联等配置数据读多写少，试算链路每次请求都要读取。
+ * 近端缓存位于 Redis 缓存之前：
+ * 1. 本地 Caffeine 缓存，写入后 {@link #EXPIRE_SECONDS} 秒过期，过期后回源 Redis
+ * 2. 配置变更时调用 {@link #invalidate}，删除本地缓存并通过 Redis Topic 广播，其他节点收到后删除本地缓存
+ * 3. 广播丢失时（节点断线等），最多在过期时间内读到旧值
+ *
+ * @author liang.tian
+ */
+@Slf4j
+@Component
+public class NearCache {
+
+    private static final String INVALIDATE_TOPIC = "group_buy_market_near_cache_invalidate";
+    // 本地缓存过期时间，即广播丢失时的最大不一致窗口
+    private static final long EXPIRE_SECONDS = 30L;
+    private static final long MAXIMUM_SIZE = 20_000L;
+
+    @Resource
+    private RedissonClient redissonClient;
+
+    private Cache<String, Object> localCache;
+
+    private RTopic invalidateTopic;
+
+    private int listenerId;
+
+    @PostConstruct
+    public void init() {
+        localCache = Caffeine.newBuilder()
+                .expireAfterWrite(EXPIRE_SECONDS, TimeUnit.SECONDS)
+                .maximumSize(MAXIMUM_SIZE)
+                .build();
+        invalidateTopic = redissonClient.getTopic(INVALIDATE_TOPIC, StringCodec.INSTANCE);
+        listenerId = invalidateTopic.addListener(String.class, (channel, key) -> localCache.invalidate(key));
+    }
+
+    @PreDestroy
+    public void destroy() {
+        invalidateTopic.removeListener(listenerId);
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T get(String key) {
+        return (T) localCache.getIfPresent(key);
+    }
+
+    public void put(String key, Object value) {
+        if (null == value) return;
+        localCache.put(key, value);
+    }
+
+    public void putAll(Map<String, ?> values) {
+        localCache.putAll(values);
+    }
+
+    /**
+     * 删除本地缓存并广播到其他节点
+     */
+    public void invalidate(Collection<String> keys) {
+        for (String key : keys) {
+            localCache.invalidate(key);
+            try {
+                invalidateTopic.publish(key);
+            } catch (Exception e) {
+                log.error("近端缓存失效广播失败，其他节点将在过期后回源: key={}", key, e);
+            }
+        }
+    }
+
+    public long size() {
+        return localCache.estimatedSize();
+    }
+
+}
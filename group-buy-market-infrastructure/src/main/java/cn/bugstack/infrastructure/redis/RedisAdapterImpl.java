@@ -1,18 +1,45 @@
 package cn.bugstack.infrastructure.redis;
 
 import cn.bugstack.domain.trade.adapter.port.IRedisAdapter;
+import cn.bugstack.domain.trade.model.entity.StockAdmissionEntity;
+import cn.bugstack.domain.trade.model.valobj.StockAdmissionBatchResultVO;
+import cn.bugstack.domain.trade.model.valobj.StockAdmissionCodeEnumVO;
+import cn.bugstack.domain.trade.model.valobj.StockAdmissionResultVO;
+import cn.bugstack.domain.trade.model.valobj.StockJournalEntryVO;
+import cn.bugstack.domain.trade.model.valobj.StockJournalGroupEnumVO;
+import cn.bugstack.domain.trade.model.valobj.StockRedisSnapshotVO;
+import cn.bugstack.domain.trade.model.valobj.UserTakeCountVO;
+import cn.bugstack.infrastructure.redis.lease.StockQuotaLeaseManager;
 import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.BatchOptions;
+import org.redisson.api.PendingEntry;
+import org.redisson.api.RBatch;
+import org.redisson.api.RBuckets;
+import org.redisson.api.RFuture;
+import org.redisson.api.RMap;
 import org.redisson.api.RScript;
+import org.redisson.api.RStream;
+import org.redisson.api.RStreamAsync;
 import org.redisson.api.RedissonClient;
+import org.redisson.api.StreamGroup;
+import org.redisson.api.StreamMessageId;
+import org.redisson.api.stream.StreamCreateGroupArgs;
+import org.redisson.api.stream.StreamReadGroupArgs;
+import org.redisson.api.stream.StreamTrimArgs;
 import org.redisson.client.RedisException;
 import org.redisson.client.codec.StringCodec;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.Resource;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Redis适配器实现 (Infrastructure层)
@@ -21,227 +48,383 @@ import java.util.Map;
 @Component
 public class RedisAdapterImpl implements IRedisAdapter {
     
+    // 租约节点心跳Key前缀（不能以租约Key前缀开头，避免被租约扫描命中）
+    private static final String LEASE_NODE_HEARTBEAT_KEY_PREFIX = "group_buy_market_lease_node_";
+    // 租约节点纪元，节点租约被回收时递增
+    private static final String LEASE_NODE_EPOCH_KEY_PREFIX = "group_buy_market_lease_epoch_";
+
+    // 商品库存、商品库存流水前缀
+    private static final String GOODS_STOCK_KEY_PREFIX = "group_buy_market_goods_stock_";
+    private static final String GOODS_STOCK_LOG_KEY_PREFIX = "group_buy_market_goods_stock_log_";
+    // 库存流水 Stream 前缀（每个 SKU 一个 Stream）
+    private static final String STOCK_JOURNAL_KEY_PREFIX = "group_buy_market_stock_journal_";
+    // 库存快照单个 SKU 最多读取的流水条数
+    private static final int SNAPSHOT_JOURNAL_LIMIT = 10000;
+    // 流水 Hash（幂等索引）过期时间、剩余时间低于该值时才续期
+    private static final long STOCK_LOG_TTL_SECONDS = 24 * 60 * 60L;
+    private static final long STOCK_LOG_RENEW_SECONDS = 12 * 60 * 60L;
+    // 库存流水 Stream 最大长度：消费组长期未确认（任务停摆、残留消费组）时按长度兜底裁剪
+    private static final int STOCK_JOURNAL_MAX_LEN = 1_000_000;
+    // MGET / MSET 单次 Key 数量（集群模式下 Redisson 按槽位拆分）
+    private static final int MULTI_KEY_BATCH_SIZE = 500;
+    // 参与次数 Hash 未设置过期时间时，扣回标记的过期时间
+    private static final long USER_TAKE_REFUND_DEFAULT_TTL_MS = 24 * 60 * 60 * 1000L;
+
+    /**
+     * 库存流水追加函数，各扣减/回滚脚本共用
+     * <p>
+     * 流水 Hash 只作为幂等索引：field 为请求标识，value 为变更数量（未准入的回滚标记为 0），完整流水追加到 Stream，
+     * 不设置过期时间，全部消费组确认后才会被裁剪。Stream 不存在时先创建全部消费组（从第一条流水开始消费），再 XADD。
+     * <p>
+     * 流水 Hash 剩余过期时间不足12小时才续期到24小时（keepLog），不在每次写入时重置过期时间，
+     * 每条记录至少保留12小时。
+     */
+    private static final String JOURNAL_FUNCTION = buildJournalFunction();
+
     @Resource
     private RedissonClient redissonClient;
 
     @Override
-    public Long decreaseTeamStockDynamically(String stockKey, String logKey, String identifier, int targetCount) {
+    public String getStockDecreaseLog(String logKey, String identifier) {
+        try {
+            String luaScript = "return redis.call('hget', KEYS[1], ARGV[1])";
+
+            // 使用 StringCodec 避免序列化问题
+            String result = redissonClient.getScript(StringCodec.INSTANCE).eval(
+                    RScript.Mode.READ_ONLY,
+                    luaScript,
+                    RScript.ReturnType.VALUE,
+                    Arrays.asList(logKey),
+                    identifier
+            );
+
+            return result;
+
+        } catch (Exception e) {
+            log.error("读取库存扣减日志失败: logKey={}, identifier={}, error={}",
+                    logKey, identifier, e.getMessage());
+            return null;
+        }
+    }
+
+    @Override
+    public void removeStockDecreaseLog(String logKey, String identifier) {
+        try {
+            String luaScript = "return redis.call('hdel', KEYS[1], ARGV[1])";
+
+            // 使用 StringCodec
+            redissonClient.getScript(StringCodec.INSTANCE).eval(
+                    RScript.Mode.READ_WRITE,
+                    luaScript,
+                    RScript.ReturnType.INTEGER,
+                    Arrays.asList(logKey),
+                    identifier
+            );
+
+        } catch (Exception e) {
+            log.error("删除库存扣减日志失败: logKey={}, identifier={}, error={}",
+                    logKey, identifier, e.getMessage());
+        }
+    }
+
+    @Override
+    public long removeStockDecreaseLogs(String logKey, Collection<String> identifiers) {
+        if (identifiers == null || identifiers.isEmpty()) {
+            return 0L;
+        }
+        try {
+            // HDEL 多字段
+            RMap<String, String> logMap = redissonClient.getMap(logKey, StringCodec.INSTANCE);
+            return logMap.fastRemove(identifiers.toArray(new String[0]));
+        } catch (Exception e) {
+            log.error("批量删除库存扣减日志失败: logKey={}, size={}, error={}",
+                    logKey, identifiers.size(), e.getMessage());
+            return 0L;
+        }
+    }
+
+    @Override
+    public long leaseStock(String stockKey, String leaseKey, String nodeId, int count, long epoch) {
         String luaScript = String.join("\n",
-                "-- 幂等性检查：防止同一订单重复扣减",
-                "if redis.call('hexists', KEYS[2], ARGV[2]) == 1 then",
-                "    return -2  -- 重复操作",
+                "-- 租约纪元不一致说明节点租约已被回收，拒绝预占",
+                "local epoch = tonumber(redis.call('get', KEYS[3]) or '0')",
+                "if epoch ~= tonumber(ARGV[3]) then",
+                "    return -1",
                 "end",
                 "",
-                "-- 获取当前队伍库存",
                 "local current = redis.call('get', KEYS[1])",
-                "",
-                "-- 如果队伍库存不存在，初始化为 1（首次加入队伍）",
                 "if current == false then",
-                "    redis.call('set', KEYS[1], '1')",
-                "    ",
-                "    -- 记录扣减流水",
-                "    local time = redis.call('time')",
-                "    local timestamp = (time[1] * 1000) + math.floor(time[2] / 1000)",
-                "    redis.call('hset', KEYS[2], ARGV[2], cjson.encode({",
-                "        action = 'decrease_team',",
-                "        from = 0,",
-                "        to = 1,",
-                "        change = 1,",
-                "        targetCount = tonumber(ARGV[1]),",
-                "        by = ARGV[2],",
-                "        timestamp = timestamp",
-                "    }))",
-                "    -- 设置流水Hash的过期时间为24小时",
-                "    redis.call('expire', KEYS[2], 86400)",
-                "    ",
-                "    return 1  -- 首次加入，返回 1",
+                "    return redis.error_reply('STOCK_KEY_NOT_FOUND')",
                 "end",
                 "",
-                "-- 检查队伍是否已满",
-                "local currentCount = tonumber(current)",
-                "local target = tonumber(ARGV[1])",
-                "",
-                "if currentCount >= target then",
-                "    return -1  -- 队伍已满",
+                "-- 库存不足一个租约时，预占剩余全部",
+                "local grant = math.min(tonumber(current), tonumber(ARGV[2]))",
+                "if grant <= 0 then",
+                "    return 0",
                 "end",
                 "",
-                "-- 队伍未满，执行扣减（实际是 +1）",
-                "local new = currentCount + 1",
-                "redis.call('set', KEYS[1], tostring(new))",
-                "",
-                "-- 记录扣减流水",
-                "local time = redis.call('time')",
-                "local timestamp = (time[1] * 1000) + math.floor(time[2] / 1000)",
-                "redis.call('hset', KEYS[2], ARGV[2], cjson.encode({",
-                "    action = 'decrease_team',",
-                "    from = currentCount,",
-                "    to = new,",
-                "    change = 1,",
-                "    targetCount = target,",
-                "    by = ARGV[2],",
-                "    timestamp = timestamp",
-                "}))",
-                "-- 设置流水Hash的过期时间为24小时",
+                "redis.call('decrby', KEYS[1], grant)",
+                "redis.call('hincrby', KEYS[2], ARGV[1], grant)",
                 "redis.call('expire', KEYS[2], 86400)",
-                "",
-                "return new  -- 返回新的队伍人数"
+                "return grant"
         );
 
         try {
-            Long result = redissonClient.getScript().eval(
+            Long granted = redissonClient.getScript(StringCodec.INSTANCE).eval(
                     RScript.Mode.READ_WRITE,
                     luaScript,
                     RScript.ReturnType.INTEGER,
-                    Arrays.asList(stockKey, logKey),
-                    targetCount, identifier
+                    Arrays.asList(stockKey, leaseKey, LEASE_NODE_EPOCH_KEY_PREFIX + nodeId),
+                    nodeId, String.valueOf(count), String.valueOf(epoch)
             );
-
-            log.info("队伍库存动态扣减: stockKey={}, targetCount={}, 当前人数={}",
-                    stockKey, targetCount, result);
-
-            return result;
+            return granted == null ? 0L : granted;
         } catch (RedisException e) {
-            log.error("队伍库存动态扣减失败: stockKey={}, error={}", stockKey, e.getMessage());
-            return -1L;
+            log.error("库存租约预占失败: stockKey={}, nodeId={}, count={}, error={}", stockKey, nodeId, count, e.getMessage());
+            return 0L;
         }
     }
 
     @Override
-    public Long decreaseStockWithLog(String stockKey, String logKey, String identifier, int count) {
+    public long returnStockLease(String stockKey, String leaseKey, String nodeId, int count) {
         String luaScript = String.join("\n",
-                "-- 幂等性检查",
-                "if redis.call('hexists', KEYS[2], ARGV[2]) == 1 then",
-                "    return redis.error_reply('OPERATION_ALREADY_EXECUTED')",
+                "local leased = tonumber(redis.call('hget', KEYS[2], ARGV[1]) or '0')",
+                "local back = math.min(leased, tonumber(ARGV[2]))",
+                "if back <= 0 then",
+                "    return 0",
                 "end",
                 "",
-                "-- 库存检查",
-                "local current = redis.call('get', KEYS[1])",
-                "if current == false then",
-                "    return redis.error_reply('STOCK_KEY_NOT_FOUND')",
-                "end",
-                "if tonumber(current) < tonumber(ARGV[1]) then",
-                "    return redis.error_reply('STOCK_NOT_ENOUGH')",
+                "redis.call('incrby', KEYS[1], back)",
+                "local left = redis.call('hincrby', KEYS[2], ARGV[1], -back)",
+                "if left <= 0 then",
+                "    redis.call('hdel', KEYS[2], ARGV[1])",
                 "end",
-                "",
-                "-- 原子扣减",
-                "local new = tonumber(current) - tonumber(ARGV[1])",
-                "redis.call('set', KEYS[1], tostring(new))",
-                "",
-                "-- 记录流水 (用于旁路验证)",
-                "local time = redis.call('time')",
-                "local timestamp = (time[1] * 1000) + math.floor(time[2] / 1000)",
-                "redis.call('hset', KEYS[2], ARGV[2], cjson.encode({",  // 继续使用 cjson.encode
-                "    action = 'decrease',",
-                "    from = current,",
-                "    to = new,",
-                "    change = ARGV[1],",
-                "    by = ARGV[2],",
-                "    timestamp = timestamp",
-                "}))",
-                "-- 设置流水Hash的过期时间为24小时，避免流水立即过期导致对账问题",
-                "redis.call('expire', KEYS[2], 86400)",
-                "",
-                "return new"
+                "return back"
         );
-        
-        try {
-            return redissonClient.getScript().eval(
+
+        Long returned = redissonClient.getScript(StringCodec.INSTANCE).eval(
                 RScript.Mode.READ_WRITE,
                 luaScript,
                 RScript.ReturnType.INTEGER,
-                Arrays.asList(stockKey, logKey),
-                count, identifier
-            );
-        } catch (RedisException e) {
-            log.error("Redis扣减库存失败: {}", e.getMessage());
-            return -1L;
-        }
+                Arrays.asList(stockKey, leaseKey),
+                nodeId, String.valueOf(count)
+        );
+        return returned == null ? 0L : returned;
     }
-    
+
     @Override
-    public Long increaseStockWithLog(String stockKey, String logKey, String identifier, int count) {
+    public long reclaimStockLease(String stockKey, String leaseKey, String nodeId) {
         String luaScript = String.join("\n",
-                "-- 幂等性检查",
-                "if redis.call('hexists', KEYS[2], ARGV[2]) == 1 then",
-                "    return redis.error_reply('OPERATION_ALREADY_EXECUTED')",
+                "-- 心跳未过期，节点仍在使用租约",
+                "if redis.call('exists', KEYS[3]) == 1 then",
+                "    return 0",
                 "end",
                 "",
-                "local current = redis.call('get', KEYS[1])",
-                "if current == false then",
-                "    current = '0'",
+                "local leased = tonumber(redis.call('hget', KEYS[2], ARGV[1]) or '0')",
+                "redis.call('hdel', KEYS[2], ARGV[1])",
+                "if leased <= 0 then",
+                "    return 0",
                 "end",
                 "",
-                "local new = tonumber(current) + tonumber(ARGV[1])",
-                "redis.call('set', KEYS[1], tostring(new))",
+                "redis.call('incrby', KEYS[1], leased)",
+                "-- 递增纪元，节点恢复后丢弃本地剩余租约",
+                "redis.call('incr', KEYS[4])",
+                "redis.call('expire', KEYS[4], 86400)",
+                "return leased"
+        );
+
+        Long reclaimed = redissonClient.getScript(StringCodec.INSTANCE).eval(
+                RScript.Mode.READ_WRITE,
+                luaScript,
+                RScript.ReturnType.INTEGER,
+                Arrays.asList(stockKey, leaseKey, LEASE_NODE_HEARTBEAT_KEY_PREFIX + nodeId, LEASE_NODE_EPOCH_KEY_PREFIX + nodeId),
+                nodeId
+        );
+        return reclaimed == null ? 0L : reclaimed;
+    }
+
+    @Override
+    public int appendLeasedStockDecreaseLogs(String logKey, String leaseKey, String nodeId, Map<String, String> logs) {
+        if (logs == null || logs.isEmpty()) {
+            return 0;
+        }
+        String luaScript = String.join("\n",
+                JOURNAL_FUNCTION,
                 "",
-                "-- 记录回滚流水",
-                "local time = redis.call('time')",
-                "local timestamp = (time[1] * 1000) + math.floor(time[2] / 1000)",
-                "redis.call('hset', KEYS[2], ARGV[2], cjson.encode({",  // 继续使用 cjson.encode
-                "    action = 'increase',",
-                "    from = current,",
-                "    to = new,",
-                "    change = ARGV[1],",
-                "    by = ARGV[2],",
-                "    timestamp = timestamp",
-                "}))",
-                "-- 设置流水Hash的过期时间为24小时",
-                "redis.call('expire', KEYS[2], 86400)",
+                "local n = 0",
+                "local dup = 0",
+                "for i = 2, #ARGV, 2 do",
+                "    -- 幂等：流水已存在或已补偿（ROLLBACK_ 标记）的请求不写入、不核销租约",
+                "    if redis.call('hexists', KEYS[1], ARGV[i]) == 1 or redis.call('hexists', KEYS[1], 'ROLLBACK_' .. ARGV[i]) == 1 then",
+                "        dup = dup + 1",
+                "    else",
+                "        local e = cjson.decode(ARGV[i + 1])",
+                "        redis.call('hset', KEYS[1], ARGV[i], e.change)",
+                "        journal(KEYS[3], 'action', 'decrease', 'by', ARGV[i], 'change', e.change, 'from', e.from, 'to', e.to, 'ts', e.timestamp, 'lease', ARGV[1])",
+                "        n = n + 1",
+                "    end",
+                "end",
+                "if n == 0 then",
+                "    return dup",
+                "end",
+                "keepLog(KEYS[1])",
                 "",
-                "return new"
+                "-- 核销节点租约中已使用的数量",
+                "local left = redis.call('hincrby', KEYS[2], ARGV[1], -n)",
+                "if left <= 0 then",
+                "    redis.call('hdel', KEYS[2], ARGV[1])",
+                "end",
+                "return dup"
         );
 
-        // 使用 StringCodec 执行 Lua 脚本
-        return redissonClient.getScript(StringCodec.INSTANCE).eval(
+        Object[] args = new Object[logs.size() * 2 + 1];
+        int i = 0;
+        args[i++] = nodeId;
+        for (Map.Entry<String, String> entry : logs.entrySet()) {
+            args[i++] = entry.getKey();
+            args[i++] = entry.getValue();
+        }
+
+        Long duplicated = redissonClient.getScript(StringCodec.INSTANCE).eval(
                 RScript.Mode.READ_WRITE,
                 luaScript,
                 RScript.ReturnType.INTEGER,
-                Arrays.asList(stockKey, logKey),
-                count, identifier
+                Arrays.asList(logKey, leaseKey, journalKeyOf(logKey)),
+                args
         );
+        return duplicated == null ? 0 : duplicated.intValue();
     }
 
     @Override
-    public String getStockDecreaseLog(String logKey, String identifier) {
+    public Map<String, String> getStockLeases(String leaseKey) {
         try {
-            String luaScript = "return redis.call('hget', KEYS[1], ARGV[1])";
+            RMap<String, String> leaseMap = redissonClient.getMap(leaseKey, StringCodec.INSTANCE);
+            return leaseMap.readAllMap();
+        } catch (Exception e) {
+            log.error("读取库存租约失败: leaseKey={}, error={}", leaseKey, e.getMessage());
+            return new HashMap<>();
+        }
+    }
 
-            // 使用 StringCodec 避免序列化问题
-            String result = redissonClient.getScript(StringCodec.INSTANCE).eval(
-                    RScript.Mode.READ_ONLY,
-                    luaScript,
-                    RScript.ReturnType.VALUE,
-                    Arrays.asList(logKey),
-                    identifier
-            );
+    @Override
+    public long refreshLeaseNodeHeartbeat(String nodeId, long ttlSeconds) {
+        String luaScript = String.join("\n",
+                "redis.call('set', KEYS[1], ARGV[1], 'EX', ARGV[2])",
+                "return tonumber(redis.call('get', KEYS[2]) or '0')"
+        );
 
-            return result;
+        Long epoch = redissonClient.getScript(StringCodec.INSTANCE).eval(
+                RScript.Mode.READ_WRITE,
+                luaScript,
+                RScript.ReturnType.INTEGER,
+                Arrays.asList(LEASE_NODE_HEARTBEAT_KEY_PREFIX + nodeId, LEASE_NODE_EPOCH_KEY_PREFIX + nodeId),
+                String.valueOf(System.currentTimeMillis()), String.valueOf(ttlSeconds)
+        );
+        return epoch == null ? 0L : epoch;
+    }
 
-        } catch (Exception e) {
-            log.error("读取库存扣减日志失败: logKey={}, identifier={}, error={}",
-                    logKey, identifier, e.getMessage());
+    @Override
+    public boolean isLeaseNodeAlive(String nodeId) {
+        return redissonClient.getBucket(LEASE_NODE_HEARTBEAT_KEY_PREFIX + nodeId, StringCodec.INSTANCE).isExists();
+    }
+
+    @Override
+    public UserTakeCountVO getUserTakeCount(String userTakeKey) {
+        RMap<String, String> takeMap = redissonClient.getMap(userTakeKey, StringCodec.INSTANCE);
+        Map<String, String> values = takeMap.getAll(new HashSet<>(Arrays.asList("take", "seq")));
+        if (values == null || values.get("take") == null || values.get("seq") == null) {
             return null;
         }
+        return UserTakeCountVO.builder()
+                .takeCount(Integer.parseInt(values.get("take")))
+                .seq(Integer.parseInt(values.get("seq")))
+                .build();
     }
 
     @Override
-    public void removeStockDecreaseLog(String logKey, String identifier) {
-        try {
-            String luaScript = "return redis.call('hdel', KEYS[1], ARGV[1])";
+    public UserTakeCountVO loadUserTakeCount(String userTakeKey, int takeCount, int seq, long ttlMillis) {
+        String luaScript = String.join("\n",
+                "-- 已加载（或已被扣减脚本累加）则不覆盖",
+                "if redis.call('exists', KEYS[1]) == 0 then",
+                "    redis.call('hset', KEYS[1], 'take', ARGV[1], 'seq', ARGV[2])",
+                "    redis.call('pexpire', KEYS[1], ARGV[3])",
+                "end",
+                "return redis.call('hmget', KEYS[1], 'take', 'seq')"
+        );
 
-            // 使用 StringCodec
-            redissonClient.getScript(StringCodec.INSTANCE).eval(
-                    RScript.Mode.READ_WRITE,
-                    luaScript,
-                    RScript.ReturnType.INTEGER,
-                    Arrays.asList(logKey),
-                    identifier
-            );
+        List<Object> result = redissonClient.getScript(StringCodec.INSTANCE).eval(
+                RScript.Mode.READ_WRITE,
+                luaScript,
+                RScript.ReturnType.MULTI,
+                Arrays.asList(userTakeKey),
+                String.valueOf(takeCount), String.valueOf(seq), String.valueOf(ttlMillis)
+        );
+        return UserTakeCountVO.builder()
+                .takeCount(Integer.parseInt(String.valueOf(result.get(0))))
+                .seq(Integer.parseInt(String.valueOf(result.get(1))))
+                .build();
+    }
 
-        } catch (Exception e) {
-            log.error("删除库存扣减日志失败: logKey={}, identifier={}, error={}",
-                    logKey, identifier, e.getMessage());
-        }
+    @Override
+    public long occupyUserTakeCount(String userTakeKey, int takeLimit, String orderId) {
+        String luaScript = String.join("\n",
+                "local current = redis.call('hget', KEYS[1], 'take')",
+                "if not current then",
+                "    return -1",
+                "end",
+                "local limit = tonumber(ARGV[1])",
+                "if limit > 0 and tonumber(current) >= limit then",
+                "    return -2",
+                "end",
+                "redis.call('hincrby', KEYS[1], 'seq', 1)",
+                "local take = redis.call('hincrby', KEYS[1], 'take', 1)",
+                "-- 扣回标记写入 0（已累加未扣回），与准入脚本一致",
+                "local ttl = redis.call('pttl', KEYS[1])",
+                "if ttl < 0 then ttl = tonumber(ARGV[2]) end",
+                "redis.call('set', KEYS[2], '0', 'PX', ttl)",
+                "return take"
+        );
+        Long result = redissonClient.getScript(StringCodec.INSTANCE).eval(
+                RScript.Mode.READ_WRITE,
+                luaScript,
+                RScript.ReturnType.INTEGER,
+                Arrays.asList(userTakeKey, userTakeRefundKey(userTakeKey, orderId)),
+                String.valueOf(takeLimit), String.valueOf(USER_TAKE_REFUND_DEFAULT_TTL_MS)
+        );
+        return null == result ? -1L : result;
+    }
+
+    @Override
+    public boolean releaseUserTakeCount(String userTakeKey, String orderId) {
+        String luaScript = String.join("\n",
+                "if redis.call('exists', KEYS[1]) == 0 then",
+                "    return 0",
+                "end",
+                "-- 只扣回准入时累加过的订单（扣回标记为 0），每个订单只扣回一次，扣回标记与参与次数 Hash 同时过期",
+                "if redis.call('get', KEYS[2]) ~= '0' then",
+                "    return 0",
+                "end",
+                "local ttl = redis.call('pttl', KEYS[2])",
+                "if ttl > 0 then redis.call('set', KEYS[2], '1', 'PX', ttl) else redis.call('set', KEYS[2], '1') end",
+                "local take = tonumber(redis.call('hget', KEYS[1], 'take') or '0')",
+                "if take > 0 then",
+                "    redis.call('hincrby', KEYS[1], 'take', -1)",
+                "end",
+                "return 1"
+        );
+        Long result = redissonClient.getScript(StringCodec.INSTANCE).eval(
+                RScript.Mode.READ_WRITE,
+                luaScript,
+                RScript.ReturnType.INTEGER,
+                Arrays.asList(userTakeKey, userTakeRefundKey(userTakeKey, orderId))
+        );
+        return result != null && result == 1L;
+    }
+
+    /**
+     * 参与次数扣回标记 Key（每个订单一个，带过期时间）：0 已累加未扣回、1 已扣回，不存在表示未累加
+     */
+    private static String userTakeRefundKey(String userTakeKey, String orderId) {
+        return userTakeKey + "_refund_" + orderId;
     }
 
     @Override
@@ -250,37 +433,155 @@ public class RedisAdapterImpl implements IRedisAdapter {
     }
 
     @Override
-    public Map<String, String> getAllStockDecreaseLogs(String logKey) {
+    public List<StockJournalEntryVO> readStockJournal(String journalKey, StockJournalGroupEnumVO group, String consumer,
+                                                      int count, boolean pending, String afterId) {
+        RStream<String, String> stream = redissonClient.getStream(journalKey, StringCodec.INSTANCE);
+        StreamReadGroupArgs args = pending
+                ? StreamReadGroupArgs.greaterThan(null == afterId ? new StreamMessageId(0, 0) : parseStreamId(afterId)).count(count)
+                : StreamReadGroupArgs.neverDelivered().count(count);
+
+        Map<StreamMessageId, Map<String, String>> messages;
         try {
-            String luaScript = "return redis.call('HGETALL', KEYS[1])";
+            messages = stream.readGroup(group.getCode(), consumer, args);
+        } catch (RedisException e) {
+            if (null == e.getMessage() || !e.getMessage().contains("NOGROUP") || !stream.isExists()) {
+                throw e;
+            }
+            // 消费组缺失（人工删除等），补建后从头消费
+            log.warn("库存流水消费组不存在，重新创建: journalKey={}, group={}", journalKey, group.getCode());
+            stream.createGroup(StreamCreateGroupArgs.name(group.getCode()).id(StreamMessageId.ALL));
+            messages = stream.readGroup(group.getCode(), consumer, args);
+        }
+        if (null == messages || messages.isEmpty()) {
+            return new ArrayList<>();
+        }
 
-            // 使用 StringCodec 避免序列化问题
-            List<String> result = redissonClient.getScript(StringCodec.INSTANCE).eval(
-                    RScript.Mode.READ_ONLY,
-                    luaScript,
-                    RScript.ReturnType.MULTI,
-                    Arrays.asList(logKey)
-            );
+        List<StreamMessageId> ids = new ArrayList<>(messages.keySet());
+        ids.sort(Comparator.comparingLong(StreamMessageId::getId0).thenComparingLong(StreamMessageId::getId1));
+        List<StockJournalEntryVO> entries = new ArrayList<>(ids.size());
+        for (StreamMessageId id : ids) {
+            entries.add(toJournalEntry(id, messages.get(id)));
+        }
+        return entries;
+    }
 
-            // 将 List 转换为 Map
-            Map<String, String> map = new HashMap<>();
-            if (result != null && !result.isEmpty()) {
-                for (int i = 0; i < result.size(); i += 2) {
-                    String key = result.get(i);
-                    String value = (i + 1 < result.size()) ? result.get(i + 1) : null;
-                    if (value != null) {
-                        map.put(key, value);
-                    }
-                }
+    @Override
+    public long ackStockJournal(String journalKey, StockJournalGroupEnumVO group, Collection<String> entryIds) {
+        if (entryIds == null || entryIds.isEmpty()) {
+            return 0L;
+        }
+        StreamMessageId[] ids = new StreamMessageId[entryIds.size()];
+        int i = 0;
+        for (String entryId : entryIds) {
+            ids[i++] = parseStreamId(entryId);
+        }
+        return redissonClient.<String, String>getStream(journalKey, StringCodec.INSTANCE).ack(group.getCode(), ids);
+    }
+
+    @Override
+    public long trimStockJournal(String journalKey) {
+        RStream<String, String> stream = redissonClient.getStream(journalKey, StringCodec.INSTANCE);
+
+        // 已存在的各消费组的最早未确认位置：有未确认流水时取最小未确认ID，否则取最后投递ID的下一个位置
+        // 缺失的消费组读取时从头补建（见 readStockJournal），不阻塞其他消费组已确认流水的裁剪
+        StreamMessageId minId = null;
+        for (StreamGroup streamGroup : stream.listGroups()) {
+            StreamMessageId position;
+            if (streamGroup.getPending() > 0) {
+                position = stream.getPendingInfo(streamGroup.getName()).getLowestId();
+            } else {
+                StreamMessageId lastDelivered = streamGroup.getLastDeliveredId();
+                position = new StreamMessageId(lastDelivered.getId0(), lastDelivered.getId1() + 1);
+            }
+            if (null == minId || compareStreamId(position, minId) < 0) {
+                minId = position;
             }
+        }
 
-            log.debug("读取库存流水成功: logKey={}, count={}", logKey, map.size());
-            return map;
+        long trimmed = 0L;
+        if (null != minId && (minId.getId0() > 0 || minId.getId1() > 1)) {
+            trimmed = stream.trim(StreamTrimArgs.minId(minId).noLimit());
+        }
 
-        } catch (Exception e) {
-            log.error("读取库存流水失败: logKey={}, error={}", logKey, e.getMessage(), e);
-            return new HashMap<>();
+        // 兜底：某个消费组长期未确认时按最大长度裁剪，被裁剪的未确认流水读取时只返回ID
+        long capped = stream.trim(StreamTrimArgs.maxLen(STOCK_JOURNAL_MAX_LEN).noLimit());
+        if (capped > 0) {
+            log.warn("库存流水超过最大长度，按长度裁剪未确认流水: journalKey={}, maxLen={}, trimmed={}", journalKey, STOCK_JOURNAL_MAX_LEN, capped);
+        }
+        return trimmed + capped;
+    }
+
+    private StockJournalEntryVO toJournalEntry(StreamMessageId id, Map<String, String> fields) {
+        // 已被裁剪的未确认流水只返回ID，字段为空
+        if (null == fields) {
+            return StockJournalEntryVO.builder().id(id.toString()).build();
+        }
+        return StockJournalEntryVO.builder()
+                .id(id.toString())
+                .action(fields.get("action"))
+                .identifier(fields.get("by"))
+                .change(null == fields.get("change") ? null : Integer.valueOf(fields.get("change")))
+                .from(null == fields.get("from") ? null : Long.valueOf(fields.get("from")))
+                .to(null == fields.get("to") ? null : Long.valueOf(fields.get("to")))
+                .timestamp(null == fields.get("ts") ? null : Long.valueOf(fields.get("ts")))
+                .teamStockKey(fields.get("team"))
+                .teamStockLogKey(fields.get("teamLog"))
+                .userTakeKey(fields.get("take"))
+                .leaseNodeId(fields.get("lease"))
+                .build();
+    }
+
+    private static StreamMessageId parseStreamId(String id) {
+        String[] parts = id.split("-", 2);
+        return new StreamMessageId(Long.parseLong(parts[0]), parts.length > 1 ? Long.parseLong(parts[1]) : 0L);
+    }
+
+    private static int compareStreamId(StreamMessageId a, StreamMessageId b) {
+        int result = Long.compare(a.getId0(), b.getId0());
+        return result != 0 ? result : Long.compare(a.getId1(), b.getId1());
+    }
+
+    /**
+     * 商品库存Key / 商品库存流水Key 对应的库存流水 Stream，非商品库存返回 null（不记录 Stream 流水）
+     */
+    private static String journalKeyOf(String key) {
+        if (key.startsWith(GOODS_STOCK_LOG_KEY_PREFIX)) {
+            return STOCK_JOURNAL_KEY_PREFIX + key.substring(GOODS_STOCK_LOG_KEY_PREFIX.length());
+        }
+        if (key.startsWith(GOODS_STOCK_KEY_PREFIX)) {
+            return STOCK_JOURNAL_KEY_PREFIX + key.substring(GOODS_STOCK_KEY_PREFIX.length());
         }
+        return null;
+    }
+
+    private static String buildJournalFunction() {
+        StringBuilder lua = new StringBuilder()
+                .append("local function journal(key, ...)\n")
+                .append("    if redis.call('exists', key) == 0 then\n");
+        for (StockJournalGroupEnumVO group : StockJournalGroupEnumVO.values()) {
+            lua.append("        redis.call('xgroup', 'create', key, '").append(group.getCode()).append("', '0', 'MKSTREAM')\n");
+        }
+        return lua.append("    end\n")
+                .append("    redis.call('xadd', key, '*', ...)\n")
+                .append("end\n")
+                .append("local function keepLog(key)\n")
+                .append("    if redis.call('ttl', key) < ").append(STOCK_LOG_RENEW_SECONDS).append(" then\n")
+                .append("        redis.call('expire', key, ").append(STOCK_LOG_TTL_SECONDS).append(")\n")
+                .append("    end\n")
+                .append("end\n")
+                // 参与次数扣回标记：0 已累加未扣回、1 已扣回，与参与次数 Hash 同时过期
+                .append("local function markTaken(takeKey, refundKey, defaultTtl)\n")
+                .append("    local ttl = redis.call('pttl', takeKey)\n")
+                .append("    if ttl < 0 then ttl = tonumber(defaultTtl) end\n")
+                .append("    redis.call('set', refundKey, '0', 'PX', ttl)\n")
+                .append("end\n")
+                .append("local function markRefunded(refundKey)\n")
+                .append("    if redis.call('get', refundKey) ~= '0' then return false end\n")
+                .append("    local ttl = redis.call('pttl', refundKey)\n")
+                .append("    if ttl > 0 then redis.call('set', refundKey, '1', 'PX', ttl) else redis.call('set', refundKey, '1') end\n")
+                .append("    return true\n")
+                .append("end")
+                .toString();
     }
 
     @Override
@@ -288,14 +589,12 @@ public class RedisAdapterImpl implements IRedisAdapter {
         String stockKey = "group_buy_market_team_stock_key_" + teamId;
         
         try {
-            // 参考NFTurbo实现：先检查是否存在，避免重复初始化
-            if (redissonClient.getBucket(stockKey).isExists()) {
+            // SETNX：已存在则不覆盖，判断与写入在同一命令中完成
+            boolean success = redissonClient.getBucket(stockKey, StringCodec.INSTANCE).setIfAbsent(String.valueOf(stockCount));
+            if (!success) {
                 log.debug("团队库存已存在，跳过初始化: teamId={}, stockKey={}", teamId, stockKey);
-                return false; // 已存在，返回false表示未执行初始化
+                return false;
             }
-            
-            // 直接设置库存值（类似NFTurbo的简单set操作）
-            redissonClient.getBucket(stockKey).set(stockCount);
             log.info("初始化团队库存成功: teamId={}, stockCount={}, stockKey={}", teamId, stockCount, stockKey);
             return true;
         } catch (RedisException e) {
@@ -310,12 +609,11 @@ public class RedisAdapterImpl implements IRedisAdapter {
             return 0;
         }
         
-        int successCount = 0;
+        Map<String, Long> values = new HashMap<>();
         for (Map.Entry<String, Integer> entry : teamStockMap.entrySet()) {
-            if (initTeamStock(entry.getKey(), entry.getValue())) {
-                successCount++;
-            }
+            values.put("group_buy_market_team_stock_key_" + entry.getKey(), entry.getValue().longValue());
         }
+        int successCount = setStockValuesIfAbsent(values);
         
         log.info("批量初始化团队库存完成: 总数={}, 成功={}", teamStockMap.size(), successCount);
         return successCount;
@@ -347,145 +645,638 @@ public class RedisAdapterImpl implements IRedisAdapter {
     }
 
     /**
-     * 原子操作：扣减商品库存 + 增加队伍人数
-     * 
-     * 对标 newBuyPlus：在同一个 Lua 脚本中同时执行商品库存扣减和队伍人数增加
-     * 
-     * 实现逻辑：
-     * 1. 幂等性检查（商品库存流水和队伍库存流水）
-     * 2. 检查商品库存是否足够
-     * 3. 检查队伍是否已满（如果teamStockKey不为空）
-     * 4. 原子扣减商品库存
-     * 5. 原子增加队伍人数（如果teamStockKey不为空）
-     * 6. 记录流水
+     * 锁单准入脚本
+     * <p>
+     * KEYS：商品库存、商品库存流水、库存流水 Stream，[用户参与次数、参与次数扣回标记]，[队伍库存、队伍库存流水]（可选 Key 按 ARGV 标记依次追加）
+     * ARGV：identifier、扣减数量、队伍目标人数、参与次数上限、是否包含参与次数(1/0)、是否包含队伍(1/0)、扣回标记默认过期时间(毫秒)
+     * 返回：{结果码, 商品剩余库存, 队伍当前人数, 用户有效参与次数}，结果码见 StockAdmissionCodeEnumVO
+     * <p>
+     * 先完成全部校验再统一写入，任一校验失败不产生任何副作用，无需回滚。
+     * 准入流水记录本次占用的队伍、参与次数 Key，补偿任务据此回滚全部占用。
+     * 累加参与次数时扣回标记写入 0（已累加、未扣回），补偿与退单只扣回标记为 0 的订单；参与次数未加载时不累加、不写标记。
+     */
+    private static final VersionedLuaScript ADMISSION_SCRIPT = new VersionedLuaScript("stock_admission", 4,
+            JOURNAL_FUNCTION,
+            "",
+            "local id = ARGV[1]",
+            "local count = tonumber(ARGV[2])",
+            "local idx = 4",
+            "local takeKey, takeRefundKey, teamKey, teamLogKey",
+            "if ARGV[5] == '1' then",
+            "    takeKey = KEYS[idx]",
+            "    takeRefundKey = KEYS[idx + 1]",
+            "    idx = idx + 2",
+            "end",
+            "if ARGV[6] == '1' then",
+            "    teamKey = KEYS[idx]",
+            "    teamLogKey = KEYS[idx + 1]",
+            "end",
+            "",
+            "-- 1. 幂等校验（已扣减或已补偿的标识不再准入）",
+            "if redis.call('hexists', KEYS[2], id) == 1 or redis.call('hexists', KEYS[2], 'ROLLBACK_' .. id) == 1 then",
+            "    return {2, -1, -1, -1}",
+            "end",
+            "if teamLogKey and redis.call('hexists', teamLogKey, id) == 1 then",
+            "    return {2, -1, -1, -1}",
+            "end",
+            "",
+            "-- 2. 用户参与次数（未加载时不校验、不累加）",
+            "local take = -1",
+            "if takeKey then",
+            "    local current = redis.call('hget', takeKey, 'take')",
+            "    if current then",
+            "        take = tonumber(current)",
+            "        local limit = tonumber(ARGV[4])",
+            "        if limit > 0 and take >= limit then",
+            "            return {6, -1, -1, take}",
+            "        end",
+            "    end",
+            "end",
+            "",
+            "-- 3. 商品库存",
+            "local goods = redis.call('get', KEYS[1])",
+            "if goods == false then",
+            "    return {3, -1, -1, take}",
+            "end",
+            "goods = tonumber(goods)",
+            "if goods < count then",
+            "    return {4, goods, -1, take}",
+            "end",
+            "",
+            "-- 4. 队伍名额（队伍库存不存在视为0人）",
+            "local team = -1",
+            "local teamTarget = tonumber(ARGV[3])",
+            "if teamKey then",
+            "    team = tonumber(redis.call('get', teamKey) or '0')",
+            "    if team >= teamTarget then",
+            "        return {5, goods, team, take}",
+            "    end",
+            "end",
+            "",
+            "-- 5. 统一写入",
+            "local time = redis.call('time')",
+            "local timestamp = (time[1] * 1000) + math.floor(time[2] / 1000)",
+            "local goodsNew = goods - count",
+            "redis.call('set', KEYS[1], tostring(goodsNew))",
+            "redis.call('hset', KEYS[2], id, count)",
+            "keepLog(KEYS[2])",
+            "",
+            "if teamKey then",
+            "    local teamNew = team + 1",
+            "    redis.call('set', teamKey, tostring(teamNew))",
+            "    redis.call('hset', teamLogKey, id, 1)",
+            "    keepLog(teamLogKey)",
+            "    team = teamNew",
+            "end",
+            "",
+            "if take >= 0 then",
+            "    take = redis.call('hincrby', takeKey, 'take', 1)",
+            "    redis.call('hincrby', takeKey, 'seq', 1)",
+            "    markTaken(takeKey, takeRefundKey, ARGV[7])",
+            "end",
+            "",
+            "local entry = {'action', 'decrease', 'by', id, 'change', count, 'from', goods, 'to', goodsNew, 'ts', timestamp}",
+            "if teamKey then",
+            "    table.insert(entry, 'team')",
+            "    table.insert(entry, teamKey)",
+            "    table.insert(entry, 'teamLog')",
+            "    table.insert(entry, teamLogKey)",
+            "end",
+            "if take >= 0 then",
+            "    table.insert(entry, 'take')",
+            "    table.insert(entry, takeKey)",
+            "end",
+            "journal(KEYS[3], unpack(entry))",
+            "",
+            "return {1, goodsNew, team, take}"
+    );
+
+    /**
+     * 批量锁单准入脚本（购物车），每个商品的校验与写入与 {@link #ADMISSION_SCRIPT} 一致
+     * <p>
+     * KEYS：按商品依次追加，每个商品的 Key 组与准入脚本相同
+     * ARGV：商品数量 n，之后每个商品 6 个参数（与准入脚本前 6 个参数相同），最后为扣回标记默认过期时间(毫秒)
+     * 返回：成功 {1, 0, 商品1剩余库存, 商品1队伍人数, 商品1参与次数, 商品2...}；失败 {结果码, 失败商品序号(从1开始), 剩余库存, 队伍人数, 参与次数}
+     * <p>
+     * 先校验全部商品再统一写入，任一商品校验失败整单不产生任何副作用（全部成功或全部不扣减）。
+     * 各商品的 Key 不能重复（同一商品库存 Key 出现两次时校验读到的是扣减前的值），由调用方保证。
+     * 多 Key 脚本要求全部 Key 在同一节点：购物车商品可跨活动，Key 无法用同一个 hash tag 归到一个槽，
+     * 因此 Redis Cluster 模式下不执行脚本，直接返回 UNSUPPORTED。
      */
+    private static final VersionedLuaScript ADMISSION_BATCH_SCRIPT = new VersionedLuaScript("stock_admission_batch", 3,
+            JOURNAL_FUNCTION,
+            "",
+            "local n = tonumber(ARGV[1])",
+            "local refundTtl = ARGV[2 + n * 6]",
+            "local items = {}",
+            "local k = 1",
+            "for i = 1, n do",
+            "    local a = 1 + (i - 1) * 6",
+            "    local item = {id = ARGV[a + 1], count = tonumber(ARGV[a + 2]), teamTarget = tonumber(ARGV[a + 3]), limit = tonumber(ARGV[a + 4])}",
+            "    item.goodsKey = KEYS[k]",
+            "    item.goodsLogKey = KEYS[k + 1]",
+            "    item.journalKey = KEYS[k + 2]",
+            "    k = k + 3",
+            "    if ARGV[a + 5] == '1' then",
+            "        item.takeKey = KEYS[k]",
+            "        item.takeRefundKey = KEYS[k + 1]",
+            "        k = k + 2",
+            "    end",
+            "    if ARGV[a + 6] == '1' then",
+            "        item.teamKey = KEYS[k]",
+            "        item.teamLogKey = KEYS[k + 1]",
+            "        k = k + 2",
+            "    end",
+            "    items[i] = item",
+            "end",
+            "",
+            "-- 1. 逐个商品校验，任一失败直接返回，不产生任何写入",
+            "for i, item in ipairs(items) do",
+            "    local id = item.id",
+            "    if redis.call('hexists', item.goodsLogKey, id) == 1 or redis.call('hexists', item.goodsLogKey, 'ROLLBACK_' .. id) == 1 then",
+            "        return {2, i, -1, -1, -1}",
+            "    end",
+            "    if item.teamLogKey and redis.call('hexists', item.teamLogKey, id) == 1 then",
+            "        return {2, i, -1, -1, -1}",
+            "    end",
+            "",
+            "    item.take = -1",
+            "    if item.takeKey then",
+            "        local current = redis.call('hget', item.takeKey, 'take')",
+            "        if current then",
+            "            item.take = tonumber(current)",
+            "            if item.limit > 0 and item.take >= item.limit then",
+            "                return {6, i, -1, -1, item.take}",
+            "            end",
+            "        end",
+            "    end",
+            "",
+            "    local goods = redis.call('get', item.goodsKey)",
+            "    if goods == false then",
+            "        return {3, i, -1, -1, item.take}",
+            "    end",
+            "    item.goods = tonumber(goods)",
+            "    if item.goods < item.count then",
+            "        return {4, i, item.goods, -1, item.take}",
+            "    end",
+            "",
+            "    item.team = -1",
+            "    if item.teamKey then",
+            "        item.team = tonumber(redis.call('get', item.teamKey) or '0')",
+            "        if item.team >= item.teamTarget then",
+            "            return {5, i, item.goods, item.team, item.take}",
+            "        end",
+            "    end",
+            "end",
+            "",
+            "-- 2. 统一写入",
+            "local time = redis.call('time')",
+            "local timestamp = (time[1] * 1000) + math.floor(time[2] / 1000)",
+            "local result = {1, 0}",
+            "for _, item in ipairs(items) do",
+            "    local id = item.id",
+            "    local goodsNew = item.goods - item.count",
+            "    redis.call('set', item.goodsKey, tostring(goodsNew))",
+            "    redis.call('hset', item.goodsLogKey, id, item.count)",
+            "    keepLog(item.goodsLogKey)",
+            "",
+            "    local team = item.team",
+            "    if item.teamKey then",
+            "        local teamNew = team + 1",
+            "        redis.call('set', item.teamKey, tostring(teamNew))",
+            "        redis.call('hset', item.teamLogKey, id, 1)",
+            "        keepLog(item.teamLogKey)",
+            "        team = teamNew",
+            "    end",
+            "",
+            "    local take = item.take",
+            "    if take >= 0 then",
+            "        take = redis.call('hincrby', item.takeKey, 'take', 1)",
+            "        redis.call('hincrby', item.takeKey, 'seq', 1)",
+            "        markTaken(item.takeKey, item.takeRefundKey, refundTtl)",
+            "    end",
+            "",
+            "    local entry = {'action', 'decrease', 'by', id, 'change', item.count, 'from', item.goods, 'to', goodsNew, 'ts', timestamp}",
+            "    if item.teamKey then",
+            "        table.insert(entry, 'team')",
+            "        table.insert(entry, item.teamKey)",
+            "        table.insert(entry, 'teamLog')",
+            "        table.insert(entry, item.teamLogKey)",
+            "    end",
+            "    if take >= 0 then",
+            "        table.insert(entry, 'take')",
+            "        table.insert(entry, item.takeKey)",
+            "    end",
+            "    journal(item.journalKey, unpack(entry))",
+            "",
+            "    table.insert(result, goodsNew)",
+            "    table.insert(result, team)",
+            "    table.insert(result, take)",
+            "end",
+            "return result"
+    );
+
+    /**
+     * 锁单补偿脚本，按准入流水回滚准入脚本实际执行过的部分
+     * <p>
+     * KEYS：与准入脚本一致
+     * ARGV：identifier、扣减数量、订单ID、是否包含参与次数(1/0)、是否包含队伍(1/0)、订单是否已创建(1/0)
+     * <p>
+     * 1. 已存在 ROLLBACK_ 记录：已补偿，返回 DUPLICATE
+     * 2. 商品流水不存在扣减记录且订单未创建：未准入，写入 ROLLBACK_ 标记后返回 NOT_ADMITTED，
+     *    超时后迟到执行的准入脚本按标记返回 DUPLICATE，不会再扣减（防悬挂）
+     * 3. 订单已创建时扣减记录可能已被对账、旁路验证删除，不再按扣减记录判断，只按 ROLLBACK_ 记录保证同一订单只回滚一次
+     * 4. 回滚后删除扣减记录，避免 InventoryCompensateJob 对同一扣减再次回滚
+     * 5. 参与次数只在扣回标记为 0（准入时累加过、尚未扣回）时扣回，未累加过的订单不扣回，避免用户超出参与次数上限
+     */
+    private static final VersionedLuaScript COMPENSATION_SCRIPT = new VersionedLuaScript("stock_compensation", 6,
+            JOURNAL_FUNCTION,
+            "",
+            "local id = ARGV[1]",
+            "local rollbackId = 'ROLLBACK_' .. id",
+            "local idx = 4",
+            "local takeKey, takeRefundKey, teamKey, teamLogKey",
+            "if ARGV[4] == '1' then",
+            "    takeKey = KEYS[idx]",
+            "    takeRefundKey = KEYS[idx + 1]",
+            "    idx = idx + 2",
+            "end",
+            "if ARGV[5] == '1' then",
+            "    teamKey = KEYS[idx]",
+            "    teamLogKey = KEYS[idx + 1]",
+            "end",
+            "",
+            "if redis.call('hexists', KEYS[2], rollbackId) == 1 then",
+            "    return {2, -1, -1, -1}",
+            "end",
+            "",
+            "local time = redis.call('time')",
+            "local timestamp = (time[1] * 1000) + math.floor(time[2] / 1000)",
+            "",
+            "if ARGV[6] ~= '1' and redis.call('hexists', KEYS[2], id) == 0 then",
+            "    redis.call('hset', KEYS[2], rollbackId, 0)",
+            "    keepLog(KEYS[2])",
+            "    return {7, -1, -1, -1}",
+            "end",
+            "",
+            "-- 1. 回滚商品库存",
+            "local count = tonumber(ARGV[2])",
+            "local goods = tonumber(redis.call('get', KEYS[1]) or '0')",
+            "local goodsNew = goods + count",
+            "redis.call('set', KEYS[1], tostring(goodsNew))",
+            "redis.call('hset', KEYS[2], rollbackId, count)",
+            "redis.call('hdel', KEYS[2], id)",
+            "keepLog(KEYS[2])",
+            "",
+            "-- 2. 释放队伍名额（仅在准入时占用过）",
+            "local team = -1",
+            "if teamKey and redis.call('hexists', teamLogKey, id) == 1 and redis.call('hexists', teamLogKey, rollbackId) == 0 then",
+            "    team = tonumber(redis.call('get', teamKey) or '0')",
+            "    local teamNew = math.max(team - 1, 0)",
+            "    redis.call('set', teamKey, tostring(teamNew))",
+            "    redis.call('hset', teamLogKey, rollbackId, 1)",
+            "    redis.call('hdel', teamLogKey, id)",
+            "    keepLog(teamLogKey)",
+            "    team = teamNew",
+            "end",
+            "",
+            "-- 3. 扣回用户有效参与次数（与 releaseUserTakeCount 共用扣回标记 Key，只扣回准入时累加过的，同一订单只扣回一次）",
+            "local take = -1",
+            "if takeKey and redis.call('exists', takeKey) == 1 then",
+            "    take = tonumber(redis.call('hget', takeKey, 'take') or '0')",
+            "    if markRefunded(takeRefundKey) and take > 0 then",
+            "        take = redis.call('hincrby', takeKey, 'take', -1)",
+            "    end",
+            "end",
+            "",
+            "local entry = {'action', 'increase', 'by', rollbackId, 'change', count, 'from', goods, 'to', goodsNew, 'ts', timestamp}",
+            "if team >= 0 then",
+            "    table.insert(entry, 'team')",
+            "    table.insert(entry, teamKey)",
+            "end",
+            "journal(KEYS[3], unpack(entry))",
+            "",
+            "return {1, goodsNew, team, take}"
+    );
+
     @Override
-    public IRedisAdapter.StockDecreaseResult decreaseGoodsStockAndIncreaseTeamStock(
-            String goodsStockKey, String goodsStockLogKey,
-            String teamStockKey, String teamStockLogKey,
-            String identifier, int goodsCount, int teamTargetCount) {
-        
-        // 如果不需要增加队伍人数，只扣减商品库存
-        if (teamStockKey == null || teamStockLogKey == null) {
-            Long goodsResult = decreaseStockWithLog(goodsStockKey, goodsStockLogKey, identifier, goodsCount);
-            if (goodsResult == null || goodsResult < 0) {
-                return new IRedisAdapter.StockDecreaseResult(null, null, false, "STOCK_NOT_ENOUGH");
+    public Map<String, StockRedisSnapshotVO> queryGoodsStockSnapshots(Collection<String> skus) {
+        Map<String, StockRedisSnapshotVO> snapshots = new HashMap<>();
+        if (skus == null || skus.isEmpty()) {
+            return snapshots;
+        }
+
+        // 1. 一次 pipeline 读取商品库存、租约、流水 Stream 是否存在
+        RBatch batch = redissonClient.createBatch(BatchOptions.defaults());
+        Map<String, RFuture<String>> stockFutures = new HashMap<>();
+        Map<String, RFuture<Map<String, String>>> leaseFutures = new HashMap<>();
+        Map<String, RFuture<Boolean>> journalFutures = new HashMap<>();
+        for (String sku : skus) {
+            stockFutures.put(sku, batch.<String>getBucket(GOODS_STOCK_KEY_PREFIX + sku, StringCodec.INSTANCE).getAsync());
+            leaseFutures.put(sku, batch.<String, String>getMap(StockQuotaLeaseManager.STOCK_LEASE_KEY_PREFIX + sku, StringCodec.INSTANCE).readAllMapAsync());
+            journalFutures.put(sku, batch.getStream(STOCK_JOURNAL_KEY_PREFIX + sku, StringCodec.INSTANCE).isExistsAsync());
+        }
+        batch.execute();
+
+        List<String> journalSkus = new ArrayList<>();
+        for (String sku : skus) {
+            String stock = stockFutures.get(sku).toCompletableFuture().join();
+            long leased = 0L;
+            Map<String, String> leases = leaseFutures.get(sku).toCompletableFuture().join();
+            if (null != leases) {
+                for (String value : leases.values()) {
+                    leased += Math.max(0L, Long.parseLong(value));
+                }
+            }
+            boolean journalAvailable = Boolean.TRUE.equals(journalFutures.get(sku).toCompletableFuture().join());
+            if (journalAvailable) {
+                journalSkus.add(sku);
             }
-            return new IRedisAdapter.StockDecreaseResult(goodsResult, null, true, null);
+            snapshots.put(sku, StockRedisSnapshotVO.builder()
+                    .sku(sku)
+                    .goodsStock(null == stock ? null : Long.valueOf(stock))
+                    .leasedStock(leased)
+                    .journalAvailable(journalAvailable)
+                    .unreconciledEntries(new ArrayList<>())
+                    .rolledBackIdentifiers(new HashSet<>())
+                    .build());
+        }
+        if (journalSkus.isEmpty()) {
+            return snapshots;
         }
 
-        // 需要同时扣减商品库存和增加队伍人数
-        String luaScript = String.join("\n",
-                "-- 幂等性检查：商品库存流水",
-                "if redis.call('hexists', KEYS[2], ARGV[3]) == 1 then",
-                "    return redis.error_reply('GOODS_OPERATION_ALREADY_EXECUTED')",
-                "end",
-                "",
-                "-- 幂等性检查：队伍库存流水",
-                "if redis.call('hexists', KEYS[4], ARGV[3]) == 1 then",
-                "    return redis.error_reply('TEAM_OPERATION_ALREADY_EXECUTED')",
-                "end",
-                "",
-                "-- 检查商品库存",
-                "local goodsCurrent = redis.call('get', KEYS[1])",
-                "if goodsCurrent == false then",
-                "    return redis.error_reply('GOODS_STOCK_KEY_NOT_FOUND')",
-                "end",
-                "if tonumber(goodsCurrent) < tonumber(ARGV[1]) then",
-                "    return redis.error_reply('GOODS_STOCK_NOT_ENOUGH')",
-                "end",
-                "",
-                "-- 检查队伍库存（如果队伍库存不存在，初始化为0）",
-                "local teamCurrent = redis.call('get', KEYS[3])",
-                "if teamCurrent == false then",
-                "    teamCurrent = '0'",
-                "end",
-                "local teamCurrentCount = tonumber(teamCurrent)",
-                "local teamTarget = tonumber(ARGV[2])",
-                "",
-                "-- 检查队伍是否已满",
-                "if teamCurrentCount >= teamTarget then",
-                "    return redis.error_reply('TEAM_FULL')",
-                "end",
-                "",
-                "-- 原子扣减商品库存",
-                "local goodsNew = tonumber(goodsCurrent) - tonumber(ARGV[1])",
-                "redis.call('set', KEYS[1], tostring(goodsNew))",
-                "",
-                "-- 原子增加队伍人数",
-                "local teamNew = teamCurrentCount + 1",
-                "redis.call('set', KEYS[3], tostring(teamNew))",
-                "",
-                "-- 记录商品库存流水",
-                "local time = redis.call('time')",
-                "local timestamp = (time[1] * 1000) + math.floor(time[2] / 1000)",
-                "redis.call('hset', KEYS[2], ARGV[3], cjson.encode({",
-                "    action = 'decrease',",
-                "    from = goodsCurrent,",
-                "    to = goodsNew,",
-                "    change = ARGV[1],",
-                "    by = ARGV[3],",
-                "    timestamp = timestamp",
-                "}))",
-                "redis.call('expire', KEYS[2], 86400)",
-                "",
-                "-- 记录队伍库存流水",
-                "redis.call('hset', KEYS[4], ARGV[3], cjson.encode({",
-                "    action = 'increase_team',",
-                "    from = teamCurrentCount,",
-                "    to = teamNew,",
-                "    change = 1,",
-                "    targetCount = teamTarget,",
-                "    by = ARGV[3],",
-                "    timestamp = timestamp",
-                "}))",
-                "redis.call('expire', KEYS[4], 86400)",
-                "",
-                "-- 返回结果：商品剩余库存,队伍当前人数",
-                "return {goodsNew, teamNew}"
-        );
+        // 2. 对账消费组进度：未确认流水 + 最后投递位置
+        String reconciliation = StockJournalGroupEnumVO.RECONCILIATION.getCode();
+        RBatch groupBatch = redissonClient.createBatch(BatchOptions.defaults());
+        Map<String, RFuture<List<StreamGroup>>> groupFutures = new HashMap<>();
+        Map<String, RFuture<List<PendingEntry>>> pendingFutures = new HashMap<>();
+        for (String sku : journalSkus) {
+            RStreamAsync<String, String> stream = groupBatch.getStream(STOCK_JOURNAL_KEY_PREFIX + sku, StringCodec.INSTANCE);
+            groupFutures.put(sku, stream.listGroupsAsync());
+            pendingFutures.put(sku, stream.listPendingAsync(reconciliation, StreamMessageId.MIN, StreamMessageId.MAX, SNAPSHOT_JOURNAL_LIMIT));
+        }
+        groupBatch.execute();
 
-        try {
-            List<Long> result = redissonClient.getScript().eval(
-                    RScript.Mode.READ_WRITE,
-                    luaScript,
-                    RScript.ReturnType.MULTI,
-                    Arrays.asList(goodsStockKey, goodsStockLogKey, teamStockKey, teamStockLogKey),
-                    goodsCount, teamTargetCount, identifier
-            );
+        // 3. 从最早未对账位置读取流水
+        RBatch rangeBatch = redissonClient.createBatch(BatchOptions.defaults());
+        Map<String, RFuture<Map<StreamMessageId, Map<String, String>>>> rangeFutures = new HashMap<>();
+        Map<String, Set<String>> pendingIdsBySku = new HashMap<>();
+        Map<String, StreamMessageId> lastDeliveredBySku = new HashMap<>();
+        for (String sku : journalSkus) {
+            StreamMessageId lastDelivered = StreamMessageId.MIN;
+            for (StreamGroup group : groupFutures.get(sku).toCompletableFuture().join()) {
+                if (reconciliation.equals(group.getName())) {
+                    lastDelivered = group.getLastDeliveredId();
+                }
+            }
+            Set<String> pendingIds = new HashSet<>();
+            StreamMessageId start = new StreamMessageId(lastDelivered.getId0(), lastDelivered.getId1() + 1);
+            for (PendingEntry pendingEntry : pendingFutures.get(sku).toCompletableFuture().join()) {
+                pendingIds.add(pendingEntry.getId().toString());
+                if (compareStreamId(pendingEntry.getId(), start) < 0) {
+                    start = pendingEntry.getId();
+                }
+            }
+            pendingIdsBySku.put(sku, pendingIds);
+            lastDeliveredBySku.put(sku, lastDelivered);
+            rangeFutures.put(sku, rangeBatch.<String, String>getStream(STOCK_JOURNAL_KEY_PREFIX + sku, StringCodec.INSTANCE)
+                    .rangeAsync(SNAPSHOT_JOURNAL_LIMIT, start, StreamMessageId.MAX));
+        }
+        rangeBatch.execute();
 
-            if (result != null && result.size() >= 2) {
-                Long goodsRemainingStock = result.get(0);
-                Long teamCurrentCount = result.get(1);
-                log.info("原子操作-扣减商品库存并增加队伍人数成功: goodsStockKey={}, teamStockKey={}, " +
-                        "商品剩余库存={}, 队伍当前人数={}/{}",
-                        goodsStockKey, teamStockKey, goodsRemainingStock, teamCurrentCount, teamTargetCount);
-                return new IRedisAdapter.StockDecreaseResult(goodsRemainingStock, teamCurrentCount, true, null);
-            } else {
-                log.error("原子操作-返回结果格式错误: result={}", result);
-                return new IRedisAdapter.StockDecreaseResult(null, null, false, "UNKNOWN_ERROR");
+        for (String sku : journalSkus) {
+            StockRedisSnapshotVO snapshot = snapshots.get(sku);
+            Map<StreamMessageId, Map<String, String>> messages = rangeFutures.get(sku).toCompletableFuture().join();
+            if (null == messages) continue;
+            if (messages.size() >= SNAPSHOT_JOURNAL_LIMIT) {
+                log.warn("库存快照流水超过读取上限，在途扣减可能偏小: sku={}, limit={}", sku, SNAPSHOT_JOURNAL_LIMIT);
             }
-        } catch (RedisException e) {
-            String errorMsg = e.getMessage();
-            log.error("原子操作-扣减商品库存并增加队伍人数失败: goodsStockKey={}, teamStockKey={}, error={}",
-                    goodsStockKey, teamStockKey, errorMsg);
-            
-            // 解析错误码
-            String errorCode = "UNKNOWN_ERROR";
-            if (errorMsg != null) {
-                if (errorMsg.contains("GOODS_STOCK_NOT_ENOUGH")) {
-                    errorCode = "GOODS_STOCK_NOT_ENOUGH";
-                } else if (errorMsg.contains("TEAM_FULL")) {
-                    errorCode = "TEAM_FULL";
-                } else if (errorMsg.contains("GOODS_OPERATION_ALREADY_EXECUTED") || 
-                           errorMsg.contains("TEAM_OPERATION_ALREADY_EXECUTED")) {
-                    errorCode = "OPERATION_ALREADY_EXECUTED";
-                } else if (errorMsg.contains("GOODS_STOCK_KEY_NOT_FOUND")) {
-                    errorCode = "GOODS_STOCK_KEY_NOT_FOUND";
+            Set<String> pendingIds = pendingIdsBySku.get(sku);
+            StreamMessageId lastDelivered = lastDeliveredBySku.get(sku);
+            for (Map.Entry<StreamMessageId, Map<String, String>> message : messages.entrySet()) {
+                StockJournalEntryVO entry = toJournalEntry(message.getKey(), message.getValue());
+                if ("increase".equals(entry.getAction()) && null != entry.getIdentifier() && entry.getIdentifier().startsWith("ROLLBACK_")) {
+                    snapshot.getRolledBackIdentifiers().add(entry.getIdentifier().substring("ROLLBACK_".length()));
+                }
+                if (pendingIds.contains(entry.getId()) || compareStreamId(message.getKey(), lastDelivered) > 0) {
+                    snapshot.getUnreconciledEntries().add(entry);
                 }
             }
-            
-            return new IRedisAdapter.StockDecreaseResult(null, null, false, errorCode);
+        }
+        return snapshots;
+    }
+
+    @Override
+    public Map<String, Long> getStockValues(Collection<String> keys) {
+        Map<String, Long> values = new HashMap<>();
+        if (keys == null || keys.isEmpty()) {
+            return values;
+        }
+        List<String> keyList = new ArrayList<>(keys);
+        RBuckets buckets = redissonClient.getBuckets(StringCodec.INSTANCE);
+        for (int i = 0; i < keyList.size(); i += MULTI_KEY_BATCH_SIZE) {
+            List<String> chunk = keyList.subList(i, Math.min(i + MULTI_KEY_BATCH_SIZE, keyList.size()));
+            Map<String, String> result = buckets.get(chunk.toArray(new String[0]));
+            for (Map.Entry<String, String> entry : result.entrySet()) {
+                if (null != entry.getValue()) {
+                    values.put(entry.getKey(), Long.valueOf(entry.getValue()));
+                }
+            }
+        }
+        return values;
+    }
+
+    @Override
+    public void setStockValues(Map<String, Long> values) {
+        if (values == null || values.isEmpty()) {
+            return;
+        }
+        RBuckets buckets = redissonClient.getBuckets(StringCodec.INSTANCE);
+        Map<String, String> chunk = new HashMap<>();
+        for (Map.Entry<String, Long> entry : values.entrySet()) {
+            chunk.put(entry.getKey(), String.valueOf(entry.getValue()));
+            if (chunk.size() >= MULTI_KEY_BATCH_SIZE) {
+                buckets.set(chunk);
+                chunk = new HashMap<>();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            buckets.set(chunk);
+        }
+    }
+
+    @Override
+    public int setStockValuesIfAbsent(Map<String, Long> values) {
+        if (values == null || values.isEmpty()) {
+            return 0;
+        }
+        List<Map.Entry<String, Long>> entries = new ArrayList<>(values.entrySet());
+        int created = 0;
+        for (int i = 0; i < entries.size(); i += MULTI_KEY_BATCH_SIZE) {
+            List<Map.Entry<String, Long>> chunk = entries.subList(i, Math.min(i + MULTI_KEY_BATCH_SIZE, entries.size()));
+            RBatch batch = redissonClient.createBatch(BatchOptions.defaults());
+            List<RFuture<Boolean>> futures = new ArrayList<>(chunk.size());
+            for (Map.Entry<String, Long> entry : chunk) {
+                futures.add(batch.<String>getBucket(entry.getKey(), StringCodec.INSTANCE).setIfAbsentAsync(String.valueOf(entry.getValue())));
+            }
+            batch.execute();
+            for (RFuture<Boolean> future : futures) {
+                if (Boolean.TRUE.equals(future.toCompletableFuture().join())) {
+                    created++;
+                }
+            }
+        }
+        return created;
+    }
+
+    @Override
+    public StockAdmissionResultVO admitOrder(StockAdmissionEntity admission) {
+        boolean hasTake = null != admission.getUserTakeKey();
+        boolean hasTeam = null != admission.getTeamStockKey() && null != admission.getTeamStockLogKey();
+        int takeLimit = null == admission.getTakeLimit() ? 0 : admission.getTakeLimit();
+        int teamTargetCount = null == admission.getTeamTargetCount() ? 0 : admission.getTeamTargetCount();
+        try {
+            List<Object> result = ADMISSION_SCRIPT.eval(redissonClient, RScript.ReturnType.MULTI,
+                    admissionKeys(admission, hasTake, hasTeam),
+                    admission.getIdentifier(), String.valueOf(admission.getCount()), String.valueOf(teamTargetCount),
+                    String.valueOf(takeLimit), hasTake ? "1" : "0", hasTeam ? "1" : "0", String.valueOf(USER_TAKE_REFUND_DEFAULT_TTL_MS));
+            StockAdmissionResultVO resultVO = toAdmissionResult(result);
+            log.info("锁单准入: identifier={}, goodsStockKey={}, teamStockKey={}, code={}, 商品剩余库存={}, 队伍当前人数={}/{}, 参与次数={}",
+                    admission.getIdentifier(), admission.getGoodsStockKey(), admission.getTeamStockKey(), resultVO.getCode(),
+                    resultVO.getGoodsRemainingStock(), resultVO.getTeamCurrentCount(), teamTargetCount, resultVO.getTakeCount());
+            return resultVO;
+        } catch (Exception e) {
+            log.error("锁单准入脚本执行失败: identifier={}, goodsStockKey={}, error={}",
+                    admission.getIdentifier(), admission.getGoodsStockKey(), e.getMessage());
+            return StockAdmissionResultVO.error();
+        }
+    }
+
+    @Override
+    public StockAdmissionBatchResultVO admitOrders(List<StockAdmissionEntity> admissions) {
+        if (redissonClient.getConfig().isClusterConfig()) {
+            log.error("批量锁单准入不支持 Redis Cluster 模式: size={}", admissions.size());
+            return StockAdmissionBatchResultVO.unsupported();
+        }
+        Set<String> goodsStockKeys = new HashSet<>();
+        List<Object> keys = new ArrayList<>(admissions.size() * 7);
+        List<Object> args = new ArrayList<>(2 + admissions.size() * 6);
+        args.add(String.valueOf(admissions.size()));
+        for (StockAdmissionEntity admission : admissions) {
+            if (!goodsStockKeys.add(admission.getGoodsStockKey())) {
+                log.error("批量锁单准入商品重复: goodsStockKey={}", admission.getGoodsStockKey());
+                return StockAdmissionBatchResultVO.error();
+            }
+            boolean hasTake = null != admission.getUserTakeKey();
+            boolean hasTeam = null != admission.getTeamStockKey() && null != admission.getTeamStockLogKey();
+            keys.addAll(admissionKeys(admission, hasTake, hasTeam));
+            args.add(admission.getIdentifier());
+            args.add(String.valueOf(admission.getCount()));
+            args.add(String.valueOf(null == admission.getTeamTargetCount() ? 0 : admission.getTeamTargetCount()));
+            args.add(String.valueOf(null == admission.getTakeLimit() ? 0 : admission.getTakeLimit()));
+            args.add(hasTake ? "1" : "0");
+            args.add(hasTeam ? "1" : "0");
+        }
+        args.add(String.valueOf(USER_TAKE_REFUND_DEFAULT_TTL_MS));
+        try {
+            List<Object> result = ADMISSION_BATCH_SCRIPT.eval(redissonClient, RScript.ReturnType.MULTI, keys, args.toArray());
+            StockAdmissionBatchResultVO resultVO = toAdmissionBatchResult(result, admissions.size());
+            log.info("批量锁单准入: size={}, code={}, failedIndex={}", admissions.size(), resultVO.getCode(), resultVO.getFailedIndex());
+            return resultVO;
+        } catch (Exception e) {
+            log.error("批量锁单准入脚本执行失败: size={}, error={}", admissions.size(), e.getMessage());
+            return StockAdmissionBatchResultVO.error();
+        }
+    }
+
+    @Override
+    public StockAdmissionResultVO compensateOrder(StockAdmissionEntity admission) {
+        return compensate(admission, false);
+    }
+
+    @Override
+    public StockAdmissionResultVO releaseOrder(StockAdmissionEntity admission) {
+        return compensate(admission, true);
+    }
+
+    private StockAdmissionResultVO compensate(StockAdmissionEntity admission, boolean orderCreated) {
+        boolean hasTake = null != admission.getUserTakeKey();
+        boolean hasTeam = null != admission.getTeamStockKey() && null != admission.getTeamStockLogKey();
+        try {
+            List<Object> result = COMPENSATION_SCRIPT.eval(redissonClient, RScript.ReturnType.MULTI,
+                    admissionKeys(admission, hasTake, hasTeam),
+                    admission.getIdentifier(), String.valueOf(admission.getCount()), admission.getOrderId(),
+                    hasTake ? "1" : "0", hasTeam ? "1" : "0", orderCreated ? "1" : "0");
+            StockAdmissionResultVO resultVO = toAdmissionResult(result);
+            log.info("锁单补偿: identifier={}, goodsStockKey={}, teamStockKey={}, orderCreated={}, code={}, 商品库存={}, 队伍人数={}, 参与次数={}",
+                    admission.getIdentifier(), admission.getGoodsStockKey(), admission.getTeamStockKey(), orderCreated, resultVO.getCode(),
+                    resultVO.getGoodsRemainingStock(), resultVO.getTeamCurrentCount(), resultVO.getTakeCount());
+            return resultVO;
+        } catch (Exception e) {
+            log.error("锁单补偿脚本执行失败: identifier={}, goodsStockKey={}, error={}",
+                    admission.getIdentifier(), admission.getGoodsStockKey(), e.getMessage());
+            return StockAdmissionResultVO.error();
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * 准入、补偿脚本 Key：参与次数 Key 之后追加扣回标记 Key
+     */
+    private List<Object> admissionKeys(StockAdmissionEntity admission, boolean hasTake, boolean hasTeam) {
+        List<Object> keys = new ArrayList<>(7);
+        keys.add(admission.getGoodsStockKey());
+        keys.add(admission.getGoodsStockLogKey());
+        keys.add(journalKeyOf(admission.getGoodsStockKey()));
+        if (hasTake) {
+            keys.add(admission.getUserTakeKey());
+            keys.add(userTakeRefundKey(admission.getUserTakeKey(), admission.getOrderId()));
+        }
+        if (hasTeam) {
+            keys.add(admission.getTeamStockKey());
+            keys.add(admission.getTeamStockLogKey());
+        }
+        return keys;
+    }
+
+    private StockAdmissionResultVO toAdmissionResult(List<Object> result) {
+        if (result == null || result.size() < 4) {
+            log.error("锁单准入脚本返回格式错误: result={}", result);
+            return StockAdmissionResultVO.error();
+        }
+        return StockAdmissionResultVO.builder()
+                .code(StockAdmissionCodeEnumVO.valueOf(Integer.parseInt(String.valueOf(result.get(0)))))
+                .goodsRemainingStock(Long.parseLong(String.valueOf(result.get(1))))
+                .teamCurrentCount(Long.parseLong(String.valueOf(result.get(2))))
+                .takeCount(Long.parseLong(String.valueOf(result.get(3))))
+                .build();
+    }
+
+    private StockAdmissionBatchResultVO toAdmissionBatchResult(List<Object> result, int size) {
+        if (result == null || result.size() < 2) {
+            log.error("批量锁单准入脚本返回格式错误: result={}", result);
+            return StockAdmissionBatchResultVO.error();
+        }
+        StockAdmissionCodeEnumVO code = StockAdmissionCodeEnumVO.valueOf(Integer.parseInt(String.valueOf(result.get(0))));
+        int failedIndex = Integer.parseInt(String.valueOf(result.get(1))) - 1;
+        int expectedSize = StockAdmissionCodeEnumVO.SUCCESS.equals(code) ? 2 + size * 3 : 5;
+        if (result.size() < expectedSize) {
+            log.error("批量锁单准入脚本返回格式错误: result={}", result);
+            return StockAdmissionBatchResultVO.error();
+        }
+        List<StockAdmissionResultVO> items = new ArrayList<>(expectedSize / 3);
+        for (int i = 2; i + 2 < expectedSize; i += 3) {
+            items.add(StockAdmissionResultVO.builder()
+                    .code(code)
+                    .goodsRemainingStock(Long.parseLong(String.valueOf(result.get(i))))
+                    .teamCurrentCount(Long.parseLong(String.valueOf(result.get(i + 1))))
+                    .takeCount(Long.parseLong(String.valueOf(result.get(i + 2))))
+                    .build());
+        }
+        return StockAdmissionBatchResultVO.builder()
+                .code(code)
+                .failedIndex(failedIndex)
+                .items(items)
+                .build();
+    }
+
+}
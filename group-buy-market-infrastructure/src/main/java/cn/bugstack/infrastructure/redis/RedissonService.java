@@ -8,6 +8,9 @@ import org.springframework.stereotype.Service;
 import javax.annotation.Resource;
 import java.time.Duration;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -34,6 +37,26 @@ public class RedissonService implements IRedisService {
         return redissonClient.<T>getBucket(key).get();
     }
 
+    @Override
+    public <T> Map<String, T> getValues(Collection<String> keys) {
+        if (null == keys || keys.isEmpty()) {
+            return new HashMap<>();
+        }
+        return redissonClient.getBuckets().get(keys.toArray(new String[0]));
+    }
+
+    @Override
+    public <T> void setValues(Map<String, T> values, long expired) {
+        if (null == values || values.isEmpty()) {
+            return;
+        }
+        RBatch batch = redissonClient.createBatch(BatchOptions.defaults());
+        for (Map.Entry<String, T> entry : values.entrySet()) {
+            batch.<T>getBucket(entry.getKey()).setAsync(entry.getValue(), expired, TimeUnit.MILLISECONDS);
+        }
+        batch.execute();
+    }
+
     @Override
     public <T> RQueue<T> getQueue(String key) {
         return redissonClient.getQueue(key);
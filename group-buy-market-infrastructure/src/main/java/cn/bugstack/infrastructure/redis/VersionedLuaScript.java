@@ -0,0 +1,73 @@
+package cn.bugstack.infrastructure.redis;
+
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RScript;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.RedisException;
+import org.redisson.client.codec.StringCodec;
+
+import java.util.List;
+
+/**
+ * 带版本号的 Lua 脚本（Infrastructure层）
+ * <p>
+ * 1. 首次执行时 SCRIPT LOAD，之后通过 EVALSHA 执行，只传输 SHA 不传输脚本内容
+ * 2. 版本号写入脚本首行注释，脚本变更时必须升级版本号，不同版本 SHA 不同，滚动发布期间新旧节点互不影响
+ * 3. 加载后登记到 {@link #SCRIPT_REGISTRY_KEY}（field=脚本名，value=版本:SHA），便于排查线上运行的脚本版本
+ * 4. Redis 重启或 SCRIPT FLUSH 后返回 NOSCRIPT，自动重新加载并重试一次
+ * <p>
+ * 参数与返回值统一使用 StringCodec，与流水读取（getStockDecreaseLog）保持一致。
+ *
+ * @author liang.tian
+ */
+@Slf4j
+public class VersionedLuaScript {
+
+    public static final String SCRIPT_REGISTRY_KEY = "group_buy_market_lua_scripts";
+
+    private final String name;
+    private final int version;
+    private final String source;
+
+    private volatile String sha;
+
+    public VersionedLuaScript(String name, int version, String... lines) {
+        this.name = name;
+        this.version = version;
+        this.source = "-- " + name + " v" + version + "\n" + String.join("\n", lines);
+    }
+
+    public <R> R eval(RedissonClient redissonClient, RScript.ReturnType returnType, List<Object> keys, Object... args) {
+        RScript script = redissonClient.getScript(StringCodec.INSTANCE);
+        String current = sha;
+        if (null == current) {
+            current = load(redissonClient);
+        }
+        try {
+            return script.evalSha(RScript.Mode.READ_WRITE, current, returnType, keys, args);
+        } catch (RedisException e) {
+            if (null == e.getMessage() || !e.getMessage().contains("NOSCRIPT")) {
+                throw e;
+            }
+            log.warn("Lua脚本未加载，重新加载: name={}, version={}", name, version);
+            return script.evalSha(RScript.Mode.READ_WRITE, load(redissonClient), returnType, keys, args);
+        }
+    }
+
+    private synchronized String load(RedissonClient redissonClient) {
+        String loaded = redissonClient.getScript(StringCodec.INSTANCE).scriptLoad(source);
+        redissonClient.getMap(SCRIPT_REGISTRY_KEY, StringCodec.INSTANCE).fastPut(name, version + ":" + loaded);
+        this.sha = loaded;
+        log.info("Lua脚本加载完成: name={}, version={}, sha={}", name, version, loaded);
+        return loaded;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+}
@@ -0,0 +1,106 @@
+package cn.bugstack.infrastructure.redis.codec;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+
+/**
+ * 二进制字段读写工具
+ * <p>
+ * 每个字段先写 1 字节的存在标记（0 为 null），再写值；字符串使用变长长度 + UTF-8 字节。
+ *
+ * @author liang.tian
+ */
+public final class BinaryFields {
+
+    private static final byte NULL = 0;
+    private static final byte PRESENT = 1;
+
+    private BinaryFields() {
+    }
+
+    public static void writeLong(DataOutput out, Long value) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL);
+            return;
+        }
+        out.writeByte(PRESENT);
+        writeVarLong(out, value);
+    }
+
+    public static Long readLong(DataInput in) throws IOException {
+        return in.readByte() == NULL ? null : readVarLong(in);
+    }
+
+    public static void writeInteger(DataOutput out, Integer value) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL);
+            return;
+        }
+        out.writeByte(PRESENT);
+        writeVarLong(out, value);
+    }
+
+    public static Integer readInteger(DataInput in) throws IOException {
+        return in.readByte() == NULL ? null : (int) readVarLong(in);
+    }
+
+    public static void writeDate(DataOutput out, Date value) throws IOException {
+        writeLong(out, value == null ? null : value.getTime());
+    }
+
+    public static Date readDate(DataInput in) throws IOException {
+        Long time = readLong(in);
+        return time == null ? null : new Date(time);
+    }
+
+    public static void writeString(DataOutput out, String value) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL);
+            return;
+        }
+        out.writeByte(PRESENT);
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(out, bytes.length);
+        out.write(bytes);
+    }
+
+    public static String readString(DataInput in) throws IOException {
+        if (in.readByte() == NULL) {
+            return null;
+        }
+        byte[] bytes = new byte[(int) readVarLong(in)];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * ZigZag + 7bit 变长编码，小数值（ID、状态、次数）只占 1~2 字节
+     */
+    public static void writeVarLong(DataOutput out, long value) throws IOException {
+        long v = (value << 1) ^ (value >> 63);
+        while ((v & ~0x7FL) != 0) {
+            out.writeByte((int) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.writeByte((int) v);
+    }
+
+    public static long readVarLong(DataInput in) throws IOException {
+        long v = 0;
+        int shift = 0;
+        byte b;
+        do {
+            if (shift > 63) {
+                throw new IOException("变长整数格式错误");
+            }
+            b = in.readByte();
+            v |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+}
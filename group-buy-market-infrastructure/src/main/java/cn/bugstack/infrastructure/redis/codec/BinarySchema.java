@@ -0,0 +1,36 @@
+package cn.bugstack.infrastructure.redis.codec;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * 二进制编码结构描述
+ * <p>
+ * 每个需要紧凑编码的缓存对象实现一个 Schema，按固定字段顺序读写，不写字段名和类名。
+ * 字段顺序一经发布不可调整，新增字段只能追加在末尾，并同步提升 {@link #schemaVersion()}。
+ *
+ * @author liang.tian
+ */
+public interface BinarySchema<T> {
+
+    /**
+     * 类型标识，全局唯一，写入编码头部用于解码时定位 Schema
+     */
+    byte typeId();
+
+    /**
+     * 结构版本，字段变更时递增；解码遇到不认识的版本返回 null（缓存未命中），由调用方回源
+     */
+    byte schemaVersion();
+
+    /**
+     * 对应的对象类型
+     */
+    Class<T> type();
+
+    void write(DataOutput out, T value) throws IOException;
+
+    T read(DataInput in) throws IOException;
+
+}
@@ -0,0 +1,208 @@
+package cn.bugstack.infrastructure.redis.codec;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
+import org.redisson.client.codec.BaseCodec;
+import org.redisson.client.codec.Codec;
+import org.redisson.client.protocol.Decoder;
+import org.redisson.client.protocol.Encoder;
+import org.redisson.codec.JsonJacksonCodec;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 紧凑二进制编解码器
+ * <p>
+ * 已注册 {@link BinarySchema} 的类型按固定字段顺序写成二进制，不再携带 JSON 字段名和 @class 元数据；
+ * 未注册的类型全部委托给 JsonJacksonCodec，与原有行为一致。
+ * <p>
+ * 编码格式：[魔数 0xC7][结构版本][类型标识][标志位][数据]，标志位 bit0 表示数据经过压缩，
+ * 压缩数据前追加原始长度（变长整数）。
+ * <p>
+ * 滚动切换：解码始终同时识别二进制和旧 JSON 两种格式（JSON 首字节不可能是 0xC7），
+ * 编码格式由 writeCompact 控制。先全量发布（writeCompact=false），再打开开关，旧缓存随 TTL 自然淘汰。
+ * 结构版本或类型标识不认识的数据解码为 null（缓存未命中），升级结构版本的滚动发布期间新旧节点互相回源，不会读失败。
+ *
+ * @author liang.tian
+ */
+public class CompactBinaryCodec extends BaseCodec {
+
+    public static final byte MAGIC = (byte) 0xC7;
+    private static final int HEADER_LENGTH = 4;
+    private static final byte FLAG_DEFLATE = 0x01;
+
+    private final Codec fallback;
+    private final boolean writeCompact;
+    private final int compressThreshold;
+
+    private final Map<Class<?>, BinarySchema<?>> schemaByType = new ConcurrentHashMap<>();
+    private final BinarySchema<?>[] schemaById = new BinarySchema<?>[256];
+
+    public CompactBinaryCodec(Codec fallback, boolean writeCompact, int compressThreshold) {
+        this.fallback = fallback;
+        this.writeCompact = writeCompact;
+        this.compressThreshold = compressThreshold;
+    }
+
+    /**
+     * 供 Redisson 通过反射复制编解码器时使用
+     */
+    public CompactBinaryCodec(ClassLoader classLoader, CompactBinaryCodec codec) throws ReflectiveOperationException {
+        this(BaseCodec.copy(classLoader, codec.fallback), codec.writeCompact, codec.compressThreshold);
+        for (BinarySchema<?> schema : codec.schemaByType.values()) {
+            register(schema);
+        }
+    }
+
+    /**
+     * 默认编解码器：注册拼团活动、折扣配置两类缓存对象
+     */
+    public static CompactBinaryCodec defaultCodec(boolean writeCompact, int compressThreshold) {
+        return new CompactBinaryCodec(JsonJacksonCodec.INSTANCE, writeCompact, compressThreshold)
+                .register(new GroupBuyActivitySchema())
+                .register(new GroupBuyDiscountSchema());
+    }
+
+    public CompactBinaryCodec register(BinarySchema<?> schema) {
+        int id = schema.typeId() & 0xFF;
+        BinarySchema<?> exist = schemaById[id];
+        if (exist != null && !exist.type().equals(schema.type())) {
+            throw new IllegalStateException("二进制编码类型标识冲突: typeId=" + id + ", " + exist.type().getName() + " / " + schema.type().getName());
+        }
+        schemaById[id] = schema;
+        schemaByType.put(schema.type(), schema);
+        return this;
+    }
+
+    private final Encoder encoder = in -> {
+        @SuppressWarnings("unchecked")
+        BinarySchema<Object> schema = in == null ? null : (BinarySchema<Object>) this.schemaByType.get(in.getClass());
+        if (!this.writeCompact || schema == null) {
+            return this.fallback.getValueEncoder().encode(in);
+        }
+
+        ByteBuf body = ByteBufAllocator.DEFAULT.buffer();
+        ByteBuf out = null;
+        try {
+            schema.write(new ByteBufOutputStream(body), in);
+            int length = body.readableBytes();
+            boolean compress = this.compressThreshold > 0 && length >= this.compressThreshold;
+
+            out = ByteBufAllocator.DEFAULT.buffer(HEADER_LENGTH + length);
+            out.writeByte(MAGIC);
+            out.writeByte(schema.schemaVersion());
+            out.writeByte(schema.typeId());
+            out.writeByte(compress ? FLAG_DEFLATE : 0);
+            if (compress) {
+                BinaryFields.writeVarLong(new ByteBufOutputStream(out), length);
+                deflate(body, out);
+            } else {
+                out.writeBytes(body);
+            }
+            return out;
+        } catch (Exception e) {
+            if (out != null) {
+                out.release();
+            }
+            throw e instanceof IOException ? (IOException) e : new IOException(e);
+        } finally {
+            body.release();
+        }
+    };
+
+    private final Decoder<Object> decoder = (buf, state) -> {
+        if (buf.readableBytes() < HEADER_LENGTH || buf.getByte(buf.readerIndex()) != MAGIC) {
+            // 旧格式（JSON）数据，交给原编解码器
+            return this.fallback.getValueDecoder().decode(buf, state);
+        }
+
+        buf.skipBytes(1);
+        byte version = buf.readByte();
+        int typeId = buf.readByte() & 0xFF;
+        byte flags = buf.readByte();
+
+        BinarySchema<?> schema = this.schemaById[typeId];
+        if (schema == null || schema.schemaVersion() != version) {
+            // 滚动发布期间新旧节点的类型或结构版本不一致，按缓存未命中处理，由调用方回源后按本节点版本重新写入
+            buf.skipBytes(buf.readableBytes());
+            return null;
+        }
+
+        ByteBufInputStream bufIn = new ByteBufInputStream(buf);
+        DataInput in = bufIn;
+        if ((flags & FLAG_DEFLATE) != 0) {
+            int length = (int) BinaryFields.readVarLong(bufIn);
+            in = new DataInputStream(new ByteArrayInputStream(inflate(buf, length)));
+        }
+        return schema.read(in);
+    };
+
+    private void deflate(ByteBuf body, ByteBuf out) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+        try {
+            byte[] input = new byte[body.readableBytes()];
+            body.readBytes(input);
+            deflater.setInput(input);
+            deflater.finish();
+            byte[] chunk = new byte[Math.max(64, input.length)];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(chunk);
+                out.writeBytes(chunk, 0, n);
+            }
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private byte[] inflate(ByteBuf buf, int length) throws IOException {
+        byte[] input = new byte[buf.readableBytes()];
+        buf.readBytes(input);
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(input);
+            byte[] output = new byte[length];
+            int offset = 0;
+            while (offset < length) {
+                int n = inflater.inflate(output, offset, length - offset);
+                if (n == 0 && (inflater.finished() || inflater.needsInput())) {
+                    break;
+                }
+                offset += n;
+            }
+            if (offset != length) {
+                throw new IOException("二进制编码解压长度不一致: expected=" + length + ", actual=" + offset);
+            }
+            return output;
+        } catch (DataFormatException e) {
+            throw new IOException(e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    @Override
+    public Decoder<Object> getValueDecoder() {
+        return decoder;
+    }
+
+    @Override
+    public Encoder getValueEncoder() {
+        return encoder;
+    }
+
+    @Override
+    public ClassLoader getClassLoader() {
+        return fallback.getClassLoader();
+    }
+
+}
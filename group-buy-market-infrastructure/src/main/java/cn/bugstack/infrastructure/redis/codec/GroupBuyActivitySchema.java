@@ -0,0 +1,75 @@
+package cn.bugstack.infrastructure.redis.codec;
+
+import cn.bugstack.infrastructure.dao.po.GroupBuyActivity;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import static cn.bugstack.infrastructure.redis.codec.BinaryFields.*;
+
+/**
+ * 拼团活动缓存二进制结构
+ *
+ * @author liang.tian
+ */
+public class GroupBuyActivitySchema implements BinarySchema<GroupBuyActivity> {
+
+    public static final byte TYPE_ID = 1;
+
+    @Override
+    public byte typeId() {
+        return TYPE_ID;
+    }
+
+    @Override
+    public byte schemaVersion() {
+        return 1;
+    }
+
+    @Override
+    public Class<GroupBuyActivity> type() {
+        return GroupBuyActivity.class;
+    }
+
+    @Override
+    public void write(DataOutput out, GroupBuyActivity value) throws IOException {
+        writeLong(out, value.getId());
+        writeLong(out, value.getActivityId());
+        writeString(out, value.getActivityName());
+        writeString(out, value.getDiscountId());
+        writeInteger(out, value.getGroupType());
+        writeInteger(out, value.getTakeLimitCount());
+        writeInteger(out, value.getTarget());
+        writeInteger(out, value.getValidTime());
+        writeInteger(out, value.getStatus());
+        writeDate(out, value.getStartTime());
+        writeDate(out, value.getEndTime());
+        writeString(out, value.getTagId());
+        writeString(out, value.getTagScope());
+        writeDate(out, value.getCreateTime());
+        writeDate(out, value.getUpdateTime());
+    }
+
+    @Override
+    public GroupBuyActivity read(DataInput in) throws IOException {
+        return GroupBuyActivity.builder()
+                .id(readLong(in))
+                .activityId(readLong(in))
+                .activityName(readString(in))
+                .discountId(readString(in))
+                .groupType(readInteger(in))
+                .takeLimitCount(readInteger(in))
+                .target(readInteger(in))
+                .validTime(readInteger(in))
+                .status(readInteger(in))
+                .startTime(readDate(in))
+                .endTime(readDate(in))
+                .tagId(readString(in))
+                .tagScope(readString(in))
+                .createTime(readDate(in))
+                .updateTime(readDate(in))
+                .build();
+    }
+
+}
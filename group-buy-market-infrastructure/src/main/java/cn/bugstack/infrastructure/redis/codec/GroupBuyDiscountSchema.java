@@ -0,0 +1,65 @@
+package cn.bugstack.infrastructure.redis.codec;
+
+import cn.bugstack.infrastructure.dao.po.GroupBuyDiscount;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import static cn.bugstack.infrastructure.redis.codec.BinaryFields.*;
+
+/**
+ * 折扣配置缓存二进制结构
+ *
+ * @author liang.tian
+ */
+public class GroupBuyDiscountSchema implements BinarySchema<GroupBuyDiscount> {
+
+    public static final byte TYPE_ID = 2;
+
+    @Override
+    public byte typeId() {
+        return TYPE_ID;
+    }
+
+    @Override
+    public byte schemaVersion() {
+        return 1;
+    }
+
+    @Override
+    public Class<GroupBuyDiscount> type() {
+        return GroupBuyDiscount.class;
+    }
+
+    @Override
+    public void write(DataOutput out, GroupBuyDiscount value) throws IOException {
+        writeLong(out, value.getId());
+        writeString(out, value.getDiscountId());
+        writeString(out, value.getDiscountName());
+        writeString(out, value.getDiscountDesc());
+        writeInteger(out, value.getDiscountType());
+        writeString(out, value.getMarketPlan());
+        writeString(out, value.getMarketExpr());
+        writeString(out, value.getTagId());
+        writeDate(out, value.getCreateTime());
+        writeDate(out, value.getUpdateTime());
+    }
+
+    @Override
+    public GroupBuyDiscount read(DataInput in) throws IOException {
+        return GroupBuyDiscount.builder()
+                .id(readLong(in))
+                .discountId(readString(in))
+                .discountName(readString(in))
+                .discountDesc(readString(in))
+                .discountType(readInteger(in))
+                .marketPlan(readString(in))
+                .marketExpr(readString(in))
+                .tagId(readString(in))
+                .createTime(readDate(in))
+                .updateTime(readDate(in))
+                .build();
+    }
+
+}
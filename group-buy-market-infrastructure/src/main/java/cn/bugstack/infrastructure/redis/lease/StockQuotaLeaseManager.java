@@ -0,0 +1,404 @@
+package cn.bugstack.infrastructure.redis.lease;
+
+import cn.bugstack.domain.trade.adapter.port.IRedisAdapter;
+import com.alibaba.fastjson2.JSON;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.lang.management.ManagementFactory;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 热点商品库存租约管理（Infrastructure层）
+ * <p>
+ * 热点商品每笔订单都要执行一次 Lua 扣减，所有请求集中在同一个库存 Key 上。租约模式下：
+ * 1. 节点通过 Lua 脚本从库存 Key 一次预占一批库存（租约），记入租约 Hash（field=节点ID）
+ * 2. 下单时在本地 AtomicInteger 上 CAS 扣减，不访问 Redis
+ * 3. 每笔订单的扣减流水先进入本地队列，每 {@link #FLUSH_INTERVAL_MS} 毫秒批量写入流水 Hash，并核销租约数量
+ * 4. 租约大小按消耗速度自适应：租约很快用完则翻倍，消耗缓慢则减半
+ * 5. 节点空闲或关闭时归还未使用的租约；归还前等待已扣减的请求全部写入流水（围栏），保证归还时租约 Hash 中
+ *    只剩已记入流水之外的未使用数量
+ * 6. 幂等：本地待写入流水按 identifier 去重，写入时脚本再按流水 Hash 做 HEXISTS 检查，重复请求不核销租约
+ * <p>
+ * 库存守恒：商品库存 + 各节点未核销租约 + 已扣减流水 = 初始库存。
+ * 节点宕机时其租约由 InventoryReconciliationJob 根据心跳判断后回收，回收时递增节点的租约纪元：
+ * 节点距上次心跳成功超过 {@link #LEASE_VALID_MS} 毫秒即停止使用本地租约（早于心跳 Key 过期），
+ * 恢复后心跳读到新纪元，丢弃本地剩余租约，预占新租约时脚本也会校验纪元。
+ * 宕机前尚未写入的流水（最多一个刷新周期）会随租约一起被回收，这部分订单最终由数据库库存扣减
+ * （saleable_inventory - frozen_inventory >= quantity）兜底。
+ *
+ * @author liang.tian
+ */
+@Slf4j
+@Component
+public class StockQuotaLeaseManager {
+
+    // 商品库存 Redis 前缀（与 HotGoodsOrderCreateTransactionListener 保持一致）
+    private static final String GOODS_STOCK_KEY_PREFIX = "group_buy_market_goods_stock_";
+    private static final String GOODS_STOCK_LOG_KEY_PREFIX = "group_buy_market_goods_stock_log_";
+    // 租约 Hash 前缀
+    public static final String STOCK_LEASE_KEY_PREFIX = "group_buy_market_stock_lease_";
+
+    // 租约大小
+    private static final int INITIAL_LEASE_SIZE = 50;
+    private static final int MIN_LEASE_SIZE = 10;
+    private static final int MAX_LEASE_SIZE = 500;
+    // 租约在该时间内用完则扩大租约
+    private static final long FAST_EXHAUST_MS = 200L;
+    // 租约超过该时间才用完则缩小租约
+    private static final long SLOW_EXHAUST_MS = 2000L;
+    // 空闲超过该时间归还租约
+    private static final long IDLE_RETURN_MS = 5000L;
+    // 售罄后的退避时间，避免每个请求都访问 Redis
+    private static final long SOLD_OUT_BACKOFF_MS = 200L;
+    // 流水刷新周期与单次最大条数
+    private static final long FLUSH_INTERVAL_MS = 20L;
+    private static final int MAX_FLUSH_SIZE = 500;
+    // 节点心跳
+    private static final long HEARTBEAT_INTERVAL_SECONDS = 10L;
+    private static final long HEARTBEAT_TTL_SECONDS = 30L;
+    // 本地租约有效期：心跳发出后在心跳 Key 过期前预留 5 秒，保证租约被回收前节点已停止使用本地租约
+    private static final long LEASE_VALID_MS = TimeUnit.SECONDS.toMillis(HEARTBEAT_TTL_SECONDS) - 5000L;
+    // 归还租约前等待进行中扣减写入本地流水队列的最长时间
+    private static final long FENCE_WAIT_MS = 50L;
+
+    @Resource
+    private IRedisAdapter redisAdapter;
+
+    @Resource(name = "stockLeaseScheduler")
+    private ScheduledExecutorService scheduler;
+
+    private final String nodeId = ManagementFactory.getRuntimeMXBean().getName() + "_" + UUID.randomUUID().toString().substring(0, 8);
+
+    private final Map<String, SkuQuota> quotas = new ConcurrentHashMap<>();
+
+    // 节点租约纪元，与 Redis 不一致说明租约已被回收
+    private volatile long epoch;
+    // 本地租约有效截止时间，由心跳成功延长
+    private volatile long leaseValidUntil;
+
+    // 统计指标
+    private final AtomicLong leaseCount = new AtomicLong();
+    private final AtomicLong localDecreaseCount = new AtomicLong();
+    private final AtomicLong leaseExpiredRejectCount = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        // 先同步一次心跳与纪元，之后才能使用本地租约
+        heartbeat();
+        scheduler.scheduleWithFixedDelay(this::flushAll, FLUSH_INTERVAL_MS, FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        scheduler.scheduleWithFixedDelay(this::returnIdle, 1, 1, TimeUnit.SECONDS);
+        scheduler.scheduleWithFixedDelay(this::heartbeat, HEARTBEAT_INTERVAL_SECONDS, HEARTBEAT_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        log.info("库存租约管理器启动: nodeId={}, epoch={}", nodeId, epoch);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        // 先写入流水再归还剩余租约
+        flushAll();
+        for (SkuQuota quota : quotas.values()) {
+            returnQuota(quota);
+        }
+        log.info("库存租约管理器关闭，已归还租约: nodeId={}", nodeId);
+    }
+
+    /**
+     * 租约模式扣减库存
+     *
+     * @return 本地剩余租约数量（>=0 表示扣减成功，重复请求同样视为成功），-1 表示库存不足或本地租约已失效
+     */
+    public long decrease(Long activityId, String goodsId, String identifier) {
+        // 心跳中断超过有效期，租约可能已被回收，不再使用本地租约
+        if (System.currentTimeMillis() >= leaseValidUntil) {
+            leaseExpiredRejectCount.incrementAndGet();
+            log.debug("库存租约已失效（心跳中断），拒绝扣减: nodeId={}, identifier={}", nodeId, identifier);
+            return -1L;
+        }
+
+        String sku = activityId + "_" + goodsId;
+        SkuQuota quota = quotas.computeIfAbsent(sku, SkuQuota::new);
+
+        // 幂等：本地待写入流水中已存在
+        if (quota.pendingLogs.containsKey(identifier)) {
+            return quota.remaining.get();
+        }
+
+        while (true) {
+            int remaining = quota.remaining.get();
+            if (remaining > 0) {
+                // 进行中计数覆盖 CAS 到写入本地流水队列的窗口，归还租约时据此等待
+                quota.admitting.incrementAndGet();
+                try {
+                    if (!quota.remaining.compareAndSet(remaining, remaining - 1)) continue;
+                    long now = System.currentTimeMillis();
+                    if (null != quota.pendingLogs.putIfAbsent(identifier, buildLog(identifier, remaining, now))) {
+                        // 并发的重复请求，退回本次扣减
+                        return quota.remaining.incrementAndGet();
+                    }
+                    quota.lastDecreaseTime = now;
+                    localDecreaseCount.incrementAndGet();
+                    return remaining - 1;
+                } finally {
+                    quota.admitting.decrementAndGet();
+                }
+            }
+            if (System.currentTimeMillis() < quota.soldOutUntil || !refill(quota)) {
+                return -1L;
+            }
+        }
+    }
+
+    /**
+     * 申请新租约，同一 SKU 只有一个线程访问 Redis，其他线程等待后直接使用新租约
+     */
+    private boolean refill(SkuQuota quota) {
+        quota.lock.lock();
+        try {
+            if (quota.remaining.get() > 0) return true;
+
+            long now = System.currentTimeMillis();
+            if (now < quota.soldOutUntil) return false;
+
+            // 租约大小自适应
+            if (quota.leaseTime > 0) {
+                long elapsed = now - quota.leaseTime;
+                if (elapsed < FAST_EXHAUST_MS) {
+                    quota.leaseSize = Math.min(quota.leaseSize * 2, MAX_LEASE_SIZE);
+                } else if (elapsed > SLOW_EXHAUST_MS) {
+                    quota.leaseSize = Math.max(quota.leaseSize / 2, MIN_LEASE_SIZE);
+                }
+            }
+
+            long granted = redisAdapter.leaseStock(quota.stockKey, quota.leaseKey, nodeId, quota.leaseSize, epoch);
+            if (granted < 0) {
+                // 纪元已过期，租约已被回收：停止使用本地租约，由调度线程立即心跳同步纪元（不在持锁时执行，避免与丢弃租约互相等待）
+                log.warn("库存租约纪元已过期，同步纪元: stockKey={}, nodeId={}, epoch={}", quota.stockKey, nodeId, epoch);
+                leaseValidUntil = 0L;
+                scheduler.execute(this::heartbeat);
+                return false;
+            }
+            if (granted == 0) {
+                quota.soldOutUntil = now + SOLD_OUT_BACKOFF_MS;
+                return false;
+            }
+            quota.remaining.addAndGet((int) granted);
+            quota.leaseTime = now;
+            leaseCount.incrementAndGet();
+            log.info("库存租约预占成功: stockKey={}, nodeId={}, granted={}, leaseSize={}", quota.stockKey, nodeId, granted, quota.leaseSize);
+            return true;
+        } finally {
+            quota.lock.unlock();
+        }
+    }
+
+    private void flushAll() {
+        for (SkuQuota quota : quotas.values()) {
+            try {
+                flush(quota);
+            } catch (Exception e) {
+                log.error("库存租约流水写入失败: logKey={}", quota.logKey, e);
+            }
+        }
+    }
+
+    private void flush(SkuQuota quota) {
+        // 同一 SKU 串行写入，归还租约时 flush 返回即代表此前的流水都已写入
+        quota.flushLock.lock();
+        try {
+            while (!quota.pendingLogs.isEmpty()) {
+                Map<String, String> logs = new LinkedHashMap<>();
+                Iterator<Map.Entry<String, String>> iterator = quota.pendingLogs.entrySet().iterator();
+                while (logs.size() < MAX_FLUSH_SIZE && iterator.hasNext()) {
+                    Map.Entry<String, String> entry = iterator.next();
+                    if (quota.pendingLogs.remove(entry.getKey(), entry.getValue())) {
+                        logs.put(entry.getKey(), entry.getValue());
+                    }
+                }
+                if (logs.isEmpty()) return;
+
+                int duplicated;
+                try {
+                    duplicated = redisAdapter.appendLeasedStockDecreaseLogs(quota.logKey, quota.leaseKey, nodeId, logs);
+                } catch (Exception e) {
+                    // 写入失败放回队列，下个周期重试
+                    for (Map.Entry<String, String> item : logs.entrySet()) {
+                        quota.pendingLogs.putIfAbsent(item.getKey(), item.getValue());
+                    }
+                    throw e;
+                }
+                if (duplicated > 0) {
+                    // 重复请求未核销租约，对应数量退回本地
+                    quota.remaining.addAndGet(duplicated);
+                    log.warn("库存租约流水存在重复请求，退回本地租约: logKey={}, duplicated={}", quota.logKey, duplicated);
+                }
+            }
+        } finally {
+            quota.flushLock.unlock();
+        }
+    }
+
+    private void returnIdle() {
+        long now = System.currentTimeMillis();
+        for (SkuQuota quota : quotas.values()) {
+            if (quota.remaining.get() > 0 && now - quota.lastDecreaseTime > IDLE_RETURN_MS) {
+                returnQuota(quota);
+            }
+        }
+    }
+
+    private void returnQuota(SkuQuota quota) {
+        quota.lock.lock();
+        try {
+            int unused = quota.remaining.getAndSet(0);
+            if (unused <= 0) return;
+
+            // 围栏：等待进行中的扣减进入本地流水队列，再把流水全部写入 Redis，之后才归还
+            if (!awaitAdmissions(quota)) {
+                quota.remaining.addAndGet(unused);
+                log.warn("库存租约归还-等待进行中扣减超时，下次再归还: stockKey={}, nodeId={}", quota.stockKey, nodeId);
+                return;
+            }
+            try {
+                flush(quota);
+                long returned = redisAdapter.returnStockLease(quota.stockKey, quota.leaseKey, nodeId, unused);
+                log.info("库存租约归还成功: stockKey={}, nodeId={}, unused={}, returned={}", quota.stockKey, nodeId, unused, returned);
+            } catch (Exception e) {
+                // 流水写入或归还失败保留在本地，下次继续使用或归还
+                quota.remaining.addAndGet(unused);
+                log.error("库存租约归还失败: stockKey={}, nodeId={}, unused={}", quota.stockKey, nodeId, unused, e);
+            }
+        } finally {
+            quota.lock.unlock();
+        }
+    }
+
+    private boolean awaitAdmissions(SkuQuota quota) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(FENCE_WAIT_MS);
+        while (quota.admitting.get() > 0) {
+            if (System.nanoTime() > deadline) return false;
+            Thread.yield();
+        }
+        return true;
+    }
+
+    private void heartbeat() {
+        long sentAt = System.currentTimeMillis();
+        try {
+            long current = redisAdapter.refreshLeaseNodeHeartbeat(nodeId, HEARTBEAT_TTL_SECONDS);
+            if (current != epoch) {
+                discardQuotas(current);
+            }
+            leaseValidUntil = sentAt + LEASE_VALID_MS;
+        } catch (Exception e) {
+            log.error("库存租约节点心跳失败: nodeId={}", nodeId, e);
+        }
+    }
+
+    /**
+     * 租约已被回收（纪元变化），丢弃本地剩余租约，不归还
+     */
+    private void discardQuotas(long newEpoch) {
+        for (SkuQuota quota : quotas.values()) {
+            quota.lock.lock();
+            try {
+                int dropped = quota.remaining.getAndSet(0);
+                if (dropped > 0) {
+                    log.warn("库存租约已被回收，丢弃本地剩余租约: stockKey={}, nodeId={}, dropped={}", quota.stockKey, nodeId, dropped);
+                }
+            } finally {
+                quota.lock.unlock();
+            }
+        }
+        log.warn("库存租约纪元变化: nodeId={}, epoch={} -> {}", nodeId, epoch, newEpoch);
+        epoch = newEpoch;
+    }
+
+    /**
+     * 与 Lua 扣减脚本的流水格式保持一致，from/to 为本地租约数量
+     */
+    private String buildLog(String identifier, int from, long timestamp) {
+        Map<String, Object> logMap = new LinkedHashMap<>();
+        logMap.put("action", "decrease");
+        logMap.put("from", from);
+        logMap.put("to", from - 1);
+        logMap.put("change", 1);
+        logMap.put("by", identifier);
+        logMap.put("timestamp", timestamp);
+        logMap.put("lease", nodeId);
+        return JSON.toJSONString(logMap);
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * 本节点持有的未使用租约总数
+     */
+    public long getLocalQuota() {
+        long total = 0;
+        for (SkuQuota quota : quotas.values()) {
+            total += quota.remaining.get();
+        }
+        return total;
+    }
+
+    /**
+     * 待写入的流水数量
+     */
+    public long getPendingLogCount() {
+        long total = 0;
+        for (SkuQuota quota : quotas.values()) {
+            total += quota.pendingLogs.size();
+        }
+        return total;
+    }
+
+    public long getLeaseCount() {
+        return leaseCount.get();
+    }
+
+    public long getLocalDecreaseCount() {
+        return localDecreaseCount.get();
+    }
+
+    public long getLeaseExpiredRejectCount() {
+        return leaseExpiredRejectCount.get();
+    }
+
+    private static class SkuQuota {
+        private final String stockKey;
+        private final String logKey;
+        private final String leaseKey;
+        private final AtomicInteger remaining = new AtomicInteger();
+        // CAS 成功到写入本地流水队列之间的扣减数
+        private final AtomicInteger admitting = new AtomicInteger();
+        private final ReentrantLock lock = new ReentrantLock();
+        private final ReentrantLock flushLock = new ReentrantLock();
+        // 待写入流水，identifier -> 流水内容
+        private final Map<String, String> pendingLogs = new ConcurrentHashMap<>();
+        private volatile int leaseSize = INITIAL_LEASE_SIZE;
+        private volatile long leaseTime;
+        private volatile long lastDecreaseTime;
+        private volatile long soldOutUntil;
+
+        private SkuQuota(String sku) {
+            this.stockKey = GOODS_STOCK_KEY_PREFIX + sku;
+            this.logKey = GOODS_STOCK_LOG_KEY_PREFIX + sku;
+            this.leaseKey = STOCK_LEASE_KEY_PREFIX + sku;
+        }
+    }
+
+}
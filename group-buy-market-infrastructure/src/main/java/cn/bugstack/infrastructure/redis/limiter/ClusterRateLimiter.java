@@ -0,0 +1,325 @@
+package cn.bugstack.infrastructure.redis.limiter;
+
+import cn.bugstack.infrastructure.dcc.DCCService;
+import cn.bugstack.infrastructure.redis.VersionedLuaScript;
+import cn.bugstack.types.common.Constants;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.common.util.concurrent.RateLimiter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.redisson.api.RScript;
+import org.redisson.api.RedissonClient;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 集群限流（Infrastructure层）
+ * <p>
+ * 原来的 @RateLimiterAccessInterceptor 是单机令牌桶，实际限流值随节点数变化。改为 Redis 令牌桶：
+ * 1. 令牌桶保存在 Redis Hash（tokens、ts），Lua 脚本按 Redis 服务器时间补充令牌，集群内所有节点共享同一个桶
+ * 2. 节点按批从 Redis 预取令牌（约 {@link #PREFETCH_WINDOW_MS} 毫秒的量，不超过桶容量），本地扣减，不必每个请求访问 Redis；
+ *    预取的令牌 {@link #PREFETCH_TTL_MS} 毫秒内未用完则作废，避免流量下降后旧令牌被延后使用
+ * 3. 令牌不足时退避一个令牌的生成时间（不超过 {@link #EMPTY_BACKOFF_MS} 毫秒），退避期内直接拒绝，被限流的请求不访问 Redis
+ * 4. 按「场景.维度」配置限流值（DCC clusterRateLimit），维度为 global（全局）、activity（按活动）、user（按用户），
+ *    依次检查 user、activity、global，任一维度无令牌即拒绝，已取得的前序维度令牌退回本地桶；未配置的维度不限流。
+ *    购物车一次请求涉及多个活动时，用户、全局维度各取 1 个令牌，活动维度按去重后的活动各取 1 个令牌（{@link #tryAcquireAll}）
+ * 5. 本地扣减无锁（CAS），同一个桶同时只有一个线程批量预取，其余线程各自向 Redis 申请单个令牌，访问 Redis 时不持有任何锁
+ * <p>
+ * 批量预取带来的误差：每个节点最多多占一批令牌未使用，限流值偏保守，可以接受。
+ * Redis 异常时熔断 {@link #CIRCUIT_OPEN_MS} 毫秒，期间不访问 Redis，按本地令牌桶（单节点限流值）限流，
+ * 熔断结束后的第一次访问失败立即再次熔断；异常日志按秒采样。
+ *
+ * @author liang.tian
+ */
+@Slf4j
+@Component
+public class ClusterRateLimiter {
+
+    public static final String SCENE_LOCK = "lock";
+    public static final String SCENE_INDEX = "index";
+
+    private static final String KEY_PREFIX = "group_buy_market_rate_limit_";
+
+    // 每次预取约该时间窗口内的令牌
+    private static final long PREFETCH_WINDOW_MS = 100L;
+    // 预取令牌的本地有效期
+    private static final long PREFETCH_TTL_MS = 1000L;
+    // 令牌不足时的最长退避时间
+    private static final long EMPTY_BACKOFF_MS = 100L;
+    // 本地桶（按用户维度数量最多）
+    private static final long MAX_LOCAL_BUCKETS = 100_000L;
+    // Redis 异常后的熔断时间
+    private static final long CIRCUIT_OPEN_MS = 5000L;
+
+    /**
+     * 令牌桶：按 Redis 时间补充令牌，取走不超过请求数量的整数个令牌
+     * KEYS: 1 令牌桶Hash
+     * ARGV: 1 每秒令牌数 2 桶容量 3 请求令牌数
+     * 返回：实际取得的令牌数
+     */
+    private static final VersionedLuaScript ACQUIRE_SCRIPT = new VersionedLuaScript("cluster_rate_limit_acquire", 1,
+            "if redis.replicate_commands then redis.replicate_commands() end",
+            "local rate = tonumber(ARGV[1])",
+            "local capacity = tonumber(ARGV[2])",
+            "local requested = tonumber(ARGV[3])",
+            "local time = redis.call('time')",
+            "local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)",
+            "local bucket = redis.call('hmget', KEYS[1], 'tokens', 'ts')",
+            "local tokens = tonumber(bucket[1])",
+            "local ts = tonumber(bucket[2])",
+            "if tokens == nil or ts == nil then",
+            "    tokens = capacity",
+            "    ts = now",
+            "end",
+            "if now > ts then",
+            "    tokens = math.min(capacity, tokens + (now - ts) * rate / 1000)",
+            "    ts = now",
+            "end",
+            "local granted = math.min(requested, math.floor(tokens))",
+            "tokens = tokens - granted",
+            "redis.call('hset', KEYS[1], 'tokens', tostring(tokens))",
+            "redis.call('hset', KEYS[1], 'ts', tostring(ts))",
+            "redis.call('pexpire', KEYS[1], math.ceil(capacity * 1000 / rate) + 1000)",
+            "return granted");
+
+    @Resource
+    private RedissonClient redissonClient;
+
+    @Resource
+    private DCCService dccService;
+
+    private final Cache<String, LocalBucket> buckets = Caffeine.newBuilder()
+            .maximumSize(MAX_LOCAL_BUCKETS)
+            .expireAfterAccess(1, TimeUnit.MINUTES)
+            .build();
+
+    private volatile String parsedRaw;
+    private volatile Map<String, Double> rules = Collections.emptyMap();
+
+    private volatile long lastErrorLogSecond;
+    // 熔断截止时间，熔断期间按本地令牌桶限流
+    private volatile long circuitOpenUntil;
+
+    // 统计指标
+    private final AtomicLong passedCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final AtomicLong redisCallCount = new AtomicLong();
+    private final AtomicLong fallbackCount = new AtomicLong();
+
+    /**
+     * 申请一次访问许可
+     *
+     * @param scene      场景，{@link #SCENE_LOCK}、{@link #SCENE_INDEX}
+     * @param activityId 活动ID，为空时跳过活动维度
+     * @param userId     用户ID，为空时跳过用户维度
+     * @return true 放行、false 限流
+     */
+    public boolean tryAcquire(String scene, Long activityId, String userId) {
+        return tryAcquireAll(scene, null == activityId ? Collections.<Long>emptySet() : Collections.singleton(activityId), userId);
+    }
+
+    /**
+     * 申请一次涉及多个活动的访问许可（购物车），每个维度在一次请求中只取一次令牌
+     *
+     * @param scene       场景，{@link #SCENE_LOCK}、{@link #SCENE_INDEX}
+     * @param activityIds 活动ID，重复的活动只取一次令牌，为空时跳过活动维度
+     * @param userId      用户ID，为空时跳过用户维度
+     * @return true 放行、false 限流（已取得的令牌全部退回）
+     */
+    public boolean tryAcquireAll(String scene, Collection<Long> activityIds, String userId) {
+        if (!dccService.isClusterRateLimitSwitch()) return true;
+
+        Map<String, Double> current = currentRules();
+        // 按 user、activity、global 的顺序检查
+        Map<String, Double> dimensions = new LinkedHashMap<>();
+        if (StringUtils.isNotBlank(userId)) {
+            dimensions.put(scene + "_user_" + userId, current.get(scene + ".user"));
+        }
+        for (Long activityId : new LinkedHashSet<>(activityIds)) {
+            if (null == activityId) continue;
+            dimensions.put(scene + "_activity_" + activityId, current.get(scene + ".activity"));
+        }
+        dimensions.put(scene + "_global", current.get(scene + ".global"));
+
+        List<String> acquired = new ArrayList<>(dimensions.size());
+        boolean passed = true;
+        for (Map.Entry<String, Double> dimension : dimensions.entrySet()) {
+            if (!acquire(dimension.getKey(), dimension.getValue())) {
+                passed = false;
+                break;
+            }
+            acquired.add(dimension.getKey());
+        }
+
+        if (passed) {
+            passedCount.incrementAndGet();
+        } else {
+            // 任一维度无令牌时退回已取得的令牌，被拒绝的请求不消耗其他维度额度
+            acquired.forEach(this::refund);
+            rejectedCount.incrementAndGet();
+        }
+        return passed;
+    }
+
+    private boolean acquire(String name, Double permitsPerSecond) {
+        if (null == permitsPerSecond || permitsPerSecond <= 0) return true;
+
+        LocalBucket bucket = buckets.get(name, key -> new LocalBucket());
+        long now = System.currentTimeMillis();
+        if (bucket.tryTake(now)) return true;
+        if (now < bucket.emptyUntil) return false;
+        if (now < circuitOpenUntil) return fallback(bucket, permitsPerSecond);
+
+        // 同一个桶只有一个线程批量预取，其余线程只申请本次需要的 1 个令牌
+        boolean prefetch = bucket.refilling.compareAndSet(false, true);
+        try {
+            // 桶容量为 1 秒的令牌数，至少为 1
+            long capacity = Math.max(1L, (long) Math.ceil(permitsPerSecond));
+            long batch = prefetch ? Math.min(capacity, Math.max(1L, (long) Math.ceil(permitsPerSecond * PREFETCH_WINDOW_MS / 1000d))) : 1L;
+            long granted;
+            try {
+                redisCallCount.incrementAndGet();
+                Long result = ACQUIRE_SCRIPT.eval(redissonClient, RScript.ReturnType.INTEGER,
+                        Collections.singletonList(KEY_PREFIX + name), String.valueOf(permitsPerSecond), String.valueOf(capacity), String.valueOf(batch));
+                granted = null == result ? 0L : result;
+            } catch (Exception e) {
+                circuitOpenUntil = System.currentTimeMillis() + CIRCUIT_OPEN_MS;
+                logError(name, e);
+                return fallback(bucket, permitsPerSecond);
+            }
+
+            if (granted <= 0) {
+                bucket.emptyUntil = now + Math.min(EMPTY_BACKOFF_MS, Math.max(1L, (long) (1000d / permitsPerSecond)));
+                return false;
+            }
+            if (granted > 1) {
+                bucket.put(granted - 1, now + PREFETCH_TTL_MS);
+            }
+            return true;
+        } finally {
+            if (prefetch) bucket.refilling.set(false);
+        }
+    }
+
+    /**
+     * 退回令牌到本地桶：本地桶已过期时（令牌是单独向 Redis 申请的）按新预取的令牌放入，由本节点后续请求使用
+     */
+    private void refund(String name) {
+        LocalBucket bucket = buckets.getIfPresent(name);
+        if (null == bucket) return;
+        long now = System.currentTimeMillis();
+        if (now < bucket.expireTime) {
+            bucket.permits.incrementAndGet();
+        } else {
+            bucket.put(1L, now + PREFETCH_TTL_MS);
+        }
+    }
+
+    /**
+     * 熔断期间按单节点限流值限流
+     */
+    private boolean fallback(LocalBucket bucket, double permitsPerSecond) {
+        fallbackCount.incrementAndGet();
+        RateLimiter limiter = bucket.fallback;
+        if (null == limiter || limiter.getRate() != permitsPerSecond) {
+            limiter = RateLimiter.create(permitsPerSecond);
+            bucket.fallback = limiter;
+        }
+        return limiter.tryAcquire();
+    }
+
+    private Map<String, Double> currentRules() {
+        String raw = dccService.getClusterRateLimit();
+        if (!StringUtils.equals(raw, parsedRaw)) {
+            rules = parse(raw);
+            parsedRaw = raw;
+        }
+        return rules;
+    }
+
+    private Map<String, Double> parse(String raw) {
+        Map<String, Double> limits = new HashMap<>();
+        if (StringUtils.isBlank(raw)) return limits;
+        for (String item : raw.split(Constants.SPLIT)) {
+            String[] pair = item.split("=");
+            if (pair.length != 2 || !NumberUtils.isCreatable(pair[1].trim())) {
+                log.warn("集群限流配置格式错误，忽略: {}", item);
+                continue;
+            }
+            limits.put(pair[0].trim(), NumberUtils.toDouble(pair[1].trim()));
+        }
+        log.info("集群限流配置更新: {}", limits);
+        return limits;
+    }
+
+    private void logError(String name, Exception e) {
+        long second = System.currentTimeMillis() / 1000L;
+        if (second == lastErrorLogSecond) return;
+        lastErrorLogSecond = second;
+        log.error("集群限流访问Redis失败，熔断{}ms，按本地限流: key={}", CIRCUIT_OPEN_MS, name, e);
+    }
+
+    public long getPassedCount() {
+        return passedCount.get();
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    public long getRedisCallCount() {
+        return redisCallCount.get();
+    }
+
+    public long getFallbackCount() {
+        return fallbackCount.get();
+    }
+
+    private static class LocalBucket {
+        // 本地剩余令牌与有效期
+        private final AtomicLong permits = new AtomicLong();
+        private volatile long expireTime;
+        // 令牌不足时的退避截止时间
+        private volatile long emptyUntil;
+        // 是否有线程正在批量预取
+        private final AtomicBoolean refilling = new AtomicBoolean(false);
+        // 熔断期间的本地令牌桶
+        private volatile RateLimiter fallback;
+
+        private boolean tryTake(long now) {
+            if (now >= expireTime) return false;
+            long current;
+            do {
+                current = permits.get();
+                if (current <= 0) return false;
+            } while (!permits.compareAndSet(current, current - 1));
+            return true;
+        }
+
+        /**
+         * 放入新预取的令牌：未过期的剩余令牌保留，有效期从本次预取开始计算
+         */
+        private void put(long granted, long newExpireTime) {
+            if (System.currentTimeMillis() >= expireTime) {
+                permits.set(0);
+            }
+            permits.addAndGet(granted);
+            expireTime = newExpireTime;
+        }
+    }
+
+}
@@ -0,0 +1,239 @@
+package cn.bugstack.infrastructure.redis.team;
+
+import cn.bugstack.infrastructure.redis.VersionedLuaScript;
+import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.JSONArray;
+import com.alibaba.fastjson2.JSONObject;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RScript;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.*;
+
+/**
+ * 活动可参与队伍目录（Infrastructure层）
+ * <p>
+ * 首页「可参与拼团」原来每次请求都在订单表上执行 team_id in (子查询) + order by id desc，跨所有订单分片查询后在内存打乱。
+ * 改为每个活动在 Redis 中维护一个队伍目录：
+ * 1. 填充度 ZSET：score = 剩余名额 * 10^10 + 过期时间（秒），按 score 升序即「最接近成团、其次最早过期」
+ * 2. 过期 ZSET：score = 过期时间（毫秒），过期队伍按 score 范围删除，O(log n + m)
+ * 3. 队伍信息 Hash：field = teamId，value = 目标数量、锁单数量、完成数量、成员、有效期（JSON）
+ * <p>
+ * 锁单、结算、退单时由交易仓储更新目录，队伍满员或无成员时移出填充度 ZSET（退单后重新加入），
+ * 成团、组队失败时删除；未成团的超时队伍在查询时按过期 ZSET 清理。
+ * 过期时间取「成员订单最晚过期时间」与队伍有效期的较小值，与原 SQL 的 end_time > now() 条件一致。
+ * <p>
+ * 目录只用于展示，更新失败只记录日志，不影响交易；目录为空时由调用方回退到数据库查询。
+ * 三个 Key 使用相同的 hash tag，保证在 Redis Cluster 中位于同一个 slot。
+ *
+ * @author liang.tian
+ */
+@Slf4j
+@Component
+public class JoinableTeamDirectory {
+
+    private static final String KEY_PREFIX = "group_buy_market_joinable_teams_{";
+    // 单次查询最多清理的过期队伍数
+    private static final int PRUNE_LIMIT = 500;
+    private static final double FILL_SCORE_FACTOR = 10_000_000_000d;
+
+    /**
+     * 更新队伍：锁单数量、完成数量、成员增减，重新计算填充度与过期时间
+     * KEYS: 1 填充度ZSET 2 过期ZSET 3 队伍信息Hash
+     * ARGV: 1 teamId 2 锁单增量 3 完成增量 4 userId 5 成员订单过期时间（毫秒，0不更新） 6 新队伍信息JSON（已有队伍为空串）
+     * 返回：剩余名额，-1 表示目录中不存在该队伍
+     */
+    private static final VersionedLuaScript UPDATE_SCRIPT = new VersionedLuaScript("joinable_team_update", 1,
+            "local raw = redis.call('hget', KEYS[3], ARGV[1])",
+            "local info",
+            "if raw then",
+            "    info = cjson.decode(raw)",
+            "elseif ARGV[6] ~= '' then",
+            "    info = cjson.decode(ARGV[6])",
+            "else",
+            "    return -1",
+            "end",
+            "local lockDelta = tonumber(ARGV[2])",
+            "info.lockCount = info.lockCount + lockDelta",
+            "info.completeCount = info.completeCount + tonumber(ARGV[3])",
+            "local users = {}",
+            "local removed = false",
+            "for _, u in ipairs(info.userIds) do",
+            "    if lockDelta < 0 and not removed and u == ARGV[4] then",
+            "        removed = true",
+            "    else",
+            "        table.insert(users, u)",
+            "    end",
+            "end",
+            "if lockDelta > 0 then",
+            "    table.insert(users, ARGV[4])",
+            "end",
+            "info.userIds = users",
+            "local orderEnd = tonumber(ARGV[5])",
+            "if orderEnd > info.expireTime then",
+            "    info.expireTime = math.min(orderEnd, info.validEndTime)",
+            "end",
+            "redis.call('hset', KEYS[3], ARGV[1], cjson.encode(info))",
+            "redis.call('zadd', KEYS[2], info.expireTime, ARGV[1])",
+            "local remaining = info.targetCount - info.lockCount",
+            "if remaining > 0 and info.lockCount > 0 then",
+            "    redis.call('zadd', KEYS[1], remaining * " + (long) FILL_SCORE_FACTOR + " + math.floor(info.expireTime / 1000), ARGV[1])",
+            "else",
+            "    redis.call('zrem', KEYS[1], ARGV[1])",
+            "end",
+            "return remaining");
+
+    /**
+     * 清理过期队伍后取填充度最高的一批队伍
+     * KEYS: 1 填充度ZSET 2 过期ZSET 3 队伍信息Hash
+     * ARGV: 1 当前时间（毫秒） 2 清理上限 3 候选数量
+     */
+    private static final VersionedLuaScript SAMPLE_SCRIPT = new VersionedLuaScript("joinable_team_sample", 1,
+            "local expired = redis.call('zrangebyscore', KEYS[2], '-inf', ARGV[1], 'LIMIT', 0, tonumber(ARGV[2]))",
+            "if #expired > 0 then",
+            "    redis.call('zrem', KEYS[1], unpack(expired))",
+            "    redis.call('zrem', KEYS[2], unpack(expired))",
+            "    redis.call('hdel', KEYS[3], unpack(expired))",
+            "end",
+            "local teamIds = redis.call('zrange', KEYS[1], 0, tonumber(ARGV[3]) - 1)",
+            "if #teamIds == 0 then",
+            "    return {}",
+            "end",
+            "return redis.call('hmget', KEYS[3], unpack(teamIds))");
+
+    @Resource
+    private RedissonClient redissonClient;
+
+    /**
+     * 新队伍（首个成员锁单）
+     */
+    public void register(Long activityId, String teamId, Integer targetCount, Date validStartTime, Date validEndTime, String userId, Date orderEndTime) {
+        Map<String, Object> info = new LinkedHashMap<>();
+        info.put("teamId", teamId);
+        info.put("activityId", activityId);
+        info.put("targetCount", targetCount);
+        info.put("lockCount", 0);
+        info.put("completeCount", 0);
+        info.put("userIds", new ArrayList<>());
+        info.put("validStartTime", null == validStartTime ? 0L : validStartTime.getTime());
+        info.put("validEndTime", null == validEndTime ? orderEndTime.getTime() : validEndTime.getTime());
+        info.put("expireTime", 0L);
+        update(activityId, teamId, 1, 0, userId, orderEndTime.getTime(), JSON.toJSONString(info));
+    }
+
+    /**
+     * 已有队伍新增成员锁单
+     */
+    public void lock(Long activityId, String teamId, String userId, Date orderEndTime) {
+        update(activityId, teamId, 1, 0, userId, orderEndTime.getTime(), "");
+    }
+
+    /**
+     * 成员支付完成（未成团）
+     */
+    public void complete(Long activityId, String teamId) {
+        update(activityId, teamId, 0, 1, "", 0L, "");
+    }
+
+    /**
+     * 成员退单，lockDelta/completeDelta 与组队记录的更新量一致（负数）
+     */
+    public void release(Long activityId, String teamId, String userId, int lockDelta, int completeDelta) {
+        update(activityId, teamId, lockDelta, completeDelta, userId, 0L, "");
+    }
+
+    /**
+     * 成团或组队失败，移出目录
+     */
+    public void remove(Long activityId, String teamId) {
+        try {
+            String[] keys = keysOf(activityId);
+            redissonClient.getScoredSortedSet(keys[0], StringCodec.INSTANCE).remove(teamId);
+            redissonClient.getScoredSortedSet(keys[1], StringCodec.INSTANCE).remove(teamId);
+            redissonClient.getMap(keys[2], StringCodec.INSTANCE).fastRemove(teamId);
+        } catch (Exception e) {
+            log.error("可参与队伍目录删除失败: activityId={}, teamId={}", activityId, teamId, e);
+        }
+    }
+
+    /**
+     * 取填充度最高的 candidateCount 个队伍，随机打乱后排除指定用户参与的队伍，返回 count 个
+     *
+     * @return 可参与队伍，目录不可用时返回 null
+     */
+    public List<JoinableTeam> sample(Long activityId, String excludeUserId, int count, int candidateCount) {
+        List<Object> rows;
+        try {
+            rows = SAMPLE_SCRIPT.eval(redissonClient, RScript.ReturnType.MULTI, Arrays.asList((Object[]) keysOf(activityId)),
+                    String.valueOf(System.currentTimeMillis()), String.valueOf(PRUNE_LIMIT), String.valueOf(candidateCount));
+        } catch (Exception e) {
+            log.error("可参与队伍目录查询失败: activityId={}", activityId, e);
+            return null;
+        }
+
+        List<JoinableTeam> teams = new ArrayList<>();
+        for (Object row : rows) {
+            if (null == row) continue;
+            JoinableTeam team = toJoinableTeam(JSON.parseObject(row.toString()));
+            if (team.getUserIds().isEmpty() || team.getUserIds().contains(excludeUserId)) continue;
+            teams.add(team);
+        }
+        Collections.shuffle(teams);
+        return teams.size() > count ? teams.subList(0, count) : teams;
+    }
+
+    private void update(Long activityId, String teamId, int lockDelta, int completeDelta, String userId, long orderEndTime, String infoJson) {
+        try {
+            Long remaining = UPDATE_SCRIPT.eval(redissonClient, RScript.ReturnType.INTEGER, Arrays.asList((Object[]) keysOf(activityId)),
+                    teamId, String.valueOf(lockDelta), String.valueOf(completeDelta), null == userId ? "" : userId,
+                    String.valueOf(orderEndTime), infoJson);
+            log.debug("可参与队伍目录更新: activityId={}, teamId={}, lockDelta={}, completeDelta={}, remaining={}",
+                    activityId, teamId, lockDelta, completeDelta, remaining);
+        } catch (Exception e) {
+            log.error("可参与队伍目录更新失败: activityId={}, teamId={}, lockDelta={}, completeDelta={}",
+                    activityId, teamId, lockDelta, completeDelta, e);
+        }
+    }
+
+    private JoinableTeam toJoinableTeam(JSONObject info) {
+        JoinableTeam team = new JoinableTeam();
+        team.setTeamId(info.getString("teamId"));
+        team.setActivityId(info.getLong("activityId"));
+        team.setTargetCount(info.getInteger("targetCount"));
+        team.setLockCount(info.getInteger("lockCount"));
+        team.setCompleteCount(info.getInteger("completeCount"));
+        team.setValidStartTime(new Date(info.getLongValue("validStartTime")));
+        team.setValidEndTime(new Date(info.getLongValue("validEndTime")));
+        // cjson 将空数组编码为 {}
+        List<String> userIds = new ArrayList<>();
+        Object users = info.get("userIds");
+        if (users instanceof JSONArray) {
+            userIds = ((JSONArray) users).toJavaList(String.class);
+        }
+        team.setUserIds(userIds);
+        return team;
+    }
+
+    private String[] keysOf(Long activityId) {
+        String prefix = KEY_PREFIX + activityId + "}";
+        return new String[]{prefix + "_fill", prefix + "_expire", prefix + "_info"};
+    }
+
+    @Data
+    public static class JoinableTeam {
+        private String teamId;
+        private Long activityId;
+        private Integer targetCount;
+        private Integer lockCount;
+        private Integer completeCount;
+        private Date validStartTime;
+        private Date validEndTime;
+        /** 未退单成员，第一个为团长 */
+        private List<String> userIds;
+    }
+
+}
@@ -0,0 +1,80 @@
+package cn.bugstack.infrastructure.redis.team;
+
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.BatchOptions;
+import org.redisson.api.RBatch;
+import org.redisson.api.RMap;
+import org.redisson.api.RMapAsync;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 队伍成员索引（Infrastructure层）
+ * <p>
+ * group_buy_order_list 按 user_id 分表，按 team_id 查询订单会广播到所有分表。
+ * 锁单时在 Redis Hash 中记录队伍的订单与用户（field=orderId，value=userId），退单时删除，
+ * 按队伍查询订单时先取成员用户ID作为分片键，只路由到成员所在分表。
+ * <p>
+ * 索引只提供路由，订单状态仍以数据库为准：
+ * 1. 锁单事务回滚时索引中多出的订单，按状态过滤后不影响结果
+ * 2. 索引缺失（过期、写入失败）时返回 null，由调用方回退到广播查询
+ *
+ * @author liang.tian
+ */
+@Slf4j
+@Component
+public class TeamMemberIndex {
+
+    private static final String KEY_PREFIX = "group_buy_market_team_members_";
+    // 覆盖队伍有效期及成团后的退单
+    private static final long EXPIRE_DAYS = 7L;
+
+    @Resource
+    private RedissonClient redissonClient;
+
+    public void addMember(String teamId, String orderId, String userId) {
+        try {
+            RBatch batch = redissonClient.createBatch(BatchOptions.defaults());
+            RMapAsync<String, String> members = batch.getMap(KEY_PREFIX + teamId, StringCodec.INSTANCE);
+            members.fastPutAsync(orderId, userId);
+            members.expireAsync(EXPIRE_DAYS, TimeUnit.DAYS);
+            batch.execute();
+        } catch (Exception e) {
+            log.error("队伍成员索引写入失败，按队伍查询将回退广播: teamId={}, orderId={}", teamId, orderId, e);
+        }
+    }
+
+    public void removeMember(String teamId, String orderId) {
+        try {
+            redissonClient.getMap(KEY_PREFIX + teamId, StringCodec.INSTANCE).fastRemove(orderId);
+        } catch (Exception e) {
+            log.error("队伍成员索引删除失败: teamId={}, orderId={}", teamId, orderId, e);
+        }
+    }
+
+    /**
+     * 查询队伍成员用户ID（分片键）
+     *
+     * @return 去重后的用户ID，索引不存在或不可用时返回 null
+     */
+    public List<String> queryMemberUserIds(String teamId) {
+        try {
+            RMap<String, String> members = redissonClient.getMap(KEY_PREFIX + teamId, StringCodec.INSTANCE);
+            Map<String, String> orders = members.readAllMap();
+            if (orders.isEmpty()) return null;
+            return new ArrayList<>(new LinkedHashSet<>(orders.values()));
+        } catch (Exception e) {
+            log.error("队伍成员索引查询失败: teamId={}", teamId, e);
+            return null;
+        }
+    }
+
+}
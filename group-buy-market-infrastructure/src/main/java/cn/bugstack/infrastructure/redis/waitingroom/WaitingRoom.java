@@ -0,0 +1,260 @@
+package cn.bugstack.infrastructure.redis.waitingroom;
+
+import cn.bugstack.infrastructure.dcc.DCCService;
+import cn.bugstack.infrastructure.redis.VersionedLuaScript;
+import cn.bugstack.types.common.Constants;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.ArrayUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.redisson.api.RScript;
+import org.redisson.api.RedissonClient;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 秒杀活动排队（Infrastructure层）
+ * <p>
+ * 热点商品开售的同一秒内大量用户同时锁单，绝大部分请求在库存不足后回滚，下游做的都是无用功。
+ * 开启排队的活动（DCC waitingRoomRate），用户先领取排队号，再按配置的速率放行：
+ * 1. 排队号：序号计数器 INCR 生成，排队 ZSET 记录 userId -> 排队号，重复进入返回原排队号
+ * 2. 放行水位：状态 Hash 记录已放行到的排队号（admitted）与上次推进时间（ts），每次访问时按 Redis 时间推进
+ *    admitted = min(当前最大排队号, admitted + 速率 * 经过时间)，不需要定时任务，也不需要选主
+ * 3. 排队号 <= 放行水位即已放行，位置 = 排队号 - 水位，预计等待时间 = 位置 / 速率
+ * 4. 已放行的用户领取锁单 Token 时移出排队 ZSET（一个排队号只换一次 Token），锁单失败需重新排队
+ * <p>
+ * 放行速率应按压测得到的锁单处理能力配置；放行后未来领取 Token 的用户占用的名额不会回收，放行量偏保守。
+ * 三个 Key 使用相同的 hash tag，保证在 Redis Cluster 中位于同一个 slot。
+ *
+ * @author liang.tian
+ */
+@Slf4j
+@Component
+public class WaitingRoom {
+
+    private static final String KEY_PREFIX = "group_buy_market_waiting_room_{";
+    // 排队数据有效期，每次进入排队时续期
+    private static final long TTL_SECONDS = 2 * 60 * 60L;
+    // 轮询间隔：预计等待时间的 1/4，限制在该范围内
+    private static final long MIN_POLL_INTERVAL_MS = 500L;
+    private static final long MAX_POLL_INTERVAL_MS = 10_000L;
+
+    /**
+     * 推进放行水位，各脚本公用
+     * KEYS: 1 序号计数器 2 排队ZSET 3 状态Hash
+     * ARGV: 1 每秒放行人数 2 有效期（秒） 3 userId
+     */
+    private static final String[] ADVANCE = {
+            "if redis.replicate_commands then redis.replicate_commands() end",
+            "local rate = tonumber(ARGV[1])",
+            "local time = redis.call('time')",
+            "local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)",
+            "local seq = tonumber(redis.call('get', KEYS[1]) or '0')",
+            "local state = redis.call('hmget', KEYS[3], 'admitted', 'ts')",
+            "local admitted = tonumber(state[1]) or 0",
+            "local ts = tonumber(state[2]) or now",
+            "if now > ts then",
+            "    admitted = math.min(seq, admitted + (now - ts) * rate / 1000)",
+            "end",
+            "redis.call('hset', KEYS[3], 'admitted', tostring(admitted))",
+            "redis.call('hset', KEYS[3], 'ts', tostring(now))",
+            "redis.call('expire', KEYS[3], tonumber(ARGV[2]))",
+            "admitted = math.floor(admitted)"
+    };
+
+    /**
+     * 进入排队，已在排队中返回原排队号
+     * 返回：{排队号, 放行水位}
+     */
+    private static final VersionedLuaScript ENTER_SCRIPT = new VersionedLuaScript("waiting_room_enter", 1, ArrayUtils.addAll(new String[]{
+            "local score = redis.call('zscore', KEYS[2], ARGV[3])",
+            "local ticket",
+            "if score then",
+            "    ticket = tonumber(score)",
+            "else",
+            "    ticket = redis.call('incr', KEYS[1])",
+            "    redis.call('zadd', KEYS[2], ticket, ARGV[3])",
+            "end",
+            "redis.call('expire', KEYS[1], tonumber(ARGV[2]))",
+            "redis.call('expire', KEYS[2], tonumber(ARGV[2]))"
+    }, ArrayUtils.addAll(ADVANCE,
+            "return {ticket, admitted}")));
+
+    /**
+     * 查询排队状态
+     * 返回：{排队号（-1 表示不在排队中）, 放行水位}
+     */
+    private static final VersionedLuaScript STATUS_SCRIPT = new VersionedLuaScript("waiting_room_status", 1, ArrayUtils.addAll(ADVANCE,
+            "local score = redis.call('zscore', KEYS[2], ARGV[3])",
+            "if not score then",
+            "    return {-1, admitted}",
+            "end",
+            "return {tonumber(score), admitted}"));
+
+    /**
+     * 核销排队号：已放行则移出排队
+     * 返回：1 已放行并核销，0 未放行，-1 不在排队中
+     */
+    private static final VersionedLuaScript CONSUME_SCRIPT = new VersionedLuaScript("waiting_room_consume", 1, ArrayUtils.addAll(ADVANCE,
+            "local score = redis.call('zscore', KEYS[2], ARGV[3])",
+            "if not score then",
+            "    return -1",
+            "end",
+            "if tonumber(score) > admitted then",
+            "    return 0",
+            "end",
+            "redis.call('zrem', KEYS[2], ARGV[3])",
+            "return 1"));
+
+    @Resource
+    private RedissonClient redissonClient;
+
+    @Resource
+    private DCCService dccService;
+
+    private volatile String parsedRaw;
+    private volatile Map<Long, Double> rates = Collections.emptyMap();
+
+    // 统计指标
+    private final AtomicLong enteredCount = new AtomicLong();
+    private final AtomicLong admittedCount = new AtomicLong();
+    private final AtomicLong notAdmittedCount = new AtomicLong();
+
+    /**
+     * 活动是否开启排队
+     */
+    public boolean isEnabled(Long activityId) {
+        return null != activityId && null != rateOf(activityId);
+    }
+
+    /**
+     * 进入排队，未开启排队的活动直接返回已放行
+     */
+    public Ticket enter(Long activityId, String userId) {
+        Double rate = rateOf(activityId);
+        if (null == rate) return Ticket.admittedWithoutQueue();
+
+        List<Long> result = ENTER_SCRIPT.eval(redissonClient, RScript.ReturnType.MULTI, keysOf(activityId),
+                String.valueOf(rate), String.valueOf(TTL_SECONDS), userId);
+        enteredCount.incrementAndGet();
+        return Ticket.of(result.get(0), result.get(1), rate);
+    }
+
+    /**
+     * 查询排队状态，未开启排队的活动直接返回已放行
+     */
+    public Ticket status(Long activityId, String userId) {
+        Double rate = rateOf(activityId);
+        if (null == rate) return Ticket.admittedWithoutQueue();
+
+        List<Long> result = STATUS_SCRIPT.eval(redissonClient, RScript.ReturnType.MULTI, keysOf(activityId),
+                String.valueOf(rate), String.valueOf(TTL_SECONDS), userId);
+        return Ticket.of(result.get(0), result.get(1), rate);
+    }
+
+    /**
+     * 领取锁单 Token 前核销排队号
+     *
+     * @return true 已放行（或活动未开启排队），false 未放行或不在排队中
+     */
+    public boolean consume(Long activityId, String userId) {
+        Double rate = rateOf(activityId);
+        if (null == rate) return true;
+
+        Long result = CONSUME_SCRIPT.eval(redissonClient, RScript.ReturnType.INTEGER, keysOf(activityId),
+                String.valueOf(rate), String.valueOf(TTL_SECONDS), userId);
+        if (null != result && result == 1L) {
+            admittedCount.incrementAndGet();
+            return true;
+        }
+        notAdmittedCount.incrementAndGet();
+        return false;
+    }
+
+    public long getEnteredCount() {
+        return enteredCount.get();
+    }
+
+    public long getAdmittedCount() {
+        return admittedCount.get();
+    }
+
+    public long getNotAdmittedCount() {
+        return notAdmittedCount.get();
+    }
+
+    private Double rateOf(Long activityId) {
+        String raw = dccService.getWaitingRoomRate();
+        if (!StringUtils.equals(raw, parsedRaw)) {
+            rates = parse(raw);
+            parsedRaw = raw;
+        }
+        return rates.get(activityId);
+    }
+
+    private Map<Long, Double> parse(String raw) {
+        Map<Long, Double> result = new HashMap<>();
+        if (StringUtils.isBlank(raw) || "0".equals(raw.trim())) return result;
+        for (String item : raw.split(Constants.SPLIT)) {
+            String[] pair = item.split("=");
+            if (pair.length != 2 || !NumberUtils.isDigits(pair[0].trim()) || !NumberUtils.isCreatable(pair[1].trim())
+                    || NumberUtils.toDouble(pair[1].trim()) <= 0) {
+                log.warn("排队放行速率配置格式错误，忽略: {}", item);
+                continue;
+            }
+            result.put(NumberUtils.toLong(pair[0].trim()), NumberUtils.toDouble(pair[1].trim()));
+        }
+        log.info("排队放行速率配置更新: {}", result);
+        return result;
+    }
+
+    private static List<Object> keysOf(Long activityId) {
+        String prefix = KEY_PREFIX + activityId + "}_";
+        return Arrays.asList(prefix + "seq", prefix + "queue", prefix + "state");
+    }
+
+    @Data
+    public static class Ticket {
+        /** 是否在排队中 */
+        private boolean inQueue;
+        /** 排队号 */
+        private long ticket;
+        /** 是否已放行 */
+        private boolean admitted;
+        /** 前面还有多少人 */
+        private long position;
+        /** 预计等待时间（秒） */
+        private long etaSeconds;
+        /** 建议轮询间隔（毫秒） */
+        private long pollIntervalMillis;
+
+        static Ticket admittedWithoutQueue() {
+            Ticket ticket = new Ticket();
+            ticket.setAdmitted(true);
+            return ticket;
+        }
+
+        static Ticket of(long ticketNo, long admittedSeq, double rate) {
+            Ticket ticket = new Ticket();
+            if (ticketNo < 0) return ticket;
+            ticket.setInQueue(true);
+            ticket.setTicket(ticketNo);
+            long position = Math.max(0L, ticketNo - admittedSeq);
+            ticket.setAdmitted(position == 0);
+            ticket.setPosition(position);
+            long etaMillis = (long) Math.ceil(position * 1000d / rate);
+            ticket.setEtaSeconds((etaMillis + 999L) / 1000L);
+            ticket.setPollIntervalMillis(position == 0 ? 0L : Math.min(MAX_POLL_INTERVAL_MS, Math.max(MIN_POLL_INTERVAL_MS, etaMillis / 4)));
+            return ticket;
+        }
+    }
+
+}
@@ -0,0 +1,113 @@
+package cn.bugstack.infrastructure.workload;
+
+import cn.bugstack.types.workload.WorkloadType;
+import lombok.extern.slf4j.Slf4j;
+
+import java.sql.SQLTransientConnectionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 数据库连接分区
+ * <p>
+ * 每个物理连接池（dataSourceName）上，每类负载最多同时持有 maxConnections 个连接，超出时最多等待 acquireTimeoutMillis，超时抛出与 Hikari 相同的
+ * {@link SQLTransientConnectionException}。使用率达到告警水位时输出告警日志（每个分区每 10 秒最多一次）。
+ *
+ * @author liang.tian
+ */
+@Slf4j
+public class ConnectionBulkhead {
+
+    private static final long ALARM_INTERVAL_MS = 10_000L;
+
+    private final WorkloadType workloadType;
+    private final String dataSourceName;
+    private final String name;
+    private final int maxConnections;
+    private final long acquireTimeoutMillis;
+    private final int alarmThreshold;
+    private final Semaphore semaphore;
+
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicLong acquiredCount = new AtomicLong();
+    private final AtomicLong timeoutCount = new AtomicLong();
+    private volatile long lastAlarmTime;
+
+    public ConnectionBulkhead(WorkloadType workloadType, String dataSourceName, String name, int maxConnections, long acquireTimeoutMillis, double alarmRatio) {
+        this.workloadType = workloadType;
+        this.dataSourceName = dataSourceName;
+        this.name = name;
+        this.maxConnections = maxConnections;
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+        this.alarmThreshold = Math.max(1, (int) Math.ceil(maxConnections * alarmRatio));
+        this.semaphore = new Semaphore(maxConnections, true);
+    }
+
+    public void acquire() throws SQLTransientConnectionException {
+        boolean acquired;
+        try {
+            acquired = semaphore.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLTransientConnectionException(dataSourceName + "." + name + " - Interrupted during connection acquisition", e);
+        }
+        if (!acquired) {
+            timeoutCount.incrementAndGet();
+            log.error("数据库连接分区获取连接超时: dataSource={}, pool={}, max={}, active={}, waiting={}, timeout={}ms",
+                    dataSourceName, name, maxConnections, active.get(), semaphore.getQueueLength(), acquireTimeoutMillis);
+            throw new SQLTransientConnectionException(dataSourceName + "." + name + " - Connection is not available, request timed out after " + acquireTimeoutMillis + "ms.");
+        }
+        acquiredCount.incrementAndGet();
+        int current = active.incrementAndGet();
+        if (current >= alarmThreshold) {
+            alarm(current);
+        }
+    }
+
+    public void release() {
+        active.decrementAndGet();
+        semaphore.release();
+    }
+
+    private void alarm(int current) {
+        long now = System.currentTimeMillis();
+        if (now - lastAlarmTime < ALARM_INTERVAL_MS) return;
+        lastAlarmTime = now;
+        log.warn("数据库连接分区使用率告警: dataSource={}, pool={}, max={}, active={}, waiting={}", dataSourceName, name, maxConnections, current, semaphore.getQueueLength());
+    }
+
+    public WorkloadType getWorkloadType() {
+        return workloadType;
+    }
+
+    public String getDataSourceName() {
+        return dataSourceName;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    public int getActive() {
+        return active.get();
+    }
+
+    public int getWaiting() {
+        return semaphore.getQueueLength();
+    }
+
+    public long getAcquiredCount() {
+        return acquiredCount.get();
+    }
+
+    public long getTimeoutCount() {
+        return timeoutCount.get();
+    }
+
+}
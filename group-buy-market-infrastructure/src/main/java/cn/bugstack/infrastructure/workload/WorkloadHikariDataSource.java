@@ -0,0 +1,126 @@
+package cn.bugstack.infrastructure.workload;
+
+import cn.bugstack.types.workload.WorkloadContext;
+import cn.bugstack.types.workload.WorkloadType;
+import com.zaxxer.hikari.HikariDataSource;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiFunction;
+
+/**
+ * 按负载划分物理连接的 Hikari 连接池
+ * <p>
+ * 物理连接池由 ShardingSphere 按 spring.shardingsphere.datasource.*.type 创建，配置为该类型后在物理连接层按 {@link WorkloadContext} 划分：
+ * 1. 从连接池借出物理连接时占用当前负载分区的名额，连接归还连接池时释放；一个逻辑连接在多个数据源上打开的物理连接分别计入
+ * 2. 每个物理连接池各自一组分区，分区上限不超过本连接池的 maximum-pool-size，批处理、异步消费最多占满自己的分区
+ * 3. 分区由 {@link #configure(BiFunction)} 在数据源创建前设置（见 WorkloadIsolationConfig），未设置时不划分
+ *
+ * @author liang.tian
+ */
+public class WorkloadHikariDataSource extends HikariDataSource {
+
+    private static final List<WorkloadHikariDataSource> INSTANCES = new CopyOnWriteArrayList<>();
+
+    // 入参：连接池名称、连接池大小；返回各负载的连接分区
+    private static volatile BiFunction<String, Integer, Map<WorkloadType, ConnectionBulkhead>> bulkheadFactory;
+
+    private volatile Map<WorkloadType, ConnectionBulkhead> bulkheads;
+
+    public WorkloadHikariDataSource() {
+        super();
+        INSTANCES.add(this);
+    }
+
+    public static void configure(BiFunction<String, Integer, Map<WorkloadType, ConnectionBulkhead>> factory) {
+        bulkheadFactory = factory;
+    }
+
+    public static List<WorkloadHikariDataSource> instances() {
+        return Collections.unmodifiableList(INSTANCES);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        ConnectionBulkhead bulkhead = partitions().get(WorkloadContext.current());
+        if (null == bulkhead) return super.getConnection();
+        bulkhead.acquire();
+        try {
+            return wrap(super.getConnection(), bulkhead);
+        } catch (SQLException | RuntimeException e) {
+            bulkhead.release();
+            throw e;
+        }
+    }
+
+    @Override
+    public void close() {
+        INSTANCES.remove(this);
+        super.close();
+    }
+
+    public Collection<ConnectionBulkhead> bulkheads() {
+        return Collections.unmodifiableCollection(partitions().values());
+    }
+
+    /**
+     * 首次使用时创建分区，此时连接池属性（名称、大小）已设置完成
+     */
+    private Map<WorkloadType, ConnectionBulkhead> partitions() {
+        Map<WorkloadType, ConnectionBulkhead> current = bulkheads;
+        if (null != current) return current;
+        synchronized (this) {
+            if (null == bulkheads) {
+                Map<WorkloadType, ConnectionBulkhead> created = new EnumMap<>(WorkloadType.class);
+                BiFunction<String, Integer, Map<WorkloadType, ConnectionBulkhead>> factory = bulkheadFactory;
+                if (null != factory) {
+                    created.putAll(factory.apply(null == getPoolName() ? "default" : getPoolName(), getMaximumPoolSize()));
+                }
+                bulkheads = created;
+            }
+            return bulkheads;
+        }
+    }
+
+    /**
+     * 连接关闭（归还连接池）时归还分区名额（重复关闭只归还一次）
+     */
+    private Connection wrap(Connection connection, ConnectionBulkhead bulkhead) {
+        AtomicBoolean released = new AtomicBoolean();
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    break;
+            }
+            if ("close".equals(method.getName()) && method.getParameterCount() == 0) {
+                try {
+                    connection.close();
+                } finally {
+                    if (released.compareAndSet(false, true)) {
+                        bulkhead.release();
+                    }
+                }
+                return null;
+            }
+            try {
+                return method.invoke(connection, args);
+            } catch (InvocationTargetException e) {
+                throw e.getTargetException();
+            }
+        });
+    }
+
+}
@@ -0,0 +1,72 @@
+package cn.bugstack.trigger.config;
+
+import cn.bugstack.types.trace.TraceContextExecutor;
+import cn.bugstack.types.utils.SemaphoreBoundedExecutor;
+import cn.bugstack.types.utils.VirtualThreadUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 异步锁单执行器配置
+ * <p>
+ * 试算、锁单两个阶段使用独立的有界执行器，饱和时立即拒绝，由接口快速返回限流，
+ * 不占用 Tomcat 工作线程排队等待。锁单阶段同步等待事务消息发送，JDK 支持时使用虚拟线程 + 信号量限制并发，
+ * 发送期间不占用平台线程。两个执行器在任务执行时恢复请求线程的 traceId。
+ *
+ * @author liang.tian
+ */
+@Slf4j
+@Configuration
+@EnableConfigurationProperties(LockOrderAsyncProperties.class)
+public class LockOrderAsyncConfiguration {
+
+    @Bean(value = "lockOrderTrialExecutor", destroyMethod = "shutdown")
+    public ExecutorService lockOrderTrialExecutor(LockOrderAsyncProperties properties) {
+        log.info("异步锁单-试算执行器 poolSize={}, queueSize={}", properties.getTrialPoolSize(), properties.getTrialQueueSize());
+        return new TraceContextExecutor(newBoundedExecutor("lock-order-trial-", properties.getTrialPoolSize(), properties.getTrialQueueSize()), "lockOrderTrial");
+    }
+
+    @Bean(value = "lockOrderExecutor", destroyMethod = "shutdown")
+    public ExecutorService lockOrderExecutor(LockOrderAsyncProperties properties) {
+        if (properties.isLockVirtualThread()) {
+            if (VirtualThreadUtil.isSupported()) {
+                log.info("异步锁单-锁单执行器使用虚拟线程 maxConcurrency={}", properties.getLockMaxConcurrency());
+                return new TraceContextExecutor(new SemaphoreBoundedExecutor(
+                        VirtualThreadUtil.newVirtualThreadPerTaskExecutor("lock-order-lock-vt-"),
+                        properties.getLockMaxConcurrency(), 0), "lockOrderLock");
+            }
+            log.warn("异步锁单-锁单执行器已开启虚拟线程，但当前 JDK 不支持，回退到平台线程池 java.version:{}", System.getProperty("java.version"));
+        }
+        log.info("异步锁单-锁单执行器 poolSize={}, queueSize={}", properties.getLockPoolSize(), properties.getLockQueueSize());
+        return new TraceContextExecutor(newBoundedExecutor("lock-order-lock-", properties.getLockPoolSize(), properties.getLockQueueSize()), "lockOrderLock");
+    }
+
+    @Bean(value = "lockOrderTimeoutScheduler", destroyMethod = "shutdown")
+    public ScheduledExecutorService lockOrderTimeoutScheduler() {
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread thread = new Thread(r, "lock-order-timeout");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // 阶段正常完成时会取消超时任务，及时从队列移除
+        scheduler.setRemoveOnCancelPolicy(true);
+        return scheduler;
+    }
+
+    private ExecutorService newBoundedExecutor(String namePrefix, int poolSize, int queueSize) {
+        AtomicInteger counter = new AtomicInteger();
+        return new ThreadPoolExecutor(
+                poolSize,
+                poolSize,
+                60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueSize),
+                r -> new Thread(r, namePrefix + counter.incrementAndGet()),
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+}
@@ -0,0 +1,45 @@
+package cn.bugstack.trigger.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * 异步锁单配置属性
+ *
+ * @author liang.tian
+ */
+@Data
+@ConfigurationProperties(prefix = "trade.lock-order.async")
+public class LockOrderAsyncProperties {
+
+    /** 试算阶段线程数 */
+    private int trialPoolSize = 32;
+
+    /** 试算阶段队列长度，队列满立即拒绝（RATE_LIMITER） */
+    private int trialQueueSize = 256;
+
+    /** 锁单阶段是否使用虚拟线程（JDK 21+ 生效，低版本回退到平台线程池）；事务消息发送期间只挂起虚拟线程，不占用平台线程 */
+    private boolean lockVirtualThread = true;
+
+    /** 锁单阶段最大并发数，虚拟线程模式下替代线程数，许可不足立即拒绝（RATE_LIMITER） */
+    private int lockMaxConcurrency = 1024;
+
+    /** 锁单阶段线程数（事务消息发送 + 本地事务 + 订单回查），平台线程池模式使用 */
+    private int lockPoolSize = 64;
+
+    /** 锁单阶段队列长度，队列满立即拒绝（RATE_LIMITER），平台线程池模式使用 */
+    private int lockQueueSize = 512;
+
+    /** 试算阶段超时时间（毫秒） */
+    private long trialTimeout = 500;
+
+    /** 锁单阶段超时时间（毫秒） */
+    private long lockTimeout = 3000;
+
+    /** 整个请求超时时间（毫秒），兜底 Servlet 异步超时 */
+    private long requestTimeout = 5000;
+
+    /** 锁单阶段超时后查询令牌的有效期（毫秒），超过后仍查不到订单视为锁单失败 */
+    private long pendingQueryWindow = 60000;
+
+}
@@ -0,0 +1,24 @@
+package cn.bugstack.trigger.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 活动库存预热配置属性
+ *
+ * @author liang.tian
+ */
+@Data
+@ConfigurationProperties(prefix = "trade.stock-preheat")
+public class StockPreheatProperties {
+
+    /** 是否在启动时预热 */
+    private boolean startupEnabled = false;
+
+    /** 启动时预热的活动ID */
+    private List<Long> activityIds = new ArrayList<>();
+
+}
@@ -0,0 +1,52 @@
+package cn.bugstack.trigger.config;
+
+import cn.bugstack.domain.trade.model.entity.StockPreheatProgressEntity;
+import cn.bugstack.domain.trade.service.IStockPreheatService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+
+/**
+ * 启动预热：应用就绪前预热配置的活动
+ * <p>
+ * ApplicationRunner 在 ApplicationReadyEvent 之前同步执行，Spring Boot 在全部 Runner 执行完成后才将
+ * 就绪状态（/actuator/health/readiness）切换为 ACCEPTING_TRAFFIC，负载均衡在预热完成前不会转发流量。
+ * 单个活动预热失败只记录日志，不阻止启动，未加载的 Key 由下单链路按需初始化。
+ *
+ * @author liang.tian
+ */
+@Slf4j
+@Component
+@EnableConfigurationProperties(StockPreheatProperties.class)
+public class StockPreheatStartupRunner implements ApplicationRunner {
+
+    @Resource
+    private StockPreheatProperties properties;
+    @Resource
+    private IStockPreheatService stockPreheatService;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!properties.isStartupEnabled() || properties.getActivityIds().isEmpty()) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        log.info("启动预热开始: activityIds={}", properties.getActivityIds());
+        for (Long activityId : properties.getActivityIds()) {
+            try {
+                StockPreheatProgressEntity result = stockPreheatService.preheat(activityId);
+                if (!result.isReady()) {
+                    log.warn("启动预热未完成: activityId={}, status={}, message={}", activityId, result.getStatus(), result.getMessage());
+                }
+            } catch (Exception e) {
+                log.error("启动预热异常: activityId={}", activityId, e);
+            }
+        }
+        log.info("启动预热结束: activityIds={}, 耗时={}ms", properties.getActivityIds(), System.currentTimeMillis() - start);
+    }
+
+}
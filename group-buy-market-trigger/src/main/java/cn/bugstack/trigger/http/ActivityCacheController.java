@@ -0,0 +1,71 @@
+package cn.bugstack.trigger.http;
+
+import cn.bugstack.api.response.Response;
+import cn.bugstack.domain.activity.adapter.repository.IActivityRepository;
+import cn.bugstack.types.enums.ResponseCode;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.bind.annotation.*;
+
+import javax.annotation.Resource;
+
+/**
+ * 活动配置缓存管理
+ * 后台更新活动、折扣、商品、渠道商品关联配置后调用，删除 Redis 缓存并广播删除各节点近端缓存
+ *
+ * @author liang.tian
+ */
+@Slf4j
+@RestController
+@CrossOrigin("*")
+@RequestMapping("/api/v1/gbm/cache/")
+public class ActivityCacheController {
+
+    @Resource
+    private IActivityRepository activityRepository;
+
+    /**
+     * curl -X POST http://127.0.0.1:8091/api/v1/gbm/cache/evict_activity?activityId=100123
+     */
+    @PostMapping("evict_activity")
+    public Response<Boolean> evictActivity(@RequestParam Long activityId) {
+        try {
+            activityRepository.evictActivityCache(activityId);
+            log.info("活动配置缓存已删除: activityId={}", activityId);
+            return new Response<>(ResponseCode.SUCCESS.getCode(), ResponseCode.SUCCESS.getInfo(), Boolean.TRUE);
+        } catch (Exception e) {
+            log.error("活动配置缓存删除失败: activityId={}", activityId, e);
+            return new Response<>(ResponseCode.UN_ERROR.getCode(), ResponseCode.UN_ERROR.getInfo(), Boolean.FALSE);
+        }
+    }
+
+    /**
+     * curl -X POST http://127.0.0.1:8091/api/v1/gbm/cache/evict_sku?goodsId=9890001
+     */
+    @PostMapping("evict_sku")
+    public Response<Boolean> evictSku(@RequestParam String goodsId) {
+        try {
+            activityRepository.evictSkuCache(goodsId);
+            log.info("商品缓存已删除: goodsId={}", goodsId);
+            return new Response<>(ResponseCode.SUCCESS.getCode(), ResponseCode.SUCCESS.getInfo(), Boolean.TRUE);
+        } catch (Exception e) {
+            log.error("商品缓存删除失败: goodsId={}", goodsId, e);
+            return new Response<>(ResponseCode.UN_ERROR.getCode(), ResponseCode.UN_ERROR.getInfo(), Boolean.FALSE);
+        }
+    }
+
+    /**
+     * curl -X POST "http://127.0.0.1:8091/api/v1/gbm/cache/evict_sc_sku_activity?source=s01&channel=c01&goodsId=9890001"
+     */
+    @PostMapping("evict_sc_sku_activity")
+    public Response<Boolean> evictSCSkuActivity(@RequestParam String source, @RequestParam String channel, @RequestParam String goodsId) {
+        try {
+            activityRepository.evictSCSkuActivityCache(source, channel, goodsId);
+            log.info("渠道商品活动关联缓存已删除: source={}, channel={}, goodsId={}", source, channel, goodsId);
+            return new Response<>(ResponseCode.SUCCESS.getCode(), ResponseCode.SUCCESS.getInfo(), Boolean.TRUE);
+        } catch (Exception e) {
+            log.error("渠道商品活动关联缓存删除失败: source={}, channel={}, goodsId={}", source, channel, goodsId, e);
+            return new Response<>(ResponseCode.UN_ERROR.getCode(), ResponseCode.UN_ERROR.getInfo(), Boolean.FALSE);
+        }
+    }
+
+}
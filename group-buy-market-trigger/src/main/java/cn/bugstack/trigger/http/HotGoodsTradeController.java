@@ -11,6 +11,10 @@ import cn.bugstack.domain.activity.service.IIndexGroupBuyMarketService;
 import cn.bugstack.domain.trade.model.entity.*;
 import cn.bugstack.domain.trade.model.valobj.NotifyConfigVO;
 import cn.bugstack.domain.trade.model.valobj.NotifyTypeEnumVO;
+import cn.bugstack.infrastructure.log.HotPathLogger;
+import cn.bugstack.infrastructure.log.LazyLog;
+import cn.bugstack.infrastructure.redis.limiter.ClusterRateLimiter;
+import cn.bugstack.trigger.http.async.LockOrderAsyncTemplate;
 import cn.bugstack.types.enums.ResponseCode;
 import cn.bugstack.types.exception.AppException;
 import com.alibaba.fastjson.JSON;
@@ -20,6 +24,7 @@ import org.springframework.web.bind.annotation.*;
 
 import javax.annotation.Resource;
 import javax.validation.Valid;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * 热点商品交易控制器
@@ -40,9 +45,17 @@ import javax.validation.Valid;
 @RequestMapping("/api/v1/gbm/trade/hot-goods/")
 public class HotGoodsTradeController implements IHotGoodsTradeService {
 
+    private static final HotPathLogger hotLog = HotPathLogger.getLogger(HotGoodsTradeController.class);
+
     @Resource
     private IIndexGroupBuyMarketService indexGroupBuyMarketService;
     
+    @Resource
+    private LockOrderAsyncTemplate lockOrderAsyncTemplate;
+
+    @Resource
+    private ClusterRateLimiter clusterRateLimiter;
+
     @Resource
     private cn.bugstack.domain.trade.service.IHotGoodsTradeService hotGoodsTradeService;
 
@@ -56,95 +69,27 @@ public class HotGoodsTradeController implements IHotGoodsTradeService {
     @Override
     public Response<LockMarketPayOrderResponseDTO> lockHotGoodsOrder(@Valid @RequestBody LockMarketPayOrderRequestDTO requestDTO) {
         try {
-            // 参数校验
-            String userId = requestDTO.getUserId();
-            String source = requestDTO.getSource();
-            String channel = requestDTO.getChannel();
-            String goodsId = requestDTO.getGoodsId();
-            Long activityId = requestDTO.getActivityId();
-            String outTradeNo = requestDTO.getOutTradeNo();
-            LockMarketPayOrderRequestDTO.NotifyConfigVO notifyConfigVO = requestDTO.getNotifyConfigVO();
-
-            log.info("热点商品下单:{} LockMarketPayOrderRequestDTO:{}", userId, JSON.toJSONString(requestDTO));
+            hotLog.info("热点商品下单:{} LockMarketPayOrderRequestDTO:{}", requestDTO.getUserId(), LazyLog.json(requestDTO));
 
             // 参数校验
-            if (StringUtils.isBlank(userId) || StringUtils.isBlank(source) || StringUtils.isBlank(channel) 
-                    || StringUtils.isBlank(goodsId) || null == activityId 
-                    || ("HTTP".equals(notifyConfigVO.getNotifyType()) && StringUtils.isBlank(notifyConfigVO.getNotifyUrl()))) {
-                return Response.<LockMarketPayOrderResponseDTO>builder()
-                        .code(ResponseCode.ILLEGAL_PARAMETER.getCode())
-                        .info(ResponseCode.ILLEGAL_PARAMETER.getInfo())
-                        .build();
+            Response<LockMarketPayOrderResponseDTO> illegalResponse = checkParams(requestDTO);
+            if (null != illegalResponse) {
+                return illegalResponse;
             }
 
-            // 营销优惠试算
-            TrialBalanceEntity trialBalanceEntity = indexGroupBuyMarketService.indexMarketTrial(MarketProductEntity.builder()
-                    .userId(userId)
-                    .source(source)
-                    .channel(channel)
-                    .goodsId(goodsId)
-                    .activityId(activityId)
-                    .build());
-
-            // 人群限定
-            if (!trialBalanceEntity.getIsVisible() || !trialBalanceEntity.getIsEnable()) {
+            // 集群限流，在试算、库存占用之前拒绝
+            if (!admit(requestDTO)) {
                 return Response.<LockMarketPayOrderResponseDTO>builder()
-                        .code(ResponseCode.E0007.getCode())
-                        .info(ResponseCode.E0007.getInfo())
+                        .code(ResponseCode.RATE_LIMITER.getCode())
+                        .info(ResponseCode.RATE_LIMITER.getInfo())
                         .build();
             }
 
-            GroupBuyActivityDiscountVO groupBuyActivityDiscountVO = trialBalanceEntity.getGroupBuyActivityDiscountVO();
-
-            // 构建实体对象
-            UserEntity userEntity = UserEntity.builder().userId(userId).build();
-            // 热点商品不做拼团，teamId 设置为 null（会在 lockHotGoodsOrder 方法中生成虚拟 teamId）
-            PayActivityEntity payActivityEntity = PayActivityEntity.builder()
-                    .teamId(null)  // 热点商品不做拼团
-                    .activityId(activityId)
-                    .activityName(groupBuyActivityDiscountVO.getActivityName())
-                    .startTime(groupBuyActivityDiscountVO.getStartTime())
-                    .endTime(groupBuyActivityDiscountVO.getEndTime())
-                    .validTime(groupBuyActivityDiscountVO.getValidTime())
-                    .targetCount(groupBuyActivityDiscountVO.getTarget())
-                    .build();
-            PayDiscountEntity payDiscountEntity = PayDiscountEntity.builder()
-                    .source(source)
-                    .channel(channel)
-                    .goodsId(goodsId)
-                    .goodsName(trialBalanceEntity.getGoodsName())
-                    .originalPrice(trialBalanceEntity.getOriginalPrice())
-                    .deductionPrice(trialBalanceEntity.getDeductionPrice())
-                    .payPrice(trialBalanceEntity.getPayPrice())
-                    .outTradeNo(outTradeNo)
-                    .notifyConfigVO(
-                            // 构建回调通知对象
-                            NotifyConfigVO.builder()
-                                    .notifyType(NotifyTypeEnumVO.valueOf(notifyConfigVO.getNotifyType()))
-                                    .notifyMQ(notifyConfigVO.getNotifyMQ())
-                                    .notifyUrl(notifyConfigVO.getNotifyUrl())
-                                    .build())
-                    .build();
-
-            // 调用热点商品下单服务
-            log.info("热点商品下单: userId={}, activityId={}, goodsId={}", userId, activityId, goodsId);
-            MarketPayOrderEntity marketPayOrderEntity = hotGoodsTradeService.lockHotGoodsOrder(userEntity, payActivityEntity, payDiscountEntity);
-
-            log.info("热点商品下单成功:{} marketPayOrderEntity:{}", userId, JSON.toJSONString(marketPayOrderEntity));
+            // 营销优惠试算
+            TrialBalanceEntity trialBalanceEntity = trial(requestDTO);
 
-            // 返回结果
-            return Response.<LockMarketPayOrderResponseDTO>builder()
-                    .code(ResponseCode.SUCCESS.getCode())
-                    .info(ResponseCode.SUCCESS.getInfo())
-                    .data(LockMarketPayOrderResponseDTO.builder()
-                            .orderId(marketPayOrderEntity.getOrderId())
-                            .originalPrice(marketPayOrderEntity.getOriginalPrice())
-                            .deductionPrice(marketPayOrderEntity.getDeductionPrice())
-                            .payPrice(marketPayOrderEntity.getPayPrice())
-                            .tradeOrderStatus(marketPayOrderEntity.getTradeOrderStatusEnumVO().getCode())
-                            .teamId(marketPayOrderEntity.getTeamId())
-                            .build())
-                    .build();
+            // 锁单
+            return lock(requestDTO, trialBalanceEntity);
         } catch (AppException e) {
             log.error("热点商品下单业务异常:{} LockMarketPayOrderRequestDTO:{}", requestDTO.getUserId(), JSON.toJSONString(requestDTO), e);
             return Response.<LockMarketPayOrderResponseDTO>builder()
@@ -159,5 +104,165 @@ public class HotGoodsTradeController implements IHotGoodsTradeService {
                     .build();
         }
     }
+
+    /**
+     * 热点商品下单（锁单）- 异步
+     * <p>
+     * 试算、锁单分阶段在独立有界执行器中执行，Tomcat 工作线程提交后立即释放；
+     * 执行器饱和与集群限流一致返回 {@link ResponseCode#RATE_LIMITER}，试算超时返回 {@link ResponseCode#TIMEOUT}，
+     * 锁单阶段超时返回 {@link ResponseCode#PENDING} 与查询令牌，凭令牌调用 query_lock_order 查询订单结果。
+     *
+     * @param requestDTO 锁单商品信息
+     * @return 锁单结果信息
+     */
+    @RequestMapping(value = "lock_order_async", method = RequestMethod.POST)
+    @Override
+    public CompletableFuture<Response<LockMarketPayOrderResponseDTO>> lockHotGoodsOrderAsync(@Valid @RequestBody LockMarketPayOrderRequestDTO requestDTO) {
+        hotLog.info("热点商品异步下单:{} LockMarketPayOrderRequestDTO:{}", requestDTO.getUserId(), LazyLog.json(requestDTO));
+
+        // 参数校验
+        Response<LockMarketPayOrderResponseDTO> illegalResponse = checkParams(requestDTO);
+        if (null != illegalResponse) {
+            return lockOrderAsyncTemplate.completed(illegalResponse);
+        }
+
+        // 集群限流，在提交执行器之前拒绝
+        if (!admit(requestDTO)) {
+            return lockOrderAsyncTemplate.reject();
+        }
+
+        CompletableFuture<Response<LockMarketPayOrderResponseDTO>> future = lockOrderAsyncTemplate
+                .trial(() -> trial(requestDTO))
+                .thenCompose(trialBalanceEntity -> lockOrderAsyncTemplate.lock(() -> lock(requestDTO, trialBalanceEntity)));
+        return lockOrderAsyncTemplate.complete("热点商品异步下单", requestDTO.getUserId(), requestDTO.getOutTradeNo(), future);
+    }
+
+    /**
+     * 查询异步锁单结果
+     *
+     * @param queryToken 锁单返回 PENDING 时下发的查询令牌
+     * @return 订单信息；仍在处理中返回 {@link ResponseCode#PENDING}
+     */
+    @RequestMapping(value = "query_lock_order", method = RequestMethod.GET)
+    @Override
+    public Response<LockMarketPayOrderResponseDTO> queryHotGoodsLockOrder(@RequestParam String queryToken) {
+        try {
+            return lockOrderAsyncTemplate.query(queryToken);
+        } catch (Exception e) {
+            log.error("热点商品查询锁单结果失败 queryToken:{}", queryToken, e);
+            return Response.<LockMarketPayOrderResponseDTO>builder()
+                    .code(ResponseCode.UN_ERROR.getCode())
+                    .info(ResponseCode.UN_ERROR.getInfo())
+                    .build();
+        }
+    }
+
+    private boolean admit(LockMarketPayOrderRequestDTO requestDTO) {
+        if (clusterRateLimiter.tryAcquire(ClusterRateLimiter.SCENE_LOCK, requestDTO.getActivityId(), requestDTO.getUserId())) {
+            return true;
+        }
+        hotLog.info("热点商品下单限流:{} activityId:{}", requestDTO.getUserId(), requestDTO.getActivityId());
+        return false;
+    }
+
+    private Response<LockMarketPayOrderResponseDTO> checkParams(LockMarketPayOrderRequestDTO requestDTO) {
+        String userId = requestDTO.getUserId();
+        String source = requestDTO.getSource();
+        String channel = requestDTO.getChannel();
+        String goodsId = requestDTO.getGoodsId();
+        Long activityId = requestDTO.getActivityId();
+        LockMarketPayOrderRequestDTO.NotifyConfigVO notifyConfigVO = requestDTO.getNotifyConfigVO();
+
+        if (StringUtils.isBlank(userId) || StringUtils.isBlank(source) || StringUtils.isBlank(channel) 
+                || StringUtils.isBlank(goodsId) || null == activityId 
+                || ("HTTP".equals(notifyConfigVO.getNotifyType()) && StringUtils.isBlank(notifyConfigVO.getNotifyUrl()))) {
+            return Response.<LockMarketPayOrderResponseDTO>builder()
+                    .code(ResponseCode.ILLEGAL_PARAMETER.getCode())
+                    .info(ResponseCode.ILLEGAL_PARAMETER.getInfo())
+                    .build();
+        }
+        return null;
+    }
+
+    private TrialBalanceEntity trial(LockMarketPayOrderRequestDTO requestDTO) throws Exception {
+        return indexGroupBuyMarketService.indexMarketTrial(MarketProductEntity.builder()
+                .userId(requestDTO.getUserId())
+                .source(requestDTO.getSource())
+                .channel(requestDTO.getChannel())
+                .goodsId(requestDTO.getGoodsId())
+                .activityId(requestDTO.getActivityId())
+                .build());
+    }
+
+    private Response<LockMarketPayOrderResponseDTO> lock(LockMarketPayOrderRequestDTO requestDTO, TrialBalanceEntity trialBalanceEntity) throws Exception {
+        String userId = requestDTO.getUserId();
+        String source = requestDTO.getSource();
+        String channel = requestDTO.getChannel();
+        String goodsId = requestDTO.getGoodsId();
+        Long activityId = requestDTO.getActivityId();
+        String outTradeNo = requestDTO.getOutTradeNo();
+        LockMarketPayOrderRequestDTO.NotifyConfigVO notifyConfigVO = requestDTO.getNotifyConfigVO();
+
+        // 人群限定
+        if (!trialBalanceEntity.getIsVisible() || !trialBalanceEntity.getIsEnable()) {
+            return Response.<LockMarketPayOrderResponseDTO>builder()
+                    .code(ResponseCode.E0007.getCode())
+                    .info(ResponseCode.E0007.getInfo())
+                    .build();
+        }
+
+        GroupBuyActivityDiscountVO groupBuyActivityDiscountVO = trialBalanceEntity.getGroupBuyActivityDiscountVO();
+
+        // 构建实体对象
+        UserEntity userEntity = UserEntity.builder().userId(userId).build();
+        // 热点商品不做拼团，teamId 设置为 null（会在 lockHotGoodsOrder 方法中生成虚拟 teamId）
+        PayActivityEntity payActivityEntity = PayActivityEntity.builder()
+                .teamId(null)  // 热点商品不做拼团
+                .activityId(activityId)
+                .activityName(groupBuyActivityDiscountVO.getActivityName())
+                .startTime(groupBuyActivityDiscountVO.getStartTime())
+                .endTime(groupBuyActivityDiscountVO.getEndTime())
+                .validTime(groupBuyActivityDiscountVO.getValidTime())
+                .targetCount(groupBuyActivityDiscountVO.getTarget())
+                .takeLimitCount(groupBuyActivityDiscountVO.getTakeLimitCount())
+                .build();
+        PayDiscountEntity payDiscountEntity = PayDiscountEntity.builder()
+                .source(source)
+                .channel(channel)
+                .goodsId(goodsId)
+                .goodsName(trialBalanceEntity.getGoodsName())
+                .originalPrice(trialBalanceEntity.getOriginalPrice())
+                .deductionPrice(trialBalanceEntity.getDeductionPrice())
+                .payPrice(trialBalanceEntity.getPayPrice())
+                .outTradeNo(outTradeNo)
+                .notifyConfigVO(
+                        // 构建回调通知对象
+                        NotifyConfigVO.builder()
+                                .notifyType(NotifyTypeEnumVO.valueOf(notifyConfigVO.getNotifyType()))
+                                .notifyMQ(notifyConfigVO.getNotifyMQ())
+                                .notifyUrl(notifyConfigVO.getNotifyUrl())
+                                .build())
+                .build();
+
+        // 调用热点商品下单服务
+        hotLog.info("热点商品下单: userId={}, activityId={}, goodsId={}", userId, activityId, goodsId);
+        MarketPayOrderEntity marketPayOrderEntity = hotGoodsTradeService.lockHotGoodsOrder(userEntity, payActivityEntity, payDiscountEntity);
+
+        hotLog.info("热点商品下单成功:{} marketPayOrderEntity:{}", userId, LazyLog.json(marketPayOrderEntity));
+
+        // 返回结果
+        return Response.<LockMarketPayOrderResponseDTO>builder()
+                .code(ResponseCode.SUCCESS.getCode())
+                .info(ResponseCode.SUCCESS.getInfo())
+                .data(LockMarketPayOrderResponseDTO.builder()
+                        .orderId(marketPayOrderEntity.getOrderId())
+                        .originalPrice(marketPayOrderEntity.getOriginalPrice())
+                        .deductionPrice(marketPayOrderEntity.getDeductionPrice())
+                        .payPrice(marketPayOrderEntity.getPayPrice())
+                        .tradeOrderStatus(marketPayOrderEntity.getTradeOrderStatusEnumVO().getCode())
+                        .teamId(marketPayOrderEntity.getTeamId())
+                        .build())
+                .build();
+    }
 }
 
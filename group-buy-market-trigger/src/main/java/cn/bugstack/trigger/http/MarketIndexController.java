@@ -11,11 +11,13 @@ import cn.bugstack.domain.activity.model.entity.UserGroupBuyOrderDetailEntity;
 import cn.bugstack.domain.activity.model.valobj.GroupBuyActivityDiscountVO;
 import cn.bugstack.domain.activity.model.valobj.TeamStatisticVO;
 import cn.bugstack.domain.activity.service.IIndexGroupBuyMarketService;
+import cn.bugstack.infrastructure.log.HotPathLogger;
+import cn.bugstack.infrastructure.log.LazyLog;
+import cn.bugstack.infrastructure.redis.limiter.ClusterRateLimiter;
+import cn.bugstack.infrastructure.redis.waitingroom.WaitingRoom;
 import cn.bugstack.types.enums.ResponseCode;
 import cn.bugstack.types.enums.TokenSceneEnum;
 import cn.bugstack.types.utils.TokenUtil;
-import cn.bugstack.wrench.rate.limiter.types.annotations.RateLimiterAccessInterceptor;
-import com.alibaba.fastjson.JSON;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.redisson.api.RedissonClient;
@@ -37,17 +39,27 @@ import java.util.concurrent.TimeUnit;
 @RequestMapping("/api/v1/gbm/index/")
 public class MarketIndexController implements IMarketIndexService {
 
+    private static final HotPathLogger hotLog = HotPathLogger.getLogger(MarketIndexController.class);
+
     @Resource
     private IIndexGroupBuyMarketService indexGroupBuyMarketService;
     @Resource
     private RedissonClient redissonClient;
+    @Resource
+    private ClusterRateLimiter clusterRateLimiter;
+    @Resource
+    private WaitingRoom waitingRoom;
 
-    @RateLimiterAccessInterceptor(key = "userId", fallbackMethod = "queryGroupBuyMarketConfigFallBack", permitsPerSecond = 1.0d, blacklistCount = 1)
     @RequestMapping(value = "query_group_buy_market_config", method = RequestMethod.POST)
     @Override
     public Response<GoodsMarketResponseDTO> queryGroupBuyMarketConfig(@RequestBody GoodsMarketRequestDTO requestDTO) {
+        // 集群限流（全局 + 用户），活动需试算后才能确定，此处不按活动限流
+        if (!clusterRateLimiter.tryAcquire(ClusterRateLimiter.SCENE_INDEX, null, requestDTO.getUserId())) {
+            return queryGroupBuyMarketConfigFallBack(requestDTO);
+        }
+
         try {
-            log.info("查询拼团营销配置开始:{} goodsId:{}", requestDTO.getUserId(), requestDTO.getGoodsId());
+            hotLog.info("查询拼团营销配置开始:{} goodsId:{}", requestDTO.getUserId(), requestDTO.getGoodsId());
 
             if (StringUtils.isBlank(requestDTO.getUserId()) || StringUtils.isBlank(requestDTO.getSource()) || StringUtils.isBlank(requestDTO.getChannel()) || StringUtils.isBlank(requestDTO.getGoodsId())) {
                 return Response.<GoodsMarketResponseDTO>builder()
@@ -117,7 +129,7 @@ public class MarketIndexController implements IMarketIndexService {
                             .build())
                     .build();
 
-            log.info("查询拼团营销配置完成:{} goodsId:{} response:{}", requestDTO.getUserId(), requestDTO.getGoodsId(), JSON.toJSONString(response));
+            hotLog.info("查询拼团营销配置完成:{} goodsId:{} response:{}", requestDTO.getUserId(), requestDTO.getGoodsId(), LazyLog.json(response));
 
             return response;
         } catch (Exception e) {
@@ -130,7 +142,7 @@ public class MarketIndexController implements IMarketIndexService {
     }
 
     public Response<GoodsMarketResponseDTO> queryGroupBuyMarketConfigFallBack(@RequestBody GoodsMarketRequestDTO requestDTO) {
-        log.error("查询拼团营销配置限流:{}", requestDTO.getUserId());
+        hotLog.info("查询拼团营销配置限流:{}", requestDTO.getUserId());
         return Response.<GoodsMarketResponseDTO>builder()
                 .code(ResponseCode.RATE_LIMITER.getCode())
                 .info(ResponseCode.RATE_LIMITER.getInfo())
@@ -146,7 +158,7 @@ public class MarketIndexController implements IMarketIndexService {
     @Override
     public Response<String> getToken(TokenRequestDTO tokenRequestDTO) {
         try {
-            log.info("获取Token开始: scene:{} userId:{} activityId:{}", tokenRequestDTO.getScene(), tokenRequestDTO.getUserId(), tokenRequestDTO.getActivityId());
+            hotLog.info("获取Token开始: scene:{} userId:{} activityId:{}", tokenRequestDTO.getScene(), tokenRequestDTO.getUserId(), tokenRequestDTO.getActivityId());
 
             // 1. 校验场景类型
             TokenSceneEnum tokenScene = TokenSceneEnum.getByScene(tokenRequestDTO.getScene());
@@ -167,19 +179,33 @@ public class MarketIndexController implements IMarketIndexService {
                         .build();
             }
 
-            // 3. 校验活动是否存在（防止攻击者传入随机的activityId）
-            // 这里可以查询数据库验证activityId是否合法
-            // 为了性能考虑，这里简化处理，实际项目中应该增加校验
+            // 3. 校验活动是否生效（防止攻击者传入随机的activityId），活动信息走本地缓存 + Redis 缓存
+            if (!indexGroupBuyMarketService.isActivityEffective(tokenRequestDTO.getActivityId())) {
+                log.warn("获取Token活动未生效: userId:{} activityId:{}", tokenRequestDTO.getUserId(), tokenRequestDTO.getActivityId());
+                return Response.<String>builder()
+                        .code(ResponseCode.E0101.getCode())
+                        .info(ResponseCode.E0101.getInfo())
+                        .build();
+            }
+
+            // 4. 开启排队的活动，只给已放行的用户发放Token（核销排队号）
+            if (!waitingRoom.consume(tokenRequestDTO.getActivityId(), tokenRequestDTO.getUserId())) {
+                hotLog.info("获取Token排队中: userId:{} activityId:{}", tokenRequestDTO.getUserId(), tokenRequestDTO.getActivityId());
+                return Response.<String>builder()
+                        .code(ResponseCode.WAITING.getCode())
+                        .info(ResponseCode.WAITING.getInfo())
+                        .build();
+            }
 
-            // 4. 生成Token
+            // 5. 生成Token
             // tokenKey格式: token:lock_order:activityId:userId
             String tokenKey = "token:" + tokenScene.getScene() + ":" + tokenRequestDTO.getActivityId() + ":" + tokenRequestDTO.getUserId();
             String tokenValue = TokenUtil.getTokenValueByKey(tokenKey);
 
-            // 5. 存储到Redis，30分钟过期
+            // 6. 存储到Redis，30分钟过期
             redissonClient.getBucket(tokenKey).set(tokenValue, 30, TimeUnit.MINUTES);
 
-            log.info("获取Token成功: userId:{} activityId:{} token:{}", tokenRequestDTO.getUserId(), tokenRequestDTO.getActivityId(), tokenValue);
+            hotLog.info("获取Token成功: userId:{} activityId:{} token:{}", tokenRequestDTO.getUserId(), tokenRequestDTO.getActivityId(), tokenValue);
 
             return Response.<String>builder()
                     .code(ResponseCode.SUCCESS.getCode())
@@ -16,6 +16,8 @@ import cn.bugstack.domain.trade.service.ITradeSettlementOrderService;
 import cn.bugstack.domain.trade.service.detector.IHotKeyDetector;
 import cn.bugstack.domain.trade.service.IHotGoodsTradeService;
 import cn.bugstack.domain.trade.service.INormalGoodsTradeService;
+import cn.bugstack.infrastructure.log.HotPathLogger;
+import cn.bugstack.infrastructure.log.LazyLog;
 import cn.bugstack.types.enums.ResponseCode;
 import cn.bugstack.types.exception.AppException;
 import com.alibaba.fastjson.JSON;
@@ -35,6 +37,8 @@ import javax.validation.Valid;
 @RequestMapping("/api/v1/gbm/trade/")
 public class MarketTradeController implements IMarketTradeService {
 
+    private static final HotPathLogger hotLog = HotPathLogger.getLogger(MarketTradeController.class);
+
     @Resource
     private IIndexGroupBuyMarketService indexGroupBuyMarketService;
     @Resource
@@ -80,7 +84,7 @@ public class MarketTradeController implements IMarketTradeService {
             String teamId = requestDTO.getTeamId();
             LockMarketPayOrderRequestDTO.NotifyConfigVO notifyConfigVO = requestDTO.getNotifyConfigVO();
 
-            log.info("营销交易锁单:{} LockMarketPayOrderRequestDTO:{}", userId, JSON.toJSONString(requestDTO));
+            hotLog.info("营销交易锁单:{} LockMarketPayOrderRequestDTO:{}", userId, LazyLog.json(requestDTO));
 
             if (StringUtils.isBlank(userId) || StringUtils.isBlank(source) || StringUtils.isBlank(channel) || StringUtils.isBlank(goodsId) || null == activityId || ("HTTP".equals(notifyConfigVO.getNotifyType()) && StringUtils.isBlank(notifyConfigVO.getNotifyUrl()))) {
                 return Response.<LockMarketPayOrderResponseDTO>builder()
@@ -134,6 +138,7 @@ public class MarketTradeController implements IMarketTradeService {
                     .endTime(groupBuyActivityDiscountVO.getEndTime())
                     .validTime(groupBuyActivityDiscountVO.getValidTime())
                     .targetCount(groupBuyActivityDiscountVO.getTarget())
+                    .takeLimitCount(groupBuyActivityDiscountVO.getTakeLimitCount())
                     .build();
             PayDiscountEntity payDiscountEntity = PayDiscountEntity.builder()
                     .source(source)
@@ -157,15 +162,15 @@ public class MarketTradeController implements IMarketTradeService {
             MarketPayOrderEntity marketPayOrderEntity = null;
             if (isHotGoods) {
                 // 热点商品：走热点商品下单服务（不做拼团）
-                log.info("热点商品下单: userId={}, activityId={}, goodsId={}", userId, activityId, goodsId);
+                hotLog.info("热点商品下单: userId={}, activityId={}, goodsId={}", userId, activityId, goodsId);
                 marketPayOrderEntity = hotGoodsTradeService.lockHotGoodsOrder(userEntity, payActivityEntity, payDiscountEntity);
             } else {
                 // 普通商品：走普通商品下单服务（保留拼团）
-                log.info("普通商品下单: userId={}, activityId={}, goodsId={}, teamId={}", userId, activityId, goodsId, teamId);
+                hotLog.info("普通商品下单: userId={}, activityId={}, goodsId={}, teamId={}", userId, activityId, goodsId, teamId);
                 marketPayOrderEntity = normalGoodsTradeService.lockNormalGoodsOrder(userEntity, payActivityEntity, payDiscountEntity);
             }
 
-            log.info("交易锁单记录(新):{} marketPayOrderEntity:{}", userId, JSON.toJSONString(marketPayOrderEntity));
+            hotLog.info("交易锁单记录(新):{} marketPayOrderEntity:{}", userId, LazyLog.json(marketPayOrderEntity));
 
             // 返回结果
             return Response.<LockMarketPayOrderResponseDTO>builder()
@@ -199,7 +204,7 @@ public class MarketTradeController implements IMarketTradeService {
     @Override
     public Response<SettlementMarketPayOrderResponseDTO> settlementMarketPayOrder(@RequestBody SettlementMarketPayOrderRequestDTO requestDTO) {
         try {
-            log.info("营销交易组队结算开始:{} outTradeNo:{}", requestDTO.getUserId(), requestDTO.getOutTradeNo());
+            hotLog.info("营销交易组队结算开始:{} outTradeNo:{}", requestDTO.getUserId(), requestDTO.getOutTradeNo());
 
             if (StringUtils.isBlank(requestDTO.getUserId()) || StringUtils.isBlank(requestDTO.getSource()) || StringUtils.isBlank(requestDTO.getChannel()) || StringUtils.isBlank(requestDTO.getOutTradeNo()) || null == requestDTO.getOutTradeTime()) {
                 return Response.<SettlementMarketPayOrderResponseDTO>builder()
@@ -231,7 +236,7 @@ public class MarketTradeController implements IMarketTradeService {
                     .data(responseDTO)
                     .build();
 
-            log.info("营销交易组队结算完成:{} outTradeNo:{} response:{}", requestDTO.getUserId(), requestDTO.getOutTradeNo(), JSON.toJSONString(response));
+            hotLog.info("营销交易组队结算完成:{} outTradeNo:{} response:{}", requestDTO.getUserId(), requestDTO.getOutTradeNo(), LazyLog.json(response));
 
             return response;
         } catch (AppException e) {
@@ -253,7 +258,7 @@ public class MarketTradeController implements IMarketTradeService {
     @Override
     public Response<RefundMarketPayOrderResponseDTO> refundMarketPayOrder(@RequestBody RefundMarketPayOrderRequestDTO requestDTO) {
         try {
-            log.info("营销拼团退单开始:{} outTradeNo:{}", requestDTO.getUserId(), requestDTO.getOutTradeNo());
+            hotLog.info("营销拼团退单开始:{} outTradeNo:{}", requestDTO.getUserId(), requestDTO.getOutTradeNo());
 
             if (StringUtils.isBlank(requestDTO.getUserId()) || StringUtils.isBlank(requestDTO.getOutTradeNo()) || StringUtils.isBlank(requestDTO.getSource()) || StringUtils.isBlank(requestDTO.getChannel())) {
                 return Response.<RefundMarketPayOrderResponseDTO>builder()
@@ -285,7 +290,7 @@ public class MarketTradeController implements IMarketTradeService {
                     .data(responseDTO)
                     .build();
 
-            log.info("营销拼团退单完成:{} outTradeNo:{} response:{}", requestDTO.getUserId(), requestDTO.getOutTradeNo(), JSON.toJSONString(response));
+            hotLog.info("营销拼团退单完成:{} outTradeNo:{} response:{}", requestDTO.getUserId(), requestDTO.getOutTradeNo(), LazyLog.json(response));
 
             return response;
         } catch (AppException e) {
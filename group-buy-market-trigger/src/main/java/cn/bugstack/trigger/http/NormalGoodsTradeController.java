@@ -1,6 +1,8 @@
 package cn.bugstack.trigger.http;
 
 import cn.bugstack.api.INormalGoodsTradeService;
+import cn.bugstack.api.dto.CartLockOrderRequestDTO;
+import cn.bugstack.api.dto.CartLockOrderResponseDTO;
 import cn.bugstack.api.dto.LockMarketPayOrderRequestDTO;
 import cn.bugstack.api.dto.LockMarketPayOrderResponseDTO;
 import cn.bugstack.api.response.Response;
@@ -11,6 +13,10 @@ import cn.bugstack.domain.activity.service.IIndexGroupBuyMarketService;
 import cn.bugstack.domain.trade.model.entity.*;
 import cn.bugstack.domain.trade.model.valobj.NotifyConfigVO;
 import cn.bugstack.domain.trade.model.valobj.NotifyTypeEnumVO;
+import cn.bugstack.infrastructure.log.HotPathLogger;
+import cn.bugstack.infrastructure.log.LazyLog;
+import cn.bugstack.infrastructure.redis.limiter.ClusterRateLimiter;
+import cn.bugstack.trigger.http.async.LockOrderAsyncTemplate;
 import cn.bugstack.types.enums.ResponseCode;
 import cn.bugstack.types.exception.AppException;
 import com.alibaba.fastjson.JSON;
@@ -20,6 +26,16 @@ import org.springframework.web.bind.annotation.*;
 
 import javax.annotation.Resource;
 import javax.validation.Valid;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
 
 /**
  * 普通商品交易控制器
@@ -40,9 +56,20 @@ import javax.validation.Valid;
 @RequestMapping("/api/v1/gbm/trade/normal-goods/")
 public class NormalGoodsTradeController implements INormalGoodsTradeService {
 
+    private static final HotPathLogger hotLog = HotPathLogger.getLogger(NormalGoodsTradeController.class);
+
+    // 购物车单次最多商品数
+    private static final int MAX_CART_SIZE = 20;
+
     @Resource
     private IIndexGroupBuyMarketService indexGroupBuyMarketService;
     
+    @Resource
+    private LockOrderAsyncTemplate lockOrderAsyncTemplate;
+
+    @Resource
+    private ClusterRateLimiter clusterRateLimiter;
+
     @Resource
     private cn.bugstack.domain.trade.service.INormalGoodsTradeService normalGoodsTradeService;
 
@@ -56,110 +83,375 @@ public class NormalGoodsTradeController implements INormalGoodsTradeService {
     @Override
     public Response<LockMarketPayOrderResponseDTO> lockNormalGoodsOrder(@Valid @RequestBody LockMarketPayOrderRequestDTO requestDTO) {
         try {
-            // 参数校验
-            String userId = requestDTO.getUserId();
-            String source = requestDTO.getSource();
-            String channel = requestDTO.getChannel();
-            String goodsId = requestDTO.getGoodsId();
-            Long activityId = requestDTO.getActivityId();
-            String outTradeNo = requestDTO.getOutTradeNo();
-            String teamId = requestDTO.getTeamId();  // 普通商品支持拼团，teamId 可为空
-            LockMarketPayOrderRequestDTO.NotifyConfigVO notifyConfigVO = requestDTO.getNotifyConfigVO();
-
-            log.info("普通商品下单:{} LockMarketPayOrderRequestDTO:{}", userId, JSON.toJSONString(requestDTO));
+            hotLog.info("普通商品下单:{} LockMarketPayOrderRequestDTO:{}", requestDTO.getUserId(), LazyLog.json(requestDTO));
 
             // 参数校验
-            if (StringUtils.isBlank(userId) || StringUtils.isBlank(source) || StringUtils.isBlank(channel) 
-                    || StringUtils.isBlank(goodsId) || null == activityId 
-                    || ("HTTP".equals(notifyConfigVO.getNotifyType()) && StringUtils.isBlank(notifyConfigVO.getNotifyUrl()))) {
-                return Response.<LockMarketPayOrderResponseDTO>builder()
-                        .code(ResponseCode.ILLEGAL_PARAMETER.getCode())
-                        .info(ResponseCode.ILLEGAL_PARAMETER.getInfo())
-                        .build();
+            Response<LockMarketPayOrderResponseDTO> illegalResponse = checkParams(requestDTO);
+            if (null != illegalResponse) {
+                return illegalResponse;
             }
 
-            // 营销优惠试算
-            TrialBalanceEntity trialBalanceEntity = indexGroupBuyMarketService.indexMarketTrial(MarketProductEntity.builder()
-                    .userId(userId)
-                    .source(source)
-                    .channel(channel)
-                    .goodsId(goodsId)
-                    .activityId(activityId)
-                    .build());
-
-            // 人群限定
-            if (!trialBalanceEntity.getIsVisible() || !trialBalanceEntity.getIsEnable()) {
+            // 集群限流，在试算、库存占用之前拒绝
+            if (!admit(requestDTO)) {
                 return Response.<LockMarketPayOrderResponseDTO>builder()
-                        .code(ResponseCode.E0007.getCode())
-                        .info(ResponseCode.E0007.getInfo())
+                        .code(ResponseCode.RATE_LIMITER.getCode())
+                        .info(ResponseCode.RATE_LIMITER.getInfo())
                         .build();
             }
 
-            GroupBuyActivityDiscountVO groupBuyActivityDiscountVO = trialBalanceEntity.getGroupBuyActivityDiscountVO();
-
-            // 构建实体对象
-            UserEntity userEntity = UserEntity.builder().userId(userId).build();
-            // 普通商品支持拼团，teamId 可为空（为空则创建新组队）
-            String finalTeamId = StringUtils.isBlank(teamId) ? null : teamId;
-            PayActivityEntity payActivityEntity = PayActivityEntity.builder()
-                    .teamId(finalTeamId)
-                    .activityId(activityId)
-                    .activityName(groupBuyActivityDiscountVO.getActivityName())
-                    .startTime(groupBuyActivityDiscountVO.getStartTime())
-                    .endTime(groupBuyActivityDiscountVO.getEndTime())
-                    .validTime(groupBuyActivityDiscountVO.getValidTime())
-                    .targetCount(groupBuyActivityDiscountVO.getTarget())
+            // 营销优惠试算
+            TrialBalanceEntity trialBalanceEntity = trial(requestDTO);
+
+            // 锁单
+            return lock(requestDTO, trialBalanceEntity);
+        } catch (AppException e) {
+            log.error("普通商品下单业务异常:{} LockMarketPayOrderRequestDTO:{}", requestDTO.getUserId(), JSON.toJSONString(requestDTO), e);
+            return Response.<LockMarketPayOrderResponseDTO>builder()
+                    .code(e.getCode())
+                    .info(e.getInfo())
                     .build();
-            PayDiscountEntity payDiscountEntity = PayDiscountEntity.builder()
-                    .source(source)
-                    .channel(channel)
-                    .goodsId(goodsId)
-                    .goodsName(trialBalanceEntity.getGoodsName())
-                    .originalPrice(trialBalanceEntity.getOriginalPrice())
-                    .deductionPrice(trialBalanceEntity.getDeductionPrice())
-                    .payPrice(trialBalanceEntity.getPayPrice())
-                    .outTradeNo(outTradeNo)
-                    .notifyConfigVO(
-                            // 构建回调通知对象
-                            NotifyConfigVO.builder()
-                                    .notifyType(NotifyTypeEnumVO.valueOf(notifyConfigVO.getNotifyType()))
-                                    .notifyMQ(notifyConfigVO.getNotifyMQ())
-                                    .notifyUrl(notifyConfigVO.getNotifyUrl())
-                                    .build())
+        } catch (Exception e) {
+            log.error("普通商品下单服务失败:{} LockMarketPayOrderRequestDTO:{}", requestDTO.getUserId(), JSON.toJSONString(requestDTO), e);
+            return Response.<LockMarketPayOrderResponseDTO>builder()
+                    .code(ResponseCode.UN_ERROR.getCode())
+                    .info(ResponseCode.UN_ERROR.getInfo())
                     .build();
+        }
+    }
 
-            // 调用普通商品下单服务
-            log.info("普通商品下单: userId={}, activityId={}, goodsId={}, teamId={}", userId, activityId, goodsId, teamId);
-            MarketPayOrderEntity marketPayOrderEntity = normalGoodsTradeService.lockNormalGoodsOrder(userEntity, payActivityEntity, payDiscountEntity);
+    /**
+     * 普通商品下单（锁单）- 异步
+     * <p>
+     * 试算、锁单分阶段在独立有界执行器中执行，Tomcat 工作线程提交后立即释放；
+     * 执行器饱和与集群限流一致返回 {@link ResponseCode#RATE_LIMITER}，试算超时返回 {@link ResponseCode#TIMEOUT}，
+     * 锁单阶段超时返回 {@link ResponseCode#PENDING} 与查询令牌，凭令牌调用 query_lock_order 查询订单结果。
+     *
+     * @param requestDTO 锁单商品信息
+     * @return 锁单结果信息
+     */
+    @RequestMapping(value = "lock_order_async", method = RequestMethod.POST)
+    @Override
+    public CompletableFuture<Response<LockMarketPayOrderResponseDTO>> lockNormalGoodsOrderAsync(@Valid @RequestBody LockMarketPayOrderRequestDTO requestDTO) {
+        hotLog.info("普通商品异步下单:{} LockMarketPayOrderRequestDTO:{}", requestDTO.getUserId(), LazyLog.json(requestDTO));
+
+        // 参数校验
+        Response<LockMarketPayOrderResponseDTO> illegalResponse = checkParams(requestDTO);
+        if (null != illegalResponse) {
+            return lockOrderAsyncTemplate.completed(illegalResponse);
+        }
+
+        // 集群限流，在提交执行器之前拒绝
+        if (!admit(requestDTO)) {
+            return lockOrderAsyncTemplate.reject();
+        }
 
-            log.info("普通商品下单成功:{} marketPayOrderEntity:{}", userId, JSON.toJSONString(marketPayOrderEntity));
+        CompletableFuture<Response<LockMarketPayOrderResponseDTO>> future = lockOrderAsyncTemplate
+                .trial(() -> trial(requestDTO))
+                .thenCompose(trialBalanceEntity -> lockOrderAsyncTemplate.lock(() -> lock(requestDTO, trialBalanceEntity)));
+        return lockOrderAsyncTemplate.complete("普通商品异步下单", requestDTO.getUserId(), requestDTO.getOutTradeNo(), future);
+    }
 
-            // 返回结果
+    /**
+     * 查询异步锁单结果
+     *
+     * @param queryToken 锁单返回 PENDING 时下发的查询令牌
+     * @return 订单信息；仍在处理中返回 {@link ResponseCode#PENDING}
+     */
+    @RequestMapping(value = "query_lock_order", method = RequestMethod.GET)
+    @Override
+    public Response<LockMarketPayOrderResponseDTO> queryNormalGoodsLockOrder(@RequestParam String queryToken) {
+        try {
+            return lockOrderAsyncTemplate.query(queryToken);
+        } catch (Exception e) {
+            log.error("普通商品查询锁单结果失败 queryToken:{}", queryToken, e);
             return Response.<LockMarketPayOrderResponseDTO>builder()
-                    .code(ResponseCode.SUCCESS.getCode())
-                    .info(ResponseCode.SUCCESS.getInfo())
-                    .data(LockMarketPayOrderResponseDTO.builder()
-                            .orderId(marketPayOrderEntity.getOrderId())
-                            .originalPrice(marketPayOrderEntity.getOriginalPrice())
-                            .deductionPrice(marketPayOrderEntity.getDeductionPrice())
-                            .payPrice(marketPayOrderEntity.getPayPrice())
-                            .tradeOrderStatus(marketPayOrderEntity.getTradeOrderStatusEnumVO().getCode())
-                            .teamId(marketPayOrderEntity.getTeamId())
-                            .build())
+                    .code(ResponseCode.UN_ERROR.getCode())
+                    .info(ResponseCode.UN_ERROR.getInfo())
                     .build();
+        }
+    }
+
+    /**
+     * 购物车锁单（多个普通商品一次锁单）
+     * <p>
+     * 1. 各商品试算在试算执行器中并行执行，整体耗时取决于最慢的商品
+     * 2. 全部商品一次批量准入（全部扣减或全部不扣减）、一个本地事务创建全部订单
+     * 3. 任一商品失败整单失败，返回失败商品对应的响应码
+     *
+     * @param requestDTO 购物车商品信息
+     * @return 各商品锁单结果及合计金额
+     */
+    @RequestMapping(value = "cart_lock_order", method = RequestMethod.POST)
+    @Override
+    public Response<CartLockOrderResponseDTO> lockNormalGoodsCartOrder(@Valid @RequestBody CartLockOrderRequestDTO requestDTO) {
+        try {
+            hotLog.info("普通商品购物车下单:{} CartLockOrderRequestDTO:{}", requestDTO.getUserId(), LazyLog.json(requestDTO));
+
+            // 参数校验
+            if (!checkCartParams(requestDTO)) {
+                return Response.<CartLockOrderResponseDTO>builder()
+                        .code(ResponseCode.ILLEGAL_PARAMETER.getCode())
+                        .info(ResponseCode.ILLEGAL_PARAMETER.getInfo())
+                        .build();
+            }
+
+            // 集群限流，一次请求取一个用户令牌，商品所属活动去重后各取一个活动令牌
+            Set<Long> activityIds = new LinkedHashSet<>();
+            for (CartLockOrderRequestDTO.Item item : requestDTO.getItems()) {
+                activityIds.add(item.getActivityId());
+            }
+            if (!clusterRateLimiter.tryAcquireAll(ClusterRateLimiter.SCENE_LOCK, activityIds, requestDTO.getUserId())) {
+                hotLog.info("普通商品购物车下单限流:{} activityIds:{}", requestDTO.getUserId(), activityIds);
+                return Response.<CartLockOrderResponseDTO>builder()
+                        .code(ResponseCode.RATE_LIMITER.getCode())
+                        .info(ResponseCode.RATE_LIMITER.getInfo())
+                        .build();
+            }
+
+            // 营销优惠试算（并行）
+            List<TrialBalanceEntity> trialBalanceEntities = trialAll(requestDTO);
+
+            // 锁单
+            return lockCart(requestDTO, trialBalanceEntities);
         } catch (AppException e) {
-            log.error("普通商品下单业务异常:{} LockMarketPayOrderRequestDTO:{}", requestDTO.getUserId(), JSON.toJSONString(requestDTO), e);
-            return Response.<LockMarketPayOrderResponseDTO>builder()
+            log.error("普通商品购物车下单业务异常:{} CartLockOrderRequestDTO:{}", requestDTO.getUserId(), JSON.toJSONString(requestDTO), e);
+            return Response.<CartLockOrderResponseDTO>builder()
                     .code(e.getCode())
                     .info(e.getInfo())
                     .build();
         } catch (Exception e) {
-            log.error("普通商品下单服务失败:{} LockMarketPayOrderRequestDTO:{}", requestDTO.getUserId(), JSON.toJSONString(requestDTO), e);
-            return Response.<LockMarketPayOrderResponseDTO>builder()
+            log.error("普通商品购物车下单服务失败:{} CartLockOrderRequestDTO:{}", requestDTO.getUserId(), JSON.toJSONString(requestDTO), e);
+            return Response.<CartLockOrderResponseDTO>builder()
                     .code(ResponseCode.UN_ERROR.getCode())
                     .info(ResponseCode.UN_ERROR.getInfo())
                     .build();
         }
     }
-}
 
+    private boolean admit(LockMarketPayOrderRequestDTO requestDTO) {
+        if (clusterRateLimiter.tryAcquire(ClusterRateLimiter.SCENE_LOCK, requestDTO.getActivityId(), requestDTO.getUserId())) {
+            return true;
+        }
+        hotLog.info("普通商品下单限流:{} activityId:{}", requestDTO.getUserId(), requestDTO.getActivityId());
+        return false;
+    }
+
+    private Response<LockMarketPayOrderResponseDTO> checkParams(LockMarketPayOrderRequestDTO requestDTO) {
+        String userId = requestDTO.getUserId();
+        String source = requestDTO.getSource();
+        String channel = requestDTO.getChannel();
+        String goodsId = requestDTO.getGoodsId();
+        Long activityId = requestDTO.getActivityId();
+        LockMarketPayOrderRequestDTO.NotifyConfigVO notifyConfigVO = requestDTO.getNotifyConfigVO();
+
+        if (StringUtils.isBlank(userId) || StringUtils.isBlank(source) || StringUtils.isBlank(channel) 
+                || StringUtils.isBlank(goodsId) || null == activityId 
+                || ("HTTP".equals(notifyConfigVO.getNotifyType()) && StringUtils.isBlank(notifyConfigVO.getNotifyUrl()))) {
+            return Response.<LockMarketPayOrderResponseDTO>builder()
+                    .code(ResponseCode.ILLEGAL_PARAMETER.getCode())
+                    .info(ResponseCode.ILLEGAL_PARAMETER.getInfo())
+                    .build();
+        }
+        return null;
+    }
+
+    private TrialBalanceEntity trial(LockMarketPayOrderRequestDTO requestDTO) throws Exception {
+        return indexGroupBuyMarketService.indexMarketTrial(MarketProductEntity.builder()
+                .userId(requestDTO.getUserId())
+                .source(requestDTO.getSource())
+                .channel(requestDTO.getChannel())
+                .goodsId(requestDTO.getGoodsId())
+                .activityId(requestDTO.getActivityId())
+                .build());
+    }
+
+    private Response<LockMarketPayOrderResponseDTO> lock(LockMarketPayOrderRequestDTO requestDTO, TrialBalanceEntity trialBalanceEntity) throws Exception {
+        String userId = requestDTO.getUserId();
+        String source = requestDTO.getSource();
+        String channel = requestDTO.getChannel();
+        String goodsId = requestDTO.getGoodsId();
+        Long activityId = requestDTO.getActivityId();
+        String outTradeNo = requestDTO.getOutTradeNo();
+        String teamId = requestDTO.getTeamId();  // 普通商品支持拼团，teamId 可为空
+        LockMarketPayOrderRequestDTO.NotifyConfigVO notifyConfigVO = requestDTO.getNotifyConfigVO();
+
+        // 人群限定
+        if (!trialBalanceEntity.getIsVisible() || !trialBalanceEntity.getIsEnable()) {
+            return Response.<LockMarketPayOrderResponseDTO>builder()
+                    .code(ResponseCode.E0007.getCode())
+                    .info(ResponseCode.E0007.getInfo())
+                    .build();
+        }
+
+        GroupBuyActivityDiscountVO groupBuyActivityDiscountVO = trialBalanceEntity.getGroupBuyActivityDiscountVO();
+
+        // 构建实体对象
+        UserEntity userEntity = UserEntity.builder().userId(userId).build();
+        // 普通商品支持拼团，teamId 可为空（为空则创建新组队）
+        PayActivityEntity payActivityEntity = buildPayActivity(activityId, teamId, groupBuyActivityDiscountVO);
+        PayDiscountEntity payDiscountEntity = buildPayDiscount(source, channel, goodsId, outTradeNo, notifyConfigVO, trialBalanceEntity);
+
+        // 调用普通商品下单服务
+        hotLog.info("普通商品下单: userId={}, activityId={}, goodsId={}, teamId={}", userId, activityId, goodsId, teamId);
+        MarketPayOrderEntity marketPayOrderEntity = normalGoodsTradeService.lockNormalGoodsOrder(userEntity, payActivityEntity, payDiscountEntity);
+
+        hotLog.info("普通商品下单成功:{} marketPayOrderEntity:{}", userId, LazyLog.json(marketPayOrderEntity));
+
+        // 返回结果
+        return Response.<LockMarketPayOrderResponseDTO>builder()
+                .code(ResponseCode.SUCCESS.getCode())
+                .info(ResponseCode.SUCCESS.getInfo())
+                .data(LockMarketPayOrderResponseDTO.builder()
+                        .orderId(marketPayOrderEntity.getOrderId())
+                        .originalPrice(marketPayOrderEntity.getOriginalPrice())
+                        .deductionPrice(marketPayOrderEntity.getDeductionPrice())
+                        .payPrice(marketPayOrderEntity.getPayPrice())
+                        .tradeOrderStatus(marketPayOrderEntity.getTradeOrderStatusEnumVO().getCode())
+                        .teamId(marketPayOrderEntity.getTeamId())
+                        .build())
+                .build();
+    }
+
+    private boolean checkCartParams(CartLockOrderRequestDTO requestDTO) {
+        List<CartLockOrderRequestDTO.Item> items = requestDTO.getItems();
+        LockMarketPayOrderRequestDTO.NotifyConfigVO notifyConfigVO = requestDTO.getNotifyConfigVO();
+        if (StringUtils.isBlank(requestDTO.getUserId()) || StringUtils.isBlank(requestDTO.getSource()) || StringUtils.isBlank(requestDTO.getChannel())
+                || null == items || items.isEmpty() || items.size() > MAX_CART_SIZE || null == notifyConfigVO
+                || ("HTTP".equals(notifyConfigVO.getNotifyType()) && StringUtils.isBlank(notifyConfigVO.getNotifyUrl()))) {
+            return false;
+        }
+        // 同一活动只能出现一次（参与次数、商品库存按活动校验）
+        Set<Long> activityIds = new HashSet<>();
+        for (CartLockOrderRequestDTO.Item item : items) {
+            if (null == item || null == item.getActivityId() || StringUtils.isBlank(item.getGoodsId()) || !activityIds.add(item.getActivityId())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 并行试算，任一商品试算失败整单失败
+     */
+    private List<TrialBalanceEntity> trialAll(CartLockOrderRequestDTO requestDTO) throws Exception {
+        List<CompletableFuture<TrialBalanceEntity>> futures = new ArrayList<>(requestDTO.getItems().size());
+        for (CartLockOrderRequestDTO.Item item : requestDTO.getItems()) {
+            futures.add(lockOrderAsyncTemplate.trial(() -> indexGroupBuyMarketService.indexMarketTrial(MarketProductEntity.builder()
+                    .userId(requestDTO.getUserId())
+                    .source(requestDTO.getSource())
+                    .channel(requestDTO.getChannel())
+                    .goodsId(item.getGoodsId())
+                    .activityId(item.getActivityId())
+                    .build())));
+        }
+
+        List<TrialBalanceEntity> trialBalanceEntities = new ArrayList<>(futures.size());
+        for (CompletableFuture<TrialBalanceEntity> future : futures) {
+            try {
+                trialBalanceEntities.add(future.get());
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RejectedExecutionException) {
+                    throw new AppException(ResponseCode.RATE_LIMITER);
+                }
+                if (cause instanceof TimeoutException) {
+                    throw new AppException(ResponseCode.TIMEOUT);
+                }
+                throw cause instanceof Exception ? (Exception) cause : e;
+            }
+        }
+        return trialBalanceEntities;
+    }
+
+    private Response<CartLockOrderResponseDTO> lockCart(CartLockOrderRequestDTO requestDTO, List<TrialBalanceEntity> trialBalanceEntities) throws Exception {
+        String userId = requestDTO.getUserId();
+        List<CartLockOrderRequestDTO.Item> items = requestDTO.getItems();
+
+        List<NormalGoodsCartItemEntity> cartItems = new ArrayList<>(items.size());
+        for (int i = 0; i < items.size(); i++) {
+            CartLockOrderRequestDTO.Item item = items.get(i);
+            TrialBalanceEntity trialBalanceEntity = trialBalanceEntities.get(i);
+
+            // 人群限定
+            if (!trialBalanceEntity.getIsVisible() || !trialBalanceEntity.getIsEnable()) {
+                return Response.<CartLockOrderResponseDTO>builder()
+                        .code(ResponseCode.E0007.getCode())
+                        .info(ResponseCode.E0007.getInfo() + "，商品:" + item.getGoodsId())
+                        .build();
+            }
+
+            cartItems.add(NormalGoodsCartItemEntity.builder()
+                    .payActivityEntity(buildPayActivity(item.getActivityId(), item.getTeamId(), trialBalanceEntity.getGroupBuyActivityDiscountVO()))
+                    .payDiscountEntity(buildPayDiscount(requestDTO.getSource(), requestDTO.getChannel(), item.getGoodsId(), item.getOutTradeNo(),
+                            requestDTO.getNotifyConfigVO(), trialBalanceEntity))
+                    .build());
+        }
+
+        List<MarketPayOrderEntity> marketPayOrderEntities = normalGoodsTradeService.lockNormalGoodsCartOrder(UserEntity.builder().userId(userId).build(), cartItems);
+
+        hotLog.info("普通商品购物车下单成功:{} marketPayOrderEntities:{}", userId, LazyLog.json(marketPayOrderEntities));
+
+        List<LockMarketPayOrderResponseDTO> orders = new ArrayList<>(marketPayOrderEntities.size());
+        BigDecimal originalPrice = BigDecimal.ZERO;
+        BigDecimal deductionPrice = BigDecimal.ZERO;
+        BigDecimal payPrice = BigDecimal.ZERO;
+        for (MarketPayOrderEntity marketPayOrderEntity : marketPayOrderEntities) {
+            orders.add(LockMarketPayOrderResponseDTO.builder()
+                    .orderId(marketPayOrderEntity.getOrderId())
+                    .originalPrice(marketPayOrderEntity.getOriginalPrice())
+                    .deductionPrice(marketPayOrderEntity.getDeductionPrice())
+                    .payPrice(marketPayOrderEntity.getPayPrice())
+                    .tradeOrderStatus(marketPayOrderEntity.getTradeOrderStatusEnumVO().getCode())
+                    .teamId(marketPayOrderEntity.getTeamId())
+                    .build());
+            originalPrice = originalPrice.add(marketPayOrderEntity.getOriginalPrice());
+            deductionPrice = deductionPrice.add(marketPayOrderEntity.getDeductionPrice());
+            payPrice = payPrice.add(marketPayOrderEntity.getPayPrice());
+        }
+
+        return Response.<CartLockOrderResponseDTO>builder()
+                .code(ResponseCode.SUCCESS.getCode())
+                .info(ResponseCode.SUCCESS.getInfo())
+                .data(CartLockOrderResponseDTO.builder()
+                        .orders(orders)
+                        .originalPrice(originalPrice)
+                        .deductionPrice(deductionPrice)
+                        .payPrice(payPrice)
+                        .build())
+                .build();
+    }
+
+    private PayActivityEntity buildPayActivity(Long activityId, String teamId, GroupBuyActivityDiscountVO groupBuyActivityDiscountVO) {
+        return PayActivityEntity.builder()
+                .teamId(StringUtils.isBlank(teamId) ? null : teamId)
+                .activityId(activityId)
+                .activityName(groupBuyActivityDiscountVO.getActivityName())
+                .startTime(groupBuyActivityDiscountVO.getStartTime())
+                .endTime(groupBuyActivityDiscountVO.getEndTime())
+                .validTime(groupBuyActivityDiscountVO.getValidTime())
+                .targetCount(groupBuyActivityDiscountVO.getTarget())
+                .takeLimitCount(groupBuyActivityDiscountVO.getTakeLimitCount())
+                .build();
+    }
+
+    private PayDiscountEntity buildPayDiscount(String source, String channel, String goodsId, String outTradeNo,
+                                               LockMarketPayOrderRequestDTO.NotifyConfigVO notifyConfigVO, TrialBalanceEntity trialBalanceEntity) {
+        return PayDiscountEntity.builder()
+                .source(source)
+                .channel(channel)
+                .goodsId(goodsId)
+                .goodsName(trialBalanceEntity.getGoodsName())
+                .originalPrice(trialBalanceEntity.getOriginalPrice())
+                .deductionPrice(trialBalanceEntity.getDeductionPrice())
+                .payPrice(trialBalanceEntity.getPayPrice())
+                .outTradeNo(outTradeNo)
+                .notifyConfigVO(
+                        // 构建回调通知对象
+                        NotifyConfigVO.builder()
+                                .notifyType(NotifyTypeEnumVO.valueOf(notifyConfigVO.getNotifyType()))
+                                .notifyMQ(notifyConfigVO.getNotifyMQ())
+                                .notifyUrl(notifyConfigVO.getNotifyUrl())
+                                .build())
+                .build();
+    }
+}
@@ -4,6 +4,10 @@ import cn.bugstack.api.response.Response;
 import cn.bugstack.domain.trade.adapter.port.IRedisAdapter;
 import cn.bugstack.domain.trade.adapter.repository.ITradeRepository;
 import cn.bugstack.domain.trade.model.entity.GroupBuyTeamEntity;
+import cn.bugstack.domain.trade.model.entity.StockPreheatProgressEntity;
+import cn.bugstack.domain.trade.model.entity.StockRebuildReportEntity;
+import cn.bugstack.domain.trade.service.IStockPreheatService;
+import cn.bugstack.domain.trade.service.IStockRebuildService;
 import cn.bugstack.types.enums.ResponseCode;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
@@ -27,6 +31,10 @@ public class StockPreheatController {
     private IRedisAdapter redisAdapter;
     @Resource
     private ITradeRepository tradeRepository;
+    @Resource
+    private IStockRebuildService stockRebuildService;
+    @Resource
+    private IStockPreheatService stockPreheatService;
 
     /**
      * 批量初始化团队库存
@@ -110,6 +118,54 @@ public class StockPreheatController {
         }
     }
 
+    /**
+     * 预热活动：商品库存、队伍库存、队伍库存恢复计数及活动、折扣、商品缓存，异步执行
+     * @param activityId 活动ID
+     * @return 当前预热进度
+     */
+    @PostMapping("/activity/{activityId}")
+    public Response<StockPreheatProgressEntity> preheatActivity(@PathVariable Long activityId) {
+        try {
+            StockPreheatProgressEntity progress = stockPreheatService.preheatAsync(activityId);
+            return new Response<>(ResponseCode.SUCCESS.getCode(), ResponseCode.SUCCESS.getInfo(), progress);
+        } catch (Exception e) {
+            log.error("活动库存预热异常: activityId={}", activityId, e);
+            return new Response<>(ResponseCode.UN_ERROR.getCode(), "活动库存预热失败: " + e.getMessage(), null);
+        }
+    }
+
+    /**
+     * 查询活动预热进度
+     * @param activityId 活动ID
+     * @return 预热进度，ready=true 表示已预热完成
+     */
+    @GetMapping("/activity/{activityId}")
+    public Response<StockPreheatProgressEntity> queryPreheatProgress(@PathVariable Long activityId) {
+        StockPreheatProgressEntity progress = stockPreheatService.queryProgress(activityId);
+        if (null == progress) {
+            return new Response<>(ResponseCode.UN_ERROR.getCode(), "活动未执行预热: " + activityId, null);
+        }
+        return new Response<>(ResponseCode.SUCCESS.getCode(), ResponseCode.SUCCESS.getInfo(), progress);
+    }
+
+    /**
+     * 按数据库与库存流水重建 Redis 商品库存、队伍库存
+     * @param dryRun true-只对比输出差异报告，false-写入 Redis（覆盖写，需在停止下单流量后执行）
+     * @param shards 并行分片数
+     * @return 重建报告
+     */
+    @PostMapping("/rebuild")
+    public Response<StockRebuildReportEntity> rebuildStock(@RequestParam(defaultValue = "true") boolean dryRun,
+                                                           @RequestParam(defaultValue = "8") int shards) {
+        try {
+            StockRebuildReportEntity report = stockRebuildService.rebuild(dryRun, shards);
+            return new Response<>(ResponseCode.SUCCESS.getCode(), ResponseCode.SUCCESS.getInfo(), report);
+        } catch (Exception e) {
+            log.error("重建Redis库存异常: dryRun={}, shards={}", dryRun, shards, e);
+            return new Response<>(ResponseCode.UN_ERROR.getCode(), "库存重建失败: " + e.getMessage(), null);
+        }
+    }
+
     @Data
     public static class BatchInitStockRequest {
         private List<TeamStockItem> teamStocks;
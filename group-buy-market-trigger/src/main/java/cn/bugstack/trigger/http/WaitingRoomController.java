@@ -0,0 +1,90 @@
+package cn.bugstack.trigger.http;
+
+import cn.bugstack.api.IWaitingRoomService;
+import cn.bugstack.api.dto.WaitingRoomRequestDTO;
+import cn.bugstack.api.dto.WaitingRoomResponseDTO;
+import cn.bugstack.api.response.Response;
+import cn.bugstack.infrastructure.log.HotPathLogger;
+import cn.bugstack.infrastructure.redis.waitingroom.WaitingRoom;
+import cn.bugstack.types.enums.ResponseCode;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.web.bind.annotation.*;
+
+import javax.annotation.Resource;
+
+/**
+ * 秒杀活动排队控制器
+ *
+ * 1. enter：领取排队号，重复进入返回原排队号
+ * 2. status：轮询排队位置、预计等待时间，只访问一次 Redis，客户端按 pollIntervalMillis 轮询
+ * 3. 放行后调用 /api/v1/gbm/index/get_token 领取锁单 Token
+ *
+ * API 路径：/api/v1/gbm/waiting-room/
+ *
+ * @author liang.tian
+ */
+@Slf4j
+@RestController
+@CrossOrigin("*")
+@RequestMapping("/api/v1/gbm/waiting-room/")
+public class WaitingRoomController implements IWaitingRoomService {
+
+    private static final HotPathLogger hotLog = HotPathLogger.getLogger(WaitingRoomController.class);
+
+    @Resource
+    private WaitingRoom waitingRoom;
+
+    @RequestMapping(value = "enter", method = RequestMethod.POST)
+    @Override
+    public Response<WaitingRoomResponseDTO> enter(@RequestBody WaitingRoomRequestDTO requestDTO) {
+        if (StringUtils.isBlank(requestDTO.getUserId()) || null == requestDTO.getActivityId()) {
+            return failure(ResponseCode.ILLEGAL_PARAMETER);
+        }
+        try {
+            WaitingRoom.Ticket ticket = waitingRoom.enter(requestDTO.getActivityId(), requestDTO.getUserId());
+            hotLog.info("进入排队:{} activityId:{} ticket:{} position:{}", requestDTO.getUserId(), requestDTO.getActivityId(), ticket.getTicket(), ticket.getPosition());
+            return success(ticket);
+        } catch (Exception e) {
+            log.error("进入排队失败:{} activityId:{}", requestDTO.getUserId(), requestDTO.getActivityId(), e);
+            return failure(ResponseCode.UN_ERROR);
+        }
+    }
+
+    @RequestMapping(value = "status", method = RequestMethod.GET)
+    @Override
+    public Response<WaitingRoomResponseDTO> queryStatus(WaitingRoomRequestDTO requestDTO) {
+        if (StringUtils.isBlank(requestDTO.getUserId()) || null == requestDTO.getActivityId()) {
+            return failure(ResponseCode.ILLEGAL_PARAMETER);
+        }
+        try {
+            return success(waitingRoom.status(requestDTO.getActivityId(), requestDTO.getUserId()));
+        } catch (Exception e) {
+            log.error("查询排队状态失败:{} activityId:{}", requestDTO.getUserId(), requestDTO.getActivityId(), e);
+            return failure(ResponseCode.UN_ERROR);
+        }
+    }
+
+    private Response<WaitingRoomResponseDTO> success(WaitingRoom.Ticket ticket) {
+        return Response.<WaitingRoomResponseDTO>builder()
+                .code(ResponseCode.SUCCESS.getCode())
+                .info(ResponseCode.SUCCESS.getInfo())
+                .data(WaitingRoomResponseDTO.builder()
+                        .inQueue(ticket.isInQueue())
+                        .ticket(ticket.getTicket())
+                        .admitted(ticket.isAdmitted())
+                        .position(ticket.getPosition())
+                        .etaSeconds(ticket.getEtaSeconds())
+                        .pollIntervalMillis(ticket.getPollIntervalMillis())
+                        .build())
+                .build();
+    }
+
+    private Response<WaitingRoomResponseDTO> failure(ResponseCode responseCode) {
+        return Response.<WaitingRoomResponseDTO>builder()
+                .code(responseCode.getCode())
+                .info(responseCode.getInfo())
+                .build();
+    }
+
+}
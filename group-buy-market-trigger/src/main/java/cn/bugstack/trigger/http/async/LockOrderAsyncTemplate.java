@@ -0,0 +1,219 @@
+package cn.bugstack.trigger.http.async;
+
+import cn.bugstack.api.dto.LockMarketPayOrderResponseDTO;
+import cn.bugstack.api.response.Response;
+import cn.bugstack.domain.trade.model.entity.MarketPayOrderEntity;
+import cn.bugstack.domain.trade.service.ITradeLockOrderService;
+import cn.bugstack.trigger.config.LockOrderAsyncProperties;
+import cn.bugstack.types.enums.ResponseCode;
+import cn.bugstack.types.exception.AppException;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.concurrent.*;
+
+/**
+ * 异步锁单模板
+ * <p>
+ * 锁单接口返回 CompletableFuture，Tomcat 工作线程在提交任务后立即释放；
+ * 试算、锁单分阶段提交到独立的有界执行器，每个阶段单独计时：
+ * 1. 执行器饱和 - 立即拒绝，与同步接口、集群限流一致返回 {@link ResponseCode#RATE_LIMITER}
+ * 2. 试算阶段超时 - 尚未占用库存，返回 {@link ResponseCode#TIMEOUT}
+ * 3. 锁单阶段超时 - 订单可能仍在创建，返回 {@link ResponseCode#PENDING} 与查询令牌，由调用方查询订单结果
+ * 4. 排队期间已超时的任务不再执行，避免无效的下单请求继续占用资源
+ *
+ * @author liang.tian
+ */
+@Slf4j
+@Component
+public class LockOrderAsyncTemplate {
+
+    private static final String STAGE_TRIAL = "trial";
+    private static final String STAGE_LOCK = "lock";
+
+    @Resource(name = "lockOrderTrialExecutor")
+    private ExecutorService trialExecutor;
+
+    @Resource(name = "lockOrderExecutor")
+    private ExecutorService lockExecutor;
+
+    @Resource(name = "lockOrderTimeoutScheduler")
+    private ScheduledExecutorService timeoutScheduler;
+
+    @Resource
+    private LockOrderAsyncProperties properties;
+
+    @Resource
+    private ITradeLockOrderService tradeLockOrderService;
+
+    /**
+     * 试算阶段
+     */
+    public <T> CompletableFuture<T> trial(Callable<T> stage) {
+        return submit(STAGE_TRIAL, stage, trialExecutor, properties.getTrialTimeout());
+    }
+
+    /**
+     * 锁单阶段
+     */
+    public <T> CompletableFuture<T> lock(Callable<T> stage) {
+        return submit(STAGE_LOCK, stage, lockExecutor, properties.getLockTimeout());
+    }
+
+    /**
+     * 不经过执行器直接返回的结果（参数校验失败等）
+     */
+    public <T> CompletableFuture<Response<T>> completed(Response<T> response) {
+        return CompletableFuture.completedFuture(response);
+    }
+
+    /**
+     * 集群限流拒绝
+     */
+    public <T> CompletableFuture<Response<T>> reject() {
+        return CompletableFuture.completedFuture(this.<T>failure(ResponseCode.RATE_LIMITER));
+    }
+
+    /**
+     * 将阶段结果转换为响应，异常统一转换为响应码；整个请求超过 requestTimeout 兜底返回超时
+     *
+     * @param outTradeNo 外部交易单号，锁单阶段超时时用于生成查询令牌；为空时无法查询，按超时返回
+     */
+    public CompletableFuture<Response<LockMarketPayOrderResponseDTO>> complete(String scene, String userId, String outTradeNo,
+                                                                             CompletableFuture<Response<LockMarketPayOrderResponseDTO>> future) {
+        CompletableFuture<Response<LockMarketPayOrderResponseDTO>> result = future.handle((response, throwable) -> {
+            if (null == throwable) return response;
+
+            Throwable cause = throwable instanceof CompletionException && null != throwable.getCause() ? throwable.getCause() : throwable;
+            if (cause instanceof RejectedExecutionException) {
+                log.warn("{}-执行器繁忙，拒绝请求:{}", scene, userId);
+                return failure(ResponseCode.RATE_LIMITER);
+            } else if (cause instanceof StageTimeoutException) {
+                StageTimeoutException e = (StageTimeoutException) cause;
+                log.warn("{}-{}:{}", scene, e.getMessage(), userId);
+                if (STAGE_LOCK.equals(e.getStage()) && StringUtils.isNotBlank(outTradeNo)) {
+                    return pending(userId, outTradeNo);
+                }
+                return failure(ResponseCode.TIMEOUT);
+            } else if (cause instanceof AppException) {
+                AppException e = (AppException) cause;
+                log.error("{}业务异常:{}", scene, userId, e);
+                return Response.<LockMarketPayOrderResponseDTO>builder()
+                        .code(e.getCode())
+                        .info(e.getInfo())
+                        .build();
+            } else {
+                log.error("{}服务失败:{}", scene, userId, cause);
+                return failure(ResponseCode.UN_ERROR);
+            }
+        });
+
+        // 兜底 Servlet 异步超时
+        ScheduledFuture<?> timeout = timeoutScheduler.schedule(
+                () -> result.complete(failure(ResponseCode.TIMEOUT)),
+                properties.getRequestTimeout(), TimeUnit.MILLISECONDS);
+        result.whenComplete((r, t) -> timeout.cancel(false));
+        return result;
+    }
+
+    /**
+     * 凭查询令牌查询锁单结果
+     * <p>
+     * 查到订单返回成功；未查到且未过截止时间返回 PENDING，调用方稍后重试；过了截止时间仍未查到视为锁单失败。
+     */
+    public Response<LockMarketPayOrderResponseDTO> query(String queryToken) {
+        LockOrderQueryToken token = LockOrderQueryToken.decode(queryToken);
+        if (null == token) {
+            return failure(ResponseCode.ILLEGAL_PARAMETER);
+        }
+
+        MarketPayOrderEntity marketPayOrderEntity = tradeLockOrderService.queryNoPayMarketPayOrderByOutTradeNo(token.getUserId(), token.getOutTradeNo());
+        if (null != marketPayOrderEntity) {
+            return Response.<LockMarketPayOrderResponseDTO>builder()
+                    .code(ResponseCode.SUCCESS.getCode())
+                    .info(ResponseCode.SUCCESS.getInfo())
+                    .data(LockMarketPayOrderResponseDTO.builder()
+                            .orderId(marketPayOrderEntity.getOrderId())
+                            .originalPrice(marketPayOrderEntity.getOriginalPrice())
+                            .deductionPrice(marketPayOrderEntity.getDeductionPrice())
+                            .payPrice(marketPayOrderEntity.getPayPrice())
+                            .tradeOrderStatus(marketPayOrderEntity.getTradeOrderStatusEnumVO().getCode())
+                            .teamId(marketPayOrderEntity.getTeamId())
+                            .build())
+                    .build();
+        }
+
+        if (token.isExpired(System.currentTimeMillis())) {
+            return failure(ResponseCode.E0104);
+        }
+
+        return Response.<LockMarketPayOrderResponseDTO>builder()
+                .code(ResponseCode.PENDING.getCode())
+                .info(ResponseCode.PENDING.getInfo())
+                .data(LockMarketPayOrderResponseDTO.builder().queryToken(queryToken).build())
+                .build();
+    }
+
+    private Response<LockMarketPayOrderResponseDTO> pending(String userId, String outTradeNo) {
+        String queryToken = new LockOrderQueryToken(userId, outTradeNo, System.currentTimeMillis() + properties.getPendingQueryWindow()).encode();
+        return Response.<LockMarketPayOrderResponseDTO>builder()
+                .code(ResponseCode.PENDING.getCode())
+                .info(ResponseCode.PENDING.getInfo())
+                .data(LockMarketPayOrderResponseDTO.builder().queryToken(queryToken).build())
+                .build();
+    }
+
+    private <T> CompletableFuture<T> submit(String stageName, Callable<T> stage, ExecutorService executor, long timeoutMillis) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            // traceId 由执行器（TraceContextExecutor）传递
+            executor.execute(() -> {
+                // 排队期间已超时，不再执行
+                if (future.isDone()) return;
+                try {
+                    future.complete(stage.call());
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+            return future;
+        }
+
+        ScheduledFuture<?> timeout = timeoutScheduler.schedule(
+                () -> future.completeExceptionally(new StageTimeoutException(stageName, timeoutMillis)),
+                timeoutMillis, TimeUnit.MILLISECONDS);
+        future.whenComplete((r, t) -> timeout.cancel(false));
+        return future;
+    }
+
+    private <T> Response<T> failure(ResponseCode responseCode) {
+        return Response.<T>builder()
+                .code(responseCode.getCode())
+                .info(responseCode.getInfo())
+                .build();
+    }
+
+    /**
+     * 阶段超时，区分试算与锁单阶段
+     */
+    private static class StageTimeoutException extends TimeoutException {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String stage;
+
+        StageTimeoutException(String stage, long timeoutMillis) {
+            super(stage + "阶段超时" + timeoutMillis + "ms");
+            this.stage = stage;
+        }
+
+        String getStage() {
+            return stage;
+        }
+    }
+
+}
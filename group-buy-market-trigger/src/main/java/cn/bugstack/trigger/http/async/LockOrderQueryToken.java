@@ -0,0 +1,55 @@
+package cn.bugstack.trigger.http.async;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.apache.commons.lang3.StringUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * 锁单查询令牌
+ * <p>
+ * 锁单阶段超时后订单仍可能创建成功，返回 PENDING 与查询令牌，调用方凭令牌查询订单结果。
+ * 令牌由 userId、outTradeNo 与查询截止时间组成（Base64Url 编码），截止时间之后仍查不到订单视为锁单失败。
+ *
+ * @author liang.tian
+ */
+@Getter
+@AllArgsConstructor
+public class LockOrderQueryToken {
+
+    private static final String SEPARATOR = "\n";
+
+    /** 用户ID */
+    private final String userId;
+    /** 外部交易单号 */
+    private final String outTradeNo;
+    /** 查询截止时间（毫秒时间戳） */
+    private final long deadline;
+
+    public String encode() {
+        String raw = userId + SEPARATOR + outTradeNo + SEPARATOR + deadline;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 解析令牌，格式非法返回 null
+     */
+    public static LockOrderQueryToken decode(String token) {
+        if (StringUtils.isBlank(token)) return null;
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            String[] parts = raw.split(SEPARATOR, -1);
+            if (parts.length != 3 || StringUtils.isAnyBlank(parts[0], parts[1])) return null;
+            return new LockOrderQueryToken(parts[0], parts[1], Long.parseLong(parts[2]));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    public boolean isExpired(long now) {
+        return now > deadline;
+    }
+
+}
@@ -3,6 +3,8 @@ package cn.bugstack.trigger.job;
 import cn.bugstack.domain.trade.adapter.repository.ITradeRepository;
 import cn.bugstack.domain.trade.adapter.repository.IInventoryDeductionLogRepository;
 import cn.bugstack.domain.trade.model.entity.InventoryDeductionLogEntity;
+import cn.bugstack.types.workload.Workload;
+import cn.bugstack.types.workload.WorkloadType;
 import com.xxl.job.core.biz.model.ReturnT;
 import com.xxl.job.core.handler.annotation.XxlJob;
 import lombok.extern.slf4j.Slf4j;
@@ -34,6 +36,7 @@ import java.util.concurrent.TimeUnit;
  */
 @Slf4j
 @Component
+@Workload(WorkloadType.BATCH)
 public class DataArchiveJob {
 
     private static final String LOCK_KEY = "group_buy_market_data_archive_job";
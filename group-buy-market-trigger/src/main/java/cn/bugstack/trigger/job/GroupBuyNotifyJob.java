@@ -2,6 +2,8 @@ package cn.bugstack.trigger.job;
 
 import cn.bugstack.domain.trade.service.ITradeSettlementOrderService;
 import cn.bugstack.domain.trade.service.ITradeTaskService;
+import cn.bugstack.types.workload.Workload;
+import cn.bugstack.types.workload.WorkloadType;
 import com.alibaba.fastjson.JSON;
 import lombok.extern.slf4j.Slf4j;
 import org.redisson.api.RLock;
@@ -20,6 +22,7 @@ import java.util.concurrent.TimeUnit;
  */
 @Slf4j
 @Service
+@Workload(WorkloadType.BATCH)
 public class GroupBuyNotifyJob {
 
     @Resource
@@ -3,8 +3,12 @@ package cn.bugstack.trigger.job;
 import cn.bugstack.domain.trade.adapter.port.IRedisAdapter;
 import cn.bugstack.domain.trade.adapter.repository.ITradeRepository;
 import cn.bugstack.domain.trade.model.entity.MarketPayOrderEntity;
-import com.alibaba.fastjson.JSON;
-import com.alibaba.fastjson.JSONObject;
+import cn.bugstack.domain.trade.model.entity.StockAdmissionEntity;
+import cn.bugstack.domain.trade.model.valobj.StockAdmissionCodeEnumVO;
+import cn.bugstack.domain.trade.model.valobj.StockJournalEntryVO;
+import cn.bugstack.domain.trade.model.valobj.StockJournalGroupEnumVO;
+import cn.bugstack.types.workload.Workload;
+import cn.bugstack.types.workload.WorkloadType;
 import lombok.extern.slf4j.Slf4j;
 import org.redisson.api.RLock;
 import org.redisson.api.RedissonClient;
@@ -13,43 +17,45 @@ import com.xxl.job.core.handler.annotation.XxlJob;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.Resource;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
-/**
- * 库存扣减补偿任务
- */
 /**
  * 库存扣减补偿任务（参考 NFTurbo）
  * 
  * 功能：
- * 1. 扫描 Redis 商品库存扣减流水
- * 2. 扫描 Redis 队伍库存扣减流水
- * 3. 检查订单是否已落库
- * 4. 如果订单未落库，回滚库存（补偿 Redis 扣减）
- * 5. 删除Redis流水
+ * 1. 以 compensation 消费组增量读取库存流水 Stream（先处理上次未确认的流水，再读取新流水）
+ * 2. 检查扣减流水对应的订单是否已落库
+ * 3. 如果订单未落库，按准入流水回滚商品库存、队伍名额与用户参与次数（compensateOrder，同一扣减只回滚一次）
+ * 4. 处理完毕的流水确认（XACK），未到时间阈值或回滚失败的流水不确认，下次执行继续处理
+ * 5. 裁剪全部消费组都已确认的流水
  * 
  * 注意：此任务只处理订单未落库的情况（回滚库存）
  * 对账不一致的情况（MISSING_DB、INCONSISTENT）由对账任务记录告警，需要人工介入
  * 
- * 完善：同时处理商品库存和队伍库存，确保订单创建失败时所有库存都被回滚
+ * 队伍名额记录在商品扣减流水上（准入脚本同时记录队伍、参与次数 Key），不再单独扫描队伍库存流水
  * 
  * 执行频率：在 XXL-Job 管理平台配置（建议每30秒执行一次）
  * 时间阈值：只处理5秒之前的数据，给订单落库更多时间
  */
 @Slf4j
 @Component
+@Workload(WorkloadType.BATCH)
 public class InventoryCompensateJob {
 
     // 商品库存相关前缀
     private static final String GOODS_STOCK_KEY_PREFIX = "group_buy_market_goods_stock_";
     private static final String GOODS_STOCK_LOG_KEY_PREFIX = "group_buy_market_goods_stock_log_";
-    
-    // 队伍库存相关前缀
-    private static final String TEAM_STOCK_KEY_PREFIX = "group_buy_market_team_stock_key_";
-    private static final String TEAM_STOCK_LOG_KEY_PREFIX = "group_buy_market_team_stock_log_";
+    // 库存流水 Stream 前缀（与 RedisAdapterImpl 保持一致）
+    private static final String STOCK_JOURNAL_KEY_PREFIX = "group_buy_market_stock_journal_";
+    // 固定消费者名称，任务在不同节点执行时可以继续处理上次未确认的流水
+    private static final String CONSUMER = "inventory_compensate_job";
     
     private static final long CHECK_THRESHOLD_MS = 5000L;
+    // 单次读取流水条数、单个 Stream 每次执行最多处理条数
+    private static final int READ_COUNT = 200;
+    private static final int MAX_ENTRIES_PER_RUN = 10000;
     private static final String LOCK_KEY = "group_buy_market_inventory_compensate_job";
 
     @Resource
@@ -76,14 +82,22 @@ public class InventoryCompensateJob {
             }
             
             log.info("库存补偿任务开始执行");
+
+            int processedCount = 0;
+            int compensatedCount = 0;
+            long trimmedCount = 0;
+            for (String journalKey : redisAdapter.scanStockLogKeys(STOCK_JOURNAL_KEY_PREFIX + "*")) {
+                try {
+                    int[] result = compensateJournal(journalKey);
+                    processedCount += result[0];
+                    compensatedCount += result[1];
+                    trimmedCount += redisAdapter.trimStockJournal(journalKey);
+                } catch (Exception e) {
+                    log.error("库存补偿任务处理流水异常: journalKey={}", journalKey, e);
+                }
+            }
             
-            // 1. 检查商品库存流水
-            checkAndCompensateGoodsStock();
-            
-            // 2. 检查队伍库存流水
-            checkAndCompensateTeamStock();
-            
-            log.info("库存补偿任务执行完成");
+            log.info("库存补偿任务执行完成，处理数量: {}, 回滚数量: {}, 裁剪流水: {}", processedCount, compensatedCount, trimmedCount);
             return ReturnT.SUCCESS;
                     
         } catch (Exception e) {
@@ -97,169 +111,128 @@ public class InventoryCompensateJob {
     }
 
     /**
-     * 检查并补偿商品库存
+     * 补偿单个 SKU 的库存流水
+     *
+     * @return {处理数量, 回滚数量}
      */
-    private void checkAndCompensateGoodsStock() {
-        log.info("开始检查商品库存流水");
-        Iterable<String> logKeys = redisAdapter.scanStockLogKeys(GOODS_STOCK_LOG_KEY_PREFIX + "*");
-        int processedCount = 0;
-        
-        for (String logKey : logKeys) {
-            Map<String, String> logs = redisAdapter.getAllStockDecreaseLogs(logKey);
-            if (logs == null || logs.isEmpty()) {
-                continue;
-            }
-            
-            // 解析 logKey 获取 activityId 和 goodsId
-            // logKey 格式：group_buy_market_goods_stock_log_{activityId}_{goodsId}
-            String keyWithoutPrefix = logKey.replace(GOODS_STOCK_LOG_KEY_PREFIX, "");
-            String[] parts = keyWithoutPrefix.split("_", 2);
-            if (parts.length < 2) {
-                log.warn("商品库存流水key格式错误，跳过: logKey={}", logKey);
-                continue;
-            }
-            
-            String activityId = parts[0];
-            String goodsId = parts[1];
-            String stockKey = GOODS_STOCK_KEY_PREFIX + activityId + "_" + goodsId;
-            
-            for (Map.Entry<String, String> entry : logs.entrySet()) {
-                String identifier = entry.getKey();
-                String value = entry.getValue();
-                handleGoodsStockLogEntry(stockKey, logKey, activityId, goodsId, identifier, value);
-                processedCount++;
-            }
+    private int[] compensateJournal(String journalKey) {
+        // journalKey 格式：group_buy_market_stock_journal_{activityId}_{goodsId}
+        String sku = journalKey.substring(STOCK_JOURNAL_KEY_PREFIX.length());
+        String stockKey = GOODS_STOCK_KEY_PREFIX + sku;
+        String logKey = GOODS_STOCK_LOG_KEY_PREFIX + sku;
+
+        int[] result = new int[2];
+        // 1. 上次未确认的流水（未到时间阈值、回滚失败）
+        String afterId = null;
+        while (result[0] < MAX_ENTRIES_PER_RUN) {
+            List<StockJournalEntryVO> entries = redisAdapter.readStockJournal(journalKey, StockJournalGroupEnumVO.COMPENSATION,
+                    CONSUMER, READ_COUNT, true, afterId);
+            if (entries.isEmpty()) break;
+            handleEntries(journalKey, stockKey, logKey, entries, result);
+            afterId = entries.get(entries.size() - 1).getId();
         }
-        
-        log.info("商品库存流水检查完成，处理数量: {}", processedCount);
+
+        // 2. 新流水
+        while (result[0] < MAX_ENTRIES_PER_RUN) {
+            List<StockJournalEntryVO> entries = redisAdapter.readStockJournal(journalKey, StockJournalGroupEnumVO.COMPENSATION,
+                    CONSUMER, READ_COUNT, false, null);
+            if (entries.isEmpty()) break;
+            // 流水按时间有序，读到未到时间阈值的流水后不再继续读取
+            if (!handleEntries(journalKey, stockKey, logKey, entries, result)) break;
+        }
+        return result;
     }
 
     /**
-     * 检查并补偿队伍库存
+     * @return 本批流水是否全部超过时间阈值
      */
-    private void checkAndCompensateTeamStock() {
-        log.info("开始检查队伍库存流水");
-        Iterable<String> logKeys = redisAdapter.scanStockLogKeys(TEAM_STOCK_LOG_KEY_PREFIX + "*");
-        int processedCount = 0;
-        
-        for (String logKey : logKeys) {
-            Map<String, String> logs = redisAdapter.getAllStockDecreaseLogs(logKey);
-            if (logs == null || logs.isEmpty()) {
-                continue;
+    private boolean handleEntries(String journalKey, String stockKey, String logKey, List<StockJournalEntryVO> entries, int[] result) {
+        List<String> ackIds = new ArrayList<>(entries.size());
+        boolean allExpired = true;
+        for (StockJournalEntryVO entry : entries) {
+            result[0]++;
+            EntryResult entryResult = handleEntry(stockKey, logKey, entry);
+            if (EntryResult.COMPENSATED == entryResult) {
+                result[1]++;
             }
-            
-            // 解析 logKey 获取 activityId 和 teamId
-            // logKey 格式：group_buy_market_team_stock_log_{activityId}_{teamId}
-            String keyWithoutPrefix = logKey.replace(TEAM_STOCK_LOG_KEY_PREFIX, "");
-            String[] parts = keyWithoutPrefix.split("_", 2);
-            if (parts.length < 2) {
-                log.warn("队伍库存流水key格式错误，跳过: logKey={}", logKey);
-                continue;
+            if (EntryResult.TOO_EARLY == entryResult) {
+                allExpired = false;
             }
-            
-            String activityId = parts[0];
-            String teamId = parts[1];
-            String stockKey = TEAM_STOCK_KEY_PREFIX + activityId + "_" + teamId;
-            
-            for (Map.Entry<String, String> entry : logs.entrySet()) {
-                String identifier = entry.getKey();
-                String value = entry.getValue();
-                handleTeamStockLogEntry(stockKey, logKey, activityId, teamId, identifier, value);
-                processedCount++;
+            if (EntryResult.TOO_EARLY != entryResult && EntryResult.FAILED != entryResult) {
+                ackIds.add(entry.getId());
             }
         }
-        
-        log.info("队伍库存流水检查完成，处理数量: {}", processedCount);
+        redisAdapter.ackStockJournal(journalKey, StockJournalGroupEnumVO.COMPENSATION, ackIds);
+        return allExpired;
     }
 
     /**
-     * 处理商品库存流水
+     * 处理单条库存流水
      */
-    private void handleGoodsStockLogEntry(String stockKey, String logKey, String activityId, String goodsId, 
-                                         String identifier, String value) {
-        if (value == null) {
-            return;
+    private EntryResult handleEntry(String stockKey, String logKey, StockJournalEntryVO entry) {
+        // 只处理扣减操作，回滚流水、已被裁剪的流水直接确认
+        if (!entry.isDecrease()) {
+            return EntryResult.DONE;
         }
-        JSONObject jsonObject = JSON.parseObject(value);
-        if (!"decrease".equalsIgnoreCase(jsonObject.getString("action"))) {
-            return;
-        }
-        long timestamp = jsonObject.getLongValue("timestamp");
+        long timestamp = entry.getTimestamp() == null ? 0L : entry.getTimestamp();
         if (System.currentTimeMillis() - timestamp < CHECK_THRESHOLD_MS) {
-            return;
+            return EntryResult.TOO_EARLY;
         }
-        
-        String[] parts = identifier.split("_", 3);
-        if (parts.length < 3) {
-            log.warn("商品库存流水identifier格式错误，清理流水: identifier={}, logKey={}", identifier, logKey);
-            redisAdapter.removeStockDecreaseLog(logKey, identifier);
-            return;
+
+        String identifier = entry.getIdentifier();
+        String userId = entry.extractUserId();
+        String orderId = entry.extractOrderId();
+        if (null == orderId) {
+            log.warn("商品库存流水identifier格式错误，跳过: identifier={}, logKey={}", identifier, logKey);
+            return EntryResult.DONE;
         }
-        
-        String userId = parts[1];
-        String orderId = parts[2];
-        
-        // 检查订单是否已落库
-        MarketPayOrderEntity order = tradeRepository.queryMarketPayOrderEntityByOrderId(userId, orderId);
-        if (order != null) {
-            redisAdapter.removeStockDecreaseLog(logKey, identifier);
-            log.info("商品库存补偿检查：已落库，清理流水 activityId={}, goodsId={}, orderId={}", 
-                    activityId, goodsId, orderId);
-            return;
+
+        try {
+            // 检查订单是否已落库
+            MarketPayOrderEntity order = tradeRepository.queryMarketPayOrderEntityByOrderId(userId, orderId);
+            if (order != null) {
+                redisAdapter.removeStockDecreaseLog(logKey, identifier);
+                log.info("商品库存补偿检查：已落库，清理流水 stockKey={}, orderId={}", stockKey, orderId);
+                return EntryResult.DONE;
+            }
+
+            // 订单未落库，按准入流水回滚商品库存、队伍名额与用户参与次数
+            StockAdmissionEntity admission = StockAdmissionEntity.builder()
+                    .orderId(orderId)
+                    .identifier(identifier)
+                    .goodsStockKey(stockKey)
+                    .goodsStockLogKey(logKey)
+                    .count(entry.getChange())
+                    .userTakeKey(entry.getUserTakeKey())
+                    .teamStockKey(entry.getTeamStockKey())
+                    .teamStockLogKey(entry.getTeamStockLogKey())
+                    .build();
+            StockAdmissionCodeEnumVO code = redisAdapter.compensateOrder(admission).getCode();
+            if (StockAdmissionCodeEnumVO.ERROR == code) {
+                log.error("商品库存补偿执行失败，下次重试: stockKey={}, orderId={}", stockKey, orderId);
+                return EntryResult.FAILED;
+            }
+            if (StockAdmissionCodeEnumVO.SUCCESS == code) {
+                log.warn("商品库存补偿执行：回滚库存成功 stockKey={}, teamStockKey={}, orderId={}, rollback={}",
+                        stockKey, entry.getTeamStockKey(), orderId, entry.getChange());
+                return EntryResult.COMPENSATED;
+            }
+            // DUPLICATE / NOT_ADMITTED：已被其他流程回滚
+            return EntryResult.DONE;
+        } catch (Exception e) {
+            log.error("商品库存补偿执行异常，下次重试: stockKey={}, orderId={}", stockKey, orderId, e);
+            return EntryResult.FAILED;
         }
-        
-        // 订单未落库，回滚商品库存
-        int change = jsonObject.getIntValue("change");
-        String rollbackIdentifier = identifier.replaceFirst("DECREASE_", "INCREASE_");
-        redisAdapter.increaseStockWithLog(stockKey, logKey, rollbackIdentifier, change);
-        redisAdapter.removeStockDecreaseLog(logKey, identifier);
-        log.warn("商品库存补偿执行：回滚库存成功 activityId={}, goodsId={}, orderId={}, rollback={}", 
-                activityId, goodsId, orderId, change);
     }
 
-    /**
-     * 处理队伍库存流水
-     */
-    private void handleTeamStockLogEntry(String stockKey, String logKey, String activityId, String teamId, 
-                                        String identifier, String value) {
-        if (value == null) {
-            return;
-        }
-        JSONObject jsonObject = JSON.parseObject(value);
-        if (!"decrease".equalsIgnoreCase(jsonObject.getString("action"))) {
-            return;
-        }
-        long timestamp = jsonObject.getLongValue("timestamp");
-        if (System.currentTimeMillis() - timestamp < CHECK_THRESHOLD_MS) {
-            return;
-        }
-        
-        String[] parts = identifier.split("_", 3);
-        if (parts.length < 3) {
-            log.warn("队伍库存流水identifier格式错误，清理流水: identifier={}, logKey={}", identifier, logKey);
-            redisAdapter.removeStockDecreaseLog(logKey, identifier);
-            return;
-        }
-        
-        String userId = parts[1];
-        String orderId = parts[2];
-        
-        // 检查订单是否已落库
-        MarketPayOrderEntity order = tradeRepository.queryMarketPayOrderEntityByOrderId(userId, orderId);
-        if (order != null) {
-            redisAdapter.removeStockDecreaseLog(logKey, identifier);
-            log.info("队伍库存补偿检查：已落库，清理流水 activityId={}, teamId={}, orderId={}", 
-                    activityId, teamId, orderId);
-            return;
-        }
-        
-        // 订单未落库，回滚队伍库存
-        int change = jsonObject.getIntValue("change");
-        String rollbackIdentifier = identifier.replaceFirst("DECREASE_", "INCREASE_");
-        redisAdapter.increaseStockWithLog(stockKey, logKey, rollbackIdentifier, change);
-        redisAdapter.removeStockDecreaseLog(logKey, identifier);
-        log.warn("队伍库存补偿执行：回滚库存成功 activityId={}, teamId={}, orderId={}, rollback={}", 
-                activityId, teamId, orderId, change);
+    private enum EntryResult {
+        /** 已处理，可以确认 */
+        DONE,
+        /** 已回滚库存，可以确认 */
+        COMPENSATED,
+        /** 未到时间阈值，不确认 */
+        TOO_EARLY,
+        /** 处理失败，不确认 */
+        FAILED
     }
 }
-
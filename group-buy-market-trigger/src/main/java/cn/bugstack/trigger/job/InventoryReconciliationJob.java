@@ -3,8 +3,10 @@ package cn.bugstack.trigger.job;
 import cn.bugstack.domain.trade.adapter.port.IRedisAdapter;
 import cn.bugstack.domain.trade.adapter.repository.IInventoryDeductionLogRepository;
 import cn.bugstack.domain.trade.model.entity.InventoryDeductionLogEntity;
-import cn.bugstack.domain.trade.model.vo.RedisStockLogVO;
-import com.alibaba.fastjson.JSON;
+import cn.bugstack.domain.trade.model.valobj.StockJournalEntryVO;
+import cn.bugstack.domain.trade.model.valobj.StockJournalGroupEnumVO;
+import cn.bugstack.types.workload.Workload;
+import cn.bugstack.types.workload.WorkloadType;
 import com.xxl.job.core.biz.model.ReturnT;
 import com.xxl.job.core.handler.annotation.XxlJob;
 import lombok.extern.slf4j.Slf4j;
@@ -13,6 +15,8 @@ import org.redisson.api.RedissonClient;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
@@ -20,25 +24,44 @@ import java.util.concurrent.TimeUnit;
  * 库存对账任务（参考 NFTurbo）
  * 
  * 功能：
- * 1. 扫描 Redis 库存扣减流水
+ * 1. 以 reconciliation 消费组增量读取库存流水 Stream（先处理上次未确认的流水，再读取新流水）
  * 2. 根据 orderId（幂等号）查询数据库流水
  * 3. 对比 Redis 和数据库的扣减数量是否一致
- * 4. 处理不一致的情况（告警，不删除 Redis 流水）
+ * 4. 处理不一致的情况（告警，不确认 Stream 流水）
  * 
  * ⭐ 参考 NFTurbo 设计：
- * - 只有数据一致时才删除 Redis 流水
- * - 不一致时只告警，不删除 Redis 流水，等待补偿任务或人工处理
+ * - 只有数据一致时才确认流水（XACK 即对账完成），同时删除幂等索引中的扣减记录
+ * - 不一致时只告警，不确认，流水保留在消费组未确认列表中，每次执行重新核对，等待补偿任务或人工处理
+ * - 数据库流水缺失但扣减记录已被补偿任务回滚时视为已处理，确认流水
  * - 不处理"数据库有流水但 Redis 没有"的情况（需要反向扫描，暂未实现）
+ * - 旁路验证（bypass_verify 消费组）读取后未核验或核验不一致的流水，同样由本任务兜底清理
+ *
+ * 库存租约（StockQuotaLeaseManager）：
+ * - 商品库存 + 各节点未核销租约 + 已扣减流水 = 初始库存，存活节点的租约只统计不处理
+ * - 节点心跳过期（宕机）时回收其租约，归还到商品库存
  * 
  * 执行频率：在 XXL-Job 管理平台配置（建议每分钟执行一次）
  * 时间阈值：只处理3秒之前的数据，避免和旁路验证冲突
+ * 执行完成后裁剪全部消费组都已确认的流水
  */
 @Slf4j
 @Component
+@Workload(WorkloadType.BATCH)
 public class InventoryReconciliationJob {
 
     // 商品库存流水前缀
     private static final String GOODS_STOCK_LOG_KEY_PREFIX = "group_buy_market_goods_stock_log_";
+    // 库存流水 Stream 前缀（与 RedisAdapterImpl 保持一致）
+    private static final String STOCK_JOURNAL_KEY_PREFIX = "group_buy_market_stock_journal_";
+    // 固定消费者名称，任务在不同节点执行时可以继续处理上次未确认的流水
+    private static final String CONSUMER = "inventory_reconciliation_job";
+    // 单次读取流水条数、单个 Stream 每次执行最多处理条数
+    private static final int READ_COUNT = 200;
+    private static final int MAX_ENTRIES_PER_RUN = 10000;
+    // 商品库存前缀
+    private static final String GOODS_STOCK_KEY_PREFIX = "group_buy_market_goods_stock_";
+    // 库存租约前缀（与 StockQuotaLeaseManager 保持一致）
+    private static final String STOCK_LEASE_KEY_PREFIX = "group_buy_market_stock_lease_";
     // 对账时间阈值（超过此时间的流水才进行对账，避免检查刚生成的流水）
     // 参考NFTurbo实现：只处理3秒之前的数据，避免出现清理后导致重复扣减
     private static final long CHECK_THRESHOLD_MS = 3000L;
@@ -71,46 +94,28 @@ public class InventoryReconciliationJob {
             
             log.info("库存对账任务开始执行");
             
-            // 1. 扫描所有商品库存流水
-            Iterable<String> logKeys = redisAdapter.scanStockLogKeys(GOODS_STOCK_LOG_KEY_PREFIX + "*");
-            int totalLogs = 0;
-            int reconciledLogs = 0;
-            int inconsistentLogs = 0;
-            int missingDbLogs = 0;
-            
-            for (String logKey : logKeys) {
-                Map<String, String> redisLogs = redisAdapter.getAllStockDecreaseLogs(logKey);
-                if (redisLogs == null || redisLogs.isEmpty()) {
-                    continue;
-                }
-                
-                // 2. 对每条 Redis 流水进行对账
-                for (Map.Entry<String, String> entry : redisLogs.entrySet()) {
-                    String identifier = entry.getKey();
-                    String value = entry.getValue();
-                    
-                    totalLogs++;
-                    ReconciliationResult result = reconcileLog(logKey, identifier, value);
-                    
-                    switch (result) {
-                        case RECONCILED:
-                            reconciledLogs++;
-                            break;
-                        case INCONSISTENT:
-                            inconsistentLogs++;
-                            break;
-                        case MISSING_DB:
-                            missingDbLogs++;
-                            break;
-                        case SKIPPED:
-                            // 跳过（时间太短，等待下次对账）
-                            break;
-                    }
+            // 1. 逐个 SKU 增量读取库存流水
+            int[] stats = new int[4];
+            long trimmedLogs = 0;
+            for (String journalKey : redisAdapter.scanStockLogKeys(STOCK_JOURNAL_KEY_PREFIX + "*")) {
+                try {
+                    reconcileJournal(journalKey, stats);
+                    // 2. 裁剪全部消费组都已确认的流水
+                    trimmedLogs += redisAdapter.trimStockJournal(journalKey);
+                } catch (Exception e) {
+                    log.error("对账任务处理流水异常: journalKey={}", journalKey, e);
                 }
             }
+            int totalLogs = stats[0];
+            int reconciledLogs = stats[1];
+            int inconsistentLogs = stats[2];
+            int missingDbLogs = stats[3];
             
-            log.info("库存对账任务执行完成: 总流水={}, 已对账={}, 不一致={}, 缺失DB流水={}",
-                    totalLogs, reconciledLogs, inconsistentLogs, missingDbLogs);
+            log.info("库存对账任务执行完成: 总流水={}, 已对账={}, 不一致={}, 缺失DB流水={}, 裁剪流水={}",
+                    totalLogs, reconciledLogs, inconsistentLogs, missingDbLogs, trimmedLogs);
+
+            // 3. 统计租约占用，回收宕机节点的租约
+            reconcileLeases();
             
             return ReturnT.SUCCESS;
                     
@@ -124,27 +129,88 @@ public class InventoryReconciliationJob {
         }
     }
 
+    /**
+     * 对账单个 SKU 的库存流水：先处理上次未确认的流水，再读取新流水
+     *
+     * @param stats {总流水, 已对账, 不一致, 缺失DB流水}
+     */
+    private void reconcileJournal(String journalKey, int[] stats) {
+        // journalKey 格式：group_buy_market_stock_journal_{activityId}_{goodsId}
+        String logKey = GOODS_STOCK_LOG_KEY_PREFIX + journalKey.substring(STOCK_JOURNAL_KEY_PREFIX.length());
+        int processed = 0;
+
+        String afterId = null;
+        while (processed < MAX_ENTRIES_PER_RUN) {
+            List<StockJournalEntryVO> entries = redisAdapter.readStockJournal(journalKey, StockJournalGroupEnumVO.RECONCILIATION,
+                    CONSUMER, READ_COUNT, true, afterId);
+            if (entries.isEmpty()) break;
+            reconcileEntries(journalKey, logKey, entries, stats);
+            processed += entries.size();
+            afterId = entries.get(entries.size() - 1).getId();
+        }
+
+        while (processed < MAX_ENTRIES_PER_RUN) {
+            List<StockJournalEntryVO> entries = redisAdapter.readStockJournal(journalKey, StockJournalGroupEnumVO.RECONCILIATION,
+                    CONSUMER, READ_COUNT, false, null);
+            if (entries.isEmpty()) break;
+            processed += entries.size();
+            // 流水按时间有序，读到未到时间阈值的流水后不再继续读取
+            if (!reconcileEntries(journalKey, logKey, entries, stats)) break;
+        }
+    }
+
+    /**
+     * @return 本批流水是否全部超过时间阈值
+     */
+    private boolean reconcileEntries(String journalKey, String logKey, List<StockJournalEntryVO> entries, int[] stats) {
+        List<String> ackIds = new ArrayList<>(entries.size());
+        boolean allExpired = true;
+        for (StockJournalEntryVO entry : entries) {
+            stats[0]++;
+            ReconciliationResult result = reconcileLog(logKey, entry);
+            switch (result) {
+                case RECONCILED:
+                    stats[1]++;
+                    ackIds.add(entry.getId());
+                    break;
+                case INCONSISTENT:
+                    stats[2]++;
+                    break;
+                case MISSING_DB:
+                    stats[3]++;
+                    break;
+                case TOO_EARLY:
+                    allExpired = false;
+                    break;
+                case SKIPPED:
+                    // 非扣减流水或无法对账的流水，无需再次处理
+                    ackIds.add(entry.getId());
+                    break;
+            }
+        }
+        redisAdapter.ackStockJournal(journalKey, StockJournalGroupEnumVO.RECONCILIATION, ackIds);
+        return allExpired;
+    }
+
     /**
      * 对单条流水进行对账
      * 
-     * @param logKey Redis Hash 的 key
-     * @param identifier Redis Hash 的 field（DECREASE_userId_orderId）
-     * @param value Redis Hash 的 value（JSON 字符串）
+     * @param logKey 商品库存流水 Hash（幂等索引）的 key
+     * @param redisLog Stream 中的库存流水
      * @return 对账结果
      */
-    private ReconciliationResult reconcileLog(String logKey, String identifier, String value) {
+    private ReconciliationResult reconcileLog(String logKey, StockJournalEntryVO redisLog) {
+        String identifier = redisLog.getIdentifier();
         try {
-            // 1. 解析 Redis 流水
-            RedisStockLogVO redisLog = JSON.parseObject(value, RedisStockLogVO.class);
-            if (redisLog == null || !"decrease".equalsIgnoreCase(redisLog.getAction())) {
-                // 只处理扣减操作，忽略回滚等其他操作
+            // 1. 只处理扣减操作，忽略回滚等其他操作
+            if (!redisLog.isDecrease()) {
                 return ReconciliationResult.SKIPPED;
             }
             
             // 2. 检查时间阈值（避免检查刚生成的流水）
             long timestamp = redisLog.getTimestamp() != null ? redisLog.getTimestamp() : 0;
             if (System.currentTimeMillis() - timestamp < CHECK_THRESHOLD_MS) {
-                return ReconciliationResult.SKIPPED;
+                return ReconciliationResult.TOO_EARLY;
             }
             
             // 3. 提取 orderId（幂等号）
@@ -158,6 +224,11 @@ public class InventoryReconciliationJob {
             InventoryDeductionLogEntity dbLog = inventoryDeductionLogRepository.queryByOrderId(orderId);
             
             if (dbLog == null) {
+                // 扣减记录已不在幂等索引中：已被补偿任务（或下单失败补偿）回滚，无需对账
+                if (null == redisAdapter.getStockDecreaseLog(logKey, identifier)) {
+                    log.info("对账跳过-扣减已回滚: orderId={}, identifier={}", orderId, identifier);
+                    return ReconciliationResult.RECONCILED;
+                }
                 // 情况1：Redis 有流水，数据库无流水
                 // 参考 NFTurbo：不一致时不删除 Redis 流水，只告警，等待补偿任务处理
                 // NFTurbo 的做法：
@@ -165,7 +236,7 @@ public class InventoryReconciliationJob {
                 // 2. 补偿任务会检查订单是否已落库，如果未落库就回滚库存并删除扣减流水
                 // 3. 如果订单已落库，说明是假失败，补偿任务会删除扣减流水
                 log.error("对账不一致-数据库流水缺失: orderId={}, redisChange={}, identifier={}, logKey={}",
-                        orderId, redisLog.getChangeAsInteger(), identifier, logKey);
+                        orderId, redisLog.getChange(), identifier, logKey);
                 // 不删除 Redis 流水，等待补偿任务处理（回滚库存或检查订单状态）
                 return ReconciliationResult.MISSING_DB;
             }
@@ -176,13 +247,13 @@ public class InventoryReconciliationJob {
             // 1. 防御性编程：防止未来代码变更（如支持批量扣减）导致的不一致
             // 2. 数据完整性验证：确保流水记录的数据是正确的
             // 3. 异常检测：如果出现数量不一致，说明系统有bug或异常（如数据被手动修改）
-            Integer redisChange = redisLog.getChangeAsInteger();
+            Integer redisChange = redisLog.getChange();
             Integer dbQuantity = dbLog.getQuantity();
             
             if (redisChange == null || dbQuantity == null) {
                 log.warn("对账失败-扣减数量为空: orderId={}, redisChange={}, dbQuantity={}",
                         orderId, redisChange, dbQuantity);
-                return ReconciliationResult.SKIPPED;
+                return ReconciliationResult.INCONSISTENT;
             }
             
             if (!redisChange.equals(dbQuantity)) {
@@ -207,7 +278,7 @@ public class InventoryReconciliationJob {
             if (frozenChange == null) {
                 log.warn("对账失败-冻结库存数据为空: orderId={}, beforeFrozen={}, afterFrozen={}",
                         orderId, dbLog.getBeforeFrozen(), dbLog.getAfterFrozen());
-                return ReconciliationResult.SKIPPED;
+                return ReconciliationResult.INCONSISTENT;
             }
             
             if (!frozenChange.equals(dbQuantity)) {
@@ -226,29 +297,72 @@ public class InventoryReconciliationJob {
             // 对账只验证：1) 扣减数量一致 2) 冻结库存变化一致
             // 不验证可售库存变化，因为支付后可能会变化
             
-            // 8. 所有验证通过，数据一致，删除 Redis 流水
+            // 8. 所有验证通过，数据一致，删除幂等索引中的扣减记录，由调用方确认 Stream 流水
             redisAdapter.removeStockDecreaseLog(logKey, identifier);
             log.debug("对账成功-数据一致，已清理Redis流水: orderId={}, quantity={}, frozenChange={}",
                     orderId, dbQuantity, frozenChange);
             return ReconciliationResult.RECONCILED;
             
         } catch (Exception e) {
+            // 异常时不确认，下次执行重新对账
             log.error("对账异常: identifier={}, error={}", identifier, e.getMessage(), e);
-            return ReconciliationResult.SKIPPED;
+            return ReconciliationResult.TOO_EARLY;
+        }
+    }
+
+    /**
+     * 租约对账：存活节点的未核销租约计入库存占用，宕机节点的租约归还到商品库存
+     * <p>
+     * 宕机节点最后一个刷新周期内未写入的流水会随租约一起归还，这部分订单由数据库库存条件扣减兜底；
+     * 节点只是心跳中断（GC、网络分区）时，心跳过期前已停止使用本地租约，恢复后读到新纪元丢弃本地剩余租约
+     */
+    private void reconcileLeases() {
+        Iterable<String> leaseKeys = redisAdapter.scanStockLogKeys(STOCK_LEASE_KEY_PREFIX + "*");
+        long outstanding = 0;
+        long reclaimed = 0;
+        for (String leaseKey : leaseKeys) {
+            try {
+                Map<String, String> leases = redisAdapter.getStockLeases(leaseKey);
+                if (leases == null || leases.isEmpty()) {
+                    continue;
+                }
+                String stockKey = GOODS_STOCK_KEY_PREFIX + leaseKey.substring(STOCK_LEASE_KEY_PREFIX.length());
+                for (Map.Entry<String, String> entry : leases.entrySet()) {
+                    String nodeId = entry.getKey();
+                    int count = Integer.parseInt(entry.getValue());
+                    if (count <= 0) {
+                        continue;
+                    }
+                    if (redisAdapter.isLeaseNodeAlive(nodeId)) {
+                        outstanding += count;
+                        continue;
+                    }
+                    // 脚本内再次确认心跳已过期，回收后递增节点纪元，节点恢复后不再使用本地剩余租约
+                    long returned = redisAdapter.reclaimStockLease(stockKey, leaseKey, nodeId);
+                    reclaimed += returned;
+                    log.warn("租约对账-节点心跳过期，回收租约: stockKey={}, nodeId={}, count={}, returned={}",
+                            stockKey, nodeId, count, returned);
+                }
+            } catch (Exception e) {
+                log.error("租约对账异常: leaseKey={}", leaseKey, e);
+            }
         }
+        log.info("租约对账完成: 存活节点未核销租约={}, 回收宕机节点租约={}", outstanding, reclaimed);
     }
 
     /**
      * 对账结果枚举
      */
     private enum ReconciliationResult {
-        /** 已对账（数据一致，已清理） */
+        /** 已对账（数据一致或已回滚，确认流水） */
         RECONCILED,
         /** 不一致（扣减数量不匹配） */
         INCONSISTENT,
         /** 缺失DB流水（Redis有，DB无） */
         MISSING_DB,
-        /** 跳过（时间太短或其他原因） */
+        /** 未到时间阈值（或对账异常），不确认，下次执行重新对账 */
+        TOO_EARLY,
+        /** 跳过（非扣减流水或无法对账），确认后不再处理 */
         SKIPPED
     }
 }
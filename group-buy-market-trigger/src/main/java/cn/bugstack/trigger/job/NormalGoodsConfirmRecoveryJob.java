@@ -0,0 +1,67 @@
+package cn.bugstack.trigger.job;
+
+import cn.bugstack.domain.trade.service.INormalGoodsTradeService;
+import cn.bugstack.types.workload.Workload;
+import cn.bugstack.types.workload.WorkloadType;
+import com.xxl.job.core.biz.model.ReturnT;
+import com.xxl.job.core.handler.annotation.XxlJob;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 普通商品 TCC Confirm 恢复任务
+ *
+ * 功能：
+ * 1. Confirm 改为异步组提交后，Try 成功即返回，Confirm 在内存队列中等待提交
+ * 2. 进程崩溃、重启时队列中的 Confirm 丢失，订单停留在 TRY 状态
+ * 3. 扫描停留在 TRY 状态的订单，重新执行 Confirm（库存扣减、订单状态更新均幂等）
+ *
+ * 时间阈值：只处理 TRY 状态超过2分钟的订单。
+ * Confirm 失败时发送的疑似废单消息延迟1分钟，超过该时间仍为 TRY 的订单才是未被处理的订单，避免和疑似废单处理冲突。
+ *
+ * 执行频率：在 XXL-Job 管理平台配置（建议每分钟执行一次）
+ */
+@Slf4j
+@Component
+@Workload(WorkloadType.BATCH)
+public class NormalGoodsConfirmRecoveryJob {
+
+    private static final long TRY_TIMEOUT_MS = 2 * 60 * 1000L;
+    private static final int BATCH_LIMIT = 200;
+    private static final String LOCK_KEY = "group_buy_market_normal_goods_confirm_recovery_job";
+
+    @Resource
+    private INormalGoodsTradeService normalGoodsTradeService;
+    @Resource
+    private RedissonClient redissonClient;
+
+    @XxlJob("normalGoodsConfirmRecoveryJob")
+    public ReturnT<String> exec() {
+        RLock lock = redissonClient.getLock(LOCK_KEY);
+        boolean locked = false;
+        try {
+            locked = lock.tryLock(3, 0, TimeUnit.SECONDS);
+            if (!locked) {
+                log.warn("Confirm恢复任务获取锁失败，跳过本次执行");
+                return ReturnT.SUCCESS;
+            }
+
+            int recoverCount = normalGoodsTradeService.recoverTryOrders(TRY_TIMEOUT_MS, BATCH_LIMIT);
+            log.info("Confirm恢复任务执行完成，处理数量: {}", recoverCount);
+            return ReturnT.SUCCESS;
+        } catch (Exception e) {
+            log.error("Confirm恢复任务执行异常", e);
+            return ReturnT.FAIL;
+        } finally {
+            if (locked && lock.isHeldByCurrentThread()) {
+                lock.unlock();
+            }
+        }
+    }
+
+}
@@ -3,6 +3,8 @@ package cn.bugstack.trigger.job;
 import cn.bugstack.domain.activity.model.entity.UserGroupBuyOrderDetailEntity;
 import cn.bugstack.domain.trade.model.entity.TradeRefundCommandEntity;
 import cn.bugstack.domain.trade.service.ITradeRefundOrderService;
+import cn.bugstack.types.workload.Workload;
+import cn.bugstack.types.workload.WorkloadType;
 import com.alibaba.fastjson.JSON;
 import lombok.extern.slf4j.Slf4j;
 import org.redisson.api.RLock;
@@ -21,6 +23,7 @@ import java.util.concurrent.TimeUnit;
  */
 @Slf4j
 @Service
+@Workload(WorkloadType.BATCH)
 public class TimeoutRefundJob {
 
     @Resource
@@ -3,6 +3,11 @@ package cn.bugstack.trigger.listener;
 import cn.bugstack.domain.trade.adapter.port.IRedisAdapter;
 import cn.bugstack.domain.trade.adapter.repository.ITradeRepository;
 import cn.bugstack.domain.trade.model.aggregate.HotGoodsOrderAggregate;
+import cn.bugstack.domain.trade.model.entity.StockAdmissionEntity;
+import cn.bugstack.domain.trade.model.entity.StockDeltaEntity;
+import cn.bugstack.domain.trade.model.valobj.StockAdmissionResultVO;
+import cn.bugstack.domain.trade.service.hot.StockDeltaSynchronizer;
+import cn.bugstack.domain.trade.service.lock.factory.TradeLockRuleFilterFactory;
 import cn.bugstack.infrastructure.mq.consumer.AbstractStreamConsumer;
 import cn.bugstack.infrastructure.mq.param.MessageBody;
 import lombok.extern.slf4j.Slf4j;
@@ -11,6 +16,9 @@ import org.springframework.messaging.Message;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Consumer;
 
 /**
@@ -19,17 +27,18 @@ import java.util.function.Consumer;
  * 参考 NFTurbo 的 NewBuyPlusMsgListener.newBuyPlusCancel
  * 使用 Spring Cloud Stream 的 Consumer 方式
  * 
- * 处理 hotGoodsOrderCancel 消息：
- * 1. 回滚 Redis 库存
- * 2. 取消订单（如果订单存在）
+ * 处理 hotGoodsOrderCancel 消息（支持批量消费）：
+ * 1. 回滚 Redis 库存与用户参与次数
+ * 2. 释放数据库冻结库存（提交到 StockDeltaSynchronizer 按 SKU 合并释放）
+ * 3. 取消订单（如果订单存在）
  * 
  * 使用场景：
  * - 当订单已创建但责任链校验失败时（活动无效、用户参与次数超限等），发送取消消息
  * - 保证库存回滚和订单取消的一致性
  * 
  * 注意：
- * - 只回滚 Redis 库存，不释放数据库冻结库存
- * - 因为在这个场景下，数据库库存可能还没有扣减（数据库库存扣减在消息监听器中补偿）
+ * - 数据库库存可能还没有扣减（数据库库存扣减在订单创建消息监听器中异步执行）
+ * - 释放按流水状态幂等：已冻结则释放；尚未冻结则写入 CANCEL 流水，迟到的冻结按流水跳过
  * 
  * @author liang.tian
  */
@@ -42,25 +51,54 @@ public class HotGoodsOrderCancelListener extends AbstractStreamConsumer {
     
     @Resource
     private IRedisAdapter redisAdapter;
+
+    @Resource
+    private StockDeltaSynchronizer stockDeltaSynchronizer;
     
     // 商品库存键前缀
     private static final String GOODS_STOCK_KEY_PREFIX = "group_buy_market_goods_stock_";
     private static final String GOODS_STOCK_LOG_KEY_PREFIX = "group_buy_market_goods_stock_log_";
 
     @Bean
-    Consumer<Message<MessageBody>> hotGoodsOrderCancel() {
-        return msg -> {
+    Consumer<Object> hotGoodsOrderCancel() {
+        return input -> {
             try {
-                log.warn("热点商品订单取消消息-收到消息");
-                
-                // 1. 解析消息（参考 NFTurbo）
-                HotGoodsOrderAggregate aggregate = getMessage(msg, HotGoodsOrderAggregate.class);
-                String orderId = aggregate.getOrderId();
+                List<Message<MessageBody>> msgs = toMessages(input);
+                log.warn("热点商品订单取消消息-收到消息，消息数量: {}", msgs.size());
+
+                // 1. 解析消息（参考 NFTurbo），回滚 Redis 库存并提交数据库冻结库存释放
+                List<HotGoodsOrderAggregate> aggregates = new ArrayList<>(msgs.size());
+                List<CompletableFuture<Boolean>> futures = new ArrayList<>(msgs.size());
+                for (Message<MessageBody> msg : msgs) {
+                    HotGoodsOrderAggregate aggregate = getMessage(msg, HotGoodsOrderAggregate.class);
+                    rollbackRedisStock(aggregate);
+                    futures.add(stockDeltaSynchronizer.submitRelease(StockDeltaEntity.builder()
+                            .orderId(aggregate.getOrderId())
+                            .userId(aggregate.getUserEntity().getUserId())
+                            .activityId(aggregate.getPayActivityEntity().getActivityId())
+                            .goodsId(aggregate.getPayDiscountEntity().getGoodsId())
+                            .quantity(1)
+                            .build()));
+                    aggregates.add(aggregate);
+                }
 
-                // 2. 执行取消操作
-                doCancel(aggregate);
+                // 2. 等待释放结果（有界等待），释放成功的订单执行取消
+                List<Boolean> results = stockDeltaSynchronizer.await(futures);
+                String failedOrderId = null;
+                for (int i = 0; i < aggregates.size(); i++) {
+                    if (!results.get(i)) {
+                        failedOrderId = aggregates.get(i).getOrderId();
+                        continue;
+                    }
+                    doCancel(aggregates.get(i));
+                }
 
-                log.info("热点商品订单取消消息-处理成功: orderId={}", orderId);
+                // 3. 有释放失败的订单时整批重试（Redis 回滚按回滚标记、数据库释放按流水状态幂等）
+                if (failedOrderId != null) {
+                    throw new RuntimeException("热点商品订单取消消息-释放数据库冻结库存失败，失败订单: " + failedOrderId);
+                }
+
+                log.info("热点商品订单取消消息-处理成功，消息数量: {}", msgs.size());
             } catch (Exception e) {
                 log.error("热点商品订单取消消息-处理失败", e);
                 throw new RuntimeException("热点商品订单取消消息处理失败", e);
@@ -69,42 +107,45 @@ public class HotGoodsOrderCancelListener extends AbstractStreamConsumer {
     }
 
     /**
-     * 执行取消操作
+     * 回滚 Redis 库存与用户参与次数（参考 NFTurbo: inventoryFacadeService.increase()）
      * 
-     * 对标 NFTurbo 的 NewBuyPlusMsgListener.doCancel（但简化了，因为热点商品不做拼团）
-     * 参考 NFTurbo: inventoryTransactionFacadeService.cancelDecrease() + orderTransactionFacadeService.cancelOrder()
-     * 
-     * 注意：
-     * - 只回滚 Redis 库存，不释放数据库冻结库存
-     * - 因为在这个场景下（责任链校验失败），数据库库存可能还没有扣减
-     * - 数据库库存扣减在消息监听器中补偿，如果校验失败，说明补偿还没执行
+     * 订单已创建，扣减流水可能已被对账删除，按准入标识回滚，与 Try 失败补偿共用回滚标记，同一订单只回滚一次
      */
-    private void doCancel(HotGoodsOrderAggregate aggregate) {
+    private void rollbackRedisStock(HotGoodsOrderAggregate aggregate) {
         String orderId = aggregate.getOrderId();
+        String userId = aggregate.getUserEntity().getUserId();
         Long activityId = aggregate.getPayActivityEntity().getActivityId();
         String goodsId = aggregate.getPayDiscountEntity().getGoodsId();
 
-        // 1. 回滚 Redis 库存（参考 NFTurbo: inventoryFacadeService.increase()）
-        // 注意：不释放数据库冻结库存，因为数据库库存可能还没有扣减
-        String goodsStockKey = GOODS_STOCK_KEY_PREFIX + activityId + "_" + goodsId;
-        String goodsStockLogKey = GOODS_STOCK_LOG_KEY_PREFIX + activityId + "_" + goodsId;
-        String identifier = "ROLLBACK_" + orderId;
-        
         try {
-            Long rollbackResult = redisAdapter.increaseStockWithLog(goodsStockKey, goodsStockLogKey, identifier, 1);
-            if (rollbackResult == null) {
-                log.warn("热点商品订单取消-Redis库存回滚失败: orderId={}, activityId={}, goodsId={}", 
-                        orderId, activityId, goodsId);
-            } else {
-                log.info("热点商品订单取消-Redis库存回滚成功: orderId={}, activityId={}, goodsId={}, 回滚后库存={}", 
-                        orderId, activityId, goodsId, rollbackResult);
-            }
+            StockAdmissionResultVO rollbackResult = redisAdapter.releaseOrder(StockAdmissionEntity.builder()
+                    .orderId(orderId)
+                    .identifier("DECREASE_" + userId + "_" + orderId)
+                    .goodsStockKey(GOODS_STOCK_KEY_PREFIX + activityId + "_" + goodsId)
+                    .goodsStockLogKey(GOODS_STOCK_LOG_KEY_PREFIX + activityId + "_" + goodsId)
+                    .count(1)
+                    .userTakeKey(TradeLockRuleFilterFactory.generateUserTakeKey(activityId, userId))
+                    .build());
+            log.info("热点商品订单取消-Redis库存回滚: orderId={}, activityId={}, goodsId={}, code={}, 回滚后库存={}",
+                    orderId, activityId, goodsId, rollbackResult.getCode(), rollbackResult.getGoodsRemainingStock());
         } catch (Exception e) {
             log.error("热点商品订单取消-Redis库存回滚异常: orderId={}, activityId={}, goodsId={}", 
                     orderId, activityId, goodsId, e);
         }
+    }
+
+    /**
+     * 执行取消操作（库存已回滚）
+     * 
+     * 对标 NFTurbo 的 NewBuyPlusMsgListener.doCancel（但简化了，因为热点商品不做拼团）
+     * 参考 NFTurbo: inventoryTransactionFacadeService.cancelDecrease() + orderTransactionFacadeService.cancelOrder()
+     */
+    private void doCancel(HotGoodsOrderAggregate aggregate) {
+        String orderId = aggregate.getOrderId();
+        Long activityId = aggregate.getPayActivityEntity().getActivityId();
+        String goodsId = aggregate.getPayDiscountEntity().getGoodsId();
 
-        // 2. 取消订单（如果订单存在，将订单状态改为 CLOSE）
+        // 取消订单（如果订单存在，将订单状态改为 CLOSE）
         // 参考 NFTurbo: orderTransactionFacadeService.cancelOrder()
         try {
             boolean cancelOrderResult = tradeRepository.cancelOrder(orderId);
@@ -1,21 +1,19 @@
 package cn.bugstack.trigger.listener;
 
-import cn.bugstack.domain.trade.adapter.repository.ISkuRepository;
 import cn.bugstack.domain.trade.model.aggregate.HotGoodsOrderAggregate;
+import cn.bugstack.domain.trade.model.entity.StockDeltaEntity;
+import cn.bugstack.domain.trade.service.hot.StockDeltaSynchronizer;
 import cn.bugstack.infrastructure.mq.consumer.AbstractStreamConsumer;
 import cn.bugstack.infrastructure.mq.param.MessageBody;
-import com.alibaba.fastjson.JSON;
-import com.alibaba.fastjson.JSONObject;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.annotation.Bean;
 import org.springframework.messaging.Message;
-import org.springframework.messaging.support.MessageBuilder;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.Resource;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Consumer;
 
 /**
@@ -36,8 +34,8 @@ import java.util.function.Consumer;
  *    - 如果成功 → 返回 COMMIT_MESSAGE → 消息发送到 hotGoodsOrderCreate-out-0
  *    - 这个监听器消费消息：
  *      a. 批量消费消息（提高性能）
- *      b. 异步扣减数据库库存（TCC Try阶段：增加冻结库存）
- *      c. 带幂等性检查，如果已扣减过会直接返回成功
+ *      b. 库存增量提交到 StockDeltaSynchronizer，按 SKU 聚合写回数据库库存（TCC Try阶段：增加冻结库存）
+ *      c. 带幂等性检查，如果已扣减过会直接跳过
  * 
  * 2. 异常补偿流程（订单创建失败）：
  *    - 订单创建失败 → 发送延迟消息到 hotGoodsOrderPreCancel（30秒后检查）
@@ -49,7 +47,7 @@ import java.util.function.Consumer;
  * 【设计思路】
  * - 参考 NFTurbo：本地事务中不扣减数据库库存，减少本地事务时间
  * - 通过消息监听器异步扣减数据库库存，避免消息堆积
- * - 批量消费消息，提高性能
+ * - 批量消费消息，多个消费批次的增量在同一窗口内按 SKU 合并为一次 UPDATE，避免同一行上的乐观锁冲突
  * - 带幂等性检查，确保数据一致性
  * 
  * 【对比 NFTurbo】
@@ -65,28 +63,7 @@ import java.util.function.Consumer;
 public class HotGoodsOrderCreateMessageListener extends AbstractStreamConsumer {
 
     @Resource
-    private ISkuRepository skuRepository;
-
-    /**
-     * 热点商品订单创建消息消费线程池
-     * 参考 NFTurbo 的 newBuyPlusConsumePool
-     */
-    private final ThreadPoolExecutor consumePool = new ThreadPoolExecutor(
-            10,  // 核心线程数
-            20,  // 最大线程数
-            60L, TimeUnit.SECONDS,  // 空闲线程存活时间
-            new LinkedBlockingQueue<>(1000),  // 任务队列
-            new ThreadFactory() {
-                private int counter = 0;
-                @Override
-                public Thread newThread(Runnable r) {
-                    Thread thread = new Thread(r, "hot-goods-create-consume-" + (++counter));
-                    thread.setDaemon(false);
-                    return thread;
-                }
-            },
-            new ThreadPoolExecutor.CallerRunsPolicy()  // 拒绝策略：调用者运行
-    );
+    private StockDeltaSynchronizer stockDeltaSynchronizer;
 
     /**
      * 处理热点商品订单创建消息（正常流程）
@@ -95,98 +72,62 @@ public class HotGoodsOrderCreateMessageListener extends AbstractStreamConsumer {
      * 
      * 【触发场景】
      * - 订单在本地事务中创建成功，事务消息发送到 hotGoodsOrderCreate-out-0
-     * - 这个监听器批量消费消息，并发处理，异步扣减数据库库存
+     * - 这个监听器批量消费消息，异步扣减数据库库存
      * 
      * 【处理逻辑】
      * 1. 批量接收消息（Spring Cloud Stream 支持批量消费）
-     * 2. 使用线程池并发处理每条消息
-     * 3. 扣减数据库库存（TCC Try阶段：增加冻结库存）
-     * 4. 如果有一个失败，抛出异常，触发消息重试
+     * 2. 每条消息提交一条库存增量到 StockDeltaSynchronizer，按 SKU 聚合后写回数据库（TCC Try阶段：增加冻结库存）
+     * 3. 等待整批写回完成，如果有一个失败，抛出异常，触发消息重试
      * 
      * 【批量消费】
      * - 使用 Consumer<Object> 支持单个消息和批量消息
      * - RocketMQ binder 可能传递单个消息或批量消息，需要兼容处理
-     * - 参考 NFTurbo：批量大小 64，并发处理
+     * - 参考 NFTurbo：批量大小 64
      */
     @Bean
     Consumer<Object> hotGoodsOrderCreate() {
         return input -> {
             try {
                 // 兼容处理：支持单个消息、批量消息和 JSONObject
-                List<Message<MessageBody>> msgs = new ArrayList<>();
-                
-                if (input instanceof List) {
-                    // 批量消息
-                    @SuppressWarnings("unchecked")
-                    List<Object> inputList = (List<Object>) input;
-                    for (Object item : inputList) {
-                        msgs.add(convertToMessage(item));
-                    }
-                } else {
-                    // 单个消息，包装成 List
-                    msgs.add(convertToMessage(input));
-                }
+                List<Message<MessageBody>> msgs = toMessages(input);
 
                 log.warn("热点商品订单创建消息-收到消息（正常流程），消息数量: {}", msgs.size());
 
-                CompletionService<Boolean> completionService = new ExecutorCompletionService<>(consumePool);
-                List<Future<Boolean>> futures = new ArrayList<>();
-                // 用于记录失败的消息，方便排查
-                final String[] failedOrderId = new String[1];
-
-                // 1. 提交所有任务（参考 NFTurbo）
-                msgs.forEach(msg -> {
-                    Callable<Boolean> task = () -> {
-                        try {
-                            return doHotGoodsOrderCreateExecute(msg);
-                        } catch (Exception e) {
-                            // 记录失败的消息详情，方便排查
-                            try {
-                                HotGoodsOrderAggregate aggregate = getMessage(msg, HotGoodsOrderAggregate.class);
-                                failedOrderId[0] = aggregate.getOrderId();
-                                log.error("热点商品订单创建消息-任务处理失败: orderId={}", failedOrderId[0], e);
-                            } catch (Exception ex) {
-                                log.error("热点商品订单创建消息-任务处理失败（无法解析消息）", e);
-                            }
-                            return false; // 标记失败
-                        }
-                    };
-                    futures.add(completionService.submit(task));
-                });
+                // 1. 提交库存增量，与其他消费批次在同一窗口内按 SKU 合并写回
+                List<String> orderIds = new ArrayList<>(msgs.size());
+                List<CompletableFuture<Boolean>> futures = new ArrayList<>(msgs.size());
+                for (Message<MessageBody> msg : msgs) {
+                    HotGoodsOrderAggregate aggregate = getMessage(msg, HotGoodsOrderAggregate.class);
+                    orderIds.add(aggregate.getOrderId());
+                    futures.add(stockDeltaSynchronizer.submit(toStockDelta(aggregate)));
+                }
 
-                // 2. 检查结果（参考 NFTurbo：如果有一个失败立即终止）
+                // 2. 等待写回结果（写回事务提交后才确认消费，这就是写回检查点）
                 // 
                 // 重要说明：RocketMQ 批量消费机制，如果有一条消息失败，整批消息都会重试
                 // 
                 // 幂等性保证（防止重复扣减）：
-                // - decreaseSkuStock 方法会先查询流水表（inventory_deduction_log），如果流水已存在，直接返回 true
-                // - 如果流水不存在，执行扣减并插入流水（唯一索引 orderId 保证幂等）
-                // - 如果插入流水时发生唯一索引冲突，说明并发情况下已扣减成功，也返回 true
+                // - 合并写回时先按订单批量查询流水表（inventory_deduction_log），已有流水的订单直接跳过
+                // - 库存 UPDATE 与流水多行插入在同一事务中，唯一索引 orderId 冲突时整批回滚，退回逐单扣减
+                // - 逐单扣减（decreaseSkuStock）同样先查流水，唯一索引冲突视为已扣减
                 // 
-                // 因此，即使整批消息重试，已成功的消息也不会重复扣减库存：
-                // - 第一次执行：成功扣减库存，插入流水
-                // - 第二次执行（重试）：查询流水表，发现流水已存在，直接返回 true，不会重复扣减
-                boolean allSuccess = true;
-                try {
-                    for (int i = 0; i < msgs.size(); i++) {
-                        Future<Boolean> future = completionService.take();
-                        if (!future.get()) { // 发现一个失败立即终止
-                            allSuccess = false;
-                            break;
-                        }
+                // 因此，即使整批消息重试，已成功的消息也不会重复扣减库存
+                // 
+                // 等待时间远小于 MQ 消费超时（StockDeltaSynchronizer.AWAIT_TIMEOUT_MS），超时按失败处理
+                String failedOrderId = null;
+                List<Boolean> results = stockDeltaSynchronizer.await(futures);
+                for (int i = 0; i < results.size(); i++) {
+                    if (!results.get(i)) {
+                        failedOrderId = orderIds.get(i);
+                        break;
                     }
-                } catch (Exception e) {
-                    log.error("热点商品订单创建消息-批量处理异常", e);
-                    allSuccess = false;
                 }
 
                 // 3. 如果有一个失败，抛出异常触发消息重试
                 // 注意：整批消息都会重试，但由于幂等性保证，已成功的消息重复处理也没问题
-                if (!allSuccess) {
-                    log.error("热点商品订单创建消息-批量处理失败，部分消息处理失败，失败订单: {}, 整批消息将重试（由于幂等性保证，已成功的消息重复处理也没问题）", 
-                            failedOrderId[0] != null ? failedOrderId[0] : "unknown");
-                    throw new RuntimeException("热点商品订单创建消息-批量处理失败，部分消息处理失败，失败订单: " + 
-                            (failedOrderId[0] != null ? failedOrderId[0] : "unknown"));
+                if (failedOrderId != null) {
+                    log.error("热点商品订单创建消息-批量处理失败，部分消息处理失败，失败订单: {}, 整批消息将重试（由于幂等性保证，已成功的消息重复处理也没问题）", failedOrderId);
+                    throw new RuntimeException("热点商品订单创建消息-批量处理失败，部分消息处理失败，失败订单: " + failedOrderId);
                 }
 
                 log.info("热点商品订单创建消息-批量处理成功，消息数量: {}", msgs.size());
@@ -198,58 +139,16 @@ public class HotGoodsOrderCreateMessageListener extends AbstractStreamConsumer {
     }
 
     /**
-     * 将输入对象转换为 Message<MessageBody>
-     * 支持 Message<MessageBody>、JSONObject 等类型
+     * 构建库存增量（TCC Try阶段：增加冻结库存，不减少可售库存）
+     * 参考 NFTurbo: goodsFacadeService.saleWithoutHint() - 扣减数据库库存
      */
-    private Message<MessageBody> convertToMessage(Object input) {
-        if (input instanceof Message) {
-            // 已经是 Message 类型
-            @SuppressWarnings("unchecked")
-            Message<MessageBody> msg = (Message<MessageBody>) input;
-            return msg;
-        } else if (input instanceof JSONObject) {
-            // JSONObject 类型，需要转换为 Message<MessageBody>
-            JSONObject jsonObject = (JSONObject) input;
-            MessageBody messageBody = JSON.parseObject(jsonObject.toJSONString(), MessageBody.class);
-            return MessageBuilder.withPayload(messageBody).build();
-        } else {
-            log.error("热点商品订单创建消息-不支持的消息类型: {}", input.getClass().getName());
-            throw new RuntimeException("热点商品订单创建消息-不支持的消息类型: " + input.getClass().getName());
-        }
-    }
-
-    /**
-     * 执行单条消息处理
-     * 参考 NFTurbo 的 doNewBuyPlusExecute
-     */
-    private boolean doHotGoodsOrderCreateExecute(Message<MessageBody> msg) {
-        // 1. 解析消息（参考 NFTurbo）
-        HotGoodsOrderAggregate aggregate = getMessage(msg, HotGoodsOrderAggregate.class);
-        String orderId = aggregate.getOrderId();
-        String userId = aggregate.getUserEntity().getUserId();
-        Long activityId = aggregate.getPayActivityEntity().getActivityId();
-        String goodsId = aggregate.getPayDiscountEntity().getGoodsId();
-
-        // 2. 扣减数据库库存（TCC Try阶段：增加冻结库存，不减少可售库存）
-        // 参考 NFTurbo: goodsFacadeService.saleWithoutHint() - 扣减数据库库存
-        // 
-        // 幂等性保证（防止重复扣减）：
-        // 1. decreaseSkuStock 方法会先查询流水表（inventory_deduction_log），如果流水已存在，直接返回 true
-        // 2. 如果流水不存在，执行扣减并插入流水（唯一索引 orderId 保证幂等）
-        // 3. 如果插入流水时发生唯一索引冲突（DuplicateKeyException），说明并发情况下已扣减成功，也返回 true
-        // 
-        // 因此，即使整批消息重试，已成功的消息也不会重复扣减库存
-        boolean decreaseResult = skuRepository.decreaseSkuStock(activityId, goodsId, 1, orderId, userId);
-        if (!decreaseResult) {
-            // 扣减失败（库存不足、乐观锁冲突等），返回 false 触发重试
-            log.warn("热点商品订单创建消息-数据库库存扣减失败: orderId={}, activityId={}, goodsId={}", 
-                    orderId, activityId, goodsId);
-            return false;
-        } else {
-            log.info("热点商品订单创建消息-数据库库存扣减成功: orderId={}, activityId={}, goodsId={}", 
-                    orderId, activityId, goodsId);
-            return true;
-        }
+    private StockDeltaEntity toStockDelta(HotGoodsOrderAggregate aggregate) {
+        return StockDeltaEntity.builder()
+                .orderId(aggregate.getOrderId())
+                .userId(aggregate.getUserEntity().getUserId())
+                .activityId(aggregate.getPayActivityEntity().getActivityId())
+                .goodsId(aggregate.getPayDiscountEntity().getGoodsId())
+                .quantity(1)
+                .build();
     }
 }
-
@@ -1,11 +1,16 @@
 package cn.bugstack.trigger.listener;
 
 import cn.bugstack.domain.trade.adapter.port.IRedisAdapter;
-import cn.bugstack.domain.trade.adapter.repository.ISkuRepository;
 import cn.bugstack.domain.trade.adapter.repository.ITradeRepository;
 import cn.bugstack.domain.trade.model.aggregate.HotGoodsOrderAggregate;
 import cn.bugstack.domain.trade.model.entity.MarketPayOrderEntity;
+import cn.bugstack.domain.trade.model.entity.StockAdmissionEntity;
+import cn.bugstack.domain.trade.model.entity.StockDeltaEntity;
+import cn.bugstack.domain.trade.model.valobj.StockAdmissionCodeEnumVO;
+import cn.bugstack.domain.trade.model.valobj.StockAdmissionResultVO;
 import cn.bugstack.domain.trade.model.valobj.TradeOrderStatusEnumVO;
+import cn.bugstack.domain.trade.service.hot.StockDeltaSynchronizer;
+import cn.bugstack.domain.trade.service.lock.factory.TradeLockRuleFilterFactory;
 import cn.bugstack.infrastructure.mq.consumer.AbstractStreamConsumer;
 import cn.bugstack.infrastructure.mq.param.MessageBody;
 import lombok.extern.slf4j.Slf4j;
@@ -14,6 +19,9 @@ import org.springframework.messaging.Message;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Consumer;
 
 /**
@@ -43,6 +51,7 @@ import java.util.function.Consumer;
  *      a. 如果订单已创建成功（状态为 CREATE）→ 说明之前查询失败（网络延迟或数据库异常）
  *         → 做补偿处理：扣减数据库库存（因为本地事务中只扣减了 Redis 库存）
  *      b. 如果订单不存在 → 回滚 Redis 库存
+ *    - 支持批量消费，补偿扣减提交到 StockDeltaSynchronizer，与订单创建消息的库存增量一起按 SKU 合并写回
  * 
  * 【设计思路】
  * - 解决 OrderCreateTransactionListener 中因为网络延迟或数据库异常而导致查询到的订单状态不是 CREATE，
@@ -64,7 +73,7 @@ import java.util.function.Consumer;
 public class HotGoodsOrderPreCancelListener extends AbstractStreamConsumer {
 
     @Resource
-    private ISkuRepository skuRepository;
+    private StockDeltaSynchronizer stockDeltaSynchronizer;
 
     @Resource
     private ITradeRepository tradeRepository;
@@ -97,49 +106,61 @@ public class HotGoodsOrderPreCancelListener extends AbstractStreamConsumer {
      *    - 参考 NFTurbo: inventoryFacadeService.increase() - 回滚 Redis 库存
      */
     @Bean
-    Consumer<Message<MessageBody>> hotGoodsOrderPreCancel() {
-        return msg -> {
+    Consumer<Object> hotGoodsOrderPreCancel() {
+        return input -> {
             try {
-                log.warn("热点商品订单疑似取消消息-收到延迟检查消息（30秒后检查订单状态）");
-                
-                // 1. 解析消息（参考 NFTurbo）
-                HotGoodsOrderAggregate aggregate = getMessage(msg, HotGoodsOrderAggregate.class);
-                String orderId = aggregate.getOrderId();
-                String userId = aggregate.getUserEntity().getUserId();
-
-                // 2. 查询订单状态（延迟30秒后检查，给订单创建足够的时间）
-                MarketPayOrderEntity order = tradeRepository.queryMarketPayOrderEntityByOrderId(userId, orderId);
-                
-                // 3. 如果订单已经创建成功（状态为 CREATE），说明之前查询失败（网络延迟或数据库异常）
-                // 参考 NFTurbo: if (response.getSuccess() && response.getData() != null && response.getData().getOrderState() == TradeOrderState.CONFIRM)
-                if (order != null && TradeOrderStatusEnumVO.CREATE.equals(order.getTradeOrderStatusEnumVO())) {
-                    log.info("热点商品订单疑似取消消息-订单已创建成功（假失败），做补偿处理: orderId={}, status={}", 
-                            orderId, order.getTradeOrderStatusEnumVO());
-                    
-                    // 关键：如果订单已创建但之前查询失败，做补偿处理（扣减数据库库存）
-                    // 原因：本地事务中只扣减了 Redis 库存，没有扣减数据库库存（setSyncDecreaseInventory=false）
-                    // 参考 NFTurbo: goodsFacadeService.saleWithoutHint() - 扣减数据库库存
-                    Long activityId = aggregate.getPayActivityEntity().getActivityId();
-                    String goodsId = aggregate.getPayDiscountEntity().getGoodsId();
-                    
-                    // 扣减数据库库存（带幂等性检查，如果已扣减过会直接返回成功）
-                    // 参考 NFTurbo: goodsSaleResponse = goodsFacadeService.saleWithoutHint(goodsSaleRequest)
-                    boolean decreaseResult = skuRepository.decreaseSkuStock(activityId, goodsId, 1, orderId, userId);
-                    if (!decreaseResult) {
-                        log.warn("热点商品订单疑似取消消息-数据库库存扣减补偿失败（可能已扣减）: orderId={}", orderId);
-                    } else {
-                        log.info("热点商品订单疑似取消消息-数据库库存扣减补偿成功: orderId={}", orderId);
+                List<Message<MessageBody>> msgs = toMessages(input);
+                log.warn("热点商品订单疑似取消消息-收到延迟检查消息（30秒后检查订单状态），消息数量: {}", msgs.size());
+
+                List<String> orderIds = new ArrayList<>();
+                List<CompletableFuture<Boolean>> futures = new ArrayList<>();
+                for (Message<MessageBody> msg : msgs) {
+                    // 1. 解析消息（参考 NFTurbo）
+                    HotGoodsOrderAggregate aggregate = getMessage(msg, HotGoodsOrderAggregate.class);
+                    String orderId = aggregate.getOrderId();
+                    String userId = aggregate.getUserEntity().getUserId();
+
+                    // 2. 查询订单状态（延迟30秒后检查，给订单创建足够的时间）
+                    MarketPayOrderEntity order = tradeRepository.queryMarketPayOrderEntityByOrderId(userId, orderId);
+
+                    // 3. 如果订单已经创建成功（状态为 CREATE），说明之前查询失败（网络延迟或数据库异常）
+                    // 参考 NFTurbo: if (response.getSuccess() && response.getData() != null && response.getData().getOrderState() == TradeOrderState.CONFIRM)
+                    if (order != null && TradeOrderStatusEnumVO.CREATE.equals(order.getTradeOrderStatusEnumVO())) {
+                        log.info("热点商品订单疑似取消消息-订单已创建成功（假失败），做补偿处理: orderId={}, status={}", 
+                                orderId, order.getTradeOrderStatusEnumVO());
+
+                        // 关键：如果订单已创建但之前查询失败，做补偿处理（扣减数据库库存）
+                        // 原因：本地事务中只扣减了 Redis 库存，没有扣减数据库库存（setSyncDecreaseInventory=false）
+                        // 参考 NFTurbo: goodsFacadeService.saleWithoutHint() - 扣减数据库库存
+                        // 提交库存增量，按 SKU 合并写回（带幂等性检查，如果已扣减过会直接跳过）
+                        orderIds.add(orderId);
+                        futures.add(stockDeltaSynchronizer.submit(StockDeltaEntity.builder()
+                                .orderId(orderId)
+                                .userId(userId)
+                                .activityId(aggregate.getPayActivityEntity().getActivityId())
+                                .goodsId(aggregate.getPayDiscountEntity().getGoodsId())
+                                .quantity(1)
+                                .build()));
+                        continue;
                     }
-                    
-                    return;
+
+                    // 4. 订单不存在，说明订单真的创建失败，回滚 Redis 库存
+                    // 参考 NFTurbo: inventoryFacadeService.increase() - 回滚 Redis 库存
+                    log.warn("热点商品订单疑似取消消息-订单不存在（真失败），回滚 Redis 库存: orderId={}", orderId);
+                    doCancel(aggregate);
                 }
 
-                // 4. 订单不存在，说明订单真的创建失败，回滚 Redis 库存
-                // 参考 NFTurbo: inventoryFacadeService.increase() - 回滚 Redis 库存
-                log.warn("热点商品订单疑似取消消息-订单不存在（真失败），回滚 Redis 库存: orderId={}", orderId);
-                doCancel(aggregate);
+                // 5. 等待补偿扣减结果（有界等待，远小于 MQ 消费超时）
+                List<Boolean> results = stockDeltaSynchronizer.await(futures);
+                for (int i = 0; i < results.size(); i++) {
+                    if (!results.get(i)) {
+                        log.warn("热点商品订单疑似取消消息-数据库库存扣减补偿失败（可能已扣减）: orderId={}", orderIds.get(i));
+                    } else {
+                        log.info("热点商品订单疑似取消消息-数据库库存扣减补偿成功: orderId={}", orderIds.get(i));
+                    }
+                }
 
-                log.info("热点商品订单疑似取消消息-处理成功: orderId={}", orderId);
+                log.info("热点商品订单疑似取消消息-处理成功，消息数量: {}", msgs.size());
             } catch (Exception e) {
                 log.error("热点商品订单疑似取消消息-处理失败", e);
                 throw new RuntimeException("热点商品订单疑似取消消息处理失败", e);
@@ -150,56 +171,36 @@ public class HotGoodsOrderPreCancelListener extends AbstractStreamConsumer {
     /**
      * 执行取消操作（回滚 Redis 库存）
      * 
-     * 优化：在回滚成功后删除扣减流水，避免对账任务一直报错
-     * 
-     * 【为什么删除扣减流水？】
-     * - NFTurbo 的做法是回滚时不删除扣减流水，导致对账任务一直报错，直到24小时后流水过期
-     * - 我们的优化：在回滚成功后立即删除扣减流水，避免对账任务持续报错
-     * - 这样既解决了问题，又保持了对账任务的准确性
-     * 
      * 【回滚逻辑】
-     * - 使用 increaseStockWithLog 增加 Redis 库存（回滚）
-     * - 记录回滚流水，保证幂等性
-     * - 回滚成功后删除扣减流水，避免对账任务报错
+     * - 使用锁单补偿脚本按准入标识回滚商品库存与用户参与次数，与准入脚本使用同一标识
+     * - 补偿脚本写入 ROLLBACK_ 标记保证幂等，并删除扣减流水，避免对账任务报错
+     *   （NFTurbo 的做法是回滚时不删除扣减流水，导致对账任务一直报错，直到24小时后流水过期）
+     * - 扣减流水不存在（未准入）时同样写入回滚标记，迟到执行的准入脚本不再扣减
      */
     private void doCancel(HotGoodsOrderAggregate aggregate) {
         String orderId = aggregate.getOrderId();
+        String userId = aggregate.getUserEntity().getUserId();
         Long activityId = aggregate.getPayActivityEntity().getActivityId();
         String goodsId = aggregate.getPayDiscountEntity().getGoodsId();
 
-        // 构建 Redis Key
-        String goodsStockKey = GOODS_STOCK_KEY_PREFIX + activityId + "_" + goodsId;
-        String goodsStockLogKey = GOODS_STOCK_LOG_KEY_PREFIX + activityId + "_" + goodsId;
-        
-        // 构建回滚标识和原始扣减流水标识
-        String rollbackIdentifier = "ROLLBACK_" + orderId;
-        String decreaseIdentifier = "DECREASE_" + orderId;
-        
         try {
-            // 1. 回滚 Redis 库存
-            Long rollbackResult = redisAdapter.increaseStockWithLog(goodsStockKey, goodsStockLogKey, rollbackIdentifier, 1);
-            if (rollbackResult == null) {
+            StockAdmissionResultVO rollbackResult = redisAdapter.compensateOrder(StockAdmissionEntity.builder()
+                    .orderId(orderId)
+                    .identifier("DECREASE_" + userId + "_" + orderId)
+                    .goodsStockKey(GOODS_STOCK_KEY_PREFIX + activityId + "_" + goodsId)
+                    .goodsStockLogKey(GOODS_STOCK_LOG_KEY_PREFIX + activityId + "_" + goodsId)
+                    .count(1)
+                    .userTakeKey(TradeLockRuleFilterFactory.generateUserTakeKey(activityId, userId))
+                    .build());
+            if (StockAdmissionCodeEnumVO.ERROR.equals(rollbackResult.getCode())) {
+                // 扣减流水仍保留，由 InventoryCompensateJob 兜底回滚
                 log.warn("热点商品订单疑似取消-Redis库存回滚失败: orderId={}, activityId={}, goodsId={}", 
                         orderId, activityId, goodsId);
                 return;
             }
             
-            log.info("热点商品订单疑似取消-Redis库存回滚成功: orderId={}, activityId={}, goodsId={}, 回滚后库存={}", 
-                    orderId, activityId, goodsId, rollbackResult);
-            
-            // 2. 回滚成功后，删除扣减流水（优化：避免对账任务一直报错）
-            // 注意：NFTurbo 的做法是不删除扣减流水，导致对账任务一直报错，直到24小时后流水过期
-            // 我们的优化：在回滚成功后立即删除扣减流水，避免对账任务持续报错
-            try {
-                redisAdapter.removeStockDecreaseLog(goodsStockLogKey, decreaseIdentifier);
-                log.info("热点商品订单疑似取消-删除扣减流水成功: orderId={}, activityId={}, goodsId={}, identifier={}", 
-                        orderId, activityId, goodsId, decreaseIdentifier);
-            } catch (Exception e) {
-                // 删除失败不影响主流程，记录日志即可（补偿任务会兜底处理）
-                log.warn("热点商品订单疑似取消-删除扣减流水失败（不影响主流程，补偿任务会兜底）: orderId={}, activityId={}, goodsId={}, identifier={}, error={}", 
-                        orderId, activityId, goodsId, decreaseIdentifier, e.getMessage());
-            }
-            
+            log.info("热点商品订单疑似取消-Redis库存回滚成功: orderId={}, activityId={}, goodsId={}, code={}, 回滚后库存={}", 
+                    orderId, activityId, goodsId, rollbackResult.getCode(), rollbackResult.getGoodsRemainingStock());
         } catch (Exception e) {
             log.error("热点商品订单疑似取消-Redis库存回滚异常: orderId={}, activityId={}, goodsId={}", 
                     orderId, activityId, goodsId, e);
@@ -1,8 +1,13 @@
 package cn.bugstack.trigger.listener;
 
-import cn.bugstack.domain.trade.adapter.repository.ISkuRepository;
+import cn.bugstack.domain.trade.adapter.port.IRedisAdapter;
 import cn.bugstack.domain.trade.adapter.repository.ITradeRepository;
 import cn.bugstack.domain.trade.model.aggregate.NormalGoodsOrderAggregate;
+import cn.bugstack.domain.trade.model.entity.StockAdmissionEntity;
+import cn.bugstack.domain.trade.model.entity.StockDeltaEntity;
+import cn.bugstack.domain.trade.model.valobj.StockAdmissionCodeEnumVO;
+import cn.bugstack.domain.trade.model.valobj.StockAdmissionResultVO;
+import cn.bugstack.domain.trade.service.hot.StockDeltaSynchronizer;
 import cn.bugstack.domain.trade.service.lock.factory.TradeLockRuleFilterFactory;
 import cn.bugstack.infrastructure.mq.consumer.AbstractStreamConsumer;
 import cn.bugstack.infrastructure.mq.param.MessageBody;
@@ -14,6 +19,9 @@ import org.springframework.stereotype.Component;
 import org.springframework.util.Assert;
 
 import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Consumer;
 
 /**
@@ -22,8 +30,8 @@ import java.util.function.Consumer;
  * 参考 NFTurbo 的 NormalBuyMsgListener.normalBuyCancel
  * 使用 Spring Cloud Stream 的 Consumer 方式
  * 
- * 处理 normalBuyCancel 消息：
- * 1. cancelDecreaseInventory（取消扣减库存）
+ * 处理 normalBuyCancel 消息（支持批量消费）：
+ * 1. cancelDecreaseInventory（取消扣减库存）：逐条回滚 Redis 库存，数据库冻结库存提交到 StockDeltaSynchronizer 按 SKU 合并释放
  * 2. cancelOrder（取消订单）
  * 
  * @author liang.tian
@@ -33,41 +41,107 @@ import java.util.function.Consumer;
 public class NormalGoodsOrderCancelListener extends AbstractStreamConsumer {
 
     @Resource
-    private ISkuRepository skuRepository;
+    private ITradeRepository tradeRepository;
 
     @Resource
-    private ITradeRepository tradeRepository;
+    private IRedisAdapter redisAdapter;
+
+    @Resource
+    private StockDeltaSynchronizer stockDeltaSynchronizer;
 
+    // 商品库存键前缀
+    private static final String GOODS_STOCK_KEY_PREFIX = "group_buy_market_goods_stock_";
+    private static final String GOODS_STOCK_LOG_KEY_PREFIX = "group_buy_market_goods_stock_log_";
+
+    /**
+     * 处理普通商品订单取消消息
+     * 
+     * 1. 逐条回滚 Redis 库存，提交数据库冻结库存释放增量
+     * 2. 等待释放结果（有界等待），释放成功的订单继续取消订单、回滚拼团库存、扣回用户参与次数
+     * 3. 有释放失败的订单时抛出异常，整批重试；Redis 回滚按回滚标记、数据库释放按流水状态幂等
+     */
     @Bean
-    Consumer<Message<MessageBody>> normalGoodsOrderCancel() {
-        return msg -> {
-            NormalGoodsOrderAggregate aggregate = getMessage(msg, NormalGoodsOrderAggregate.class);
-            doCancel(aggregate);
+    Consumer<Object> normalGoodsOrderCancel() {
+        return input -> {
+            List<NormalGoodsOrderAggregate> aggregates = new ArrayList<>();
+            List<CompletableFuture<Boolean>> futures = new ArrayList<>();
+            for (Message<MessageBody> msg : toMessages(input)) {
+                NormalGoodsOrderAggregate aggregate = getMessage(msg, NormalGoodsOrderAggregate.class);
+                // 1. 回滚 Redis 库存，Try 失败时订单未创建，按扣减流水判断
+                rollbackRedisStock(aggregate);
+                // 2. 释放数据库冻结库存（未冻结时写入防悬挂流水）
+                futures.add(stockDeltaSynchronizer.submitRelease(toStockDelta(aggregate)));
+                aggregates.add(aggregate);
+            }
+
+            List<Boolean> results = stockDeltaSynchronizer.await(futures);
+            String failedOrderId = null;
+            for (int i = 0; i < aggregates.size(); i++) {
+                if (!results.get(i)) {
+                    failedOrderId = aggregates.get(i).getOrderId();
+                    continue;
+                }
+                doCancel(aggregates.get(i));
+            }
+            Assert.isNull(failedOrderId, "releaseSkuStockBatch failed, orderId: " + failedOrderId);
         };
     }
 
     /**
-     * 执行取消操作
+     * 执行取消操作（库存已释放）
      * 
      * 对标 NFTurbo 的 NormalBuyMsgListener.doCancel
      */
     private void doCancel(NormalGoodsOrderAggregate aggregate) {
         String orderId = aggregate.getOrderId();
         Long activityId = aggregate.getPayActivityEntity().getActivityId();
-        String goodsId = aggregate.getPayDiscountEntity().getGoodsId();
         String teamId = aggregate.getTeamId();
         Integer validTime = aggregate.getPayActivityEntity().getValidTime();
 
-        // 1. 取消扣减库存（回滚 Redis 库存）
-        boolean result = skuRepository.cancelDecreaseInventory(activityId, goodsId, 1, orderId);
-        Assert.isTrue(result, "cancelDecreaseInventory failed");
-
-        // 2. 回滚拼团库存（如果已扣减）
+        // 3. 回滚拼团库存（如果已扣减）
         rollbackTeamStockIfNeeded(activityId, teamId, validTime, orderId);
 
-        // 3. 取消订单（将订单状态改为 CANCEL）
-        result = tradeRepository.cancelOrder(orderId);
-        Assert.isTrue(result, "cancelOrder failed");
+        // 4. 取消订单（将订单状态改为 CANCEL），Try 失败时订单未创建，不影响后续处理
+        if (!tradeRepository.cancelOrder(orderId)) {
+            log.warn("普通商品订单取消-订单不存在或已取消: orderId={}", orderId);
+        }
+
+        // 5. 扣回用户参与次数（Try 阶段扣减脚本中累加）
+        tradeRepository.releaseUserTakeCount(activityId, aggregate.getUserEntity().getUserId(), orderId);
+    }
+
+    /**
+     * 按准入标识回滚 Redis 商品库存（锁单补偿脚本，与 Try 失败补偿共用 ROLLBACK_ 标记，同一订单只回滚一次）
+     * 订单未创建，按扣减流水判断，未准入时写入回滚标记；用户参与次数由 releaseUserTakeCount 扣回
+     */
+    private void rollbackRedisStock(NormalGoodsOrderAggregate aggregate) {
+        String orderId = aggregate.getOrderId();
+        Long activityId = aggregate.getPayActivityEntity().getActivityId();
+        String goodsId = aggregate.getPayDiscountEntity().getGoodsId();
+        StockAdmissionResultVO rollbackResult = redisAdapter.compensateOrder(StockAdmissionEntity.builder()
+                .orderId(orderId)
+                .identifier("DECREASE_" + aggregate.getUserEntity().getUserId() + "_" + orderId)
+                .goodsStockKey(GOODS_STOCK_KEY_PREFIX + activityId + "_" + goodsId)
+                .goodsStockLogKey(GOODS_STOCK_LOG_KEY_PREFIX + activityId + "_" + goodsId)
+                .count(1)
+                .build());
+        if (StockAdmissionCodeEnumVO.ERROR.equals(rollbackResult.getCode())) {
+            // 扣减流水仍保留，由 InventoryCompensateJob 兜底回滚
+            log.error("普通商品订单取消-Redis库存回滚失败: orderId={}, activityId={}, goodsId={}", orderId, activityId, goodsId);
+        } else {
+            log.info("普通商品订单取消-Redis库存回滚: orderId={}, activityId={}, goodsId={}, code={}, 回滚后库存={}",
+                    orderId, activityId, goodsId, rollbackResult.getCode(), rollbackResult.getGoodsRemainingStock());
+        }
+    }
+
+    private StockDeltaEntity toStockDelta(NormalGoodsOrderAggregate aggregate) {
+        return StockDeltaEntity.builder()
+                .orderId(aggregate.getOrderId())
+                .userId(aggregate.getUserEntity().getUserId())
+                .activityId(aggregate.getPayActivityEntity().getActivityId())
+                .goodsId(aggregate.getPayDiscountEntity().getGoodsId())
+                .quantity(1)
+                .build();
     }
 
     /**
@@ -90,4 +164,3 @@ public class NormalGoodsOrderCancelListener extends AbstractStreamConsumer {
         }
     }
 }
-
@@ -1,10 +1,15 @@
 package cn.bugstack.trigger.listener;
 
-import cn.bugstack.domain.trade.adapter.repository.ISkuRepository;
+import cn.bugstack.domain.trade.adapter.port.IRedisAdapter;
 import cn.bugstack.domain.trade.adapter.repository.ITradeRepository;
 import cn.bugstack.domain.trade.model.aggregate.NormalGoodsOrderAggregate;
 import cn.bugstack.domain.trade.model.entity.MarketPayOrderEntity;
+import cn.bugstack.domain.trade.model.entity.StockAdmissionEntity;
+import cn.bugstack.domain.trade.model.entity.StockDeltaEntity;
+import cn.bugstack.domain.trade.model.valobj.StockAdmissionCodeEnumVO;
+import cn.bugstack.domain.trade.model.valobj.StockAdmissionResultVO;
 import cn.bugstack.domain.trade.model.valobj.TradeOrderStatusEnumVO;
+import cn.bugstack.domain.trade.service.hot.StockDeltaSynchronizer;
 import cn.bugstack.domain.trade.service.lock.factory.TradeLockRuleFilterFactory;
 import cn.bugstack.infrastructure.mq.consumer.AbstractStreamConsumer;
 import cn.bugstack.infrastructure.mq.param.MessageBody;
@@ -16,6 +21,9 @@ import org.springframework.stereotype.Component;
 import org.springframework.util.Assert;
 
 import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Consumer;
 
 /**
@@ -24,10 +32,10 @@ import java.util.function.Consumer;
  * 参考 NFTurbo 的 NormalBuyMsgListener.normalBuyPreCancel
  * 使用 Spring Cloud Stream 的 Consumer 方式
  * 
- * 处理 normalBuyPreCancel 消息（延迟消息）：
+ * 处理 normalBuyPreCancel 消息（延迟消息，支持批量消费）：
  * 1. 检查订单状态
- * 2. 如果订单已确认，直接返回
- * 3. 否则执行取消操作
+ * 2. 订单已创建时先条件更新 TRY -> CANCEL（持有订单行锁，与 Confirm 组提交串行），已确认的订单直接返回
+ * 3. 取消成功（或上次已取消、本次重试）后执行回滚：逐条回滚 Redis 库存，数据库冻结库存提交到 StockDeltaSynchronizer 按 SKU 合并释放
  * 
  * @author liang.tian
  */
@@ -36,32 +44,81 @@ import java.util.function.Consumer;
 public class NormalGoodsOrderPreCancelListener extends AbstractStreamConsumer {
 
     @Resource
-    private ISkuRepository skuRepository;
+    private ITradeRepository tradeRepository;
 
     @Resource
-    private ITradeRepository tradeRepository;
+    private IRedisAdapter redisAdapter;
+
+    @Resource
+    private StockDeltaSynchronizer stockDeltaSynchronizer;
 
+    // 商品库存键前缀
+    private static final String GOODS_STOCK_KEY_PREFIX = "group_buy_market_goods_stock_";
+    private static final String GOODS_STOCK_LOG_KEY_PREFIX = "group_buy_market_goods_stock_log_";
+
+    /**
+     * 处理普通商品订单疑似取消消息
+     * 
+     * 释放成功的订单继续取消订单、回滚拼团库存、扣回用户参与次数；有释放失败的订单时抛出异常，整批重试
+     */
     @Bean
-    Consumer<Message<MessageBody>> normalGoodsOrderPreCancel() {
-        return msg -> {
-            NormalGoodsOrderAggregate aggregate = getMessage(msg, NormalGoodsOrderAggregate.class);
-            String orderId = aggregate.getOrderId();
-            String userId = aggregate.getUserEntity().getUserId();
-
-            // 查询订单状态
-            MarketPayOrderEntity order = tradeRepository.queryMarketPayOrderEntityByOrderId(userId, orderId);
-
-            // 如果订单已经创建成功（状态为 CONFIRM），则直接返回。不再需要做废单处理了。
-            if (order != null && TradeOrderStatusEnumVO.CONFIRM.equals(order.getTradeOrderStatusEnumVO())) {
-                return;
+    Consumer<Object> normalGoodsOrderPreCancel() {
+        return input -> {
+            List<NormalGoodsOrderAggregate> aggregates = new ArrayList<>();
+            List<CompletableFuture<Boolean>> futures = new ArrayList<>();
+            for (Message<MessageBody> msg : toMessages(input)) {
+                NormalGoodsOrderAggregate aggregate = getMessage(msg, NormalGoodsOrderAggregate.class);
+                String orderId = aggregate.getOrderId();
+                String userId = aggregate.getUserEntity().getUserId();
+
+                // 查询订单状态
+                MarketPayOrderEntity order = tradeRepository.queryMarketPayOrderEntityByOrderId(userId, orderId);
+
+                // 订单已创建：先取消订单再回滚库存，并发的 Confirm 组提交或恢复任务不会再确认已回滚库存的订单
+                if (order != null && !cancelTryOrder(userId, orderId)) {
+                    continue;
+                }
+
+                // 1. 回滚 Redis 库存，订单已创建（TRY）时扣减流水可能已被对账删除
+                rollbackRedisStock(aggregate, order != null);
+                // 2. 释放数据库冻结库存（未冻结时写入防悬挂流水，迟到的 Confirm 不再冻结）
+                futures.add(stockDeltaSynchronizer.submitRelease(toStockDelta(aggregate)));
+                aggregates.add(aggregate);
             }
 
-            doCancel(aggregate);
+            List<Boolean> results = stockDeltaSynchronizer.await(futures);
+            String failedOrderId = null;
+            for (int i = 0; i < aggregates.size(); i++) {
+                if (!results.get(i)) {
+                    failedOrderId = aggregates.get(i).getOrderId();
+                    continue;
+                }
+                doCancel(aggregates.get(i));
+            }
+            Assert.isNull(failedOrderId, "releaseSkuStockBatch failed, orderId: " + failedOrderId);
         };
     }
 
     /**
-     * 执行取消操作
+     * 条件取消 TRY 订单，返回是否需要回滚库存
+     * 
+     * 本次更新成功，或订单已是 CANCEL（上次取消后回滚失败，消息重试）时回滚；订单已确认时不回滚
+     */
+    private boolean cancelTryOrder(String userId, String orderId) {
+        if (tradeRepository.cancelTryOrder(userId, orderId)) return true;
+
+        MarketPayOrderEntity order = tradeRepository.queryMarketPayOrderEntityByOrderId(userId, orderId);
+        if (order != null && TradeOrderStatusEnumVO.CANCEL.equals(order.getTradeOrderStatusEnumVO())) {
+            log.info("普通商品订单疑似取消-订单已取消，重试回滚: orderId={}", orderId);
+            return true;
+        }
+        log.info("普通商品订单疑似取消-订单已确认，无需取消: orderId={}, status={}", orderId,
+                null == order ? null : order.getTradeOrderStatusEnumVO());
+        return false;
+    }
+
+    /**
+     * 执行取消操作（库存已释放）
      * 
      * 对标 NFTurbo 的 NormalBuyMsgListener.doCancel
      */
@@ -72,20 +129,55 @@ public class NormalGoodsOrderPreCancelListener extends AbstractStreamConsumer {
         String teamId = aggregate.getTeamId();
         Integer validTime = aggregate.getPayActivityEntity().getValidTime();
 
-        // 1. 取消扣减库存（回滚 Redis 库存）
-        boolean cancelInventoryResult = skuRepository.cancelDecreaseInventory(activityId, goodsId, 1, orderId);
-        Assert.isTrue(cancelInventoryResult, "cancelDecreaseInventory failed");
-
-        // 2. 回滚拼团库存（如果已扣减）
+        // 3. 回滚拼团库存（如果已扣减）
         rollbackTeamStockIfNeeded(activityId, teamId, validTime, orderId);
 
-        // 3. 取消订单（将订单状态改为 CANCEL）
-        boolean cancelOrderResult = tradeRepository.cancelOrder(orderId);
-        Assert.isTrue(cancelOrderResult, "cancelOrder failed");
+        // 4. 取消回滚期间落库的 TRY 订单（已创建的订单在回滚前已取消），订单不存在时不影响后续处理
+        if (!tradeRepository.cancelTryOrder(aggregate.getUserEntity().getUserId(), orderId)) {
+            log.debug("普通商品订单疑似取消-订单不存在或已取消: orderId={}", orderId);
+        }
+
+        // 5. 扣回用户参与次数（Try 阶段扣减脚本中累加）
+        tradeRepository.releaseUserTakeCount(activityId, aggregate.getUserEntity().getUserId(), orderId);
 
         log.info("普通商品订单疑似取消-成功: orderId={}, activityId={}, goodsId={}, teamId={}", orderId, activityId, goodsId, teamId);
     }
 
+    /**
+     * 按准入标识回滚 Redis 商品库存（锁单补偿脚本，与 Try 失败补偿共用 ROLLBACK_ 标记，同一订单只回滚一次）
+     * 订单未创建时按扣减流水判断（未准入时写入回滚标记）；订单已创建时扣减流水可能已被对账删除
+     */
+    private void rollbackRedisStock(NormalGoodsOrderAggregate aggregate, boolean orderCreated) {
+        String orderId = aggregate.getOrderId();
+        Long activityId = aggregate.getPayActivityEntity().getActivityId();
+        String goodsId = aggregate.getPayDiscountEntity().getGoodsId();
+        StockAdmissionEntity admission = StockAdmissionEntity.builder()
+                .orderId(orderId)
+                .identifier("DECREASE_" + aggregate.getUserEntity().getUserId() + "_" + orderId)
+                .goodsStockKey(GOODS_STOCK_KEY_PREFIX + activityId + "_" + goodsId)
+                .goodsStockLogKey(GOODS_STOCK_LOG_KEY_PREFIX + activityId + "_" + goodsId)
+                .count(1)
+                .build();
+        StockAdmissionResultVO rollbackResult = orderCreated ? redisAdapter.releaseOrder(admission) : redisAdapter.compensateOrder(admission);
+        if (StockAdmissionCodeEnumVO.ERROR.equals(rollbackResult.getCode())) {
+            // 扣减流水仍保留，由 InventoryCompensateJob 兜底回滚
+            log.error("普通商品订单疑似取消-Redis库存回滚失败: orderId={}, activityId={}, goodsId={}", orderId, activityId, goodsId);
+        } else {
+            log.info("普通商品订单疑似取消-Redis库存回滚: orderId={}, activityId={}, goodsId={}, code={}, 回滚后库存={}",
+                    orderId, activityId, goodsId, rollbackResult.getCode(), rollbackResult.getGoodsRemainingStock());
+        }
+    }
+
+    private StockDeltaEntity toStockDelta(NormalGoodsOrderAggregate aggregate) {
+        return StockDeltaEntity.builder()
+                .orderId(aggregate.getOrderId())
+                .userId(aggregate.getUserEntity().getUserId())
+                .activityId(aggregate.getPayActivityEntity().getActivityId())
+                .goodsId(aggregate.getPayDiscountEntity().getGoodsId())
+                .quantity(1)
+                .build();
+    }
+
     /**
      * 回滚拼团库存（如果需要）
      */
@@ -106,4 +198,3 @@ public class NormalGoodsOrderPreCancelListener extends AbstractStreamConsumer {
         }
     }
 }
-
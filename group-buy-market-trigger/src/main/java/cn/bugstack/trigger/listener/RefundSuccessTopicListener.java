@@ -2,13 +2,11 @@ package cn.bugstack.trigger.listener;
 
 import cn.bugstack.domain.trade.model.valobj.TeamRefundSuccess;
 import cn.bugstack.domain.trade.service.ITradeRefundOrderService;
+import cn.bugstack.infrastructure.event.AbstractOrderedBatchListener;
+import cn.bugstack.types.workload.Workload;
+import cn.bugstack.types.workload.WorkloadType;
 import com.alibaba.fastjson.JSON;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.amqp.core.ExchangeTypes;
-import org.springframework.amqp.rabbit.annotation.Exchange;
-import org.springframework.amqp.rabbit.annotation.Queue;
-import org.springframework.amqp.rabbit.annotation.QueueBinding;
-import org.springframework.amqp.rabbit.annotation.RabbitListener;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.Resource;
@@ -16,11 +14,14 @@ import javax.annotation.Resource;
 /**
  * @author Fuzhengwei bugstack.cn @小傅哥
  * @description 结算完成消息监听
+ * <p>
+ * 按 teamId 一致性哈希分片队列批量消费，同一队伍的退单按顺序恢复锁单量，监听容器在 RabbitMQConfig 中按分片注册
  * @create 2025-03-08 13:49
  */
 @Slf4j
 @Component
-public class RefundSuccessTopicListener {
+@Workload(WorkloadType.CONSUMER)
+public class RefundSuccessTopicListener extends AbstractOrderedBatchListener {
 
     @Resource
     private ITradeRefundOrderService tradeRefundOrderService;
@@ -31,21 +32,15 @@ public class RefundSuccessTopicListener {
      * 2. MQ 消息消费，恢复锁单量库存。库存时添加分布式锁，确保不会重复操作。
      * 3. MQ 消息重试，确保在失败情况下，可以重复消息，又因为有分布式锁的处理，可以确保重复消费也不会重复添加锁单量库粗。
      */
-    @RabbitListener(
-            bindings = @QueueBinding(
-                    value = @Queue(value = "${spring.rabbitmq.config.producer.topic_team_refund.queue}"),
-                    exchange = @Exchange(value = "${spring.rabbitmq.config.producer.exchange}", type = ExchangeTypes.TOPIC),
-                    key = "${spring.rabbitmq.config.producer.topic_team_refund.routing_key}"
-            )
-    )
-    public void listener(String message) {
+    @Override
+    protected void handle(String message) {
         log.info("接收消息（退单成功）- 恢复拼团队伍锁单量:{}", message);
         TeamRefundSuccess teamRefundSuccess = JSON.parseObject(message, TeamRefundSuccess.class);
         try {
             tradeRefundOrderService.restoreTeamLockStock(teamRefundSuccess);
         } catch (Exception e) {
             log.info("接收消息（退单成功）- 恢复拼团队伍锁单量失败:{}", message, e);
-            // 抛异常，mq消息会重试
+            // 抛异常，消息重新入队重试
             throw new RuntimeException(e);
         }
     }
@@ -1,30 +1,25 @@
 package cn.bugstack.trigger.listener;
 
+import cn.bugstack.infrastructure.event.AbstractOrderedBatchListener;
+import cn.bugstack.types.workload.Workload;
+import cn.bugstack.types.workload.WorkloadType;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.amqp.core.ExchangeTypes;
-import org.springframework.amqp.rabbit.annotation.Exchange;
-import org.springframework.amqp.rabbit.annotation.Queue;
-import org.springframework.amqp.rabbit.annotation.QueueBinding;
-import org.springframework.amqp.rabbit.annotation.RabbitListener;
 import org.springframework.stereotype.Component;
 
 /**
  * @author Fuzhengwei bugstack.cn @小傅哥
  * @description 结算完成消息监听
+ * <p>
+ * 按 teamId 一致性哈希分片队列批量消费，监听容器在 RabbitMQConfig 中按分片注册
  * @create 2025-03-08 13:49
  */
 @Slf4j
 @Component
-public class TeamSuccessTopicListener {
+@Workload(WorkloadType.CONSUMER)
+public class TeamSuccessTopicListener extends AbstractOrderedBatchListener {
 
-    @RabbitListener(
-            bindings = @QueueBinding(
-                    value = @Queue(value = "${spring.rabbitmq.config.producer.topic_team_success.queue}"),
-                    exchange = @Exchange(value = "${spring.rabbitmq.config.producer.exchange}", type = ExchangeTypes.TOPIC),
-                    key = "${spring.rabbitmq.config.producer.topic_team_success.routing_key}"
-            )
-    )
-    public void listener(String message) {
+    @Override
+    protected void handle(String message) {
         log.info("接收消息（组队成功）:{}", message);
     }
 
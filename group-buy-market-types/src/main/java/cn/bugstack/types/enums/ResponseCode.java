@@ -16,6 +16,10 @@ public enum ResponseCode {
     UPDATE_ZERO("0004", "更新记录为0"),
     HTTP_EXCEPTION("0005", "HTTP接口调用异常"),
     RATE_LIMITER("0006", "接口限流"),
+    TIMEOUT("0007", "请求处理超时，请稍后查询订单结果"),
+    WAITING("0008", "排队中，请稍后"),
+    DB_BUSY("0009", "系统繁忙，请稍后重试"),
+    PENDING("0010", "锁单处理中，请凭查询令牌查询订单结果"),
 
     E0001("E0001", "不存在对应的折扣计算服务"),
     E0002("E0002", "无拼团营销配置"),
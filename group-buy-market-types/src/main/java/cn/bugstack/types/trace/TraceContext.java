@@ -0,0 +1,76 @@
+package cn.bugstack.types.trace;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.MDC;
+
+import java.util.UUID;
+
+/**
+ * @author liang.tian
+ * @description 链路追踪上下文
+ * <p>
+ * traceId 保存在 MDC（key 与 logback 日志格式中的 %X{trace-id} 一致），跨边界时显式传递：
+ * 1. HTTP：TraceIdFilter 读取请求头 {@link #HTTP_HEADER}，没有时生成
+ * 2. MQ：StreamProducer 写入消息头 {@link #MESSAGE_HEADER}，事务监听器、Stream 消费者取出后恢复
+ * 3. 线程池：{@link TraceContextExecutor} 提交任务时捕获，执行时恢复
+ * @create 2025-03-20
+ */
+public class TraceContext {
+
+    /** MDC key */
+    public static final String TRACE_ID = "trace-id";
+    /** HTTP 请求/响应头 */
+    public static final String HTTP_HEADER = "X-Trace-Id";
+    /** MQ 消息头（RocketMQ user property） */
+    public static final String MESSAGE_HEADER = "TRACE_ID";
+    /** MQ 消息发送时间（毫秒），用于记录投递耗时 */
+    public static final String MESSAGE_SEND_TIME_HEADER = "TRACE_SEND_TIME";
+
+    private static final int MAX_TRACE_ID_LENGTH = 64;
+
+    private TraceContext() {
+    }
+
+    public static String getTraceId() {
+        return MDC.get(TRACE_ID);
+    }
+
+    public static String newTraceId() {
+        return UUID.randomUUID().toString();
+    }
+
+    /**
+     * 恢复上游传入的 traceId，为空或格式不合法时生成新的
+     *
+     * @return 恢复前的 traceId，用于 {@link #detach(String)}
+     */
+    public static String attach(String traceId) {
+        String previous = MDC.get(TRACE_ID);
+        MDC.put(TRACE_ID, isValid(traceId) ? traceId : newTraceId());
+        return previous;
+    }
+
+    /**
+     * 还原为 attach 之前的 traceId
+     */
+    public static void detach(String previous) {
+        if (null == previous) {
+            MDC.remove(TRACE_ID);
+        } else {
+            MDC.put(TRACE_ID, previous);
+        }
+    }
+
+    /**
+     * 外部传入的 traceId 会写入日志，只接受字母、数字和 -，防止日志注入
+     */
+    private static boolean isValid(String traceId) {
+        if (StringUtils.isBlank(traceId) || traceId.length() > MAX_TRACE_ID_LENGTH) return false;
+        for (int i = 0; i < traceId.length(); i++) {
+            char c = traceId.charAt(i);
+            if (!Character.isLetterOrDigit(c) && c != '-') return false;
+        }
+        return true;
+    }
+
+}
@@ -0,0 +1,83 @@
+package cn.bugstack.types.trace;
+
+import cn.bugstack.types.workload.WorkloadContext;
+import cn.bugstack.types.workload.WorkloadType;
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author liang.tian
+ * @description 传递追踪上下文的执行器
+ * <p>
+ * 包装业务线程池：提交任务时捕获调用线程的 traceId 与负载类型（{@link WorkloadContext}），执行时恢复，结束后还原工作线程原有上下文，
+ * 任务在工作线程上获取的数据库连接仍计入提交方的负载分区；同时记录 executor.{name} 阶段的排队耗时与执行耗时。
+ * submit/invokeAll 经 AbstractExecutorService 最终都走 execute。调用线程没有 traceId 时（后台任务）只传递负载类型。
+ * @create 2025-03-20
+ */
+public class TraceContextExecutor extends AbstractExecutorService {
+
+    private final ExecutorService delegate;
+    private final String stage;
+
+    public TraceContextExecutor(ExecutorService delegate, String name) {
+        this.delegate = delegate;
+        this.stage = "executor." + name;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        String traceId = TraceContext.getTraceId();
+        WorkloadType workloadType = WorkloadContext.current();
+        if (null == traceId) {
+            delegate.execute(() -> runAs(workloadType, command));
+            return;
+        }
+        long submitNanos = System.nanoTime();
+        delegate.execute(() -> {
+            String previous = TraceContext.attach(traceId);
+            try (TraceSpan ignored = TraceSpan.start(stage, (System.nanoTime() - submitNanos) / 1_000_000L)) {
+                runAs(workloadType, command);
+            } finally {
+                TraceContext.detach(previous);
+            }
+        });
+    }
+
+    private static void runAs(WorkloadType workloadType, Runnable command) {
+        WorkloadType previous = WorkloadContext.attach(workloadType);
+        try {
+            command.run();
+        } finally {
+            WorkloadContext.detach(previous);
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        delegate.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        return delegate.shutdownNow();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return delegate.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return delegate.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return delegate.awaitTermination(timeout, unit);
+    }
+
+}
@@ -0,0 +1,84 @@
+package cn.bugstack.types.trace;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * @author liang.tian
+ * @description 阶段耗时记录
+ * <p>
+ * 关闭时向 {@link #LOGGER_NAME} 输出一条 span 日志，字段放在 MDC 中（trace-id、span-stage、span-start、span-cost-ms、span-wait-ms），
+ * logback 以 JSON 写入 trace_span.log 并上报 Logstash，由本地采集器按 trace-id 聚合出单个订单各阶段耗时。
+ * 关闭 span 输出：logging.level.TRACE_SPAN=off。
+ * <p>
+ * 每个请求的每个阶段都会输出，与热点日志一样经过限速采样与秒杀模式开关（由 HotPathLogSettings 注册 {@link #setSampler}），
+ * 被丢弃的 span 只计数；未注册时（启动阶段、单元测试）全部输出。
+ * <pre>
+ * try (TraceSpan ignored = TraceSpan.start("tx.local.orderCreate")) {
+ *     ...
+ * }
+ * </pre>
+ * @create 2025-03-20
+ */
+public class TraceSpan implements AutoCloseable {
+
+    public static final String LOGGER_NAME = "TRACE_SPAN";
+
+    private static final Logger log = LoggerFactory.getLogger(LOGGER_NAME);
+
+    private static volatile BooleanSupplier sampler;
+
+    private final String stage;
+    private final long startMillis;
+    private final long startNanos;
+    private final long waitMillis;
+
+    private TraceSpan(String stage, long waitMillis) {
+        this.stage = stage;
+        this.startMillis = System.currentTimeMillis();
+        this.startNanos = System.nanoTime();
+        this.waitMillis = waitMillis;
+    }
+
+    public static TraceSpan start(String stage) {
+        return new TraceSpan(stage, -1L);
+    }
+
+    /**
+     * @param waitMillis 进入该阶段前的等待耗时（线程池排队、MQ 投递）
+     */
+    public static TraceSpan start(String stage, long waitMillis) {
+        return new TraceSpan(stage, waitMillis);
+    }
+
+    /**
+     * 注册 span 输出采样，返回 false 时丢弃本条 span；传入 null 时取消
+     */
+    public static void setSampler(BooleanSupplier spanSampler) {
+        sampler = spanSampler;
+    }
+
+    @Override
+    public void close() {
+        if (!log.isInfoEnabled()) return;
+        BooleanSupplier current = sampler;
+        if (null != current && !current.getAsBoolean()) return;
+        long costMillis = (System.nanoTime() - startNanos) / 1_000_000L;
+        MDC.put("span-stage", stage);
+        MDC.put("span-start", String.valueOf(startMillis));
+        MDC.put("span-cost-ms", String.valueOf(costMillis));
+        if (waitMillis >= 0) MDC.put("span-wait-ms", String.valueOf(waitMillis));
+        try {
+            log.info("{} cost={}ms wait={}ms", stage, costMillis, waitMillis);
+        } finally {
+            MDC.remove("span-stage");
+            MDC.remove("span-start");
+            MDC.remove("span-cost-ms");
+            MDC.remove("span-wait-ms");
+        }
+    }
+
+}
@@ -0,0 +1,103 @@
+package cn.bugstack.types.utils;
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author liang.tian
+ * @description 信号量限流执行器
+ * <p>
+ * 虚拟线程不需要池化，并发上限改由信号量控制：提交任务前获取许可，任务结束释放许可。
+ * acquireTimeoutMillis &lt; 0 时阻塞等待许可（对提交方形成背压，等价于 CallerRunsPolicy 的限流效果）；
+ * 等于 0 时不等待，没有许可立即拒绝（提交方是 IO 线程时使用，如 Tomcat Poller）；
+ * 否则超时未获取到许可抛出 {@link RejectedExecutionException}，等价于 AbortPolicy。
+ * @create 2025-03-08
+ */
+public class SemaphoreBoundedExecutor extends AbstractExecutorService {
+
+    private final ExecutorService delegate;
+    private final Semaphore semaphore;
+    private final int maxConcurrency;
+    private final long acquireTimeoutMillis;
+
+    public SemaphoreBoundedExecutor(ExecutorService delegate, int maxConcurrency, long acquireTimeoutMillis) {
+        this.delegate = delegate;
+        this.semaphore = new Semaphore(maxConcurrency);
+        this.maxConcurrency = maxConcurrency;
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        acquire();
+        try {
+            delegate.execute(() -> {
+                try {
+                    command.run();
+                } finally {
+                    semaphore.release();
+                }
+            });
+        } catch (RuntimeException e) {
+            semaphore.release();
+            throw e;
+        }
+    }
+
+    private void acquire() {
+        try {
+            if (acquireTimeoutMillis < 0) {
+                semaphore.acquire();
+                return;
+            }
+            boolean acquired = acquireTimeoutMillis == 0 ? semaphore.tryAcquire() : semaphore.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS);
+            if (!acquired) {
+                throw new RejectedExecutionException("并发已达上限 maxConcurrency=" + maxConcurrency);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("等待执行许可被中断", e);
+        }
+    }
+
+    /**
+     * 当前执行中的任务数
+     */
+    public int getActiveCount() {
+        return maxConcurrency - semaphore.availablePermits();
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    @Override
+    public void shutdown() {
+        delegate.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        return delegate.shutdownNow();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return delegate.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return delegate.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return delegate.awaitTermination(timeout, unit);
+    }
+
+}
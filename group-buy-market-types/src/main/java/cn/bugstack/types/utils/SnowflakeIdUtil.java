@@ -1,6 +1,7 @@
 package cn.bugstack.types.utils;
 
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * @author liang.tian
@@ -71,12 +72,26 @@ public class SnowflakeIdUtil {
      */
     private static volatile long LAST_TIMESTAMP = -1L;
 
+    /**
+     * 生成锁；使用 ReentrantLock 而不是 synchronized，虚拟线程在 synchronized 中会钉住（pin）载体线程
+     */
+    private static final ReentrantLock LOCK = new ReentrantLock();
+
     /**
      * 产生下一个ID
      *
      * @return 雪花算法生成的ID
      */
-    public static synchronized long nextId() {
+    public static long nextId() {
+        LOCK.lock();
+        try {
+            return doNextId();
+        } finally {
+            LOCK.unlock();
+        }
+    }
+
+    private static long doNextId() {
         long currTimestamp = getNewTimestamp();
         if (currTimestamp < LAST_TIMESTAMP) {
             throw new RuntimeException("时钟向后移动，拒绝生成ID");
@@ -0,0 +1,106 @@
+package cn.bugstack.types.utils;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * @author liang.tian
+ * @description 虚拟线程工具类
+ * <p>
+ * 工程按 Java 8 编译，虚拟线程（Java 21）相关 API 通过反射调用；
+ * 运行在低版本 JDK 上时 {@link #isSupported()} 返回 false，由调用方回退到平台线程池。
+ * @create 2025-03-08
+ */
+public class VirtualThreadUtil {
+
+    private static final Method OF_VIRTUAL;
+    private static final Method BUILDER_NAME;
+    private static final Method BUILDER_FACTORY;
+    private static final Method NEW_THREAD_PER_TASK_EXECUTOR;
+    private static final Method IS_VIRTUAL;
+
+    static {
+        Method ofVirtual = null;
+        Method builderName = null;
+        Method builderFactory = null;
+        Method newThreadPerTaskExecutor = null;
+        Method isVirtual = null;
+        try {
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builderName = builderClass.getMethod("name", String.class, long.class);
+            builderFactory = builderClass.getMethod("factory");
+            newThreadPerTaskExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            isVirtual = Thread.class.getMethod("isVirtual");
+        } catch (ReflectiveOperationException ignore) {
+            // 低版本 JDK，不支持虚拟线程
+        }
+        OF_VIRTUAL = ofVirtual;
+        BUILDER_NAME = builderName;
+        BUILDER_FACTORY = builderFactory;
+        NEW_THREAD_PER_TASK_EXECUTOR = newThreadPerTaskExecutor;
+        IS_VIRTUAL = isVirtual;
+    }
+
+    /**
+     * 当前运行时是否支持虚拟线程
+     */
+    public static boolean isSupported() {
+        return OF_VIRTUAL != null && NEW_THREAD_PER_TASK_EXECUTOR != null;
+    }
+
+    /**
+     * 创建虚拟线程工厂，线程名为 namePrefix + 序号
+     */
+    public static ThreadFactory newThreadFactory(String namePrefix) {
+        assertSupported();
+        try {
+            Object builder = OF_VIRTUAL.invoke(null);
+            builder = BUILDER_NAME.invoke(builder, namePrefix, 0L);
+            return (ThreadFactory) BUILDER_FACTORY.invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("创建虚拟线程工厂失败", e);
+        }
+    }
+
+    /**
+     * 创建每任务一个虚拟线程的执行器
+     */
+    public static ExecutorService newVirtualThreadPerTaskExecutor(String namePrefix) {
+        return newVirtualThreadPerTaskExecutor(newThreadFactory(namePrefix));
+    }
+
+    /**
+     * 使用指定的虚拟线程工厂创建每任务一个线程的执行器（如包装了负载类型的工厂）
+     */
+    public static ExecutorService newVirtualThreadPerTaskExecutor(ThreadFactory threadFactory) {
+        try {
+            return (ExecutorService) NEW_THREAD_PER_TASK_EXECUTOR.invoke(null, threadFactory);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("创建虚拟线程执行器失败", e);
+        }
+    }
+
+    /**
+     * 当前线程是否为虚拟线程
+     */
+    public static boolean isVirtual(Thread thread) {
+        if (IS_VIRTUAL == null) {
+            return false;
+        }
+        try {
+            return (Boolean) IS_VIRTUAL.invoke(thread);
+        } catch (ReflectiveOperationException e) {
+            return false;
+        }
+    }
+
+    private static void assertSupported() {
+        if (!isSupported()) {
+            throw new UnsupportedOperationException("当前 JDK 不支持虚拟线程，java.version=" + System.getProperty("java.version"));
+        }
+    }
+
+}
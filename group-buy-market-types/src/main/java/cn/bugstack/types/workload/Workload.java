@@ -0,0 +1,17 @@
+package cn.bugstack.types.workload;
+
+import java.lang.annotation.*;
+
+/**
+ * @author liang.tian
+ * @description 声明方法（或类中所有方法）所属的负载类型，执行期间数据库连接从对应的连接分区获取
+ * @create 2025-03-24
+ */
+@Target({ElementType.TYPE, ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface Workload {
+
+    WorkloadType value();
+
+}
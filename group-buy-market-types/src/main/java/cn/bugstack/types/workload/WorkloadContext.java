@@ -0,0 +1,70 @@
+package cn.bugstack.types.workload;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author liang.tian
+ * @description 负载上下文
+ * <p>
+ * 当前线程的负载类型，未设置时为 {@link WorkloadType#ONLINE}。设置方式：
+ * 1. 注解：方法或类上标注 {@link Workload}，执行期间生效
+ * 2. 线程：后台执行器使用 {@link #threadFactory(WorkloadType, String)} 创建线程，线程内始终为对应负载
+ * 3. 显式：消费线程等入口处调用 {@link #attach(WorkloadType)} / {@link #detach(WorkloadType)}
+ * @create 2025-03-24
+ */
+public class WorkloadContext {
+
+    private static final ThreadLocal<WorkloadType> CURRENT = new ThreadLocal<>();
+
+    private WorkloadContext() {
+    }
+
+    public static WorkloadType current() {
+        WorkloadType workloadType = CURRENT.get();
+        return null == workloadType ? WorkloadType.ONLINE : workloadType;
+    }
+
+    /**
+     * @return 设置前的负载类型，用于 {@link #detach(WorkloadType)}
+     */
+    public static WorkloadType attach(WorkloadType workloadType) {
+        WorkloadType previous = CURRENT.get();
+        CURRENT.set(workloadType);
+        return previous;
+    }
+
+    public static void detach(WorkloadType previous) {
+        if (null == previous) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+        }
+    }
+
+    /**
+     * 后台执行器线程工厂：守护线程，线程内负载类型固定
+     */
+    public static ThreadFactory threadFactory(WorkloadType workloadType, String namePrefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return r -> {
+            Thread thread = new Thread(() -> {
+                CURRENT.set(workloadType);
+                r.run();
+            }, namePrefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * 包装已有线程工厂（如虚拟线程工厂），线程内负载类型固定
+     */
+    public static ThreadFactory threadFactory(WorkloadType workloadType, ThreadFactory delegate) {
+        return r -> delegate.newThread(() -> {
+            CURRENT.set(workloadType);
+            r.run();
+        });
+    }
+
+}
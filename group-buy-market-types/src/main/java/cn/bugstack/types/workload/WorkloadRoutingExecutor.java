@@ -0,0 +1,80 @@
+package cn.bugstack.types.workload;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author liang.tian
+ * @description 按负载路由的执行器
+ * <p>
+ * 按提交线程的负载类型（{@link WorkloadContext#current()}）把任务交给对应的执行器：任务、MQ 监听器中提交的异步任务
+ * （如退单、结算后的回调通知）进入批处理、异步消费执行器，不占用在线请求的执行器。未配置的负载类型使用在线执行器。
+ * 各执行器由容器管理生命周期，这里的 shutdown 只转发。
+ * @create 2025-03-24
+ */
+public class WorkloadRoutingExecutor extends AbstractExecutorService {
+
+    private final ExecutorService online;
+    private final Map<WorkloadType, ExecutorService> executors;
+
+    public WorkloadRoutingExecutor(ExecutorService online, Map<WorkloadType, ExecutorService> executors) {
+        this.online = online;
+        this.executors = new EnumMap<>(WorkloadType.class);
+        this.executors.putAll(executors);
+        this.executors.put(WorkloadType.ONLINE, online);
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        executors.getOrDefault(WorkloadContext.current(), online).execute(command);
+    }
+
+    @Override
+    public void shutdown() {
+        for (ExecutorService executor : executors.values()) {
+            executor.shutdown();
+        }
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        List<Runnable> pending = new ArrayList<>();
+        for (ExecutorService executor : executors.values()) {
+            pending.addAll(executor.shutdownNow());
+        }
+        return pending;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return allMatch(executors.values(), true);
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return allMatch(executors.values(), false);
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (ExecutorService executor : executors.values()) {
+            if (!executor.awaitTermination(Math.max(0L, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) return false;
+        }
+        return true;
+    }
+
+    private static boolean allMatch(Collection<ExecutorService> executors, boolean shutdown) {
+        for (ExecutorService executor : executors) {
+            if (shutdown ? !executor.isShutdown() : !executor.isTerminated()) return false;
+        }
+        return true;
+    }
+
+}
@@ -0,0 +1,23 @@
+package cn.bugstack.types.workload;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * @author liang.tian
+ * @description 负载类型
+ * @create 2025-03-24
+ */
+@Getter
+@AllArgsConstructor
+public enum WorkloadType {
+
+    ONLINE("online", "用户请求"),
+    CONSUMER("consumer", "异步消费（MQ 消费、库存写回、旁路验证等）"),
+    BATCH("batch", "批处理任务（归档、对账、补偿、超时退单等）"),
+    ;
+
+    private final String code;
+    private final String desc;
+
+}